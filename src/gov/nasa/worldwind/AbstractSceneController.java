@@ -11,6 +11,7 @@ import gov.nasa.worldwind.cache.GpuResourceCache;
 import gov.nasa.worldwind.geom.Position;
 import gov.nasa.worldwind.layers.Layer;
 import gov.nasa.worldwind.pick.*;
+import gov.nasa.worldwind.retrieve.RetrievalScheduler;
 import gov.nasa.worldwind.render.*;
 import gov.nasa.worldwind.terrain.*;
 import gov.nasa.worldwind.util.*;
@@ -81,6 +82,11 @@ public abstract class AbstractSceneController extends WWObjectImpl implements Sc
     /** The display name for the surface object tile count performance statistic. */
     protected static final String SURFACE_OBJECT_TILE_COUNT_NAME = "Surface Object Tiles";
     protected ClutterFilter clutterFilter = new BasicClutterFilter();
+    protected TilePrefetcher tilePrefetcher = Configuration.getBooleanValue(AVKey.TILE_PREFETCH_ENABLED, false)
+        ? new TilePrefetcher() : null;
+    protected RetrievalScheduler retrievalScheduler =
+        Configuration.getBooleanValue(AVKey.RETRIEVAL_SCHEDULER_ENABLED, false)
+            ? RetrievalScheduler.getDefaultScheduler() : null;
     //protected Map<String, GroupingFilter> groupingFilters = new HashMap<String, GroupingFilter>();
     protected boolean deferOrderedRendering;
 
@@ -310,6 +316,47 @@ public abstract class AbstractSceneController extends WWObjectImpl implements Sc
     {
         this.clutterFilter = clutterFilter;
     }
+
+    /**
+     * Returns the prefetcher that loads the tiles the view is about to show after each frame.
+     *
+     * @return the tile prefetcher, or null if tiles are not prefetched.
+     */
+    public TilePrefetcher getTilePrefetcher()
+    {
+        return this.tilePrefetcher;
+    }
+
+    /**
+     * Specifies the prefetcher that loads the tiles the view is about to show after each frame.
+     *
+     * @param tilePrefetcher the tile prefetcher. May be null to disable prefetching.
+     */
+    public void setTilePrefetcher(TilePrefetcher tilePrefetcher)
+    {
+        this.tilePrefetcher = tilePrefetcher;
+    }
+
+    /**
+     * Returns the retrieval scheduler given the current view each frame, from which it ranks the retrievals of
+     * elevation models.
+     *
+     * @return the retrieval scheduler, or null if none is given the view.
+     */
+    public RetrievalScheduler getRetrievalScheduler()
+    {
+        return this.retrievalScheduler;
+    }
+
+    /**
+     * Specifies the retrieval scheduler given the current view each frame.
+     *
+     * @param retrievalScheduler the retrieval scheduler. May be null.
+     */
+    public void setRetrievalScheduler(RetrievalScheduler retrievalScheduler)
+    {
+        this.retrievalScheduler = retrievalScheduler;
+    }
 //
 //    @Override
 //    public GroupingFilter getGroupingFilter(String filterName)
@@ -399,6 +446,9 @@ public abstract class AbstractSceneController extends WWObjectImpl implements Sc
         this.initializeDrawContext(this.dc);
         this.doRepaint(this.dc);
 
+        if (this.tilePrefetcher != null)
+            this.tilePrefetcher.prefetch(this.dc);
+
         ++this.frame;
         long time = System.currentTimeMillis();
         this.frameTime = System.currentTimeMillis() - this.frameTime;
@@ -536,6 +586,9 @@ public abstract class AbstractSceneController extends WWObjectImpl implements Sc
     {
         if (dc.getView() != null)
             dc.getView().apply(dc);
+
+        if (this.retrievalScheduler != null && dc.getView() != null)
+            this.retrievalScheduler.setView(dc.getGlobe(), dc.getView().getEyePoint());
 //
 //        this.resetGroupingFilters();
     }
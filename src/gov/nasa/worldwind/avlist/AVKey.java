@@ -56,6 +56,8 @@ public interface AVKey // TODO: Eliminate unused constants, if any
     final String CLOCKWISE = "gov.nasa.worldwind.avkey.ClockWise";
     final String CLOSE = "gov.nasa.worldwind.avkey.Close";
     final String COLOR = "gov.nasa.worldwind.avkey.Color";
+    final String COMPOSED_ELEVATION_TILE_CACHE_ENABLED = "gov.nasa.worldwind.avkey.ComposedElevationTileCacheEnabled";
+    final String COMPOSED_ELEVATION_TILE_CACHE_SIZE = "gov.nasa.worldwind.avkey.ComposedElevationTileCacheSize";
     final String COMPRESS_TEXTURES = "gov.nasa.worldwind.avkey.CompressTextures";
     final String CONSTRUCTION_PARAMETERS = "gov.nasa.worldwind.avkey.ConstructionParameters";
     final String CONTEXT = "gov.nasa.worldwind.avkey.Context";
@@ -71,6 +73,7 @@ public interface AVKey // TODO: Eliminate unused constants, if any
 
     final String DATA_CACHE_NAME = "gov.nasa.worldwind.avkey.DataCacheNameKey";
     final String DATA_FILE_STORE_CLASS_NAME = "gov.nasa.worldwind.avkey.DataFileStoreClassName";
+    final String DATA_FILE_STORE_INDEX_ENABLED = "gov.nasa.worldwind.avkey.DataFileStoreIndexEnabled";
     final String DATA_FILE_STORE_CONFIGURATION_FILE_NAME
         = "gov.nasa.worldwind.avkey.DataFileStoreConfigurationFileName";
     final String DATASET_NAME = "gov.nasa.worldwind.avkey.DatasetNameKey";
@@ -106,6 +109,13 @@ public interface AVKey // TODO: Eliminate unused constants, if any
     final String DRAG_ENDED = "gov.nasa.worldwind.avkey.DragEnded";
 
     final String DTED_LEVEL = "gov.nasa.worldwind.avkey.DTED.Level";
+    /**
+     * Indicates the color block compression type of the attributes returned by {@link
+     * gov.nasa.worldwind.formats.dds.DDSCompressor#getDefaultCompressionAttributes()}, one of the
+     * <code>COLOR_BLOCK_COMPRESSION</code> constants of {@link
+     * gov.nasa.worldwind.formats.dds.DXTCompressionAttributes}.
+     */
+    final String DXT_COLOR_BLOCK_COMPRESSION_TYPE = "gov.nasa.worldwind.avkey.DXTColorBlockCompressionType";
 
     final String EARTH_ELEVATION_MODEL_CAPABILITIES = "gov.nasa.worldwind.avkey.EarthElevationModelCapabilities";
     final String EARTH_ELEVATION_MODEL_CLASS_NAME = "gov.nasa.worldwind.avkey.EarthElevationModelClassName";
@@ -115,11 +125,13 @@ public interface AVKey // TODO: Eliminate unused constants, if any
     final String ELEVATION = "gov.nasa.worldwind.avkey.Elevation";
     final String ELEVATION_EXTREMES_FILE = "gov.nasa.worldwind.avkey.ElevationExtremesFileKey";
     final String ELEVATION_EXTREMES_LOOKUP_CACHE_SIZE = "gov.nasa.worldwind.avkey.ElevationExtremesLookupCacheSize";
+    final String ELEVATION_EXTREMES_PYRAMID_FILE = "gov.nasa.worldwind.avkey.ElevationExtremesPyramidFile";
     final String ELEVATION_MIN = "gov.nasa.worldwind.avkey.ElevationMinKey";
     final String ELEVATION_MAX = "gov.nasa.worldwind.avkey.ElevationMaxKey";
     final String ELEVATION_MODEL = "gov.nasa.worldwind.avkey.ElevationModel";
     final String ELEVATION_MODEL_FACTORY = "gov.nasa.worldwind.avkey.ElevationModelFactory";
     final String ELEVATION_TILE_CACHE_SIZE = "gov.nasa.worldwind.avkey.ElevationTileCacheSize";
+    final String ELEVATION_TILE_MAPPING_ENABLED = "gov.nasa.worldwind.avkey.ElevationTileMappingEnabled";
     final String ELEVATION_UNIT = "gov.nasa.worldwind.avkey.ElevationUnit";
 
     final String END = "gov.nasa.worldwind.avkey.End";
@@ -167,6 +179,8 @@ public interface AVKey // TODO: Eliminate unused constants, if any
     final String HORIZONTAL = "gov.nasa.worldwind.avkey.Horizontal";
     final String HOT_SPOT = "gov.nasa.worldwind.avkey.HotSpot";
     final String HOVER_TEXT = "gov.nasa.worldwind.avkey.HoverText";
+    final String HTTP_CONNECTION_POOL_ENABLED = "gov.nasa.worldwind.avkey.HTTPConnectionPoolEnabled";
+    final String HTTP_MAX_CONNECTIONS_PER_HOST = "gov.nasa.worldwind.avkey.HTTPMaxConnectionsPerHost";
     final String HTTP_SSL_CONTEXT = "gov.nasa.worldwind.avkey.HTTP.SSLContext";
 
     final String ICON_NAME = "gov.nasa.worldwind.avkey.IconName";
@@ -226,7 +240,25 @@ public interface AVKey // TODO: Eliminate unused constants, if any
 
     final String MAX_ACTIVE_ALTITUDE = "gov.nasa.worldwind.avkey.MaxActiveAltitude";
     final String MAX_MESSAGE_REPEAT = "gov.nasa.worldwind.avkey.MaxMessageRepeat";
+    /**
+     * Indicates whether the caches created by {@link gov.nasa.worldwind.cache.BasicMemoryCacheSet#createCache(long,
+     * long)} filter admission by access frequency. When used as a key, the corresponding value must be a Boolean or a
+     * string parsable as one.
+     */
+    final String MEMORY_CACHE_ADMISSION_FILTER = "gov.nasa.worldwind.avkey.MemoryCacheAdmissionFilter";
+    /**
+     * Indicates the {@link gov.nasa.worldwind.cache.MemoryCache} implementation created by {@link
+     * gov.nasa.worldwind.cache.BasicMemoryCacheSet#createCache(long, long)} for the tile and geometry caches.
+     */
+    final String MEMORY_CACHE_CLASS_NAME = "gov.nasa.worldwind.avkey.MemoryCacheClassName";
     final String MEMORY_CACHE_SET_CLASS_NAME = "gov.nasa.worldwind.avkey.MemoryCacheSetClassName";
+    /**
+     * Indicates the file that the caches created by {@link
+     * gov.nasa.worldwind.cache.BasicMemoryCacheSet#createCache(long, long)} record their tile lookups to, for replay
+     * by {@link gov.nasa.worldwindx.performance.MemoryCacheReplayBenchmark}. Lookups are not recorded if the value is
+     * empty or absent.
+     */
+    final String MEMORY_CACHE_TRACE_FILE = "gov.nasa.worldwind.avkey.MemoryCacheTraceFile";
     /**
      * Indicates the location that MIL-STD-2525 tactical symbols and tactical point graphics retrieve their icons from.
      * When used as a key, the corresponding value must be a string indicating a URL to a remote server, a URL to a
@@ -344,6 +376,10 @@ public interface AVKey // TODO: Eliminate unused constants, if any
     final String RASTER_PIXEL_IS_AREA = "gov.nasa.worldwind.avkey.RasterPixelIsArea";
     final String RASTER_PIXEL_IS_POINT = "gov.nasa.worldwind.avkey.RasterPixelIsPoint";
     final String RECTANGULAR_TESSELLATOR_MAX_LEVEL = "gov.nasa.worldwind.avkey.RectangularTessellatorMaxLevel";
+    final String RECTANGULAR_TESSELLATOR_INCREMENTAL_LOD =
+        "gov.nasa.worldwind.avkey.RectangularTessellatorIncrementalLod";
+    final String RECTANGULAR_TESSELLATOR_PARALLEL_BUILD =
+        "gov.nasa.worldwind.avkey.RectangularTessellatorParallelBuild";
     final String REPAINT = "gov.nasa.worldwind.avkey.Repaint";
     final String REPEAT_NONE = "gov.nasa.worldwind.avkey.RepeatNone";
     final String REPEAT_X = "gov.nasa.worldwind.avkey.RepeatX";
@@ -361,10 +397,12 @@ public interface AVKey // TODO: Eliminate unused constants, if any
     /** Does not modify the item size when the window changes size. */
     final String RESIZE_KEEP_FIXED_SIZE = "gov.nasa.worldwind.CompassLayer.ResizeKeepFixedSize";
     final String RETAIN_LEVEL_ZERO_TILES = "gov.nasa.worldwind.avkey.RetainLevelZeroTiles";
+    final String RETRIEVAL_MAX_IN_FLIGHT = "gov.nasa.worldwind.avkey.RetrievalMaxInFlight";
     final String RETRIEVAL_POOL_SIZE = "gov.nasa.worldwind.avkey.RetrievalPoolSize";
     final String RETRIEVE_PROPERTIES_FROM_SERVICE = "gov.nasa.worldwind.avkey.RetrievePropertiesFromService";
     final String RETRIEVAL_QUEUE_SIZE = "gov.nasa.worldwind.avkey.RetrievalQueueSize";
     final String RETRIEVAL_QUEUE_STALE_REQUEST_LIMIT = "gov.nasa.worldwind.avkey.RetrievalStaleRequestLimit";
+    final String RETRIEVAL_SCHEDULER_ENABLED = "gov.nasa.worldwind.avkey.RetrievalSchedulerEnabled";
     final String RETRIEVAL_SERVICE_CLASS_NAME = "gov.nasa.worldwind.avkey.RetrievalServiceClassName";
     final String RETRIEVER_FACTORY_LOCAL = "gov.nasa.worldwind.avkey.RetrieverFactoryLocal";
     final String RETRIEVER_FACTORY_REMOTE = "gov.nasa.worldwind.avkey.RetrieverFactoryRemote";
@@ -449,15 +487,22 @@ public interface AVKey // TODO: Eliminate unused constants, if any
     final String TILE_DELTA = "gov.nasa.worldwind.avkey.TileDeltaKey";
     final String TILE_HEIGHT = "gov.nasa.worldwind.avkey.TileHeightKey";
     final String TILE_ORIGIN = "gov.nasa.worldwind.avkey.TileOrigin";
+    final String TILE_PREFETCH_BYTE_BUDGET = "gov.nasa.worldwind.avkey.TilePrefetchByteBudget";
+    final String TILE_PREFETCH_ENABLED = "gov.nasa.worldwind.avkey.TilePrefetchEnabled";
     final String TILE_RETRIEVER = "gov.nasa.worldwind.avkey.TileRetriever";
     final String TILE_URL_BUILDER = "gov.nasa.worldwind.avkey.TileURLBuilder";
     final String TILE_WIDTH = "gov.nasa.worldwind.avkey.TileWidthKey";
+    final String TIN_MAX_ERROR = "gov.nasa.worldwind.avkey.TINMaxError";
+    final String TIN_MAX_VERTICES = "gov.nasa.worldwind.avkey.TINMaxVertices";
     final String TILED_IMAGERY = "gov.nasa.worldwind.avkey.TiledImagery";
     final String TILED_ELEVATIONS = "gov.nasa.worldwind.avkey.TiledElevations";
     final String TILED_RASTER_PRODUCER_CACHE_SIZE = "gov.nasa.worldwind.avkey.TiledRasterProducerCacheSize";
+    final String TILED_RASTER_PRODUCER_DRY_RUN = "gov.nasa.worldwind.avkey.TiledRasterProducer.DryRun";
+    final String TILED_RASTER_PRODUCER_INCREMENTAL = "gov.nasa.worldwind.avkey.TiledRasterProducer.Incremental";
     final String TILED_RASTER_PRODUCER_LARGE_DATASET_THRESHOLD =
         "gov.nasa.worldwind.avkey.TiledRasterProducerLargeDatasetThreshold";
     final String TILED_RASTER_PRODUCER_LIMIT_MAX_LEVEL = "gov.nasa.worldwind.avkey.TiledRasterProducer.LimitMaxLevel";
+    final String TILED_RASTER_PRODUCER_THREAD_COUNT = "gov.nasa.worldwind.avkey.TiledRasterProducer.ThreadCount";
     final String TILT = "gov.nasa.worldwind.avkey.Tilt";
     final String TITLE = "gov.nasa.worldwind.avkey.Title";
     final String TOP = "gov.nasa.worldwind.avkey.Top";
@@ -508,6 +553,12 @@ public interface AVKey // TODO: Eliminate unused constants, if any
     final String VISIBILITY_ACTION_RETAIN = "gov.nasa.worldwind.avkey.VisibilityActionRetain";
 
     final String WAKEUP_TIMEOUT = "gov.nasa.worldwind.avkey.WakeupTimeout";
+    /**
+     * Indicates the number of levels from one stored level to the next in a {@link
+     * gov.nasa.worldwind.layers.WaveletTiledImageLayer}. When used as a key, the corresponding value must be an
+     * Integer.
+     */
+    final String WAVELET_LEVEL_INTERVAL = "gov.nasa.worldwind.avkey.WaveletLevelInterval";
     final String WEB_VIEW_FACTORY = "gov.nasa.worldwind.avkey.WebViewFactory";
     final String WEST = "gov.nasa.worldwind.avkey.West";
     final String WIDTH = "gov.nasa.worldwind.avkey.Width";
@@ -20,6 +20,7 @@ public abstract class AbstractFileStore extends WWObjectImpl implements FileStor
     protected static class StoreLocation extends AVListImpl
     {
         protected boolean markWhenUsed = false;
+        protected volatile FileStoreIndex index;
 
         public StoreLocation(java.io.File file, boolean isInstall)
         {
@@ -63,14 +64,34 @@ public abstract class AbstractFileStore extends WWObjectImpl implements FileStor
         {
             this.markWhenUsed = markWhenUsed;
         }
+
+        public FileStoreIndex getIndex()
+        {
+            return this.index;
+        }
+
+        public void setIndex(FileStoreIndex index)
+        {
+            this.index = index;
+        }
     }
 
+    /** The write location directory holding the saved indexes of all locations. */
+    protected static final String INDEX_DIRECTORY = "FileStoreIndex";
+    /** The maximum number of names remembered as absent from the class path. */
+    protected static final int MAX_CLASS_PATH_MISSES = 10000;
+
     // Retrieval could be occurring on several threads when the app adds a read location, so protect the list of read
     // locations from concurrent modification.
     protected final java.util.List<StoreLocation> readLocations =
         new java.util.concurrent.CopyOnWriteArrayList<StoreLocation>();
     protected StoreLocation writeLocation = null;
     private final Object fileLock = new Object();
+    protected volatile boolean indexEnabled = false;
+    protected java.util.concurrent.ExecutorService indexService;
+    // The class path does not change during a session, so names it doesn't hold are remembered when indexing.
+    protected final java.util.Set<String> classPathMisses = java.util.Collections.newSetFromMap(
+        new java.util.concurrent.ConcurrentHashMap<String, Boolean>());
 
     //**************************************************************//
     //********************  File Store Configuration  **************//
@@ -103,6 +124,9 @@ public abstract class AbstractFileStore extends WWObjectImpl implements FileStor
                 Logging.logger().severe(message);
                 throw new IllegalStateException(message);
             }
+
+            if (Configuration.getBooleanValue(AVKey.DATA_FILE_STORE_INDEX_ENABLED, false))
+                this.setIndexEnabled(true);
         }
         catch (javax.xml.parsers.ParserConfigurationException e)
         {
@@ -404,6 +428,9 @@ public abstract class AbstractFileStore extends WWObjectImpl implements FileStor
         java.io.File newFile = new java.io.File(newPath);
         StoreLocation newLocation = new StoreLocation(newFile, isInstall);
         this.readLocations.add(index, newLocation);
+
+        if (this.indexEnabled)
+            this.indexLocation(newLocation);
     }
 
     public void removeLocation(String path)
@@ -456,6 +483,156 @@ public abstract class AbstractFileStore extends WWObjectImpl implements FileStor
         return null;
     }
 
+    //**************************************************************//
+    //********************  File Store Index  **********************//
+    //**************************************************************//
+
+    /**
+     * Indicates whether the contents of each location are indexed.
+     *
+     * @return true if locations are indexed, otherwise false.
+     *
+     * @see #setIndexEnabled(boolean)
+     */
+    public boolean isIndexEnabled()
+    {
+        return this.indexEnabled;
+    }
+
+    /**
+     * Specifies whether to index the contents of each location, so that lookups of files absent from a location do not
+     * ask the file system. Each location's index is built, or brought up to date with the index saved by an earlier
+     * session, on a background thread. Until it is built, lookups in that location ask the file system. Files added
+     * through this file store are indexed as they are created. Files added to a location by other means are not found
+     * until {@link #refreshIndexes()} is called. Indexing is disabled by default, and is enabled at construction when
+     * the configuration parameter {@link AVKey#DATA_FILE_STORE_INDEX_ENABLED} is true.
+     *
+     * @param enabled true to index locations, otherwise false.
+     */
+    public synchronized void setIndexEnabled(boolean enabled)
+    {
+        if (enabled == this.indexEnabled)
+            return;
+
+        this.indexEnabled = enabled;
+
+        for (StoreLocation location : this.readLocations)
+        {
+            if (enabled)
+                this.indexLocation(location);
+            else
+                location.setIndex(null);
+        }
+
+        if (!enabled)
+            this.classPathMisses.clear();
+    }
+
+    /**
+     * Brings the index of each location up to date with files added to the location other than through this file
+     * store. The indexes are refreshed on a background thread. This does nothing if indexing is disabled.
+     */
+    public void refreshIndexes()
+    {
+        for (StoreLocation location : this.readLocations)
+        {
+            FileStoreIndex index = location.getIndex();
+            if (index != null)
+                this.refreshIndex(index);
+        }
+    }
+
+    /** @return the number of file lookups in a location that the location's index answered without the file system. */
+    public long getIndexHitCount()
+    {
+        long count = 0;
+        for (StoreLocation location : this.readLocations)
+        {
+            FileStoreIndex index = location.getIndex();
+            if (index != null)
+                count += index.getHitCount();
+        }
+
+        return count;
+    }
+
+    /** @return the number of file lookups in a location that its index could not answer and that found no file. */
+    public long getIndexFalsePositiveCount()
+    {
+        long count = 0;
+        for (StoreLocation location : this.readLocations)
+        {
+            FileStoreIndex index = location.getIndex();
+            if (index != null)
+                count += index.getFalsePositiveCount();
+        }
+
+        return count;
+    }
+
+    /** @return the total time the most recent refresh of each location's index took, in milliseconds. */
+    public long getIndexBuildTime()
+    {
+        long time = 0;
+        for (StoreLocation location : this.readLocations)
+        {
+            FileStoreIndex index = location.getIndex();
+            if (index != null)
+                time += index.getBuildTime();
+        }
+
+        return time;
+    }
+
+    protected void indexLocation(StoreLocation location)
+    {
+        java.io.File indexFile = null;
+        if (this.writeLocation != null)
+        {
+            String indexName = String.format("%08x.idx", location.getFile().getAbsolutePath().hashCode());
+            indexFile = new java.io.File(makeAbsolutePath(this.writeLocation.getFile(), INDEX_DIRECTORY), indexName);
+        }
+
+        FileStoreIndex index = new FileStoreIndex(location.getFile(), indexFile);
+        location.setIndex(index);
+        this.refreshIndex(index);
+    }
+
+    protected synchronized void refreshIndex(final FileStoreIndex index)
+    {
+        if (this.indexService == null)
+        {
+            this.indexService = java.util.concurrent.Executors.newSingleThreadExecutor(
+                new java.util.concurrent.ThreadFactory()
+                {
+                    public Thread newThread(Runnable runnable)
+                    {
+                        Thread thread = new Thread(runnable);
+                        thread.setDaemon(true);
+                        thread.setPriority(Thread.MIN_PRIORITY);
+                        thread.setName(Logging.getMessage("FileStore.IndexThreadName"));
+                        return thread;
+                    }
+                });
+        }
+
+        this.indexService.execute(new Runnable()
+        {
+            public void run()
+            {
+                try
+                {
+                    index.refresh();
+                }
+                catch (Exception e)
+                {
+                    String message = Logging.getMessage("FileStore.ExceptionIndexing", index.getLocation());
+                    Logging.logger().log(Level.SEVERE, message, e);
+                }
+            }
+        });
+    }
+
     //**************************************************************//
     //********************  File Store Contents  *******************//
     //**************************************************************//
@@ -465,18 +642,30 @@ public abstract class AbstractFileStore extends WWObjectImpl implements FileStor
         if (fileName == null)
             return false;
 
+        String indexName = this.indexEnabled ? FileStoreIndex.makeIndexName(fileName) : null;
+
         for (StoreLocation location : this.readLocations)
         {
             java.io.File dir = location.getFile();
             java.io.File file;
+            FileStoreIndex index = null;
 
             if (fileName.startsWith(dir.getAbsolutePath()))
+            {
                 file = new java.io.File(fileName);
+            }
             else
+            {
                 file = makeAbsoluteFile(dir, fileName);
+                index = indexName != null ? location.getIndex() : null;
+                if (index != null && !index.mightContain(indexName))
+                    continue;
+            }
 
             if (file.exists())
                 return true;
+            else if (index != null)
+                index.recordFalsePositive();
         }
 
         return false;
@@ -500,7 +689,9 @@ public abstract class AbstractFileStore extends WWObjectImpl implements FileStor
             throw new IllegalArgumentException(message);
         }
 
-        if (checkClassPath)
+        String indexName = this.indexEnabled ? FileStoreIndex.makeIndexName(fileName) : null;
+
+        if (checkClassPath && (indexName == null || !this.classPathMisses.contains(fileName)))
         {
             java.net.URL url = this.getClass().getClassLoader().getResource(fileName);
             if (url != null)
@@ -515,10 +706,18 @@ public abstract class AbstractFileStore extends WWObjectImpl implements FileStor
                 if (url != null)
                     return url;
             }
+
+            if (indexName != null && this.classPathMisses.size() < MAX_CLASS_PATH_MISSES)
+                this.classPathMisses.add(fileName);
         }
 
         for (StoreLocation location : this.readLocations)
         {
+            // Skip the location without asking the file system if its index knows the file is absent.
+            FileStoreIndex index = indexName != null ? location.getIndex() : null;
+            if (index != null && !index.mightContain(indexName))
+                continue;
+
             java.io.File dir = location.getFile();
             if (!dir.exists())
                 continue;
@@ -541,6 +740,10 @@ public abstract class AbstractFileStore extends WWObjectImpl implements FileStor
                         Logging.getMessage("FileStore.ExceptionCreatingURLForFile", file.getPath()), e);
                 }
             }
+            else if (index != null)
+            {
+                index.recordFalsePositive();
+            }
         }
 
         return null;
@@ -600,7 +803,14 @@ public abstract class AbstractFileStore extends WWObjectImpl implements FileStor
             }
 
             if (canCreateFile)
+            {
+                FileStoreIndex index = this.writeLocation.getIndex();
+                String indexName = index != null ? FileStoreIndex.makeIndexName(fileName) : null;
+                if (indexName != null)
+                    index.add(indexName);
+
                 return file;
+            }
             else
             {
                 String msg = Logging.getMessage("generic.CannotCreateFile", fullPath);
@@ -5,8 +5,11 @@
  */
 package gov.nasa.worldwind.cache;
 
+import gov.nasa.worldwind.Configuration;
+import gov.nasa.worldwind.avlist.AVKey;
 import gov.nasa.worldwind.util.*;
 
+import java.io.*;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -16,6 +19,10 @@ import java.util.concurrent.ConcurrentHashMap;
  */
 public class BasicMemoryCacheSet implements MemoryCacheSet
 {
+    /** The writer shared by the caches recording lookups, opened by the first cache created. Guarded by the class. */
+    protected static Writer traceWriter;
+    protected static String traceFilePath;
+
     private ConcurrentHashMap<String, MemoryCache> caches = new ConcurrentHashMap<String, MemoryCache>();
 
     public synchronized boolean containsCache(String key)
@@ -63,6 +70,86 @@ public class BasicMemoryCacheSet implements MemoryCacheSet
         return cache;
     }
 
+    /**
+     * Creates a new memory cache of the class named by the {@link AVKey#MEMORY_CACHE_CLASS_NAME} configuration value.
+     * The class must provide a public constructor taking the low water level and capacity as <code>long</code>
+     * arguments. A {@link BasicMemoryCache} is created if no class is configured or the configured class cannot be
+     * instantiated. If the {@link AVKey#MEMORY_CACHE_ADMISSION_FILTER} configuration value is true, the new cache is
+     * wrapped in a {@link TinyLFUMemoryCache}. If the {@link AVKey#MEMORY_CACHE_TRACE_FILE} configuration value names a
+     * file, the new cache's lookups are recorded to it by a {@link TraceRecordingMemoryCache}.
+     * <p/>
+     * The new cache is not added to any cache set; call {@link MemoryCacheSet#addCache(String, MemoryCache)} to do
+     * that.
+     *
+     * @param loWater  the low water level of the new cache.
+     * @param capacity the maximum capacity of the new cache.
+     *
+     * @return the new memory cache.
+     */
+    public static MemoryCache createCache(long loWater, long capacity)
+    {
+        MemoryCache cache = doCreateCache(loWater, capacity);
+
+        if (Configuration.getBooleanValue(AVKey.MEMORY_CACHE_ADMISSION_FILTER, false))
+            cache = new TinyLFUMemoryCache(cache);
+
+        Writer writer = getTraceWriter();
+        if (writer != null)
+            cache = new TraceRecordingMemoryCache(cache, writer);
+
+        return cache;
+    }
+
+    /**
+     * Returns the writer that caches record their lookups to, opening the file named by the {@link
+     * AVKey#MEMORY_CACHE_TRACE_FILE} configuration value if it has changed since the writer was opened.
+     *
+     * @return the trace writer, or null if no trace file is configured or it cannot be opened.
+     */
+    protected static synchronized Writer getTraceWriter()
+    {
+        String path = Configuration.getStringValue(AVKey.MEMORY_CACHE_TRACE_FILE);
+        if (WWUtil.isEmpty(path))
+            return null;
+
+        if (traceWriter == null || !path.trim().equals(traceFilePath))
+        {
+            try
+            {
+                traceWriter = new BufferedWriter(new FileWriter(path.trim()));
+                traceFilePath = path.trim();
+            }
+            catch (IOException e)
+            {
+                String message = Logging.getMessage("generic.CannotOpenFile", path);
+                Logging.logger().log(java.util.logging.Level.SEVERE, message, e);
+                traceWriter = null;
+                traceFilePath = null;
+            }
+        }
+
+        return traceWriter;
+    }
+
+    protected static MemoryCache doCreateCache(long loWater, long capacity)
+    {
+        String className = Configuration.getStringValue(AVKey.MEMORY_CACHE_CLASS_NAME);
+        if (WWUtil.isEmpty(className) || className.trim().equals(BasicMemoryCache.class.getName()))
+            return new BasicMemoryCache(loWater, capacity);
+
+        try
+        {
+            Class<?> c = Class.forName(className.trim());
+            return (MemoryCache) c.getConstructor(long.class, long.class).newInstance(loWater, capacity);
+        }
+        catch (Exception e)
+        {
+            String message = Logging.getMessage("MemoryCacheSet.ExceptionCreatingCache", className);
+            Logging.logger().log(java.util.logging.Level.SEVERE, message, e);
+            return new BasicMemoryCache(loWater, capacity);
+        }
+    }
+
     public synchronized void clear()
     {
         for (MemoryCache cache : this.caches.values())
@@ -79,6 +166,18 @@ public class BasicMemoryCacheSet implements MemoryCacheSet
         {
             stats.add(new PerformanceStatistic(PerformanceStatistic.MEMORY_CACHE, "Cache Size (Kb): " + cache.getName(),
                 cache.getUsedCapacity() / 1000));
+
+            if (cache instanceof TraceRecordingMemoryCache)
+                cache = ((TraceRecordingMemoryCache) cache).getCache();
+
+            if (cache instanceof TinyLFUMemoryCache)
+            {
+                stats.addAll(((TinyLFUMemoryCache) cache).getPerformanceStatistics());
+                cache = ((TinyLFUMemoryCache) cache).getMainCache();
+            }
+
+            if (cache instanceof OffHeapMemoryCache)
+                stats.addAll(((OffHeapMemoryCache) cache).getPerformanceStatistics());
         }
 
         return stats;
@@ -0,0 +1,435 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+
+package gov.nasa.worldwind.cache;
+
+import gov.nasa.worldwind.util.Logging;
+
+import java.lang.ref.*;
+import java.nio.*;
+import java.util.*;
+
+/**
+ * Allocates fixed-size blocks from a pool of direct {@link ByteBuffer} slabs, within a total byte budget. Requests are
+ * rounded up to a power-of-two size class; each size class carves its own slabs into equal blocks and keeps a free list
+ * of them, so allocation and release are O(1) and the arena never fragments externally within a slab. A slab whose
+ * blocks are all free is returned to the budget when the budget is exhausted, so that memory can move between size
+ * classes.
+ * <p/>
+ * Released blocks are not reused immediately. A block handed to {@link #release(Block, Object)} is held in quarantine
+ * until the object that was reading from it has been garbage collected and a configurable delay has passed, so that a
+ * thread still holding the object after it left the cache never observes the block being overwritten.
+ *
+ * @version $Id$
+ */
+public class ByteBufferArena
+{
+    /** The default smallest block size, in bytes. */
+    public static final int DEFAULT_MIN_BLOCK_SIZE = 4096;
+    /** The default largest block size, in bytes. */
+    public static final int DEFAULT_MAX_BLOCK_SIZE = 1 << 23;
+    /** The default size of a slab, in bytes. Size classes with larger blocks use one block per slab. */
+    public static final int DEFAULT_SLAB_SIZE = 1 << 22;
+    /** The default minimum time a released block spends in quarantine, in milliseconds. */
+    public static final long DEFAULT_RECLAIM_DELAY = 1000;
+
+    /** A region of a slab handed out by {@link ByteBufferArena#allocate(int)}. */
+    public static class Block
+    {
+        protected final Slab slab;
+        protected final int offset;
+        protected int length;
+
+        protected Block(Slab slab, int offset)
+        {
+            this.slab = slab;
+            this.offset = offset;
+        }
+
+        /**
+         * Returns a new buffer sharing this block's memory, with position zero and limit equal to the requested
+         * length. The buffer uses the platform's native byte order.
+         *
+         * @return a buffer over this block.
+         */
+        public ByteBuffer getBuffer()
+        {
+            ByteBuffer buffer = this.slab.buffer.duplicate();
+            buffer.limit(this.offset + this.length);
+            buffer.position(this.offset);
+            return buffer.slice().order(ByteOrder.nativeOrder());
+        }
+
+        /** @return the number of bytes requested when this block was allocated. */
+        public int getLength()
+        {
+            return this.length;
+        }
+
+        /** @return the number of bytes this block reserves, which is the block size of its size class. */
+        public int getCapacity()
+        {
+            return this.slab.blockSize;
+        }
+    }
+
+    protected static class Slab
+    {
+        protected final ByteBuffer buffer;
+        protected final int sizeClass;
+        protected final int blockSize;
+        protected final Block[] blocks;
+        /** The number of blocks allocated or in quarantine. */
+        protected int numInUse;
+
+        protected Slab(int sizeClass, int blockSize, int slabSize)
+        {
+            this.buffer = ByteBuffer.allocateDirect(slabSize);
+            this.sizeClass = sizeClass;
+            this.blockSize = blockSize;
+            this.blocks = new Block[slabSize / blockSize];
+            for (int i = 0; i < this.blocks.length; i++)
+            {
+                this.blocks[i] = new Block(this, i * blockSize);
+            }
+        }
+    }
+
+    protected static class QuarantineReference extends WeakReference<Object>
+    {
+        protected final Block block;
+        protected long clearedTime;
+
+        protected QuarantineReference(Object referent, ReferenceQueue<Object> queue, Block block)
+        {
+            super(referent, queue);
+            this.block = block;
+        }
+    }
+
+    protected final int minBlockShift;
+    protected final int maxBlockShift;
+    protected final int slabSize;
+    protected long budget;
+    protected long reclaimDelay = DEFAULT_RECLAIM_DELAY;
+
+    protected final List<ArrayDeque<Block>> freeBlocks = new ArrayList<ArrayDeque<Block>>();
+    protected final List<Slab> slabs = new ArrayList<Slab>();
+    protected final ReferenceQueue<Object> referenceQueue = new ReferenceQueue<Object>();
+    protected final Set<QuarantineReference> pending = new HashSet<QuarantineReference>();
+    protected final ArrayDeque<QuarantineReference> cleared = new ArrayDeque<QuarantineReference>();
+
+    protected long reservedBytes;
+    protected long allocatedBytes;
+    protected long requestedBytes;
+    protected long quarantinedBytes;
+    protected long numFailedAllocations;
+
+    /**
+     * Constructs an arena with the default block and slab sizes.
+     *
+     * @param budget the maximum number of bytes the arena may reserve for slabs.
+     */
+    public ByteBufferArena(long budget)
+    {
+        this(budget, DEFAULT_MIN_BLOCK_SIZE, DEFAULT_MAX_BLOCK_SIZE, DEFAULT_SLAB_SIZE);
+    }
+
+    /**
+     * Constructs an arena. Block sizes are rounded up to powers of two.
+     *
+     * @param budget       the maximum number of bytes the arena may reserve for slabs.
+     * @param minBlockSize the size of the smallest size class, in bytes.
+     * @param maxBlockSize the size of the largest size class, in bytes. Larger requests fail.
+     * @param slabSize     the size of the slabs that blocks are carved from, in bytes.
+     *
+     * @throws IllegalArgumentException if any size is less than 1 or the minimum block size is greater than the
+     *                                  maximum.
+     */
+    public ByteBufferArena(long budget, int minBlockSize, int maxBlockSize, int slabSize)
+    {
+        if (minBlockSize < 1 || maxBlockSize < minBlockSize || slabSize < 1)
+        {
+            String message = Logging.getMessage("generic.ArgumentOutOfRange",
+                "minBlockSize=" + minBlockSize + " maxBlockSize=" + maxBlockSize + " slabSize=" + slabSize);
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        this.budget = budget;
+        this.minBlockShift = ceilLog2(minBlockSize);
+        this.maxBlockShift = Math.min(ceilLog2(maxBlockSize), 30);
+        this.slabSize = slabSize;
+
+        for (int i = this.minBlockShift; i <= this.maxBlockShift; i++)
+        {
+            this.freeBlocks.add(new ArrayDeque<Block>());
+        }
+    }
+
+    protected static int ceilLog2(int n)
+    {
+        return n <= 1 ? 0 : 32 - Integer.numberOfLeadingZeros(n - 1);
+    }
+
+    /** @return the maximum number of bytes the arena may reserve for slabs. */
+    public synchronized long getBudget()
+    {
+        return this.budget;
+    }
+
+    /**
+     * Specifies the maximum number of bytes the arena may reserve. Reducing the budget releases empty slabs but does
+     * not affect allocated blocks.
+     *
+     * @param budget the new budget in bytes.
+     */
+    public synchronized void setBudget(long budget)
+    {
+        this.budget = budget;
+
+        if (this.reservedBytes > this.budget)
+            this.releaseEmptySlabs();
+    }
+
+    /** @return the minimum time a released block spends in quarantine, in milliseconds. */
+    public synchronized long getReclaimDelay()
+    {
+        return this.reclaimDelay;
+    }
+
+    /**
+     * Specifies the minimum time a released block spends in quarantine after the object reading from it has been
+     * garbage collected. This should exceed the longest time a thread holds a payload buffer obtained from an object
+     * without holding the object itself.
+     *
+     * @param reclaimDelay the delay in milliseconds.
+     */
+    public synchronized void setReclaimDelay(long reclaimDelay)
+    {
+        this.reclaimDelay = reclaimDelay;
+    }
+
+    /** @return the largest number of bytes a single block can hold. */
+    public int getMaxBlockSize()
+    {
+        return 1 << this.maxBlockShift;
+    }
+
+    /**
+     * Returns the number of bytes a request of the specified length reserves, or -1 if the request exceeds the maximum
+     * block size.
+     *
+     * @param length the number of bytes to request.
+     *
+     * @return the block size for the request.
+     */
+    public int getBlockSize(int length)
+    {
+        int shift = Math.max(ceilLog2(length), this.minBlockShift);
+        return shift <= this.maxBlockShift ? 1 << shift : -1;
+    }
+
+    /**
+     * Allocates a block of at least <code>length</code> bytes.
+     *
+     * @param length the number of bytes required.
+     *
+     * @return the new block, or null if the request exceeds the maximum block size or the budget has no room for it.
+     */
+    public synchronized Block allocate(int length)
+    {
+        if (length <= 0)
+            return null;
+
+        int shift = Math.max(ceilLog2(length), this.minBlockShift);
+        if (shift > this.maxBlockShift)
+        {
+            this.numFailedAllocations++;
+            return null;
+        }
+
+        this.reclaim();
+
+        ArrayDeque<Block> free = this.freeBlocks.get(shift - this.minBlockShift);
+        if (free.isEmpty() && !this.addSlab(shift))
+        {
+            this.numFailedAllocations++;
+            return null;
+        }
+
+        Block block = free.pop();
+        block.length = length;
+        block.slab.numInUse++;
+        this.allocatedBytes += block.slab.blockSize;
+        this.requestedBytes += length;
+
+        return block;
+    }
+
+    /**
+     * Releases a block. The block is quarantined until <code>reader</code> has been garbage collected and the reclaim
+     * delay has passed. Releasing a block twice has undefined results.
+     *
+     * @param block  the block to release.
+     * @param reader the object that reads from the block, or null if no object does.
+     */
+    public synchronized void release(Block block, Object reader)
+    {
+        if (block == null)
+            return;
+
+        this.allocatedBytes -= block.slab.blockSize;
+        this.requestedBytes -= block.length;
+        this.quarantinedBytes += block.slab.blockSize;
+
+        QuarantineReference ref = new QuarantineReference(reader, this.referenceQueue, block);
+        if (reader == null)
+        {
+            ref.clearedTime = System.currentTimeMillis();
+            this.cleared.add(ref);
+        }
+        else
+        {
+            this.pending.add(ref);
+        }
+    }
+
+    /** Returns quarantined blocks whose readers have been collected and whose delay has passed to their free lists. */
+    protected void reclaim()
+    {
+        long now = System.currentTimeMillis();
+
+        Reference<?> r;
+        while ((r = this.referenceQueue.poll()) != null)
+        {
+            QuarantineReference ref = (QuarantineReference) r;
+            if (this.pending.remove(ref))
+            {
+                ref.clearedTime = now;
+                this.cleared.add(ref);
+            }
+        }
+
+        while (!this.cleared.isEmpty() && now - this.cleared.peek().clearedTime >= this.reclaimDelay)
+        {
+            Block block = this.cleared.poll().block;
+            block.slab.numInUse--;
+            this.quarantinedBytes -= block.slab.blockSize;
+            this.freeBlocks.get(block.slab.sizeClass - this.minBlockShift).push(block);
+        }
+    }
+
+    protected boolean addSlab(int shift)
+    {
+        int blockSize = 1 << shift;
+        // Small budgets use smaller slabs, so that each size class can reserve at least one.
+        int size = (int) Math.max(blockSize, Math.min(this.slabSize, this.budget / 4) / blockSize * blockSize);
+
+        if (this.reservedBytes + size > this.budget)
+        {
+            this.releaseEmptySlabs();
+            if (this.reservedBytes + size > this.budget)
+                return false;
+        }
+
+        Slab slab;
+        try
+        {
+            slab = new Slab(shift, blockSize, size);
+        }
+        catch (OutOfMemoryError e)
+        {
+            String message = Logging.getMessage("generic.MemoryAllocationError", size);
+            Logging.logger().warning(message);
+            return false;
+        }
+
+        this.slabs.add(slab);
+        this.reservedBytes += size;
+
+        ArrayDeque<Block> free = this.freeBlocks.get(shift - this.minBlockShift);
+        for (Block block : slab.blocks)
+        {
+            free.add(block);
+        }
+
+        return true;
+    }
+
+    protected void releaseEmptySlabs()
+    {
+        Iterator<Slab> iter = this.slabs.iterator();
+        while (iter.hasNext())
+        {
+            Slab slab = iter.next();
+            if (slab.numInUse > 0)
+                continue;
+
+            Iterator<Block> blockIter = this.freeBlocks.get(slab.sizeClass - this.minBlockShift).iterator();
+            while (blockIter.hasNext())
+            {
+                if (blockIter.next().slab == slab)
+                    blockIter.remove();
+            }
+
+            this.reservedBytes -= slab.buffer.capacity();
+            iter.remove();
+        }
+    }
+
+    /** @return the number of bytes reserved by slabs, whether or not they are allocated. */
+    public synchronized long getReservedBytes()
+    {
+        return this.reservedBytes;
+    }
+
+    /** @return the number of bytes in allocated blocks. */
+    public synchronized long getAllocatedBytes()
+    {
+        return this.allocatedBytes;
+    }
+
+    /** @return the number of bytes requested by the allocated blocks' owners. */
+    public synchronized long getRequestedBytes()
+    {
+        return this.requestedBytes;
+    }
+
+    /** @return the number of bytes in released blocks that have not yet been reclaimed. */
+    public synchronized long getQuarantinedBytes()
+    {
+        return this.quarantinedBytes;
+    }
+
+    /** @return the number of allocations that failed because of the block size limit or the budget. */
+    public synchronized long getNumFailedAllocations()
+    {
+        return this.numFailedAllocations;
+    }
+
+    /**
+     * Indicates the fraction of allocated bytes not used by their owners because requests are rounded up to a block
+     * size.
+     *
+     * @return the internal fragmentation, from 0 to 1.
+     */
+    public synchronized double getInternalFragmentation()
+    {
+        return this.allocatedBytes > 0 ? 1d - (double) this.requestedBytes / this.allocatedBytes : 0d;
+    }
+
+    /**
+     * Indicates the fraction of reserved bytes that are neither allocated nor quarantined.
+     *
+     * @return the external fragmentation, from 0 to 1.
+     */
+    public synchronized double getExternalFragmentation()
+    {
+        return this.reservedBytes > 0 ?
+            (double) (this.reservedBytes - this.allocatedBytes - this.quarantinedBytes) / this.reservedBytes : 0d;
+    }
+}
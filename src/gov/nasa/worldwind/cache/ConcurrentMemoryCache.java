@@ -0,0 +1,613 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+package gov.nasa.worldwind.cache;
+
+import gov.nasa.worldwind.util.Logging;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A {@link MemoryCache} designed for heavy concurrent use by the render and retrieval threads. Entries are distributed
+ * over a power-of-two number of segments according to their key's hash code. Each segment keeps its entries in a
+ * {@link ConcurrentHashMap} and tracks the cache units it holds, so lookups via {@link #getObject(Object)} and {@link
+ * #contains(Object)} never acquire a lock. Additions and removals lock only the segment the key maps to.
+ * <p/>
+ * Eviction uses the CLOCK approximation of least-recently-used replacement: a lookup sets the entry's reference bit,
+ * and the segment's clock hand sweeps over its entries clearing reference bits until it finds one that has not been
+ * referenced since the hand last passed. Evicting an entry is therefore O(1) amortised, rather than requiring the
+ * full sort of the cache contents performed by {@link BasicMemoryCache}.
+ * <p/>
+ * When the used capacity exceeds the capacity, entries are evicted until the used capacity reaches the low water
+ * level. Eviction starts in the segment that triggered it and proceeds first by trimming each segment to its share of
+ * the low water level, then by trimming segments in turn, so that no single segment is emptied while others remain
+ * above their share. Cache listeners are notified of removed entries after the segment lock is released.
+ *
+ * @version $Id$
+ */
+public class ConcurrentMemoryCache implements MemoryCache
+{
+    /** The number of segments used when none is specified. */
+    protected static final int DEFAULT_CONCURRENCY_LEVEL = 16;
+
+    protected static class CacheEntry
+    {
+        protected final Object key;
+        protected final Object clientObject;
+        protected final long clientObjectSize;
+        /** Set on each lookup, cleared as the clock hand passes the entry. */
+        protected volatile boolean referenced;
+        /** The entry's position in its segment's clock. Guarded by the segment lock. */
+        protected int clockIndex = -1;
+
+        protected CacheEntry(Object key, Object clientObject, long clientObjectSize)
+        {
+            this.key = key;
+            this.clientObject = clientObject;
+            this.clientObjectSize = clientObjectSize;
+            this.referenced = true; // give new entries one sweep of grace
+        }
+
+        public String toString()
+        {
+            return key.toString() + " " + clientObject.toString() + " " + referenced + " " + clientObjectSize;
+        }
+    }
+
+    protected static class Segment extends ReentrantLock
+    {
+        protected final ConcurrentHashMap<Object, CacheEntry> entries = new ConcurrentHashMap<Object, CacheEntry>();
+        /** The entries of this segment in clock order. Guarded by the segment lock. */
+        protected CacheEntry[] clock = new CacheEntry[16];
+        protected int clockSize;
+        protected int clockHand;
+        /** The cache units held by this segment. Written under the segment lock. */
+        protected volatile long usedCapacity;
+
+        protected void link(CacheEntry entry)
+        {
+            if (this.clockSize == this.clock.length)
+                this.clock = Arrays.copyOf(this.clock, 2 * this.clock.length);
+
+            if (this.clockHand < this.clockSize)
+            {
+                // Place the new entry just behind the hand so that it is the last entry the next sweep reaches. The
+                // entry displaced from that slot moves to the end of the clock.
+                CacheEntry displaced = this.clock[this.clockHand];
+                displaced.clockIndex = this.clockSize;
+                this.clock[this.clockSize++] = displaced;
+                entry.clockIndex = this.clockHand;
+                this.clock[this.clockHand++] = entry;
+            }
+            else
+            {
+                entry.clockIndex = this.clockSize;
+                this.clock[this.clockSize++] = entry;
+            }
+
+            this.usedCapacity += entry.clientObjectSize;
+        }
+
+        protected void unlink(CacheEntry entry)
+        {
+            // Move the last entry into the vacated slot so that removal is O(1).
+            int index = entry.clockIndex;
+            CacheEntry last = this.clock[--this.clockSize];
+            this.clock[index] = last;
+            last.clockIndex = index;
+            this.clock[this.clockSize] = null;
+            entry.clockIndex = -1;
+            this.usedCapacity -= entry.clientObjectSize;
+
+            if (this.clockHand >= this.clockSize)
+                this.clockHand = 0;
+        }
+
+        /**
+         * Advances the clock hand to the first unreferenced entry, clearing the reference bit of each entry passed,
+         * and removes that entry. The segment must be locked and not empty.
+         *
+         * @return the removed entry.
+         */
+        protected CacheEntry evictOne()
+        {
+            for (; ; )
+            {
+                if (this.clockHand >= this.clockSize)
+                    this.clockHand = 0;
+
+                CacheEntry entry = this.clock[this.clockHand];
+                if (entry.referenced)
+                {
+                    entry.referenced = false;
+                    this.clockHand++;
+                }
+                else
+                {
+                    this.entries.remove(entry.key, entry);
+                    this.unlink(entry);
+                    return entry;
+                }
+            }
+        }
+
+        protected void clear(List<CacheEntry> removed)
+        {
+            for (int i = 0; i < this.clockSize; i++)
+            {
+                removed.add(this.clock[i]);
+                this.clock[i].clockIndex = -1;
+                this.clock[i] = null;
+            }
+
+            this.entries.clear();
+            this.clockSize = 0;
+            this.clockHand = 0;
+            this.usedCapacity = 0;
+        }
+    }
+
+    protected final Segment[] segments;
+    protected final int segmentMask;
+    protected java.util.concurrent.CopyOnWriteArrayList<MemoryCache.CacheListener> listeners;
+    protected AtomicLong capacity = new AtomicLong();
+    protected AtomicLong currentUsedCapacity = new AtomicLong();
+    protected volatile long lowWater;
+    protected String name = "";
+
+    /**
+     * Constructs a new cache using <code>capacity</code> for maximum size, and <code>loWater</code> for the low water.
+     * The cache uses a default number of segments.
+     *
+     * @param loWater  the low water level.
+     * @param capacity the maximum capacity.
+     */
+    public ConcurrentMemoryCache(long loWater, long capacity)
+    {
+        this(loWater, capacity, DEFAULT_CONCURRENCY_LEVEL);
+    }
+
+    /**
+     * Constructs a new cache using <code>capacity</code> for maximum size, <code>loWater</code> for the low water, and
+     * the smallest power of two greater than or equal to <code>concurrencyLevel</code> as the number of segments.
+     *
+     * @param loWater          the low water level.
+     * @param capacity         the maximum capacity.
+     * @param concurrencyLevel the estimated number of concurrently updating threads.
+     *
+     * @throws IllegalArgumentException if <code>concurrencyLevel</code> is less than 1.
+     */
+    public ConcurrentMemoryCache(long loWater, long capacity, int concurrencyLevel)
+    {
+        if (concurrencyLevel < 1)
+        {
+            String message = Logging.getMessage("generic.ArgumentOutOfRange", "concurrencyLevel=" + concurrencyLevel);
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        int numSegments = 1;
+        while (numSegments < concurrencyLevel && numSegments < (1 << 16))
+        {
+            numSegments <<= 1;
+        }
+
+        this.segments = new Segment[numSegments];
+        for (int i = 0; i < numSegments; i++)
+        {
+            this.segments[i] = new Segment();
+        }
+
+        this.segmentMask = numSegments - 1;
+        this.listeners = new java.util.concurrent.CopyOnWriteArrayList<MemoryCache.CacheListener>();
+        this.capacity.set(capacity);
+        this.lowWater = loWater;
+    }
+
+    /** @return the number of objects currently stored in this cache. */
+    public int getNumObjects()
+    {
+        int count = 0;
+
+        for (Segment segment : this.segments)
+        {
+            count += segment.entries.size();
+        }
+
+        return count;
+    }
+
+    /** @return the capacity of the cache. */
+    public long getCapacity()
+    {
+        return this.capacity.get();
+    }
+
+    /** @return the number of cache units that the cache currently holds. */
+    public long getUsedCapacity()
+    {
+        return this.currentUsedCapacity.get();
+    }
+
+    /** @return the amount of free space left in the cache (in cache units). */
+    public long getFreeCapacity()
+    {
+        return Math.max(this.capacity.get() - this.currentUsedCapacity.get(), 0);
+    }
+
+    /** @return the number of segments this cache distributes its entries over. */
+    public int getNumSegments()
+    {
+        return this.segments.length;
+    }
+
+    public void setName(String name)
+    {
+        this.name = name != null ? name : "";
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    /**
+     * Adds a  cache listener, MemoryCache listeners are used to notify classes when an item is removed from the cache.
+     *
+     * @param listener The new <code>CacheListener</code>.
+     *
+     * @throws IllegalArgumentException is <code>listener</code> is null.
+     */
+    public void addCacheListener(MemoryCache.CacheListener listener)
+    {
+        if (listener == null)
+        {
+            String message = Logging.getMessage("BasicMemoryCache.nullListenerAdded");
+            Logging.logger().warning(message);
+            throw new IllegalArgumentException(message);
+        }
+        this.listeners.add(listener);
+    }
+
+    /**
+     * Removes a cache listener, objects using this listener will no longer receive notification of cache events.
+     *
+     * @param listener The <code>CacheListener</code> to remove.
+     *
+     * @throws IllegalArgumentException if <code>listener</code> is null.
+     */
+    public void removeCacheListener(MemoryCache.CacheListener listener)
+    {
+        if (listener == null)
+        {
+            String message = Logging.getMessage("BasicMemoryCache.nullListenerRemoved");
+            Logging.logger().warning(message);
+            throw new IllegalArgumentException(message);
+        }
+        this.listeners.remove(listener);
+    }
+
+    /**
+     * Sets the new capacity for the cache. Entries are not removed until the next addition finds the cache over
+     * capacity. See {@link BasicMemoryCache#setCapacity(long)}.
+     *
+     * @param newCapacity the new capacity of the cache.
+     */
+    public void setCapacity(long newCapacity)
+    {
+        this.capacity.set(newCapacity);
+    }
+
+    /**
+     * Sets the new low water level in cache units. When the cache fills, it removes items until it reaches the low
+     * water level.
+     *
+     * @param loWater the new low water level.
+     */
+    public void setLowWater(long loWater)
+    {
+        if (loWater < this.capacity.get() && loWater >= 0)
+        {
+            this.lowWater = loWater;
+        }
+    }
+
+    /**
+     * Returns the low water level in cache units. When the cache fills, it removes items until it reaches the low water
+     * level.
+     *
+     * @return the low water level.
+     */
+    public long getLowWater()
+    {
+        return this.lowWater;
+    }
+
+    /**
+     * Returns true if the cache contains the item referenced by key. This method does not lock and does not mark the
+     * item as accessed.
+     *
+     * @param key The key of a specific object.
+     *
+     * @return true if the cache holds the item referenced by key.
+     *
+     * @throws IllegalArgumentException if <code>key</code> is null.
+     */
+    public boolean contains(Object key)
+    {
+        if (key == null)
+        {
+            String msg = Logging.getMessage("nullValue.KeyIsNull");
+            Logging.logger().severe(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        return this.segmentFor(key).entries.containsKey(key);
+    }
+
+    /**
+     * Adds an object to the cache. The add fails if the object or key is null, or if the size is zero, negative or
+     * greater than the maximum capacity.
+     *
+     * @param key              The unique reference key that identifies this object.
+     * @param clientObject     The actual object to be cached.
+     * @param clientObjectSize The size of the object in cache units.
+     *
+     * @return returns true if clientObject was added, false otherwise.
+     */
+    public boolean add(Object key, Object clientObject, long clientObjectSize)
+    {
+        long cap = this.capacity.get();
+
+        if (key == null || clientObject == null || clientObjectSize <= 0 || clientObjectSize > cap)
+        {
+            String message = Logging.getMessage("BasicMemoryCache.CacheItemNotAdded");
+
+            if (clientObjectSize > cap)
+            {
+                message += " - " + Logging.getMessage("BasicMemoryCache.ItemTooLargeForCache");
+            }
+
+            Logging.logger().warning(message);
+
+            return false;
+        }
+
+        this.addEntry(new CacheEntry(key, clientObject, clientObjectSize));
+
+        return true;
+    }
+
+    public boolean add(Object key, Cacheable clientObject)
+    {
+        return this.add(key, clientObject, clientObject.getSizeInBytes());
+    }
+
+    /**
+     * Links a validated entry into its segment, replacing any entry with the same key and evicting entries as
+     * necessary to keep the used capacity within the capacity.
+     *
+     * @param entry the entry to add.
+     */
+    protected void addEntry(CacheEntry entry)
+    {
+        Object key = entry.key;
+        long clientObjectSize = entry.clientObjectSize;
+        long cap = this.capacity.get();
+        List<CacheEntry> removed = new ArrayList<CacheEntry>();
+        int index = this.segmentIndex(key);
+
+        // Make space before linking the new entry so that it cannot be chosen for eviction.
+        if (this.currentUsedCapacity.get() + clientObjectSize > cap)
+            this.makeSpace(index, clientObjectSize, removed);
+
+        Segment segment = this.segments[index];
+        segment.lock();
+        try
+        {
+            CacheEntry existing = segment.entries.put(key, entry);
+            if (existing != null) // replacing
+            {
+                segment.unlink(existing);
+                this.currentUsedCapacity.addAndGet(-existing.clientObjectSize);
+                removed.add(existing);
+            }
+
+            segment.link(entry);
+            this.currentUsedCapacity.addAndGet(clientObjectSize);
+        }
+        finally
+        {
+            segment.unlock();
+        }
+
+        // Concurrent additions may have consumed the space made above.
+        if (this.currentUsedCapacity.get() > cap)
+            this.makeSpace(index, 0, removed);
+
+        if (removed.size() > 0)
+            this.notifyRemoved(removed);
+    }
+
+    /**
+     * Remove the object reference by key from the cache. If no object with the corresponding key is found, this method
+     * returns immediately.
+     *
+     * @param key the key of the object to be removed.
+     */
+    public void remove(Object key)
+    {
+        if (key == null)
+        {
+            Logging.logger().finer("nullValue.KeyIsNull");
+
+            return;
+        }
+
+        CacheEntry entry;
+
+        Segment segment = this.segmentFor(key);
+        segment.lock();
+        try
+        {
+            entry = segment.entries.remove(key);
+            if (entry == null)
+                return;
+
+            segment.unlink(entry);
+            this.currentUsedCapacity.addAndGet(-entry.clientObjectSize);
+        }
+        finally
+        {
+            segment.unlock();
+        }
+
+        this.notifyRemoved(Collections.singletonList(entry));
+    }
+
+    /**
+     * Obtain the object referenced by key without removing it, and mark the object as recently used. This method does
+     * not lock.
+     *
+     * @param key The key for the object to be found.
+     *
+     * @return the object referenced by key if it is present, null otherwise.
+     */
+    public Object getObject(Object key)
+    {
+        if (key == null)
+        {
+            Logging.logger().finer("nullValue.KeyIsNull");
+
+            return null;
+        }
+
+        CacheEntry entry = this.segmentFor(key).entries.get(key);
+        if (entry == null)
+            return null;
+
+        if (!entry.referenced) // avoid a volatile write when the bit is already set
+            entry.referenced = true;
+
+        return entry.clientObject;
+    }
+
+    /** Empties the cache. */
+    public void clear()
+    {
+        List<CacheEntry> removed = new ArrayList<CacheEntry>();
+
+        for (Segment segment : this.segments)
+        {
+            segment.lock();
+            try
+            {
+                int start = removed.size();
+                segment.clear(removed);
+
+                for (int i = start; i < removed.size(); i++)
+                {
+                    this.currentUsedCapacity.addAndGet(-removed.get(i).clientObjectSize);
+                }
+            }
+            finally
+            {
+                segment.unlock();
+            }
+        }
+
+        this.notifyRemoved(removed);
+    }
+
+    protected Segment segmentFor(Object key)
+    {
+        return this.segments[this.segmentIndex(key)];
+    }
+
+    protected int segmentIndex(Object key)
+    {
+        // Spread the hash code so that keys differing only in their upper bits map to different segments.
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        h *= 0x85ebca6b;
+        h ^= (h >>> 13);
+
+        return h & this.segmentMask;
+    }
+
+    /**
+     * Evicts entries until at least <code>spaceRequired</code> cache units are free and the used capacity is at or
+     * below the low water level, or at or below the capacity if the low water level is not less than the capacity. The
+     * first pass trims each segment to its share of the target, starting with segment <code>first</code>; the second
+     * pass trims segments in turn until the target is met.
+     *
+     * @param first         the index of the segment to start evicting from.
+     * @param spaceRequired the amount of space required.
+     * @param removed       the list to append evicted entries to.
+     */
+    protected void makeSpace(int first, long spaceRequired, List<CacheEntry> removed)
+    {
+        long cap = this.capacity.get();
+        long target = Math.min(this.lowWater < cap ? this.lowWater : cap, cap - spaceRequired);
+        long segmentTarget = target / this.segments.length;
+
+        for (int pass = 0; pass < 2 && this.currentUsedCapacity.get() > target; pass++)
+        {
+            for (int i = 0; i < this.segments.length && this.currentUsedCapacity.get() > target; i++)
+            {
+                Segment segment = this.segments[(first + i) & this.segmentMask];
+                segment.lock();
+                try
+                {
+                    while (segment.clockSize > 0 && this.currentUsedCapacity.get() > target
+                        && (pass > 0 || segment.usedCapacity > segmentTarget))
+                    {
+                        CacheEntry entry = segment.evictOne();
+                        this.currentUsedCapacity.addAndGet(-entry.clientObjectSize);
+                        removed.add(entry);
+                    }
+                }
+                finally
+                {
+                    segment.unlock();
+                }
+            }
+        }
+    }
+
+    protected void notifyRemoved(List<CacheEntry> removed)
+    {
+        for (CacheEntry entry : removed)
+        {
+            for (MemoryCache.CacheListener listener : this.listeners)
+            {
+                try
+                {
+                    listener.entryRemoved(entry.key, entry.clientObject);
+                }
+                catch (Exception e)
+                {
+                    listener.removalException(e, entry.key, entry.clientObject);
+                }
+            }
+        }
+    }
+
+    /**
+     * a <code>String</code> representation of this object is returned.&nbsp; This representation consists of maximum
+     * size, current used capacity and number of currently cached items.
+     *
+     * @return a <code>String</code> representation of this object.
+     */
+    @Override
+    public String toString()
+    {
+        return "MemoryCache " + this.name + " max size = " + this.getCapacity() + " current size = "
+            + this.currentUsedCapacity.get() + " number of items: " + this.getNumObjects();
+    }
+}
@@ -0,0 +1,364 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+
+package gov.nasa.worldwind.cache;
+
+import gov.nasa.worldwind.util.*;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+
+/**
+ * Indexes the files beneath one file store location with a {@link BloomFilter}, so that a file store can tell that a
+ * file is absent from the location without asking the file system. Files added through the file store are added to
+ * the index as they are created; files added by other means are found the next time the index is refreshed.
+ * <p/>
+ * {@link #refresh()} builds the index by listing the location. Once built, the index is saved together with the
+ * modification time of each directory, so later refreshes, including the first refresh in a later session, list only
+ * the directories that have changed. Until the first refresh completes the index answers that every file may be
+ * present.
+ * <p/>
+ * The index counts lookups it answered without the file system, lookups it could not answer that found no file, and
+ * the time its last refresh took.
+ *
+ * @version $Id$
+ */
+public class FileStoreIndex
+{
+    /** The number of files an index is initially sized for. */
+    public static final long DEFAULT_EXPECTED_COUNT = 1 << 18;
+    /** The fraction of absent files the index fails to recognize as absent when it holds the expected count. */
+    public static final double DEFAULT_FALSE_POSITIVE_PROBABILITY = 0.01;
+
+    protected static final int MAGIC = 0x57574649;
+    protected static final int VERSION = 1;
+    /**
+     * Directories modified within this many milliseconds of being listed are listed again at the next refresh, because
+     * file systems with coarse modification times may not record a change made just after the listing.
+     */
+    protected static final long MODIFICATION_TIME_MARGIN = 2000;
+
+    protected final File location;
+    protected final File indexFile;
+    protected volatile BloomFilter filter;
+    protected BloomFilter pendingFilter;
+    protected volatile boolean complete;
+    protected boolean loaded;
+    /** Relative path of each indexed directory, mapped to its modification time when last listed. */
+    protected Map<String, Long> directories = new HashMap<String, Long>();
+    protected long expectedCount = DEFAULT_EXPECTED_COUNT;
+    protected final AtomicLong hitCount = new AtomicLong();
+    protected final AtomicLong falsePositiveCount = new AtomicLong();
+    protected volatile long buildTime;
+
+    /**
+     * Constructs an index of a location. The index answers that every file may be present until it is refreshed. The
+     * index saved by an earlier session, if there is one, is loaded by the first refresh.
+     *
+     * @param location  the file store location to index.
+     * @param indexFile the file to save the index in, or null to not save it.
+     *
+     * @throws IllegalArgumentException if the location is null.
+     */
+    public FileStoreIndex(File location, File indexFile)
+    {
+        if (location == null)
+        {
+            String message = Logging.getMessage("nullValue.FileIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        this.location = location;
+        this.indexFile = indexFile;
+    }
+
+    /**
+     * Returns the name under which a file is indexed. Names are compared without regard to case, so that a file is
+     * never reported absent on a file system that ignores case.
+     *
+     * @param fileName the file's name, relative to the location.
+     *
+     * @return the file's index name, or null if the index cannot answer lookups of the name.
+     */
+    public static String makeIndexName(String fileName)
+    {
+        String name = AbstractFileStore.normalizeFileStoreName(fileName);
+
+        // Names that reach a file by more than one path cannot be compared with the names of listed files.
+        if (name.contains("//") || name.contains("./"))
+            return null;
+
+        return name.toLowerCase(Locale.ENGLISH);
+    }
+
+    /** @return the location this indexes. */
+    public File getLocation()
+    {
+        return this.location;
+    }
+
+    /** @return true if the index has been built and answers lookups, otherwise false. */
+    public boolean isComplete()
+    {
+        return this.complete;
+    }
+
+    /**
+     * Indicates whether a file may be present in the location. Answers that are false are counted as index hits.
+     *
+     * @param indexName the file's index name, as returned by {@link #makeIndexName(String)}.
+     *
+     * @return false if the file is definitely absent, true if it may be present or the index has not been built.
+     */
+    public boolean mightContain(String indexName)
+    {
+        BloomFilter bf = this.filter;
+        if (!this.complete || bf == null || bf.mightContain(indexName))
+            return true;
+
+        this.hitCount.incrementAndGet();
+        return false;
+    }
+
+    /** Records that a file the index reported as possibly present was not found. */
+    public void recordFalsePositive()
+    {
+        if (this.complete)
+            this.falsePositiveCount.incrementAndGet();
+    }
+
+    /**
+     * Adds a file to the index.
+     *
+     * @param indexName the file's index name, as returned by {@link #makeIndexName(String)}.
+     */
+    public synchronized void add(String indexName)
+    {
+        if (this.filter != null)
+            this.filter.add(indexName);
+
+        // A refresh in progress replaces the filter when it completes, so it must see the name too.
+        if (this.pendingFilter != null)
+            this.pendingFilter.add(indexName);
+    }
+
+    /** @return the number of lookups answered without asking the file system. */
+    public long getHitCount()
+    {
+        return this.hitCount.get();
+    }
+
+    /** @return the number of lookups the index could not answer that found no file. */
+    public long getFalsePositiveCount()
+    {
+        return this.falsePositiveCount.get();
+    }
+
+    /** @return the time the last refresh took, in milliseconds. */
+    public long getBuildTime()
+    {
+        return this.buildTime;
+    }
+
+    /**
+     * Brings the index up to date with the location's contents, and saves it. If the index has been built before, only
+     * directories modified since they were last listed are listed again. The index is rebuilt from scratch when it
+     * holds too many names for its size. Refreshing may take a long time for a large location and should not be done
+     * on a thread that renders or responds to the user.
+     */
+    public void refresh()
+    {
+        long start = System.currentTimeMillis();
+
+        boolean incremental;
+        BloomFilter building;
+        Map<String, Long> dirs;
+
+        // Names added while the saved index loads or the new filter is created must not be lost.
+        synchronized (this)
+        {
+            if (!this.loaded)
+            {
+                if (this.indexFile != null && this.indexFile.exists())
+                    this.load();
+                this.loaded = true;
+            }
+
+            BloomFilter current = this.filter;
+            incremental = current != null && current.getCount() <= this.expectedCount;
+            if (current != null && !incremental)
+                this.expectedCount = Math.max(this.expectedCount, 2 * current.getCount());
+
+            building = incremental ? current.copy()
+                : new BloomFilter(this.expectedCount, DEFAULT_FALSE_POSITIVE_PROBABILITY);
+            dirs = incremental ? new HashMap<String, Long>(this.directories) : new HashMap<String, Long>();
+            this.pendingFilter = building;
+        }
+
+        Deque<String> dirsToList = new ArrayDeque<String>();
+
+        if (incremental)
+        {
+            Iterator<Map.Entry<String, Long>> iter = dirs.entrySet().iterator();
+            while (iter.hasNext())
+            {
+                Map.Entry<String, Long> entry = iter.next();
+                long modified = this.makeFile(entry.getKey()).lastModified();
+                if (modified == 0) // the directory no longer exists
+                    iter.remove();
+                else if (modified != entry.getValue())
+                    dirsToList.add(entry.getKey());
+            }
+        }
+        else
+        {
+            dirsToList.add("");
+        }
+
+        while (!dirsToList.isEmpty())
+        {
+            this.listDirectory(dirsToList.poll(), building, dirs, dirsToList);
+        }
+
+        synchronized (this)
+        {
+            this.filter = building;
+            this.pendingFilter = null;
+            this.directories = dirs;
+            this.complete = true;
+        }
+
+        if (building.getCount() > this.expectedCount)
+            this.expectedCount = 2 * building.getCount();
+
+        this.buildTime = System.currentTimeMillis() - start;
+        Logging.logger().fine(Logging.getMessage("FileStore.IndexBuilt", this.location.getPath(), this.buildTime));
+
+        if (this.indexFile != null)
+            this.save();
+    }
+
+    protected void listDirectory(String path, BloomFilter building, Map<String, Long> dirs,
+        Collection<String> dirsToList)
+    {
+        File dir = this.makeFile(path);
+        long listTime = System.currentTimeMillis();
+        long modified = dir.lastModified();
+        File[] children = dir.listFiles();
+        if (children == null)
+        {
+            dirs.remove(path);
+            return;
+        }
+
+        dirs.put(path, listTime - modified < MODIFICATION_TIME_MARGIN ? -1L : modified);
+
+        for (File child : children)
+        {
+            String childPath = path.length() > 0 ? path + "/" + child.getName() : child.getName();
+            if (child.isDirectory())
+            {
+                // Known directories are checked for changes on their own.
+                if (!dirs.containsKey(childPath))
+                    dirsToList.add(childPath);
+            }
+            else
+            {
+                building.add(makeIndexName(childPath));
+            }
+        }
+    }
+
+    protected File makeFile(String path)
+    {
+        return path.length() > 0 ? new File(this.location, path) : this.location;
+    }
+
+    protected void load()
+    {
+        DataInputStream in = null;
+        try
+        {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(this.indexFile)));
+            if (in.readInt() != MAGIC || in.readInt() != VERSION
+                || !in.readUTF().equals(this.location.getAbsolutePath()))
+                return;
+
+            long expected = in.readLong();
+            int numDirs = in.readInt();
+            Map<String, Long> dirs = new HashMap<String, Long>(Math.max(16, 2 * numDirs));
+            for (int i = 0; i < numDirs; i++)
+            {
+                dirs.put(in.readUTF(), in.readLong());
+            }
+
+            this.filter = BloomFilter.read(in);
+            this.directories = dirs;
+            this.expectedCount = expected;
+        }
+        catch (IOException e)
+        {
+            String message = Logging.getMessage("FileStore.ExceptionReadingIndex", this.indexFile.getPath());
+            Logging.logger().log(Level.WARNING, message, e);
+            this.filter = null;
+            this.directories = new HashMap<String, Long>();
+        }
+        finally
+        {
+            WWIO.closeStream(in, this.indexFile.getPath());
+        }
+    }
+
+    protected void save()
+    {
+        File tmpFile = new File(this.indexFile.getPath() + ".tmp");
+        DataOutputStream out = null;
+        try
+        {
+            File parent = this.indexFile.getParentFile();
+            if (parent != null && !parent.exists() && !parent.mkdirs())
+                throw new IOException(Logging.getMessage("generic.CannotCreateFile", parent.getPath()));
+
+            BloomFilter bf;
+            Map<String, Long> dirs;
+            synchronized (this)
+            {
+                bf = this.filter;
+                dirs = this.directories;
+            }
+
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(this.location.getAbsolutePath());
+            out.writeLong(this.expectedCount);
+            out.writeInt(dirs.size());
+            for (Map.Entry<String, Long> entry : dirs.entrySet())
+            {
+                out.writeUTF(entry.getKey());
+                out.writeLong(entry.getValue());
+            }
+            bf.write(out);
+            out.close();
+            out = null;
+
+            if ((this.indexFile.exists() && !this.indexFile.delete()) || !tmpFile.renameTo(this.indexFile))
+                throw new IOException(Logging.getMessage("generic.CannotCreateFile", this.indexFile.getPath()));
+        }
+        catch (IOException e)
+        {
+            String message = Logging.getMessage("FileStore.ExceptionWritingIndex", this.indexFile.getPath());
+            Logging.logger().log(Level.WARNING, message, e);
+        }
+        finally
+        {
+            WWIO.closeStream(out, tmpFile.getPath());
+        }
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+
+package gov.nasa.worldwind.cache;
+
+import java.util.concurrent.atomic.*;
+
+/**
+ * A count-min sketch estimating how often keys have been seen recently, using four 4-bit counters per key. Counters
+ * saturate at 15. After a number of increments proportional to the sketch's width, every counter is halved, so the
+ * estimates reflect recent popularity rather than all-time popularity.
+ * <p/>
+ * The sketch occupies 8 bytes per expected key regardless of how many keys are seen. Increments and estimates are
+ * thread-safe and do not lock; an increment racing with the periodic halving may be lost, which only perturbs the
+ * estimate by one.
+ *
+ * @version $Id$
+ */
+public class FrequencySketch
+{
+    protected static final long[] SEEDS = {0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL,
+        0xcbf29ce484222325L};
+    protected static final long RESET_MASK = 0x7777777777777777L;
+
+    protected final AtomicLongArray table;
+    protected final int tableMask;
+    protected final int sampleSize;
+    protected final AtomicInteger size = new AtomicInteger();
+
+    /**
+     * Constructs a sketch sized for the specified number of distinct keys.
+     *
+     * @param expectedKeys the number of distinct keys expected to be resident in the cache using the sketch.
+     */
+    public FrequencySketch(int expectedKeys)
+    {
+        int length = 16;
+        while (length < expectedKeys && length < (1 << 26))
+        {
+            length <<= 1;
+        }
+
+        this.table = new AtomicLongArray(length);
+        this.tableMask = length - 1;
+        this.sampleSize = 10 * length;
+    }
+
+    /**
+     * Returns the estimated number of recent occurrences of a key, from 0 to 15.
+     *
+     * @param key the key to estimate.
+     *
+     * @return the estimated frequency.
+     */
+    public int frequency(Object key)
+    {
+        int hash = spread(key.hashCode());
+        int frequency = Integer.MAX_VALUE;
+
+        for (int i = 0; i < 4; i++)
+        {
+            long word = this.table.get(this.indexOf(hash, i));
+            int count = (int) ((word >>> this.offsetOf(hash, i)) & 0xfL);
+            frequency = Math.min(frequency, count);
+        }
+
+        return frequency;
+    }
+
+    /**
+     * Records an occurrence of a key, and halves all counters once enough occurrences have been recorded since the
+     * last halving.
+     *
+     * @param key the key to record.
+     */
+    public void increment(Object key)
+    {
+        int hash = spread(key.hashCode());
+        boolean added = false;
+
+        for (int i = 0; i < 4; i++)
+        {
+            added |= this.incrementAt(this.indexOf(hash, i), this.offsetOf(hash, i));
+        }
+
+        if (added && this.size.incrementAndGet() >= this.sampleSize)
+            this.reset();
+    }
+
+    protected boolean incrementAt(int index, int offset)
+    {
+        long mask = 0xfL << offset;
+
+        for (; ; )
+        {
+            long word = this.table.get(index);
+            if ((word & mask) == mask) // saturated
+                return false;
+
+            if (this.table.compareAndSet(index, word, word + (1L << offset)))
+                return true;
+        }
+    }
+
+    /** Halves every counter. */
+    protected void reset()
+    {
+        this.size.set(this.sampleSize / 2);
+
+        for (int i = 0; i < this.table.length(); i++)
+        {
+            long word;
+            do
+            {
+                word = this.table.get(i);
+            }
+            while (!this.table.compareAndSet(i, word, (word >>> 1) & RESET_MASK));
+        }
+    }
+
+    protected int indexOf(int hash, int row)
+    {
+        long h = (hash + SEEDS[row]) * SEEDS[row];
+        h += h >>> 32;
+        return (int) h & this.tableMask;
+    }
+
+    protected int offsetOf(int hash, int row)
+    {
+        // Each row uses a different nibble of the word, selected by two bits of the hash.
+        return (((hash >>> (row << 3)) & 3) << 2) + (row << 4);
+    }
+
+    protected static int spread(int h)
+    {
+        h ^= h >>> 17;
+        h *= 0xed5ad4bb;
+        h ^= h >>> 11;
+        h *= 0xac4c1b51;
+        h ^= h >>> 15;
+        return h;
+    }
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+
+package gov.nasa.worldwind.cache;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A {@link Cacheable} whose bulk data can be moved out of the Java heap. When an <code>OffHeapCacheable</code> is added
+ * to an {@link OffHeapMemoryCache}, the cache allocates a direct buffer region large enough for the object's payload
+ * and asks the object to relocate its payload there. Afterwards only the object itself, which should be small, remains
+ * on the heap.
+ *
+ * @version $Id$
+ */
+public interface OffHeapCacheable extends Cacheable
+{
+    /**
+     * Indicates the number of bytes this object's payload occupies.
+     *
+     * @return the payload size in bytes, or zero if the object has no payload to relocate.
+     */
+    int getPayloadSize();
+
+    /**
+     * Copies this object's payload into the specified buffer and uses the buffer as the payload's storage from then
+     * on. The buffer's position is zero and its limit is the payload size. The buffer remains valid for as long as
+     * this object is reachable.
+     *
+     * @param buffer the direct buffer to hold the payload.
+     *
+     * @return true if the payload was relocated, false if this object cannot use the buffer, in which case it keeps
+     *         its payload on the heap.
+     */
+    boolean relocatePayload(ByteBuffer buffer);
+}
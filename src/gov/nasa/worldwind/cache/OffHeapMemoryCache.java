@@ -0,0 +1,249 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+
+package gov.nasa.worldwind.cache;
+
+import gov.nasa.worldwind.util.*;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link ConcurrentMemoryCache} that keeps the payloads of {@link OffHeapCacheable} entries in direct buffer blocks
+ * allocated from a {@link ByteBufferArena}, so that a large tile budget does not translate into a large, long-lived
+ * heap. Only keys, cache entries and the client objects themselves remain on the heap. Entries that are not
+ * <code>OffHeapCacheable</code>, and entries whose payload the arena cannot hold, are kept on the heap as in any other
+ * memory cache.
+ * <p/>
+ * The cache's capacity bounds the sum of its entries' sizes, where an off-heap entry's size is the block size its
+ * payload was rounded up to. The arena's budget equals the capacity, so the cache never reserves more direct memory
+ * than its capacity. Blocks of removed entries are reused once the removed client object has been garbage collected;
+ * see {@link ByteBufferArena}.
+ * <p/>
+ * The cache counts hits, misses and evictions, and reports them together with the arena's reservation and
+ * fragmentation through {@link #getPerformanceStatistics()}.
+ *
+ * @version $Id$
+ */
+public class OffHeapMemoryCache extends ConcurrentMemoryCache
+{
+    protected static class OffHeapEntry extends CacheEntry
+    {
+        protected final ByteBufferArena.Block block;
+
+        protected OffHeapEntry(Object key, Object clientObject, long clientObjectSize, ByteBufferArena.Block block)
+        {
+            super(key, clientObject, clientObjectSize);
+            this.block = block;
+        }
+    }
+
+    protected ByteBufferArena arena;
+    protected AtomicLong hitCount = new AtomicLong();
+    protected AtomicLong missCount = new AtomicLong();
+    protected AtomicLong evictionCount = new AtomicLong();
+    protected AtomicLong offHeapAddCount = new AtomicLong();
+    protected AtomicLong onHeapAddCount = new AtomicLong();
+
+    /**
+     * Constructs a new cache using <code>capacity</code> for maximum size, and <code>loWater</code> for the low water.
+     *
+     * @param loWater  the low water level.
+     * @param capacity the maximum capacity, which is also the direct memory budget in bytes.
+     */
+    public OffHeapMemoryCache(long loWater, long capacity)
+    {
+        this(loWater, capacity, new ByteBufferArena(capacity));
+    }
+
+    /**
+     * Constructs a new cache that allocates payload storage from the specified arena.
+     *
+     * @param loWater  the low water level.
+     * @param capacity the maximum capacity.
+     * @param arena    the arena to allocate payload storage from.
+     *
+     * @throws IllegalArgumentException if the arena is null.
+     */
+    public OffHeapMemoryCache(long loWater, long capacity, ByteBufferArena arena)
+    {
+        super(loWater, capacity);
+
+        if (arena == null)
+        {
+            String message = Logging.getMessage("nullValue.ObjectIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        this.arena = arena;
+    }
+
+    /** @return the arena this cache allocates payload storage from. */
+    public ByteBufferArena getArena()
+    {
+        return this.arena;
+    }
+
+    /**
+     * Sets the new capacity for the cache, and the arena's budget to match.
+     *
+     * @param newCapacity the new capacity of the cache.
+     */
+    @Override
+    public void setCapacity(long newCapacity)
+    {
+        super.setCapacity(newCapacity);
+        this.arena.setBudget(newCapacity);
+    }
+
+    /**
+     * Adds an object to the cache. If the object is an {@link OffHeapCacheable} with a payload, the payload is moved to
+     * a block of direct memory and the entry is sized by that block. If no block is available even after evicting
+     * entries, the object is cached on the heap with the specified size.
+     *
+     * @param key              The unique reference key that identifies this object.
+     * @param clientObject     The actual object to be cached.
+     * @param clientObjectSize The size of the object in cache units.
+     *
+     * @return returns true if clientObject was added, false otherwise.
+     */
+    @Override
+    public boolean add(Object key, Object clientObject, long clientObjectSize)
+    {
+        if (key == null || clientObject == null || clientObjectSize <= 0
+            || !(clientObject instanceof OffHeapCacheable))
+        {
+            return this.addOnHeap(key, clientObject, clientObjectSize);
+        }
+
+        int payloadSize = ((OffHeapCacheable) clientObject).getPayloadSize();
+        int blockSize = this.arena.getBlockSize(payloadSize);
+        if (payloadSize <= 0 || blockSize < 0 || blockSize > this.capacity.get())
+            return this.addOnHeap(key, clientObject, clientObjectSize);
+
+        ByteBufferArena.Block block = this.arena.allocate(payloadSize);
+        if (block == null)
+        {
+            // Evict enough to return a block's worth of memory to the arena, then try again.
+            List<CacheEntry> removed = new ArrayList<CacheEntry>();
+            this.makeSpace(this.segmentIndex(key), blockSize, removed);
+            this.notifyRemoved(removed);
+            block = this.arena.allocate(payloadSize);
+        }
+
+        if (block == null || !((OffHeapCacheable) clientObject).relocatePayload(block.getBuffer()))
+        {
+            this.arena.release(block, null);
+            return this.addOnHeap(key, clientObject, clientObjectSize);
+        }
+
+        this.offHeapAddCount.incrementAndGet();
+        this.addEntry(new OffHeapEntry(key, clientObject, block.getCapacity(), block));
+
+        return true;
+    }
+
+    protected boolean addOnHeap(Object key, Object clientObject, long clientObjectSize)
+    {
+        boolean added = super.add(key, clientObject, clientObjectSize);
+        if (added)
+            this.onHeapAddCount.incrementAndGet();
+
+        return added;
+    }
+
+    @Override
+    public Object getObject(Object key)
+    {
+        Object o = super.getObject(key);
+
+        if (o != null)
+            this.hitCount.incrementAndGet();
+        else if (key != null)
+            this.missCount.incrementAndGet();
+
+        return o;
+    }
+
+    @Override
+    protected void makeSpace(int first, long spaceRequired, List<CacheEntry> removed)
+    {
+        int count = removed.size();
+        super.makeSpace(first, spaceRequired, removed);
+        this.evictionCount.addAndGet(removed.size() - count);
+    }
+
+    @Override
+    protected void notifyRemoved(List<CacheEntry> removed)
+    {
+        super.notifyRemoved(removed);
+
+        // Release blocks after the listeners have seen the entries. Each block stays quarantined until its client
+        // object is no longer reachable.
+        for (CacheEntry entry : removed)
+        {
+            if (entry instanceof OffHeapEntry)
+                this.arena.release(((OffHeapEntry) entry).block, entry.clientObject);
+        }
+    }
+
+    /** @return the number of lookups that found their entry. */
+    public long getHitCount()
+    {
+        return this.hitCount.get();
+    }
+
+    /** @return the number of lookups that did not find their entry. */
+    public long getMissCount()
+    {
+        return this.missCount.get();
+    }
+
+    /** @return the number of entries removed to make space for others. */
+    public long getEvictionCount()
+    {
+        return this.evictionCount.get();
+    }
+
+    /**
+     * Returns this cache's hit, miss and eviction counts, the fraction of entries stored off the heap, and the arena's
+     * reserved bytes and fragmentation, as {@link PerformanceStatistic#MEMORY_CACHE} statistics.
+     *
+     * @return this cache's statistics.
+     */
+    public Collection<PerformanceStatistic> getPerformanceStatistics()
+    {
+        String name = this.getName();
+        long hits = this.hitCount.get();
+        long lookups = hits + this.missCount.get();
+        long offHeap = this.offHeapAddCount.get();
+        long adds = offHeap + this.onHeapAddCount.get();
+
+        ArrayList<PerformanceStatistic> stats = new ArrayList<PerformanceStatistic>();
+        stats.add(new PerformanceStatistic(PerformanceStatistic.MEMORY_CACHE, "Cache Hits: " + name, hits));
+        stats.add(new PerformanceStatistic(PerformanceStatistic.MEMORY_CACHE, "Cache Misses: " + name,
+            this.missCount.get()));
+        stats.add(new PerformanceStatistic(PerformanceStatistic.MEMORY_CACHE, "Cache Hit Rate (%): " + name,
+            lookups > 0 ? Math.round(100d * hits / lookups) : 0));
+        stats.add(new PerformanceStatistic(PerformanceStatistic.MEMORY_CACHE, "Cache Evictions: " + name,
+            this.evictionCount.get()));
+        stats.add(new PerformanceStatistic(PerformanceStatistic.MEMORY_CACHE, "Cache Off-Heap Adds (%): " + name,
+            adds > 0 ? Math.round(100d * offHeap / adds) : 0));
+        stats.add(new PerformanceStatistic(PerformanceStatistic.MEMORY_CACHE, "Off-Heap Reserved (Kb): " + name,
+            this.arena.getReservedBytes() / 1000));
+        stats.add(new PerformanceStatistic(PerformanceStatistic.MEMORY_CACHE, "Off-Heap Quarantined (Kb): " + name,
+            this.arena.getQuarantinedBytes() / 1000));
+        stats.add(new PerformanceStatistic(PerformanceStatistic.MEMORY_CACHE,
+            "Off-Heap Internal Fragmentation (%): " + name,
+            Math.round(100d * this.arena.getInternalFragmentation())));
+        stats.add(new PerformanceStatistic(PerformanceStatistic.MEMORY_CACHE,
+            "Off-Heap External Fragmentation (%): " + name,
+            Math.round(100d * this.arena.getExternalFragmentation())));
+
+        return stats;
+    }
+}
@@ -0,0 +1,497 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+
+package gov.nasa.worldwind.cache;
+
+import gov.nasa.worldwind.Disposable;
+import gov.nasa.worldwind.util.*;
+
+import java.io.*;
+import java.net.*;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.logging.Level;
+
+/**
+ * A {@link FileStore} that packs tiles into a {@link SegmentStore} in its write location, rather than keeping each tile
+ * in a file of its own. Large tile caches otherwise grow to millions of small files, which exhausts file system inodes
+ * and makes finding and listing files slow. A tile in the segment store is found with one lookup in a memory-mapped
+ * index instead of a probe of every read location.
+ * <p/>
+ * Tiles are written as before: the file returned by {@link #newFile(String)} is written, and is then moved into the
+ * segment store by {@link #commitFile(String)}. {@link gov.nasa.worldwind.layers.BasicTiledImageLayer} and {@link
+ * gov.nasa.worldwind.terrain.BasicElevationModel} commit each tile they retrieve. Files that are never committed, files
+ * in other read locations, and files whose format is not packed, such as configuration documents and GeoTIFFs, are
+ * stored and found individually as in {@link BasicDataFileStore}.
+ * <p/>
+ * {@link #findFile(String, boolean)} returns a URL for a packed tile whose connection reads the tile directly from the
+ * mapped segment and reports the time the tile was written as its last-modified time, so that tile expiration works
+ * as it does for individual files. Entries in the segment store take precedence over files of the same name elsewhere,
+ * including the class path. Segments are compacted when more than half their contents belong to replaced or removed
+ * tiles.
+ * <p/>
+ * To use this file store, set the configuration property <code>gov.nasa.worldwind.avkey.DataFileStoreClassName</code>
+ * to <code>gov.nasa.worldwind.cache.SegmentFileStore</code>.
+ *
+ * @version $Id$
+ */
+public class SegmentFileStore extends BasicDataFileStore implements Disposable
+{
+    /** The protocol of URLs referring to entries in the segment store. */
+    public static final String STORE_URL_PROTOCOL = "wwsegment";
+    /** The name of the segment store's directory within the write location. */
+    protected static final String STORE_DIRECTORY_NAME = "SegmentStore";
+    /** The suffixes of the files packed into the segment store. */
+    protected static final List<String> DEFAULT_PACKED_SUFFIXES = Arrays.asList("bil", "dds", "gif", "jpeg", "jpg",
+        "png");
+    /** Full segments whose fraction of live bytes falls below this are compacted. */
+    protected static final double COMPACTION_LIVE_FRACTION = 0.5;
+
+    protected SegmentStore segmentStore;
+    protected List<String> packedSuffixes = new ArrayList<String>(DEFAULT_PACKED_SUFFIXES);
+    protected final URLStreamHandler urlStreamHandler = new StoreURLStreamHandler();
+    protected final Object compactionLock = new Object();
+    protected int lastNumSegments;
+
+    /**
+     * Create an instance using the file store configuration named by the World Wind configuration.
+     *
+     * @throws IllegalStateException if the configuration file name cannot be determined from {@link
+     *                               gov.nasa.worldwind.Configuration} or the configuration file cannot be found.
+     */
+    public SegmentFileStore()
+    {
+        this.openSegmentStore();
+    }
+
+    /**
+     * Create an instance to manage a specified directory.
+     *
+     * @param directoryPath the directory to manage as a file store.
+     */
+    public SegmentFileStore(File directoryPath)
+    {
+        super(directoryPath);
+        this.openSegmentStore();
+    }
+
+    protected void openSegmentStore()
+    {
+        File writeDir = this.getWriteLocation();
+        if (writeDir == null)
+            return;
+
+        File storeDir = new File(writeDir, STORE_DIRECTORY_NAME);
+        try
+        {
+            this.segmentStore = new SegmentStore(storeDir);
+            this.lastNumSegments = this.segmentStore.getNumSegments();
+        }
+        catch (IOException e)
+        {
+            String message = Logging.getMessage("FileStore.ExceptionOpeningSegmentStore", storeDir.getPath());
+            Logging.logger().log(Level.WARNING, message, e);
+        }
+    }
+
+    /**
+     * Returns the segment store holding packed files.
+     *
+     * @return the segment store, or null if this file store has no write location or the segment store could not be
+     *         opened.
+     */
+    public SegmentStore getSegmentStore()
+    {
+        return this.segmentStore;
+    }
+
+    /** Flushes and closes the segment store. Packed files are no longer found once this file store is disposed. */
+    public void dispose()
+    {
+        if (this.segmentStore != null)
+            this.segmentStore.close();
+    }
+
+    /**
+     * Indicates whether a file is packed into the segment store when committed. The default implementation packs files
+     * whose suffix is one of the tile formats bil, dds, gif, jpeg, jpg and png.
+     *
+     * @param fileName the file's name.
+     *
+     * @return true if the file is packed, otherwise false.
+     */
+    protected boolean isPackedFile(String fileName)
+    {
+        String suffix = WWIO.getSuffix(fileName);
+        return suffix != null && this.packedSuffixes.contains(suffix.toLowerCase());
+    }
+
+    /**
+     * Moves a file written to the location returned by {@link #newFile(String)} into the segment store, and deletes the
+     * file. Files whose format is not packed are left in place.
+     * <p/>
+     * Callers must not hold the file open, and should synchronize with readers that may have found the file before it
+     * was committed.
+     *
+     * @param fileName the name of the file, as passed to <code>newFile</code>.
+     *
+     * @return true if the file was moved into the segment store, otherwise false.
+     *
+     * @throws IllegalArgumentException if the file name is null.
+     */
+    public boolean commitFile(String fileName)
+    {
+        if (fileName == null)
+        {
+            String message = Logging.getMessage("nullValue.FilePathIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        if (this.segmentStore == null || this.writeLocation == null || !this.isPackedFile(fileName))
+            return false;
+
+        File file = new File(makeAbsolutePath(this.writeLocation.getFile(), fileName));
+        if (!file.isFile())
+            return false;
+
+        try
+        {
+            ByteBuffer buffer = WWIO.readFileToBuffer(file);
+            if (!this.segmentStore.put(normalizeFileStoreName(fileName), buffer, file.lastModified()))
+                return false;
+        }
+        catch (IOException e)
+        {
+            String message = Logging.getMessage("FileStore.ExceptionWritingSegmentStore", file.getPath());
+            Logging.logger().log(Level.SEVERE, message, e);
+            return false;
+        }
+
+        //noinspection ResultOfMethodCallIgnored
+        file.delete();
+        this.compactIfNeeded();
+
+        return true;
+    }
+
+    /** Compacts the segment store when a segment has filled and more than half its contents are garbage. */
+    protected void compactIfNeeded()
+    {
+        synchronized (this.compactionLock)
+        {
+            int numSegments = this.segmentStore.getNumSegments();
+            if (numSegments == this.lastNumSegments)
+                return;
+
+            this.lastNumSegments = numSegments;
+            if (this.segmentStore.getLiveBytes() < COMPACTION_LIVE_FRACTION * this.segmentStore.getUsedBytes())
+            {
+                this.segmentStore.compact(COMPACTION_LIVE_FRACTION);
+                this.lastNumSegments = this.segmentStore.getNumSegments();
+            }
+        }
+    }
+
+    @Override
+    public boolean containsFile(String fileName)
+    {
+        if (fileName == null)
+            return false;
+
+        if (this.segmentStore != null && this.segmentStore.contains(normalizeFileStoreName(fileName)))
+            return true;
+
+        return super.containsFile(fileName);
+    }
+
+    @Override
+    public URL findFile(String fileName, boolean checkClassPath)
+    {
+        if (fileName == null)
+        {
+            String message = Logging.getMessage("nullValue.FilePathIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        if (this.segmentStore != null)
+        {
+            String name = normalizeFileStoreName(fileName);
+            if (this.segmentStore.contains(name))
+                return this.makeStoreURL(name);
+        }
+
+        return super.findFile(fileName, checkClassPath);
+    }
+
+    @Override
+    public void removeFile(URL url)
+    {
+        if (url == null)
+        {
+            String msg = Logging.getMessage("nullValue.URLIsNull");
+            Logging.logger().severe(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        if (!STORE_URL_PROTOCOL.equals(url.getProtocol()))
+        {
+            super.removeFile(url);
+            return;
+        }
+
+        String name = this.makeStoreName(url);
+        if (name != null && this.segmentStore != null)
+            this.segmentStore.remove(name);
+    }
+
+    /**
+     * Creates the URL referring to an entry in the segment store.
+     *
+     * @param name the entry's name.
+     *
+     * @return the entry's URL, or null if the URL cannot be created.
+     */
+    protected URL makeStoreURL(String name)
+    {
+        try
+        {
+            URI uri = new URI(STORE_URL_PROTOCOL, null, "/" + name, null);
+            return new URL(null, uri.toASCIIString(), this.urlStreamHandler);
+        }
+        catch (URISyntaxException e)
+        {
+            Logging.logger().log(Level.SEVERE, Logging.getMessage("FileStore.ExceptionCreatingURLForFile", name), e);
+            return null;
+        }
+        catch (MalformedURLException e)
+        {
+            Logging.logger().log(Level.SEVERE, Logging.getMessage("FileStore.ExceptionCreatingURLForFile", name), e);
+            return null;
+        }
+    }
+
+    /**
+     * Returns the name of the segment store entry a URL refers to.
+     *
+     * @param url a URL created by {@link #makeStoreURL(String)}.
+     *
+     * @return the entry's name, or null if the URL is malformed.
+     */
+    protected String makeStoreName(URL url)
+    {
+        try
+        {
+            String path = url.toURI().getPath();
+            return path != null ? WWIO.stripLeadingSeparator(path) : null;
+        }
+        catch (URISyntaxException e)
+        {
+            return null;
+        }
+    }
+
+    //**************************************************************//
+    //********************  File Store Content Discovery  **********//
+    //**************************************************************//
+
+    @Override
+    protected String[] doListFileNames(String pathName, FileStoreFilter filter, boolean recurse,
+        boolean exitBranchOnFirstMatch)
+    {
+        String[] fileNames = super.doListFileNames(pathName, filter, recurse, exitBranchOnFirstMatch);
+        if (this.segmentStore == null)
+            return fileNames;
+
+        String prefix = pathName != null ? normalizeFileStoreName(pathName) : "";
+        if (prefix.length() > 0)
+            prefix += "/";
+
+        // Group the matching names by directory, so that a match in a directory can hide matches beneath it when
+        // searching stops at the first match in each branch.
+        TreeMap<String, List<String>> matches = new TreeMap<String, List<String>>();
+        for (String name : this.segmentStore.listNames(prefix))
+        {
+            int separator = name.lastIndexOf('/');
+            if (!recurse && separator >= prefix.length())
+                continue;
+
+            if (!filter.accept(this, name))
+                continue;
+
+            String dir = separator >= 0 ? name.substring(0, separator + 1) : "";
+            List<String> names = matches.get(dir);
+            if (names == null)
+            {
+                names = new ArrayList<String>();
+                matches.put(dir, names);
+            }
+            names.add(name);
+        }
+
+        if (matches.isEmpty())
+            return fileNames;
+
+        ArrayList<String> nameList = new ArrayList<String>();
+        if (fileNames != null)
+            nameList.addAll(Arrays.asList(fileNames));
+
+        String hidingDir = null;
+        for (Map.Entry<String, List<String>> entry : matches.entrySet())
+        {
+            if (!exitBranchOnFirstMatch)
+            {
+                nameList.addAll(entry.getValue());
+            }
+            else if (hidingDir == null || !entry.getKey().startsWith(hidingDir))
+            {
+                // Directories sort before the directories beneath them, so the first match in a branch is found first.
+                nameList.add(entry.getValue().get(0));
+                hidingDir = entry.getKey();
+            }
+        }
+
+        String[] names = new String[nameList.size()];
+        nameList.toArray(names);
+        return names;
+    }
+
+    @Override
+    protected void doListFileNames(StoreLocation location, File dir, FileStoreFilter filter, boolean recurse,
+        boolean exitBranchOnFirstMatch, Collection<String> names)
+    {
+        // The segment store's own files are not file store contents.
+        if (this.segmentStore != null && dir.equals(this.segmentStore.getDirectory()))
+            return;
+
+        super.doListFileNames(location, dir, filter, recurse, exitBranchOnFirstMatch, names);
+    }
+
+    //**************************************************************//
+    //********************  Segment Store URLs  ********************//
+    //**************************************************************//
+
+    /** Opens connections to segment store entries. */
+    protected class StoreURLStreamHandler extends URLStreamHandler
+    {
+        @Override
+        protected URLConnection openConnection(URL url) throws IOException
+        {
+            return new StoreURLConnection(url);
+        }
+    }
+
+    /**
+     * A connection to a segment store entry. The entry is read from the mapped segment when the connection is
+     * connected.
+     */
+    protected class StoreURLConnection extends URLConnection
+    {
+        protected final String name;
+        protected ByteBuffer buffer;
+
+        public StoreURLConnection(URL url)
+        {
+            super(url);
+            this.name = makeStoreName(url);
+        }
+
+        @Override
+        public void connect() throws IOException
+        {
+            if (this.connected)
+                return;
+
+            SegmentStore store = segmentStore;
+            this.buffer = store != null && this.name != null ? store.get(this.name) : null;
+            if (this.buffer == null)
+                throw new FileNotFoundException(this.url.toString());
+
+            this.connected = true;
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException
+        {
+            this.connect();
+            return new ByteBufferInputStream(this.buffer.duplicate());
+        }
+
+        @Override
+        public int getContentLength()
+        {
+            try
+            {
+                this.connect();
+                return this.buffer.remaining();
+            }
+            catch (IOException e)
+            {
+                return -1;
+            }
+        }
+
+        @Override
+        public String getContentType()
+        {
+            return this.name != null ? WWIO.makeMimeTypeForSuffix(WWIO.getSuffix(this.name)) : null;
+        }
+
+        @Override
+        public long getLastModified()
+        {
+            SegmentStore store = segmentStore;
+            long timestamp = store != null && this.name != null ? store.getTimestamp(this.name) : -1;
+            return timestamp > 0 ? timestamp : 0;
+        }
+    }
+
+    /** An input stream reading the remaining bytes of a buffer. */
+    protected static class ByteBufferInputStream extends InputStream
+    {
+        protected final ByteBuffer buffer;
+
+        public ByteBufferInputStream(ByteBuffer buffer)
+        {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read()
+        {
+            return this.buffer.hasRemaining() ? this.buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length)
+        {
+            if (length == 0)
+                return 0;
+
+            if (!this.buffer.hasRemaining())
+                return -1;
+
+            int count = Math.min(length, this.buffer.remaining());
+            this.buffer.get(bytes, offset, count);
+            return count;
+        }
+
+        @Override
+        public long skip(long n)
+        {
+            int count = (int) Math.max(0, Math.min(n, this.buffer.remaining()));
+            this.buffer.position(this.buffer.position() + count);
+            return count;
+        }
+
+        @Override
+        public int available()
+        {
+            return this.buffer.remaining();
+        }
+    }
+}
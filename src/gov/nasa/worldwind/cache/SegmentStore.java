@@ -0,0 +1,1051 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+
+package gov.nasa.worldwind.cache;
+
+import gov.nasa.worldwind.util.*;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Level;
+import java.util.regex.*;
+
+/**
+ * Stores named byte sequences in large append-only segment files, located through a memory-mapped hash index. A lookup
+ * hashes the name, probes the mapped index and returns a read-only view of the mapped segment, so reading an entry
+ * touches no file system metadata and copies no data.
+ * <p/>
+ * Segments and the index live in a single directory. Each segment is mapped once for the life of the store and is
+ * never modified once it is full. Each record in a segment holds its name and the time it was written, which allows
+ * the index to verify name matches and to be rebuilt from the segments if it is missing or damaged. Replacing or
+ * removing an entry leaves its record in place as garbage; {@link #compact(double)} copies the live records of mostly
+ * empty segments forward and deletes those segments.
+ * <p/>
+ * Lookups proceed concurrently. Writes, removals and compaction are serialized with each other and with lookups, and
+ * are expected to be far less frequent than lookups. Views returned by {@link #get(String)} remain valid after the
+ * entry is replaced, removed or compacted.
+ *
+ * @version $Id$
+ */
+public class SegmentStore
+{
+    /** The default maximum size of a segment file, in bytes. */
+    public static final int DEFAULT_SEGMENT_SIZE = 64 << 20;
+
+    protected static final int INDEX_MAGIC = 0x57574958;
+    protected static final int SEGMENT_MAGIC = 0x57575347;
+    protected static final int RECORD_MAGIC = 0x57575243;
+    protected static final int VERSION = 1;
+
+    // Index layout: a header followed by open-addressed slots. Each slot holds the 64-bit hash of the entry name, the
+    // time the entry was written, the segment number, the record offset within the segment, and the record length.
+    protected static final int INDEX_HEADER_SIZE = 64;
+    protected static final int SLOT_SIZE = 32;
+    protected static final int SLOT_TIMESTAMP = 8;
+    protected static final int SLOT_SEGMENT = 16;
+    protected static final int SLOT_OFFSET = 20;
+    protected static final int SLOT_LENGTH = 24;
+    protected static final long EMPTY = 0;
+    protected static final long REMOVED = 1;
+    protected static final int MIN_INDEX_CAPACITY = 1 << 12;
+    protected static final double MAX_LOAD_FACTOR = 0.7;
+
+    // Segment layout: a header holding the end of the written records, followed by records. Each record holds the
+    // name length, data length and time written, followed by the name in UTF-8 and the data.
+    protected static final int SEGMENT_HEADER_SIZE = 16;
+    protected static final int SEGMENT_END = 8;
+    protected static final int RECORD_HEADER_SIZE = 20;
+
+    protected static final Charset UTF8 = Charset.forName("UTF-8");
+    protected static final Pattern SEGMENT_FILE_NAME = Pattern.compile("segment-(\\d+)\\.dat");
+    protected static final Pattern INDEX_FILE_NAME = Pattern.compile("index-(\\d+)\\.dat");
+
+    protected static class Segment
+    {
+        protected final int number;
+        protected final File file;
+        protected final MappedByteBuffer buffer;
+        protected int end;
+        protected long liveBytes;
+
+        protected Segment(int number, File file, MappedByteBuffer buffer, int end)
+        {
+            this.number = number;
+            this.file = file;
+            this.buffer = buffer;
+            this.end = end;
+        }
+    }
+
+    protected final File directory;
+    protected final int segmentSize;
+    protected final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    protected final Map<Integer, Segment> segments = new HashMap<Integer, Segment>();
+    protected Segment activeSegment;
+    protected MappedByteBuffer index;
+    protected File indexFile;
+    protected int indexGeneration;
+    protected int indexCapacity;
+    protected int numEntries;
+    protected int numRemoved;
+    protected boolean closed;
+
+    /**
+     * Opens the store in the specified directory with the default segment size, creating the directory and an empty
+     * store if necessary.
+     *
+     * @param directory the directory holding the store's files.
+     *
+     * @throws IllegalArgumentException if the directory is null.
+     * @throws IOException              if the store cannot be opened or created.
+     */
+    public SegmentStore(File directory) throws IOException
+    {
+        this(directory, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * Opens the store in the specified directory, creating the directory and an empty store if necessary. Entries
+     * larger than a segment cannot be stored.
+     *
+     * @param directory   the directory holding the store's files.
+     * @param segmentSize the maximum size of a segment file, in bytes.
+     *
+     * @throws IllegalArgumentException if the directory is null or the segment size is too small.
+     * @throws IOException              if the store cannot be opened or created.
+     */
+    public SegmentStore(File directory, int segmentSize) throws IOException
+    {
+        if (directory == null)
+        {
+            String message = Logging.getMessage("nullValue.FileIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        if (segmentSize < SEGMENT_HEADER_SIZE + RECORD_HEADER_SIZE)
+        {
+            String message = Logging.getMessage("generic.ArgumentOutOfRange", "segmentSize=" + segmentSize);
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        if (!directory.isDirectory() && !directory.mkdirs())
+            throw new IOException(Logging.getMessage("generic.CannotCreateFile", directory.getPath()));
+
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+
+        this.openSegments();
+        if (!this.openIndex())
+            this.rebuildIndex();
+        this.countEntries();
+        this.deleteEmptySegments();
+    }
+
+    /** @return the directory holding the store's files. */
+    public File getDirectory()
+    {
+        return this.directory;
+    }
+
+    //**************************************************************//
+    //********************  Entries  *******************************//
+    //**************************************************************//
+
+    /**
+     * Returns a read-only view of an entry's data in the mapped segment holding it.
+     *
+     * @param name the entry's name.
+     *
+     * @return the entry's data, or null if the store holds no entry of that name.
+     */
+    public ByteBuffer get(String name)
+    {
+        byte[] key = encodeName(name);
+        long hash = hash(key);
+
+        this.lock.readLock().lock();
+        try
+        {
+            int slot = this.findSlot(hash, key);
+            if (slot < 0)
+                return null;
+
+            int pos = slotPosition(slot);
+            Segment segment = this.segments.get(this.index.getInt(pos + SLOT_SEGMENT));
+            int offset = this.index.getInt(pos + SLOT_OFFSET);
+            int dataOffset = offset + RECORD_HEADER_SIZE + key.length;
+            int dataLength = segment.buffer.getInt(offset + 8);
+
+            ByteBuffer buffer = segment.buffer.asReadOnlyBuffer();
+            buffer.limit(dataOffset + dataLength);
+            buffer.position(dataOffset);
+            return buffer.slice();
+        }
+        finally
+        {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Indicates whether the store holds an entry of the specified name.
+     *
+     * @param name the entry's name.
+     *
+     * @return true if the store holds the entry, otherwise false.
+     */
+    public boolean contains(String name)
+    {
+        return this.getTimestamp(name) >= 0;
+    }
+
+    /**
+     * Returns the time an entry was written.
+     *
+     * @param name the entry's name.
+     *
+     * @return the time the entry was written, in milliseconds since the epoch, or -1 if the store holds no entry of
+     *         that name.
+     */
+    public long getTimestamp(String name)
+    {
+        byte[] key = encodeName(name);
+        long hash = hash(key);
+
+        this.lock.readLock().lock();
+        try
+        {
+            int slot = this.findSlot(hash, key);
+            return slot >= 0 ? this.index.getLong(slotPosition(slot) + SLOT_TIMESTAMP) : -1;
+        }
+        finally
+        {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Writes an entry, replacing any entry of the same name. The data is read from the buffer's position to its limit;
+     * the buffer's position is not changed.
+     *
+     * @param name      the entry's name.
+     * @param data      the entry's data.
+     * @param timestamp the time the entry was written, in milliseconds since the epoch.
+     *
+     * @return true if the entry was written, false if it is too large for a segment or the store is closed.
+     *
+     * @throws IllegalArgumentException if the name or data is null.
+     * @throws IOException              if a new segment cannot be created.
+     */
+    public boolean put(String name, ByteBuffer data, long timestamp) throws IOException
+    {
+        if (data == null)
+        {
+            String message = Logging.getMessage("nullValue.ByteBufferIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        byte[] key = encodeName(name);
+        long hash = hash(key);
+        long recordLength = (long) RECORD_HEADER_SIZE + key.length + data.remaining();
+        if (recordLength > this.segmentSize - SEGMENT_HEADER_SIZE)
+            return false;
+
+        this.lock.writeLock().lock();
+        try
+        {
+            if (this.closed)
+                return false;
+
+            int offset = this.append(key, data, timestamp);
+            this.putSlot(hash, key, this.activeSegment.number, offset, (int) recordLength, timestamp);
+            return true;
+        }
+        finally
+        {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes an entry. Its record remains in its segment until the segment is compacted.
+     *
+     * @param name the entry's name.
+     *
+     * @return true if the store held the entry, otherwise false.
+     */
+    public boolean remove(String name)
+    {
+        byte[] key = encodeName(name);
+        long hash = hash(key);
+
+        this.lock.writeLock().lock();
+        try
+        {
+            if (this.closed)
+                return false;
+
+            int slot = this.findSlot(hash, key);
+            if (slot < 0)
+                return false;
+
+            this.removeSlot(slotPosition(slot));
+            return true;
+        }
+        finally
+        {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes every entry written before the specified time.
+     *
+     * @param time the time before which entries expire, in milliseconds since the epoch.
+     *
+     * @return the number of entries removed.
+     */
+    public int removeOlderThan(long time)
+    {
+        this.lock.writeLock().lock();
+        try
+        {
+            if (this.closed)
+                return 0;
+
+            int count = 0;
+            for (int slot = 0; slot < this.indexCapacity; slot++)
+            {
+                int pos = slotPosition(slot);
+                long hash = this.index.getLong(pos);
+                if (hash != EMPTY && hash != REMOVED && this.index.getLong(pos + SLOT_TIMESTAMP) < time)
+                {
+                    this.removeSlot(pos);
+                    count++;
+                }
+            }
+
+            return count;
+        }
+        finally
+        {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the names of all entries starting with the specified prefix.
+     *
+     * @param prefix the prefix to match, or null to return all names.
+     *
+     * @return the matching names, in no particular order.
+     */
+    public List<String> listNames(String prefix)
+    {
+        ArrayList<String> names = new ArrayList<String>();
+
+        this.lock.readLock().lock();
+        try
+        {
+            for (int slot = 0; slot < this.indexCapacity; slot++)
+            {
+                int pos = slotPosition(slot);
+                long hash = this.index.getLong(pos);
+                if (hash == EMPTY || hash == REMOVED)
+                    continue;
+
+                Segment segment = this.segments.get(this.index.getInt(pos + SLOT_SEGMENT));
+                int offset = this.index.getInt(pos + SLOT_OFFSET);
+                if (segment == null || !isRecord(segment, offset))
+                    continue;
+
+                String name = readName(segment, offset);
+                if (prefix == null || name.startsWith(prefix))
+                    names.add(name);
+            }
+        }
+        finally
+        {
+            this.lock.readLock().unlock();
+        }
+
+        return names;
+    }
+
+    /** @return the number of entries in the store. */
+    public int getNumEntries()
+    {
+        this.lock.readLock().lock();
+        try
+        {
+            return this.numEntries;
+        }
+        finally
+        {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /** @return the number of segment files in the store. */
+    public int getNumSegments()
+    {
+        this.lock.readLock().lock();
+        try
+        {
+            return this.segments.size();
+        }
+        finally
+        {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /** @return the number of bytes written to segments, including records of replaced and removed entries. */
+    public long getUsedBytes()
+    {
+        this.lock.readLock().lock();
+        try
+        {
+            long used = 0;
+            for (Segment segment : this.segments.values())
+            {
+                used += segment.end - SEGMENT_HEADER_SIZE;
+            }
+            return used;
+        }
+        finally
+        {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /** @return the number of bytes in segments held by current entries. */
+    public long getLiveBytes()
+    {
+        this.lock.readLock().lock();
+        try
+        {
+            long live = 0;
+            for (Segment segment : this.segments.values())
+            {
+                live += segment.liveBytes;
+            }
+            return live;
+        }
+        finally
+        {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    //**************************************************************//
+    //********************  Compaction and Closing  ****************//
+    //**************************************************************//
+
+    /**
+     * Copies the live records of every full segment whose live fraction is below the specified fraction to the end of
+     * the store, and deletes those segments. Lookups continue while the store compacts; each record is moved under a
+     * short exclusive lock.
+     *
+     * @param minLiveFraction segments with a smaller fraction of live bytes than this are compacted.
+     *
+     * @return the number of segments deleted.
+     */
+    public int compact(double minLiveFraction)
+    {
+        List<Segment> candidates = new ArrayList<Segment>();
+
+        this.lock.readLock().lock();
+        try
+        {
+            for (Segment segment : this.segments.values())
+            {
+                long used = segment.end - SEGMENT_HEADER_SIZE;
+                if (segment != this.activeSegment && segment.liveBytes < minLiveFraction * used)
+                    candidates.add(segment);
+            }
+        }
+        finally
+        {
+            this.lock.readLock().unlock();
+        }
+
+        int count = 0;
+        for (Segment segment : candidates)
+        {
+            try
+            {
+                if (this.compactSegment(segment))
+                    count++;
+            }
+            catch (IOException e)
+            {
+                String message = Logging.getMessage("FileStore.ExceptionWritingSegmentStore", segment.file.getPath());
+                Logging.logger().log(Level.SEVERE, message, e);
+                break;
+            }
+        }
+
+        return count;
+    }
+
+    protected boolean compactSegment(Segment segment) throws IOException
+    {
+        // Records in a full segment never change, so they can be read without the lock.
+        int offset = SEGMENT_HEADER_SIZE;
+        while (offset < segment.end && isRecord(segment, offset))
+        {
+            int recordLength = recordLength(segment, offset);
+            byte[] key = readNameBytes(segment, offset);
+            long hash = hash(key);
+
+            this.lock.writeLock().lock();
+            try
+            {
+                if (this.closed)
+                    return false;
+
+                int slot = this.findSlot(hash, key);
+                int pos = slot >= 0 ? slotPosition(slot) : -1;
+                if (pos >= 0 && this.index.getInt(pos + SLOT_SEGMENT) == segment.number
+                    && this.index.getInt(pos + SLOT_OFFSET) == offset)
+                {
+                    ByteBuffer data = segment.buffer.duplicate();
+                    int dataOffset = offset + RECORD_HEADER_SIZE + key.length;
+                    data.limit(dataOffset + segment.buffer.getInt(offset + 8));
+                    data.position(dataOffset);
+
+                    long timestamp = segment.buffer.getLong(offset + 12);
+                    int newOffset = this.append(key, data, timestamp);
+                    this.putSlot(hash, key, this.activeSegment.number, newOffset, recordLength, timestamp);
+                }
+            }
+            finally
+            {
+                this.lock.writeLock().unlock();
+            }
+
+            offset += recordLength;
+        }
+
+        this.lock.writeLock().lock();
+        try
+        {
+            this.segments.remove(segment.number);
+            this.deleteFile(segment.file);
+            return true;
+        }
+        finally
+        {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Flushes the index and segments to disk and closes the store. Subsequent lookups find nothing and subsequent
+     * writes fail.
+     */
+    public void close()
+    {
+        this.lock.writeLock().lock();
+        try
+        {
+            if (this.closed)
+                return;
+
+            this.closed = true;
+            this.index.force();
+            this.activeSegment.buffer.force();
+            this.numEntries = 0;
+        }
+        finally
+        {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    //**************************************************************//
+    //********************  Index  *********************************//
+    //**************************************************************//
+
+    protected static int slotPosition(int slot)
+    {
+        return INDEX_HEADER_SIZE + slot * SLOT_SIZE;
+    }
+
+    protected int findSlot(long hash, byte[] key)
+    {
+        if (this.closed)
+            return -1;
+
+        int mask = this.indexCapacity - 1;
+        int slot = (int) (hash ^ (hash >>> 32)) & mask;
+
+        for (int probes = 0; probes < this.indexCapacity; probes++)
+        {
+            int pos = slotPosition(slot);
+            long h = this.index.getLong(pos);
+            if (h == EMPTY)
+                return -1;
+
+            if (h == hash && this.slotMatches(pos, key))
+                return slot;
+
+            slot = (slot + 1) & mask;
+        }
+
+        return -1;
+    }
+
+    protected boolean slotMatches(int pos, byte[] key)
+    {
+        Segment segment = this.segments.get(this.index.getInt(pos + SLOT_SEGMENT));
+        int offset = this.index.getInt(pos + SLOT_OFFSET);
+        if (segment == null || !isRecord(segment, offset) || segment.buffer.getInt(offset + 4) != key.length)
+            return false;
+
+        int nameOffset = offset + RECORD_HEADER_SIZE;
+        for (int i = 0; i < key.length; i++)
+        {
+            if (segment.buffer.get(nameOffset + i) != key[i])
+                return false;
+        }
+
+        return true;
+    }
+
+    protected void putSlot(long hash, byte[] key, int segmentNumber, int offset, int recordLength, long timestamp)
+        throws IOException
+    {
+        int existing = this.findSlot(hash, key);
+        if (existing >= 0)
+        {
+            this.releaseSlot(slotPosition(existing));
+            this.writeSlot(slotPosition(existing), hash, segmentNumber, offset, recordLength, timestamp);
+            return;
+        }
+
+        if (this.numEntries + this.numRemoved + 1 > MAX_LOAD_FACTOR * this.indexCapacity)
+        {
+            // Grow only if most occupied slots are live; otherwise rebuilding at the same size clears removed slots.
+            int capacity = this.numEntries + 1 > MAX_LOAD_FACTOR * this.indexCapacity / 2
+                ? 2 * this.indexCapacity : this.indexCapacity;
+            this.resizeIndex(capacity);
+        }
+
+        int mask = this.indexCapacity - 1;
+        int slot = (int) (hash ^ (hash >>> 32)) & mask;
+        while (true)
+        {
+            int pos = slotPosition(slot);
+            long h = this.index.getLong(pos);
+            if (h == EMPTY || h == REMOVED)
+            {
+                if (h == REMOVED)
+                    this.numRemoved--;
+                this.writeSlot(pos, hash, segmentNumber, offset, recordLength, timestamp);
+                this.numEntries++;
+                return;
+            }
+
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    protected void writeSlot(int pos, long hash, int segmentNumber, int offset, int recordLength, long timestamp)
+    {
+        this.index.putLong(pos + SLOT_TIMESTAMP, timestamp);
+        this.index.putInt(pos + SLOT_SEGMENT, segmentNumber);
+        this.index.putInt(pos + SLOT_OFFSET, offset);
+        this.index.putInt(pos + SLOT_LENGTH, recordLength);
+        this.index.putLong(pos, hash); // written last so that a partially written slot is never matched
+
+        Segment segment = this.segments.get(segmentNumber);
+        if (segment != null)
+            segment.liveBytes += recordLength;
+    }
+
+    protected void releaseSlot(int pos)
+    {
+        Segment segment = this.segments.get(this.index.getInt(pos + SLOT_SEGMENT));
+        if (segment != null)
+            segment.liveBytes -= this.index.getInt(pos + SLOT_LENGTH);
+    }
+
+    protected void removeSlot(int pos)
+    {
+        this.releaseSlot(pos);
+        this.index.putLong(pos, REMOVED);
+        this.numEntries--;
+        this.numRemoved++;
+    }
+
+    protected boolean openIndex() throws IOException
+    {
+        File[] files = this.directory.listFiles();
+        File newest = null;
+        int newestGeneration = -1;
+
+        for (File file : files != null ? files : new File[0])
+        {
+            Matcher matcher = INDEX_FILE_NAME.matcher(file.getName());
+            if (matcher.matches() && Integer.parseInt(matcher.group(1)) > newestGeneration)
+            {
+                newest = file;
+                newestGeneration = Integer.parseInt(matcher.group(1));
+            }
+        }
+
+        if (newest == null)
+            return false;
+
+        MappedByteBuffer buffer = mapFile(newest, newest.length(), false);
+        int capacity = buffer.getInt(12);
+        if (buffer.getInt(0) != INDEX_MAGIC || buffer.getInt(4) != VERSION || capacity < MIN_INDEX_CAPACITY
+            || Integer.bitCount(capacity) != 1 || newest.length() != INDEX_HEADER_SIZE + (long) capacity * SLOT_SIZE)
+        {
+            Logging.logger().warning(Logging.getMessage("FileStore.InvalidSegmentStoreFile", newest.getPath()));
+            return false;
+        }
+
+        this.index = buffer;
+        this.indexFile = newest;
+        this.indexGeneration = newestGeneration;
+        this.indexCapacity = capacity;
+        this.deleteOtherIndexFiles();
+
+        return true;
+    }
+
+    protected void createIndex(int capacity) throws IOException
+    {
+        int generation = this.indexGeneration + 1;
+        File file = new File(this.directory, String.format("index-%08d.dat", generation));
+        this.deleteFile(file);
+
+        MappedByteBuffer buffer = mapFile(file, INDEX_HEADER_SIZE + (long) capacity * SLOT_SIZE, false);
+        buffer.putInt(0, INDEX_MAGIC);
+        buffer.putInt(4, VERSION);
+        buffer.putInt(8, generation);
+        buffer.putInt(12, capacity);
+
+        this.index = buffer;
+        this.indexFile = file;
+        this.indexGeneration = generation;
+        this.indexCapacity = capacity;
+        this.numEntries = 0;
+        this.numRemoved = 0;
+
+        for (Segment segment : this.segments.values())
+        {
+            segment.liveBytes = 0;
+        }
+    }
+
+    protected void resizeIndex(int capacity) throws IOException
+    {
+        MappedByteBuffer oldIndex = this.index;
+        int oldCapacity = this.indexCapacity;
+
+        this.createIndex(capacity);
+
+        for (int slot = 0; slot < oldCapacity; slot++)
+        {
+            int pos = slotPosition(slot);
+            long hash = oldIndex.getLong(pos);
+            if (hash == EMPTY || hash == REMOVED)
+                continue;
+
+            int mask = this.indexCapacity - 1;
+            int newSlot = (int) (hash ^ (hash >>> 32)) & mask;
+            while (this.index.getLong(slotPosition(newSlot)) != EMPTY)
+            {
+                newSlot = (newSlot + 1) & mask;
+            }
+
+            this.writeSlot(slotPosition(newSlot), hash, oldIndex.getInt(pos + SLOT_SEGMENT),
+                oldIndex.getInt(pos + SLOT_OFFSET), oldIndex.getInt(pos + SLOT_LENGTH),
+                oldIndex.getLong(pos + SLOT_TIMESTAMP));
+            this.numEntries++;
+        }
+
+        this.index.force();
+        this.deleteOtherIndexFiles();
+    }
+
+    /** Recreates the index from the records in the segments, oldest segment first. */
+    protected void rebuildIndex() throws IOException
+    {
+        this.createIndex(MIN_INDEX_CAPACITY);
+
+        List<Integer> numbers = new ArrayList<Integer>(this.segments.keySet());
+        Collections.sort(numbers);
+
+        for (Integer number : numbers)
+        {
+            Segment segment = this.segments.get(number);
+            int offset = SEGMENT_HEADER_SIZE;
+            while (offset < segment.end && isRecord(segment, offset))
+            {
+                byte[] key = readNameBytes(segment, offset);
+                int recordLength = recordLength(segment, offset);
+                this.putSlot(hash(key), key, number, offset, recordLength, segment.buffer.getLong(offset + 12));
+                offset += recordLength;
+            }
+        }
+
+        this.index.force();
+        this.deleteOtherIndexFiles();
+        Logging.logger().info(Logging.getMessage("FileStore.RebuiltSegmentStoreIndex", this.directory.getPath()));
+    }
+
+    protected void countEntries()
+    {
+        this.numEntries = 0;
+        this.numRemoved = 0;
+        for (Segment segment : this.segments.values())
+        {
+            segment.liveBytes = 0;
+        }
+
+        for (int slot = 0; slot < this.indexCapacity; slot++)
+        {
+            int pos = slotPosition(slot);
+            long hash = this.index.getLong(pos);
+            if (hash == REMOVED)
+            {
+                this.numRemoved++;
+            }
+            else if (hash != EMPTY)
+            {
+                this.numEntries++;
+                Segment segment = this.segments.get(this.index.getInt(pos + SLOT_SEGMENT));
+                if (segment != null)
+                    segment.liveBytes += this.index.getInt(pos + SLOT_LENGTH);
+            }
+        }
+    }
+
+    protected void deleteOtherIndexFiles()
+    {
+        File[] files = this.directory.listFiles();
+        for (File file : files != null ? files : new File[0])
+        {
+            if (INDEX_FILE_NAME.matcher(file.getName()).matches() && !file.equals(this.indexFile))
+                this.deleteFile(file);
+        }
+    }
+
+    //**************************************************************//
+    //********************  Segments  ******************************//
+    //**************************************************************//
+
+    protected void openSegments() throws IOException
+    {
+        File[] files = this.directory.listFiles();
+        int newest = 0;
+
+        for (File file : files != null ? files : new File[0])
+        {
+            Matcher matcher = SEGMENT_FILE_NAME.matcher(file.getName());
+            if (matcher.matches())
+                newest = Math.max(newest, Integer.parseInt(matcher.group(1)));
+        }
+
+        for (File file : files != null ? files : new File[0])
+        {
+            Matcher matcher = SEGMENT_FILE_NAME.matcher(file.getName());
+            if (!matcher.matches())
+                continue;
+
+            int number = Integer.parseInt(matcher.group(1));
+            long length = file.length();
+            if (length < SEGMENT_HEADER_SIZE || length > Integer.MAX_VALUE)
+            {
+                Logging.logger().warning(Logging.getMessage("FileStore.InvalidSegmentStoreFile", file.getPath()));
+                continue;
+            }
+
+            // Only the newest segment is written to; older segments are full and mapped read-only.
+            boolean active = number == newest;
+            MappedByteBuffer buffer = mapFile(file, active ? Math.max(length, this.segmentSize) : length, !active);
+            int end = buffer.getInt(SEGMENT_END);
+            if (buffer.getInt(0) != SEGMENT_MAGIC || buffer.getInt(4) != VERSION || end < SEGMENT_HEADER_SIZE
+                || end > buffer.capacity())
+            {
+                Logging.logger().warning(Logging.getMessage("FileStore.InvalidSegmentStoreFile", file.getPath()));
+                continue;
+            }
+
+            Segment segment = new Segment(number, file, buffer, end);
+            this.segments.put(number, segment);
+            if (active)
+                this.activeSegment = segment;
+        }
+
+        if (this.activeSegment == null)
+            this.activeSegment = this.createSegment(newest + 1);
+    }
+
+    protected Segment createSegment(int number) throws IOException
+    {
+        File file = new File(this.directory, String.format("segment-%08d.dat", number));
+        this.deleteFile(file);
+
+        MappedByteBuffer buffer = mapFile(file, this.segmentSize, false);
+        buffer.putInt(0, SEGMENT_MAGIC);
+        buffer.putInt(4, VERSION);
+        buffer.putInt(SEGMENT_END, SEGMENT_HEADER_SIZE);
+
+        Segment segment = new Segment(number, file, buffer, SEGMENT_HEADER_SIZE);
+        this.segments.put(number, segment);
+        return segment;
+    }
+
+    /** Deletes full segments left with no live records, such as those whose deletion failed in an earlier session. */
+    protected void deleteEmptySegments()
+    {
+        Iterator<Segment> iter = this.segments.values().iterator();
+        while (iter.hasNext())
+        {
+            Segment segment = iter.next();
+            if (segment != this.activeSegment && segment.liveBytes == 0)
+            {
+                iter.remove();
+                this.deleteFile(segment.file);
+            }
+        }
+    }
+
+    protected int append(byte[] key, ByteBuffer data, long timestamp) throws IOException
+    {
+        int dataLength = data.remaining();
+        int recordLength = RECORD_HEADER_SIZE + key.length + dataLength;
+
+        Segment segment = this.activeSegment;
+        if (segment.end + (long) recordLength > segment.buffer.capacity())
+        {
+            segment.buffer.force();
+            segment = this.createSegment(segment.number + 1);
+            this.activeSegment = segment;
+        }
+
+        int offset = segment.end;
+        ByteBuffer buffer = segment.buffer.duplicate();
+        buffer.position(offset + RECORD_HEADER_SIZE);
+        buffer.put(key);
+        buffer.put(data.duplicate());
+
+        segment.buffer.putInt(offset + 4, key.length);
+        segment.buffer.putInt(offset + 8, dataLength);
+        segment.buffer.putLong(offset + 12, timestamp);
+        segment.buffer.putInt(offset, RECORD_MAGIC);
+
+        segment.end = offset + recordLength;
+        segment.buffer.putInt(SEGMENT_END, segment.end);
+
+        return offset;
+    }
+
+    protected static boolean isRecord(Segment segment, int offset)
+    {
+        if (offset < SEGMENT_HEADER_SIZE || offset + RECORD_HEADER_SIZE > segment.end
+            || segment.buffer.getInt(offset) != RECORD_MAGIC)
+            return false;
+
+        long length = (long) RECORD_HEADER_SIZE + segment.buffer.getInt(offset + 4) + segment.buffer.getInt(offset + 8);
+        return length >= RECORD_HEADER_SIZE && offset + length <= segment.end;
+    }
+
+    protected static int recordLength(Segment segment, int offset)
+    {
+        return RECORD_HEADER_SIZE + segment.buffer.getInt(offset + 4) + segment.buffer.getInt(offset + 8);
+    }
+
+    protected static byte[] readNameBytes(Segment segment, int offset)
+    {
+        byte[] key = new byte[segment.buffer.getInt(offset + 4)];
+        ByteBuffer buffer = segment.buffer.duplicate();
+        buffer.position(offset + RECORD_HEADER_SIZE);
+        buffer.get(key);
+        return key;
+    }
+
+    protected static String readName(Segment segment, int offset)
+    {
+        return new String(readNameBytes(segment, offset), UTF8);
+    }
+
+    //**************************************************************//
+    //********************  Utilities  *****************************//
+    //**************************************************************//
+
+    protected static byte[] encodeName(String name)
+    {
+        if (name == null)
+        {
+            String message = Logging.getMessage("nullValue.FilePathIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        return name.getBytes(UTF8);
+    }
+
+    /**
+     * Computes a 64-bit FNV-1a hash of a name, mixed so that its low bits are well distributed. The values reserved
+     * for empty and removed slots are never returned.
+     *
+     * @param key the name's UTF-8 bytes.
+     *
+     * @return the name's hash.
+     */
+    protected static long hash(byte[] key)
+    {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : key)
+        {
+            h ^= b & 0xff;
+            h *= 0x100000001b3L;
+        }
+
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+
+        return h == EMPTY || h == REMOVED ? h + 2 : h;
+    }
+
+    protected static MappedByteBuffer mapFile(File file, long size, boolean readOnly) throws IOException
+    {
+        RandomAccessFile raf = new RandomAccessFile(file, readOnly ? "r" : "rw");
+        try
+        {
+            // The mapping remains valid after the file is closed, so no file handle is held per segment.
+            FileChannel.MapMode mode = readOnly ? FileChannel.MapMode.READ_ONLY : FileChannel.MapMode.READ_WRITE;
+            return raf.getChannel().map(mode, 0, size);
+        }
+        finally
+        {
+            WWIO.closeStream(raf, file.getPath());
+        }
+    }
+
+    protected void deleteFile(File file)
+    {
+        // Deleting a file that is still mapped fails on some platforms. Such files are deleted when the store is next
+        // opened.
+        if (file.exists() && !file.delete())
+            file.deleteOnExit();
+    }
+}
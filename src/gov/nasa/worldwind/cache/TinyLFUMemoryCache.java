@@ -0,0 +1,636 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+
+package gov.nasa.worldwind.cache;
+
+import gov.nasa.worldwind.util.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * A {@link MemoryCache} that places a frequency-based admission filter in front of another memory cache, following the
+ * W-TinyLFU design. New entries go to a small first-in first-out admission window. When an entry leaves the window it
+ * becomes a candidate for the wrapped cache: if the wrapped cache has room the candidate is admitted, otherwise the
+ * candidate's estimated access frequency is compared with those of victims sampled from the wrapped cache's entries
+ * until enough victims are found to make room for it. The candidate is admitted in their place only if it is used more
+ * frequently than every one of them. Access frequencies are estimated by a {@link
+ * FrequencySketch}.
+ * <p/>
+ * The effect is that scan-like traffic, such as the tiles passed over while panning, stays in the window and leaves it
+ * without displacing the frequently revisited tiles held by the wrapped cache.
+ * <p/>
+ * A render loop looks up every visible tile once per frame, which would make a tile on screen for a few seconds look as
+ * popular as one revisited throughout a session. To count visits rather than frames, a key's lookups are counted at
+ * most once per count interval.
+ * <p/>
+ * The window's capacity is carved out of the wrapped cache's capacity when this cache is constructed. All changes to
+ * the wrapped cache must be made through this cache.
+ *
+ * @version $Id$
+ */
+public class TinyLFUMemoryCache implements MemoryCache
+{
+    /** The default fraction of the total capacity given to the admission window. */
+    public static final double DEFAULT_WINDOW_FRACTION = 0.05;
+    /** The default number of distinct keys the frequency sketch is sized for. */
+    public static final int DEFAULT_EXPECTED_ENTRIES = 8192;
+    /** The default interval within which a key's lookups are counted once, in milliseconds. */
+    public static final long DEFAULT_COUNT_INTERVAL = 1000;
+    /** The number of wrapped-cache entries examined when choosing a victim. */
+    protected static final int VICTIM_SAMPLE_SIZE = 8;
+
+    protected static class WindowEntry
+    {
+        protected final Object key;
+        protected final Object clientObject;
+        protected final long clientObjectSize;
+        protected boolean removed;
+
+        protected WindowEntry(Object key, Object clientObject, long clientObjectSize)
+        {
+            this.key = key;
+            this.clientObject = clientObject;
+            this.clientObjectSize = clientObjectSize;
+        }
+    }
+
+    protected final MemoryCache mainCache;
+    protected final double windowFraction;
+    protected final FrequencySketch sketch;
+    protected java.util.concurrent.CopyOnWriteArrayList<MemoryCache.CacheListener> listeners;
+    protected String name = "";
+
+    protected final Object lock = new Object();
+    protected final ConcurrentHashMap<Object, WindowEntry> window = new ConcurrentHashMap<Object, WindowEntry>();
+    protected final ArrayDeque<WindowEntry> windowQueue = new ArrayDeque<WindowEntry>(); // guarded by lock
+    protected volatile long windowCapacity;
+    protected final AtomicLong windowUsedCapacity = new AtomicLong();
+    /** The keys resident in the wrapped cache, for victim sampling. Guarded by lock. */
+    protected final ArrayList<Object> mainKeys = new ArrayList<Object>();
+    protected final HashMap<Object, Integer> mainKeyIndices = new HashMap<Object, Integer>();
+    /** The sizes of the entries resident in the wrapped cache, as added to it. Guarded by lock. */
+    protected final HashMap<Object, Long> mainKeySizes = new HashMap<Object, Long>();
+    protected final Random random = new Random();
+
+    protected volatile long countInterval = DEFAULT_COUNT_INTERVAL;
+    protected final AtomicLongArray countedKeys;
+    protected final AtomicLong countedKeysTime = new AtomicLong();
+
+    protected final AtomicLong hitCount = new AtomicLong();
+    protected final AtomicLong missCount = new AtomicLong();
+    protected final AtomicLong admittedCount = new AtomicLong();
+    protected final AtomicLong rejectedCount = new AtomicLong();
+
+    /**
+     * Constructs an admission filter in front of the specified cache, with a default window size and sketch size.
+     *
+     * @param mainCache the cache to filter admission to.
+     */
+    public TinyLFUMemoryCache(MemoryCache mainCache)
+    {
+        this(mainCache, DEFAULT_WINDOW_FRACTION, DEFAULT_EXPECTED_ENTRIES);
+    }
+
+    /**
+     * Constructs an admission filter in front of the specified cache. The wrapped cache's capacity is reduced by the
+     * window's share.
+     *
+     * @param mainCache       the cache to filter admission to.
+     * @param windowFraction  the fraction of the wrapped cache's capacity given to the admission window, from 0 to 1.
+     * @param expectedEntries the number of distinct keys the frequency sketch is sized for; typically the number of
+     *                        entries the cache holds when full.
+     *
+     * @throws IllegalArgumentException if the cache is null or the window fraction is not between 0 and 1.
+     */
+    public TinyLFUMemoryCache(MemoryCache mainCache, double windowFraction, int expectedEntries)
+    {
+        if (mainCache == null)
+        {
+            String message = Logging.getMessage("nullValue.CacheIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        if (windowFraction < 0 || windowFraction >= 1)
+        {
+            String message = Logging.getMessage("generic.ArgumentOutOfRange", "windowFraction=" + windowFraction);
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        this.mainCache = mainCache;
+        this.windowFraction = windowFraction;
+        this.sketch = new FrequencySketch(expectedEntries);
+        this.countedKeys = new AtomicLongArray(Math.max(expectedEntries / 8, 16));
+        this.listeners = new java.util.concurrent.CopyOnWriteArrayList<MemoryCache.CacheListener>();
+        this.setCapacity(mainCache.getCapacity());
+
+        this.mainCache.addCacheListener(new MemoryCache.CacheListener()
+        {
+            public void entryRemoved(Object key, Object clientObject)
+            {
+                untrackMainKey(key);
+                notifyRemoved(key, clientObject);
+            }
+
+            public void removalException(Throwable exception, Object key, Object clientObject)
+            {
+                for (MemoryCache.CacheListener listener : listeners)
+                {
+                    listener.removalException(exception, key, clientObject);
+                }
+            }
+        });
+    }
+
+    /** @return the cache this cache filters admission to. */
+    public MemoryCache getMainCache()
+    {
+        return this.mainCache;
+    }
+
+    /** @return the interval within which a key's lookups are counted once, in milliseconds. */
+    public long getCountInterval()
+    {
+        return this.countInterval;
+    }
+
+    /**
+     * Specifies the interval within which a key's lookups are counted once. Zero counts every lookup.
+     *
+     * @param countInterval the interval in milliseconds.
+     */
+    public void setCountInterval(long countInterval)
+    {
+        this.countInterval = countInterval;
+    }
+
+    public void setName(String name)
+    {
+        this.name = name != null ? name : "";
+        this.mainCache.setName(name);
+    }
+
+    public String getName()
+    {
+        return this.name;
+    }
+
+    public void addCacheListener(MemoryCache.CacheListener listener)
+    {
+        if (listener == null)
+        {
+            String message = Logging.getMessage("BasicMemoryCache.nullListenerAdded");
+            Logging.logger().warning(message);
+            throw new IllegalArgumentException(message);
+        }
+        this.listeners.add(listener);
+    }
+
+    public void removeCacheListener(MemoryCache.CacheListener listener)
+    {
+        if (listener == null)
+        {
+            String message = Logging.getMessage("BasicMemoryCache.nullListenerRemoved");
+            Logging.logger().warning(message);
+            throw new IllegalArgumentException(message);
+        }
+        this.listeners.remove(listener);
+    }
+
+    public boolean contains(Object key)
+    {
+        if (key == null)
+        {
+            String msg = Logging.getMessage("nullValue.KeyIsNull");
+            Logging.logger().severe(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        return this.window.containsKey(key) || this.mainCache.contains(key);
+    }
+
+    public boolean add(Object key, Object clientObject, long clientObjectSize)
+    {
+        if (key == null || clientObject == null || clientObjectSize <= 0 || clientObjectSize > this.getCapacity())
+        {
+            String message = Logging.getMessage("BasicMemoryCache.CacheItemNotAdded");
+
+            if (clientObjectSize > this.getCapacity())
+            {
+                message += " - " + Logging.getMessage("BasicMemoryCache.ItemTooLargeForCache");
+            }
+
+            Logging.logger().warning(message);
+
+            return false;
+        }
+
+        List<WindowEntry> discarded = new ArrayList<WindowEntry>();
+        boolean added = true;
+
+        synchronized (this.lock)
+        {
+            // Entries already admitted are updated in place.
+            if (this.mainCache.contains(key))
+            {
+                added = this.mainCache.add(key, clientObject, clientObjectSize);
+                if (added)
+                    this.trackMainKey(key, clientObjectSize);
+                return added;
+            }
+
+            WindowEntry existing = this.window.remove(key);
+            if (existing != null) // replacing
+            {
+                existing.removed = true;
+                this.windowUsedCapacity.addAndGet(-existing.clientObjectSize);
+                discarded.add(existing);
+            }
+
+            WindowEntry entry = new WindowEntry(key, clientObject, clientObjectSize);
+            if (clientObjectSize > this.windowCapacity)
+            {
+                // Too large for the window; it goes straight to admission. A rejected entry was never held, so like
+                // an item too large for BasicMemoryCache it is reported as not added rather than as removed.
+                added = this.admit(entry);
+            }
+            else
+            {
+                this.window.put(key, entry);
+                this.windowQueue.add(entry);
+                this.windowUsedCapacity.addAndGet(clientObjectSize);
+            }
+
+            while (this.windowUsedCapacity.get() > this.windowCapacity && !this.windowQueue.isEmpty())
+            {
+                WindowEntry candidate = this.windowQueue.poll();
+                if (candidate.removed)
+                    continue;
+
+                this.window.remove(candidate.key);
+                this.windowUsedCapacity.addAndGet(-candidate.clientObjectSize);
+
+                if (!this.admit(candidate))
+                    discarded.add(candidate);
+            }
+        }
+
+        for (WindowEntry entry : discarded)
+        {
+            this.notifyRemoved(entry.key, entry.clientObject);
+        }
+
+        return added;
+    }
+
+    public boolean add(Object key, Cacheable clientObject)
+    {
+        return this.add(key, clientObject, clientObject.getSizeInBytes());
+    }
+
+    /**
+     * Decides whether a candidate leaving the window enters the wrapped cache, and adds it if so. Must be called while
+     * holding the lock.
+     *
+     * @param candidate the candidate.
+     *
+     * @return true if the candidate was admitted, false if it was rejected.
+     */
+    protected boolean admit(WindowEntry candidate)
+    {
+        // Choose victims until their entries and the free capacity make room for the candidate, so that the wrapped
+        // cache never has to make room itself, which would bypass the frequency comparison. Nothing is evicted unless
+        // the candidate beats every victim.
+        int candidateFrequency = this.sketch.frequency(candidate.key);
+        Set<Object> victims = new HashSet<Object>();
+        long available = this.mainCache.getFreeCapacity();
+        while (available < candidate.clientObjectSize)
+        {
+            Object victim = this.sampleVictim(victims);
+            if (victim == null || candidateFrequency <= this.sketch.frequency(victim))
+            {
+                this.rejectedCount.incrementAndGet();
+                return false;
+            }
+
+            victims.add(victim);
+            available += this.mainKeySizes.get(victim);
+        }
+
+        for (Object victim : victims)
+        {
+            this.mainCache.remove(victim);
+        }
+
+        if (!this.mainCache.add(candidate.key, candidate.clientObject, candidate.clientObjectSize))
+            return false;
+
+        this.trackMainKey(candidate.key, candidate.clientObjectSize);
+        this.admittedCount.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Returns the least frequently used of a random sample of the wrapped cache's keys. Must be called while holding
+     * the lock.
+     *
+     * @param excluded keys already chosen as victims, which are not sampled again.
+     *
+     * @return the victim key, or null if every key in the wrapped cache is excluded.
+     */
+    protected Object sampleVictim(Set<Object> excluded)
+    {
+        int n = this.mainKeys.size();
+        if (n <= excluded.size())
+            return null;
+
+        Object victim = null;
+        int victimFrequency = Integer.MAX_VALUE;
+
+        int sampled = 0;
+        for (int i = 0; i < 4 * VICTIM_SAMPLE_SIZE && sampled < Math.min(VICTIM_SAMPLE_SIZE, n - excluded.size()); i++)
+        {
+            Object key = this.mainKeys.get(this.random.nextInt(n));
+            if (excluded.contains(key))
+                continue;
+
+            sampled++;
+            int frequency = this.sketch.frequency(key);
+            if (frequency < victimFrequency)
+            {
+                victim = key;
+                victimFrequency = frequency;
+            }
+        }
+
+        // When most keys are excluded the random draws may all miss; fall back to the first key that isn't.
+        for (int i = 0; victim == null && i < n; i++)
+        {
+            if (!excluded.contains(this.mainKeys.get(i)))
+                victim = this.mainKeys.get(i);
+        }
+
+        return victim;
+    }
+
+    protected void trackMainKey(Object key, long size)
+    {
+        synchronized (this.lock)
+        {
+            this.mainKeySizes.put(key, size);
+            if (this.mainKeyIndices.containsKey(key))
+                return;
+
+            this.mainKeyIndices.put(key, this.mainKeys.size());
+            this.mainKeys.add(key);
+        }
+    }
+
+    protected void untrackMainKey(Object key)
+    {
+        synchronized (this.lock)
+        {
+            Integer index = this.mainKeyIndices.remove(key);
+            if (index == null)
+                return;
+
+            this.mainKeySizes.remove(key);
+            // Move the last key into the vacated slot.
+            Object last = this.mainKeys.remove(this.mainKeys.size() - 1);
+            if (index < this.mainKeys.size())
+            {
+                this.mainKeys.set(index, last);
+                this.mainKeyIndices.put(last, index);
+            }
+        }
+    }
+
+    public void remove(Object key)
+    {
+        if (key == null)
+        {
+            Logging.logger().finer("nullValue.KeyIsNull");
+
+            return;
+        }
+
+        WindowEntry entry;
+
+        synchronized (this.lock)
+        {
+            entry = this.window.remove(key);
+            if (entry != null)
+            {
+                entry.removed = true;
+                this.windowUsedCapacity.addAndGet(-entry.clientObjectSize);
+            }
+            else
+            {
+                this.mainCache.remove(key);
+            }
+        }
+
+        if (entry != null)
+            this.notifyRemoved(entry.key, entry.clientObject);
+    }
+
+    public Object getObject(Object key)
+    {
+        if (key == null)
+        {
+            Logging.logger().finer("nullValue.KeyIsNull");
+
+            return null;
+        }
+
+        if (this.isFirstLookupInInterval(key))
+            this.sketch.increment(key);
+
+        Object o = this.mainCache.getObject(key);
+        if (o == null)
+        {
+            WindowEntry entry = this.window.get(key);
+            if (entry != null)
+                o = entry.clientObject;
+        }
+
+        if (o != null)
+            this.hitCount.incrementAndGet();
+        else
+            this.missCount.incrementAndGet();
+
+        return o;
+    }
+
+    /**
+     * Indicates whether this is the key's first lookup in the current count interval, using a bit set indexed by the
+     * key's hash that is cleared when the interval elapses. Hash collisions may cause a lookup to go uncounted.
+     *
+     * @param key the key being looked up.
+     *
+     * @return true if the lookup should be counted.
+     */
+    protected boolean isFirstLookupInInterval(Object key)
+    {
+        long interval = this.countInterval;
+        if (interval <= 0)
+            return true;
+
+        long now = System.currentTimeMillis();
+        long start = this.countedKeysTime.get();
+        if (now - start >= interval && this.countedKeysTime.compareAndSet(start, now))
+        {
+            for (int i = 0; i < this.countedKeys.length(); i++)
+            {
+                this.countedKeys.set(i, 0);
+            }
+        }
+
+        int h = FrequencySketch.spread(key.hashCode());
+        int index = (h >>> 6) % this.countedKeys.length();
+        long bit = 1L << (h & 63);
+
+        for (; ; )
+        {
+            long word = this.countedKeys.get(index);
+            if ((word & bit) != 0)
+                return false;
+
+            if (this.countedKeys.compareAndSet(index, word, word | bit))
+                return true;
+        }
+    }
+
+    public void clear()
+    {
+        List<WindowEntry> removed;
+
+        synchronized (this.lock)
+        {
+            removed = new ArrayList<WindowEntry>(this.window.values());
+            this.window.clear();
+            this.windowQueue.clear();
+            this.windowUsedCapacity.set(0);
+            this.mainCache.clear();
+        }
+
+        for (WindowEntry entry : removed)
+        {
+            this.notifyRemoved(entry.key, entry.clientObject);
+        }
+    }
+
+    protected void notifyRemoved(Object key, Object clientObject)
+    {
+        for (MemoryCache.CacheListener listener : this.listeners)
+        {
+            try
+            {
+                listener.entryRemoved(key, clientObject);
+            }
+            catch (Exception e)
+            {
+                listener.removalException(e, key, clientObject);
+            }
+        }
+    }
+
+    public int getNumObjects()
+    {
+        return this.mainCache.getNumObjects() + this.window.size();
+    }
+
+    public long getCapacity()
+    {
+        return this.mainCache.getCapacity() + this.windowCapacity;
+    }
+
+    public long getUsedCapacity()
+    {
+        return this.mainCache.getUsedCapacity() + this.windowUsedCapacity.get();
+    }
+
+    public long getFreeCapacity()
+    {
+        return Math.max(this.getCapacity() - this.getUsedCapacity(), 0);
+    }
+
+    public long getLowWater()
+    {
+        return this.mainCache.getLowWater();
+    }
+
+    public void setLowWater(long loWater)
+    {
+        this.mainCache.setLowWater(loWater);
+    }
+
+    /**
+     * Sets the total capacity, dividing it between the admission window and the wrapped cache.
+     *
+     * @param capacity the new capacity.
+     */
+    public void setCapacity(long capacity)
+    {
+        this.windowCapacity = (long) (this.windowFraction * capacity);
+        this.mainCache.setCapacity(capacity - this.windowCapacity);
+    }
+
+    /** @return the number of lookups that found their entry. */
+    public long getHitCount()
+    {
+        return this.hitCount.get();
+    }
+
+    /** @return the number of lookups that did not find their entry. */
+    public long getMissCount()
+    {
+        return this.missCount.get();
+    }
+
+    /** @return the number of window candidates admitted to the wrapped cache. */
+    public long getAdmittedCount()
+    {
+        return this.admittedCount.get();
+    }
+
+    /** @return the number of window candidates discarded in favor of a more frequently used entry. */
+    public long getRejectedCount()
+    {
+        return this.rejectedCount.get();
+    }
+
+    /**
+     * Returns this cache's hit rate and admission counts as {@link PerformanceStatistic#MEMORY_CACHE} statistics.
+     *
+     * @return this cache's statistics.
+     */
+    public Collection<PerformanceStatistic> getPerformanceStatistics()
+    {
+        long hits = this.hitCount.get();
+        long lookups = hits + this.missCount.get();
+
+        ArrayList<PerformanceStatistic> stats = new ArrayList<PerformanceStatistic>();
+        stats.add(new PerformanceStatistic(PerformanceStatistic.MEMORY_CACHE, "Cache Hit Rate (%): " + this.name,
+            lookups > 0 ? Math.round(100d * hits / lookups) : 0));
+        stats.add(new PerformanceStatistic(PerformanceStatistic.MEMORY_CACHE, "Cache Admitted: " + this.name,
+            this.admittedCount.get()));
+        stats.add(new PerformanceStatistic(PerformanceStatistic.MEMORY_CACHE, "Cache Rejected: " + this.name,
+            this.rejectedCount.get()));
+
+        return stats;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "MemoryCache " + this.name + " max size = " + this.getCapacity() + " current size = "
+            + this.getUsedCapacity() + " number of items: " + this.getNumObjects();
+    }
+}
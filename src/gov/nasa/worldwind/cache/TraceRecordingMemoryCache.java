@@ -0,0 +1,233 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+
+package gov.nasa.worldwind.cache;
+
+import gov.nasa.worldwind.util.*;
+
+import java.io.*;
+import java.util.HashSet;
+
+/**
+ * A {@link MemoryCache} that records the tiles looked up in another memory cache, so that a real session's accesses can
+ * be replayed by {@link gov.nasa.worldwindx.performance.MemoryCacheReplayBenchmark}. Each lookup of a {@link TileKey}
+ * writes a line formatted as <code>level row column cacheName</code>, with any white space in the cache name replaced
+ * by an underscore. Lookups of other keys are not recorded.
+ * <p/>
+ * A render loop looks up every visible tile once per frame. To record visits rather than frames, a key is recorded at
+ * most once per record interval, which defaults to the {@link TinyLFUMemoryCache} count interval.
+ * <p/>
+ * All other methods are passed to the wrapped cache. Several caches may share one writer.
+ *
+ * @version $Id$
+ */
+public class TraceRecordingMemoryCache implements MemoryCache
+{
+    /** The default interval within which a key's lookups are recorded once, in milliseconds. */
+    public static final long DEFAULT_RECORD_INTERVAL = TinyLFUMemoryCache.DEFAULT_COUNT_INTERVAL;
+
+    protected final MemoryCache cache;
+    protected final Writer writer;
+    protected long recordInterval = DEFAULT_RECORD_INTERVAL;
+    protected final HashSet<TileKey> recordedKeys = new HashSet<TileKey>(); // guarded by recordedKeys
+    protected long recordedKeysTime;
+    protected boolean writeFailed;
+
+    /**
+     * Constructs a cache that records the lookups of the specified cache to a writer.
+     *
+     * @param cache  the cache to record the lookups of.
+     * @param writer the writer to record lookups to. Writes are synchronized on the writer.
+     *
+     * @throws IllegalArgumentException if either the cache or the writer is null.
+     */
+    public TraceRecordingMemoryCache(MemoryCache cache, Writer writer)
+    {
+        if (cache == null)
+        {
+            String message = Logging.getMessage("nullValue.CacheIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        if (writer == null)
+        {
+            String message = Logging.getMessage("nullValue.WriterIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        this.cache = cache;
+        this.writer = writer;
+    }
+
+    /** @return the cache whose lookups are recorded. */
+    public MemoryCache getCache()
+    {
+        return this.cache;
+    }
+
+    /** @return the interval within which a key's lookups are recorded once, in milliseconds. */
+    public long getRecordInterval()
+    {
+        synchronized (this.recordedKeys)
+        {
+            return this.recordInterval;
+        }
+    }
+
+    /**
+     * Specifies the interval within which a key's lookups are recorded once. Zero records every lookup.
+     *
+     * @param recordInterval the interval in milliseconds.
+     */
+    public void setRecordInterval(long recordInterval)
+    {
+        synchronized (this.recordedKeys)
+        {
+            this.recordInterval = recordInterval;
+        }
+    }
+
+    public void setName(String name)
+    {
+        this.cache.setName(name);
+    }
+
+    public String getName()
+    {
+        return this.cache.getName();
+    }
+
+    public void addCacheListener(MemoryCache.CacheListener listener)
+    {
+        this.cache.addCacheListener(listener);
+    }
+
+    public void removeCacheListener(MemoryCache.CacheListener listener)
+    {
+        this.cache.removeCacheListener(listener);
+    }
+
+    public boolean contains(Object key)
+    {
+        return this.cache.contains(key);
+    }
+
+    public boolean add(Object key, Object clientObject, long objectSize)
+    {
+        return this.cache.add(key, clientObject, objectSize);
+    }
+
+    public boolean add(Object key, Cacheable clientObject)
+    {
+        return this.cache.add(key, clientObject);
+    }
+
+    public void remove(Object key)
+    {
+        this.cache.remove(key);
+    }
+
+    public Object getObject(Object key)
+    {
+        if (key instanceof TileKey && this.isFirstLookupInInterval((TileKey) key))
+            this.record((TileKey) key);
+
+        return this.cache.getObject(key);
+    }
+
+    /**
+     * Indicates whether this is the key's first lookup in the current record interval.
+     *
+     * @param key the key being looked up.
+     *
+     * @return true if the lookup should be recorded.
+     */
+    protected boolean isFirstLookupInInterval(TileKey key)
+    {
+        synchronized (this.recordedKeys)
+        {
+            if (this.recordInterval <= 0)
+                return true;
+
+            long now = System.currentTimeMillis();
+            if (now - this.recordedKeysTime >= this.recordInterval)
+            {
+                this.recordedKeys.clear();
+                this.recordedKeysTime = now;
+            }
+
+            return this.recordedKeys.add(key);
+        }
+    }
+
+    protected void record(TileKey key)
+    {
+        String cacheName = key.getCacheName() != null ? key.getCacheName().replaceAll("\\s", "_") : "";
+        String line = key.getLevelNumber() + " " + key.getRow() + " " + key.getColumn() + " " + cacheName;
+
+        synchronized (this.writer)
+        {
+            try
+            {
+                this.writer.write(line);
+                this.writer.write(System.getProperty("line.separator"));
+                this.writer.flush();
+            }
+            catch (IOException e)
+            {
+                // Log the first failure only, since every later lookup would fail the same way.
+                if (!this.writeFailed)
+                {
+                    String message = Logging.getMessage("generic.ExceptionAttemptingToWriteTo", this.writer);
+                    Logging.logger().log(java.util.logging.Level.SEVERE, message, e);
+                    this.writeFailed = true;
+                }
+            }
+        }
+    }
+
+    public void clear()
+    {
+        this.cache.clear();
+    }
+
+    public int getNumObjects()
+    {
+        return this.cache.getNumObjects();
+    }
+
+    public long getCapacity()
+    {
+        return this.cache.getCapacity();
+    }
+
+    public long getUsedCapacity()
+    {
+        return this.cache.getUsedCapacity();
+    }
+
+    public long getFreeCapacity()
+    {
+        return this.cache.getFreeCapacity();
+    }
+
+    public long getLowWater()
+    {
+        return this.cache.getLowWater();
+    }
+
+    public void setLowWater(long loWater)
+    {
+        this.cache.setLowWater(loWater);
+    }
+
+    public void setCapacity(long capacity)
+    {
+        this.cache.setCapacity(capacity);
+    }
+}
@@ -6,7 +6,7 @@
 package gov.nasa.worldwind.data;
 
 import gov.nasa.worldwind.avlist.*;
-import gov.nasa.worldwind.geom.Sector;
+import gov.nasa.worldwind.geom.*;
 import gov.nasa.worldwind.util.*;
 
 import java.io.IOException;
@@ -198,6 +198,93 @@ public abstract class AbstractDataRasterReader extends AVListImpl implements Dat
     //********************  Utilities  *****************************//
     //**************************************************************//
 
+    /**
+     * Computes the pixels of an elevation raster that are needed to draw onto a sector, including a margin of one pixel
+     * for interpolation. Elevation rasters place their first and last pixels on the edges of their sector.
+     *
+     * @param width        the raster's width in pixels.
+     * @param height       the raster's height in pixels.
+     * @param rasterSector the raster's sector.
+     * @param sector       the sector to draw onto.
+     *
+     * @return the window's pixels, with the origin at the raster's upper left corner, or null if the sector does not
+     * intersect the raster.
+     */
+    protected java.awt.Rectangle computeElevationWindow(int width, int height, Sector rasterSector, Sector sector)
+    {
+        if (!rasterSector.intersects(sector))
+            return null;
+
+        if (width < 2 || height < 2)
+            return new java.awt.Rectangle(0, 0, width, height);
+
+        double dx = rasterSector.getDeltaLonDegrees() / (width - 1);
+        double dy = rasterSector.getDeltaLatDegrees() / (height - 1);
+        double minLon = rasterSector.getMinLongitude().degrees;
+        double maxLat = rasterSector.getMaxLatitude().degrees;
+
+        int x0 = (int) Math.floor((sector.getMinLongitude().degrees - minLon) / dx) - 1;
+        int x1 = (int) Math.ceil((sector.getMaxLongitude().degrees - minLon) / dx) + 1;
+        int y0 = (int) Math.floor((maxLat - sector.getMaxLatitude().degrees) / dy) - 1;
+        int y1 = (int) Math.ceil((maxLat - sector.getMinLatitude().degrees) / dy) + 1;
+        x0 = WWMath.clamp(x0, 0, width - 2);
+        x1 = WWMath.clamp(x1, x0 + 1, width - 1);
+        y0 = WWMath.clamp(y0, 0, height - 2);
+        y1 = WWMath.clamp(y1, y0 + 1, height - 1);
+
+        return new java.awt.Rectangle(x0, y0, x1 - x0 + 1, y1 - y0 + 1);
+    }
+
+    /**
+     * Computes the sector of a window of an elevation raster, as returned by {@link #computeElevationWindow(int, int,
+     * gov.nasa.worldwind.geom.Sector, gov.nasa.worldwind.geom.Sector)}.
+     *
+     * @param width        the raster's width in pixels.
+     * @param height       the raster's height in pixels.
+     * @param rasterSector the raster's sector.
+     * @param window       the window's pixels.
+     *
+     * @return the window's sector.
+     */
+    protected Sector computeElevationWindowSector(int width, int height, Sector rasterSector, java.awt.Rectangle window)
+    {
+        if (window.x == 0 && window.y == 0 && window.width == width && window.height == height)
+            return rasterSector;
+
+        double dx = rasterSector.getDeltaLonDegrees() / (width - 1);
+        double dy = rasterSector.getDeltaLatDegrees() / (height - 1);
+        double minLon = rasterSector.getMinLongitude().degrees;
+        double maxLat = rasterSector.getMaxLatitude().degrees;
+
+        return Sector.fromDegrees(maxLat - (window.y + window.height - 1) * dy, maxLat - window.y * dy,
+            minLon + window.x * dx, minLon + (window.x + window.width - 1) * dx);
+    }
+
+    /**
+     * Returns a copy of an elevation raster's metadata that describes a window of the raster.
+     *
+     * @param params       the raster's metadata.
+     * @param rasterSector the raster's sector.
+     * @param window       the window's pixels.
+     *
+     * @return the window's metadata.
+     */
+    protected AVList createElevationWindowParams(AVList params, Sector rasterSector, java.awt.Rectangle window)
+    {
+        int width = (Integer) params.getValue(AVKey.WIDTH);
+        int height = (Integer) params.getValue(AVKey.HEIGHT);
+
+        Sector sector = this.computeElevationWindowSector(width, height, rasterSector, window);
+        AVList windowParams = params.copy();
+        windowParams.setValue(AVKey.WIDTH, window.width);
+        windowParams.setValue(AVKey.HEIGHT, window.height);
+        windowParams.setValue(AVKey.SECTOR, sector);
+        if (windowParams.hasKey(AVKey.ORIGIN))
+            windowParams.setValue(AVKey.ORIGIN, new LatLon(sector.getMaxLatitude(), sector.getMinLongitude()));
+
+        return windowParams;
+    }
+
     private static String descriptionFromSuffixes(String[] suffixes)
     {
         StringBuilder sb = new StringBuilder();
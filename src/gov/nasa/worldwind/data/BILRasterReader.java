@@ -13,10 +13,13 @@ import gov.nasa.worldwind.util.*;
 import java.io.File;
 
 /**
+ * Reads BIL elevation rasters. Windows of uncompressed BIL files are read one row at a time, without reading the rest
+ * of the file.
+ *
  * @author dcollins
  * @version $Id: BILRasterReader.java 1171 2013-02-11 21:45:02Z dcollins $
  */
-public class BILRasterReader extends AbstractDataRasterReader
+public class BILRasterReader extends AbstractDataRasterReader implements WindowedDataRasterReader
 {
     private static final String[] bilMimeTypes = new String[]
         {"image/bil", "application/bil", "application/bil16", "application/bil32"};
@@ -117,6 +120,101 @@ public class BILRasterReader extends AbstractDataRasterReader
         return new DataRaster[] { raster };
     }
 
+    /**
+     * Indicates whether windows of a specified source can be read. Windows can be read from uncompressed BIL files, but
+     * not from URLs that do not refer to files, or from compressed files.
+     *
+     * @param source the source to examine.
+     * @param params the source's metadata. May be null.
+     *
+     * @return true if windows of the source can be read, otherwise false.
+     */
+    public boolean canReadWindow(Object source, AVList params)
+    {
+        File file = this.getFile(source);
+        if (file == null)
+            return false;
+
+        String name = file.getName().toLowerCase();
+        return !name.endsWith(".zip") && !name.endsWith(".gz") && this.canRead(source, params);
+    }
+
+    public DataRaster readWindow(Object source, Sector sector, AVList params) throws java.io.IOException
+    {
+        if (sector == null)
+        {
+            String message = Logging.getMessage("nullValue.SectorIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        File file = this.getFile(source);
+        if (file == null)
+        {
+            String message = Logging.getMessage("DataRaster.CannotRead", source);
+            Logging.logger().severe(message);
+            throw new java.io.IOException(message);
+        }
+
+        // Copy the parameter list to insulate changes from the caller, then populate any missing metadata.
+        params = (params != null) ? params.copy() : new AVListImpl();
+        if (this.validateMetadata(source, params) != null)
+        {
+            params.setValue(AVKey.FILE_SIZE, (int) file.length());
+            WorldFile.readWorldFiles(source, params);
+        }
+
+        if (!params.hasKey(AVKey.PIXEL_FORMAT))
+        {
+            params.setValue(AVKey.PIXEL_FORMAT, AVKey.ELEVATION);
+        }
+
+        int width = (Integer) params.getValue(AVKey.WIDTH);
+        int height = (Integer) params.getValue(AVKey.HEIGHT);
+        Sector rasterSector = (Sector) params.getValue(AVKey.SECTOR);
+        java.awt.Rectangle window = this.computeElevationWindow(width, height, rasterSector, sector);
+        if (window == null)
+            return null;
+
+        int sampleSize = WWBufferUtil.sizeOfPrimitiveType(params.getValue(AVKey.DATA_TYPE));
+        int rowSize = window.width * sampleSize;
+        java.nio.ByteBuffer byteBuffer = java.nio.ByteBuffer.allocate(window.height * rowSize);
+
+        java.io.RandomAccessFile raf = new java.io.RandomAccessFile(file, "r");
+        try
+        {
+            // Read each row of the window in turn, so that the reads move forward through the file.
+            java.nio.channels.FileChannel channel = raf.getChannel();
+            for (int row = 0; row < window.height; row++)
+            {
+                long position = ((long) (window.y + row) * width + window.x) * sampleSize;
+                byteBuffer.limit((row + 1) * rowSize);
+                while (byteBuffer.hasRemaining())
+                {
+                    int count = channel.read(byteBuffer, position);
+                    if (count < 0)
+                    {
+                        String message = Logging.getMessage("DataRaster.CannotRead", file);
+                        Logging.logger().severe(message);
+                        throw new java.io.IOException(message);
+                    }
+                    position += count;
+                }
+            }
+        }
+        finally
+        {
+            WWIO.closeStream(raf, file.getPath());
+        }
+
+        byteBuffer.rewind();
+        AVList windowParams = this.createElevationWindowParams(params, rasterSector, window);
+        ByteBufferRaster raster = new ByteBufferRaster(window.width, window.height,
+            (Sector) windowParams.getValue(AVKey.SECTOR), byteBuffer, windowParams);
+        ElevationsUtil.rectify(raster);
+        return raster;
+    }
+
     protected void doReadMetadata(Object source, AVList params) throws java.io.IOException
     {
         if (this.validateMetadata(source, params) != null)
@@ -166,6 +264,16 @@ public class BILRasterReader extends AbstractDataRasterReader
         return sb.toString();
     }
 
+    protected File getFile(Object source)
+    {
+        if (source instanceof java.io.File)
+            return (File) source;
+        else if (source instanceof java.net.URL && "file".equalsIgnoreCase(((java.net.URL) source).getProtocol()))
+            return new File(((java.net.URL) source).getFile());
+
+        return null;
+    }
+
     private java.nio.ByteBuffer readElevations(Object source) throws java.io.IOException
     {
         if (!(source instanceof java.io.File) && !(source instanceof java.net.URL))
@@ -0,0 +1,622 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+
+package gov.nasa.worldwind.data;
+
+import gov.nasa.worldwind.avlist.*;
+import gov.nasa.worldwind.exception.WWRuntimeException;
+import gov.nasa.worldwind.geom.*;
+import gov.nasa.worldwind.globes.*;
+import gov.nasa.worldwind.terrain.*;
+import gov.nasa.worldwind.util.*;
+import org.w3c.dom.Document;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+/**
+ * Converts an installed BIL elevation tile pyramid to a pyramid of TIN tiles read by {@link TINElevationModel}. Each
+ * tile is triangulated by {@link GreedyTerrainTriangulator}, which inserts the tile's worst-fitting grid point until
+ * every grid point is within a maximum error of the triangulated surface. The tiles keep the source pyramid's level
+ * set, so each TIN tile covers exactly the sector of the BIL tile it was made from.
+ * <p/>
+ * The data source is the configuration file of the installed BIL pyramid, with the pyramid's tiles in the folder
+ * containing the file. The store parameters {@link AVKey#FILE_STORE_LOCATION} and {@link AVKey#DATA_CACHE_NAME} specify
+ * where the TIN pyramid is written. The optional parameters {@link AVKey#TIN_MAX_ERROR} and {@link
+ * AVKey#TIN_MAX_VERTICES} limit the triangulation of each tile.
+ *
+ * @version $Id$
+ */
+public class BILToTINConverter extends AbstractDataStoreProducer
+{
+    /** The default largest difference, in meters, between a source elevation and the triangulated surface. */
+    public static final double DEFAULT_MAX_ERROR = 1d;
+    /** The default largest number of vertices in a tile's triangulation. */
+    public static final int DEFAULT_MAX_VERTICES = 65536;
+
+    protected static final String BIL_SUFFIX = ".bil";
+
+    protected static class ProductionState
+    {
+        // Production parameters.
+        AVList productionParams;
+        double maxError;
+        int maxVertices;
+        Globe globe;
+        // Progress counters.
+        int numSources;
+        int curSource;
+        int[] numSourceFiles;
+        int[] numConvertedFiles;
+    }
+
+    public BILToTINConverter()
+    {
+    }
+
+    public String getDataSourceDescription()
+    {
+        return Logging.getMessage("BILToTINConverter.Description");
+    }
+
+    public void removeProductionState()
+    {
+        File destConfigFile = this.getDestConfigFile(this.getStoreParameters());
+        if (destConfigFile == null || destConfigFile.getParentFile() == null)
+            return;
+
+        try
+        {
+            WWIO.deleteDirectory(destConfigFile.getParentFile());
+        }
+        catch (Exception e)
+        {
+            String message = Logging.getMessage("BILToTINConverter.ExceptionRemovingProductionState",
+                destConfigFile);
+            Logging.logger().log(java.util.logging.Level.SEVERE, message, e);
+        }
+    }
+
+    protected void doStartProduction(AVList parameters) throws Exception
+    {
+        this.getProductionResultsList().clear();
+        Iterable<SourceInfo> dataSources = this.getDataSourceList();
+        ProductionState productionState = new ProductionState();
+
+        this.initProductionParameters(parameters, productionState);
+        this.setProgressParameters(dataSources, productionState);
+
+        for (SourceInfo info : dataSources)
+        {
+            if (this.isStopped())
+                return;
+
+            productionState.curSource++;
+            this.convertPyramid(info.source, productionState);
+        }
+    }
+
+    protected void initProductionParameters(AVList params, ProductionState productionState)
+    {
+        Double maxError = AVListImpl.getDoubleValue(params, AVKey.TIN_MAX_ERROR);
+        Integer maxVertices = AVListImpl.getIntegerValue(params, AVKey.TIN_MAX_VERTICES);
+
+        productionState.productionParams = params;
+        productionState.maxError = maxError != null ? maxError : DEFAULT_MAX_ERROR;
+        productionState.maxVertices = maxVertices != null ? maxVertices : DEFAULT_MAX_VERTICES;
+        // Tile headers are computed on the bare WGS84 ellipsoid.
+        productionState.globe = new EllipsoidalGlobe(Earth.WGS84_EQUATORIAL_RADIUS, Earth.WGS84_POLAR_RADIUS,
+            Earth.WGS84_ES, new ZeroElevationModel());
+    }
+
+    protected String validateProductionParameters(AVList parameters)
+    {
+        StringBuilder sb = new StringBuilder();
+
+        Object o = parameters.getValue(AVKey.FILE_STORE_LOCATION);
+        if (o == null || !(o instanceof String) || ((String) o).length() < 1)
+            sb.append((sb.length() > 0 ? ", " : "")).append(Logging.getMessage("term.fileStoreLocation"));
+
+        o = parameters.getValue(AVKey.DATA_CACHE_NAME);
+        if (o == null || !(o instanceof String) || ((String) o).length() < 1)
+            sb.append((sb.length() > 0 ? ", " : "")).append(Logging.getMessage("term.fileStoreFolder"));
+
+        if (sb.length() == 0)
+            return null;
+
+        return Logging.getMessage("DataStoreProducer.InvalidDataStoreParamters", sb.toString());
+    }
+
+    protected String validateDataSource(Object source, AVList params)
+    {
+        File file = this.getSourceConfigFile(source);
+        if (file == null)
+            return Logging.getMessage("BILToTINConverter.NoSourceLocation");
+
+        try
+        {
+            Document doc = WWXML.openDocument(file);
+            if (doc == null || !"ElevationModel".equals(DataConfigurationUtils.getDataConfigType(
+                doc.getDocumentElement())))
+                return Logging.getMessage("BILToTINConverter.FileNotElevationModel", file);
+
+            AVList sourceParams = BasicElevationModel.getBasicElevationModelConfigParams(doc.getDocumentElement(),
+                null);
+            if (!BIL_SUFFIX.equalsIgnoreCase(sourceParams.getStringValue(AVKey.FORMAT_SUFFIX)))
+                return Logging.getMessage("BILToTINConverter.FileNotElevationModel", file);
+        }
+        catch (Exception e)
+        {
+            Logging.logger().fine(Logging.getMessage("generic.ExceptionAttemptingToParseXml", file));
+
+            return Logging.getMessage("BILToTINConverter.CannotReadConfigFile", file);
+        }
+
+        return null;
+    }
+
+    //**************************************************************//
+    //********************  Pyramid Conversion  ********************//
+    //**************************************************************//
+
+    protected void convertPyramid(Object source, ProductionState productionState) throws Exception
+    {
+        File sourceConfigFile = this.getSourceConfigFile(source);
+        if (sourceConfigFile == null)
+        {
+            String message = Logging.getMessage("BILToTINConverter.NoSourceLocation");
+            Logging.logger().severe(message);
+            throw new WWRuntimeException(message);
+        }
+
+        File sourceDataFile = sourceConfigFile.getParentFile();
+        File destConfigFile = this.getDestConfigFile(productionState.productionParams);
+        File destDataFile = destConfigFile != null ? destConfigFile.getParentFile() : null;
+        if (sourceDataFile == null || destDataFile == null)
+        {
+            String message = Logging.getMessage("BILToTINConverter.NoInstallLocation", sourceConfigFile);
+            Logging.logger().severe(message);
+            throw new WWRuntimeException(message);
+        }
+
+        if (WWIO.isAncestorOf(sourceDataFile, destDataFile) || WWIO.isAncestorOf(destDataFile, sourceDataFile))
+        {
+            String message = Logging.getMessage("BILToTINConverter.CannotInstallToSelf", sourceDataFile,
+                destDataFile);
+            Logging.logger().severe(message);
+            throw new WWRuntimeException(message);
+        }
+
+        Document sourceConfigDoc = WWXML.openDocument(sourceConfigFile);
+        AVList sourceParams = BasicElevationModel.getBasicElevationModelConfigParams(
+            sourceConfigDoc.getDocumentElement(), null);
+        LevelSet levels = new LevelSet(sourceParams);
+
+        List<File> tiles = this.findSourceTiles(sourceDataFile);
+        productionState.numSourceFiles[productionState.curSource] = tiles.size();
+
+        try
+        {
+            for (File tile : tiles)
+            {
+                if (this.isStopped())
+                    return;
+
+                this.convertTile(tile, sourceDataFile, destDataFile, sourceParams, levels, productionState);
+                this.updateProgress(productionState);
+            }
+        }
+        catch (Exception e)
+        {
+            // Back out all file system changes made so far.
+            WWIO.deleteDirectory(destDataFile);
+
+            String message = Logging.getMessage("BILToTINConverter.CannotConvertPyramid", sourceConfigFile);
+            Logging.logger().log(java.util.logging.Level.SEVERE, message, e);
+            throw new WWRuntimeException(message);
+        }
+
+        if (this.isStopped())
+            return;
+
+        Document destConfigDoc;
+        try
+        {
+            destConfigDoc = this.createDestConfigDoc(sourceParams, productionState.productionParams);
+            WWXML.saveDocumentToFile(destConfigDoc, destConfigFile.getAbsolutePath());
+        }
+        catch (Exception e)
+        {
+            // Back out all file system changes made so far.
+            WWIO.deleteDirectory(destDataFile);
+
+            String message = Logging.getMessage("BILToTINConverter.CannotWriteConfigFile", destConfigFile);
+            Logging.logger().log(java.util.logging.Level.SEVERE, message, e);
+            throw new WWRuntimeException(message);
+        }
+
+        this.getProductionResultsList().add(destConfigDoc);
+    }
+
+    /**
+     * Finds the tiles of a BIL pyramid, which are in folders named by level number, then by row number.
+     *
+     * @param dataFolder the folder containing the level folders.
+     *
+     * @return the pyramid's tile files.
+     */
+    protected List<File> findSourceTiles(File dataFolder)
+    {
+        ArrayList<File> tiles = new ArrayList<File>();
+
+        File[] levelFolders = dataFolder.listFiles();
+        if (levelFolders == null)
+            return tiles;
+
+        for (File levelFolder : levelFolders)
+        {
+            File[] rowFolders = levelFolder.isDirectory() && WWUtil.makeInteger(levelFolder.getName()) != null
+                ? levelFolder.listFiles() : null;
+            if (rowFolders == null)
+                continue;
+
+            for (File rowFolder : rowFolders)
+            {
+                File[] files = rowFolder.isDirectory() ? rowFolder.listFiles() : null;
+                if (files == null)
+                    continue;
+
+                for (File file : files)
+                {
+                    if (file.isFile() && file.getName().toLowerCase().endsWith(BIL_SUFFIX))
+                        tiles.add(file);
+                }
+            }
+        }
+
+        return tiles;
+    }
+
+    protected void convertTile(File file, File sourceDataFile, File destDataFile, AVList sourceParams,
+        LevelSet levels, ProductionState productionState) throws Exception
+    {
+        // Tiles are named "level/row/row_column.bil".
+        String name = file.getName().substring(0, file.getName().length() - BIL_SUFFIX.length());
+        String[] rowColumn = name.split("_");
+        Integer levelNumber = WWUtil.makeInteger(file.getParentFile().getParentFile().getName());
+        Integer row = rowColumn.length == 2 ? WWUtil.makeInteger(rowColumn[0]) : null;
+        Integer column = rowColumn.length == 2 ? WWUtil.makeInteger(rowColumn[1]) : null;
+        if (levelNumber == null || row == null || column == null || levels.getLevel(levelNumber) == null)
+        {
+            String message = Logging.getMessage("BILToTINConverter.UnrecognizedTile", file);
+            Logging.logger().warning(message);
+            return;
+        }
+
+        Level level = levels.getLevel(levelNumber);
+        int width = level.getTileWidth();
+        int height = level.getTileHeight();
+
+        ByteBuffer buffer = WWIO.readFileToBuffer(file);
+        BufferWrapper samples = BufferWrapper.wrap(buffer, sourceParams);
+        if (samples.length() < width * height)
+        {
+            String message = Logging.getMessage("ElevationModel.ElevationsBufferTooSmall", width * height);
+            Logging.logger().severe(message);
+            throw new WWRuntimeException(message);
+        }
+
+        Double missingDataSignal = AVListImpl.getDoubleValue(sourceParams, AVKey.MISSING_DATA_SIGNAL);
+        double[] heights = readHeights(samples, width * height, missingDataSignal);
+
+        QuantizedMeshTile mesh = createMesh(heights, width, height, productionState.maxError,
+            productionState.maxVertices);
+
+        LatLon delta = level.getTileDelta();
+        LatLon origin = levels.getTileOrigin();
+        Angle minLat = Tile.computeRowLatitude(row, delta.getLatitude(), origin.getLatitude());
+        Angle minLon = Tile.computeColumnLongitude(column, delta.getLongitude(), origin.getLongitude());
+        Sector sector = new Sector(minLat, minLat.add(delta.getLatitude()), minLon, minLon.add(delta.getLongitude()));
+        computeBoundingValues(mesh, sector, productionState.globe);
+
+        String destPath = WWIO.replaceSuffix(file.getAbsolutePath().substring(
+            sourceDataFile.getAbsolutePath().length()), TINElevationModel.FORMAT_SUFFIX);
+        File destFile = new File(destDataFile, destPath);
+        WWIO.makeParentDirs(destFile.getPath());
+        WWIO.saveBuffer(mesh.encode(), destFile);
+    }
+
+    protected static double[] readHeights(BufferWrapper samples, int count, Double missingDataSignal)
+    {
+        double[] heights = new double[count];
+        double min = Double.MAX_VALUE;
+        for (int i = 0; i < count; i++)
+        {
+            heights[i] = samples.getDouble(i);
+            if (missingDataSignal == null || heights[i] != missingDataSignal)
+                min = Math.min(min, heights[i]);
+        }
+
+        // Missing samples take the tile's lowest valid height, or zero if it has none.
+        if (missingDataSignal != null)
+        {
+            double replacement = min != Double.MAX_VALUE ? min : 0;
+            for (int i = 0; i < count; i++)
+            {
+                if (heights[i] == missingDataSignal)
+                    heights[i] = replacement;
+            }
+        }
+
+        return heights;
+    }
+
+    /**
+     * Creates a TIN tile approximating a grid of heights. The grid's first row is its northern edge, and its samples
+     * lie on the tile's edges and corners. Vertices are inserted until every grid point is within a specified error of
+     * the triangulated surface, or the triangulation has a specified number of vertices. The returned tile's header
+     * bounding values are not set.
+     *
+     * @param heights     the grid's heights in meters, in row-major order.
+     * @param width       the number of grid columns.
+     * @param height      the number of grid rows.
+     * @param maxError    the largest allowed difference between a grid height and the triangulated surface.
+     * @param maxVertices the largest number of vertices in the triangulation.
+     *
+     * @return the TIN tile.
+     *
+     * @throws IllegalArgumentException if the heights are null, or the grid is smaller than 2 by 2 or larger than its
+     *                                  heights.
+     */
+    public static QuantizedMeshTile createMesh(double[] heights, int width, int height, double maxError,
+        int maxVertices)
+    {
+        GreedyTerrainTriangulator triangulator = new GreedyTerrainTriangulator(heights, width, height);
+        triangulator.run(maxError, maxVertices);
+
+        int[] coords = triangulator.getVertices();
+        int[] triangles = triangulator.getTriangles();
+        int numVertices = coords.length / 2;
+
+        double minHeight = Double.MAX_VALUE;
+        double maxHeight = -Double.MAX_VALUE;
+        for (int i = 0; i < numVertices; i++)
+        {
+            double h = heights[coords[2 * i + 1] * width + coords[2 * i]];
+            minHeight = Math.min(minHeight, h);
+            maxHeight = Math.max(maxHeight, h);
+        }
+
+        int[] u = new int[numVertices];
+        int[] v = new int[numVertices];
+        int[] h = new int[numVertices];
+        ArrayList<Integer> west = new ArrayList<Integer>();
+        ArrayList<Integer> south = new ArrayList<Integer>();
+        ArrayList<Integer> east = new ArrayList<Integer>();
+        ArrayList<Integer> north = new ArrayList<Integer>();
+        double heightRange = maxHeight - minHeight;
+        for (int i = 0; i < numVertices; i++)
+        {
+            int x = coords[2 * i];
+            int y = coords[2 * i + 1];
+            u[i] = (int) Math.round((double) x * QuantizedMeshTile.MAX_VALUE / (width - 1));
+            v[i] = (int) Math.round((double) (height - 1 - y) * QuantizedMeshTile.MAX_VALUE / (height - 1));
+            h[i] = heightRange > 0 ? (int) Math.round(
+                (heights[y * width + x] - minHeight) * QuantizedMeshTile.MAX_VALUE / heightRange) : 0;
+
+            if (x == 0)
+                west.add(i);
+            if (x == width - 1)
+                east.add(i);
+            if (y == 0)
+                north.add(i);
+            if (y == height - 1)
+                south.add(i);
+        }
+
+        // Flipping the grid's rows to make v increase northward reverses the triangles' winding. Make every triangle
+        // counterclockwise in (u, v) regardless.
+        for (int t = 0; t < triangles.length; t += 3)
+        {
+            int a = triangles[t], b = triangles[t + 1], c = triangles[t + 2];
+            long cross = (long) (u[b] - u[a]) * (v[c] - v[a]) - (long) (v[b] - v[a]) * (u[c] - u[a]);
+            if (cross < 0)
+            {
+                triangles[t + 1] = c;
+                triangles[t + 2] = b;
+            }
+        }
+
+        return new QuantizedMeshTile(minHeight, maxHeight, u, v, h, triangles, toArray(west), toArray(south),
+            toArray(east), toArray(north));
+    }
+
+    /**
+     * Computes and sets a TIN tile's header bounding values: its center, bounding sphere and horizon occlusion point,
+     * all in Earth-centered, Earth-fixed coordinates.
+     *
+     * @param mesh   the tile.
+     * @param sector the tile's sector.
+     * @param globe  the ellipsoid on which to compute the values.
+     */
+    public static void computeBoundingValues(QuantizedMeshTile mesh, Sector sector, Globe globe)
+    {
+        int numVertices = mesh.getVertexCount();
+        Vec4[] points = new Vec4[numVertices];
+        for (int i = 0; i < numVertices; i++)
+        {
+            double lat = sector.getMinLatitude().degrees
+                + sector.getDeltaLatDegrees() * mesh.getV()[i] / QuantizedMeshTile.MAX_VALUE;
+            double lon = sector.getMinLongitude().degrees
+                + sector.getDeltaLonDegrees() * mesh.getU()[i] / QuantizedMeshTile.MAX_VALUE;
+            points[i] = toECEF(globe.computePointFromPosition(Angle.fromDegrees(lat), Angle.fromDegrees(lon),
+                mesh.getHeight(i)));
+        }
+
+        LatLon centroid = sector.getCentroid();
+        Vec4 center = toECEF(globe.computePointFromPosition(centroid.getLatitude(), centroid.getLongitude(),
+            0.5 * (mesh.getMinHeight() + mesh.getMaxHeight())));
+        Sphere sphere = Sphere.createBoundingSphere(points);
+
+        mesh.setBoundingValues(center, sphere.getCenter(), sphere.getRadius(),
+            computeHorizonOcclusionPoint(points, center, globe));
+    }
+
+    /**
+     * Computes the horizon occlusion point of a set of points: the point on the ray from the ellipsoid's center through
+     * a reference point, in ellipsoid-scaled coordinates, from which all the points are visible above the horizon.
+     *
+     * @param points    the points, in Earth-centered, Earth-fixed coordinates.
+     * @param reference the reference point, in Earth-centered, Earth-fixed coordinates.
+     * @param globe     the ellipsoid.
+     *
+     * @return the horizon occlusion point in ellipsoid-scaled coordinates.
+     */
+    protected static Vec4 computeHorizonOcclusionPoint(Vec4[] points, Vec4 reference, Globe globe)
+    {
+        double a = globe.getEquatorialRadius();
+        double b = globe.getPolarRadius();
+        Vec4 direction = new Vec4(reference.x / a, reference.y / a, reference.z / b).normalize3();
+
+        double maxMagnitude = 0;
+        for (Vec4 point : points)
+        {
+            Vec4 scaled = new Vec4(point.x / a, point.y / a, point.z / b);
+            // Points below the ellipsoid are treated as lying on it.
+            double magnitude = Math.max(1, scaled.getLength3());
+            Vec4 unit = scaled.normalize3();
+            double cosAlpha = unit.dot3(direction);
+            double sinAlpha = unit.cross3(direction).getLength3();
+            double cosBeta = 1 / magnitude;
+            double sinBeta = Math.sqrt(magnitude * magnitude - 1) * cosBeta;
+            double denominator = cosAlpha * cosBeta - sinAlpha * sinBeta;
+            // A point more than 90 degrees around the horizon can't bound the tile; skip it.
+            if (denominator > 0)
+                maxMagnitude = Math.max(maxMagnitude, 1 / denominator);
+        }
+
+        return direction.multiply3(maxMagnitude);
+    }
+
+    /**
+     * Converts a World Wind model coordinate point, whose Y axis is the rotation axis and whose Z axis passes through
+     * the prime meridian, to Earth-centered, Earth-fixed coordinates.
+     *
+     * @param point the model coordinate point.
+     *
+     * @return the point in Earth-centered, Earth-fixed coordinates.
+     */
+    protected static Vec4 toECEF(Vec4 point)
+    {
+        return new Vec4(point.z, point.x, point.y);
+    }
+
+    protected static int[] toArray(List<Integer> list)
+    {
+        int[] array = new int[list.size()];
+        for (int i = 0; i < array.length; i++)
+        {
+            array[i] = list.get(i);
+        }
+
+        return array;
+    }
+
+    protected File getSourceConfigFile(Object source)
+    {
+        if (source instanceof File)
+        {
+            return (File) source;
+        }
+        else if (source instanceof String && !WWUtil.isEmpty(source))
+        {
+            return new File((String) source);
+        }
+
+        return null;
+    }
+
+    protected File getDestConfigFile(AVList installParams)
+    {
+        String fileStoreLocation = installParams.getStringValue(AVKey.FILE_STORE_LOCATION);
+        if (fileStoreLocation != null)
+            fileStoreLocation = WWIO.stripTrailingSeparator(fileStoreLocation);
+
+        if (WWUtil.isEmpty(fileStoreLocation))
+            return null;
+
+        String cacheName = DataConfigurationUtils.getDataConfigFilename(installParams, ".xml");
+        if (cacheName != null)
+            cacheName = WWIO.stripLeadingSeparator(cacheName);
+
+        if (WWUtil.isEmpty(cacheName))
+            return null;
+
+        return new File(fileStoreLocation + File.separator + cacheName);
+    }
+
+    protected Document createDestConfigDoc(AVList sourceParams, AVList installParams)
+    {
+        AVList params = sourceParams.copy();
+
+        params.setValue(AVKey.DATA_CACHE_NAME, installParams.getValue(AVKey.DATA_CACHE_NAME));
+        params.setValue(AVKey.FORMAT_SUFFIX, TINElevationModel.FORMAT_SUFFIX);
+        params.setValue(AVKey.SERVICE_NAME, AVKey.SERVICE_NAME_OFFLINE);
+        params.setValue(AVKey.NETWORK_RETRIEVAL_ENABLED, Boolean.FALSE);
+        params.removeKey(AVKey.SERVICE);
+        params.removeKey(AVKey.DATASET_NAME);
+        // Missing source samples are replaced during conversion, so the TIN tiles have no missing data.
+        params.removeKey(AVKey.MISSING_DATA_SIGNAL);
+
+        if (installParams.getValue(AVKey.DISPLAY_NAME) != null)
+            params.setValue(AVKey.DISPLAY_NAME, installParams.getValue(AVKey.DISPLAY_NAME));
+
+        return TINElevationModel.createTINElevationModelConfigDocument(params);
+    }
+
+    //**************************************************************//
+    //********************  Progress Parameters  *******************//
+    //**************************************************************//
+
+    protected void setProgressParameters(Iterable<?> dataSources, ProductionState productionState)
+    {
+        int numSources = 0;
+        //noinspection UnusedDeclaration
+        for (Object o : dataSources)
+        {
+            numSources++;
+        }
+
+        productionState.numSources = numSources;
+        productionState.curSource = -1;
+        productionState.numSourceFiles = new int[numSources];
+        productionState.numConvertedFiles = new int[numSources];
+    }
+
+    protected void updateProgress(ProductionState productionState)
+    {
+        double oldProgress = this.computeProgress(productionState);
+        productionState.numConvertedFiles[productionState.curSource]++;
+        double newProgress = this.computeProgress(productionState);
+
+        this.firePropertyChange(AVKey.PROGRESS, oldProgress, newProgress);
+    }
+
+    protected double computeProgress(ProductionState productionState)
+    {
+        double progress = 0.0;
+        for (int i = 0; i <= productionState.curSource; i++)
+        {
+            if (productionState.numSourceFiles[i] > 0)
+            {
+                progress += (productionState.numConvertedFiles[i] / (double) productionState.numSourceFiles[i])
+                    * (1.0 / (double) productionState.numSources);
+            }
+        }
+        return progress;
+    }
+}
@@ -21,6 +21,10 @@ import java.util.logging.Level;
  * not be loaded in to the memory. This is mostly used together with a memory caches. <code>CachedDataRaster</code>
  * actually implements all interfaces of the <code>DataRaster</code>, and acts as a proxy, that loads a real data raster
  * only when it is actually needed.
+ * <p/>
+ * When the reader is a {@link WindowedDataRasterReader} that can read windows of the source, drawing and creating
+ * sub-rasters read only the window of the source they need. Windows are not cached, so the memory used is bounded by
+ * the size of the destination rasters rather than the size of the source.
  *
  * @author Lado Garakanidze
  * @version $Id: CachedDataRaster.java 3037 2015-04-17 23:08:47Z tgaskins $
@@ -43,6 +47,10 @@ public class CachedDataRaster extends AVListImpl implements DataRaster
 
     protected String[] requiredKeys = new String[] {AVKey.SECTOR, AVKey.PIXEL_FORMAT};
 
+    protected boolean windowedReadEnabled = true;
+    /** Indicates whether the reader can read windows of the source. Null until first determined. */
+    protected Boolean canReadWindows = null;
+
     /**
      * Create a cached data raster.
      *
@@ -203,6 +211,47 @@ public class CachedDataRaster extends AVListImpl implements DataRaster
         return this.dataReader;
     }
 
+    /**
+     * Indicates whether drawing and creating sub-rasters read only the needed window of the source when the reader
+     * supports it.
+     *
+     * @return true if windowed reads are enabled, otherwise false.
+     */
+    public boolean isWindowedReadEnabled()
+    {
+        return this.windowedReadEnabled;
+    }
+
+    /**
+     * Specifies whether drawing and creating sub-rasters read only the needed window of the source when the reader
+     * supports it. When disabled, the whole source is read and held in the raster cache. Enabled by default.
+     *
+     * @param windowedReadEnabled true to enable windowed reads, otherwise false.
+     */
+    public void setWindowedReadEnabled(boolean windowedReadEnabled)
+    {
+        this.windowedReadEnabled = windowedReadEnabled;
+    }
+
+    protected boolean isUseWindowedReads()
+    {
+        if (!this.isWindowedReadEnabled())
+            return false;
+
+        if (this.canReadWindows == null)
+        {
+            this.canReadWindows = (this.dataReader instanceof WindowedDataRasterReader)
+                && ((WindowedDataRasterReader) this.dataReader).canReadWindow(this.dataSource, this.copy());
+        }
+
+        return this.canReadWindows;
+    }
+
+    protected DataRaster readWindow(Sector sector) throws IOException
+    {
+        return ((WindowedDataRasterReader) this.dataReader).readWindow(this.dataSource, sector, this.copy());
+    }
+
     public void dispose()
     {
         String message = Logging.getMessage("generic.ExceptionWhileDisposing", this.dataSource);
@@ -280,6 +329,13 @@ public class CachedDataRaster extends AVListImpl implements DataRaster
 
     public void drawOnTo(DataRaster canvas)
     {
+        // Windows are read independently of one another, so they may be drawn concurrently without the usage lock.
+        if (this.isUseWindowedReads())
+        {
+            this.drawWindowOnTo(canvas);
+            return;
+        }
+
         synchronized (this.rasterUsageLock)
         {
             try
@@ -313,8 +369,37 @@ public class CachedDataRaster extends AVListImpl implements DataRaster
         }
     }
 
+    protected void drawWindowOnTo(DataRaster canvas)
+    {
+        DataRaster window = null;
+        try
+        {
+            window = this.readWindow(canvas.getSector());
+            if (window != null)
+                window.drawOnTo(canvas);
+        }
+        catch (Throwable t)
+        {
+            String reason = this.composeExceptionReason(t);
+            Logging.logger().log(Level.SEVERE, reason, t);
+        }
+        finally
+        {
+            if (window != null)
+                window.dispose();
+        }
+    }
+
     public DataRaster getSubRaster(AVList params)
     {
+        Object sector = (params != null) ? params.getValue(AVKey.SECTOR) : null;
+        if (sector instanceof Sector && this.isUseWindowedReads())
+        {
+            DataRaster subRaster = this.getWindowSubRaster((Sector) sector, params);
+            if (subRaster != null)
+                return subRaster;
+        }
+
         synchronized (this.rasterUsageLock)
         {
             try
@@ -347,6 +432,35 @@ public class CachedDataRaster extends AVListImpl implements DataRaster
         }
     }
 
+    /**
+     * Creates a sub-raster from the window of the source covering the specified sector.
+     *
+     * @param sector the sub-raster's sector.
+     * @param params the sub-raster's parameters.
+     *
+     * @return the sub-raster, or null if the window cannot be read or does not intersect the source.
+     */
+    protected DataRaster getWindowSubRaster(Sector sector, AVList params)
+    {
+        DataRaster window = null;
+        try
+        {
+            window = this.readWindow(sector);
+            return (window != null) ? window.getSubRaster(params) : null;
+        }
+        catch (Throwable t)
+        {
+            String reason = this.composeExceptionReason(t);
+            Logging.logger().log(Level.SEVERE, reason, t);
+            return null;
+        }
+        finally
+        {
+            if (window != null)
+                window.dispose();
+        }
+    }
+
     public DataRaster getSubRaster(int width, int height, Sector sector, AVList params)
     {
         if (null == params)
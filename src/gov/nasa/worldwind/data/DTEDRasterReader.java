@@ -8,16 +8,20 @@ package gov.nasa.worldwind.data;
 
 import gov.nasa.worldwind.avlist.*;
 import gov.nasa.worldwind.formats.dted.DTED;
+import gov.nasa.worldwind.geom.Sector;
 import gov.nasa.worldwind.util.*;
 
 import java.io.*;
 
 /**
+ * Reads DTED elevation files. Windows of DTED files are read from the records of the window's columns, without reading
+ * the rest of the file.
+ *
  * @author Lado Garakanidze
  * @version $Id: DTEDRasterReader.java 3037 2015-04-17 23:08:47Z tgaskins $
  */
 
-public class DTEDRasterReader extends AbstractDataRasterReader
+public class DTEDRasterReader extends AbstractDataRasterReader implements WindowedDataRasterReader
 {
     protected static final String[] dtedMimeTypes = new String[] {
         "application/dted",
@@ -99,6 +103,45 @@ public class DTEDRasterReader extends AbstractDataRasterReader
         return new DataRaster[] {raster};
     }
 
+    public boolean canReadWindow(Object source, AVList params)
+    {
+        return this.getFile(source) != null && this.canRead(source, params);
+    }
+
+    public DataRaster readWindow(Object source, Sector sector, AVList params) throws IOException
+    {
+        if (sector == null)
+        {
+            String message = Logging.getMessage("nullValue.SectorIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        File file = this.getFile(source);
+        if (null == file)
+        {
+            String message = Logging.getMessage("generic.UnrecognizedSourceTypeOrUnavailableSource", source);
+            Logging.logger().severe(message);
+            throw new IOException(message);
+        }
+
+        AVList metadata = (params != null) ? params.copy() : new AVListImpl();
+        metadata.setValues(DTED.readMetadata(file));
+
+        Sector rasterSector = (Sector) metadata.getValue(AVKey.SECTOR);
+        java.awt.Rectangle window = this.computeElevationWindow((Integer) metadata.getValue(AVKey.WIDTH),
+            (Integer) metadata.getValue(AVKey.HEIGHT), rasterSector, sector);
+        if (window == null)
+            return null;
+
+        DataRaster raster = DTED.readWindow(file, window,
+            this.createElevationWindowParams(metadata, rasterSector, window));
+        if (raster instanceof ByteBufferRaster)
+            ElevationsUtil.rectify((ByteBufferRaster) raster);
+
+        return raster;
+    }
+
     @Override
     protected void doReadMetadata(Object source, AVList params) throws IOException
     {
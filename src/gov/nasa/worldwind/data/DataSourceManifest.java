@@ -0,0 +1,245 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+package gov.nasa.worldwind.data;
+
+import gov.nasa.worldwind.geom.Sector;
+import gov.nasa.worldwind.util.*;
+import org.w3c.dom.Element;
+
+import javax.xml.xpath.XPath;
+import java.io.File;
+import java.util.*;
+
+/**
+ * Records the fingerprint and footprint of each file a data set was produced from. A producer saves the manifest in the
+ * data set's configuration document, and compares it with the manifest of its current sources to find the parts of
+ * the data set that must be produced again. A file's fingerprint is its size and modification time.
+ *
+ * @version $Id$
+ */
+public class DataSourceManifest
+{
+    /** The fingerprint and footprint of one source file. */
+    public static class Entry
+    {
+        protected final String path;
+        protected final long size;
+        protected final long lastModified;
+        protected final Sector sector;
+
+        public Entry(String path, long size, long lastModified, Sector sector)
+        {
+            this.path = path;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.sector = sector;
+        }
+
+        public String getPath()
+        {
+            return this.path;
+        }
+
+        public long getSize()
+        {
+            return this.size;
+        }
+
+        public long getLastModified()
+        {
+            return this.lastModified;
+        }
+
+        public Sector getSector()
+        {
+            return this.sector;
+        }
+
+        /**
+         * Indicates whether this entry describes the same file contents and footprint as another entry.
+         *
+         * @param that the entry to compare with.
+         *
+         * @return true if the entries have the same fingerprint and footprint, otherwise false.
+         */
+        public boolean isUnchanged(Entry that)
+        {
+            return that != null && this.size == that.size && this.lastModified == that.lastModified
+                && this.sector.equals(that.sector);
+        }
+    }
+
+    protected static final String MANIFEST_ELEMENT = "SourceManifest";
+    protected static final String SOURCE_ELEMENT = "Source";
+
+    protected final Map<String, Entry> entries = new TreeMap<String, Entry>();
+
+    public DataSourceManifest()
+    {
+    }
+
+    /**
+     * Adds a source file to this manifest, taking its fingerprint from the file system.
+     *
+     * @param file   the source file.
+     * @param sector the source's footprint.
+     *
+     * @throws IllegalArgumentException if the file or the sector is null.
+     */
+    public void addSource(File file, Sector sector)
+    {
+        if (file == null)
+        {
+            String message = Logging.getMessage("nullValue.FileIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        if (sector == null)
+        {
+            String message = Logging.getMessage("nullValue.SectorIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        String path = file.getAbsolutePath();
+        this.entries.put(path, new Entry(path, file.length(), file.lastModified(), sector));
+    }
+
+    /**
+     * Returns the entry for a source file's absolute path.
+     *
+     * @param path the source's absolute path.
+     *
+     * @return the source's entry, or null if this manifest has no entry for the path.
+     */
+    public Entry getEntry(String path)
+    {
+        return this.entries.get(path);
+    }
+
+    public Collection<Entry> getEntries()
+    {
+        return Collections.unmodifiableCollection(this.entries.values());
+    }
+
+    /**
+     * Returns the footprints of the sources that differ between this manifest and a previous manifest. Sources which
+     * are new, removed or changed contribute their footprints; changed sources contribute both their previous and their
+     * current footprint.
+     *
+     * @param previous the previous manifest.
+     *
+     * @return the footprints of the changed sources. The list is empty if no sources changed.
+     *
+     * @throws IllegalArgumentException if the previous manifest is null.
+     */
+    public List<Sector> getChangedFootprints(DataSourceManifest previous)
+    {
+        if (previous == null)
+        {
+            String message = Logging.getMessage("nullValue.ManifestIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        List<Sector> footprints = new ArrayList<Sector>();
+
+        for (Entry entry : this.entries.values())
+        {
+            Entry previousEntry = previous.getEntry(entry.getPath());
+            if (entry.isUnchanged(previousEntry))
+                continue;
+
+            footprints.add(entry.getSector());
+            if (previousEntry != null && !previousEntry.getSector().equals(entry.getSector()))
+                footprints.add(previousEntry.getSector());
+        }
+
+        for (Entry previousEntry : previous.entries.values())
+        {
+            if (!this.entries.containsKey(previousEntry.getPath()))
+                footprints.add(previousEntry.getSector());
+        }
+
+        return footprints;
+    }
+
+    /**
+     * Appends this manifest to a configuration document element.
+     *
+     * @param context the element to append to.
+     *
+     * @return the manifest's element.
+     *
+     * @throws IllegalArgumentException if the context is null.
+     */
+    public Element appendTo(Element context)
+    {
+        if (context == null)
+        {
+            String message = Logging.getMessage("nullValue.ContextIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        Element manifest = WWXML.appendElement(context, MANIFEST_ELEMENT);
+        for (Entry entry : this.entries.values())
+        {
+            Element source = WWXML.appendElement(manifest, SOURCE_ELEMENT);
+            WWXML.setTextAttribute(source, "path", entry.getPath());
+            WWXML.setLongAttribute(source, "size", entry.getSize());
+            WWXML.setLongAttribute(source, "lastModified", entry.getLastModified());
+            WWXML.appendSector(source, "Sector", entry.getSector());
+        }
+
+        return manifest;
+    }
+
+    /**
+     * Reads the manifest appended to a configuration document element by {@link #appendTo(org.w3c.dom.Element)}.
+     * Entries with missing or invalid values are ignored.
+     *
+     * @param context the element containing the manifest.
+     *
+     * @return the manifest, or null if the element does not contain a manifest.
+     *
+     * @throws IllegalArgumentException if the context is null.
+     */
+    public static DataSourceManifest fromElement(Element context)
+    {
+        if (context == null)
+        {
+            String message = Logging.getMessage("nullValue.ContextIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        XPath xpath = WWXML.makeXPath();
+        Element manifestElement = WWXML.getElement(context, MANIFEST_ELEMENT, xpath);
+        if (manifestElement == null)
+            return null;
+
+        DataSourceManifest manifest = new DataSourceManifest();
+        Element[] sources = WWXML.getElements(manifestElement, SOURCE_ELEMENT, xpath);
+        if (sources != null)
+        {
+            for (Element source : sources)
+            {
+                String path = WWXML.getText(source, "@path", xpath);
+                Long size = WWXML.getLong(source, "@size", xpath);
+                Long lastModified = WWXML.getLong(source, "@lastModified", xpath);
+                Sector sector = WWXML.getSector(source, "Sector", xpath);
+                if (WWUtil.isEmpty(path) || size == null || lastModified == null || sector == null)
+                    continue;
+
+                manifest.entries.put(path, new Entry(path, size, lastModified, sector));
+            }
+        }
+
+        return manifest;
+    }
+}
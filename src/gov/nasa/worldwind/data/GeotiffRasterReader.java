@@ -12,10 +12,13 @@ import gov.nasa.worldwind.geom.Sector;
 import gov.nasa.worldwind.util.*;
 
 /**
+ * Reads GeoTIFF images and elevations. Windows of uncompressed elevations stored in strips are read without reading
+ * the rest of the file; other GeoTIFF files are read whole.
+ *
  * @author dcollins
  * @version $Id: GeotiffRasterReader.java 1171 2013-02-11 21:45:02Z dcollins $
  */
-public class GeotiffRasterReader extends AbstractDataRasterReader
+public class GeotiffRasterReader extends AbstractDataRasterReader implements WindowedDataRasterReader
 {
     private static final String[] geotiffMimeTypes = {"image/tiff", "image/geotiff"};
     private static final String[] geotiffSuffixes = {"tif", "tiff", "gtif", "tif.zip", "tiff.zip", "tif.gz", "tiff.gz"};
@@ -102,6 +105,82 @@ public class GeotiffRasterReader extends AbstractDataRasterReader
         return rasters;
     }
 
+    public boolean canReadWindow(Object source, AVList params)
+    {
+        String path = WWIO.getSourcePath(source);
+        if (path == null || !this.canRead(source, params))
+        {
+            return false;
+        }
+
+        GeotiffReader reader = null;
+        try
+        {
+            reader = new GeotiffReader(path);
+            return reader.getNumImages() == 1 && reader.canReadElevationWindow(0);
+        }
+        catch (Exception e)
+        {
+            // Intentionally ignoring exceptions.
+            return false;
+        }
+        finally
+        {
+            if (reader != null)
+            {
+                reader.close();
+            }
+        }
+    }
+
+    public DataRaster readWindow(Object source, Sector sector, AVList params) throws java.io.IOException
+    {
+        if (sector == null)
+        {
+            String message = Logging.getMessage("nullValue.SectorIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        String path = WWIO.getSourcePath(source);
+        if (path == null)
+        {
+            String message = Logging.getMessage("DataRaster.CannotRead", source);
+            Logging.logger().severe(message);
+            throw new java.io.IOException(message);
+        }
+
+        AVList metadata = new AVListImpl();
+        if (null != params)
+            metadata.setValues(params);
+
+        GeotiffReader reader = null;
+        try
+        {
+            this.readMetadata(source, metadata);
+
+            reader = new GeotiffReader(path);
+            reader.copyMetadataTo(metadata);
+
+            int width = (Integer) metadata.getValue(AVKey.WIDTH);
+            int height = (Integer) metadata.getValue(AVKey.HEIGHT);
+            Sector rasterSector = (Sector) metadata.getValue(AVKey.SECTOR);
+            java.awt.Rectangle window = this.computeElevationWindow(width, height, rasterSector, sector);
+            if (window == null)
+                return null;
+
+            AVList windowParams = this.createElevationWindowParams(metadata, rasterSector, window);
+            return reader.readElevationWindow(0, window, windowParams);
+        }
+        finally
+        {
+            if (reader != null)
+            {
+                reader.close();
+            }
+        }
+    }
+
     protected void doReadMetadata(Object source, AVList params) throws java.io.IOException
     {
         String path = WWIO.getSourcePath(source);
@@ -0,0 +1,529 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+
+package gov.nasa.worldwind.data;
+
+import gov.nasa.worldwind.util.Logging;
+
+/**
+ * Approximates a regular grid of heights by a triangulated irregular network, using greedy insertion into a Delaunay
+ * triangulation (Garland and Heckbert, "Fast Polygonal Approximation of Terrains and Height Fields", 1995). The
+ * triangulation starts with the grid's four corners. Each step inserts the grid point whose height differs most from
+ * the triangulation, then restores the Delaunay property by flipping edges, until no grid point differs by more than a
+ * specified error or a vertex limit is reached.
+ * <p/>
+ * Triangles are kept in a half-edge structure, and each triangle's worst grid point is found when the triangle is
+ * created and kept in a priority queue, so that each step rescans only the triangles it changes.
+ *
+ * @version $Id$
+ * @see BILToTINConverter
+ */
+public class GreedyTerrainTriangulator
+{
+    protected final double[] heights;
+    protected final int width;
+    protected final int height;
+
+    // Vertex grid coordinates, two per vertex.
+    protected int[] coords;
+    protected int numVertices;
+    // Vertex indices, three per triangle, and the opposite half-edge of each half-edge, or -1 on the grid's boundary.
+    protected int[] triangles;
+    protected int[] halfEdges;
+    protected int trianglesLength;
+    // Each triangle's worst grid point, two coordinates per triangle, and that point's error.
+    protected int[] candidates;
+    protected double[] errors;
+    // A max-heap of triangles ordered by error, and each triangle's position in it, or -1 if it's not in the heap.
+    protected int[] queue;
+    protected int[] queueIndices;
+    protected int queueLength;
+    // Triangles created since their candidates were last found.
+    protected int[] pending;
+    protected int pendingLength;
+
+    /**
+     * Creates a triangulator for a grid of heights, and initializes the triangulation with the grid's two corner
+     * triangles.
+     *
+     * @param heights the grid heights, in row-major order.
+     * @param width   the number of grid columns.
+     * @param height  the number of grid rows.
+     *
+     * @throws IllegalArgumentException if the heights are null or too few for the grid, or the width or height is
+     *                                  less than two.
+     */
+    public GreedyTerrainTriangulator(double[] heights, int width, int height)
+    {
+        if (heights == null)
+        {
+            String msg = Logging.getMessage("nullValue.ArrayIsNull");
+            Logging.logger().severe(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        if (width < 2 || height < 2)
+        {
+            String msg = Logging.getMessage("generic.ArgumentOutOfRange", width + "x" + height);
+            Logging.logger().severe(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        if (heights.length < width * height)
+        {
+            String msg = Logging.getMessage("generic.ArrayInvalidLength", heights.length);
+            Logging.logger().severe(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        this.heights = heights;
+        this.width = width;
+        this.height = height;
+
+        // A triangulation of n points has fewer than 2n triangles, and triangle slots are reused as triangles change.
+        int maxVertices = width * height;
+        int maxTriangles = 2 * maxVertices;
+        this.coords = new int[2 * maxVertices];
+        this.triangles = new int[3 * maxTriangles];
+        this.halfEdges = new int[3 * maxTriangles];
+        this.candidates = new int[2 * maxTriangles];
+        this.errors = new double[maxTriangles];
+        this.queue = new int[maxTriangles];
+        this.queueIndices = new int[maxTriangles];
+        this.pending = new int[maxTriangles];
+
+        int x1 = width - 1;
+        int y1 = height - 1;
+        int p0 = this.addPoint(0, 0);
+        int p1 = this.addPoint(x1, 0);
+        int p2 = this.addPoint(0, y1);
+        int p3 = this.addPoint(x1, y1);
+
+        int t0 = this.addTriangle(p3, p0, p2, -1, -1, -1, this.trianglesLength);
+        this.addTriangle(p0, p3, p1, t0, -1, -1, this.trianglesLength);
+        this.flush();
+    }
+
+    /**
+     * Inserts vertices until the triangulation is within a specified error of every grid point, or it has a specified
+     * number of vertices.
+     *
+     * @param maxError    the largest allowed difference between a grid point's height and the triangulation's.
+     * @param maxVertices the largest number of vertices to insert. The triangulation always has at least four.
+     */
+    public void run(double maxError, int maxVertices)
+    {
+        while (this.getMaxError() > maxError && this.numVertices < maxVertices)
+        {
+            this.step();
+            this.flush();
+        }
+    }
+
+    /**
+     * Returns the largest difference between a grid point's height and the triangulation's.
+     *
+     * @return the triangulation's error.
+     */
+    public double getMaxError()
+    {
+        return this.queueLength > 0 ? this.errors[this.queue[0]] : 0;
+    }
+
+    public int getVertexCount()
+    {
+        return this.numVertices;
+    }
+
+    /**
+     * Returns the triangulation's vertices as grid columns and rows.
+     *
+     * @return a new array holding each vertex's column and row.
+     */
+    public int[] getVertices()
+    {
+        int[] vertices = new int[2 * this.numVertices];
+        System.arraycopy(this.coords, 0, vertices, 0, vertices.length);
+        return vertices;
+    }
+
+    /**
+     * Returns the triangulation's triangles.
+     *
+     * @return a new array holding the vertex indices of each triangle, three per triangle.
+     */
+    public int[] getTriangles()
+    {
+        int[] result = new int[this.trianglesLength];
+        System.arraycopy(this.triangles, 0, result, 0, result.length);
+        return result;
+    }
+
+    // Inserts the worst grid point of the triangle with the largest error.
+    protected void step()
+    {
+        int t = this.queuePop();
+
+        int e0 = 3 * t;
+        int e1 = e0 + 1;
+        int e2 = e0 + 2;
+
+        int p0 = this.triangles[e0];
+        int p1 = this.triangles[e1];
+        int p2 = this.triangles[e2];
+
+        int ax = this.coords[2 * p0];
+        int ay = this.coords[2 * p0 + 1];
+        int bx = this.coords[2 * p1];
+        int by = this.coords[2 * p1 + 1];
+        int cx = this.coords[2 * p2];
+        int cy = this.coords[2 * p2 + 1];
+        int px = this.candidates[2 * t];
+        int py = this.candidates[2 * t + 1];
+
+        int pn = this.addPoint(px, py);
+
+        if (orient(ax, ay, bx, by, px, py) == 0)
+        {
+            this.handleCollinear(pn, e0);
+        }
+        else if (orient(bx, by, cx, cy, px, py) == 0)
+        {
+            this.handleCollinear(pn, e1);
+        }
+        else if (orient(cx, cy, ax, ay, px, py) == 0)
+        {
+            this.handleCollinear(pn, e2);
+        }
+        else
+        {
+            int h0 = this.halfEdges[e0];
+            int h1 = this.halfEdges[e1];
+            int h2 = this.halfEdges[e2];
+
+            int t0 = this.addTriangle(p0, p1, pn, h0, -1, -1, e0);
+            int t1 = this.addTriangle(p1, p2, pn, h1, -1, t0 + 1, this.trianglesLength);
+            int t2 = this.addTriangle(p2, p0, pn, h2, t0 + 2, t1 + 1, this.trianglesLength);
+
+            this.legalize(t0);
+            this.legalize(t1);
+            this.legalize(t2);
+        }
+    }
+
+    // Finds the worst grid point of each triangle created since the last flush.
+    protected void flush()
+    {
+        for (int i = 0; i < this.pendingLength; i++)
+        {
+            this.findCandidate(this.pending[i]);
+        }
+
+        this.pendingLength = 0;
+    }
+
+    protected void findCandidate(int t)
+    {
+        int p0 = this.triangles[3 * t];
+        int p1 = this.triangles[3 * t + 1];
+        int p2 = this.triangles[3 * t + 2];
+
+        int p0x = this.coords[2 * p0];
+        int p0y = this.coords[2 * p0 + 1];
+        int p1x = this.coords[2 * p1];
+        int p1y = this.coords[2 * p1 + 1];
+        int p2x = this.coords[2 * p2];
+        int p2y = this.coords[2 * p2 + 1];
+
+        int minX = Math.min(p0x, Math.min(p1x, p2x));
+        int minY = Math.min(p0y, Math.min(p1y, p2y));
+        int maxX = Math.max(p0x, Math.max(p1x, p2x));
+        int maxY = Math.max(p0y, Math.max(p1y, p2y));
+
+        // Barycentric weights of the grid points, scaled by the triangle's doubled area, are found incrementally.
+        long area = orient(p0x, p0y, p1x, p1y, p2x, p2y);
+        long sign = area < 0 ? -1 : 1;
+        double z0 = this.heights[p0y * this.width + p0x] / area;
+        double z1 = this.heights[p1y * this.width + p1x] / area;
+        double z2 = this.heights[p2y * this.width + p2x] / area;
+
+        double maxError = 0;
+        int mx = p0x;
+        int my = p0y;
+        for (int y = minY; y <= maxY; y++)
+        {
+            long w0 = orient(p1x, p1y, p2x, p2y, minX, y);
+            long w1 = orient(p2x, p2y, p0x, p0y, minX, y);
+            long w2 = orient(p0x, p0y, p1x, p1y, minX, y);
+            for (int x = minX; x <= maxX; x++)
+            {
+                if (sign * w0 >= 0 && sign * w1 >= 0 && sign * w2 >= 0)
+                {
+                    double z = z0 * w0 + z1 * w1 + z2 * w2;
+                    double dz = Math.abs(z - this.heights[y * this.width + x]);
+                    if (dz > maxError)
+                    {
+                        maxError = dz;
+                        mx = x;
+                        my = y;
+                    }
+                }
+
+                w0 += p2y - p1y;
+                w1 += p0y - p2y;
+                w2 += p1y - p0y;
+            }
+        }
+
+        // A triangle's own vertices can't be inserted again.
+        if ((mx == p0x && my == p0y) || (mx == p1x && my == p1y) || (mx == p2x && my == p2y))
+            maxError = 0;
+
+        this.candidates[2 * t] = mx;
+        this.candidates[2 * t + 1] = my;
+        this.queuePush(t, maxError);
+    }
+
+    // Flips the edge shared by the triangle of half-edge a and its neighbor, if that makes the pair Delaunay.
+    protected void legalize(int a)
+    {
+        int b = this.halfEdges[a];
+        if (b < 0)
+            return;
+
+        int a0 = a - a % 3;
+        int b0 = b - b % 3;
+        int al = a0 + (a + 1) % 3;
+        int ar = a0 + (a + 2) % 3;
+        int bl = b0 + (b + 2) % 3;
+        int br = b0 + (b + 1) % 3;
+
+        int p0 = this.triangles[ar];
+        int pr = this.triangles[a];
+        int pl = this.triangles[al];
+        int p1 = this.triangles[bl];
+
+        if (!this.inCircle(p0, pr, pl, p1))
+            return;
+
+        int hal = this.halfEdges[al];
+        int har = this.halfEdges[ar];
+        int hbl = this.halfEdges[bl];
+        int hbr = this.halfEdges[br];
+
+        this.queueRemove(a0 / 3);
+        this.queueRemove(b0 / 3);
+
+        int t0 = this.addTriangle(p0, p1, pl, -1, hbl, hal, a0);
+        int t1 = this.addTriangle(p1, p0, pr, t0, har, hbr, b0);
+
+        this.legalize(t0 + 1);
+        this.legalize(t1 + 2);
+    }
+
+    // Splits the triangles on either side of half-edge a at a new vertex on that edge.
+    protected void handleCollinear(int pn, int a)
+    {
+        int a0 = a - a % 3;
+        int al = a0 + (a + 1) % 3;
+        int ar = a0 + (a + 2) % 3;
+        int p0 = this.triangles[ar];
+        int pr = this.triangles[a];
+        int pl = this.triangles[al];
+        int hal = this.halfEdges[al];
+        int har = this.halfEdges[ar];
+
+        int b = this.halfEdges[a];
+        if (b < 0)
+        {
+            int t0 = this.addTriangle(pn, p0, pr, -1, har, -1, a0);
+            int t1 = this.addTriangle(p0, pn, pl, t0, -1, hal, this.trianglesLength);
+            this.legalize(t0 + 1);
+            this.legalize(t1 + 2);
+            return;
+        }
+
+        int b0 = b - b % 3;
+        int bl = b0 + (b + 2) % 3;
+        int br = b0 + (b + 1) % 3;
+        int p1 = this.triangles[bl];
+        int hbl = this.halfEdges[bl];
+        int hbr = this.halfEdges[br];
+
+        this.queueRemove(b0 / 3);
+
+        int t0 = this.addTriangle(p0, pr, pn, har, -1, -1, a0);
+        int t1 = this.addTriangle(pr, p1, pn, hbr, -1, t0 + 1, b0);
+        int t2 = this.addTriangle(p1, pl, pn, hbl, -1, t1 + 1, this.trianglesLength);
+        int t3 = this.addTriangle(pl, p0, pn, hal, t0 + 2, t2 + 1, this.trianglesLength);
+
+        this.legalize(t0);
+        this.legalize(t1);
+        this.legalize(t2);
+        this.legalize(t3);
+    }
+
+    protected int addPoint(int x, int y)
+    {
+        int i = this.numVertices++;
+        this.coords[2 * i] = x;
+        this.coords[2 * i + 1] = y;
+        return i;
+    }
+
+    // Creates or replaces the triangle whose first half-edge is e, and returns e.
+    protected int addTriangle(int a, int b, int c, int ab, int bc, int ca, int e)
+    {
+        int t = e / 3;
+
+        this.triangles[e] = a;
+        this.triangles[e + 1] = b;
+        this.triangles[e + 2] = c;
+
+        this.halfEdges[e] = ab;
+        this.halfEdges[e + 1] = bc;
+        this.halfEdges[e + 2] = ca;
+
+        if (ab >= 0)
+            this.halfEdges[ab] = e;
+        if (bc >= 0)
+            this.halfEdges[bc] = e + 1;
+        if (ca >= 0)
+            this.halfEdges[ca] = e + 2;
+
+        if (e == this.trianglesLength)
+            this.trianglesLength += 3;
+
+        this.candidates[2 * t] = 0;
+        this.candidates[2 * t + 1] = 0;
+        this.queueIndices[t] = -1;
+        this.pending[this.pendingLength++] = t;
+
+        return e;
+    }
+
+    protected boolean inCircle(int a, int b, int c, int p)
+    {
+        double dx = this.coords[2 * a] - this.coords[2 * p];
+        double dy = this.coords[2 * a + 1] - this.coords[2 * p + 1];
+        double ex = this.coords[2 * b] - this.coords[2 * p];
+        double ey = this.coords[2 * b + 1] - this.coords[2 * p + 1];
+        double fx = this.coords[2 * c] - this.coords[2 * p];
+        double fy = this.coords[2 * c + 1] - this.coords[2 * p + 1];
+
+        double ap = dx * dx + dy * dy;
+        double bp = ex * ex + ey * ey;
+        double cp = fx * fx + fy * fy;
+
+        return dx * (ey * cp - bp * fy) - dy * (ex * cp - bp * fx) + ap * (ex * fy - ey * fx) < 0;
+    }
+
+    protected static long orient(long ax, long ay, long bx, long by, long cx, long cy)
+    {
+        return (bx - cx) * (ay - cy) - (by - cy) * (ax - cx);
+    }
+
+    //**************************************************************//
+    //********************  Priority Queue  ************************//
+    //**************************************************************//
+
+    protected void queuePush(int t, double error)
+    {
+        int i = this.queueLength++;
+        this.queueIndices[t] = i;
+        this.queue[i] = t;
+        this.errors[t] = error;
+        this.queueUp(i);
+    }
+
+    protected int queuePop()
+    {
+        int n = this.queueLength - 1;
+        this.queueSwap(0, n);
+        this.queueDown(0, n);
+        return this.queuePopBack();
+    }
+
+    protected int queuePopBack()
+    {
+        int t = this.queue[--this.queueLength];
+        this.queueIndices[t] = -1;
+        return t;
+    }
+
+    protected void queueRemove(int t)
+    {
+        int i = this.queueIndices[t];
+        if (i < 0)
+        {
+            // The triangle was created during this step, and its candidate hasn't been found yet.
+            for (int p = 0; p < this.pendingLength; p++)
+            {
+                if (this.pending[p] == t)
+                {
+                    this.pending[p] = this.pending[--this.pendingLength];
+                    break;
+                }
+            }
+            return;
+        }
+
+        int n = this.queueLength - 1;
+        if (n != i)
+        {
+            this.queueSwap(i, n);
+            if (!this.queueDown(i, n))
+                this.queueUp(i);
+        }
+        this.queuePopBack();
+    }
+
+    protected boolean queueLess(int i, int j)
+    {
+        return this.errors[this.queue[i]] > this.errors[this.queue[j]];
+    }
+
+    protected void queueSwap(int i, int j)
+    {
+        int pi = this.queue[i];
+        int pj = this.queue[j];
+        this.queue[i] = pj;
+        this.queueIndices[pj] = i;
+        this.queue[j] = pi;
+        this.queueIndices[pi] = j;
+    }
+
+    protected void queueUp(int j)
+    {
+        while (j > 0)
+        {
+            int i = (j - 1) >> 1;
+            if (!this.queueLess(j, i))
+                break;
+            this.queueSwap(i, j);
+            j = i;
+        }
+    }
+
+    protected boolean queueDown(int i0, int n)
+    {
+        int i = i0;
+        while (true)
+        {
+            int j1 = 2 * i + 1;
+            if (j1 >= n)
+                break;
+            int j2 = j1 + 1;
+            int j = j2 < n && this.queueLess(j2, j1) ? j2 : j1;
+            if (!this.queueLess(j, i))
+                break;
+            this.queueSwap(i, j);
+            i = j;
+        }
+
+        return i > i0;
+    }
+}
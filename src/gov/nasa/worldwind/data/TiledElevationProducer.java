@@ -8,11 +8,11 @@ package gov.nasa.worldwind.data;
 import gov.nasa.worldwind.avlist.*;
 import gov.nasa.worldwind.cache.MemoryCache;
 import gov.nasa.worldwind.geom.*;
-import gov.nasa.worldwind.terrain.BasicElevationModel;
+import gov.nasa.worldwind.terrain.*;
 import gov.nasa.worldwind.util.*;
 import org.w3c.dom.Document;
 
-import java.io.IOException;
+import java.io.*;
 
 /**
  * @author dcollins
@@ -22,9 +22,12 @@ public class TiledElevationProducer extends TiledRasterProducer
 {
     // Extreme elevations computed during production.
     protected double[] extremes = null;
+    // Per-tile extreme elevations computed during production.
+    protected ElevationExtremesPyramid extremesPyramid = null;
     // Default production parameter values.
     protected static final String DEFAULT_IMAGE_FORMAT = "application/bil32";
     protected static final double DEFAULT_MISSING_DATA_SIGNAL = (double) Short.MIN_VALUE;
+    protected static final String EXTREMES_PYRAMID_FILE_NAME = "ExtremesPyramid.bin";
     // Statically reference the readers used to for unknown data sources. This drastically improves the performance of
     // reading large quantities of sources. Since the readers are invoked from a single thread, they can be
     // safely re-used.
@@ -57,10 +60,95 @@ public class TiledElevationProducer extends TiledRasterProducer
     protected void doStartProduction(AVList parameters) throws Exception
     {
         this.extremes = null;
+        this.extremesPyramid = null;
 
         super.doStartProduction(parameters);
     }
 
+    /**
+     * Overridden to create the pyramid of tile extremes for the level set before its tiles are created. Incremental
+     * production starts from the pyramid installed by the previous production.
+     *
+     * @param levelSet the level set to install.
+     * @param params   the installation parameters.
+     *
+     * @throws IOException if installation fails.
+     */
+    @Override
+    protected void installLevelSet(LevelSet levelSet, AVList params) throws IOException
+    {
+        // Incremental production keeps the extremes of the unaffected tiles from the previous production, and replaces
+        // the extremes of the affected tiles.
+        ElevationExtremesPyramid pyramid = null;
+        java.util.List<Sector> footprints = this.getChangedFootprints();
+        if (footprints != null)
+        {
+            pyramid = this.readExtremesPyramid(levelSet, params);
+            if (pyramid != null)
+            {
+                for (Sector footprint : footprints)
+                {
+                    pyramid.clearTileExtremes(footprint);
+                }
+            }
+        }
+
+        this.extremesPyramid = (pyramid != null) ? pyramid : new ElevationExtremesPyramid(levelSet);
+
+        super.installLevelSet(levelSet, params);
+    }
+
+    /**
+     * Overridden to require the pyramid of tile extremes installed by the previous production. Incremental production
+     * produces only some of the tiles, so the extremes of the other tiles must come from the previous pyramid.
+     *
+     * @param levelSet the level set to install.
+     * @param params   the production parameters.
+     *
+     * @return true if the previous pyramid of tile extremes matches the level set, otherwise false.
+     */
+    @Override
+    protected boolean canProduceIncrementally(LevelSet levelSet, AVList params)
+    {
+        return this.readExtremesPyramid(levelSet, params) != null;
+    }
+
+    /**
+     * Reads the pyramid of tile extremes installed by the previous production.
+     *
+     * @param levelSet the level set to install.
+     * @param params   the production parameters.
+     *
+     * @return the previous pyramid, or null if it cannot be read or does not match the level set.
+     */
+    protected ElevationExtremesPyramid readExtremesPyramid(LevelSet levelSet, AVList params)
+    {
+        File installLocation = this.installLocationFor(params);
+        File file = (installLocation != null) ? new File(installLocation, EXTREMES_PYRAMID_FILE_NAME) : null;
+        if (file == null || !file.exists())
+            return null;
+
+        InputStream is = null;
+        try
+        {
+            is = new BufferedInputStream(new FileInputStream(file));
+            ElevationExtremesPyramid pyramid = ElevationExtremesPyramid.read(is);
+
+            return pyramid.getSector().equals(levelSet.getSector())
+                && pyramid.getNumLevels() == levelSet.getNumLevels() ? pyramid : null;
+        }
+        catch (IOException e)
+        {
+            String message = Logging.getMessage("TiledRasterProducer.ExceptionWhileReading", file, e.getMessage());
+            Logging.logger().fine(message);
+            return null;
+        }
+        finally
+        {
+            WWIO.closeStream(is, file.getPath());
+        }
+    }
+
     public String getDataSourceDescription()
     {
         StringBuilder sb = new StringBuilder();
@@ -303,12 +391,19 @@ public class TiledElevationProducer extends TiledRasterProducer
         // There used to be code here to update the extremes only when processing tiles in the highest-resolution
         // level. But that caused the extremes not to be determined at all when a full pyramid isn't generated. We
         // now update the extremes for every tile, not just the highest resolution ones.
-        this.updateExtremeElevations(tileRaster);
+        this.updateExtremeElevations(tile, tileRaster);
 
         super.installTileRasterLater(levelSet, tile, tileRaster, params);
     }
 
-    protected void updateExtremeElevations(DataRaster raster)
+    /**
+     * Adds a tile's extreme elevations to the data set's extremes and to the pyramid of tile extremes. This is
+     * synchronized because tiles may be produced on several threads.
+     *
+     * @param tile   the tile.
+     * @param raster the tile's raster.
+     */
+    protected synchronized void updateExtremeElevations(Tile tile, DataRaster raster)
     {
         if (!(raster instanceof BufferWrapperRaster))
         {
@@ -329,8 +424,8 @@ public class TiledElevationProducer extends TiledRasterProducer
 
         if (raster.hasKey(AVKey.ELEVATION_MIN) && raster.hasKey(AVKey.ELEVATION_MAX))
         {
-            tileExtremes[0] = (Double) raster.getValue(AVKey.ELEVATION_MAX);
-            tileExtremes[1] = (Double) raster.getValue(AVKey.ELEVATION_MIN);
+            tileExtremes[0] = (Double) raster.getValue(AVKey.ELEVATION_MIN);
+            tileExtremes[1] = (Double) raster.getValue(AVKey.ELEVATION_MAX);
         }
         else
         {
@@ -341,6 +436,12 @@ public class TiledElevationProducer extends TiledRasterProducer
             }
         }
 
+        if (this.extremesPyramid != null)
+        {
+            this.extremesPyramid.addTileExtremes(tile.getLevelNumber(), tile.getRow(), tile.getColumn(),
+                tileExtremes[0], tileExtremes[1]);
+        }
+
         if (this.extremes[0] > tileExtremes[0])
         {
             this.extremes[0] = tileExtremes[0];
@@ -351,6 +452,72 @@ public class TiledElevationProducer extends TiledRasterProducer
         }
     }
 
+    /**
+     * Overridden to install the pyramid of tile extremes before the configuration file that refers to it.
+     *
+     * @param params the installation parameters.
+     *
+     * @throws Exception if the configuration file cannot be installed for any reason.
+     */
+    @Override
+    protected void installConfigFile(AVList params) throws Exception
+    {
+        if (this.extremesPyramid != null && !this.isStopped())
+            this.installExtremesPyramid(params);
+
+        super.installConfigFile(params);
+    }
+
+    /**
+     * Completes the pyramid of tile extremes and writes it to the install location. The tiles at coarse levels are
+     * resampled from their descendants, so the pyramid's coarse levels take their extremes from the descendants
+     * rather than from the coarse tiles alone. If the pyramid is written, this sets the {@link
+     * AVKey#ELEVATION_EXTREMES_PYRAMID_FILE} parameter to its path relative to the file store.
+     *
+     * @param params the installation parameters.
+     */
+    protected void installExtremesPyramid(AVList params)
+    {
+        File installLocation = this.installLocationFor(params);
+        if (installLocation == null)
+            return;
+
+        this.extremesPyramid.computeCoarseLevels();
+
+        // Incremental production found the extremes of the affected tiles only, so take the data set's extremes from
+        // the pyramid, which has the extremes of all tiles.
+        if (this.getChangedFootprints() != null)
+            this.extremes = this.extremesPyramid.getExtremes(this.extremesPyramid.getSector());
+
+        File file = new File(installLocation, EXTREMES_PYRAMID_FILE_NAME);
+        OutputStream os = null;
+        try
+        {
+            if (!installLocation.exists() && !installLocation.mkdirs())
+            {
+                String message = Logging.getMessage("generic.CannotCreateFile", installLocation);
+                Logging.logger().warning(message);
+                return;
+            }
+
+            os = new FileOutputStream(file);
+            this.extremesPyramid.write(os);
+
+            params.setValue(AVKey.ELEVATION_EXTREMES_PYRAMID_FILE,
+                WWIO.appendPathPart(params.getStringValue(AVKey.DATA_CACHE_NAME), EXTREMES_PYRAMID_FILE_NAME));
+        }
+        catch (IOException e)
+        {
+            // The pyramid is an optimization, so the dataset is usable without it.
+            String message = Logging.getMessage("TiledElevationProducer.ExceptionWritingExtremesPyramid", file);
+            Logging.logger().log(java.util.logging.Level.WARNING, message, e);
+        }
+        finally
+        {
+            WWIO.closeStream(os, file.getPath());
+        }
+    }
+
     /**
      * Returns an ElevationModel configuration document which describes the tiled elevation data produced by this
      * TiledElevationProducer. The document's contents are based on the configuration document for a basic
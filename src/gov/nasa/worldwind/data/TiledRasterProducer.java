@@ -16,8 +16,27 @@ import org.w3c.dom.*;
 import java.io.File;
 import java.lang.Thread;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
+ * Produces a tiled pyramid of rasters from source rasters. The final level's tiles are drawn from the source rasters,
+ * and each tile of a coarser level is drawn from its four already-produced sub-tiles, so the sources are read only
+ * once.
+ * <p/>
+ * By default tiles are produced on the calling thread, depth first from each level 0 tile. When the {@link
+ * AVKey#TILED_RASTER_PRODUCER_THREAD_COUNT} production parameter or configuration property is greater than 1, tiles
+ * are produced on a fork-join pool of that many threads: each level 0 tile and, recursively, each tile's four
+ * sub-tiles are tasks that idle threads steal, and the tasks write their own tiles. Tile counts, bytes written and
+ * processing time are recorded for each level, and are available from {@link #getLevelStatistics()} after production.
+ * <p/>
+ * Each production saves a manifest of its source files' fingerprints and footprints in the data configuration file.
+ * When the {@link AVKey#TILED_RASTER_PRODUCER_INCREMENTAL} production parameter or configuration property is true and
+ * the installed data set has the same tile structure, only the tiles intersecting the footprints of new, changed or
+ * removed sources are produced and installed again. Their unaffected sibling tiles are read from the installed data set
+ * to produce their ancestors. When the {@link AVKey#TILED_RASTER_PRODUCER_DRY_RUN} production parameter is true,
+ * production logs the number of tiles it would produce, which is also available from {@link #getAffectedTileCount()},
+ * and installs nothing.
+ *
  * @author dcollins
  * @version $Id: TiledRasterProducer.java 3043 2015-04-22 20:56:26Z tgaskins $
  */
@@ -26,8 +45,14 @@ public abstract class TiledRasterProducer extends AbstractDataStoreProducer
     private static final long DEFAULT_TILED_RASTER_PRODUCER_CACHE_SIZE = 300000000L; // ~300 megabytes
     private static final int DEFAULT_TILED_RASTER_PRODUCER_LARGE_DATASET_THRESHOLD = 3000; // 3000 pixels
     private static final int DEFAULT_WRITE_THREAD_POOL_SIZE = 2;
+    private static final int DEFAULT_PRODUCTION_THREAD_COUNT = 1;
     private static final int DEFAULT_TILE_WIDTH_AND_HEIGHT = 512;
     private static final int DEFAULT_SINGLE_LEVEL_TILE_WIDTH_AND_HEIGHT = 512;
+    /**
+     * The order in which sub-tiles are produced: northwest, northeast, southwest, southeast. Producing northern
+     * sub-tiles first keeps reads moving forward through source files, which store the northernmost row first.
+     */
+    protected static final int[] SUB_TILE_ORDER = {3, 2, 0, 1};
     private static final double DEFAULT_LEVEL_ZERO_TILE_DELTA = 36d;
 
     // List of source data rasters.
@@ -38,12 +63,131 @@ public abstract class TiledRasterProducer extends AbstractDataStoreProducer
     private final java.util.concurrent.ExecutorService tileWriteService;
     private final java.util.concurrent.Semaphore tileWriteSemaphore;
     private final Object fileLock = new Object();
+    private volatile java.util.concurrent.ForkJoinPool productionPool;
     // Progress counters.
     private int tile;
     private int tileCount;
+    private LevelStatistics[] levelStatistics = new LevelStatistics[0];
+    // Incremental production state.
+    private DataSourceManifest sourceManifest;
+    private java.util.List<Sector> changedFootprints;
+    private long affectedTileCount;
 
     private DataRasterReaderFactory readerFactory;
 
+    /**
+     * Production statistics of one level of the tile pyramid. Processing time is the time spent creating and writing
+     * the level's tiles summed over all production threads, so the rates are per thread.
+     */
+    public static class LevelStatistics
+    {
+        protected final int levelNumber;
+        protected final AtomicLong tileCount = new AtomicLong();
+        protected final AtomicLong byteCount = new AtomicLong();
+        protected final AtomicLong nanos = new AtomicLong();
+
+        public LevelStatistics(int levelNumber)
+        {
+            this.levelNumber = levelNumber;
+        }
+
+        public int getLevelNumber()
+        {
+            return this.levelNumber;
+        }
+
+        /**
+         * Returns the number of tiles created for the level.
+         *
+         * @return the number of tiles.
+         */
+        public long getTileCount()
+        {
+            return this.tileCount.get();
+        }
+
+        /**
+         * Returns the number of bytes written for the level's tiles.
+         *
+         * @return the number of bytes.
+         */
+        public long getByteCount()
+        {
+            return this.byteCount.get();
+        }
+
+        /**
+         * Returns the time spent creating and writing the level's tiles, summed over all threads.
+         *
+         * @return the processing time in seconds.
+         */
+        public double getSeconds()
+        {
+            return this.nanos.get() / 1e9;
+        }
+
+        public double getTilesPerSecond()
+        {
+            double seconds = this.getSeconds();
+            return seconds > 0 ? this.getTileCount() / seconds : 0;
+        }
+
+        public double getBytesPerSecond()
+        {
+            double seconds = this.getSeconds();
+            return seconds > 0 ? this.getByteCount() / seconds : 0;
+        }
+
+        protected void addTile(long nanos)
+        {
+            this.tileCount.incrementAndGet();
+            this.nanos.addAndGet(nanos);
+        }
+
+        protected void addBytes(long bytes, long nanos)
+        {
+            this.byteCount.addAndGet(bytes);
+            this.nanos.addAndGet(nanos);
+        }
+    }
+
+    /**
+     * A fork-join task that creates a tile's raster. Tasks for level 0 tiles also install their rasters, while tasks
+     * for sub-tiles return their rasters to be drawn into their parent.
+     */
+    protected class TileRasterTask extends java.util.concurrent.RecursiveTask<DataRaster>
+    {
+        protected final LevelSet levelSet;
+        protected final Tile tile;
+        protected final AVList params;
+        protected final boolean install;
+
+        public TileRasterTask(LevelSet levelSet, Tile tile, AVList params, boolean install)
+        {
+            this.levelSet = levelSet;
+            this.tile = tile;
+            this.params = params;
+            this.install = install;
+        }
+
+        protected DataRaster compute()
+        {
+            try
+            {
+                DataRaster tileRaster = createTileRaster(this.levelSet, this.tile, this.params);
+                if (tileRaster == null || !this.install)
+                    return tileRaster;
+
+                installTileRasterLater(this.levelSet, this.tile, tileRaster, this.params);
+                return null;
+            }
+            catch (java.io.IOException e)
+            {
+                throw new WWRuntimeException(e);
+            }
+        }
+    }
+
     public TiledRasterProducer(MemoryCache cache, int writeThreadPoolSize)
     {
         if (cache == null)
@@ -175,6 +319,73 @@ public abstract class TiledRasterProducer extends AbstractDataStoreProducer
         return this.tileWriteSemaphore;
     }
 
+    /**
+     * Returns the production statistics of each level of the most recent production, from level 0 to the final level
+     * produced.
+     *
+     * @return the statistics of each level.
+     */
+    public java.util.List<LevelStatistics> getLevelStatistics()
+    {
+        return java.util.Collections.unmodifiableList(java.util.Arrays.asList(this.levelStatistics));
+    }
+
+    /**
+     * Returns the number of tiles the most recent production produced, or that the most recent dry run would produce.
+     * For a full production this is the number of tiles in the level set.
+     *
+     * @return the number of affected tiles.
+     */
+    public long getAffectedTileCount()
+    {
+        return this.affectedTileCount;
+    }
+
+    /**
+     * Returns the footprints of the sources that changed since the previous production, as determined by the most
+     * recent production or dry run.
+     *
+     * @return the changed footprints, or null if the most recent production produced all tiles.
+     */
+    public java.util.List<Sector> getChangedFootprints()
+    {
+        java.util.List<Sector> footprints = this.changedFootprints;
+        return footprints != null ? java.util.Collections.unmodifiableList(footprints) : null;
+    }
+
+    /**
+     * Returns the number of threads with which to produce tiles. This is the value of the {@link
+     * AVKey#TILED_RASTER_PRODUCER_THREAD_COUNT} production parameter, or of the configuration property of the same name
+     * if the parameter is not specified, or 1 if neither is specified.
+     *
+     * @param params the production parameters.
+     *
+     * @return the number of production threads.
+     */
+    protected int getProductionThreadCount(AVList params)
+    {
+        Integer threadCount = AVListImpl.getIntegerValue(params, AVKey.TILED_RASTER_PRODUCER_THREAD_COUNT);
+        if (threadCount == null)
+            threadCount = Configuration.getIntegerValue(AVKey.TILED_RASTER_PRODUCER_THREAD_COUNT,
+                DEFAULT_PRODUCTION_THREAD_COUNT);
+
+        return Math.max(threadCount, 1);
+    }
+
+    protected boolean isProductionThread()
+    {
+        java.util.concurrent.ForkJoinPool pool = this.productionPool;
+        return pool != null && java.util.concurrent.ForkJoinTask.getPool() == pool;
+    }
+
+    protected LevelStatistics getLevelStatistics(Tile tile)
+    {
+        LevelStatistics[] statistics = this.levelStatistics;
+        int levelNumber = tile.getLevelNumber();
+
+        return levelNumber >= 0 && levelNumber < statistics.length ? statistics[levelNumber] : null;
+    }
+
     protected void doStartProduction(AVList parameters) throws Exception
     {
         // Copy production parameters to prevent changes to caller's reference.
@@ -187,11 +398,24 @@ public abstract class TiledRasterProducer extends AbstractDataStoreProducer
         // Initialize the level set parameters, and create the level set.
         this.initLevelSetParameters(this.productionParams);
         LevelSet levelSet = new LevelSet(this.productionParams);
+
+        // Determine the tiles to produce from the changes to the sources since the previous production.
+        this.sourceManifest = this.createSourceManifest();
+        this.changedFootprints = this.isIncremental(this.productionParams)
+            ? this.computeChangedFootprints(levelSet, this.productionParams) : null;
+        this.affectedTileCount = this.countAffectedTiles(levelSet, this.productionParams);
+        this.logAffectedTiles(levelSet, this.productionParams);
+
+        // A dry run only reports the tiles that production would affect.
+        if (this.isDryRun(this.productionParams))
+            return;
+
         // Install the each tiles of the LevelSet.
         this.installLevelSet(levelSet, this.productionParams);
 
         // Wait for concurrent tasks to complete.
         this.waitForInstallTileTasks();
+        this.logLevelStatistics();
 
         // Clear the raster cache.
         this.getCache().clear();
@@ -502,6 +726,52 @@ public abstract class TiledRasterProducer extends AbstractDataStoreProducer
         // Setup the progress parameters.
         this.calculateTileCount(levelSet, params);
         this.startProgress();
+        this.startLevelStatistics(levelSet, params);
+
+        // When producing in parallel, collect the level 0 tiles to produce them as tasks on the production pool.
+        int threadCount = this.getProductionThreadCount(params);
+        java.util.List<Tile> parallelTiles = threadCount > 1 ? new java.util.ArrayList<Tile>() : null;
+
+        for (Tile tile : this.createLevelZeroTiles(levelSet))
+        {
+            // Exit if the caller has instructed us to stop production.
+            Thread.yield();
+            if (this.isStopped())
+                break;
+
+            // Tiles unaffected by changed sources are already installed.
+            if (!this.isTileAffected(tile))
+                continue;
+
+            if (parallelTiles != null)
+            {
+                parallelTiles.add(tile);
+            }
+            else
+            {
+                DataRaster tileRaster = this.createTileRaster(levelSet, tile, params);
+                // Write the top-level tile raster to disk.
+                if (tileRaster != null)
+                    this.installTileRasterLater(levelSet, tile, tileRaster, params);
+            }
+        }
+
+        if (parallelTiles != null && !this.isStopped())
+            this.installTilesInParallel(levelSet, parallelTiles, params, threadCount);
+    }
+
+    /**
+     * Returns the level 0 tiles of a level set that intersect its sector, in rows from north to south. Source files
+     * are stored with the northernmost row first, so producing the rows in this order moves reads of the sources
+     * forward through the files.
+     *
+     * @param levelSet the level set.
+     *
+     * @return the level set's level 0 tiles.
+     */
+    protected java.util.List<Tile> createLevelZeroTiles(LevelSet levelSet)
+    {
+        java.util.List<Tile> tiles = new java.util.ArrayList<Tile>();
 
         Sector sector = levelSet.getSector();
         Level level = levelSet.getFirstLevel();
@@ -515,32 +785,68 @@ public abstract class TiledRasterProducer extends AbstractDataStoreProducer
         int lastRow = Tile.computeRow(dLat, sector.getMaxLatitude(), latOrigin);
         int lastCol = Tile.computeColumn(dLon, sector.getMaxLongitude(), lonOrigin);
 
-        buildLoop:
+        for (int row = lastRow; row >= firstRow; row--)
         {
-            Angle p1 = Tile.computeRowLatitude(firstRow, dLat, latOrigin);
-            for (int row = firstRow; row <= lastRow; row++)
+            Angle p1 = Tile.computeRowLatitude(row, dLat, latOrigin);
+            Angle p2 = p1.add(dLat);
+            Angle t1 = Tile.computeColumnLongitude(firstCol, dLon, lonOrigin);
+            for (int col = firstCol; col <= lastCol; col++)
             {
-                Angle p2 = p1.add(dLat);
-                Angle t1 = Tile.computeColumnLongitude(firstCol, dLon, lonOrigin);
-                for (int col = firstCol; col <= lastCol; col++)
-                {
-                    // Exit if the caller has instructed us to stop production.
-                    Thread.yield();
-                    if (this.isStopped())
-                        break buildLoop;
+                Angle t2 = t1.add(dLon);
+                tiles.add(new Tile(new Sector(p1, p2, t1, t2), level, row, col));
+                t1 = t2;
+            }
+        }
 
-                    Angle t2 = t1.add(dLon);
+        return tiles;
+    }
 
-                    Tile tile = new Tile(new Sector(p1, p2, t1, t2), level, row, col);
-                    DataRaster tileRaster = this.createTileRaster(levelSet, tile, params);
-                    // Write the top-level tile raster to disk.
-                    if (tileRaster != null)
-                        this.installTileRasterLater(levelSet, tile, tileRaster, params);
+    /**
+     * Creates and installs the tile rasters of the specified level 0 tiles and their descendants on a fork-join pool.
+     * This returns when all tiles have been created, but the tiles may not yet have been written.
+     *
+     * @param levelSet    the level set to install.
+     * @param tiles       the level 0 tiles to install.
+     * @param params      the installation parameters.
+     * @param threadCount the number of production threads.
+     *
+     * @throws java.io.IOException if creating a tile raster fails.
+     */
+    protected void installTilesInParallel(LevelSet levelSet, java.util.List<Tile> tiles, AVList params,
+        int threadCount) throws java.io.IOException
+    {
+        final java.util.List<TileRasterTask> tasks = new java.util.ArrayList<TileRasterTask>();
+        for (Tile tile : tiles)
+        {
+            tasks.add(new TileRasterTask(levelSet, tile, params, true));
+        }
 
-                    t1 = t2;
+        java.util.concurrent.ForkJoinPool pool = new java.util.concurrent.ForkJoinPool(threadCount);
+        this.productionPool = pool;
+        try
+        {
+            pool.invoke(new java.util.concurrent.RecursiveAction()
+            {
+                protected void compute()
+                {
+                    invokeAll(tasks);
                 }
-                p1 = p2;
+            });
+        }
+        catch (WWRuntimeException e)
+        {
+            // The pool may rethrow a copy of the task's exception, so look for the IOException among the causes.
+            for (Throwable t = e; t != null; t = t.getCause())
+            {
+                if (t instanceof java.io.IOException)
+                    throw (java.io.IOException) t;
             }
+            throw e;
+        }
+        finally
+        {
+            this.productionPool = null;
+            pool.shutdown();
         }
     }
 
@@ -550,6 +856,20 @@ public abstract class TiledRasterProducer extends AbstractDataStoreProducer
         if (this.isStopped())
             return null;
 
+        // Tiles unaffected by changed sources are already installed, so read them rather than produce them. If an
+        // installed tile cannot be read, then produce it without installing it.
+        boolean affected = this.isTileAffected(tile);
+        if (!affected)
+        {
+            File file = this.getInstalledTileFile(tile, params);
+            if (file == null || !file.exists())
+                return null;
+
+            DataRaster installedRaster = this.readInstalledTileRaster(file, tile, params);
+            if (installedRaster != null)
+                return installedRaster;
+        }
+
         DataRaster tileRaster;
 
         // If we have reached the final level, then create a tile raster from the original data sources.
@@ -563,7 +883,14 @@ public abstract class TiledRasterProducer extends AbstractDataStoreProducer
             tileRaster = this.drawDescendants(levelSet, tile, params);
         }
 
-        this.updateProgress();
+        if (affected)
+        {
+            // A previously installed tile that no longer has data is removed.
+            if (tileRaster == null && this.changedFootprints != null && !this.isStopped())
+                this.removeInstalledTile(tile, params);
+
+            this.updateProgress();
+        }
 
         return tileRaster;
     }
@@ -585,14 +912,29 @@ public abstract class TiledRasterProducer extends AbstractDataStoreProducer
         // sources and render them into this tile.
         if (!intersectingRasters.isEmpty() && !tile.getLevel().isEmpty())
         {
+            long start = System.nanoTime();
             // Create the tile raster to render into.
             tileRaster = this.createDataRaster(tile.getLevel().getTileWidth(), tile.getLevel().getTileHeight(),
                 tile.getSector(), params);
             // Render each data source raster into the tile raster.
             for (DataRaster raster : intersectingRasters)
             {
-                raster.drawOnTo(tileRaster);
+                // Reading a raster moves its buffer's position, so tiles on different threads read a source in turn.
+                // Cached rasters lock themselves, or read a separate window for each tile.
+                if (raster instanceof CachedDataRaster)
+                {
+                    raster.drawOnTo(tileRaster);
+                }
+                else
+                {
+                    synchronized (raster)
+                    {
+                        raster.drawOnTo(tileRaster);
+                    }
+                }
             }
+
+            this.updateLevelStatistics(tile, System.nanoTime() - start);
         }
 
         // Make the data rasters available for garbage collection.
@@ -610,21 +952,12 @@ public abstract class TiledRasterProducer extends AbstractDataStoreProducer
 
         // Recursively create sub-tile rasters.
         Tile[] subTiles = this.createSubTiles(tile, levelSet.getLevel(tile.getLevelNumber() + 1));
-        DataRaster[] subRasters = new DataRaster[subTiles.length];
-        for (int index = 0; index < subTiles.length; index++)
+        DataRaster[] subRasters = this.createSubTileRasters(levelSet, subTiles, params);
+        for (DataRaster subRaster : subRasters)
         {
-            // If the sub-tile does not intersect the level set, then skip that sub-tile.
-            if (subTiles[index].getSector().intersects(levelSet.getSector()))
-            {
-                // Recursively create the sub-tile raster.
-                DataRaster subRaster = this.createTileRaster(levelSet, subTiles[index], params);
-                // If creating the sub-tile raster fails, then skip that sub-tile.
-                if (subRaster != null)
-                {
-                    subRasters[index] = subRaster;
-                    hasDescendants = true;
-                }
-            }
+            // If creating the sub-tile raster fails, then skip that sub-tile.
+            if (subRaster != null)
+                hasDescendants = true;
         }
 
         // Exit if the caller has instructed us to stop production.
@@ -638,6 +971,7 @@ public abstract class TiledRasterProducer extends AbstractDataStoreProducer
             // If this tile's level is not empty, then create and render the tile's raster.
             if (!tile.getLevel().isEmpty())
             {
+                long start = System.nanoTime();
                 // Create the tile's raster.
                 tileRaster = this.createDataRaster(tile.getLevel().getTileWidth(), tile.getLevel().getTileHeight(),
                     tile.getSector(), params);
@@ -650,19 +984,82 @@ public abstract class TiledRasterProducer extends AbstractDataStoreProducer
                         subRasters[index].drawOnTo(tileRaster);
                     }
                 }
+
+                this.updateLevelStatistics(tile, System.nanoTime() - start);
             }
         }
 
-        // Write the sub-rasters to disk.
+        // Write the sub-rasters to disk. Sub-tiles unaffected by changed sources are already installed.
         for (int index = 0; index < subTiles.length; index++)
         {
-            if (subRasters[index] != null)
+            if (subRasters[index] == null)
+                continue;
+
+            if (this.isTileAffected(subTiles[index]))
                 this.installTileRasterLater(levelSet, subTiles[index], subRasters[index], params);
+            else
+                subRasters[index].dispose();
         }
 
         return tileRaster;
     }
 
+    /**
+     * Creates the rasters of the specified sub-tiles. On the production pool the sub-tiles are created as parallel
+     * tasks, otherwise they are created in turn on the calling thread. Sub-tiles are visited in the order of {@link
+     * #SUB_TILE_ORDER}.
+     *
+     * @param levelSet the level set to install.
+     * @param subTiles the sub-tiles to create.
+     * @param params   the installation parameters.
+     *
+     * @return the sub-tile rasters, with null entries for sub-tiles that do not intersect the level set or have no
+     * data.
+     *
+     * @throws java.io.IOException if creating a sub-tile raster fails.
+     */
+    protected DataRaster[] createSubTileRasters(LevelSet levelSet, Tile[] subTiles, AVList params)
+        throws java.io.IOException
+    {
+        DataRaster[] subRasters = new DataRaster[subTiles.length];
+
+        if (this.isProductionThread())
+        {
+            TileRasterTask[] tasks = new TileRasterTask[subTiles.length];
+            java.util.List<TileRasterTask> taskList = new java.util.ArrayList<TileRasterTask>();
+            for (int index : SUB_TILE_ORDER)
+            {
+                // If the sub-tile does not intersect the level set, then skip that sub-tile.
+                if (subTiles[index].getSector().intersects(levelSet.getSector()))
+                {
+                    tasks[index] = new TileRasterTask(levelSet, subTiles[index], params, false);
+                    taskList.add(tasks[index]);
+                }
+            }
+
+            java.util.concurrent.ForkJoinTask.invokeAll(taskList);
+            for (int index = 0; index < subTiles.length; index++)
+            {
+                if (tasks[index] != null)
+                    subRasters[index] = tasks[index].join();
+            }
+        }
+        else
+        {
+            for (int index : SUB_TILE_ORDER)
+            {
+                // If the sub-tile does not intersect the level set, then skip that sub-tile.
+                if (subTiles[index].getSector().intersects(levelSet.getSector()))
+                {
+                    // Recursively create the sub-tile raster.
+                    subRasters[index] = this.createTileRaster(levelSet, subTiles[index], params);
+                }
+            }
+        }
+
+        return subRasters;
+    }
+
     protected Tile[] createSubTiles(Tile tile, Level nextLevel)
     {
         Angle p0 = tile.getSector().getMinLatitude();
@@ -798,6 +1195,13 @@ public abstract class TiledRasterProducer extends AbstractDataStoreProducer
     protected void installTileRasterLater(final LevelSet levelSet, final Tile tile, final DataRaster tileRaster,
         final AVList params)
     {
+        // Tasks on the production pool write their own tiles, so that writing scales with the production threads.
+        if (this.isProductionThread())
+        {
+            this.installAndDisposeTileRaster(tile, tileRaster, params);
+            return;
+        }
+
         // TODO: comment
         // Try to acquire a permit from the tile write semaphore.
         this.getTileWriteSemaphore().acquireUninterruptibly();
@@ -806,22 +1210,27 @@ public abstract class TiledRasterProducer extends AbstractDataStoreProducer
         {
             public void run()
             {
-                try
-                {
-                    installTileRaster(tile, tileRaster, params);
-                    // Dispose the data raster.
-                    if (tileRaster instanceof Disposable)
-                        ((Disposable) tileRaster).dispose();
-                }
-                catch (Throwable t)
-                {
-                    String message = Logging.getMessage("generic.ExceptionWhileWriting", tile);
-                    Logging.logger().log(java.util.logging.Level.SEVERE, message, t);
-                }
+                installAndDisposeTileRaster(tile, tileRaster, params);
             }
         });
     }
 
+    protected void installAndDisposeTileRaster(Tile tile, DataRaster tileRaster, AVList params)
+    {
+        try
+        {
+            installTileRaster(tile, tileRaster, params);
+            // Dispose the data raster.
+            if (tileRaster instanceof Disposable)
+                ((Disposable) tileRaster).dispose();
+        }
+        catch (Throwable t)
+        {
+            String message = Logging.getMessage("generic.ExceptionWhileWriting", tile);
+            Logging.logger().log(java.util.logging.Level.SEVERE, message, t);
+        }
+    }
+
     protected void installTileRasterComplete()
     {
         // TODO: comment
@@ -890,7 +1299,12 @@ public abstract class TiledRasterProducer extends AbstractDataStoreProducer
         {
             try
             {
+                long start = System.nanoTime();
                 ((DataRasterWriter) writer).write(tileRaster, formatSuffix, installLocation);
+
+                LevelStatistics statistics = this.getLevelStatistics(tile);
+                if (statistics != null)
+                    statistics.addBytes(installLocation.length(), System.nanoTime() - start);
             }
             catch (java.io.IOException e)
             {
@@ -918,6 +1332,75 @@ public abstract class TiledRasterProducer extends AbstractDataStoreProducer
         return new java.io.File(path);
     }
 
+    protected File getInstalledTileFile(Tile tile, AVList params)
+    {
+        Object result = this.installLocationForTile(params, tile);
+        return (result instanceof File) ? (File) result : null;
+    }
+
+    /**
+     * Reads a tile installed by a previous production.
+     *
+     * @param file   the tile's file.
+     * @param tile   the tile.
+     * @param params the installation parameters.
+     *
+     * @return the tile's raster, or null if the file cannot be read.
+     */
+    protected DataRaster readInstalledTileRaster(File file, Tile tile, AVList params)
+    {
+        // Tiles are not georeferenced, so describe the tile to the reader.
+        AVList readParams = new AVListImpl();
+        String[] keysToCopy = new String[] {AVKey.PIXEL_FORMAT, AVKey.DATA_TYPE, AVKey.BYTE_ORDER,
+            AVKey.MISSING_DATA_SIGNAL};
+        WWUtil.copyValues(params, readParams, keysToCopy, false);
+        readParams.setValue(AVKey.SECTOR, tile.getSector());
+        readParams.setValue(AVKey.WIDTH, tile.getLevel().getTileWidth());
+        readParams.setValue(AVKey.HEIGHT, tile.getLevel().getTileHeight());
+
+        try
+        {
+            DataRasterReader reader = this.getReaderFactory().findReaderFor(file, readParams,
+                this.getDataRasterReaders());
+            if (reader == null)
+                return null;
+
+            DataRaster[] rasters = reader.read(file, readParams);
+            return (rasters != null && rasters.length > 0) ? rasters[0] : null;
+        }
+        catch (Exception e)
+        {
+            String message = Logging.getMessage("TiledRasterProducer.ExceptionWhileReading", file, e.getMessage());
+            Logging.logger().fine(message);
+            return null;
+        }
+    }
+
+    /**
+     * Removes a tile installed by a previous production, along with its auxiliary files.
+     *
+     * @param tile   the tile.
+     * @param params the installation parameters.
+     */
+    protected void removeInstalledTile(Tile tile, AVList params)
+    {
+        File file = this.getInstalledTileFile(tile, params);
+        File dir = (file != null) ? file.getParentFile() : null;
+        File[] files = (dir != null) ? dir.listFiles() : null;
+        if (files == null)
+            return;
+
+        String prefix = WWIO.replaceSuffix(file.getName(), ".");
+        for (File f : files)
+        {
+            if (f.getName().startsWith(prefix) && !f.delete())
+            {
+                String message = Logging.getMessage("generic.CannotDeleteFile", f);
+                Logging.logger().warning(message);
+            }
+        }
+    }
+
     protected Object findWriterFor(DataRaster raster, String formatSuffix, java.io.File destination,
         DataRasterWriter[] writers)
     {
@@ -1011,6 +1494,10 @@ public abstract class TiledRasterProducer extends AbstractDataStoreProducer
             throw new WWRuntimeException(message);
         }
 
+        // Record the sources so that a later production can determine which tiles they affect.
+        if (this.sourceManifest != null)
+            this.sourceManifest.appendTo(configDoc.getDocumentElement());
+
         try
         {
             WWXML.saveDocumentToFile(configDoc, configFile.getAbsolutePath());
@@ -1199,15 +1686,238 @@ public abstract class TiledRasterProducer extends AbstractDataStoreProducer
         }
     }
 
+    //**************************************************************//
+    //********************  Incremental Production  ****************//
+    //**************************************************************//
+
+    /**
+     * Indicates whether to produce only the tiles affected by changes to the sources since the previous production.
+     * This is the value of the {@link AVKey#TILED_RASTER_PRODUCER_INCREMENTAL} production parameter, or of the
+     * configuration property of the same name if the parameter is not specified, or false if neither is specified.
+     *
+     * @param params the production parameters.
+     *
+     * @return true if production is incremental, otherwise false.
+     */
+    protected boolean isIncremental(AVList params)
+    {
+        Boolean incremental = AVListImpl.getBooleanValue(params, AVKey.TILED_RASTER_PRODUCER_INCREMENTAL);
+        if (incremental == null)
+            incremental = Configuration.getBooleanValue(AVKey.TILED_RASTER_PRODUCER_INCREMENTAL, false);
+
+        return incremental;
+    }
+
+    protected boolean isDryRun(AVList params)
+    {
+        return AVListImpl.getBooleanValue(params, AVKey.TILED_RASTER_PRODUCER_DRY_RUN, false);
+    }
+
+    /**
+     * Creates a manifest of the source files. Sources which are not files have no fingerprint and are not included.
+     *
+     * @return the manifest of the source files.
+     */
+    protected DataSourceManifest createSourceManifest()
+    {
+        DataSourceManifest manifest = new DataSourceManifest();
+        for (DataRaster raster : this.dataRasterList)
+        {
+            File file = this.getSourceFile(raster);
+            if (file != null)
+                manifest.addSource(file, raster.getSector());
+        }
+
+        return manifest;
+    }
+
+    protected File getSourceFile(DataRaster raster)
+    {
+        if (!(raster instanceof CachedDataRaster))
+            return null;
+
+        File file = WWIO.getFileForLocalAddress(((CachedDataRaster) raster).getDataSource());
+        return (file != null && file.isFile()) ? file : null;
+    }
+
+    /**
+     * Computes the footprints of the sources that changed since the previous production, from the manifest in the
+     * installed configuration file. Sources which are not files are always produced again, so their footprints are
+     * always included.
+     *
+     * @param levelSet the level set to install.
+     * @param params   the production parameters.
+     *
+     * @return the changed footprints, or null if there is no compatible previous production and all tiles must be
+     * produced.
+     */
+    protected java.util.List<Sector> computeChangedFootprints(LevelSet levelSet, AVList params)
+    {
+        Element previousConfig = null;
+        File configFile = this.getConfigFileInstallLocation(params);
+        if (configFile != null && configFile.exists())
+        {
+            try
+            {
+                previousConfig = WWXML.openDocument(configFile).getDocumentElement();
+            }
+            catch (Exception e)
+            {
+                String message = Logging.getMessage("TiledRasterProducer.ExceptionWhileReading", configFile,
+                    e.getMessage());
+                Logging.logger().fine(message);
+            }
+        }
+
+        DataSourceManifest previousManifest = (previousConfig != null)
+            ? DataSourceManifest.fromElement(previousConfig) : null;
+        if (previousManifest == null || !this.isSameLevelSet(previousConfig, levelSet)
+            || !this.canProduceIncrementally(levelSet, params))
+        {
+            String message = Logging.getMessage("TiledRasterProducer.NoPreviousProduction",
+                params.getValue(AVKey.DATASET_NAME));
+            Logging.logger().info(message);
+            return null;
+        }
+
+        java.util.List<Sector> footprints = this.sourceManifest.getChangedFootprints(previousManifest);
+        for (DataRaster raster : this.dataRasterList)
+        {
+            if (this.getSourceFile(raster) == null)
+                footprints.add(raster.getSector());
+        }
+
+        return footprints;
+    }
+
+    /**
+     * Indicates whether a previously installed configuration describes the same tiles as a level set.
+     *
+     * @param previousConfig the previously installed configuration.
+     * @param levelSet       the level set to install.
+     *
+     * @return true if the configuration and the level set have the same tiles, otherwise false.
+     */
+    protected boolean isSameLevelSet(Element previousConfig, LevelSet levelSet)
+    {
+        AVList previous = DataConfigurationUtils.getLevelSetConfigParams(previousConfig, null);
+        AVList current = DataConfigurationUtils.getLevelSetConfigParams(levelSet, null);
+
+        String[] keys = new String[] {AVKey.SECTOR, AVKey.TILE_ORIGIN, AVKey.LEVEL_ZERO_TILE_DELTA, AVKey.NUM_LEVELS,
+            AVKey.TILE_WIDTH, AVKey.TILE_HEIGHT, AVKey.FORMAT_SUFFIX};
+        for (String key : keys)
+        {
+            Object value = previous.getValue(key);
+            if (value == null || !value.equals(current.getValue(key)))
+                return false;
+        }
+
+        return AVListImpl.getIntegerValue(previous, AVKey.NUM_EMPTY_LEVELS, 0).equals(
+            AVListImpl.getIntegerValue(current, AVKey.NUM_EMPTY_LEVELS, 0));
+    }
+
+    /**
+     * Indicates whether this producer can update the previous production incrementally. Subclasses which install
+     * state derived from all tiles override this to check that the previous production's state is available.
+     *
+     * @param levelSet the level set to install.
+     * @param params   the production parameters.
+     *
+     * @return true if production can be incremental, otherwise false.
+     */
+    protected boolean canProduceIncrementally(LevelSet levelSet, AVList params)
+    {
+        return true;
+    }
+
+    /**
+     * Indicates whether a tile must be produced. All tiles are produced unless production is incremental, in which
+     * case only the tiles intersecting the footprints of changed sources are produced.
+     *
+     * @param tile the tile.
+     *
+     * @return true if the tile must be produced, otherwise false.
+     */
+    protected boolean isTileAffected(Tile tile)
+    {
+        java.util.List<Sector> footprints = this.changedFootprints;
+        if (footprints == null)
+            return true;
+
+        for (Sector footprint : footprints)
+        {
+            if (footprint.intersects(tile.getSector()))
+                return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Counts the tiles that production affects. The affected tiles of an incremental production are found by
+     * traversing the tiles as production does, skipping the descendants of unaffected tiles.
+     *
+     * @param levelSet the level set to install.
+     * @param params   the production parameters.
+     *
+     * @return the number of affected tiles.
+     */
+    protected long countAffectedTiles(LevelSet levelSet, AVList params)
+    {
+        if (this.changedFootprints == null)
+            return this.computeTileCount(levelSet, params);
+
+        long count = 0;
+        for (Tile tile : this.createLevelZeroTiles(levelSet))
+        {
+            count += this.countAffectedTiles(levelSet, tile, params);
+        }
+
+        return count;
+    }
+
+    protected long countAffectedTiles(LevelSet levelSet, Tile tile, AVList params)
+    {
+        if (!this.isTileAffected(tile))
+            return 0;
+
+        long count = 1;
+        if (!this.isFinalLevel(levelSet, tile.getLevelNumber(), params))
+        {
+            for (Tile subTile : this.createSubTiles(tile, levelSet.getLevel(tile.getLevelNumber() + 1)))
+            {
+                if (subTile.getSector().intersects(levelSet.getSector()))
+                    count += this.countAffectedTiles(levelSet, subTile, params);
+            }
+        }
+
+        return count;
+    }
+
+    protected void logAffectedTiles(LevelSet levelSet, AVList params)
+    {
+        if (this.changedFootprints == null && !this.isDryRun(params))
+            return;
+
+        String message = Logging.getMessage("TiledRasterProducer.AffectedTiles", params.getValue(AVKey.DATASET_NAME),
+            this.affectedTileCount, this.computeTileCount(levelSet, params));
+        Logging.logger().info(message);
+    }
+
     //**************************************************************//
     //********************  Progress  ******************************//
     //**************************************************************//
 
     protected void calculateTileCount(LevelSet levelSet, AVList params)
+    {
+        this.tileCount = (int) this.countAffectedTiles(levelSet, params);
+    }
+
+    protected long computeTileCount(LevelSet levelSet, AVList params)
     {
         Sector sector = levelSet.getSector();
 
-        this.tileCount = 0;
+        long count = 0;
         for (Level level : levelSet.getLevels())
         {
             Angle dLat = level.getTileDelta().getLatitude();
@@ -1218,23 +1928,59 @@ public abstract class TiledRasterProducer extends AbstractDataStoreProducer
             int firstCol = Tile.computeColumn(dLon, sector.getMinLongitude(), lonOrigin);
             int lastRow = Tile.computeRow(dLat, sector.getMaxLatitude(), latOrigin);
             int lastCol = Tile.computeColumn(dLon, sector.getMaxLongitude(), lonOrigin);
-            this.tileCount += (lastRow - firstRow + 1) * (lastCol - firstCol + 1);
+            count += (long) (lastRow - firstRow + 1) * (lastCol - firstCol + 1);
 
             if (this.isFinalLevel(levelSet, level.getLevelNumber(), params))
                 break;
         }
+
+        return count;
     }
 
-    protected void startProgress()
+    protected synchronized void startProgress()
     {
         this.tile = 0;
         this.firePropertyChange(AVKey.PROGRESS, null, 0d);
     }
 
-    protected void updateProgress()
+    protected synchronized void updateProgress()
     {
         double oldProgress = this.tile / (double) this.tileCount;
         double newProgress = ++this.tile / (double) this.tileCount;
         this.firePropertyChange(AVKey.PROGRESS, oldProgress, newProgress);
     }
+
+    protected void startLevelStatistics(LevelSet levelSet, AVList params)
+    {
+        java.util.List<LevelStatistics> statistics = new java.util.ArrayList<LevelStatistics>();
+        for (Level level : levelSet.getLevels())
+        {
+            statistics.add(new LevelStatistics(level.getLevelNumber()));
+
+            if (this.isFinalLevel(levelSet, level.getLevelNumber(), params))
+                break;
+        }
+
+        this.levelStatistics = statistics.toArray(new LevelStatistics[statistics.size()]);
+    }
+
+    protected void updateLevelStatistics(Tile tile, long nanos)
+    {
+        LevelStatistics statistics = this.getLevelStatistics(tile);
+        if (statistics != null)
+            statistics.addTile(nanos);
+    }
+
+    protected void logLevelStatistics()
+    {
+        for (LevelStatistics statistics : this.levelStatistics)
+        {
+            if (statistics.getTileCount() == 0)
+                continue;
+
+            Logging.logger().fine(Logging.getMessage("TiledRasterProducer.LevelStatistics",
+                statistics.getLevelNumber(), statistics.getTileCount(), statistics.getByteCount(),
+                statistics.getTilesPerSecond(), statistics.getBytesPerSecond()));
+        }
+    }
 }
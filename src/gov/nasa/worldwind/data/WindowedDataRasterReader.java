@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+package gov.nasa.worldwind.data;
+
+import gov.nasa.worldwind.avlist.AVList;
+import gov.nasa.worldwind.geom.Sector;
+
+/**
+ * A {@link DataRasterReader} that can read a window of a data source without decoding the rest of the source. {@link
+ * CachedDataRaster} uses windowed reads to draw and to create sub-rasters of large sources without holding the whole
+ * source in memory.
+ *
+ * @version $Id$
+ */
+public interface WindowedDataRasterReader extends DataRasterReader
+{
+    /**
+     * Indicates whether this reader can read windows of a specified data source. A reader may be able to read a source
+     * but not windows of it, for example when the source is compressed.
+     *
+     * @param source the source to examine.
+     * @param params the source's metadata. May be null.
+     *
+     * @return true if this reader can read windows of the data source, otherwise false.
+     */
+    boolean canReadWindow(Object source, AVList params);
+
+    /**
+     * Reads the window of a data source that covers a specified sector. The returned raster has the source's
+     * resolution, and covers the part of the sector within the source plus a margin of one pixel, so that drawing the
+     * window onto a raster within the sector gives the same result as drawing the whole source.
+     *
+     * @param source the source to read.
+     * @param sector the sector to read.
+     * @param params the source's metadata. May be null.
+     *
+     * @return the window, or null if the sector does not intersect the source.
+     *
+     * @throws java.io.IOException if an IO error occurs.
+     */
+    DataRaster readWindow(Object source, Sector sector, AVList params) throws java.io.IOException;
+}
@@ -168,9 +168,14 @@ public class BlockDXT1Compressor
         else //noinspection StringEquality
                 if (attributes.getColorBlockCompressionType() == DXTCompressionAttributes.COLOR_BLOCK_COMPRESSION_LUMINANCE_DISTANCE)
         {
-            // Default to using euclidean distance to compute the min and max palette colors.
             findMinMaxColorsLuminanceDistance(block, minColor, maxColor);
         }
+        else
+        {
+            // Default to using euclidean distance to compute the min and max palette colors. The range fit and cluster
+            // fit types are implemented by ParallelDXTCompressor.
+            findMinMaxColorsEuclideanDistance(block, minColor, maxColor);
+        }
     }
 
     //**************************************************************//
@@ -5,6 +5,8 @@
  */
 package gov.nasa.worldwind.formats.dds;
 
+import gov.nasa.worldwind.Configuration;
+import gov.nasa.worldwind.avlist.AVKey;
 import gov.nasa.worldwind.util.*;
 
 import java.awt.image.*;
@@ -17,6 +19,10 @@ import java.awt.image.*;
  * Each compression method accepts a reference to a {@link gov.nasa.worldwind.formats.dds.DXTCompressionAttributes}.
  * This compressor performs the appropriate actions according to the attributes, such as building mip maps and
  * converting the source image to a premultiplied alpha format.
+ * <p/>
+ * When the attributes specify the range fit or cluster fit color block compression type, images are compressed by
+ * {@link gov.nasa.worldwind.formats.dds.ParallelDXTCompressor}, which builds the mip maps and compresses the blocks of
+ * every level in parallel. The other compression types use the block by block compressors.
  *
  * @author dcollins
  * @version $Id: DDSCompressor.java 1171 2013-02-11 21:45:02Z dcollins $
@@ -366,7 +372,9 @@ public class DDSCompressor
      * <table> <tr><th>Attribute</th><th>Value</th></tr> <tr><td>Build Mipmaps</td><td>true</td></tr>
      * <tr><td>Premultiply Alpha</td><td>true</td></tr> <tr><td>DXT Format</td><td>Let DDSCompressor choose optimal
      * format.</td></tr> <tr><td>Enable DXT1 Alpha</td><td>false</td></tr> <tr><td>DXT1 Alpha
-     * Threshold</td><td>128</td></tr> <tr><td>Compression Algorithm</td><td>Euclidean Distance</td></tr> </table>
+     * Threshold</td><td>128</td></tr> <tr><td>Compression Algorithm</td><td>Euclidean Distance, unless the
+     * configuration specifies another with {@link
+     * gov.nasa.worldwind.avlist.AVKey#DXT_COLOR_BLOCK_COMPRESSION_TYPE}</td></tr> </table>
      *
      * @return the default compression attributes.
      */
@@ -376,6 +384,9 @@ public class DDSCompressor
         attributes.setBuildMipmaps(true); // Always build mipmaps.
         attributes.setPremultiplyAlpha(true); // Always create premultiplied alpha format files..
         attributes.setDXTFormat(0); // Allow the DDSCompressor to choose the appropriate DXT format.
+        // The block compressors compare compression types by identity, so intern the configured type.
+        attributes.setColorBlockCompressionType(Configuration.getStringValue(AVKey.DXT_COLOR_BLOCK_COMPRESSION_TYPE,
+            DXTCompressionAttributes.COLOR_BLOCK_COMPRESSION_EUCLIDEAN_DISTANCE).intern());
         return attributes;
     }
 
@@ -452,7 +463,7 @@ public class DDSCompressor
             throw new IllegalArgumentException(message);
         }
 
-        DXT1Compressor compressor = new DXT1Compressor();
+        DXTCompressor compressor = this.createDXTCompressor(DDSConstants.D3DFMT_DXT1, attributes);
         return this.doCompressImage(compressor, image, attributes);
     }
 
@@ -490,7 +501,7 @@ public class DDSCompressor
             throw new IllegalArgumentException(message);
         }
 
-        DXT3Compressor compressor = new DXT3Compressor();
+        DXTCompressor compressor = this.createDXTCompressor(DDSConstants.D3DFMT_DXT3, attributes);
         return this.doCompressImage(compressor, image, attributes);
     }
 
@@ -500,6 +511,11 @@ public class DDSCompressor
         // Create the DDS header structure that describes the specified image, compressor, and compression attributes.
         DDSHeader header = this.createDDSHeader(compressor, image, attributes);
 
+        if (compressor instanceof ParallelDXTCompressor)
+        {
+            return this.doCompressImageLevels((ParallelDXTCompressor) compressor, image, attributes, header);
+        }
+
         // Compute the DDS file size and mip map levels. If the attributes specify to build mip maps, then we compute
         // the total file size including mip maps, create a chain of mip map images, and update the DDS header to
         // describe the number of mip map levels. Otherwise, we compute the file size for a single image and do nothing
@@ -551,6 +567,47 @@ public class DDSCompressor
         return buffer;
     }
 
+    /**
+     * Compresses an image with a compressor that builds and compresses the mip map levels itself, rather than being
+     * given each level's image.
+     *
+     * @param compressor the compressor.
+     * @param image      the image to compress.
+     * @param attributes the attributes that control the compression.
+     * @param header     the DDS header describing the image.
+     *
+     * @return little endian ordered ByteBuffer containing the dds file bytes.
+     */
+    protected java.nio.ByteBuffer doCompressImageLevels(ParallelDXTCompressor compressor,
+        java.awt.image.BufferedImage image, DXTCompressionAttributes attributes, DDSHeader header)
+    {
+        int levelCount = 1;
+        if (attributes.isBuildMipmaps())
+        {
+            levelCount += ImageUtil.getMaxMipmapLevel(image.getWidth(), image.getHeight());
+            header.setFlags(header.getFlags()
+                | DDSConstants.DDSD_MIPMAPCOUNT);
+            header.setMipMapCount(levelCount);
+        }
+
+        int fileSize = 4 + header.getSize();
+        for (int level = 0; level < levelCount; level++)
+        {
+            fileSize += compressor.getCompressedSize(Math.max(image.getWidth() >> level, 1),
+                Math.max(image.getHeight() >> level, 1));
+        }
+
+        java.nio.ByteBuffer buffer = this.createBuffer(fileSize);
+        buffer.order(java.nio.ByteOrder.LITTLE_ENDIAN);
+
+        buffer.putInt(DDSConstants.MAGIC);
+        this.writeDDSHeader(header, buffer);
+        compressor.compressImage(image, levelCount, attributes, buffer);
+
+        buffer.rewind();
+        return buffer;
+    }
+
     protected DXTCompressor getDXTCompressor(java.awt.image.BufferedImage image, DXTCompressionAttributes attributes)
     {
         // If the caller specified a DXT format in the attributes, then we return a compressor matching that format.
@@ -559,14 +616,31 @@ public class DDSCompressor
 
         if (attributes.getDXTFormat() == DDSConstants.D3DFMT_DXT1)
         {
-            return new DXT1Compressor();
+            return this.createDXTCompressor(DDSConstants.D3DFMT_DXT1, attributes);
         }
         else if (attributes.getDXTFormat() == DDSConstants.D3DFMT_DXT2
             || attributes.getDXTFormat() == DDSConstants.D3DFMT_DXT3)
         {
-            return new DXT3Compressor();
+            return this.createDXTCompressor(DDSConstants.D3DFMT_DXT3, attributes);
         }
         else if (!image.getColorModel().hasAlpha())
+        {
+            return this.createDXTCompressor(DDSConstants.D3DFMT_DXT1, attributes);
+        }
+        else
+        {
+            return this.createDXTCompressor(DDSConstants.D3DFMT_DXT3, attributes);
+        }
+    }
+
+    protected DXTCompressor createDXTCompressor(int dxtFormat, DXTCompressionAttributes attributes)
+    {
+        // The range fit and cluster fit compression types are implemented only by the parallel compressor.
+        if (ParallelDXTCompressor.isSupportedCompressionType(attributes.getColorBlockCompressionType()))
+        {
+            return new ParallelDXTCompressor(dxtFormat);
+        }
+        else if (dxtFormat == DDSConstants.D3DFMT_DXT1)
         {
             return new DXT1Compressor();
         }
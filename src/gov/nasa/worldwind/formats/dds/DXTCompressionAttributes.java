@@ -14,6 +14,10 @@ public class DXTCompressionAttributes
     public static final String COLOR_BLOCK_COMPRESSION_BBOX = "ColorBlockCompressionBBox";
     public static final String COLOR_BLOCK_COMPRESSION_EUCLIDEAN_DISTANCE = "ColorBlockCompressionEuclideanDistance";
     public static final String COLOR_BLOCK_COMPRESSION_LUMINANCE_DISTANCE = "ColorBlockCompressionLuminanceDistance";
+    /** Compresses with {@link ParallelDXTCompressor}, choosing endpoints along the colors' principal axis. */
+    public static final String COLOR_BLOCK_COMPRESSION_RANGE_FIT = "ColorBlockCompressionRangeFit";
+    /** Compresses with {@link ParallelDXTCompressor}, choosing least squares endpoints. Slower than range fit. */
+    public static final String COLOR_BLOCK_COMPRESSION_CLUSTER_FIT = "ColorBlockCompressionClusterFit";
 
     private boolean buildMipmaps;
     private boolean premultiplyAlpha;
@@ -0,0 +1,990 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+package gov.nasa.worldwind.formats.dds;
+
+import gov.nasa.worldwind.util.Logging;
+
+import java.awt.image.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Compresses images with DXT1 or DXT3 from packed 8888 ARGB pixel arrays. Unlike {@link DXT1Compressor} and {@link
+ * DXT3Compressor}, this compressor reads the whole image once, compresses each 4x4 block from the packed pixels
+ * without allocating per-block color objects, and splits the work into rows of blocks that are compressed on a
+ * fork-join pool. When asked to compress a chain of mip map levels, it builds the levels from the packed pixels and
+ * compresses the rows of every level as one set of tasks, so the small levels fill in around the large ones.
+ * <p/>
+ * The color block endpoints are chosen according to the attributes' color block compression type: {@link
+ * DXTCompressionAttributes#COLOR_BLOCK_COMPRESSION_RANGE_FIT} takes the slightly inset extremes of the block's colors
+ * along their principal axis, and {@link DXTCompressionAttributes#COLOR_BLOCK_COMPRESSION_CLUSTER_FIT} additionally
+ * searches every ordered partition of the colors along that axis for the least squares endpoints, and keeps whichever
+ * of the two encodings has the lower error. Cluster fit is several times slower than range fit, and gives higher
+ * quality for blocks with more than two distinct colors.
+ * <p/>
+ * Tasks run on the fork-join pool of the calling thread when there is one, such as the pool of a tiled raster
+ * producer, and otherwise on this compressor's pool. This class is thread safe.
+ *
+ * @version $Id$
+ */
+public class ParallelDXTCompressor implements DXTCompressor
+{
+    /** The minimum number of blocks compressed by one task. */
+    protected static final int MIN_BLOCKS_PER_TASK = 256;
+    /** The minimum number of pixels filtered by one task when building mip map levels. */
+    protected static final int MIN_PIXELS_PER_TASK = 16384;
+    /** The fraction of the range along the principal axis by which range fit insets each endpoint. */
+    protected static final float RANGE_FIT_INSET = 1f / 16f;
+    /** The number of power iterations used to find a block's principal axis. */
+    protected static final int POWER_ITERATIONS = 4;
+
+    /** A mip map level's pixels, and the blocks it compresses to. */
+    protected static class Level
+    {
+        protected final int[] pixels;
+        protected final int width;
+        protected final int height;
+        /** Indicates whether the pixels are premultiplied but must be compressed without premultiplied alpha. */
+        protected final boolean unpremultiply;
+        protected long[] blocks;
+
+        public Level(int[] pixels, int width, int height, boolean unpremultiply)
+        {
+            this.pixels = pixels;
+            this.width = width;
+            this.height = height;
+            this.unpremultiply = unpremultiply;
+        }
+
+        public int getBlocksWide()
+        {
+            return (this.width + 3) / 4;
+        }
+
+        public int getBlocksHigh()
+        {
+            return (this.height + 3) / 4;
+        }
+    }
+
+    protected final int dxtFormat;
+    protected ForkJoinPool pool;
+
+    /**
+     * Creates a compressor for a specified DXT format.
+     *
+     * @param dxtFormat the DXT format, one of {@link DDSConstants#D3DFMT_DXT1}, {@link DDSConstants#D3DFMT_DXT2} or
+     *                  {@link DDSConstants#D3DFMT_DXT3}. DXT2 is compressed as DXT3.
+     *
+     * @throws IllegalArgumentException if the format is not one of the supported formats.
+     */
+    public ParallelDXTCompressor(int dxtFormat)
+    {
+        if (dxtFormat != DDSConstants.D3DFMT_DXT1 && dxtFormat != DDSConstants.D3DFMT_DXT2
+            && dxtFormat != DDSConstants.D3DFMT_DXT3)
+        {
+            String message = Logging.getMessage("generic.InvalidImageFormat", dxtFormat);
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        this.dxtFormat = dxtFormat == DDSConstants.D3DFMT_DXT1 ? DDSConstants.D3DFMT_DXT1 : DDSConstants.D3DFMT_DXT3;
+    }
+
+    /**
+     * Indicates whether this compressor supports a color block compression type.
+     *
+     * @param compressionType the compression type.
+     *
+     * @return true if the type is range fit or cluster fit, otherwise false.
+     */
+    public static boolean isSupportedCompressionType(String compressionType)
+    {
+        return DXTCompressionAttributes.COLOR_BLOCK_COMPRESSION_RANGE_FIT.equals(compressionType)
+            || DXTCompressionAttributes.COLOR_BLOCK_COMPRESSION_CLUSTER_FIT.equals(compressionType);
+    }
+
+    public int getDXTFormat()
+    {
+        return this.dxtFormat;
+    }
+
+    /**
+     * Returns the pool on which blocks are compressed when the calling thread is not itself running on a fork-join
+     * pool. If no pool has been specified, this returns the common pool.
+     *
+     * @return the pool on which to compress blocks.
+     */
+    public ForkJoinPool getPool()
+    {
+        return this.pool != null ? this.pool : ForkJoinPool.commonPool();
+    }
+
+    /**
+     * Specifies the pool on which blocks are compressed when the calling thread is not itself running on a fork-join
+     * pool.
+     *
+     * @param pool the pool on which to compress blocks. May be null, in which case the common pool is used.
+     */
+    public void setPool(ForkJoinPool pool)
+    {
+        this.pool = pool;
+    }
+
+    public int getCompressedSize(BufferedImage image, DXTCompressionAttributes attributes)
+    {
+        if (image == null)
+        {
+            String message = Logging.getMessage("nullValue.ImageIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+        if (attributes == null)
+        {
+            String message = Logging.getMessage("nullValue.AttributesIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        return this.getCompressedSize(image.getWidth(), image.getHeight());
+    }
+
+    /**
+     * Returns the compressed size in bytes of an image with specified dimensions.
+     *
+     * @param width  the image width.
+     * @param height the image height.
+     *
+     * @return the compressed size in bytes.
+     */
+    public int getCompressedSize(int width, int height)
+    {
+        int blockCount = ((Math.max(width, 4) + 3) / 4) * ((Math.max(height, 4) + 3) / 4);
+        return blockCount * this.getBlockSize();
+    }
+
+    /** @return the size in bytes of one compressed block. */
+    protected int getBlockSize()
+    {
+        return this.dxtFormat == DDSConstants.D3DFMT_DXT1 ? 8 : 16;
+    }
+
+    public void compressImage(BufferedImage image, DXTCompressionAttributes attributes, java.nio.ByteBuffer buffer)
+    {
+        this.compressImage(image, 1, attributes, buffer);
+    }
+
+    /**
+     * Compresses an image and the specified number of its mip map levels, and writes the compressed levels to a buffer
+     * starting with level 0. Each level is half the size of the level above it, and is filtered from that level with
+     * premultiplied alpha, so that transparent colors do not bleed into opaque colors. The buffer must have the little
+     * endian byte order, and enough space for the compressed size of every level.
+     *
+     * @param image      the image to compress.
+     * @param levelCount the number of levels to compress, including level 0.
+     * @param attributes the attributes that control the compression.
+     * @param buffer     the buffer that receives the compressed levels.
+     *
+     * @throws IllegalArgumentException if any of the image, the attributes or the buffer are null, or if the level
+     *                                  count is less than 1.
+     */
+    public void compressImage(BufferedImage image, int levelCount, DXTCompressionAttributes attributes,
+        java.nio.ByteBuffer buffer)
+    {
+        if (image == null)
+        {
+            String message = Logging.getMessage("nullValue.ImageIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+        if (levelCount < 1)
+        {
+            String message = Logging.getMessage("generic.ArgumentOutOfRange", "levelCount < 1");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+        if (attributes == null)
+        {
+            String message = Logging.getMessage("nullValue.AttributesIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+        if (buffer == null)
+        {
+            String message = Logging.getMessage("nullValue.BufferNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        int[] pixels = this.getPixels(image);
+        Level[] levels = this.buildLevels(pixels, image.getWidth(), image.getHeight(), levelCount, attributes);
+
+        boolean dxt1Alpha = this.dxtFormat == DDSConstants.D3DFMT_DXT1 && attributes.isEnableDXT1Alpha()
+            && image.getColorModel().hasAlpha();
+        this.compressLevels(levels, attributes, dxt1Alpha);
+
+        for (Level level : levels)
+        {
+            buffer.asLongBuffer().put(level.blocks);
+            buffer.position(buffer.position() + 8 * level.blocks.length);
+        }
+    }
+
+    //**************************************************************//
+    //********************  Pixel Access  **************************//
+    //**************************************************************//
+
+    /**
+     * Returns an image's pixels as packed 8888 ARGB ints that are not premultiplied, in row major order. Pixels are
+     * copied directly from the image's data buffer for the image types decoded by ImageIO and used by the tiled image
+     * producers, and are otherwise read through the image's color model.
+     *
+     * @param image the image to read.
+     *
+     * @return the image's pixels.
+     */
+    protected int[] getPixels(BufferedImage image)
+    {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int[] pixels = new int[width * height];
+
+        WritableRaster raster = image.getRaster();
+        DataBuffer dataBuffer = raster.getDataBuffer();
+        boolean untranslated = raster.getSampleModelTranslateX() == 0 && raster.getSampleModelTranslateY() == 0
+            && dataBuffer.getNumBanks() == 1 && dataBuffer.getOffset() == 0;
+
+        if (untranslated && (image.getType() == BufferedImage.TYPE_INT_ARGB
+            || image.getType() == BufferedImage.TYPE_INT_RGB)
+            && ((SinglePixelPackedSampleModel) raster.getSampleModel()).getScanlineStride() == width)
+        {
+            int[] data = ((DataBufferInt) dataBuffer).getData();
+            int alpha = image.getType() == BufferedImage.TYPE_INT_RGB ? 0xFF000000 : 0;
+            for (int i = 0; i < pixels.length; i++)
+            {
+                pixels[i] = data[i] | alpha;
+            }
+        }
+        else if (untranslated && (image.getType() == BufferedImage.TYPE_4BYTE_ABGR
+            || image.getType() == BufferedImage.TYPE_3BYTE_BGR)
+            && ((ComponentSampleModel) raster.getSampleModel()).getScanlineStride()
+            == width * raster.getNumDataElements())
+        {
+            byte[] data = ((DataBufferByte) dataBuffer).getData();
+            if (image.getType() == BufferedImage.TYPE_4BYTE_ABGR)
+            {
+                for (int i = 0, j = 0; i < pixels.length; i++, j += 4)
+                {
+                    pixels[i] = ((data[j] & 0xFF) << 24) | ((data[j + 3] & 0xFF) << 16) | ((data[j + 2] & 0xFF) << 8)
+                        | (data[j + 1] & 0xFF);
+                }
+            }
+            else
+            {
+                for (int i = 0, j = 0; i < pixels.length; i++, j += 3)
+                {
+                    pixels[i] = 0xFF000000 | ((data[j + 2] & 0xFF) << 16) | ((data[j + 1] & 0xFF) << 8)
+                        | (data[j] & 0xFF);
+                }
+            }
+        }
+        else
+        {
+            image.getRGB(0, 0, width, height, pixels, 0, width);
+        }
+
+        return pixels;
+    }
+
+    protected static int premultiply(int pixel)
+    {
+        int a = pixel >>> 24;
+        if (a == 255)
+            return pixel;
+
+        int r = div255(((pixel >> 16) & 0xFF) * a);
+        int g = div255(((pixel >> 8) & 0xFF) * a);
+        int b = div255((pixel & 0xFF) * a);
+
+        return (a << 24) | (r << 16) | (g << 8) | b;
+    }
+
+    protected static int unpremultiply(int pixel)
+    {
+        int a = pixel >>> 24;
+        if (a == 255)
+            return pixel;
+        if (a == 0)
+            return 0;
+
+        int r = Math.min((((pixel >> 16) & 0xFF) * 255 + a / 2) / a, 255);
+        int g = Math.min((((pixel >> 8) & 0xFF) * 255 + a / 2) / a, 255);
+        int b = Math.min(((pixel & 0xFF) * 255 + a / 2) / a, 255);
+
+        return (a << 24) | (r << 16) | (g << 8) | b;
+    }
+
+    private static int div255(int a)
+    {
+        return (a + (a >> 8) + 128) >> 8;
+    }
+
+    //**************************************************************//
+    //********************  Mip Map Levels  ************************//
+    //**************************************************************//
+
+    /**
+     * Builds the levels to compress. Level 0 holds the image's pixels, premultiplied if the attributes specify
+     * premultiplied alpha. Each further level is box filtered from the premultiplied pixels of the level above it, with
+     * the rows of each level filtered in parallel.
+     *
+     * @param pixels     the image's pixels, not premultiplied.
+     * @param width      the image width.
+     * @param height     the image height.
+     * @param levelCount the number of levels to build.
+     * @param attributes the attributes that control the compression.
+     *
+     * @return the levels.
+     */
+    protected Level[] buildLevels(int[] pixels, int width, int height, int levelCount,
+        DXTCompressionAttributes attributes)
+    {
+        boolean premultiplyAlpha = attributes.isPremultiplyAlpha();
+        Level[] levels = new Level[levelCount];
+
+        // Filtering needs premultiplied pixels even when the compressed levels are not premultiplied.
+        int[] premultiplied = pixels;
+        if (premultiplyAlpha || levelCount > 1)
+        {
+            premultiplied = new int[pixels.length];
+            for (int i = 0; i < pixels.length; i++)
+            {
+                premultiplied[i] = premultiply(pixels[i]);
+            }
+        }
+
+        levels[0] = new Level(premultiplyAlpha ? premultiplied : pixels, width, height, false);
+        Level previous = new Level(premultiplied, width, height, !premultiplyAlpha);
+
+        for (int i = 1; i < levelCount; i++)
+        {
+            levels[i] = new Level(new int[Math.max(previous.width >> 1, 1) * Math.max(previous.height >> 1, 1)],
+                Math.max(previous.width >> 1, 1), Math.max(previous.height >> 1, 1), !premultiplyAlpha);
+            this.filterLevel(previous, levels[i]);
+            previous = levels[i];
+        }
+
+        return levels;
+    }
+
+    protected void filterLevel(final Level source, final Level destination)
+    {
+        int rowsPerTask = Math.max(MIN_PIXELS_PER_TASK / destination.width, 1);
+        List<RecursiveAction> tasks = new ArrayList<RecursiveAction>();
+
+        for (int row = 0; row < destination.height; row += rowsPerTask)
+        {
+            final int minRow = row;
+            final int maxRow = Math.min(row + rowsPerTask, destination.height);
+            tasks.add(new RecursiveAction()
+            {
+                protected void compute()
+                {
+                    filterRows(source, destination, minRow, maxRow);
+                }
+            });
+        }
+
+        this.invokeAll(tasks);
+    }
+
+    /**
+     * Computes rows of a level as the average of each 2x2 box of premultiplied pixels in the level above it.
+     *
+     * @param source      the level above.
+     * @param destination the level to compute.
+     * @param minRow      the first row to compute.
+     * @param maxRow      the row after the last row to compute.
+     */
+    protected static void filterRows(Level source, Level destination, int minRow, int maxRow)
+    {
+        int[] src = source.pixels;
+        int[] dst = destination.pixels;
+
+        for (int y = minRow; y < maxRow; y++)
+        {
+            int row0 = Math.min(2 * y, source.height - 1) * source.width;
+            int row1 = Math.min(2 * y + 1, source.height - 1) * source.width;
+
+            for (int x = 0; x < destination.width; x++)
+            {
+                int x0 = Math.min(2 * x, source.width - 1);
+                int x1 = Math.min(2 * x + 1, source.width - 1);
+                int p0 = src[row0 + x0];
+                int p1 = src[row0 + x1];
+                int p2 = src[row1 + x0];
+                int p3 = src[row1 + x1];
+
+                int a = ((p0 >>> 24) + (p1 >>> 24) + (p2 >>> 24) + (p3 >>> 24) + 2) >> 2;
+                int r = (((p0 >> 16) & 0xFF) + ((p1 >> 16) & 0xFF) + ((p2 >> 16) & 0xFF) + ((p3 >> 16) & 0xFF) + 2)
+                    >> 2;
+                int g = (((p0 >> 8) & 0xFF) + ((p1 >> 8) & 0xFF) + ((p2 >> 8) & 0xFF) + ((p3 >> 8) & 0xFF) + 2) >> 2;
+                int b = ((p0 & 0xFF) + (p1 & 0xFF) + (p2 & 0xFF) + (p3 & 0xFF) + 2) >> 2;
+
+                dst[y * destination.width + x] = (a << 24) | (r << 16) | (g << 8) | b;
+            }
+        }
+    }
+
+    //**************************************************************//
+    //********************  Block Compression  *********************//
+    //**************************************************************//
+
+    /**
+     * Compresses every level's blocks, splitting each level into rows of blocks and compressing the rows of all levels
+     * in parallel.
+     *
+     * @param levels     the levels to compress.
+     * @param attributes the attributes that control the compression.
+     * @param dxt1Alpha  true if DXT1 blocks with transparent pixels are compressed with the three color palette.
+     */
+    protected void compressLevels(Level[] levels, final DXTCompressionAttributes attributes, final boolean dxt1Alpha)
+    {
+        List<RecursiveAction> tasks = new ArrayList<RecursiveAction>();
+
+        for (final Level level : levels)
+        {
+            int blocksWide = level.getBlocksWide();
+            int blocksHigh = level.getBlocksHigh();
+            level.blocks = new long[blocksWide * blocksHigh * this.getBlockSize() / 8];
+
+            int rowsPerTask = Math.max(MIN_BLOCKS_PER_TASK / blocksWide, 1);
+            for (int row = 0; row < blocksHigh; row += rowsPerTask)
+            {
+                final int minRow = row;
+                final int maxRow = Math.min(row + rowsPerTask, blocksHigh);
+                tasks.add(new RecursiveAction()
+                {
+                    protected void compute()
+                    {
+                        BlockEncoder encoder = new BlockEncoder(attributes, dxt1Alpha);
+                        for (int by = minRow; by < maxRow; by++)
+                        {
+                            for (int bx = 0; bx < level.getBlocksWide(); bx++)
+                            {
+                                compressBlock(encoder, level, bx, by);
+                            }
+                        }
+                    }
+                });
+            }
+        }
+
+        this.invokeAll(tasks);
+    }
+
+    protected void compressBlock(BlockEncoder encoder, Level level, int bx, int by)
+    {
+        encoder.loadBlock(level, bx, by);
+        int blockIndex = by * level.getBlocksWide() + bx;
+
+        if (this.dxtFormat == DDSConstants.D3DFMT_DXT1)
+        {
+            level.blocks[blockIndex] = encoder.encodeDXT1();
+        }
+        else
+        {
+            level.blocks[2 * blockIndex] = encoder.encodeAlphaDXT3();
+            level.blocks[2 * blockIndex + 1] = encoder.encodeColors(false);
+        }
+    }
+
+    protected void invokeAll(final List<RecursiveAction> tasks)
+    {
+        if (tasks.size() == 1)
+        {
+            tasks.get(0).invoke();
+        }
+        else if (ForkJoinTask.inForkJoinPool())
+        {
+            ForkJoinTask.invokeAll(tasks);
+        }
+        else
+        {
+            this.getPool().invoke(new RecursiveAction()
+            {
+                protected void compute()
+                {
+                    invokeAll(tasks);
+                }
+            });
+        }
+    }
+
+    /**
+     * Compresses 4x4 blocks of packed pixels. Each task uses its own encoder, so the encoder's scratch arrays are
+     * reused from block to block without synchronization.
+     */
+    protected static class BlockEncoder
+    {
+        protected final boolean clusterFit;
+        protected final boolean dxt1Alpha;
+        protected final int alphaThreshold;
+
+        /** The block's pixels as packed ARGB ints. */
+        protected final int[] block = new int[16];
+        /** The colors of the block's opaque pixels, and their order along the principal axis. */
+        protected final int[] points = new int[48];
+        protected final int[] order = new int[16];
+        protected final float[] dots = new float[16];
+        protected final float[] sums = new float[51];
+        protected int pointCount;
+        /** The palette of the most recent encoding, as RGB triples. */
+        protected final int[] palette = new int[12];
+        protected final float[] axis = new float[3];
+        protected final float[] mean = new float[3];
+        protected final float[] endpoints = new float[6];
+        protected long error;
+
+        public BlockEncoder(DXTCompressionAttributes attributes, boolean dxt1Alpha)
+        {
+            this.clusterFit = DXTCompressionAttributes.COLOR_BLOCK_COMPRESSION_CLUSTER_FIT.equals(
+                attributes.getColorBlockCompressionType());
+            this.dxt1Alpha = dxt1Alpha;
+            this.alphaThreshold = attributes.getDXT1AlphaThreshold();
+        }
+
+        /**
+         * Loads a block of a level. Blocks that extend past the level's edge repeat the pixels inside the level, as
+         * {@link BasicColorBlockExtractor} does.
+         *
+         * @param level the level.
+         * @param bx    the block's column.
+         * @param by    the block's row.
+         */
+        public void loadBlock(Level level, int bx, int by)
+        {
+            int x0 = 4 * bx;
+            int y0 = 4 * by;
+            int bw = Math.min(level.width - x0, 4);
+            int bh = Math.min(level.height - y0, 4);
+
+            for (int j = 0; j < 4; j++)
+            {
+                int row = (y0 + j % bh) * level.width + x0;
+                for (int i = 0; i < 4; i++)
+                {
+                    int pixel = level.pixels[row + i % bw];
+                    this.block[4 * j + i] = level.unpremultiply ? unpremultiply(pixel) : pixel;
+                }
+            }
+        }
+
+        /**
+         * Encodes the block as a DXT1 block, using the three color palette with transparent black if DXT1 alpha is
+         * enabled and any pixel's alpha is below the threshold.
+         *
+         * @return the block's 64 bits in little endian order.
+         */
+        public long encodeDXT1()
+        {
+            if (this.dxt1Alpha)
+            {
+                for (int i = 0; i < 16; i++)
+                {
+                    if ((this.block[i] >>> 24) < this.alphaThreshold)
+                        return this.encodeColors(true);
+                }
+            }
+
+            return this.encodeColors(false);
+        }
+
+        /**
+         * Encodes the block's alpha as a DXT3 alpha block of 4 bit values, each the nearest to the pixel's 8 bit alpha.
+         *
+         * @return the alpha block's 64 bits in little endian order.
+         */
+        public long encodeAlphaDXT3()
+        {
+            long mask = 0L;
+            for (int i = 0; i < 16; i++)
+            {
+                long alpha4 = ((this.block[i] >>> 24) + 8) / 17;
+                mask |= alpha4 << (4 * i);
+            }
+
+            return mask;
+        }
+
+        /**
+         * Encodes the block's colors. With the three color palette, pixels whose alpha is below the threshold are
+         * encoded as transparent black and are excluded from the fit.
+         *
+         * @param threeColor true to use the three color palette with transparent black, false to use the four color
+         *                   palette.
+         *
+         * @return the color block's 64 bits in little endian order.
+         */
+        public long encodeColors(boolean threeColor)
+        {
+            this.loadPoints(threeColor);
+            if (this.pointCount == 0)
+            {
+                // Every pixel is transparent: equal endpoints select the three color palette, and index 3 is
+                // transparent black.
+                return 0xFFFFFFFF00000000L;
+            }
+
+            this.computePrincipalAxis();
+            this.rangeFit();
+            long best = this.encodeEndpoints(threeColor);
+            long bestError = this.error;
+
+            if (this.clusterFit && bestError > 0)
+            {
+                this.clusterFit(threeColor);
+                long encoding = this.encodeEndpoints(threeColor);
+                if (this.error < bestError)
+                    best = encoding;
+            }
+
+            return best;
+        }
+
+        protected void loadPoints(boolean threeColor)
+        {
+            int n = 0;
+            for (int i = 0; i < 16; i++)
+            {
+                int pixel = this.block[i];
+                if (threeColor && (pixel >>> 24) < this.alphaThreshold)
+                    continue;
+
+                this.points[3 * n] = (pixel >> 16) & 0xFF;
+                this.points[3 * n + 1] = (pixel >> 8) & 0xFF;
+                this.points[3 * n + 2] = pixel & 0xFF;
+                n++;
+            }
+
+            this.pointCount = n;
+        }
+
+        /** Computes the principal axis of the points' covariance by power iteration. */
+        protected void computePrincipalAxis()
+        {
+            int n = this.pointCount;
+            int[] p = this.points;
+
+            // Accumulate the sums and the sums of products in integers, which are exact for 16 8 bit colors.
+            int sr = 0, sg = 0, sb = 0, srr = 0, srg = 0, srb = 0, sgg = 0, sgb = 0, sbb = 0;
+            for (int i = 0; i < 3 * n; i += 3)
+            {
+                int r = p[i];
+                int g = p[i + 1];
+                int b = p[i + 2];
+                sr += r;
+                sg += g;
+                sb += b;
+                srr += r * r;
+                srg += r * g;
+                srb += r * b;
+                sgg += g * g;
+                sgb += g * b;
+                sbb += b * b;
+            }
+
+            float invN = 1f / n;
+            this.mean[0] = sr * invN;
+            this.mean[1] = sg * invN;
+            this.mean[2] = sb * invN;
+
+            float crr = srr - sr * sr * invN;
+            float crg = srg - sr * sg * invN;
+            float crb = srb - sr * sb * invN;
+            float cgg = sgg - sg * sg * invN;
+            float cgb = sgb - sg * sb * invN;
+            float cbb = sbb - sb * sb * invN;
+
+            float vr = 1, vg = 1, vb = 1;
+            for (int iteration = 0; iteration < POWER_ITERATIONS; iteration++)
+            {
+                float r = vr * crr + vg * crg + vb * crb;
+                float g = vr * crg + vg * cgg + vb * cgb;
+                float b = vr * crb + vg * cgb + vb * cbb;
+
+                float max = Math.max(Math.abs(r), Math.max(Math.abs(g), Math.abs(b)));
+                if (max == 0)
+                    break;
+
+                float invMax = 1f / max;
+                vr = r * invMax;
+                vg = g * invMax;
+                vb = b * invMax;
+            }
+
+            this.axis[0] = vr;
+            this.axis[1] = vg;
+            this.axis[2] = vb;
+        }
+
+        /**
+         * Chooses the endpoints on the principal axis through the points' mean, at the least and greatest projections
+         * of the points inset by a fraction of their range. The inset moves the endpoints toward the bulk of the
+         * points, as in the paper "Real-Time DXT Compression" by J.M.P. van Waveren.
+         */
+        protected void rangeFit()
+        {
+            int[] p = this.points;
+            float vr = this.axis[0];
+            float vg = this.axis[1];
+            float vb = this.axis[2];
+            float minDot = Float.MAX_VALUE;
+            float maxDot = -Float.MAX_VALUE;
+
+            for (int i = 0; i < 3 * this.pointCount; i += 3)
+            {
+                float dot = p[i] * vr + p[i + 1] * vg + p[i + 2] * vb;
+                minDot = Math.min(minDot, dot);
+                maxDot = Math.max(maxDot, dot);
+            }
+
+            float meanDot = this.mean[0] * vr + this.mean[1] * vg + this.mean[2] * vb;
+            float invLength2 = 1f / (vr * vr + vg * vg + vb * vb);
+            float inset = RANGE_FIT_INSET * (maxDot - minDot);
+            float minT = (minDot + inset - meanDot) * invLength2;
+            float maxT = (maxDot - inset - meanDot) * invLength2;
+
+            for (int c = 0; c < 3; c++)
+            {
+                this.endpoints[c] = this.mean[c] + maxT * this.axis[c];
+                this.endpoints[c + 3] = this.mean[c] + minT * this.axis[c];
+            }
+        }
+
+        /**
+         * Chooses the endpoints that minimize the squared error over every partition of the points, ordered along the
+         * principal axis, into the clusters of the palette.
+         *
+         * @param threeColor true to fit the three color palette, false to fit the four color palette.
+         */
+        protected void clusterFit(boolean threeColor)
+        {
+            int n = this.pointCount;
+            int[] p = this.points;
+
+            // Order the points along the principal axis, and accumulate their running sums.
+            for (int i = 0; i < n; i++)
+            {
+                float dot = p[3 * i] * this.axis[0] + p[3 * i + 1] * this.axis[1] + p[3 * i + 2] * this.axis[2];
+                int j = i;
+                while (j > 0 && this.dots[j - 1] > dot)
+                {
+                    this.dots[j] = this.dots[j - 1];
+                    this.order[j] = this.order[j - 1];
+                    j--;
+                }
+                this.dots[j] = dot;
+                this.order[j] = i;
+            }
+
+            float[] s = this.sums;
+            s[0] = s[1] = s[2] = 0;
+            for (int i = 0; i < n; i++)
+            {
+                int k = 3 * this.order[i];
+                s[3 * i + 3] = s[3 * i] + p[k];
+                s[3 * i + 4] = s[3 * i + 1] + p[k + 1];
+                s[3 * i + 5] = s[3 * i + 2] + p[k + 2];
+            }
+
+            // For the least squares endpoints a and b of a partition, the squared error is the sum of the points'
+            // squared lengths less a.alphaX + b.betaX, so the best partition is the one that maximizes that term. The
+            // partition's endpoints are computed and clamped only once the best partition is found.
+            float totalR = s[3 * n];
+            float totalG = s[3 * n + 1];
+            float totalB = s[3 * n + 2];
+            float w1 = threeColor ? 0.5f : 2f / 3f;
+            float w2 = threeColor ? 0.5f : 1f / 3f;
+            float bestScore = -Float.MAX_VALUE;
+            int best0 = 0;
+            int best1 = 0;
+            int best2 = 0;
+
+            for (int c0 = 0; c0 <= n; c0++)
+            {
+                for (int c1 = c0; c1 <= n; c1++)
+                {
+                    // The three color palette has one interpolated cluster, so its second cluster is empty.
+                    int maxC2 = threeColor ? c1 : n;
+                    for (int c2 = c1; c2 <= maxC2; c2++)
+                    {
+                        float n1 = c1 - c0;
+                        float n2 = c2 - c1;
+                        float alpha2 = c0 + n1 * w1 * w1 + n2 * w2 * w2;
+                        float beta2 = n1 * (1 - w1) * (1 - w1) + n2 * (1 - w2) * (1 - w2) + (n - c2);
+                        float alphaBeta = n1 * w1 * (1 - w1) + n2 * w2 * (1 - w2);
+                        float det = alpha2 * beta2 - alphaBeta * alphaBeta;
+                        if (det < 1e-6f)
+                            continue;
+
+                        float alphaR = s[3 * c0] + w1 * (s[3 * c1] - s[3 * c0]) + w2 * (s[3 * c2] - s[3 * c1]);
+                        float alphaG = s[3 * c0 + 1] + w1 * (s[3 * c1 + 1] - s[3 * c0 + 1])
+                            + w2 * (s[3 * c2 + 1] - s[3 * c1 + 1]);
+                        float alphaB = s[3 * c0 + 2] + w1 * (s[3 * c1 + 2] - s[3 * c0 + 2])
+                            + w2 * (s[3 * c2 + 2] - s[3 * c1 + 2]);
+                        float betaR = totalR - alphaR;
+                        float betaG = totalG - alphaG;
+                        float betaB = totalB - alphaB;
+
+                        // a.alphaX + b.betaX, with a and b expanded and the common factor 1 / det taken out.
+                        float alphaAlpha = alphaR * alphaR + alphaG * alphaG + alphaB * alphaB;
+                        float betaBeta = betaR * betaR + betaG * betaG + betaB * betaB;
+                        float alphaBetaX = alphaR * betaR + alphaG * betaG + alphaB * betaB;
+                        float score = (alphaAlpha * beta2 + betaBeta * alpha2 - 2 * alphaBetaX * alphaBeta) / det;
+
+                        if (score > bestScore)
+                        {
+                            bestScore = score;
+                            best0 = c0;
+                            best1 = c1;
+                            best2 = c2;
+                        }
+                    }
+                }
+            }
+
+            if (bestScore == -Float.MAX_VALUE)
+                return;
+
+            float n1 = best1 - best0;
+            float n2 = best2 - best1;
+            float alpha2 = best0 + n1 * w1 * w1 + n2 * w2 * w2;
+            float beta2 = n1 * (1 - w1) * (1 - w1) + n2 * (1 - w2) * (1 - w2) + (n - best2);
+            float alphaBeta = n1 * w1 * (1 - w1) + n2 * w2 * (1 - w2);
+            float det = alpha2 * beta2 - alphaBeta * alphaBeta;
+            for (int c = 0; c < 3; c++)
+            {
+                float alphaX = s[3 * best0 + c] + w1 * (s[3 * best1 + c] - s[3 * best0 + c])
+                    + w2 * (s[3 * best2 + c] - s[3 * best1 + c]);
+                float betaX = s[3 * n + c] - alphaX;
+                this.endpoints[c] = (alphaX * beta2 - betaX * alphaBeta) / det;
+                this.endpoints[c + 3] = (betaX * alpha2 - alphaX * alphaBeta) / det;
+            }
+        }
+
+        /**
+         * Encodes the block with the current endpoints, assigning each pixel the nearest palette color, and records the
+         * encoding's squared error.
+         *
+         * @param threeColor true to use the three color palette with transparent black, false to use the four color
+         *                   palette.
+         *
+         * @return the color block's 64 bits in little endian order.
+         */
+        protected long encodeEndpoints(boolean threeColor)
+        {
+            int e0 = short565(this.endpoints[0], this.endpoints[1], this.endpoints[2]);
+            int e1 = short565(this.endpoints[3], this.endpoints[4], this.endpoints[5]);
+
+            // The four color palette requires the first color to be greater than the second, and the three color
+            // palette requires it to be less than or equal. Equal endpoints select the three color palette, so every
+            // pixel is given the first color.
+            int color0 = threeColor ? Math.min(e0, e1) : Math.max(e0, e1);
+            int color1 = threeColor ? Math.max(e0, e1) : Math.min(e0, e1);
+            int paletteSize = threeColor ? 3 : (color0 == color1 ? 1 : 4);
+            this.computePalette(color0, color1, threeColor);
+
+            int[] pal = this.palette;
+            int r0 = pal[0], g0 = pal[1], b0 = pal[2];
+            int r1 = pal[3], g1 = pal[4], b1 = pal[5];
+            int r2 = pal[6], g2 = pal[7], b2 = pal[8];
+            int r3 = pal[9], g3 = pal[10], b3 = pal[11];
+
+            long indices = 0L;
+            long error = 0L;
+            for (int i = 0; i < 16; i++)
+            {
+                int pixel = this.block[i];
+                if (threeColor && (pixel >>> 24) < this.alphaThreshold)
+                {
+                    indices |= 3L << (2 * i);
+                    continue;
+                }
+
+                int r = (pixel >> 16) & 0xFF;
+                int g = (pixel >> 8) & 0xFF;
+                int b = pixel & 0xFF;
+
+                // Find the nearest of the palette's colors, excluding transparent black from the three color palette.
+                int index = 0;
+                int distance = (r - r0) * (r - r0) + (g - g0) * (g - g0) + (b - b0) * (b - b0);
+                if (paletteSize > 1)
+                {
+                    int d1 = (r - r1) * (r - r1) + (g - g1) * (g - g1) + (b - b1) * (b - b1);
+                    int d2 = (r - r2) * (r - r2) + (g - g2) * (g - g2) + (b - b2) * (b - b2);
+                    int d3 = paletteSize > 3 ? (r - r3) * (r - r3) + (g - g3) * (g - g3) + (b - b3) * (b - b3)
+                        : Integer.MAX_VALUE;
+                    index = d1 < distance ? 1 : 0;
+                    distance = Math.min(d1, distance);
+                    index = d2 < distance ? 2 : index;
+                    distance = Math.min(d2, distance);
+                    index = d3 < distance ? 3 : index;
+                    distance = Math.min(d3, distance);
+                }
+
+                indices |= ((long) index) << (2 * i);
+                error += distance;
+            }
+
+            this.error = error;
+            return color0 | ((long) color1 << 16) | (indices << 32);
+        }
+
+        protected void computePalette(int color0, int color1, boolean threeColor)
+        {
+            // The interpolated colors follow BlockDXT1Compressor, which follows the Direct3D documentation at
+            // http://msdn.microsoft.com/en-us/library/bb694531(VS.85).aspx
+            int[] p = this.palette;
+            expand565(color0, p, 0);
+            expand565(color1, p, 3);
+
+            for (int c = 0; c < 3; c++)
+            {
+                if (threeColor)
+                {
+                    p[6 + c] = (p[c] + p[3 + c]) / 2;
+                    p[9 + c] = 0;
+                }
+                else
+                {
+                    p[6 + c] = (2 * p[c] + p[3 + c]) / 3;
+                    p[9 + c] = (p[c] + 2 * p[3 + c]) / 3;
+                }
+            }
+        }
+
+        protected static int short565(float r, float g, float b)
+        {
+            int r5 = Math.round(Math.max(0, Math.min(255, r)) * 31 / 255f);
+            int g6 = Math.round(Math.max(0, Math.min(255, g)) * 63 / 255f);
+            int b5 = Math.round(Math.max(0, Math.min(255, b)) * 31 / 255f);
+
+            return (r5 << 11) | (g6 << 5) | b5;
+        }
+
+        protected static void expand565(int color16, int[] rgb, int offset)
+        {
+            int r = (color16 & 0xf800) >> 11;
+            int g = (color16 & 0x07e0) >> 5;
+            int b = (color16 & 0x001f);
+
+            rgb[offset] = (r << 3) | (r >> 2);
+            rgb[offset + 1] = (g << 2) | (g >> 4);
+            rgb[offset + 2] = (b << 3) | (b >> 2);
+        }
+    }
+}
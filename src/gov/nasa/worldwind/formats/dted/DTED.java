@@ -134,25 +134,68 @@ public class DTED
         return raster;
     }
 
-    protected static DataRaster readElevations(FileChannel theChannel, long offset, AVList metadata) throws IOException
+    /**
+     * Reads a window of a DTED file's elevations. DTED files store each column of elevations as a record, so only the
+     * records of the window's columns are read.
+     *
+     * @param file           the DTED file.
+     * @param window         the window's pixels, with the origin at the upper left corner of the file's elevations.
+     * @param windowMetadata the window's metadata, including its width, height and sector.
+     *
+     * @return the window's elevations.
+     *
+     * @throws IOException if an IO error occurs.
+     */
+    public static DataRaster readWindow(File file, java.awt.Rectangle window, AVList windowMetadata) throws IOException
     {
-        if (null == theChannel)
-            return null;
+        DataRaster raster = null;
+        RandomAccessFile sourceFile = null;
 
-        ByteBufferRaster raster = (ByteBufferRaster) ByteBufferRaster.createGeoreferencedRaster(metadata);
+        try
+        {
+            sourceFile = open(file);
 
-        theChannel.position(offset);
+            FileChannel channel = sourceFile.getChannel();
+
+            AVList metadata = new AVListImpl();
+            readUHL(channel, DTED_UHL_OFFSET, metadata);
 
+            raster = readElevations(channel, DTED_DATA_OFFSET, (Integer) metadata.getValue(AVKey.HEIGHT), window,
+                windowMetadata);
+        }
+        finally
+        {
+            close(sourceFile);
+        }
+
+        return raster;
+    }
+
+    protected static DataRaster readElevations(FileChannel theChannel, long offset, AVList metadata) throws IOException
+    {
         int width = (Integer) metadata.getValue(AVKey.WIDTH);
         int height = (Integer) metadata.getValue(AVKey.HEIGHT);
 
+        return readElevations(theChannel, offset, height, new java.awt.Rectangle(0, 0, width, height), metadata);
+    }
+
+    protected static DataRaster readElevations(FileChannel theChannel, long offset, int height,
+        java.awt.Rectangle window, AVList metadata) throws IOException
+    {
+        if (null == theChannel)
+            return null;
+
+        ByteBufferRaster raster = (ByteBufferRaster) ByteBufferRaster.createGeoreferencedRaster(metadata);
+
         int recordSize = REC_HEADER_SIZE + height * Short.SIZE / Byte.SIZE + REC_CHKSUM_SIZE;
 
+        theChannel.position(offset + (long) window.x * recordSize);
+
         double min = +Double.MAX_VALUE;
         double max = -Double.MAX_VALUE;
 
         ByteBuffer bb = ByteBuffer.allocate(recordSize).order(ByteOrder.BIG_ENDIAN);
-        for (int x = 0; x < width; x++)
+        for (int x = 0; x < window.width; x++)
         {
             theChannel.read(bb);
             bb.flip();
@@ -168,7 +211,9 @@ public class DTED
             for (int i = 0; i < height; i++)
             {
                 double elev = (double) data.get(i + 4); // skip 4 shorts of header
-                int y = height - i - 1;
+                int y = height - i - 1 - window.y;
+                if (y < 0 || y >= window.height)
+                    continue;
 
                 if (elev != DTED_NODATA_VALUE && elev >= DTED_MIN_VALUE && elev <= DTED_MAX_VALUE)
                 {
@@ -167,6 +167,128 @@ public class GeotiffReader implements Disposable
         return (null != values && values.hasKey(AVKey.COORDINATE_SYSTEM));
     }
 
+    /**
+     * Indicates whether a window of an image's elevations can be read without reading the rest of the image. Windows
+     * can be read from uncompressed, single-sample elevation images stored in strips.
+     *
+     * @param imageIndex the image to examine.
+     *
+     * @return true if {@link #readElevationWindow(int, java.awt.Rectangle, AVList)} can read the image, otherwise
+     *         false.
+     *
+     * @throws IOException if the image's tags cannot be read.
+     */
+    public boolean canReadElevationWindow(int imageIndex) throws IOException
+    {
+        checkImageIndex(imageIndex);
+        AVList values = this.metadata.get(imageIndex);
+
+        if (values.getValue(AVKey.PIXEL_FORMAT) != AVKey.ELEVATION)
+            return false;
+
+        Object dataType = values.getValue(AVKey.DATA_TYPE);
+        if (dataType != AVKey.INT8 && dataType != AVKey.INT16 && dataType != AVKey.FLOAT32)
+            return false;
+
+        TiffIFDEntry[] ifd = this.tiffIFDs.get(imageIndex);
+        BaselineTiff tiff = BaselineTiff.extract(ifd, this.tiffReader);
+        if (tiff == null || tiff.width <= 0 || tiff.height <= 0 || tiff.samplesPerPixel != 1)
+            return false;
+
+        TiffIFDEntry compression = getByTag(ifd, Tiff.Tag.COMPRESSION);
+        if (compression != null && compression.asLong() != Tiff.Compression.NONE)
+            return false;
+
+        return getByTag(ifd, Tiff.Tag.TILE_WIDTH) == null && getByTag(ifd, Tiff.Tag.STRIP_OFFSETS) != null;
+    }
+
+    /**
+     * Reads a window of an image's elevations. Only the rows and columns within the window are read from the file. The
+     * image must satisfy {@link #canReadElevationWindow(int)}.
+     *
+     * @param imageIndex   the image to read.
+     * @param window       the window to read, in image coordinates with the origin at the upper left.
+     * @param windowValues the returned raster's metadata, with a sector covering the window.
+     *
+     * @return the window's elevations.
+     *
+     * @throws IOException if the window cannot be read.
+     */
+    public DataRaster readElevationWindow(int imageIndex, java.awt.Rectangle window, AVList windowValues)
+        throws IOException
+    {
+        checkImageIndex(imageIndex);
+        AVList values = this.metadata.get(imageIndex);
+
+        TiffIFDEntry[] ifd = this.tiffIFDs.get(imageIndex);
+        BaselineTiff tiff = BaselineTiff.extract(ifd, this.tiffReader);
+        if (null == tiff)
+        {
+            String message = Logging.getMessage("GeotiffReader.BadGeotiff");
+            Logging.logger().severe(message);
+            throw new IOException(message);
+        }
+
+        TiffIFDEntry entry = getByTag(ifd, Tiff.Tag.STRIP_OFFSETS);
+        long[] stripOffsets = (entry != null) ? entry.getAsLongs() : null;
+        if (null == stripOffsets || 0 == stripOffsets.length)
+        {
+            String message = Logging.getMessage("GeotiffReader.MissingRequiredTag", "StripOffsets");
+            Logging.logger().severe(message);
+            throw new IOException(message);
+        }
+
+        int rowsPerStrip = (tiff.rowsPerStrip > 0) ? tiff.rowsPerStrip : Integer.MAX_VALUE;
+        Object dataType = values.getValue(AVKey.DATA_TYPE);
+        int sampleSize = WWBufferUtil.sizeOfPrimitiveType(dataType);
+
+        ByteBufferRaster raster = new ByteBufferRaster(window.width, window.height,
+            (Sector) windowValues.getValue(AVKey.SECTOR), windowValues);
+
+        // Read each row of the window from the strip containing it. The samples of a row are contiguous within the
+        // strip, so the window's part of the row is a single read.
+        ByteBuffer buffer = ByteBuffer.allocate(window.width * sampleSize);
+        buffer.order(this.tiffReader.getByteOrder());
+        for (int y = 0; y < window.height; y++)
+        {
+            int row = window.y + y;
+            int strip = row / rowsPerStrip;
+            if (strip >= stripOffsets.length)
+            {
+                String message = Logging.getMessage("GeotiffReader.BadGeotiff");
+                Logging.logger().severe(message);
+                throw new IOException(message);
+            }
+
+            long position = stripOffsets[strip] + ((long) (row % rowsPerStrip) * tiff.width + window.x) * sampleSize;
+            buffer.clear();
+            while (buffer.hasRemaining())
+            {
+                int count = this.theChannel.read(buffer, position + buffer.position());
+                if (count < 0)
+                {
+                    String message = Logging.getMessage("GeotiffReader.BadGeotiff");
+                    Logging.logger().severe(message);
+                    throw new IOException(message);
+                }
+            }
+
+            for (int x = 0; x < window.width; x++)
+            {
+                if (dataType == AVKey.INT8)
+                    raster.setDoubleAtPosition(y, x, (double) buffer.get(x));
+                else if (dataType == AVKey.INT16)
+                    raster.setDoubleAtPosition(y, x, (double) buffer.getShort(x * sampleSize));
+                else
+                    raster.setDoubleAtPosition(y, x, (double) buffer.getFloat(x * sampleSize));
+            }
+        }
+
+        ElevationsUtil.rectify(raster);
+
+        return raster;
+    }
+
     public DataRaster doRead(int imageIndex) throws IOException
     {
         checkImageIndex(imageIndex);
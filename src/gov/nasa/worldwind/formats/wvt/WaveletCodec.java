@@ -29,6 +29,8 @@ public class WaveletCodec
      * A suggested filename extension for wavelet-encodings.
      */
     public static final String WVT_EXT = ".wvt";
+    /** The length of the header preceding the coefficients, in bytes. */
+    public static final int HEADER_LENGTH = (4 * Integer.SIZE) / Byte.SIZE;
 
     private WaveletCodec(int type, int resolutionX, int resolutionY)
     {
@@ -87,8 +89,8 @@ public class WaveletCodec
 
         // Allocate memory for the BufferedImage
         int numBands = this.xform.length;
-        int[][] imageData = new int[numBands][this.resolutionX * this.resolutionY];
-        byte[][] imageBytes = new byte[numBands][this.resolutionX * this.resolutionY];
+        int[][] imageData = new int[numBands][resolution * resolution];
+        byte[][] imageBytes = new byte[numBands][resolution * resolution];
 
         // we need working buffers as large as 1/2 the output resolution...
         // Note how these are named after Glassner's convention...
@@ -316,6 +318,154 @@ public class WaveletCodec
         return codec;
     }
 
+    /**
+     * Returns the number of bytes at the start of a progressive encoding that hold the coefficients needed to
+     * reconstruct the image at the given resolution. See {@link #saveProgressive(WaveletCodec)}.
+     *
+     * @param resolution the resolution to reconstruct. Must be a power of two.
+     * @param numBands   the number of bands in the encoding.
+     *
+     * @return the length of the encoding's prefix, in bytes.
+     */
+    public static int getProgressiveLength(int resolution, int numBands)
+    {
+        return HEADER_LENGTH + resolution * resolution * numBands;
+    }
+
+    /**
+     * Returns the highest resolution that the prefix of a progressive encoding in the given buffer can reconstruct.
+     * The buffer may hold the whole encoding or any prefix of it. The buffer's position is not changed.
+     *
+     * @param buffer the encoding or a prefix of it, starting at the buffer's position.
+     *
+     * @return the highest resolution, or 0 if the buffer does not hold the encoding's header and first coefficient.
+     *
+     * @throws IllegalArgumentException if the buffer is null.
+     */
+    public static int getProgressiveResolution(java.nio.ByteBuffer buffer)
+    {
+        if (buffer == null)
+        {
+            String message = Logging.getMessage("nullValue.ByteBufferIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        if (buffer.remaining() < HEADER_LENGTH)
+            return 0;
+
+        int start = buffer.position();
+        int maxResolution = Math.min(buffer.getInt(start), buffer.getInt(start + 4));
+        int numBands = buffer.getInt(start + 12);
+        if (maxResolution <= 0 || numBands <= 0)
+            return 0;
+
+        int resolution = 0;
+        for (int r = 1; r <= maxResolution && getProgressiveLength(r, numBands) <= buffer.remaining(); r *= 2)
+        {
+            resolution = r;
+        }
+
+        return resolution;
+    }
+
+    /**
+     * Saves a wavelet encoding in progressive order. The header is the same as that written by {@link
+     * #save(WaveletCodec)}, but the coefficients of all bands are interleaved rather than stored band after band.
+     * Since the coefficients are ordered from coarse to fine, the first {@link #getProgressiveLength(int, int)} bytes
+     * then hold everything needed to reconstruct the image at a lower resolution, and can be fetched on their own.
+     *
+     * @param codec the wavelet encoding to save.
+     *
+     * @return a buffer holding the progressive encoding.
+     *
+     * @throws IllegalArgumentException if the codec is null.
+     */
+    public static java.nio.ByteBuffer saveProgressive(WaveletCodec codec)
+    {
+        if (codec == null)
+        {
+            String message = "WaveletCodec is null";
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        int numBands = codec.xform.length;
+        int numCoefficients = codec.xform[0].length;
+
+        java.nio.ByteBuffer buffer = java.nio.ByteBuffer.allocate(HEADER_LENGTH + numCoefficients * numBands);
+        buffer.putInt(codec.resolutionX);
+        buffer.putInt(codec.resolutionY);
+        buffer.putInt(codec.type);
+        buffer.putInt(numBands);
+        for (int i = 0; i < numCoefficients; i++)
+        {
+            for (int k = 0; k < numBands; k++)
+            {
+                buffer.put(codec.xform[k][i]);
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Loads the coefficients needed to reconstruct an image at the given resolution from a progressive encoding
+     * written by {@link #saveProgressive(WaveletCodec)}. Like {@link #loadPartial(java.nio.ByteBuffer, int)}, the
+     * returned codec can reconstruct the image at that resolution and below. The buffer need only hold the encoding's
+     * first {@link #getProgressiveLength(int, int)} bytes.
+     *
+     * @param buffer     the encoding or a prefix of it, starting at the buffer's position.
+     * @param resolution the resolution to load. Must be a power of two.
+     *
+     * @return the partial wavelet encoding.
+     *
+     * @throws IllegalArgumentException if the buffer is null, if the resolution is greater than the encoded image's,
+     *                                  or if the buffer holds too few coefficients for the resolution.
+     */
+    public static WaveletCodec loadProgressive(java.nio.ByteBuffer buffer, int resolution)
+    {
+        if (buffer == null)
+        {
+            String message = Logging.getMessage("nullValue.ByteBufferIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        int length = buffer.remaining();
+        int resolutionX = buffer.getInt();
+        int resolutionY = buffer.getInt();
+        if (resolution > resolutionX || resolution > resolutionY)
+            throw new IllegalArgumentException(
+                "WaveletCodec.loadProgressive(): input resolution greater than encoded image");
+
+        int type = buffer.getInt();
+        if (!isTypeValid(type))
+            throw new IllegalArgumentException("WaveletCodec.loadProgressive(): invalid encoding type");
+
+        int numBands = buffer.getInt();
+        int requiredLength = getProgressiveLength(resolution, numBands);
+        if (length < requiredLength)
+        {
+            String message = Logging.getMessage("WaveletCodec.EncodingTooShort", length, requiredLength, resolution);
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        byte[][] xform = new byte[numBands][resolution * resolution];
+        for (int i = 0; i < resolution * resolution; i++)
+        {
+            for (int k = 0; k < numBands; k++)
+            {
+                xform[k][i] = buffer.get();
+            }
+        }
+
+        WaveletCodec codec = new WaveletCodec(type, resolutionX, resolutionY);
+        codec.xform = xform;
+        return codec;
+    }
+
     /**
      * Creates a wavelet encoding from the given BufferedImage. The image must have dimensions that are
      * a power of 2. If the incoming image has at least 3 bands, the first three are assumed to be RGB channels.
@@ -335,6 +335,90 @@ public interface ElevationModel extends WWObject, Restorable, Disposable
     double[] getUnmappedElevations(Sector sector, List<? extends LatLon> latlons, double targetResolution[],
         double[] buffer);
 
+    /**
+     * Returns the elevations of a collection of locations specified as parallel arrays of latitudes and longitudes in
+     * degrees. Performs the same function as {@link #getElevations(gov.nasa.worldwind.geom.Sector, java.util.List,
+     * double, double[])} without requiring a {@link LatLon} per location, which makes it suitable for callers
+     * computing elevations for many locations at a time, such as terrain tessellators.
+     *
+     * @param sector           the sector in question.
+     * @param latitudes        the latitudes of the locations, in degrees.
+     * @param longitudes       the longitudes of the locations, in degrees. Must contain at least as many elements as
+     *                         the latitudes array.
+     * @param targetResolution the desired horizontal resolution, in radians, of the raster or other elevation sample
+     *                         from which elevations are drawn.
+     * @param buffer           an array in which to place the returned elevations. The array must be pre-allocated and
+     *                         contain at least as many elements as the latitudes array.
+     *
+     * @return the resolution achieved, in radians, or {@link Double#MAX_VALUE} if individual elevations cannot be
+     *         determined for all of the locations.
+     *
+     * @throws IllegalArgumentException if the sector or any of the arrays is null, or if the longitudes or elevations
+     *                                  array is smaller than the latitudes array.
+     */
+    double getElevations(Sector sector, double[] latitudes, double[] longitudes, double targetResolution,
+        double[] buffer);
+
+    /**
+     * Returns the elevations of a collection of locations specified as parallel arrays of latitudes and longitudes in
+     * degrees, with a target resolution per elevation model. See {@link #getElevations(gov.nasa.worldwind.geom.Sector,
+     * java.util.List, double[], double[])}.
+     *
+     * @param sector           the sector in question.
+     * @param latitudes        the latitudes of the locations, in degrees.
+     * @param longitudes       the longitudes of the locations, in degrees.
+     * @param targetResolution the desired horizontal resolutions, in radians, in the same order as the elevation
+     *                         models in {@link gov.nasa.worldwind.terrain.CompoundElevationModel}.
+     * @param buffer           an array in which to place the returned elevations.
+     *
+     * @return the resolutions achieved, in radians, in the same order as the target resolutions.
+     *
+     * @throws IllegalArgumentException if the sector or any of the arrays is null, or if the longitudes or elevations
+     *                                  array is smaller than the latitudes array.
+     */
+    double[] getElevations(Sector sector, double[] latitudes, double[] longitudes, double targetResolution[],
+        double[] buffer);
+
+    /**
+     * Returns the elevations of a collection of locations specified as parallel arrays of latitudes and longitudes in
+     * degrees. <em>Does not</em> replace any elevation values corresponding to the missing data signal with the
+     * elevation model's missing data replacement value. See {@link #getElevations(gov.nasa.worldwind.geom.Sector,
+     * double[], double[], double, double[])}.
+     *
+     * @param sector           the sector in question.
+     * @param latitudes        the latitudes of the locations, in degrees.
+     * @param longitudes       the longitudes of the locations, in degrees.
+     * @param targetResolution the desired horizontal resolution, in radians.
+     * @param buffer           an array in which to place the returned elevations.
+     *
+     * @return the resolution achieved, in radians, or {@link Double#MAX_VALUE} if individual elevations cannot be
+     *         determined for all of the locations.
+     *
+     * @throws IllegalArgumentException if the sector or any of the arrays is null, or if the longitudes or elevations
+     *                                  array is smaller than the latitudes array.
+     */
+    double getUnmappedElevations(Sector sector, double[] latitudes, double[] longitudes, double targetResolution,
+        double[] buffer);
+
+    /**
+     * Returns the elevations of a collection of locations specified as parallel arrays of latitudes and longitudes in
+     * degrees, with a target resolution per elevation model. <em>Does not</em> replace any elevation values
+     * corresponding to the missing data signal with the elevation model's missing data replacement value.
+     *
+     * @param sector           the sector in question.
+     * @param latitudes        the latitudes of the locations, in degrees.
+     * @param longitudes       the longitudes of the locations, in degrees.
+     * @param targetResolution the desired horizontal resolutions, in radians.
+     * @param buffer           an array in which to place the returned elevations.
+     *
+     * @return the resolutions achieved, in radians, in the same order as the target resolutions.
+     *
+     * @throws IllegalArgumentException if the sector or any of the arrays is null, or if the longitudes or elevations
+     *                                  array is smaller than the latitudes array.
+     */
+    double[] getUnmappedElevations(Sector sector, double[] latitudes, double[] longitudes, double targetResolution[],
+        double[] buffer);
+
     /**
      * Returns the elevation used for missing values in the elevation model.
      *
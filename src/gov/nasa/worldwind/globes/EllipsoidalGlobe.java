@@ -13,6 +13,7 @@ import gov.nasa.worldwind.terrain.*;
 import gov.nasa.worldwind.util.*;
 
 import java.io.IOException;
+import java.nio.FloatBuffer;
 import java.util.List;
 
 /**
@@ -486,6 +487,44 @@ public class EllipsoidalGlobe extends WWObjectImpl implements Globe
         return resolution;
     }
 
+    public double getElevations(Sector sector, double[] latitudes, double[] longitudes, double targetResolution,
+        double[] elevations)
+    {
+        if (this.elevationModel == null)
+            return 0;
+
+        double resolution = this.elevationModel.getElevations(sector, latitudes, longitudes, targetResolution,
+            elevations);
+
+        if (this.egm96 != null)
+            this.applyEGM96Offsets(latitudes, longitudes, elevations);
+
+        return resolution;
+    }
+
+    public double[] getElevations(Sector sector, double[] latitudes, double[] longitudes, double[] targetResolution,
+        double[] elevations)
+    {
+        if (this.elevationModel == null)
+            return new double[] {0};
+
+        double[] resolution = this.elevationModel.getElevations(sector, latitudes, longitudes, targetResolution,
+            elevations);
+
+        if (this.egm96 != null)
+            this.applyEGM96Offsets(latitudes, longitudes, elevations);
+
+        return resolution;
+    }
+
+    protected void applyEGM96Offsets(double[] latitudes, double[] longitudes, double[] elevations)
+    {
+        for (int i = 0; i < latitudes.length; i++)
+        {
+            elevations[i] += this.egm96.getOffset(Angle.fromDegrees(latitudes[i]), Angle.fromDegrees(longitudes[i]));
+        }
+    }
+
     public double getElevation(Angle latitude, Angle longitude)
     {
         if (latitude == null || longitude == null)
@@ -601,6 +640,49 @@ public class EllipsoidalGlobe extends WWObjectImpl implements Globe
         this.geodeticToCartesian(sector, numLat, numLon, metersElevation, out);
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public void computePointsFromPositions(double[] latitudes, double[] longitudes, int numLat, int numLon,
+        double[] metersElevation, Vec4 referencePoint, FloatBuffer out)
+    {
+        if (latitudes == null || longitudes == null)
+        {
+            String message = Logging.getMessage("nullValue.LatitudeOrLongitudeIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        if (numLat <= 0 || numLon <= 0)
+        {
+            String message = Logging.getMessage("generic.ArgumentOutOfRange", "numLat <= 0 or numLon <= 0");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        if (metersElevation == null)
+        {
+            String message = Logging.getMessage("nullValue.ElevationsIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        if (referencePoint == null)
+        {
+            String message = Logging.getMessage("nullValue.PointIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        if (out == null)
+        {
+            String message = Logging.getMessage("nullValue.OutputIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        this.geodeticToCartesian(latitudes, longitudes, numLat, numLon, metersElevation, referencePoint, out);
+    }
+
     /**
      * Returns the normal to the Globe at the specified position.
      *
@@ -972,6 +1054,53 @@ public class EllipsoidalGlobe extends WWObjectImpl implements Globe
         }
     }
 
+    /**
+     * Maps a grid of geographic positions to Cartesian coordinates relative to a reference point, and writes them to a
+     * buffer. Each row of the grid must have a constant latitude and each column a constant longitude, so the sine and
+     * cosine of each are computed once per row and once per column.
+     *
+     * @param latitudes       the latitude of each position, in degrees, in row major order.
+     * @param longitudes      the longitude of each position, in degrees, in row major order.
+     * @param numLat          the number of rows in the grid.
+     * @param numLon          the number of columns in the grid.
+     * @param metersElevation the elevation of each position, in row major order.
+     * @param referencePoint  the point to subtract from each computed point.
+     * @param out             the buffer to write the points' x, y and z coordinates to, beginning at its current
+     *                        position.
+     *
+     * @see #computePointsFromPositions(double[], double[], int, int, double[], gov.nasa.worldwind.geom.Vec4,
+     *      java.nio.FloatBuffer)
+     */
+    protected void geodeticToCartesian(double[] latitudes, double[] longitudes, int numLat, int numLon,
+        double[] metersElevation, Vec4 referencePoint, FloatBuffer out)
+    {
+        double[] cosLon = new double[numLon];
+        double[] sinLon = new double[numLon];
+        for (int i = 0; i < numLon; i++)
+        {
+            double lon = Math.PI / 180d * longitudes[i];
+            cosLon[i] = Math.cos(lon);
+            sinLon[i] = Math.sin(lon);
+        }
+
+        int pos = 0;
+        for (int j = 0; j < numLat; j++)
+        {
+            double lat = Math.PI / 180d * latitudes[j * numLon];
+            double cosLat = Math.cos(lat);
+            double sinLat = Math.sin(lat);
+            double rpm = this.equatorialRadius / Math.sqrt(1.0 - this.es * sinLat * sinLat);
+
+            for (int i = 0; i < numLon; i++)
+            {
+                double elev = metersElevation[pos++];
+                out.put((float) ((rpm + elev) * cosLat * sinLon[i] - referencePoint.x));
+                out.put((float) ((rpm * (1.0 - this.es) + elev) * sinLat - referencePoint.y));
+                out.put((float) ((rpm + elev) * cosLat * cosLon[i] - referencePoint.z));
+            }
+        }
+    }
+
 //    protected Position cartesianToGeodeticOriginal(Vec4 cart)
 //    {
 //        if (cart == null)
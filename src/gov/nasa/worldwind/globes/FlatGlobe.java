@@ -12,6 +12,8 @@ import gov.nasa.worldwind.globes.projections.*;
 import gov.nasa.worldwind.render.DrawContext;
 import gov.nasa.worldwind.util.Logging;
 
+import java.nio.FloatBuffer;
+
 /**
  * Defines a globe represented as a projection onto a plane. The projection type is modifiable. The default projection
  * is Mercator. New projections may be added by extending this class and overriding {@link
@@ -402,6 +404,25 @@ public class FlatGlobe extends EllipsoidalGlobe implements Globe2D
         this.projection.geographicToCartesian(this, sector, numLat, numLon, metersElevation, this.offsetVector, out);
     }
 
+    @Override
+    protected void geodeticToCartesian(double[] latitudes, double[] longitudes, int numLat, int numLon,
+        double[] metersElevation, Vec4 referencePoint, FloatBuffer out)
+    {
+        // Projections map each position individually, so points cannot share per-row and per-column terms here.
+        int pos = 0;
+        for (int j = 0; j < numLat; j++)
+        {
+            for (int i = 0; i < numLon; i++, pos++)
+            {
+                Vec4 p = this.projection.geographicToCartesian(this, Angle.fromDegrees(latitudes[pos]),
+                    Angle.fromDegrees(longitudes[pos]), metersElevation[pos], this.offsetVector);
+                out.put((float) (p.x - referencePoint.x));
+                out.put((float) (p.y - referencePoint.y));
+                out.put((float) (p.z - referencePoint.z));
+            }
+        }
+    }
+
     @Override
     protected Position cartesianToGeodetic(Vec4 cart)
     {
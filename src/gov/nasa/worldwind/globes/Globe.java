@@ -10,6 +10,7 @@ import gov.nasa.worldwind.geom.*;
 import gov.nasa.worldwind.render.DrawContext;
 import gov.nasa.worldwind.terrain.*;
 
+import java.nio.FloatBuffer;
 import java.util.List;
 
 /**
@@ -158,6 +159,47 @@ public interface Globe extends WWObject, Extent
     double[] getElevations(Sector sector, List<? extends LatLon> latlons, double[] targetResolution,
         double[] elevations);
 
+    /**
+     * Indicates the elevations of a collection of locations specified as parallel arrays of latitudes and longitudes in
+     * degrees. Performs the same function as {@link #getElevations(gov.nasa.worldwind.geom.Sector, java.util.List,
+     * double, double[])} without requiring a {@link LatLon} per location.
+     *
+     * @param sector           the sector in question.
+     * @param latitudes        the latitudes of the locations, in degrees.
+     * @param longitudes       the longitudes of the locations, in degrees.
+     * @param targetResolution the desired horizontal resolution, in radians, of the raster or other elevation sample
+     *                         from which elevations are drawn.
+     * @param elevations       an array in which to place the returned elevations. The array must be pre-allocated and
+     *                         contain at least as many elements as the latitudes array.
+     *
+     * @return the resolution achieved, in radians, or {@link Double#MAX_VALUE} if individual elevations cannot be
+     *         determined for all of the locations. Returns zero if an elevation model is not available.
+     *
+     * @throws IllegalArgumentException if the sector or any of the arrays is null, or if the longitudes or elevations
+     *                                  array is smaller than the latitudes array.
+     * @see ElevationModel#getElevations(gov.nasa.worldwind.geom.Sector, double[], double[], double, double[])
+     */
+    double getElevations(Sector sector, double[] latitudes, double[] longitudes, double targetResolution,
+        double[] elevations);
+
+    /**
+     * Indicates the elevations of a collection of locations specified as parallel arrays of latitudes and longitudes in
+     * degrees, with a target resolution per elevation model of a {@link CompoundElevationModel}.
+     *
+     * @param sector           the sector in question.
+     * @param latitudes        the latitudes of the locations, in degrees.
+     * @param longitudes       the longitudes of the locations, in degrees.
+     * @param targetResolution the desired horizontal resolutions, in radians.
+     * @param elevations       an array in which to place the returned elevations.
+     *
+     * @return the resolutions achieved, in radians. Returns zero if an elevation model is not available.
+     *
+     * @throws IllegalArgumentException if the sector or any of the arrays is null, or if the longitudes or elevations
+     *                                  array is smaller than the latitudes array.
+     */
+    double[] getElevations(Sector sector, double[] latitudes, double[] longitudes, double[] targetResolution,
+        double[] elevations);
+
     /**
      * Indicates the maximum elevation on this globe, in meters.
      *
@@ -266,6 +308,33 @@ public interface Globe extends WWObject, Extent
      */
     void computePointsFromPositions(Sector sector, int numLat, int numLon, double[] metersElevation, Vec4[] out);
 
+    /**
+     * Computes a grid of cartesian points corresponding to a grid of geographic positions, and writes them to a buffer
+     * relative to a reference point.
+     * <p/>
+     * This method provides an interface for generating the vertices of a terrain tile without creating an object per
+     * vertex. The positions are specified in degrees in row major order. Each row must have a constant latitude and
+     * each column a constant longitude, which allows the trigonometric functions to be evaluated once per row and once
+     * per column rather than once per position.
+     *
+     * @param latitudes       The latitude of each position, in degrees. Must have a length of at least <code>numLon x
+     *                        numLat</code>.
+     * @param longitudes      The longitude of each position, in degrees. Must have a length of at least <code>numLon
+     *                        x numLat</code>.
+     * @param numLat          The number of rows in the grid.
+     * @param numLon          The number of columns in the grid.
+     * @param metersElevation The elevation of each position. Must have a length of at least <code>numLon x
+     *                        numLat</code>.
+     * @param referencePoint  The point to subtract from each computed point.
+     * @param out             A buffer to hold the x, y and z coordinates of the computed points, which are written
+     *                        beginning at the buffer's current position. Must have at least <code>3 x numLon x
+     *                        numLat</code> elements remaining.
+     *
+     * @throws IllegalArgumentException If any argument is null, or if numLat or numLon are less than or equal to zero.
+     */
+    void computePointsFromPositions(double[] latitudes, double[] longitudes, int numLat, int numLon,
+        double[] metersElevation, Vec4 referencePoint, FloatBuffer out);
+
     /**
      * Computes a vector perpendicular to the surface of this globe in cartesian coordinates.
      *
@@ -8,6 +8,7 @@ package gov.nasa.worldwind.layers;
 import gov.nasa.worldwind.*;
 import gov.nasa.worldwind.avlist.*;
 import gov.nasa.worldwind.exception.*;
+import gov.nasa.worldwind.formats.wvt.WaveletCodec;
 import gov.nasa.worldwind.ogc.*;
 import gov.nasa.worldwind.ogc.wms.*;
 import gov.nasa.worldwind.util.*;
@@ -39,7 +40,8 @@ public class BasicLayerFactory extends BasicFactory
      * element of the XML configuration file to the appropriate base tiled image layer type. Service types recognized
      * are: <ul> <li>"WMS" for layers that draw their data from a WMS web service.</li> <li>"WWTileService" for layers
      * that draw their data from a World Wind tile service.</li> <li>"Offline" for layers that draw their data only from
-     * the local cache.</li> </ul>
+     * the local cache.</li> </ul> "WWTileService" and "Offline" layers whose <code>FormatSuffix</code> is
+     * <code>.wvt</code> are created as {@link WaveletTiledImageLayer}s.
      *
      * @param configSource the configuration source. See above for supported types.
      *
@@ -334,7 +336,12 @@ public class BasicLayerFactory extends BasicFactory
 
         String serviceName = WWXML.getText(domElement, "Service/@serviceName");
 
-        if ("Offline".equals(serviceName))
+        if (WaveletCodec.WVT_EXT.equals(WWXML.getText(domElement, "FormatSuffix"))
+            && ("Offline".equals(serviceName) || "WWTileService".equals(serviceName)))
+        {
+            layer = new WaveletTiledImageLayer(domElement, params);
+        }
+        else if ("Offline".equals(serviceName))
         {
             layer = new BasicTiledImageLayer(domElement, params);
         }
@@ -8,7 +8,7 @@ package gov.nasa.worldwind.layers;
 import com.jogamp.opengl.util.texture.TextureData;
 import gov.nasa.worldwind.*;
 import gov.nasa.worldwind.avlist.*;
-import gov.nasa.worldwind.cache.FileStore;
+import gov.nasa.worldwind.cache.*;
 import gov.nasa.worldwind.event.BulkRetrievalListener;
 import gov.nasa.worldwind.exception.WWRuntimeException;
 import gov.nasa.worldwind.formats.dds.*;
@@ -30,9 +30,14 @@ import java.util.Map;
  * @author tag
  * @version $Id: BasicTiledImageLayer.java 2684 2015-01-26 18:31:22Z tgaskins $
  */
-public class BasicTiledImageLayer extends TiledImageLayer implements BulkRetrievable
+public class BasicTiledImageLayer extends TiledImageLayer implements BulkRetrievable, TilePrefetcher.Prefetchable
 {
     protected final Object fileLock = new Object();
+    protected RetrievalScheduler retrievalScheduler =
+        Configuration.getBooleanValue(AVKey.RETRIEVAL_SCHEDULER_ENABLED, false)
+            ? RetrievalScheduler.getDefaultScheduler() : null;
+    /** The keys of the tiles assembled for drawing in the most recent frame this layer drew. */
+    protected final java.util.List<TileKey> drawnTileKeys = new java.util.ArrayList<TileKey>();
 
     // Layer resource properties.
     protected static final int RESOURCE_ID_OGC_CAPABILITIES = 1;
@@ -203,6 +208,28 @@ public class BasicTiledImageLayer extends TiledImageLayer implements BulkRetriev
             params.setValue(AVKey.NUM_EMPTY_LEVELS, 0);
     }
 
+    /**
+     * Returns the scheduler ordering this layer's tile retrievals by their current distance from the view. By default
+     * this is the shared scheduler if the configuration parameter {@link AVKey#RETRIEVAL_SCHEDULER_ENABLED} is true,
+     * otherwise null.
+     *
+     * @return the retrieval scheduler, or null if retrievals are passed directly to the retrieval service.
+     */
+    public RetrievalScheduler getRetrievalScheduler()
+    {
+        return this.retrievalScheduler;
+    }
+
+    /**
+     * Specifies the scheduler ordering this layer's tile retrievals by their current distance from the view.
+     *
+     * @param retrievalScheduler the retrieval scheduler, or null to pass retrievals directly to the retrieval service.
+     */
+    public void setRetrievalScheduler(RetrievalScheduler retrievalScheduler)
+    {
+        this.retrievalScheduler = retrievalScheduler;
+    }
+
     protected void forceTextureLoad(TextureTile tile)
     {
         final URL textureURL = this.getDataFileStore().findFile(tile.getPath(), true);
@@ -220,16 +247,84 @@ public class BasicTiledImageLayer extends TiledImageLayer implements BulkRetriev
         if (referencePoint != null)
             tile.setPriority(centroid.distanceTo3(referencePoint));
 
+        // Keep the rank of a retrieval already scheduled current, whether or not the request task below runs.
+        RetrievalScheduler scheduler = this.getRetrievalScheduler();
+        if (scheduler != null && scheduler.touch(tile.getTileKey(), tile.getPriority()))
+            return;
+
         RequestTask task = this.createRequestTask(tile);
         this.getRequestQ().add(task);
     }
 
+    /**
+     * Queues a tile to be loaded with the tiles this layer requests for the next frame, unless the tile is already in
+     * memory or known to be absent.
+     *
+     * @param dc       the current draw context.
+     * @param tileKey  the tile's key.
+     * @param priority the priority of the load, as a distance from the view in meters. Lower values load first.
+     *
+     * @return the uncompressed size of the tile's texture, in bytes, or zero if the tile was not queued.
+     *
+     * @throws IllegalArgumentException if the tile key is null.
+     */
+    public long prefetchTile(DrawContext dc, TileKey tileKey, double priority)
+    {
+        if (tileKey == null)
+        {
+            String message = Logging.getMessage("nullValue.TileKeyIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        if (TextureTile.getMemoryCache().getObject(tileKey) != null)
+            return 0;
+
+        if (dc != null && dc.getTextureCache() != null && dc.getTextureCache().getTexture(tileKey) != null)
+            return 0;
+
+        if (this.getLevels().isResourceAbsent(tileKey))
+            return 0;
+
+        Level level = this.getLevels().getLevel(tileKey.getLevelNumber());
+        TextureTile tile = new TextureTile(this.getLevels().computeSectorForKey(tileKey), level, tileKey.getRow(),
+            tileKey.getColumn());
+        tile.setPriority(priority);
+        this.getRequestQ().add(this.createRequestTask(tile));
+
+        return 4L * level.getTileWidth() * level.getTileHeight();
+    }
+
+    public void getDrawnTileKeys(DrawContext dc, java.util.Collection<TileKey> keys)
+    {
+        if (keys == null)
+        {
+            String message = Logging.getMessage("nullValue.CollectionIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        keys.addAll(this.drawnTileKeys);
+    }
+
+    @Override
+    protected void assembleTiles(DrawContext dc)
+    {
+        super.assembleTiles(dc);
+
+        this.drawnTileKeys.clear();
+        for (TextureTile tile : this.currentTiles)
+        {
+            this.drawnTileKeys.add(tile.getTileKey());
+        }
+    }
+
     protected RequestTask createRequestTask(TextureTile tile)
     {
         return new RequestTask(tile, this);
     }
 
-    protected static class RequestTask implements Runnable, Comparable<RequestTask>
+    protected static class RequestTask implements PrioritizedTask, Comparable<RequestTask>
     {
         protected final BasicTiledImageLayer layer;
         protected final TextureTile tile;
@@ -240,6 +335,18 @@ public class BasicTiledImageLayer extends TiledImageLayer implements BulkRetriev
             this.tile = tile;
         }
 
+        /**
+         * Returns the task's priority, computed from the tile's level and its distance from the view when it was
+         * requested by {@link PriorityTaskService#computeTilePriority(int, double)}, so that the task is ordered with
+         * the tile loads of other layers and of elevation models.
+         *
+         * @return the task's priority.
+         */
+        public double getPriority()
+        {
+            return PriorityTaskService.computeTilePriority(this.tile.getLevelNumber(), this.tile.getPriority());
+        }
+
         public void run()
         {
             if (Thread.currentThread().isInterrupted())
@@ -546,8 +653,16 @@ public class BasicTiledImageLayer extends TiledImageLayer implements BulkRetriev
             return;
         }
 
-        if (!WorldWind.getRetrievalService().isAvailable())
+        RetrievalScheduler scheduler = this.getRetrievalScheduler();
+        if (scheduler != null)
+        {
+            if (scheduler.touch(tile.getTileKey(), tile.getPriority()))
+                return;
+        }
+        else if (!WorldWind.getRetrievalService().isAvailable())
+        {
             return;
+        }
 
         java.net.URL url;
         try
@@ -593,7 +708,23 @@ public class BasicTiledImageLayer extends TiledImageLayer implements BulkRetriev
         if (srl != null && srl > 0)
             retriever.setStaleRequestLimit(srl);
 
-        WorldWind.getRetrievalService().runRetriever(retriever, tile.getPriority());
+        this.configureRetriever(retriever, postProcessor);
+
+        if (scheduler != null)
+            scheduler.request(tile.getTileKey(), tile.getPriority(), retriever);
+        else
+            WorldWind.getRetrievalService().runRetriever(retriever, tile.getPriority());
+    }
+
+    /**
+     * Configures a retriever created to download a tile, before the retriever is run. The default implementation does
+     * nothing. Subclasses can override it to set properties of the request, such as the byte range to retrieve.
+     *
+     * @param retriever     the tile's retriever.
+     * @param postProcessor the post-processor the retriever runs.
+     */
+    protected void configureRetriever(Retriever retriever, DownloadPostProcessor postProcessor)
+    {
     }
 
     protected DownloadPostProcessor createDownloadPostProcessor(TextureTile tile)
@@ -652,6 +783,16 @@ public class BasicTiledImageLayer extends TiledImageLayer implements BulkRetriev
 
             if (buffer != null)
             {
+                // Pack the tile into the file store's segments if it uses them. Hold the file lock so that a reader
+                // that found the individual file finishes reading it before it is removed.
+                if (this.getFileStore() instanceof SegmentFileStore)
+                {
+                    synchronized (this.getFileLock())
+                    {
+                        ((SegmentFileStore) this.getFileStore()).commitFile(this.tile.getPath());
+                    }
+                }
+
                 // We've successfully cached data. Check if there's a configuration file for this layer, create one
                 // if there's not.
                 this.layer.writeConfigurationFile(this.getFileStore());
@@ -0,0 +1,585 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+package gov.nasa.worldwind.layers;
+
+import com.jogamp.opengl.util.texture.TextureData;
+import com.jogamp.opengl.util.texture.awt.AWTTextureIO;
+import gov.nasa.worldwind.Configuration;
+import gov.nasa.worldwind.avlist.*;
+import gov.nasa.worldwind.cache.FileStore;
+import gov.nasa.worldwind.formats.dds.*;
+import gov.nasa.worldwind.formats.wvt.WaveletCodec;
+import gov.nasa.worldwind.retrieve.*;
+import gov.nasa.worldwind.util.*;
+import org.w3c.dom.*;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.*;
+import java.net.*;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.List;
+
+/**
+ * A tiled image layer whose tiles are progressive wavelet encodings, written by {@link
+ * WaveletCodec#saveProgressive(WaveletCodec)}, and which stores only some of its levels. A stored level holds one
+ * encoding per tile. The levels between stored levels are not stored at all: a tile of such a level is reconstructed
+ * from the tiles of the next stored level that cover it, each at the fraction of its resolution that the coarser tile
+ * needs. Since a progressive encoding holds its coarse coefficients first, that fraction is a prefix of the file, and
+ * the layer retrieves it with an HTTP byte range request rather than retrieving the whole tile.
+ * <p/>
+ * The file store holds the prefix retrieved for each stored tile. When a finer level later needs more of a tile, the
+ * layer requests only the remaining bytes and extends the stored prefix, so no part of a tile is transferred twice.
+ * Stored levels are those whose distance from the last level is a multiple of the level interval, {@link
+ * AVKey#WAVELET_LEVEL_INTERVAL}. With the default interval of two, half the levels are stored, and a tile of an
+ * intermediate level is assembled from the first quarter of each of four stored tiles.
+ * <p/>
+ * Tiles must be square and their size a power of two. Servers that ignore byte ranges return whole tiles, which the
+ * layer stores and uses as it would a prefix.
+ *
+ * @version $Id$
+ */
+public class WaveletTiledImageLayer extends BasicTiledImageLayer
+{
+    /** The default number of levels from one stored level to the next. */
+    protected static final int DEFAULT_LEVEL_INTERVAL = 2;
+
+    protected int levelInterval = DEFAULT_LEVEL_INTERVAL;
+
+    public WaveletTiledImageLayer(LevelSet levelSet)
+    {
+        super(levelSet);
+
+        this.validateTileSize();
+    }
+
+    public WaveletTiledImageLayer(AVList params)
+    {
+        super(params);
+
+        this.validateTileSize();
+
+        Integer i = AVListImpl.getIntegerValue(params, AVKey.WAVELET_LEVEL_INTERVAL);
+        if (i != null)
+            this.setLevelInterval(i);
+    }
+
+    public WaveletTiledImageLayer(Document dom, AVList params)
+    {
+        this(dom.getDocumentElement(), params);
+    }
+
+    public WaveletTiledImageLayer(Element domElement, AVList params)
+    {
+        this(getParamsFromDocument(domElement, params));
+    }
+
+    protected static AVList getParamsFromDocument(Element domElement, AVList params)
+    {
+        if (domElement == null)
+        {
+            String message = Logging.getMessage("nullValue.DocumentIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        if (params == null)
+            params = new AVListImpl();
+
+        getTiledImageLayerConfigParams(domElement, params);
+        WWXML.checkAndSetIntegerParam(domElement, params, AVKey.WAVELET_LEVEL_INTERVAL, "WaveletLevelInterval",
+            WWXML.makeXPath());
+
+        if (params.getValue(AVKey.FORMAT_SUFFIX) == null)
+            params.setValue(AVKey.FORMAT_SUFFIX, WaveletCodec.WVT_EXT);
+
+        setFallbacks(params);
+
+        return params;
+    }
+
+    protected void validateTileSize()
+    {
+        Level level = this.getLevels().getFirstLevel();
+        if (level.getTileWidth() != level.getTileHeight() || !WWMath.isPowerOfTwo(level.getTileWidth()))
+        {
+            String message = Logging.getMessage("layers.WaveletTiledImageLayer.InvalidTileSize", level.getTileWidth(),
+                level.getTileHeight());
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+    }
+
+    /**
+     * Returns the number of levels from one stored level to the next.
+     *
+     * @return the level interval.
+     */
+    public int getLevelInterval()
+    {
+        return this.levelInterval;
+    }
+
+    /**
+     * Specifies the number of levels from one stored level to the next. An interval of one stores every level. A tile
+     * of a level <code>n</code> levels above the next stored level is assembled from <code>4<sup>n</sup></code> stored
+     * tiles, so the interval is limited such that each contributes at least one pixel.
+     *
+     * @param levelInterval the level interval.
+     *
+     * @throws IllegalArgumentException if the interval is less than one, or greater than one plus the base two
+     *                                  logarithm of the tile size.
+     */
+    public void setLevelInterval(int levelInterval)
+    {
+        int tileWidth = this.getLevels().getFirstLevel().getTileWidth();
+        if (levelInterval < 1 || (tileWidth >> (levelInterval - 1)) < 1)
+        {
+            String message = Logging.getMessage("generic.ArgumentOutOfRange", levelInterval);
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        this.levelInterval = levelInterval;
+    }
+
+    /**
+     * Indicates whether a level's tiles are stored, rather than reconstructed from the tiles of a finer level.
+     *
+     * @param levelNumber the level's number.
+     *
+     * @return true if the level's tiles are stored, otherwise false.
+     */
+    public boolean isStoredLevel(int levelNumber)
+    {
+        return (this.getLevels().getLastLevel().getLevelNumber() - levelNumber) % this.levelInterval == 0;
+    }
+
+    /**
+     * Returns the number of the level whose tiles a level's tiles are reconstructed from. This is the level itself if
+     * it's stored, otherwise the next finer stored level.
+     *
+     * @param levelNumber the level's number.
+     *
+     * @return the number of the stored level.
+     */
+    public int getStoredLevelNumber(int levelNumber)
+    {
+        int lastLevelNumber = this.getLevels().getLastLevel().getLevelNumber();
+        return levelNumber + (lastLevelNumber - levelNumber) % this.levelInterval;
+    }
+
+    /**
+     * Returns the resolution at which each stored tile covering a tile is reconstructed to assemble the tile.
+     *
+     * @param tile the tile.
+     *
+     * @return the resolution of the stored tiles' contribution, in pixels along each side.
+     */
+    public int getStoredTileResolution(TextureTile tile)
+    {
+        int levelDelta = this.getStoredLevelNumber(tile.getLevelNumber()) - tile.getLevelNumber();
+        return tile.getLevel().getTileWidth() >> levelDelta;
+    }
+
+    /**
+     * Returns the stored tiles that cover a tile, in row major order from the tile's south-west corner.
+     *
+     * @param tile the tile.
+     *
+     * @return the stored tiles. This is the tile itself if its level is stored.
+     */
+    public List<TextureTile> getStoredTiles(TextureTile tile)
+    {
+        int storedLevelNumber = this.getStoredLevelNumber(tile.getLevelNumber());
+        if (storedLevelNumber == tile.getLevelNumber())
+            return Arrays.asList(tile);
+
+        Level level = this.getLevels().getLevel(storedLevelNumber);
+        int count = 1 << (storedLevelNumber - tile.getLevelNumber());
+        int firstRow = tile.getRow() * count;
+        int firstColumn = tile.getColumn() * count;
+
+        List<TextureTile> tiles = new ArrayList<TextureTile>(count * count);
+        for (int row = firstRow; row < firstRow + count; row++)
+        {
+            for (int column = firstColumn; column < firstColumn + count; column++)
+            {
+                TileKey key = new TileKey(storedLevelNumber, row, column, level.getCacheName());
+                TextureTile storedTile = new TextureTile(this.getLevels().computeSectorForKey(key), level, row,
+                    column);
+                storedTile.setPriority(tile.getPriority());
+                tiles.add(storedTile);
+            }
+        }
+
+        return tiles;
+    }
+
+    /**
+     * Indicates whether an encoding holds enough of its coefficients to reconstruct the image at a resolution. An
+     * encoding whose image is smaller than the resolution is sufficient if it's complete.
+     *
+     * @param encoding   the encoding or a prefix of it. May be null.
+     * @param resolution the resolution.
+     *
+     * @return true if the encoding can be reconstructed at the resolution, otherwise false.
+     */
+    protected static boolean isEncodingSufficient(ByteBuffer encoding, int resolution)
+    {
+        int available = encoding != null ? WaveletCodec.getProgressiveResolution(encoding) : 0;
+        if (available == 0)
+            return false;
+
+        return available >= Math.min(resolution, getEncodedResolution(encoding));
+    }
+
+    /**
+     * Returns the resolution of the image an encoding was made from, which is the highest it can be reconstructed at.
+     *
+     * @param encoding the encoding or a prefix of it holding at least its header.
+     *
+     * @return the resolution of the encoded image.
+     */
+    protected static int getEncodedResolution(ByteBuffer encoding)
+    {
+        return Math.min(encoding.getInt(encoding.position()), encoding.getInt(encoding.position() + 4));
+    }
+
+    @Override
+    protected void forceTextureLoad(TextureTile tile)
+    {
+        this.loadStoredTiles(tile, false);
+    }
+
+    @Override
+    protected RequestTask createRequestTask(TextureTile tile)
+    {
+        return new WaveletRequestTask(tile, this);
+    }
+
+    protected static class WaveletRequestTask extends RequestTask
+    {
+        protected WaveletRequestTask(TextureTile tile, WaveletTiledImageLayer layer)
+        {
+            super(tile, layer);
+        }
+
+        public void run()
+        {
+            if (Thread.currentThread().isInterrupted())
+                return; // the task was cancelled because it's a duplicate or for some other reason
+
+            if (((WaveletTiledImageLayer) this.layer).loadStoredTiles(this.tile, true))
+                this.layer.firePropertyChange(AVKey.LAYER, null, this);
+        }
+    }
+
+    /**
+     * Loads a tile's texture from the stored tiles that cover it. Stored tiles that are not in the file store, or of
+     * which the file store holds too little, are optionally retrieved, and the tile is loaded once all have arrived.
+     *
+     * @param tile     the tile to load.
+     * @param retrieve true to retrieve stored tiles that are missing, false to load the tile only if all are present.
+     *
+     * @return true if the tile's texture was loaded, otherwise false.
+     */
+    protected boolean loadStoredTiles(TextureTile tile, boolean retrieve)
+    {
+        int resolution = this.getStoredTileResolution(tile);
+        List<TextureTile> storedTiles = this.getStoredTiles(tile);
+        List<ByteBuffer> encodings = new ArrayList<ByteBuffer>(storedTiles.size());
+
+        boolean complete = true;
+        boolean empty = true;
+        for (TextureTile storedTile : storedTiles)
+        {
+            if (this.getLevels().isResourceAbsent(storedTile))
+            {
+                encodings.add(null);
+                continue;
+            }
+
+            ByteBuffer encoding = this.readStoredTile(storedTile);
+            if (isEncodingSufficient(encoding, resolution))
+            {
+                encodings.add(encoding);
+                empty = false;
+                continue;
+            }
+
+            complete = false;
+            if (retrieve)
+                this.retrieveStoredTile(storedTile, encoding, resolution);
+        }
+
+        if (!complete)
+            return false;
+
+        if (empty)
+        {
+            // None of the stored tiles exist, so neither does this one.
+            this.getLevels().markResourceAbsent(tile);
+            return false;
+        }
+
+        BufferedImage image;
+        try
+        {
+            image = this.composeImage(tile, encodings, resolution);
+        }
+        catch (Exception e)
+        {
+            String message = Logging.getMessage("layers.WaveletTiledImageLayer.ExceptionComposingTile", tile);
+            Logging.logger().log(java.util.logging.Level.SEVERE, message, e);
+            return false;
+        }
+
+        if (!this.loadTexture(tile, image))
+            return false;
+
+        this.getLevels().unmarkResourceAbsent(tile);
+        return true;
+    }
+
+    /**
+     * Reads the encoding, or the prefix of it, that the file store holds for a stored tile.
+     *
+     * @param storedTile the stored tile.
+     *
+     * @return the encoding, or null if the file store does not hold the tile or its file has expired.
+     */
+    protected ByteBuffer readStoredTile(TextureTile storedTile)
+    {
+        FileStore fileStore = this.getDataFileStore();
+        URL url = fileStore.findFile(storedTile.getPath(), false);
+        if (url == null || this.isTextureFileExpired(storedTile, url, fileStore))
+            return null;
+
+        try
+        {
+            synchronized (this.fileLock)
+            {
+                return WWIO.readURLContentToBuffer(url);
+            }
+        }
+        catch (IOException e)
+        {
+            String message = Logging.getMessage("layers.TextureLayer.ExceptionAttemptingToReadTextureFile", url);
+            Logging.logger().log(java.util.logging.Level.SEVERE, message, e);
+            return null;
+        }
+    }
+
+    /**
+     * Retrieves the part of a stored tile that the file store lacks to reconstruct it at a resolution.
+     *
+     * @param storedTile the stored tile.
+     * @param prefix     the part of the tile's encoding that the file store holds, or null if it holds none.
+     * @param resolution the resolution the tile is needed at.
+     */
+    protected void retrieveStoredTile(TextureTile storedTile, ByteBuffer prefix, int resolution)
+    {
+        // The band count is known once the header has been retrieved. Until then assume color, and alpha if the layer
+        // uses transparent textures. If the guess is low the next request retrieves the rest.
+        int numBands = prefix != null && prefix.remaining() >= WaveletCodec.HEADER_LENGTH
+            ? prefix.getInt(prefix.position() + 12)
+            : this.isUseTransparentTextures() ? 4 : 3;
+
+        long first = prefix != null ? prefix.remaining() : 0;
+        long last = WaveletCodec.getProgressiveLength(resolution, numBands) - 1;
+
+        this.retrieveTexture(storedTile, new WaveletDownloadPostProcessor(storedTile, this, prefix, first,
+            last >= first ? last : -1));
+    }
+
+    @Override
+    protected void configureRetriever(Retriever retriever, DownloadPostProcessor postProcessor)
+    {
+        if (retriever instanceof HTTPRetriever && postProcessor instanceof WaveletDownloadPostProcessor)
+        {
+            WaveletDownloadPostProcessor wpp = (WaveletDownloadPostProcessor) postProcessor;
+            ((HTTPRetriever) retriever).setByteRange(wpp.first, wpp.last);
+        }
+    }
+
+    /**
+     * Assembles a tile's image from the encodings of the stored tiles covering it. Stored tiles that do not exist
+     * leave their part of the image transparent.
+     *
+     * @param tile       the tile.
+     * @param encodings  the stored tiles' encodings, in the order of {@link #getStoredTiles(TextureTile)}. Null
+     *                   elements indicate stored tiles that do not exist.
+     * @param resolution the resolution at which to reconstruct each stored tile.
+     *
+     * @return the tile's image.
+     *
+     * @throws IOException if an encoding cannot be read.
+     */
+    protected BufferedImage composeImage(TextureTile tile, List<ByteBuffer> encodings, int resolution)
+        throws IOException
+    {
+        if (encodings.size() == 1 && encodings.get(0) != null)
+            return this.reconstruct(encodings.get(0), resolution);
+
+        int size = tile.getLevel().getTileWidth();
+        int count = size / resolution;
+        BufferedImage image = new BufferedImage(size, size, BufferedImage.TYPE_4BYTE_ABGR);
+        Graphics2D g = image.createGraphics();
+        try
+        {
+            for (int i = 0; i < encodings.size(); i++)
+            {
+                if (encodings.get(i) == null)
+                    continue;
+
+                // Rows count northward from the tile's south edge, but the image's rows count southward.
+                int x = (i % count) * resolution;
+                int y = (count - 1 - i / count) * resolution;
+                g.drawImage(this.reconstruct(encodings.get(i), resolution), x, y, resolution, resolution, null);
+            }
+        }
+        finally
+        {
+            g.dispose();
+        }
+
+        return image;
+    }
+
+    protected BufferedImage reconstruct(ByteBuffer encoding, int resolution) throws IOException
+    {
+        int loadResolution = Math.min(resolution, getEncodedResolution(encoding));
+
+        return WaveletCodec.loadProgressive(encoding.duplicate(), loadResolution).reconstruct(loadResolution);
+    }
+
+    protected boolean loadTexture(TextureTile tile, BufferedImage image)
+    {
+        TextureData textureData;
+        try
+        {
+            textureData = this.createTextureData(image);
+        }
+        catch (Exception e)
+        {
+            String message = Logging.getMessage("layers.WaveletTiledImageLayer.ExceptionComposingTile", tile);
+            Logging.logger().log(java.util.logging.Level.SEVERE, message, e);
+            return false;
+        }
+
+        tile.setTextureData(textureData);
+        if (tile.getLevelNumber() != 0 || !this.isRetainLevelZeroTiles())
+            this.addTileToCache(tile);
+
+        return true;
+    }
+
+    protected TextureData createTextureData(BufferedImage image) throws IOException
+    {
+        if ("image/dds".equalsIgnoreCase(this.getTextureFormat()))
+        {
+            DXTCompressionAttributes attributes = DDSCompressor.getDefaultCompressionAttributes();
+            attributes.setBuildMipmaps(this.isUseMipMaps());
+            ByteBuffer buffer = new DDSCompressor().compressImage(image, attributes);
+
+            return OGLUtil.newTextureData(Configuration.getMaxCompatibleGLProfile(),
+                WWIO.getInputStreamFromByteBuffer(buffer), this.isUseMipMaps());
+        }
+
+        return AWTTextureIO.newTextureData(Configuration.getMaxCompatibleGLProfile(), image, this.isUseMipMaps());
+    }
+
+    /**
+     * Stores the part of a stored tile's encoding retrieved by a byte range request. The file store's copy of the
+     * tile is replaced by the prefix it held followed by the retrieved bytes, unless another retrieval has already
+     * stored more of the tile. Tiles are kept in individual files so that their prefixes can be extended.
+     */
+    protected static class WaveletDownloadPostProcessor extends DownloadPostProcessor
+    {
+        protected final ByteBuffer prefix;
+        protected final long first;
+        protected final long last;
+
+        public WaveletDownloadPostProcessor(TextureTile tile, WaveletTiledImageLayer layer, ByteBuffer prefix,
+            long first, long last)
+        {
+            super(tile, layer);
+
+            this.prefix = prefix;
+            this.first = first;
+            this.last = last;
+        }
+
+        @Override
+        protected ByteBuffer handleSuccessfulRetrieval()
+        {
+            ByteBuffer buffer;
+            try
+            {
+                buffer = this.handleContent();
+            }
+            catch (Exception e)
+            {
+                this.handleContentException(e);
+                return null;
+            }
+
+            if (buffer != null)
+            {
+                this.layer.writeConfigurationFile(this.getFileStore());
+                this.layer.firePropertyChange(AVKey.LAYER, null, this);
+            }
+
+            return buffer;
+        }
+
+        @Override
+        protected ByteBuffer handleContent() throws IOException
+        {
+            String contentType = this.getRetriever().getContentType();
+            if (this.isPrimaryContentType("text", contentType != null ? contentType.trim().toLowerCase() : null))
+                return this.handleTextContent();
+
+            ByteBuffer content = this.getRetriever().getBuffer();
+            if (content == null)
+                return null;
+
+            // A partial response holds the requested range. Any other response holds the whole tile.
+            boolean partial = this.getRetriever() instanceof HTTPRetriever
+                && ((HTTPRetriever) this.getRetriever()).getResponseCode() == HttpURLConnection.HTTP_PARTIAL;
+
+            ByteBuffer encoding = content;
+            if (partial && this.first > 0)
+            {
+                if (this.prefix == null || this.prefix.remaining() != this.first)
+                    return null;
+
+                encoding = ByteBuffer.allocate(this.prefix.remaining() + content.remaining());
+                encoding.put(this.prefix.duplicate());
+                encoding.put(content.duplicate());
+                encoding.flip();
+            }
+
+            File outFile = this.getOutputFile();
+            if (outFile == null)
+                return null;
+
+            synchronized (this.getFileLock())
+            {
+                // Another retrieval may have stored more of the tile since this one was requested.
+                if (outFile.exists() && outFile.length() >= encoding.remaining())
+                    return encoding;
+
+                if (!WWIO.saveBuffer(encoding, outFile))
+                    return null;
+            }
+
+            return encoding;
+        }
+    }
+}
@@ -153,13 +153,15 @@ public abstract class AbstractRetrievalPostProcessor implements RetrievalPostPro
      * Checks the retrieval's HTTP response code. Must only be called when the retriever is a subclass of {@link
      * gov.nasa.worldwind.retrieve.HTTPRetriever}.
      *
-     * @return true if the response code is {@link HttpURLConnection#HTTP_OK}, otherwise false.
+     * @return true if the response code is {@link HttpURLConnection#HTTP_OK}, or {@link
+     *         HttpURLConnection#HTTP_PARTIAL} in response to a request for a byte range, otherwise false.
      */
     protected boolean validateHTTPResponseCode()
     {
         HTTPRetriever htr = (HTTPRetriever) this.getRetriever();
 
-        return htr.getResponseCode() == HttpURLConnection.HTTP_OK;
+        return htr.getResponseCode() == HttpURLConnection.HTTP_OK
+            || (htr.getResponseCode() == HttpURLConnection.HTTP_PARTIAL && htr.getByteRange() != null);
     }
 
     /**
@@ -0,0 +1,1323 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+
+package gov.nasa.worldwind.retrieve;
+
+import gov.nasa.worldwind.*;
+import gov.nasa.worldwind.avlist.AVKey;
+import gov.nasa.worldwind.exception.WWRuntimeException;
+import gov.nasa.worldwind.util.*;
+
+import javax.net.ssl.SSLHandshakeException;
+import java.io.*;
+import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.logging.Level;
+
+/**
+ * A retrieval service that performs plain HTTP requests with non-blocking I/O, so that thousands of requests can be in
+ * progress without a thread for each. One selector thread sends every HTTP request and reads every response, keeping
+ * connections to each host alive and reusing them. A small pool of worker threads hands each complete response to its
+ * {@link HTTPRetriever}, which interprets the response and runs its post-processor exactly as when it opens its own
+ * connection. Retrievers for other protocols, for HTTPS, or that must go through a proxy run on the worker threads as
+ * they do in {@link BasicRetrievalService}.
+ * <p/>
+ * Pending retrievers are started in the order defined by {@link BasicRetrievalService}: by submission time and then by
+ * priority. Duplicate retrievers are rejected and retrievers pending longer than the stale request limit are
+ * cancelled. The number of retrievals in progress at once is limited by the configuration parameter {@link
+ * AVKey#RETRIEVAL_MAX_IN_FLIGHT}, and the number of connections to each host by {@link
+ * AVKey#HTTP_MAX_CONNECTIONS_PER_HOST}. The worker pool size is specified by {@link AVKey#RETRIEVAL_POOL_SIZE}.
+ * <p/>
+ * To use this service, set the configuration parameter {@link AVKey#RETRIEVAL_SERVICE_CLASS_NAME} to this class.
+ *
+ * @version $Id$
+ */
+public class AsyncRetrievalService extends WWObjectImpl implements RetrievalService, Thread.UncaughtExceptionHandler
+{
+    // These constants are last-ditch values in case Configuration lacks defaults
+    protected static final int DEFAULT_QUEUE_SIZE = 100;
+    protected static final int DEFAULT_POOL_SIZE = 5;
+    protected static final int DEFAULT_MAX_IN_FLIGHT = 1000;
+    protected static final long DEFAULT_STALE_REQUEST_LIMIT = 30000; // milliseconds
+    protected static final int DEFAULT_TIME_PRIORITY_GRANULARITY = 500; // milliseconds
+    /** How often the selector thread checks for timed out and cancelled requests, in milliseconds. */
+    protected static final long SELECT_INTERVAL = 100;
+    /** Host addresses are resolved again after this many milliseconds. */
+    protected static final long ADDRESS_LIFETIME = 60000;
+    protected static final int MAX_LINE_LENGTH = 16384;
+
+    protected static final int TASK_PENDING = 0;
+    protected static final int TASK_STARTED = 1;
+    protected static final int TASK_DONE = 2;
+
+    /** A retrieval, pending or in progress. */
+    protected class RetrievalTask extends FutureTask<Retriever> implements RetrievalFuture, Comparable<RetrievalTask>
+    {
+        protected final Retriever retriever;
+        protected final double priority; // retrieval secondary priority (primary priority is submit time)
+        protected final AtomicInteger state = new AtomicInteger(TASK_PENDING);
+
+        protected RetrievalTask(Retriever retriever, double priority)
+        {
+            super(retriever);
+            this.retriever = retriever;
+            this.priority = priority;
+        }
+
+        public Retriever getRetriever()
+        {
+            return this.retriever;
+        }
+
+        @Override
+        protected void done()
+        {
+            tasks.remove(this);
+            this.retriever.setEndTime(System.currentTimeMillis());
+
+            if (this.state.getAndSet(TASK_DONE) == TASK_STARTED)
+            {
+                inFlightCount.decrementAndGet();
+                selector.wakeup(); // another retrieval can start
+            }
+
+            logOutcome(this);
+        }
+
+        public int compareTo(RetrievalTask that)
+        {
+            if (this.priority > 0 && that.priority > 0) // only secondary priority used if either is negative
+            {
+                // Requests submitted within different time-granularity periods are ordered exclusive of their
+                // client-specified priority.
+                long now = System.currentTimeMillis();
+                long thisElapsedTime = now - this.retriever.getSubmitTime();
+                long thatElapsedTime = now - that.retriever.getSubmitTime();
+                if (((thisElapsedTime - thatElapsedTime) / DEFAULT_TIME_PRIORITY_GRANULARITY) != 0)
+                    return thisElapsedTime < thatElapsedTime ? -1 : 1;
+            }
+
+            // The client-specified priority is compared for requests submitted within the same granularity period.
+            return this.priority == that.priority ? 0 : this.priority < that.priority ? -1 : 1;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (this == o)
+                return true;
+            if (o == null || getClass() != o.getClass())
+                return false;
+
+            // Tasks are equal if their retrievers are equivalent
+            return this.retriever.equals(((RetrievalTask) o).retriever);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return this.retriever.getName().hashCode();
+        }
+    }
+
+    /** The connections and waiting requests of one host. Used only by the selector thread. */
+    protected class Host
+    {
+        protected final String name;
+        protected final int port;
+        protected InetAddress address;
+        protected long addressTime;
+        protected boolean resolving;
+        protected int numConnections;
+        protected final Deque<Exchange> waiting = new ArrayDeque<Exchange>();
+        protected final Deque<Connection> idle = new ArrayDeque<Connection>();
+
+        protected Host(String name, int port)
+        {
+            this.name = name;
+            this.port = port;
+        }
+
+        /** Starts waiting requests on idle or new connections, as far as the connection limit allows. */
+        protected void service()
+        {
+            while (!this.waiting.isEmpty())
+            {
+                Exchange exchange = this.waiting.peek();
+                if (exchange.task.isDone())
+                {
+                    this.waiting.poll();
+                    continue;
+                }
+
+                Connection connection = this.idle.poll();
+                if (connection != null)
+                {
+                    this.waiting.poll();
+                    connection.begin(exchange);
+                    continue;
+                }
+
+                if (this.numConnections >= maxConnectionsPerHost)
+                    break;
+
+                if (this.address == null || System.currentTimeMillis() - this.addressTime > ADDRESS_LIFETIME)
+                {
+                    this.resolve();
+                    break;
+                }
+
+                this.waiting.poll();
+                openConnection(this, exchange);
+            }
+        }
+
+        /** Resolves the host's address on a worker thread, because resolution blocks. */
+        protected void resolve()
+        {
+            if (this.resolving)
+                return;
+
+            this.resolving = true;
+            workers.execute(new Runnable()
+            {
+                public void run()
+                {
+                    InetAddress resolved = null;
+                    IOException exception = null;
+                    try
+                    {
+                        resolved = InetAddress.getByName(name);
+                    }
+                    catch (UnknownHostException e)
+                    {
+                        exception = e;
+                    }
+
+                    final InetAddress newAddress = resolved;
+                    final IOException resolveException = exception;
+                    runOnSelectorThread(new Runnable()
+                    {
+                        public void run()
+                        {
+                            resolved(newAddress, resolveException);
+                        }
+                    });
+                }
+            });
+        }
+
+        protected void resolved(InetAddress newAddress, IOException exception)
+        {
+            this.resolving = false;
+
+            if (newAddress != null)
+            {
+                this.address = newAddress;
+                this.addressTime = System.currentTimeMillis();
+                this.service();
+                return;
+            }
+
+            // Requests waiting for a connection can't be made.
+            while (!this.waiting.isEmpty())
+            {
+                Exchange exchange = this.waiting.poll();
+                completeExchange(exchange, new ResponseConnection(exchange.retriever.getUrl(), exception));
+            }
+        }
+    }
+
+    /** One request for a URL and its response. Used only by the selector thread. */
+    protected static class Exchange
+    {
+        protected final RetrievalTask task;
+        protected final HTTPRetriever retriever;
+        protected final Host host;
+        protected final long startTime = System.nanoTime();
+        protected boolean retried;
+
+        protected Exchange(RetrievalTask task, Host host)
+        {
+            this.task = task;
+            this.retriever = (HTTPRetriever) task.getRetriever();
+            this.host = host;
+        }
+    }
+
+    protected static final int READ_STATUS_LINE = 0;
+    protected static final int READ_HEADER = 1;
+    protected static final int READ_BODY = 2;
+    protected static final int READ_CHUNK_SIZE = 3;
+    protected static final int READ_CHUNK_DATA = 4;
+    protected static final int READ_CHUNK_END = 5;
+    protected static final int READ_TRAILER = 6;
+    protected static final int READ_UNTIL_CLOSE = 7;
+    protected static final int READ_DONE = 8;
+
+    /** A connection to a host, which sends requests and parses their responses. Used only by the selector thread. */
+    protected class Connection
+    {
+        protected final Host host;
+        protected final SocketChannel channel;
+        protected SelectionKey key;
+        protected Exchange exchange;
+        protected boolean reused;
+        protected boolean closed;
+        protected long deadline;
+        protected ByteBuffer request;
+        protected final ByteBuffer readBuffer = ByteBuffer.allocate(16384);
+        // Response state
+        protected int readState;
+        protected final StringBuilder line = new StringBuilder();
+        protected boolean receivedBytes;
+        protected String version;
+        protected int responseCode;
+        protected String responseMessage;
+        protected List<String[]> headers;
+        protected ByteBuffer body;
+        protected long remaining;
+        protected boolean chunked;
+
+        protected Connection(Host host, SocketChannel channel)
+        {
+            this.host = host;
+            this.channel = channel;
+        }
+
+        protected void begin(Exchange exchange)
+        {
+            this.exchange = exchange;
+            this.readState = READ_STATUS_LINE;
+            this.line.setLength(0);
+            this.receivedBytes = false;
+            this.headers = new ArrayList<String[]>();
+            this.body = null;
+            this.chunked = false;
+            this.request = makeRequest(exchange.retriever.getUrl(), exchange.retriever.getByteRange());
+            this.deadline = System.currentTimeMillis() + exchange.retriever.getReadTimeout();
+
+            try
+            {
+                if (this.channel.isConnected())
+                    this.write();
+                else
+                    this.deadline = System.currentTimeMillis() + exchange.retriever.getConnectTimeout();
+            }
+            catch (IOException e)
+            {
+                this.fail(e);
+            }
+        }
+
+        protected void handle()
+        {
+            try
+            {
+                if (this.key.isConnectable())
+                {
+                    if (!this.channel.finishConnect())
+                        return;
+                    this.deadline = System.currentTimeMillis() + this.exchange.retriever.getReadTimeout();
+                    this.write();
+                }
+                else if (this.key.isWritable())
+                {
+                    this.write();
+                }
+                else if (this.key.isReadable())
+                {
+                    this.read();
+                }
+            }
+            catch (IOException e)
+            {
+                this.fail(e);
+            }
+        }
+
+        protected void write() throws IOException
+        {
+            this.channel.write(this.request);
+            this.key.interestOps(this.request.hasRemaining() ? SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+        }
+
+        protected void read() throws IOException
+        {
+            while (true)
+            {
+                this.readBuffer.clear();
+                int count = this.channel.read(this.readBuffer);
+                if (count == 0)
+                    return;
+
+                if (this.exchange == null) // an idle connection was closed by the host, or sent data unasked
+                {
+                    this.close();
+                    return;
+                }
+
+                if (count < 0)
+                {
+                    this.endOfStream();
+                    return;
+                }
+
+                if (!this.receivedBytes)
+                {
+                    this.receivedBytes = true;
+                    firstByteNanos.addAndGet(System.nanoTime() - this.exchange.startTime);
+                    firstByteCount.incrementAndGet();
+                }
+
+                this.deadline = System.currentTimeMillis() + this.exchange.retriever.getReadTimeout();
+                this.readBuffer.flip();
+                this.parse(this.readBuffer);
+
+                if (this.readState == READ_DONE)
+                {
+                    this.finish(this.isKeepAlive());
+                    return;
+                }
+            }
+        }
+
+        protected void endOfStream() throws IOException
+        {
+            if (this.readState == READ_UNTIL_CLOSE)
+            {
+                this.finish(false);
+                return;
+            }
+
+            throw new EOFException(Logging.getMessage("AsyncRetrievalService.ConnectionClosed",
+                this.exchange.retriever.getUrl()));
+        }
+
+        protected void parse(ByteBuffer buffer) throws IOException
+        {
+            while (buffer.hasRemaining() && this.readState != READ_DONE)
+            {
+                switch (this.readState)
+                {
+                    case READ_BODY:
+                    case READ_CHUNK_DATA:
+                    {
+                        int count = (int) Math.min(this.remaining, buffer.remaining());
+                        this.appendBody(buffer, count);
+                        this.remaining -= count;
+                        if (this.remaining == 0)
+                            this.readState = this.readState == READ_BODY ? READ_DONE : READ_CHUNK_END;
+                        break;
+                    }
+                    case READ_UNTIL_CLOSE:
+                    {
+                        this.appendBody(buffer, buffer.remaining());
+                        break;
+                    }
+                    default:
+                    {
+                        String s = this.readLine(buffer);
+                        if (s != null)
+                            this.parseLine(s);
+                    }
+                }
+            }
+        }
+
+        protected void parseLine(String s) throws IOException
+        {
+            switch (this.readState)
+            {
+                case READ_STATUS_LINE:
+                {
+                    String[] parts = s.split(" ", 3);
+                    if (parts.length < 2 || !parts[0].startsWith("HTTP/"))
+                        throw this.invalidResponse();
+                    this.version = parts[0];
+                    this.responseCode = WWUtil.makeInteger(parts[1]) != null ? WWUtil.makeInteger(parts[1]) : -1;
+                    this.responseMessage = parts.length > 2 ? parts[2] : "";
+                    if (this.responseCode < 0)
+                        throw this.invalidResponse();
+                    this.readState = READ_HEADER;
+                    break;
+                }
+                case READ_HEADER:
+                {
+                    if (s.length() > 0)
+                    {
+                        int colon = s.indexOf(':');
+                        if (colon <= 0)
+                            throw this.invalidResponse();
+                        this.headers.add(new String[] {s.substring(0, colon).trim(), s.substring(colon + 1).trim()});
+                    }
+                    else
+                    {
+                        this.headersComplete();
+                    }
+                    break;
+                }
+                case READ_CHUNK_SIZE:
+                {
+                    int semicolon = s.indexOf(';');
+                    try
+                    {
+                        this.remaining = Long.parseLong((semicolon >= 0 ? s.substring(0, semicolon) : s).trim(), 16);
+                    }
+                    catch (NumberFormatException e)
+                    {
+                        throw this.invalidResponse();
+                    }
+                    this.readState = this.remaining > 0 ? READ_CHUNK_DATA : READ_TRAILER;
+                    break;
+                }
+                case READ_CHUNK_END:
+                {
+                    this.readState = READ_CHUNK_SIZE;
+                    break;
+                }
+                case READ_TRAILER:
+                {
+                    if (s.length() == 0)
+                        this.readState = READ_DONE;
+                    break;
+                }
+            }
+        }
+
+        protected void headersComplete() throws IOException
+        {
+            if (this.responseCode >= 100 && this.responseCode < 200) // informational, the response follows
+            {
+                this.headers.clear();
+                this.readState = READ_STATUS_LINE;
+                return;
+            }
+
+            if (this.responseCode == HttpURLConnection.HTTP_NO_CONTENT
+                || this.responseCode == HttpURLConnection.HTTP_NOT_MODIFIED)
+            {
+                this.readState = READ_DONE;
+                return;
+            }
+
+            String transferEncoding = this.getHeader("Transfer-Encoding");
+            String contentLength = this.getHeader("Content-Length");
+            if (transferEncoding != null && transferEncoding.toLowerCase().contains("chunked"))
+            {
+                this.chunked = true;
+                this.readState = READ_CHUNK_SIZE;
+            }
+            else if (contentLength != null)
+            {
+                Long length = WWUtil.makeLong(contentLength);
+                if (length == null || length < 0 || length > Integer.MAX_VALUE)
+                    throw this.invalidResponse();
+                this.remaining = length;
+                this.body = ByteBuffer.allocate(length.intValue());
+                this.readState = length > 0 ? READ_BODY : READ_DONE;
+            }
+            else
+            {
+                this.readState = READ_UNTIL_CLOSE;
+            }
+        }
+
+        protected String readLine(ByteBuffer buffer) throws IOException
+        {
+            while (buffer.hasRemaining())
+            {
+                char c = (char) (buffer.get() & 0xff);
+                if (c == '\n')
+                {
+                    int length = this.line.length();
+                    if (length > 0 && this.line.charAt(length - 1) == '\r')
+                        this.line.setLength(length - 1);
+
+                    String s = this.line.toString();
+                    this.line.setLength(0);
+                    return s;
+                }
+
+                if (this.line.length() >= MAX_LINE_LENGTH)
+                    throw this.invalidResponse();
+                this.line.append(c);
+            }
+
+            return null;
+        }
+
+        protected void appendBody(ByteBuffer buffer, int count)
+        {
+            if (this.body == null)
+                this.body = ByteBuffer.allocate(Math.max(8192, count));
+
+            if (this.body.remaining() < count)
+            {
+                ByteBuffer biggerBody = ByteBuffer.allocate(Math.max(2 * this.body.capacity(),
+                    this.body.position() + count));
+                this.body.flip();
+                biggerBody.put(this.body);
+                this.body = biggerBody;
+            }
+
+            ByteBuffer slice = buffer.duplicate();
+            slice.limit(slice.position() + count);
+            this.body.put(slice);
+            buffer.position(buffer.position() + count);
+        }
+
+        protected String getHeader(String name)
+        {
+            String value = null;
+            for (String[] header : this.headers)
+            {
+                if (header[0].equalsIgnoreCase(name))
+                    value = header[1];
+            }
+
+            return value;
+        }
+
+        protected boolean isKeepAlive()
+        {
+            String connection = this.getHeader("Connection");
+            return "HTTP/1.1".equals(this.version) && !"close".equalsIgnoreCase(connection);
+        }
+
+        protected IOException invalidResponse()
+        {
+            return new IOException(Logging.getMessage("AsyncRetrievalService.InvalidResponse",
+                this.exchange.retriever.getUrl()));
+        }
+
+        protected void finish(boolean keepAlive)
+        {
+            Exchange completed = this.exchange;
+            this.exchange = null;
+
+            ByteBuffer content = this.body != null ? (ByteBuffer) this.body.flip() : ByteBuffer.allocate(0);
+            if (this.chunked)
+            {
+                // The retriever sees the content as though it had been sent whole.
+                Iterator<String[]> iter = this.headers.iterator();
+                while (iter.hasNext())
+                {
+                    if (iter.next()[0].equalsIgnoreCase("Transfer-Encoding"))
+                        iter.remove();
+                }
+                this.headers.add(new String[] {"Content-Length", Integer.toString(content.remaining())});
+            }
+
+            ResponseConnection response = new ResponseConnection(completed.retriever.getUrl(), this.responseCode,
+                this.responseMessage, this.headers, content);
+
+            if (keepAlive)
+            {
+                this.reused = true;
+                this.key.interestOps(SelectionKey.OP_READ); // notice when the host closes the idle connection
+                this.host.idle.add(this);
+            }
+            else
+            {
+                this.close();
+            }
+
+            completeExchange(completed, response);
+            this.host.service();
+        }
+
+        protected void fail(IOException exception)
+        {
+            Exchange failed = this.exchange;
+            this.exchange = null;
+            this.close();
+
+            if (failed != null)
+            {
+                // A reused connection may have been closed by the host just as the request was sent. Try once more on
+                // a new connection.
+                if (this.reused && !this.receivedBytes && !failed.retried)
+                {
+                    failed.retried = true;
+                    this.host.waiting.addFirst(failed);
+                }
+                else
+                {
+                    completeExchange(failed, new ResponseConnection(failed.retriever.getUrl(), exception));
+                }
+            }
+
+            this.host.service();
+        }
+
+        protected void close()
+        {
+            if (this.closed)
+                return;
+
+            this.closed = true;
+            this.host.numConnections--;
+            this.host.idle.remove(this);
+            connections.remove(this);
+            if (this.key != null)
+                this.key.cancel();
+            WWIO.closeStream(this.channel, this.host.name);
+        }
+    }
+
+    /** A connection holding a response already received, which a {@link HTTPRetriever} reads. */
+    protected static class ResponseConnection extends HttpURLConnection
+    {
+        protected final List<String[]> headers;
+        protected final ByteBuffer content;
+        protected final IOException exception;
+
+        protected ResponseConnection(URL url, int responseCode, String responseMessage, List<String[]> headers,
+            ByteBuffer content)
+        {
+            super(url);
+            this.responseCode = responseCode;
+            this.responseMessage = responseMessage;
+            this.headers = headers;
+            this.content = content;
+            this.exception = null;
+            this.connected = true;
+        }
+
+        protected ResponseConnection(URL url, IOException exception)
+        {
+            super(url);
+            this.headers = Collections.emptyList();
+            this.content = null;
+            this.exception = exception;
+        }
+
+        public void connect() throws IOException
+        {
+            if (this.exception != null)
+                throw this.exception;
+        }
+
+        public void disconnect()
+        {
+        }
+
+        public boolean usingProxy()
+        {
+            return false;
+        }
+
+        @Override
+        public int getResponseCode() throws IOException
+        {
+            this.connect();
+            return this.responseCode;
+        }
+
+        @Override
+        public String getResponseMessage() throws IOException
+        {
+            this.connect();
+            return this.responseMessage;
+        }
+
+        @Override
+        public String getHeaderField(String name)
+        {
+            String value = null;
+            for (String[] header : this.headers)
+            {
+                if (header[0].equalsIgnoreCase(name))
+                    value = header[1];
+            }
+
+            return value;
+        }
+
+        @Override
+        public String getHeaderFieldKey(int n)
+        {
+            return n > 0 && n <= this.headers.size() ? this.headers.get(n - 1)[0] : null;
+        }
+
+        @Override
+        public String getHeaderField(int n)
+        {
+            return n > 0 && n <= this.headers.size() ? this.headers.get(n - 1)[1] : null;
+        }
+
+        @Override
+        public Map<String, List<String>> getHeaderFields()
+        {
+            Map<String, List<String>> fields = new LinkedHashMap<String, List<String>>();
+            for (String[] header : this.headers)
+            {
+                List<String> values = fields.get(header[0]);
+                if (values == null)
+                    fields.put(header[0], values = new ArrayList<String>());
+                values.add(header[1]);
+            }
+
+            return Collections.unmodifiableMap(fields);
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException
+        {
+            this.connect();
+            if (this.responseCode >= HTTP_BAD_REQUEST)
+                throw new FileNotFoundException(this.url.toString());
+
+            return this.openContentStream();
+        }
+
+        @Override
+        public InputStream getErrorStream()
+        {
+            return this.exception == null && this.responseCode >= HTTP_BAD_REQUEST
+                ? this.openContentStream() : null;
+        }
+
+        protected InputStream openContentStream()
+        {
+            return new ByteArrayInputStream(this.content.array(), this.content.arrayOffset() + this.content.position(),
+                this.content.remaining());
+        }
+    }
+
+    protected final int queueSize;
+    protected volatile int maxInFlight;
+    protected final int maxConnectionsPerHost;
+    protected final long staleRequestLimit;
+    protected final PriorityBlockingQueue<RetrievalTask> pendingTasks = new PriorityBlockingQueue<RetrievalTask>();
+    // Pending and running tasks, for duplicate detection.
+    protected final Set<RetrievalTask> tasks = Collections.newSetFromMap(
+        new ConcurrentHashMap<RetrievalTask, Boolean>());
+    protected final AtomicInteger inFlightCount = new AtomicInteger();
+    protected final AtomicLong firstByteCount = new AtomicLong();
+    protected final AtomicLong firstByteNanos = new AtomicLong();
+    protected final ThreadPoolExecutor workers;
+    protected final Selector selector;
+    protected final Thread selectorThread;
+    protected final Queue<Runnable> selectorCommands = new ConcurrentLinkedQueue<Runnable>();
+    protected volatile boolean running = true;
+    // Used only by the selector thread.
+    protected final Map<String, Host> hosts = new HashMap<String, Host>();
+    protected final Set<Connection> connections = new HashSet<Connection>();
+    protected SSLExceptionListener sslExceptionListener;
+
+    public AsyncRetrievalService()
+    {
+        int poolSize = Configuration.getIntegerValue(AVKey.RETRIEVAL_POOL_SIZE, DEFAULT_POOL_SIZE);
+        this.queueSize = Configuration.getIntegerValue(AVKey.RETRIEVAL_QUEUE_SIZE, DEFAULT_QUEUE_SIZE);
+        this.maxInFlight = Configuration.getIntegerValue(AVKey.RETRIEVAL_MAX_IN_FLIGHT, DEFAULT_MAX_IN_FLIGHT);
+        this.maxConnectionsPerHost = Configuration.getIntegerValue(AVKey.HTTP_MAX_CONNECTIONS_PER_HOST,
+            HTTPConnectionPool.DEFAULT_MAX_CONNECTIONS_PER_HOST);
+        this.staleRequestLimit = Configuration.getLongValue(AVKey.RETRIEVAL_QUEUE_STALE_REQUEST_LIMIT,
+            DEFAULT_STALE_REQUEST_LIMIT);
+
+        // this.workers read responses into their retrievers, run post-processors and run non-HTTP retrievers
+        this.workers = new ThreadPoolExecutor(poolSize, poolSize, 2, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(), new ThreadFactory()
+        {
+            public Thread newThread(Runnable runnable)
+            {
+                Thread thread = new Thread(runnable);
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                thread.setUncaughtExceptionHandler(AsyncRetrievalService.this);
+                return thread;
+            }
+        });
+
+        try
+        {
+            this.selector = Selector.open();
+        }
+        catch (IOException e)
+        {
+            String message = Logging.getMessage("AsyncRetrievalService.ExceptionOpeningSelector");
+            Logging.logger().log(Level.SEVERE, message, e);
+            throw new WWRuntimeException(message, e);
+        }
+
+        this.selectorThread = new Thread(new Runnable()
+        {
+            public void run()
+            {
+                runSelector();
+            }
+        });
+        this.selectorThread.setName(Logging.getMessage("AsyncRetrievalService.SelectorThreadName"));
+        this.selectorThread.setDaemon(true);
+        this.selectorThread.setUncaughtExceptionHandler(this);
+        this.selectorThread.start();
+    }
+
+    public SSLExceptionListener getSSLExceptionListener()
+    {
+        return this.sslExceptionListener;
+    }
+
+    public void setSSLExceptionListener(SSLExceptionListener sslExceptionListener)
+    {
+        this.sslExceptionListener = sslExceptionListener;
+    }
+
+    public void uncaughtException(Thread thread, Throwable throwable)
+    {
+        Logging.logger().fine(Logging.getMessage("BasicRetrievalService.UncaughtExceptionDuringRetrieval",
+            thread.getName()));
+    }
+
+    public void shutdown(boolean immediately)
+    {
+        this.running = false;
+        this.selector.wakeup();
+
+        if (immediately)
+        {
+            this.workers.shutdownNow();
+            for (RetrievalTask task : this.tasks)
+            {
+                task.cancel(true);
+            }
+        }
+        else
+        {
+            this.workers.shutdown();
+        }
+
+        this.pendingTasks.clear();
+    }
+
+    /**
+     * @param retriever the retriever to run
+     *
+     * @return a future object that can be used to query the request status of cancel the request.
+     *
+     * @throws IllegalArgumentException if <code>retriever</code> is null or has no name
+     */
+    public RetrievalFuture runRetriever(Retriever retriever)
+    {
+        if (retriever == null)
+        {
+            String msg = Logging.getMessage("nullValue.RetrieverIsNull");
+            Logging.logger().fine(msg);
+            throw new IllegalArgumentException(msg);
+        }
+        if (retriever.getName() == null)
+        {
+            String message = Logging.getMessage("nullValue.RetrieverNameIsNull");
+            Logging.logger().fine(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        // Add with secondary priority that removes most recently added requests first.
+        return this.runRetriever(retriever, (double) (Long.MAX_VALUE - System.currentTimeMillis()));
+    }
+
+    /**
+     * @param retriever the retriever to run
+     * @param priority  the secondary priority of the retriever, or negative if it is to be the primary priority
+     *
+     * @return a future object that can be used to query the request status of cancel the request, or null if the
+     *         retriever is a duplicate of one pending or running.
+     *
+     * @throws IllegalArgumentException if <code>retriever</code> is null or has no name
+     */
+    public RetrievalFuture runRetriever(Retriever retriever, double priority)
+    {
+        if (retriever == null)
+        {
+            String message = Logging.getMessage("nullValue.RetrieverIsNull");
+            Logging.logger().fine(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        if (retriever.getName() == null)
+        {
+            String message = Logging.getMessage("nullValue.RetrieverNameIsNull");
+            Logging.logger().fine(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        if (!this.isAvailable())
+        {
+            Logging.logger().finer(Logging.getMessage("BasicRetrievalService.ResourceRejected", retriever.getName()));
+        }
+
+        RetrievalTask task = new RetrievalTask(retriever, priority);
+        retriever.setSubmitTime(System.currentTimeMillis());
+
+        // Do not queue duplicates.
+        if (!this.tasks.add(task))
+            return null;
+
+        this.pendingTasks.add(task);
+        this.selector.wakeup();
+
+        return task;
+    }
+
+    /**
+     * Specifies the number of worker threads, which read responses into retrievers, run post-processors and run
+     * retrievers for protocols other than HTTP.
+     *
+     * @param poolSize the number of worker threads
+     *
+     * @throws IllegalArgumentException if <code>poolSize</code> is non-positive
+     */
+    public void setRetrieverPoolSize(int poolSize)
+    {
+        if (poolSize < 1)
+        {
+            String message = Logging.getMessage("BasicRetrievalService.RetrieverPoolSizeIsLessThanOne");
+            Logging.logger().fine(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        if (poolSize > this.workers.getMaximumPoolSize())
+        {
+            this.workers.setMaximumPoolSize(poolSize);
+            this.workers.setCorePoolSize(poolSize);
+        }
+        else
+        {
+            this.workers.setCorePoolSize(poolSize);
+            this.workers.setMaximumPoolSize(poolSize);
+        }
+    }
+
+    public int getRetrieverPoolSize()
+    {
+        return this.workers.getCorePoolSize();
+    }
+
+    /** @return the maximum number of retrievals in progress at once. */
+    public int getMaxInFlight()
+    {
+        return this.maxInFlight;
+    }
+
+    /**
+     * Specifies the maximum number of retrievals in progress at once. Retrievals waiting for a connection to their host
+     * count as in progress.
+     *
+     * @param maxInFlight the maximum number of retrievals in progress.
+     *
+     * @throws IllegalArgumentException if the maximum is less than one.
+     */
+    public void setMaxInFlight(int maxInFlight)
+    {
+        if (maxInFlight < 1)
+        {
+            String message = Logging.getMessage("generic.ArgumentOutOfRange", "maxInFlight=" + maxInFlight);
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        this.maxInFlight = maxInFlight;
+        this.selector.wakeup();
+    }
+
+    /** @return the number of retrievals waiting to start. */
+    public int getQueueDepth()
+    {
+        return this.pendingTasks.size();
+    }
+
+    /** @return the number of retrievals started and not yet complete. */
+    public int getInFlightCount()
+    {
+        return this.inFlightCount.get();
+    }
+
+    /**
+     * Returns the mean time from starting an HTTP retrieval to receiving the first byte of its response, which
+     * includes the time spent waiting for a connection to the host.
+     *
+     * @return the mean time to first byte, in milliseconds, or zero if no response has been received.
+     */
+    public double getMeanTimeToFirstByte()
+    {
+        long count = this.firstByteCount.get();
+        return count > 0 ? this.firstByteNanos.get() / 1e6 / count : 0;
+    }
+
+    public boolean hasActiveTasks()
+    {
+        return this.inFlightCount.get() > 0;
+    }
+
+    public boolean isAvailable()
+    {
+        return this.pendingTasks.size() < this.queueSize;
+    }
+
+    public int getNumRetrieversPending()
+    {
+        return this.pendingTasks.size() + this.inFlightCount.get();
+    }
+
+    /**
+     * @param retriever the retriever to check
+     *
+     * @return <code>true</code> if the retriever is being run or pending execution
+     *
+     * @throws IllegalArgumentException if <code>retriever</code> is null
+     */
+    public boolean contains(Retriever retriever)
+    {
+        if (retriever == null)
+        {
+            String msg = Logging.getMessage("nullValue.RetrieverIsNull");
+            Logging.logger().fine(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        return this.tasks.contains(new RetrievalTask(retriever, 0d));
+    }
+
+    protected void runOnSelectorThread(Runnable command)
+    {
+        this.selectorCommands.add(command);
+        this.selector.wakeup();
+    }
+
+    protected void runSelector()
+    {
+        long lastCheckTime = 0;
+
+        while (this.running)
+        {
+            try
+            {
+                this.selector.select(SELECT_INTERVAL);
+
+                Runnable command;
+                while ((command = this.selectorCommands.poll()) != null)
+                {
+                    command.run();
+                }
+
+                Iterator<SelectionKey> iter = this.selector.selectedKeys().iterator();
+                while (iter.hasNext())
+                {
+                    SelectionKey key = iter.next();
+                    iter.remove();
+                    if (key.isValid())
+                        ((Connection) key.attachment()).handle();
+                }
+
+                long now = System.currentTimeMillis();
+                if (now - lastCheckTime >= SELECT_INTERVAL)
+                {
+                    this.checkConnections(now);
+                    lastCheckTime = now;
+                }
+
+                this.startPendingTasks();
+            }
+            catch (ClosedSelectorException e)
+            {
+                break;
+            }
+            catch (Exception e)
+            {
+                Logging.logger().log(Level.SEVERE,
+                    Logging.getMessage("AsyncRetrievalService.ExceptionInSelectorLoop"), e);
+            }
+        }
+
+        for (Connection connection : new ArrayList<Connection>(this.connections))
+        {
+            connection.close();
+        }
+        WWIO.closeStream(this.selector, null);
+    }
+
+    /** Fails requests that have timed out and abandons requests that have been cancelled. */
+    protected void checkConnections(long now)
+    {
+        for (Connection connection : new ArrayList<Connection>(this.connections))
+        {
+            Exchange exchange = connection.exchange;
+            if (exchange == null)
+                continue;
+
+            if (exchange.task.isDone())
+            {
+                connection.exchange = null;
+                connection.close();
+                connection.host.service();
+            }
+            else if (now > connection.deadline)
+            {
+                connection.fail(new SocketTimeoutException(exchange.retriever.getUrl().toString()));
+            }
+        }
+    }
+
+    protected void startPendingTasks()
+    {
+        while (this.inFlightCount.get() < this.maxInFlight)
+        {
+            RetrievalTask task = this.pendingTasks.poll();
+            if (task == null)
+                break;
+
+            Retriever retriever = task.getRetriever();
+            retriever.setBeginTime(System.currentTimeMillis());
+            long limit = retriever.getStaleRequestLimit() >= 0
+                ? retriever.getStaleRequestLimit() : this.staleRequestLimit;
+            if (retriever.getBeginTime() - retriever.getSubmitTime() > limit)
+            {
+                // Task has been sitting on the queue too long
+                Logging.logger().finer(Logging.getMessage("BasicRetrievalService.CancellingTooOldRetrieval",
+                    retriever.getName()));
+                task.cancel(true);
+                continue;
+            }
+
+            if (!task.state.compareAndSet(TASK_PENDING, TASK_STARTED)) // cancelled while pending
+                continue;
+
+            this.inFlightCount.incrementAndGet();
+
+            if (this.isNonBlocking(retriever))
+                this.startExchange(task);
+            else
+                this.workers.execute(task);
+        }
+    }
+
+    protected boolean isNonBlocking(Retriever retriever)
+    {
+        return retriever instanceof HTTPRetriever
+            && "http".equalsIgnoreCase(((HTTPRetriever) retriever).getUrl().getProtocol())
+            && WWIO.configureProxy() == null;
+    }
+
+    protected void startExchange(RetrievalTask task)
+    {
+        URL url = ((HTTPRetriever) task.getRetriever()).getUrl();
+        int port = url.getPort() >= 0 ? url.getPort() : url.getDefaultPort();
+        String hostKey = url.getHost().toLowerCase() + ":" + port;
+
+        Host host = this.hosts.get(hostKey);
+        if (host == null)
+        {
+            host = new Host(url.getHost(), port);
+            this.hosts.put(hostKey, host);
+        }
+
+        host.waiting.add(new Exchange(task, host));
+        host.service();
+    }
+
+    protected void openConnection(Host host, Exchange exchange)
+    {
+        SocketChannel channel = null;
+        try
+        {
+            channel = SocketChannel.open();
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+
+            Connection connection = new Connection(host, channel);
+            host.numConnections++;
+            this.connections.add(connection);
+
+            boolean connected = channel.connect(new InetSocketAddress(host.address, host.port));
+            connection.key = channel.register(this.selector, connected ? 0 : SelectionKey.OP_CONNECT, connection);
+            connection.begin(exchange);
+        }
+        catch (IOException e)
+        {
+            WWIO.closeStream(channel, host.name);
+            completeExchange(exchange, new ResponseConnection(exchange.retriever.getUrl(), e));
+        }
+    }
+
+    protected ByteBuffer makeRequest(URL url, String byteRange)
+    {
+        String path = url.getFile();
+        boolean defaultPort = url.getPort() < 0 || url.getPort() == url.getDefaultPort();
+        String agent = System.getProperty("http.agent");
+        String javaAgent = "Java/" + System.getProperty("java.version");
+
+        StringBuilder sb = new StringBuilder();
+        sb.append("GET ").append(path.length() > 0 ? path : "/").append(" HTTP/1.1\r\n");
+        sb.append("Host: ").append(url.getHost()).append(defaultPort ? "" : ":" + url.getPort()).append("\r\n");
+        sb.append("User-Agent: ").append(agent != null ? agent + " " + javaAgent : javaAgent).append("\r\n");
+        sb.append("Accept: */*\r\n");
+        if (byteRange != null)
+            sb.append("Range: ").append(byteRange).append("\r\n");
+        sb.append("Connection: keep-alive\r\n\r\n");
+
+        byte[] bytes = new byte[sb.length()];
+        for (int i = 0; i < bytes.length; i++)
+        {
+            bytes[i] = (byte) sb.charAt(i);
+        }
+
+        return ByteBuffer.wrap(bytes);
+    }
+
+    /** Gives a response to its retriever, which reads it and runs its post-processor on a worker thread. */
+    protected void completeExchange(Exchange exchange, ResponseConnection response)
+    {
+        if (exchange.task.isDone())
+            return;
+
+        exchange.retriever.setResponseConnection(response);
+        this.workers.execute(exchange.task);
+    }
+
+    protected void logOutcome(RetrievalTask task)
+    {
+        try
+        {
+            task.get();
+        }
+        catch (ExecutionException e)
+        {
+            String message = Logging.getMessage("BasicRetrievalService.ExecutionExceptionDuringRetrieval",
+                task.getRetriever().getName());
+            if (e.getCause() instanceof SocketTimeoutException)
+            {
+                Logging.logger().fine(message + " " + e.getCause().getLocalizedMessage());
+            }
+            else if (e.getCause() instanceof SSLHandshakeException)
+            {
+                if (this.sslExceptionListener != null)
+                    this.sslExceptionListener.onException(e.getCause(), task.getRetriever().getName());
+                else
+                    Logging.logger().fine(message + " " + e.getCause().getLocalizedMessage());
+            }
+            else
+            {
+                Logging.logger().log(Level.FINE, message, e);
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Logging.logger().log(Level.FINE, Logging.getMessage("BasicRetrievalService.RetrievalInterrupted",
+                task.getRetriever().getName()), e);
+        }
+        catch (CancellationException e)
+        {
+            Logging.logger().fine(Logging.getMessage("BasicRetrievalService.RetrievalCancelled",
+                task.getRetriever().getName()));
+        }
+    }
+}
@@ -0,0 +1,347 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+
+package gov.nasa.worldwind.retrieve;
+
+import gov.nasa.worldwind.Configuration;
+import gov.nasa.worldwind.avlist.AVKey;
+import gov.nasa.worldwind.util.*;
+
+import java.net.*;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Coordinates the HTTP requests of {@link HTTPRetriever}s so that connections to each host are reused rather than
+ * reopened for every request. The pool limits the number of requests in progress to each host, so that every
+ * connection a host accepts can be kept alive and reused by the next request. Retrievers requesting a URL that another
+ * retriever is already requesting wait for that request to complete and share its response rather than making their
+ * own.
+ * <p/>
+ * Connections are kept alive by the JDK's HTTP implementation, which keeps up to <code>http.maxConnections</code> idle
+ * connections to each host. The pool raises that limit to its own per-host limit when the application has not set it,
+ * but the JDK reads the limit only once, before the first HTTP connection is made.
+ * <p/>
+ * The pool keeps {@link HostStatistics} for each host it has requested from.
+ *
+ * @version $Id$
+ */
+public class HTTPConnectionPool
+{
+    /** The default maximum number of requests in progress to one host. */
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 6;
+
+    /** Request counts, latency and throughput of one host. */
+    public static class HostStatistics
+    {
+        protected final String host;
+        protected final AtomicLong requestCount = new AtomicLong();
+        protected final AtomicLong coalescedCount = new AtomicLong();
+        protected final AtomicLong failureCount = new AtomicLong();
+        protected final AtomicLong bytesRead = new AtomicLong();
+        protected final AtomicLong latencyNanos = new AtomicLong();
+        protected final AtomicLong transferNanos = new AtomicLong();
+        protected final AtomicInteger activeCount = new AtomicInteger();
+
+        public HostStatistics(String host)
+        {
+            this.host = host;
+        }
+
+        /** @return the host's protocol, name and port, such as "http://example.com:80". */
+        public String getHost()
+        {
+            return this.host;
+        }
+
+        /** @return the number of requests for the host's URLs, including requests that shared another's response. */
+        public long getRequestCount()
+        {
+            return this.requestCount.get();
+        }
+
+        /** @return the number of requests that shared the response of another request for the same URL. */
+        public long getCoalescedCount()
+        {
+            return this.coalescedCount.get();
+        }
+
+        /** @return the number of requests that failed with an exception or an HTTP error status. */
+        public long getFailureCount()
+        {
+            return this.failureCount.get();
+        }
+
+        /** @return the number of content bytes read from the host. */
+        public long getBytesRead()
+        {
+            return this.bytesRead.get();
+        }
+
+        /** @return the number of requests in progress to the host. */
+        public int getActiveCount()
+        {
+            return this.activeCount.get();
+        }
+
+        /**
+         * Returns the mean time from sending a request to receiving the response status, which includes the time to
+         * open a connection when one can't be reused.
+         *
+         * @return the mean latency, in milliseconds, or zero if no request has completed.
+         */
+        public double getMeanLatency()
+        {
+            long count = this.requestCount.get() - this.coalescedCount.get();
+            return count > 0 ? this.latencyNanos.get() / 1e6 / count : 0;
+        }
+
+        /** @return the rate content is read once responses start, in bytes per second, or zero if none has been read. */
+        public double getThroughput()
+        {
+            long nanos = this.transferNanos.get();
+            return nanos > 0 ? this.bytesRead.get() * 1e9 / nanos : 0;
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("%s requests %d coalesced %d failures %d bytes %d latency %.1f ms throughput %.0f B/s",
+                this.host, this.getRequestCount(), this.getCoalescedCount(), this.getFailureCount(),
+                this.getBytesRead(), this.getMeanLatency(), this.getThroughput());
+        }
+    }
+
+    /** A request in progress, whose response is shared with retrievers requesting the same URL. */
+    protected static class Exchange
+    {
+        protected final CountDownLatch done = new CountDownLatch(1);
+        protected HTTPRetriever retriever;
+        protected ByteBuffer content;
+        protected Exception exception;
+    }
+
+    private static HTTPConnectionPool defaultPool;
+
+    protected final int maxConnectionsPerHost;
+    protected final ConcurrentHashMap<String, Semaphore> hostPermits = new ConcurrentHashMap<String, Semaphore>();
+    protected final ConcurrentHashMap<String, HostStatistics> hostStatistics =
+        new ConcurrentHashMap<String, HostStatistics>();
+    protected final ConcurrentHashMap<String, Exchange> exchanges = new ConcurrentHashMap<String, Exchange>();
+
+    /**
+     * Constructs a pool that allows the specified number of requests in progress to each host.
+     *
+     * @param maxConnectionsPerHost the maximum number of requests in progress to one host.
+     *
+     * @throws IllegalArgumentException if the maximum is less than one.
+     */
+    public HTTPConnectionPool(int maxConnectionsPerHost)
+    {
+        if (maxConnectionsPerHost < 1)
+        {
+            String message = Logging.getMessage("generic.ArgumentOutOfRange",
+                "maxConnectionsPerHost=" + maxConnectionsPerHost);
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        this.maxConnectionsPerHost = maxConnectionsPerHost;
+
+        if (System.getProperty("http.maxConnections") == null && maxConnectionsPerHost > 5)
+            System.setProperty("http.maxConnections", Integer.toString(maxConnectionsPerHost));
+    }
+
+    /**
+     * Returns the pool shared by all HTTP retrievers when pooling is enabled by the configuration parameter {@link
+     * AVKey#HTTP_CONNECTION_POOL_ENABLED}. Its per-host limit is specified by {@link
+     * AVKey#HTTP_MAX_CONNECTIONS_PER_HOST}.
+     *
+     * @return the shared pool.
+     */
+    public static synchronized HTTPConnectionPool getDefaultPool()
+    {
+        if (defaultPool == null)
+        {
+            defaultPool = new HTTPConnectionPool(Configuration.getIntegerValue(AVKey.HTTP_MAX_CONNECTIONS_PER_HOST,
+                DEFAULT_MAX_CONNECTIONS_PER_HOST));
+        }
+
+        return defaultPool;
+    }
+
+    public int getMaxConnectionsPerHost()
+    {
+        return this.maxConnectionsPerHost;
+    }
+
+    /** @return the statistics of each host the pool has requested from. */
+    public List<HostStatistics> getHostStatistics()
+    {
+        return new ArrayList<HostStatistics>(this.hostStatistics.values());
+    }
+
+    /**
+     * Returns the statistics of a URL's host.
+     *
+     * @param url the URL whose host's statistics are returned.
+     *
+     * @return the host's statistics, or null if the pool has not requested from the host.
+     *
+     * @throws IllegalArgumentException if the URL is null.
+     */
+    public HostStatistics getHostStatistics(URL url)
+    {
+        if (url == null)
+        {
+            String message = Logging.getMessage("nullValue.URLIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        return this.hostStatistics.get(makeHostKey(url));
+    }
+
+    /**
+     * Reads a retriever's response from its connection, unless another retriever is already requesting the same URL,
+     * in which case the other retriever's response is copied to this one. Waits while the maximum number of requests
+     * to the URL's host are in progress.
+     *
+     * @param retriever  the retriever making the request.
+     * @param connection the retriever's unopened connection.
+     *
+     * @return the response content, or null if the response holds no content or the thread is interrupted.
+     *
+     * @throws Exception if the request fails.
+     */
+    public ByteBuffer retrieve(HTTPRetriever retriever, HttpURLConnection connection) throws Exception
+    {
+        String hostKey = makeHostKey(retriever.getUrl());
+        HostStatistics stats = this.getOrCreateStatistics(hostKey);
+        stats.requestCount.incrementAndGet();
+
+        // Zip extraction changes the content, so retrievers only share responses read the same way. Likewise they
+        // only share responses for the same byte range.
+        String key = retriever.getUrl().toString()
+            + (WWUtil.isEmpty(retriever.getValue(URLRetriever.EXTRACT_ZIP_ENTRY)) ? "" : "#zip")
+            + (retriever.getByteRange() != null ? "#" + retriever.getByteRange() : "");
+
+        while (true)
+        {
+            Exchange exchange = new Exchange();
+            Exchange existing = this.exchanges.putIfAbsent(key, exchange);
+            if (existing == null)
+                return this.doRetrieve(retriever, connection, hostKey, stats, key, exchange);
+
+            stats.coalescedCount.incrementAndGet();
+            try
+            {
+                existing.done.await();
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+
+            if (existing.exception != null)
+                throw existing.exception;
+
+            if (existing.retriever != null)
+                return retriever.copyResponse(existing.retriever, existing.content);
+
+            // The request was abandoned when its thread was interrupted, so make it again.
+            stats.coalescedCount.decrementAndGet();
+        }
+    }
+
+    protected ByteBuffer doRetrieve(HTTPRetriever retriever, HttpURLConnection connection, String hostKey,
+        HostStatistics stats, String key, Exchange exchange) throws Exception
+    {
+        Semaphore permits = this.getOrCreatePermits(hostKey);
+        try
+        {
+            permits.acquire();
+        }
+        catch (InterruptedException e)
+        {
+            this.exchanges.remove(key, exchange);
+            exchange.done.countDown();
+            Thread.currentThread().interrupt();
+            return null;
+        }
+
+        stats.activeCount.incrementAndGet();
+        long start = System.nanoTime();
+        try
+        {
+            ByteBuffer content = retriever.readResponse(connection);
+            long latency = retriever.getResponseLatency();
+            stats.latencyNanos.addAndGet(latency);
+            stats.transferNanos.addAndGet(System.nanoTime() - start - latency);
+            stats.bytesRead.addAndGet(content != null ? content.remaining() : 0);
+            if (retriever.getResponseCode() >= HttpURLConnection.HTTP_BAD_REQUEST)
+                stats.failureCount.incrementAndGet();
+
+            if (!Thread.currentThread().isInterrupted())
+            {
+                exchange.retriever = retriever;
+                exchange.content = content;
+            }
+
+            return content;
+        }
+        catch (Exception e)
+        {
+            stats.failureCount.incrementAndGet();
+            exchange.exception = e;
+            throw e;
+        }
+        finally
+        {
+            stats.activeCount.decrementAndGet();
+            permits.release();
+            this.exchanges.remove(key, exchange);
+            exchange.done.countDown();
+        }
+    }
+
+    protected HostStatistics getOrCreateStatistics(String hostKey)
+    {
+        HostStatistics stats = this.hostStatistics.get(hostKey);
+        if (stats == null)
+        {
+            HostStatistics newStats = new HostStatistics(hostKey);
+            stats = this.hostStatistics.putIfAbsent(hostKey, newStats);
+            if (stats == null)
+                stats = newStats;
+        }
+
+        return stats;
+    }
+
+    protected Semaphore getOrCreatePermits(String hostKey)
+    {
+        Semaphore permits = this.hostPermits.get(hostKey);
+        if (permits == null)
+        {
+            Semaphore newPermits = new Semaphore(this.maxConnectionsPerHost, true);
+            permits = this.hostPermits.putIfAbsent(hostKey, newPermits);
+            if (permits == null)
+                permits = newPermits;
+        }
+
+        return permits;
+    }
+
+    protected static String makeHostKey(URL url)
+    {
+        int port = url.getPort() >= 0 ? url.getPort() : url.getDefaultPort();
+        return url.getProtocol().toLowerCase() + "://" + url.getHost().toLowerCase() + ":" + port;
+    }
+}
@@ -5,8 +5,11 @@
  */
 package gov.nasa.worldwind.retrieve;
 
-import gov.nasa.worldwind.util.Logging;
+import gov.nasa.worldwind.Configuration;
+import gov.nasa.worldwind.avlist.AVKey;
+import gov.nasa.worldwind.util.*;
 
+import java.io.*;
 import java.net.*;
 import java.nio.ByteBuffer;
 import java.util.logging.Level;
@@ -19,6 +22,12 @@ public class HTTPRetriever extends URLRetriever
 {
     private int responseCode;
     private String responseMessage;
+    private long responseLatency;
+    private HTTPConnectionPool connectionPool =
+        Configuration.getBooleanValue(AVKey.HTTP_CONNECTION_POOL_ENABLED, false)
+            ? HTTPConnectionPool.getDefaultPool() : null;
+    private volatile URLConnection responseConnection;
+    private String byteRange;
 
     public HTTPRetriever(URL url, RetrievalPostProcessor postProcessor)
     {
@@ -35,6 +44,96 @@ public class HTTPRetriever extends URLRetriever
         return this.responseMessage;
     }
 
+    /** @return the time from sending the request to receiving the response status, in nanoseconds. */
+    public long getResponseLatency()
+    {
+        return this.responseLatency;
+    }
+
+    /**
+     * Returns the pool coordinating this retriever's request with those of other retrievers. By default this is the
+     * shared pool if the configuration parameter {@link AVKey#HTTP_CONNECTION_POOL_ENABLED} is true, otherwise null.
+     *
+     * @return the connection pool, or null if the request is made independently.
+     */
+    public HTTPConnectionPool getConnectionPool()
+    {
+        return this.connectionPool;
+    }
+
+    /**
+     * Specifies the pool coordinating this retriever's request with those of other retrievers.
+     *
+     * @param connectionPool the connection pool, or null to make the request independently.
+     */
+    public void setConnectionPool(HTTPConnectionPool connectionPool)
+    {
+        this.connectionPool = connectionPool;
+    }
+
+    /**
+     * Returns the value of the <code>Range</code> header this retriever sends, or null if it requests the whole
+     * resource.
+     *
+     * @return the requested byte range, for example <code>bytes=0-1023</code>, or null.
+     */
+    public String getByteRange()
+    {
+        return this.byteRange;
+    }
+
+    /**
+     * Requests part of the resource rather than all of it. A server that honors the request responds with {@link
+     * HttpURLConnection#HTTP_PARTIAL} and the requested bytes; one that does not responds with {@link
+     * HttpURLConnection#HTTP_OK} and the whole resource, so callers must check the response code.
+     *
+     * @param first the offset of the first byte requested.
+     * @param last  the offset of the last byte requested, inclusive, or a negative value to request every byte from
+     *              the first to the end of the resource.
+     *
+     * @throws IllegalArgumentException if the first offset is negative, or if the last offset is less than the first
+     *                                  but not negative.
+     */
+    public void setByteRange(long first, long last)
+    {
+        if (first < 0 || (last >= 0 && last < first))
+        {
+            String message = Logging.getMessage("generic.ArgumentOutOfRange", first + "-" + last);
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        this.byteRange = "bytes=" + first + "-" + (last >= 0 ? Long.toString(last) : "");
+    }
+
+    /**
+     * Specifies a connection holding a response already received, which this retriever reads rather than opening a
+     * connection of its own. Retrieval services that perform the network exchange themselves use this to hand the
+     * response to the retriever, which then interprets it and runs its post-processor as usual.
+     *
+     * @param connection the connection holding the response, or null to open a connection when run.
+     */
+    protected void setResponseConnection(URLConnection connection)
+    {
+        this.responseConnection = connection;
+    }
+
+    @Override
+    protected URLConnection openConnection() throws IOException
+    {
+        if (this.responseConnection == null)
+        {
+            URLConnection connection = super.openConnection();
+            if (this.byteRange != null)
+                connection.setRequestProperty("Range", this.byteRange);
+
+            return connection;
+        }
+
+        this.connection = this.responseConnection;
+        return this.connection;
+    }
+
     protected ByteBuffer doRead(URLConnection connection) throws Exception
     {
         if (connection == null)
@@ -44,18 +143,87 @@ public class HTTPRetriever extends URLRetriever
             throw new IllegalArgumentException(msg);
         }
 
-        HttpURLConnection htpc = (HttpURLConnection) connection;
-        this.responseCode = htpc.getResponseCode();
-        this.responseMessage = htpc.getResponseMessage();
+        if (this.connectionPool != null)
+            return this.connectionPool.retrieve(this, (HttpURLConnection) connection);
+
+        return this.readResponse((HttpURLConnection) connection);
+    }
+
+    protected ByteBuffer readResponse(HttpURLConnection connection) throws Exception
+    {
+        long start = System.nanoTime();
+        this.responseCode = connection.getResponseCode();
+        this.responseMessage = connection.getResponseMessage();
+        this.responseLatency = System.nanoTime() - start;
         String contentType = connection.getContentType();
 
         Logging.logger().log(Level.FINE, "HTTPRetriever.ResponseInfo", new Object[] {this.responseCode,
             connection.getContentLength(), contentType != null ? contentType : "content type not returned",
             connection.getURL()});
 
-        if (this.responseCode == HttpURLConnection.HTTP_OK)
+        if (this.responseCode == HttpURLConnection.HTTP_OK
+            || (this.responseCode == HttpURLConnection.HTTP_PARTIAL && this.byteRange != null))
             return super.doRead(connection);
 
+        this.discardErrorStream(connection);
         return null;
     }
+
+    /**
+     * Reads and discards the body of an error response. The connection can be kept alive and reused for another request
+     * only once its response has been read completely.
+     *
+     * @param connection the connection whose error response is discarded.
+     */
+    protected void discardErrorStream(HttpURLConnection connection)
+    {
+        InputStream errorStream = connection.getErrorStream();
+        if (errorStream == null)
+            return;
+
+        try
+        {
+            byte[] bytes = new byte[4096];
+            //noinspection StatementWithEmptyBody
+            while (errorStream.read(bytes) >= 0)
+            {
+            }
+        }
+        catch (IOException e)
+        {
+            // The connection is closed rather than reused.
+            Logging.logger().finest(e.getMessage());
+        }
+        finally
+        {
+            WWIO.closeStream(errorStream, connection.getURL().toString());
+        }
+    }
+
+    /**
+     * Gives this retriever the response read by another retriever for the same URL.
+     *
+     * @param that    the retriever that read the response.
+     * @param content the response content read, or null if there is none.
+     *
+     * @return a copy of the content, or null if the content is null.
+     */
+    protected ByteBuffer copyResponse(HTTPRetriever that, ByteBuffer content)
+    {
+        this.responseCode = that.responseCode;
+        this.responseMessage = that.responseMessage;
+        this.contentType = that.contentType;
+        this.contentLength = that.contentLength;
+        this.expiration.set(that.expiration.get());
+
+        if (content == null)
+            return null;
+
+        ByteBuffer copy = ByteBuffer.allocate(content.remaining());
+        copy.put(content.duplicate());
+        copy.flip();
+        this.contentLengthRead.set(copy.remaining());
+
+        return copy;
+    }
 }
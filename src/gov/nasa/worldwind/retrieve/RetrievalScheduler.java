@@ -0,0 +1,474 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+
+package gov.nasa.worldwind.retrieve;
+
+import gov.nasa.worldwind.WorldWind;
+import gov.nasa.worldwind.avlist.AVKey;
+import gov.nasa.worldwind.geom.*;
+import gov.nasa.worldwind.globes.Globe;
+import gov.nasa.worldwind.util.*;
+
+import java.beans.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Holds tile retrievals back from a {@link RetrievalService} so that their order can follow the view. A retrieval
+ * service fixes a retrieval's priority when it is queued, so after the view moves it keeps downloading tiles that are
+ * no longer visible while visible tiles wait. The scheduler instead keeps pending retrievals itself, keyed by the
+ * {@link TileKey} of the tile they retrieve, and passes only a few at a time to the retrieval service, always the
+ * pending ones of highest rank.
+ * <p/>
+ * Layers and elevation models call {@link #request(TileKey, double, Retriever)} to retrieve a tile, and call {@link
+ * #touch(TileKey, double)} each frame the tile is still needed, with the tile's current distance from the view. A
+ * tile's rank combines its distance with its level, so that coarse tiles, which cover more of the view, come before
+ * fine tiles at the same distance. Layers measure a tile's distance from the view themselves. Elevation models, which have
+ * no view, measure it with {@link #computeDistance(Sector)} from the view last specified by {@link #setView(Globe,
+ * Vec4)}, so that their tiles are ranked on the same scale as imagery. Requests for tiles already pending are merged. Pending retrievals that are not
+ * touched for the stale time while other tiles are, and retrievals passed to the service that have not yet started, are
+ * cancelled.
+ * <p/>
+ * The scheduler counts the retrievals it cancels and the <em>wasted</em> retrievals: those that completed after their
+ * tile was no longer needed.
+ *
+ * @version $Id$
+ */
+public class RetrievalScheduler
+{
+    /** The default time, in milliseconds, a retrieval is kept while other tiles are requested but its tile is not. */
+    public static final long DEFAULT_STALE_TIME = 2000;
+    /** The minimum time, in milliseconds, between re-rankings caused by touches. */
+    protected static final long DISPATCH_INTERVAL = 50;
+
+    /** A tile retrieval, pending or passed to the retrieval service. */
+    protected class Request implements PropertyChangeListener
+    {
+        protected final TileKey tileKey;
+        protected final Retriever retriever;
+        protected volatile double rank;
+        protected volatile long lastRequestTime;
+        protected RetrievalFuture future;
+
+        public Request(TileKey tileKey, Retriever retriever, double rank, long requestTime)
+        {
+            this.tileKey = tileKey;
+            this.retriever = retriever;
+            this.rank = rank;
+            this.lastRequestTime = requestTime;
+        }
+
+        public void propertyChange(PropertyChangeEvent event)
+        {
+            if (AVKey.RETRIEVER_STATE.equals(event.getPropertyName()))
+                retrieverStateChanged(this, (String) event.getNewValue());
+        }
+    }
+
+    private static RetrievalScheduler defaultScheduler;
+
+    protected final ConcurrentHashMap<TileKey, Request> requests = new ConcurrentHashMap<TileKey, Request>();
+    protected RetrievalService retrievalService;
+    protected int maxSubmitted;
+    protected long staleTime = DEFAULT_STALE_TIME;
+    protected volatile long lastRequestTime;
+    protected volatile long lastDispatchTime;
+    protected int submittedCount;
+    protected final AtomicLong requestCount = new AtomicLong();
+    protected final AtomicLong mergedCount = new AtomicLong();
+    protected final AtomicLong cancelledCount = new AtomicLong();
+    protected final AtomicLong completedCount = new AtomicLong();
+    protected final AtomicLong wastedCount = new AtomicLong();
+    protected final AtomicLong wastedBytes = new AtomicLong();
+    protected volatile Globe globe;
+    protected volatile Vec4 eyePoint;
+
+    /**
+     * Constructs a scheduler that passes retrievals to the World Wind retrieval service, no more than twice the
+     * service's thread pool size at a time.
+     */
+    public RetrievalScheduler()
+    {
+    }
+
+    /**
+     * Constructs a scheduler that passes retrievals to a specified retrieval service.
+     *
+     * @param retrievalService the retrieval service to run retrievals, or null to use the World Wind retrieval
+     *                         service.
+     * @param maxSubmitted     the maximum number of retrievals passed to the service at a time, or zero to use twice the
+     *                         service's thread pool size.
+     *
+     * @throws IllegalArgumentException if the maximum is less than zero.
+     */
+    public RetrievalScheduler(RetrievalService retrievalService, int maxSubmitted)
+    {
+        if (maxSubmitted < 0)
+        {
+            String message = Logging.getMessage("generic.ArgumentOutOfRange", "maxSubmitted=" + maxSubmitted);
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        this.retrievalService = retrievalService;
+        this.maxSubmitted = maxSubmitted;
+    }
+
+    /**
+     * Returns the scheduler shared by the layers and elevation models that use one, as specified by the configuration
+     * parameter {@link AVKey#RETRIEVAL_SCHEDULER_ENABLED}. It passes retrievals to the World Wind retrieval service.
+     *
+     * @return the shared scheduler.
+     */
+    public static synchronized RetrievalScheduler getDefaultScheduler()
+    {
+        if (defaultScheduler == null)
+            defaultScheduler = new RetrievalScheduler();
+
+        return defaultScheduler;
+    }
+
+    /** @return the retrieval service this scheduler passes retrievals to. */
+    public RetrievalService getRetrievalService()
+    {
+        return this.retrievalService != null ? this.retrievalService : WorldWind.getRetrievalService();
+    }
+
+    /**
+     * Returns the time a retrieval is kept while other tiles are requested but its tile is not.
+     *
+     * @return the stale time, in milliseconds.
+     */
+    public long getStaleTime()
+    {
+        return this.staleTime;
+    }
+
+    /**
+     * Specifies the time a retrieval is kept while other tiles are requested but its tile is not.
+     *
+     * @param staleTime the stale time, in milliseconds.
+     *
+     * @throws IllegalArgumentException if the time is less than zero.
+     */
+    public void setStaleTime(long staleTime)
+    {
+        if (staleTime < 0)
+        {
+            String message = Logging.getMessage("generic.ArgumentOutOfRange", "staleTime=" + staleTime);
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        this.staleTime = staleTime;
+    }
+
+    /**
+     * Specifies the view from which {@link #computeDistance(Sector)} measures distances. The scene controller specifies
+     * the current view of the shared scheduler each frame.
+     *
+     * @param globe    the globe being viewed. May be null if there is no view.
+     * @param eyePoint the view's eye point, in model coordinates. May be null if there is no view.
+     */
+    public void setView(Globe globe, Vec4 eyePoint)
+    {
+        this.globe = globe;
+        this.eyePoint = eyePoint;
+    }
+
+    /** @return the eye point of the view last specified, or null if no view has been specified. */
+    public Vec4 getEyePoint()
+    {
+        return this.eyePoint;
+    }
+
+    /**
+     * Computes the distance from the eye point of the view last specified to the centroid of a sector, for retrievals
+     * whose requester has no view of its own, such as those of elevation models.
+     *
+     * @param sector the sector of the tile to retrieve.
+     *
+     * @return the distance from the eye point to the sector's centroid on the globe's ellipsoid, or zero if no view has
+     *         been specified.
+     *
+     * @throws IllegalArgumentException if the sector is null.
+     */
+    public double computeDistance(Sector sector)
+    {
+        if (sector == null)
+        {
+            String message = Logging.getMessage("nullValue.SectorIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        Globe globe = this.globe;
+        Vec4 eyePoint = this.eyePoint;
+        if (globe == null || eyePoint == null)
+            return 0;
+
+        LatLon centroid = sector.getCentroid();
+        return globe.computePointFromPosition(centroid.getLatitude(), centroid.getLongitude(), 0).distanceTo3(eyePoint);
+    }
+
+    /**
+     * Indicates whether a retrieval of a tile is pending or in progress.
+     *
+     * @param tileKey the tile's key.
+     *
+     * @return true if the tile is being retrieved, otherwise false.
+     */
+    public boolean contains(TileKey tileKey)
+    {
+        return tileKey != null && this.requests.containsKey(tileKey);
+    }
+
+    /**
+     * Schedules the retrieval of a tile, unless the tile is already being retrieved, in which case the existing
+     * retrieval is touched and the specified retriever is not run.
+     *
+     * @param tileKey   the key of the tile to retrieve.
+     * @param distance  the tile's distance from the view.
+     * @param retriever the retriever to retrieve the tile.
+     *
+     * @return true if the retrieval was scheduled, false if the tile is already being retrieved.
+     *
+     * @throws IllegalArgumentException if the tile key or the retriever is null.
+     */
+    public boolean request(TileKey tileKey, double distance, Retriever retriever)
+    {
+        if (tileKey == null)
+        {
+            String message = Logging.getMessage("nullValue.TileKeyIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        if (retriever == null)
+        {
+            String message = Logging.getMessage("nullValue.RetrieverIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        long now = System.currentTimeMillis();
+        this.lastRequestTime = now;
+
+        Request request = new Request(tileKey, retriever, this.computeRank(tileKey, distance), now);
+        Request existing = this.requests.putIfAbsent(tileKey, request);
+        if (existing != null)
+        {
+            this.mergedCount.incrementAndGet();
+            existing.rank = request.rank;
+            existing.lastRequestTime = now;
+            return false;
+        }
+
+        this.requestCount.incrementAndGet();
+        this.dispatch();
+
+        return true;
+    }
+
+    /**
+     * Indicates that a tile is still needed, and updates its rank from its current distance from the view.
+     *
+     * @param tileKey  the tile's key.
+     * @param distance the tile's distance from the view.
+     *
+     * @return true if the tile is being retrieved, otherwise false.
+     */
+    public boolean touch(TileKey tileKey, double distance)
+    {
+        if (tileKey == null)
+            return false;
+
+        long now = System.currentTimeMillis();
+        this.lastRequestTime = now;
+
+        Request request = this.requests.get(tileKey);
+        if (request == null)
+            return false;
+
+        request.rank = this.computeRank(tileKey, distance);
+        request.lastRequestTime = now;
+
+        if (now - this.lastDispatchTime >= DISPATCH_INTERVAL)
+            this.dispatch();
+
+        return true;
+    }
+
+    /** @return the number of retrievals scheduled, not counting requests merged with pending ones. */
+    public long getRequestCount()
+    {
+        return this.requestCount.get();
+    }
+
+    /** @return the number of requests for tiles already being retrieved. */
+    public long getMergedCount()
+    {
+        return this.mergedCount.get();
+    }
+
+    /** @return the number of retrievals cancelled because their tiles were no longer needed. */
+    public long getCancelledCount()
+    {
+        return this.cancelledCount.get();
+    }
+
+    /** @return the number of retrievals that ran to completion, successfully or not. */
+    public long getCompletedCount()
+    {
+        return this.completedCount.get();
+    }
+
+    /** @return the number of retrievals that completed successfully after their tiles were no longer needed. */
+    public long getWastedCount()
+    {
+        return this.wastedCount.get();
+    }
+
+    /** @return the number of bytes read by retrievals that completed after their tiles were no longer needed. */
+    public long getWastedBytes()
+    {
+        return this.wastedBytes.get();
+    }
+
+    /** @return the number of retrievals waiting to be passed to the retrieval service. */
+    public synchronized int getPendingCount()
+    {
+        return this.requests.size() - this.submittedCount;
+    }
+
+    /** @return the number of retrievals passed to the retrieval service and not yet complete. */
+    public synchronized int getSubmittedCount()
+    {
+        return this.submittedCount;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("requests %d merged %d cancelled %d completed %d wasted %d (%d bytes)",
+            this.getRequestCount(), this.getMergedCount(), this.getCancelledCount(), this.getCompletedCount(),
+            this.getWastedCount(), this.getWastedBytes());
+    }
+
+    /**
+     * Computes the rank of a tile from its level and distance from the view. Lower values rank higher. Each level
+     * doubles the rank, matching the halving of tile size from one level to the next.
+     *
+     * @param tileKey  the tile's key.
+     * @param distance the tile's distance from the view.
+     *
+     * @return the tile's rank.
+     */
+    protected double computeRank(TileKey tileKey, double distance)
+    {
+        return (1 + Math.max(distance, 0)) * Math.pow(2, tileKey.getLevelNumber());
+    }
+
+    protected boolean isStale(Request request)
+    {
+        return this.lastRequestTime - request.lastRequestTime > this.staleTime;
+    }
+
+    /**
+     * Cancels stale retrievals, removes those the retrieval service finished without running, and passes the pending
+     * retrievals of highest rank to the service until the maximum number is in progress.
+     */
+    protected synchronized void dispatch()
+    {
+        this.lastDispatchTime = System.currentTimeMillis();
+
+        List<Request> pending = new ArrayList<Request>();
+        for (Request request : this.requests.values())
+        {
+            if (request.future == null)
+            {
+                if (!this.isStale(request))
+                    pending.add(request);
+                else if (this.requests.remove(request.tileKey, request))
+                    this.cancelledCount.incrementAndGet();
+            }
+            else if (request.future.isDone())
+            {
+                // Cancelled or rejected by the service before it ran the retriever.
+                this.remove(request);
+            }
+            else if (this.isStale(request)
+                && Retriever.RETRIEVER_STATE_NOT_STARTED.equals(request.retriever.getState()))
+            {
+                request.future.cancel(false);
+                if (this.remove(request))
+                    this.cancelledCount.incrementAndGet();
+            }
+        }
+
+        RetrievalService service = this.getRetrievalService();
+        int max = this.maxSubmitted > 0 ? this.maxSubmitted : 2 * Math.max(service.getRetrieverPoolSize(), 1);
+        if (pending.isEmpty() || this.submittedCount >= max)
+            return;
+
+        Collections.sort(pending, new Comparator<Request>()
+        {
+            public int compare(Request a, Request b)
+            {
+                return Double.compare(a.rank, b.rank);
+            }
+        });
+
+        for (int i = 0; i < pending.size() && this.submittedCount < max; i++)
+        {
+            Request request = pending.get(i);
+            request.retriever.addPropertyChangeListener(AVKey.RETRIEVER_STATE, request);
+            RetrievalFuture future = service.runRetriever(request.retriever, request.rank);
+            if (future == null)
+            {
+                // The service is already running an equivalent retriever.
+                request.retriever.removePropertyChangeListener(AVKey.RETRIEVER_STATE, request);
+                this.requests.remove(request.tileKey, request);
+                continue;
+            }
+
+            request.future = future;
+            this.submittedCount++;
+        }
+    }
+
+    protected synchronized boolean remove(Request request)
+    {
+        if (!this.requests.remove(request.tileKey, request))
+            return false;
+
+        request.retriever.removePropertyChangeListener(AVKey.RETRIEVER_STATE, request);
+        if (request.future != null)
+            this.submittedCount--;
+
+        return true;
+    }
+
+    protected void retrieverStateChanged(Request request, String state)
+    {
+        if (!Retriever.RETRIEVER_STATE_SUCCESSFUL.equals(state) && !Retriever.RETRIEVER_STATE_ERROR.equals(state)
+            && !Retriever.RETRIEVER_STATE_INTERRUPTED.equals(state))
+            return;
+
+        if (!this.remove(request))
+            return;
+
+        this.completedCount.incrementAndGet();
+        if (Retriever.RETRIEVER_STATE_SUCCESSFUL.equals(state) && this.isStale(request))
+        {
+            this.wastedCount.incrementAndGet();
+            this.wastedBytes.addAndGet(Math.max(request.retriever.getContentLengthRead(), 0));
+        }
+
+        this.dispatch();
+    }
+}
@@ -15,7 +15,7 @@ import gov.nasa.worldwind.util.*;
 import org.w3c.dom.Element;
 
 import javax.xml.xpath.XPath;
-import java.util.List;
+import java.util.*;
 
 /**
  * @author tag
@@ -151,6 +151,112 @@ abstract public class AbstractElevationModel extends WWObjectImpl implements Ele
         return new double[] {this.getElevations(sector, latLons, targetResolutions[0], elevations)};
     }
 
+    public double getElevations(Sector sector, double[] latitudes, double[] longitudes, double targetResolution,
+        double[] buffer)
+    {
+        this.validateLocations(sector, latitudes, longitudes, buffer);
+
+        return this.getElevations(sector, new LocationList(latitudes, longitudes), targetResolution, buffer);
+    }
+
+    public double getUnmappedElevations(Sector sector, double[] latitudes, double[] longitudes,
+        double targetResolution, double[] buffer)
+    {
+        this.validateLocations(sector, latitudes, longitudes, buffer);
+
+        return this.getUnmappedElevations(sector, new LocationList(latitudes, longitudes), targetResolution, buffer);
+    }
+
+    public double[] getElevations(Sector sector, double[] latitudes, double[] longitudes, double[] targetResolutions,
+        double[] buffer)
+    {
+        return new double[] {this.getElevations(sector, latitudes, longitudes, targetResolutions[0], buffer)};
+    }
+
+    public double[] getUnmappedElevations(Sector sector, double[] latitudes, double[] longitudes,
+        double[] targetResolutions, double[] buffer)
+    {
+        return new double[] {this.getUnmappedElevations(sector, latitudes, longitudes, targetResolutions[0], buffer)};
+    }
+
+    /**
+     * Validates the arguments of the methods computing elevations for arrays of latitudes and longitudes.
+     *
+     * @param sector     the sector in question.
+     * @param latitudes  the latitudes of the locations, in degrees.
+     * @param longitudes the longitudes of the locations, in degrees.
+     * @param buffer     the array in which to place the elevations.
+     *
+     * @throws IllegalArgumentException if the sector or any of the arrays is null, or if the longitudes or elevations
+     *                                  array is smaller than the latitudes array.
+     */
+    protected void validateLocations(Sector sector, double[] latitudes, double[] longitudes, double[] buffer)
+    {
+        if (sector == null)
+        {
+            String msg = Logging.getMessage("nullValue.SectorIsNull");
+            Logging.logger().severe(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        if (latitudes == null || longitudes == null)
+        {
+            String msg = Logging.getMessage("nullValue.ArrayIsNull");
+            Logging.logger().severe(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        if (buffer == null)
+        {
+            String msg = Logging.getMessage("nullValue.ElevationsBufferIsNull");
+            Logging.logger().severe(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        if (longitudes.length < latitudes.length)
+        {
+            String msg = Logging.getMessage("generic.ArrayInvalidLength", longitudes.length);
+            Logging.logger().severe(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        if (buffer.length < latitudes.length)
+        {
+            String msg = Logging.getMessage("ElevationModel.ElevationsBufferTooSmall", latitudes.length);
+            Logging.logger().severe(msg);
+            throw new IllegalArgumentException(msg);
+        }
+    }
+
+    /**
+     * Presents arrays of latitudes and longitudes in degrees as a list of locations, creating each location as it's
+     * requested. Enables elevation models without a specialized implementation of the array methods to use their list
+     * methods.
+     */
+    protected static class LocationList extends AbstractList<LatLon>
+    {
+        protected final double[] latitudes;
+        protected final double[] longitudes;
+
+        public LocationList(double[] latitudes, double[] longitudes)
+        {
+            this.latitudes = latitudes;
+            this.longitudes = longitudes;
+        }
+
+        @Override
+        public LatLon get(int index)
+        {
+            return LatLon.fromDegrees(this.latitudes[index], this.longitudes[index]);
+        }
+
+        @Override
+        public int size()
+        {
+            return this.latitudes.length;
+        }
+    }
+
     public double[] getBestResolutions(Sector sector)
     {
         return new double[] {this.getBestResolution(sector)};
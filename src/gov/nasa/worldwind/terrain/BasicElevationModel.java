@@ -14,6 +14,7 @@ import gov.nasa.worldwind.event.BulkRetrievalListener;
 import gov.nasa.worldwind.exception.WWRuntimeException;
 import gov.nasa.worldwind.geom.*;
 import gov.nasa.worldwind.ogc.wms.WMSCapabilities;
+import gov.nasa.worldwind.render.DrawContext;
 import gov.nasa.worldwind.retrieve.*;
 import gov.nasa.worldwind.util.*;
 import org.w3c.dom.*;
@@ -50,7 +51,8 @@ import java.util.*;
  * @author Tom Gaskins
  * @version $Id: BasicElevationModel.java 3425 2015-09-30 23:17:35Z dcollins $
  */
-public class BasicElevationModel extends AbstractElevationModel implements BulkRetrievable
+public class BasicElevationModel extends AbstractElevationModel implements BulkRetrievable,
+    TilePrefetcher.Prefetchable
 {
     protected final LevelSet levels;
     protected final double minElevation;
@@ -66,8 +68,20 @@ public class BasicElevationModel extends AbstractElevationModel implements BulkR
     protected boolean extremesCachingEnabled = true;
     protected BufferWrapper extremes = null;
     protected MemoryCache extremesLookupCache;
+    protected ElevationExtremesPyramid extremesPyramid;
+    protected RetrievalScheduler retrievalScheduler =
+        Configuration.getBooleanValue(AVKey.RETRIEVAL_SCHEDULER_ENABLED, false)
+            ? RetrievalScheduler.getDefaultScheduler() : null;
+    protected boolean memoryMappingEnabled = Configuration.getBooleanValue(AVKey.ELEVATION_TILE_MAPPING_ENABLED,
+        false);
+    /** The keys of the tiles whose elevations were used since last reported. Recorded once a prefetcher asks. */
+    protected final Set<TileKey> usedTileKeys = Collections.newSetFromMap(
+        new java.util.concurrent.ConcurrentHashMap<TileKey, Boolean>());
+    protected volatile boolean usedTileKeysRecorded;
     // Model resource properties.
     protected static final int RESOURCE_ID_OGC_CAPABILITIES = 1;
+    /** The size charged to the memory cache for a memory mapped tile, whose elevations are outside the Java heap. */
+    protected static final long MAPPED_TILE_SIZE = 1024;
 
     public BasicElevationModel(AVList params)
     {
@@ -116,10 +130,18 @@ public class BasicElevationModel extends AbstractElevationModel implements BulkR
         if (s != null)
             this.setElevationDataType(s);
 
+        b = (Boolean) params.getValue(AVKey.ELEVATION_TILE_MAPPING_ENABLED);
+        if (b != null)
+            this.setMemoryMappingEnabled(b);
+
         s = params.getStringValue(AVKey.ELEVATION_EXTREMES_FILE);
         if (s != null)
             this.loadExtremeElevations(s);
 
+        s = params.getStringValue(AVKey.ELEVATION_EXTREMES_PYRAMID_FILE);
+        if (s != null)
+            this.loadExtremesPyramid(s);
+
         b = (Boolean) params.getValue(AVKey.DELETE_CACHE_ON_EXIT);
         if (b != null)
             this.setValue(AVKey.DELETE_CACHE_ON_EXIT, true);
@@ -223,7 +245,7 @@ public class BasicElevationModel extends AbstractElevationModel implements BulkR
         else
         {
             long size = Configuration.getLongValue(AVKey.ELEVATION_TILE_CACHE_SIZE, 20000000L);
-            MemoryCache mc = new BasicMemoryCache((long) (0.85 * size), size);
+            MemoryCache mc = BasicMemoryCacheSet.createCache((long) (0.85 * size), size);
             mc.setName("Elevation Tiles");
             WorldWind.getMemoryCacheSet().addCache(cacheName, mc);
             return mc;
@@ -250,6 +272,32 @@ public class BasicElevationModel extends AbstractElevationModel implements BulkR
         return extremes;
     }
 
+    /**
+     * Returns the pyramid of tile extremes this model uses to determine the extreme elevations of sectors.
+     *
+     * @return the extremes pyramid, or null if the model has none.
+     */
+    public ElevationExtremesPyramid getExtremesPyramid()
+    {
+        return this.extremesPyramid;
+    }
+
+    /**
+     * Specifies a pyramid of tile extremes for this model to use to determine the extreme elevations of sectors and
+     * locations. Where the pyramid has no data the model uses its extreme elevations file, if any, or its minimum and
+     * maximum elevations.
+     *
+     * @param extremesPyramid the extremes pyramid. May be null.
+     */
+    public void setExtremesPyramid(ElevationExtremesPyramid extremesPyramid)
+    {
+        this.extremesPyramid = extremesPyramid;
+
+        // Clear the extreme elevations lookup cache.
+        if (this.extremesLookupCache != null)
+            this.extremesLookupCache.clear();
+    }
+
     /**
      * Specifies the time of the elevation models's most recent dataset update, beyond which cached data is invalid. If
      * greater than zero, the model ignores and eliminates any in-memory or on-disk cached data older than the time
@@ -300,6 +348,56 @@ public class BasicElevationModel extends AbstractElevationModel implements BulkR
         this.detailHint = hint;
     }
 
+    /**
+     * Returns the scheduler ordering this elevation model's tile retrievals with those of other models and layers. By
+     * default this is the shared scheduler if the configuration parameter {@link AVKey#RETRIEVAL_SCHEDULER_ENABLED} is
+     * true, otherwise null.
+     *
+     * @return the retrieval scheduler, or null if retrievals are passed directly to the retrieval service.
+     */
+    public RetrievalScheduler getRetrievalScheduler()
+    {
+        return this.retrievalScheduler;
+    }
+
+    /**
+     * Specifies the scheduler ordering this elevation model's tile retrievals with those of other models and layers.
+     *
+     * @param retrievalScheduler the retrieval scheduler, or null to pass retrievals directly to the retrieval service.
+     */
+    public void setRetrievalScheduler(RetrievalScheduler retrievalScheduler)
+    {
+        this.retrievalScheduler = retrievalScheduler;
+    }
+
+    /**
+     * Indicates whether elevation tiles in the local file store are memory mapped rather than read into memory. By
+     * default this is the value of the configuration parameter {@link AVKey#ELEVATION_TILE_MAPPING_ENABLED}, or false if
+     * that's not specified.
+     *
+     * @return true if tiles are memory mapped, otherwise false.
+     *
+     * @see #setMemoryMappingEnabled(boolean)
+     */
+    public boolean isMemoryMappingEnabled()
+    {
+        return this.memoryMappingEnabled;
+    }
+
+    /**
+     * Specifies whether BIL elevation tiles in the local file store are memory mapped rather than read into memory. A
+     * mapped tile's elevations are read directly from the operating system's page cache, so they are neither copied
+     * when the tile is loaded nor counted at their full size against the elevation tile memory cache. This lets bulk
+     * terrain analysis over large areas keep many more tiles loaded, with the operating system paging their data in and
+     * out. Tiles in jar files, in file store segments and in formats other than BIL are read as usual.
+     *
+     * @param memoryMappingEnabled true to memory map tiles, otherwise false.
+     */
+    public void setMemoryMappingEnabled(boolean memoryMappingEnabled)
+    {
+        this.memoryMappingEnabled = memoryMappingEnabled;
+    }
+
     public String getElevationDataType()
     {
         return this.elevationDataType;
@@ -394,25 +492,105 @@ public class BasicElevationModel extends AbstractElevationModel implements BulkR
 
     protected void requestTile(TileKey key)
     {
+        // Elevation tiles have no view distance of their own, so the scheduler measures it from its last view.
+        // Without a scheduler there is no view, and tiles are ordered by level alone.
+        RetrievalScheduler scheduler = this.getRetrievalScheduler();
+        double distance = scheduler != null ? scheduler.computeDistance(this.levels.computeSectorForKey(key)) : 0;
+        if (scheduler != null && scheduler.touch(key, distance))
+            return;
+
         if (WorldWind.getTaskService().isFull())
             return;
 
         if (this.getLevels().isResourceAbsent(key))
             return;
 
-        RequestTask request = new RequestTask(key, this);
+        RequestTask request = new RequestTask(key, this, distance);
         WorldWind.getTaskService().addTask(request);
     }
 
-    protected static class RequestTask implements Runnable
+    /**
+     * Requests that a tile be loaded into memory, retrieving it if necessary, unless it is already in memory or known
+     * to be absent, or the task service is full.
+     *
+     * @param dc       the current draw context. May be null.
+     * @param tileKey  the tile's key.
+     * @param priority the priority of the load, as a distance from the view in meters. Lower values load first.
+     *
+     * @return the size of the tile's elevations, in bytes, or zero if no load was requested.
+     *
+     * @throws IllegalArgumentException if the tile key is null.
+     */
+    public long prefetchTile(DrawContext dc, TileKey tileKey, double priority)
+    {
+        if (tileKey == null)
+        {
+            String message = Logging.getMessage("nullValue.TileKeyIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        if (this.areElevationsInMemory(tileKey) || this.getLevels().isResourceAbsent(tileKey))
+            return 0;
+
+        if (WorldWind.getTaskService().isFull())
+            return 0;
+
+        WorldWind.getTaskService().addTask(new RequestTask(tileKey, this, priority));
+
+        Level level = this.getLevels().getLevel(tileKey.getLevelNumber());
+        int bytesPerElevation = AVKey.FLOAT32.equals(this.elevationDataType) ? 4 : 2;
+        return (long) bytesPerElevation * level.getTileWidth() * level.getTileHeight();
+    }
+
+    public void getDrawnTileKeys(DrawContext dc, Collection<TileKey> keys)
+    {
+        if (keys == null)
+        {
+            String message = Logging.getMessage("nullValue.CollectionIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        this.usedTileKeysRecorded = true;
+
+        Iterator<TileKey> iterator = this.usedTileKeys.iterator();
+        while (iterator.hasNext())
+        {
+            keys.add(iterator.next());
+            iterator.remove();
+        }
+    }
+
+    protected static class RequestTask implements PrioritizedTask
     {
         protected final BasicElevationModel elevationModel;
         protected final TileKey tileKey;
+        protected final double priority;
 
         protected RequestTask(TileKey tileKey, BasicElevationModel elevationModel)
+        {
+            this(tileKey, elevationModel, 0);
+        }
+
+        /**
+         * Constructs a task loading a tile, with a priority on the scale of {@link
+         * PriorityTaskService#computeTilePriority(int, double)} so that it is ordered with the tile loads of layers.
+         *
+         * @param tileKey        the tile's key.
+         * @param elevationModel the elevation model loading the tile.
+         * @param distance       the tile's distance from the view, in meters.
+         */
+        protected RequestTask(TileKey tileKey, BasicElevationModel elevationModel, double distance)
         {
             this.elevationModel = elevationModel;
             this.tileKey = tileKey;
+            this.priority = PriorityTaskService.computeTilePriority(tileKey.getLevelNumber(), distance);
+        }
+
+        public double getPriority()
+        {
+            return this.priority;
         }
 
         public final void run()
@@ -516,7 +694,22 @@ public class BasicElevationModel extends AbstractElevationModel implements BulkR
         if (tile.getLevelNumber() == 0)
             this.levelZeroTiles.put(tile.getTileKey(), tile);
         else
-            this.getMemoryCache().add(tile.getTileKey(), tile, elevations.getSizeInBytes());
+            this.getMemoryCache().add(tile.getTileKey(), tile,
+                this.isMemoryMapped(elevations) ? MAPPED_TILE_SIZE : elevations.getSizeInBytes());
+    }
+
+    /**
+     * Indicates whether elevations are a view of a memory mapped file. Mapped files are the only read-only direct
+     * buffers this model creates.
+     *
+     * @param elevations the elevations.
+     *
+     * @return true if the elevations are memory mapped, otherwise false.
+     */
+    protected boolean isMemoryMapped(BufferWrapper elevations)
+    {
+        Buffer buffer = elevations.getBackingBuffer();
+        return buffer != null && buffer.isDirect() && buffer.isReadOnly();
     }
 
     protected boolean areElevationsInMemory(TileKey key)
@@ -559,10 +752,13 @@ public class BasicElevationModel extends AbstractElevationModel implements BulkR
 
     protected BufferWrapper makeBilElevations(URL url) throws IOException
     {
+        // Map the file when mapping is enabled and the URL refers to a file in the local file system.
+        File file = this.isMemoryMappingEnabled() ? WWIO.convertURLToFile(url) : null;
+
         ByteBuffer byteBuffer;
         synchronized (this.fileLock)
         {
-            byteBuffer = WWIO.readURLContentToBuffer(url);
+            byteBuffer = file != null ? WWIO.mapFile(file) : WWIO.readURLContentToBuffer(url);
         }
 
         // Setup parameters to instruct BufferWrapper on how to interpret the ByteBuffer.
@@ -847,8 +1043,16 @@ public class BasicElevationModel extends AbstractElevationModel implements BulkR
             return;
         }
 
-        if (!WorldWind.getRetrievalService().isAvailable())
+        RetrievalScheduler scheduler = this.getRetrievalScheduler();
+        if (scheduler != null)
+        {
+            if (scheduler.touch(tile.getTileKey(), scheduler.computeDistance(tile.getSector())))
+                return;
+        }
+        else if (!WorldWind.getRetrievalService().isAvailable())
+        {
             return;
+        }
 
         java.net.URL url = null;
         try
@@ -871,6 +1075,12 @@ public class BasicElevationModel extends AbstractElevationModel implements BulkR
             postProcessor = new DownloadPostProcessor(tile, this);
         URLRetriever retriever = new HTTPRetriever(url, postProcessor);
         retriever.setValue(URLRetriever.EXTRACT_ZIP_ENTRY, "true"); // supports legacy elevation models
+        if (scheduler != null)
+        {
+            scheduler.request(tile.getTileKey(), scheduler.computeDistance(tile.getSector()), retriever);
+            return;
+        }
+
         if (WorldWind.getRetrievalService().contains(retriever))
             return;
 
@@ -915,6 +1125,27 @@ public class BasicElevationModel extends AbstractElevationModel implements BulkR
             this.elevationModel.getLevels().markResourceAbsent(this.tile);
         }
 
+        @Override
+        protected boolean saveBuffer(ByteBuffer buffer) throws IOException
+        {
+            // Writing over a file truncates it, which invalidates any mapping of the file that's still in use. When
+            // tiles are mapped, remove the existing file instead, which leaves existing mappings of it intact.
+            if (this.elevationModel.isMemoryMappingEnabled())
+            {
+                File outFile = this.getOutputFile();
+                if (outFile != null && outFile.exists())
+                {
+                    synchronized (this.getFileLock())
+                    {
+                        if (!outFile.delete())
+                            Logging.logger().fine(Logging.getMessage("generic.CannotDeleteFile", outFile));
+                    }
+                }
+            }
+
+            return super.saveBuffer(buffer);
+        }
+
         @Override
         protected Object getFileLock()
         {
@@ -934,6 +1165,16 @@ public class BasicElevationModel extends AbstractElevationModel implements BulkR
 
             if (buffer != null)
             {
+                // Pack the tile into the file store's segments if it uses them. Hold the file lock so that a reader
+                // that found the individual file finishes reading it before it is removed.
+                if (this.getFileStore() instanceof SegmentFileStore)
+                {
+                    synchronized (this.getFileLock())
+                    {
+                        ((SegmentFileStore) this.getFileStore()).commitFile(this.tile.getPath());
+                    }
+                }
+
                 // We've successfully cached data. Check whether there's a configuration file for this elevation model
                 // in the cache and create one if there isn't.
                 this.elevationModel.writeConfigurationFile(this.getFileStore());
@@ -1347,6 +1588,132 @@ public class BasicElevationModel extends AbstractElevationModel implements BulkR
         return elevations.achievedResolution;
     }
 
+    public double getElevations(Sector sector, double[] latitudes, double[] longitudes, double targetResolution,
+        double[] buffer)
+    {
+        return this.getElevations(sector, latitudes, longitudes, targetResolution, buffer, true);
+    }
+
+    public double getUnmappedElevations(Sector sector, double[] latitudes, double[] longitudes,
+        double targetResolution, double[] buffer)
+    {
+        return this.getElevations(sector, latitudes, longitudes, targetResolution, buffer, false);
+    }
+
+    /**
+     * Computes the elevations of locations specified as arrays of latitudes and longitudes in degrees. Produces the same
+     * elevations as {@link #getElevations(gov.nasa.worldwind.geom.Sector, java.util.List, double, double[], boolean)}
+     * but creates no objects per location: the tiles covering the sector are resolved once, and the tile of each
+     * location is found by first testing the tile of the previous location, which for the regular grids of the
+     * tessellators is nearly always the right one.
+     *
+     * @param sector           the sector in question.
+     * @param latitudes        the latitudes of the locations, in degrees.
+     * @param longitudes       the longitudes of the locations, in degrees.
+     * @param targetResolution the desired horizontal resolution, in radians.
+     * @param buffer           an array in which to place the elevations.
+     * @param mapMissingData   true to replace the missing data signal with the missing data replacement value.
+     *
+     * @return the resolution achieved, in radians, or {@link Double#MAX_VALUE} if individual elevations cannot be
+     *         determined for all of the locations.
+     */
+    protected double getElevations(Sector sector, double[] latitudes, double[] longitudes, double targetResolution,
+        double[] buffer, boolean mapMissingData)
+    {
+        this.validateLocations(sector, latitudes, longitudes, buffer);
+
+        Level targetLevel = this.getTargetLevel(sector, targetResolution);
+        if (targetLevel == null)
+            return Double.MAX_VALUE;
+
+        Elevations elevations = this.getElevations(sector, this.levels, targetLevel.getLevelNumber());
+        if (elevations == null)
+            return Double.MAX_VALUE;
+
+        if (this.intersects(sector) == -1)
+            return Double.MAX_VALUE;
+
+        // Mark the model as used this frame.
+        this.setValue(AVKey.FRAME_TIMESTAMP, System.currentTimeMillis());
+
+        // The tiles are ordered from highest to lowest resolution, and the elevation at a location comes from the
+        // first tile containing it. A location in a tile of the highest resolution present can therefore use that tile
+        // without searching the others.
+        ElevationTile[] tiles = elevations.tiles != null
+            ? elevations.tiles.toArray(new ElevationTile[elevations.tiles.size()]) : new ElevationTile[0];
+        int finestLevel = tiles.length > 0 ? tiles[0].getLevelNumber() : -1;
+        Sector coverage = this.levels.getSector();
+        double missingDataSignal = this.getMissingDataSignal();
+        boolean missingDataTransparent = this.getMissingDataReplacement() == missingDataSignal;
+        double[] extremes = null;
+        ElevationTile previous = null;
+
+        for (int i = 0; i < latitudes.length; i++)
+        {
+            double latitude = latitudes[i];
+            double longitude = longitudes[i];
+
+            ElevationTile tile = null;
+            if (previous != null && previous.getLevelNumber() == finestLevel
+                && previous.getSector().containsDegrees(latitude, longitude))
+            {
+                tile = previous;
+            }
+            else
+            {
+                for (ElevationTile t : tiles)
+                {
+                    if (t.getSector().containsDegrees(latitude, longitude))
+                    {
+                        tile = t;
+                        break;
+                    }
+                }
+            }
+
+            double value = missingDataSignal;
+            if (tile != null)
+            {
+                try
+                {
+                    value = this.lookupElevation(Math.toRadians(latitude), Math.toRadians(longitude), tile);
+                    previous = tile;
+                }
+                catch (Exception e)
+                {
+                    Logging.logger().log(java.util.logging.Level.SEVERE,
+                        Logging.getMessage("BasicElevationModel.ExceptionComputingElevation", latitude, longitude), e);
+                    tile = null;
+                }
+            }
+
+            if ((tile == null || value == missingDataSignal) && missingDataTransparent)
+                continue;
+
+            // Follow the rules of the list method: write available elevations, and otherwise write the model's extreme
+            // elevation or missing data replacement only for locations within the model's coverage.
+            if (tile != null && value != missingDataSignal)
+            {
+                buffer[i] = value;
+            }
+            else if (coverage.containsDegrees(latitude, longitude))
+            {
+                if (tile == null)
+                {
+                    if (extremes == null)
+                        extremes = this.getExtremeElevations(sector);
+                    buffer[i] = extremes[0];
+                }
+                else if (mapMissingData)
+                {
+                    buffer[i] = this.getMissingDataReplacement();
+                }
+            }
+        }
+
+        return elevations.achievedResolution;
+    }
+
     protected Level getTargetLevel(Sector sector, double targetSize)
     {
         Level lastLevel = this.levels.getLastLevel(sector); // finest resolution available
@@ -1369,6 +1736,20 @@ public class BasicElevationModel extends AbstractElevationModel implements BulkR
     }
 
     protected double lookupElevation(Angle latitude, Angle longitude, final ElevationTile tile)
+    {
+        return this.lookupElevation(latitude.radians, longitude.radians, tile);
+    }
+
+    /**
+     * Interpolates the elevation at a location from the elevations of a tile containing the location.
+     *
+     * @param latitude  the location's latitude, in radians.
+     * @param longitude the location's longitude, in radians.
+     * @param tile      the tile.
+     *
+     * @return the elevation, or the missing data signal if any of the elevations surrounding the location is missing.
+     */
+    protected double lookupElevation(double latitude, double longitude, final ElevationTile tile)
     {
         BufferWrapper elevations = tile.getElevations();
         Sector sector = tile.getSector();
@@ -1376,8 +1757,8 @@ public class BasicElevationModel extends AbstractElevationModel implements BulkR
         final int tileWidth = tile.getWidth();
         final double sectorDeltaLat = sector.getDeltaLat().radians;
         final double sectorDeltaLon = sector.getDeltaLon().radians;
-        final double dLat = sector.getMaxLatitude().radians - latitude.radians;
-        final double dLon = longitude.radians - sector.getMinLongitude().radians;
+        final double dLat = sector.getMaxLatitude().radians - latitude;
+        final double dLon = longitude - sector.getMinLongitude().radians;
         final double sLat = dLat / sectorDeltaLat;
         final double sLon = dLon / sectorDeltaLon;
 
@@ -1420,6 +1801,13 @@ public class BasicElevationModel extends AbstractElevationModel implements BulkR
             throw new IllegalArgumentException(msg);
         }
 
+        if (this.extremesPyramid != null)
+        {
+            double[] extremes = this.extremesPyramid.getExtremes(new Sector(latitude, latitude, longitude, longitude));
+            if (extremes != null)
+                return extremes;
+        }
+
         if (this.extremesLevel < 0 || this.extremes == null)
             return new double[] {this.getMinElevation(), this.getMaxElevation()};
 
@@ -1469,11 +1857,18 @@ public class BasicElevationModel extends AbstractElevationModel implements BulkR
             if (extremes != null)
                 return new double[] {extremes[0], extremes[1]}; // return defensive copy
 
-            if (this.extremesLevel < 0 || this.extremes == null)
-                return new double[] {this.getMinElevation(), this.getMaxElevation()};
+            // Prefer the extremes pyramid's tile extremes, which are tighter than those of the extreme-elevations file.
+            if (this.extremesPyramid != null)
+                extremes = this.extremesPyramid.getExtremes(sector);
+
+            if (extremes == null)
+            {
+                if (this.extremesLevel < 0 || this.extremes == null)
+                    return new double[] {this.getMinElevation(), this.getMaxElevation()};
 
-            // Compute the extremes from the extreme-elevations file.
-            extremes = this.computeExtremeElevations(sector);
+                // Compute the extremes from the extreme-elevations file.
+                extremes = this.computeExtremeElevations(sector);
+            }
             if (extremes != null && this.isExtremesCachingEnabled())
                 this.getExtremesLookupCache().add(sector, extremes, 64);
 
@@ -1559,6 +1954,60 @@ public class BasicElevationModel extends AbstractElevationModel implements BulkR
         }
     }
 
+    /**
+     * Loads a pyramid of tile extremes written by {@link ElevationExtremesPyramid#write(java.io.OutputStream)}, such as
+     * the one {@link TiledElevationProducer} installs with the tiles it produces. The file is looked for in this
+     * model's data file store, then on the class path, then in the file system.
+     *
+     * @param pyramidFileName the pyramid's file name.
+     *
+     * @throws IllegalArgumentException if the file name is null.
+     */
+    public void loadExtremesPyramid(String pyramidFileName)
+    {
+        if (pyramidFileName == null)
+        {
+            String message = Logging.getMessage("nullValue.ExtremeElevationsFileName");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        InputStream is = null;
+        try
+        {
+            URL url = this.getDataFileStore() != null ? this.getDataFileStore().findFile(pyramidFileName, false)
+                : null;
+            if (url != null)
+                is = url.openStream();
+
+            if (is == null)
+                is = this.getClass().getResourceAsStream("/" + pyramidFileName);
+
+            if (is == null)
+            {
+                File file = new File(pyramidFileName);
+                if (file.exists())
+                    is = new FileInputStream(file);
+                else
+                    Logging.logger().log(java.util.logging.Level.WARNING,
+                        "BasicElevationModel.UnavailableExtremesPyramid", pyramidFileName);
+            }
+
+            if (is != null)
+                this.setExtremesPyramid(ElevationExtremesPyramid.read(is));
+        }
+        catch (IOException e)
+        {
+            Logging.logger().log(java.util.logging.Level.WARNING,
+                Logging.getMessage("BasicElevationModel.ExceptionReadingExtremesPyramid", pyramidFileName), e);
+            this.setExtremesPyramid(null);
+        }
+        finally
+        {
+            WWIO.closeStream(is, pyramidFileName);
+        }
+    }
+
     protected double[] computeExtremeElevations(Sector sector)
     {
         LatLon delta = this.levels.getLevel(this.extremesLevel).getTileDelta();
@@ -1633,7 +2082,7 @@ public class BasicElevationModel extends AbstractElevationModel implements BulkR
         return this.extremesLookupCache;
     }
 
-    protected static class ElevationTile extends gov.nasa.worldwind.util.Tile implements Cacheable
+    protected static class ElevationTile extends gov.nasa.worldwind.util.Tile implements OffHeapCacheable
     {
         protected BufferWrapper elevations; // the elevations themselves
         protected long updateTime = 0;
@@ -1664,6 +2113,51 @@ public class BasicElevationModel extends AbstractElevationModel implements BulkR
             }
         }
 
+        public int getPayloadSize()
+        {
+            return this.elevations != null && !this.isPayloadMapped() ? (int) this.elevations.getSizeInBytes() : 0;
+        }
+
+        /**
+         * Indicates whether this tile's elevations are a read-only view of a mapped file. Such elevations are already
+         * off the heap, and copying them would defeat the mapping and double their resident memory.
+         *
+         * @return true if the elevations are mapped or read-only, otherwise false.
+         */
+        protected boolean isPayloadMapped()
+        {
+            Buffer buffer = this.elevations != null ? this.elevations.getBackingBuffer() : null;
+            return buffer instanceof MappedByteBuffer || (buffer != null && buffer.isReadOnly());
+        }
+
+        public boolean relocatePayload(ByteBuffer buffer)
+        {
+            if (this.elevations == null || this.isPayloadMapped())
+                return false;
+
+            Object dataType = null;
+            if (this.elevations instanceof BufferWrapper.ShortBufferWrapper)
+                dataType = AVKey.INT16;
+            else if (this.elevations instanceof BufferWrapper.FloatBufferWrapper)
+                dataType = AVKey.FLOAT32;
+            else if (this.elevations instanceof BufferWrapper.IntBufferWrapper)
+                dataType = AVKey.INT32;
+            else if (this.elevations instanceof BufferWrapper.DoubleBufferWrapper)
+                dataType = AVKey.FLOAT64;
+            else if (this.elevations instanceof BufferWrapper.ByteBufferWrapper)
+                dataType = AVKey.INT8;
+
+            if (dataType == null)
+                return false;
+
+            // Wrap the buffer in its own byte order; the copy converts from the source order.
+            BufferWrapper relocated = BufferWrapper.wrap(buffer, dataType);
+            relocated.putSubBuffer(0, this.elevations);
+            this.elevations = relocated;
+
+            return true;
+        }
+
         public boolean isElevationsExpired()
         {
             return this.isElevationsExpired(this.getLevel().getExpiryTime());
@@ -1821,6 +2315,14 @@ public class BasicElevationModel extends AbstractElevationModel implements BulkR
             }
         }
 
+        if (this.usedTileKeysRecorded)
+        {
+            for (ElevationTile tile : tiles)
+            {
+                this.usedTileKeys.add(tile.getTileKey());
+            }
+        }
+
         Elevations elevations;
 
         if (missingLevelZeroTiles || tiles.isEmpty())
@@ -2156,6 +2658,8 @@ public class BasicElevationModel extends AbstractElevationModel implements BulkR
      * <tr><td>{@link AVKey#DATA_TYPE}</td><td>DataType/@type</td><td>String</td></tr> <tr><td>{@link
      * AVKey#BYTE_ORDER}</td><td>ByteOrder</td><td>DataType/@byteOrder</td></tr> <tr><td>{@link
      * AVKey#ELEVATION_EXTREMES_FILE}</td><td>ExtremeElevations/FileName</td><td>String</td></tr> <tr><td>{@link
+     * AVKey#ELEVATION_EXTREMES_PYRAMID_FILE}</td><td>ExtremeElevations/PyramidFileName</td><td>String</td></tr>
+     * <tr><td>{@link
      * AVKey#ELEVATION_MAX}</td><td>ExtremeElevations/@max</td><td>Double</td></tr> <tr><td>{@link
      * AVKey#ELEVATION_MIN}</td><td>ExtremeElevations/@min</td><td>Double</td></tr> </table> This also writes common
      * elevation model and LevelSet configuration parameters by invoking {@link gov.nasa.worldwind.terrain.AbstractElevationModel#createElevationModelConfigElements(gov.nasa.worldwind.avlist.AVList,
@@ -2253,6 +2757,7 @@ public class BasicElevationModel extends AbstractElevationModel implements BulkR
         // Elevation data properties.
         Element el = WWXML.appendElementPath(context, "ExtremeElevations");
         WWXML.checkAndAppendTextElement(params, AVKey.ELEVATION_EXTREMES_FILE, el, "FileName");
+        WWXML.checkAndAppendTextElement(params, AVKey.ELEVATION_EXTREMES_PYRAMID_FILE, el, "PyramidFileName");
 
         Double d = AVListImpl.getDoubleValue(params, AVKey.ELEVATION_MAX);
         if (d != null)
@@ -2275,6 +2780,8 @@ public class BasicElevationModel extends AbstractElevationModel implements BulkR
      * <tr><td>{@link AVKey#DATA_TYPE}</td><td>DataType/@type</td><td>String</td></tr> <tr><td>{@link
      * AVKey#BYTE_ORDER}</td><td>DataType/@byteOrder</td><td>String</td></tr> <tr><td>{@link
      * AVKey#ELEVATION_EXTREMES_FILE}</td><td>ExtremeElevations/FileName</td><td>String</td></tr> <tr><td>{@link
+     * AVKey#ELEVATION_EXTREMES_PYRAMID_FILE}</td><td>ExtremeElevations/PyramidFileName</td><td>String</td></tr>
+     * <tr><td>{@link
      * AVKey#ELEVATION_MAX}</td><td>ExtremeElevations/@max</td><td>Double</td></tr> <tr><td>{@link
      * AVKey#ELEVATION_MIN}</td><td>ExtremeElevations/@min</td><td>Double</td></tr> </table> This also parses common
      * elevation model and LevelSet configuration parameters by invoking {@link gov.nasa.worldwind.terrain.AbstractElevationModel#getElevationModelConfigParams(org.w3c.dom.Element,
@@ -2345,6 +2852,8 @@ public class BasicElevationModel extends AbstractElevationModel implements BulkR
         // Elevation data properties.
         WWXML.checkAndSetStringParam(domElement, params, AVKey.ELEVATION_EXTREMES_FILE, "ExtremeElevations/FileName",
             xpath);
+        WWXML.checkAndSetStringParam(domElement, params, AVKey.ELEVATION_EXTREMES_PYRAMID_FILE,
+            "ExtremeElevations/PyramidFileName", xpath);
         WWXML.checkAndSetDoubleParam(domElement, params, AVKey.ELEVATION_MAX, "ExtremeElevations/@max", xpath);
         WWXML.checkAndSetDoubleParam(domElement, params, AVKey.ELEVATION_MIN, "ExtremeElevations/@min", xpath);
 
@@ -187,7 +187,8 @@ public class BasicElevationModelFactory extends BasicFactory
      *
      * @param domElement the XML element describing the elevation model to create. The element must inculde a service
      *                   name identifying the type of service to use to retrieve elevation data. Recognized service
-     *                   types are "Offline", "WWTileService" and "OGC:WMS".
+     *                   types are "Offline", "WWTileService" and "OGC:WMS". An element whose
+     *                   <code>modelType</code> attribute is "TIN" describes a {@link TINElevationModel}.
      * @param params     any parameters to apply when creating the elevation model.
      *
      * @return a new elevation model
@@ -200,7 +201,11 @@ public class BasicElevationModelFactory extends BasicFactory
 
         String serviceName = WWXML.getText(domElement, "Service/@serviceName");
 
-        if (serviceName.equals("Offline"))
+        if (TINElevationModel.isTINElevationModelConfig(domElement))
+        {
+            em = new TINElevationModel(domElement, params);
+        }
+        else if (serviceName.equals("Offline"))
         {
             em = new BasicElevationModel(domElement, params);
         }
@@ -5,20 +5,146 @@
  */
 package gov.nasa.worldwind.terrain;
 
+import gov.nasa.worldwind.Configuration;
+import gov.nasa.worldwind.avlist.AVKey;
+import gov.nasa.worldwind.cache.*;
 import gov.nasa.worldwind.geom.*;
 import gov.nasa.worldwind.globes.ElevationModel;
-import gov.nasa.worldwind.util.Logging;
+import gov.nasa.worldwind.util.*;
 
+import java.beans.PropertyChangeEvent;
 import java.util.*;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
+ * An elevation model composed of other elevation models, which are consulted from lowest resolution to highest.
+ * <p/>
+ * When the composed tile cache is enabled, point queries and batch queries of a single target resolution are served
+ * from a cache of composed tiles: grids of elevations merged from all the child models, keyed by a {@link TileKey}
+ * whose level corresponds to the target resolution. Elevations are interpolated from the composed tiles, so they may
+ * differ slightly from those of the child models. A composed tile whose children did not yet have data of the tile's
+ * resolution is composed again after a child model reports new data, and all composed tiles are discarded when child
+ * models are added, removed, enabled or disabled. The cache is disabled by default, and is enabled by the {@link
+ * AVKey#COMPOSED_ELEVATION_TILE_CACHE_ENABLED} configuration property or {@link #setComposedTileCacheEnabled(boolean)}.
+ *
  * @author tag
  * @version $Id: CompoundElevationModel.java 3417 2015-08-20 20:47:05Z tgaskins $
  */
 public class CompoundElevationModel extends AbstractElevationModel
 {
+    /** The number of cells along each side of a composed tile. Composed tiles have one more sample than cells. */
+    protected static final int COMPOSED_TILE_CELLS = 32;
+    /** The tile delta in degrees of level 0 of the composed tiles. Each level halves the delta of the one before it. */
+    protected static final double COMPOSED_TILE_LEVEL_ZERO_DELTA = 36;
+    protected static final int COMPOSED_TILE_MAX_LEVEL = 24;
+
     protected CopyOnWriteArrayList<ElevationModel> elevationModels = new CopyOnWriteArrayList<ElevationModel>();
+    protected boolean composedTileCacheEnabled = Configuration.getBooleanValue(
+        AVKey.COMPOSED_ELEVATION_TILE_CACHE_ENABLED, false);
+    protected MemoryCache composedTileCache;
+    protected final String composedTileCacheName = "CompoundElevationModel@" + System.identityHashCode(this);
+    /** Identifies the child models and their enabled states when the cached values were computed. */
+    protected volatile int cacheState;
+    /** Counts the child models' reports of new data. */
+    protected final AtomicLong dataGeneration = new AtomicLong();
+    protected volatile double[] cachedMinMax;
+    protected final AtomicLong composedTileHits = new AtomicLong();
+    protected final AtomicLong composedTileMisses = new AtomicLong();
+
+    /**
+     * A grid of elevations merged from the child models, covering one tile of a global grid of tiles. Samples are in
+     * row-major order from the south-west corner, and are NaN where no child model has data.
+     */
+    protected static class ComposedTile implements Cacheable
+    {
+        protected final double minLat;
+        protected final double minLon;
+        protected final double delta;
+        protected final float[] elevations;
+        /** The resolution achieved when the tile was composed. */
+        protected final double resolution;
+        /** Indicates whether every child model provided its best data for the tile's resolution. */
+        protected final boolean complete;
+        /** The data generation in which the tile was composed. */
+        protected final long generation;
+
+        protected ComposedTile(double minLat, double minLon, double delta, float[] elevations, double resolution,
+            boolean complete, long generation)
+        {
+            this.minLat = minLat;
+            this.minLon = minLon;
+            this.delta = delta;
+            this.elevations = elevations;
+            this.resolution = resolution;
+            this.complete = complete;
+            this.generation = generation;
+        }
+
+        public long getSizeInBytes()
+        {
+            return 4L * this.elevations.length + 64;
+        }
+
+        protected boolean contains(double latitude, double longitude)
+        {
+            return latitude >= this.minLat && latitude <= this.minLat + this.delta
+                && longitude >= this.minLon && longitude <= this.minLon + this.delta;
+        }
+
+        /**
+         * Interpolates the tile's elevations bilinearly, ignoring samples without data.
+         *
+         * @param latitude  the latitude in degrees.
+         * @param longitude the longitude in degrees.
+         *
+         * @return the elevation, or NaN if the four surrounding samples have no data.
+         */
+        protected double interpolate(double latitude, double longitude)
+        {
+            int n = COMPOSED_TILE_CELLS;
+            double x = WWMath.clamp((longitude - this.minLon) / this.delta * n, 0, n);
+            double y = WWMath.clamp((latitude - this.minLat) / this.delta * n, 0, n);
+            int i = Math.min((int) x, n - 1);
+            int j = Math.min((int) y, n - 1);
+            double s = x - i;
+            double t = y - j;
+
+            int index = j * (n + 1) + i;
+            double sum = 0;
+            double weight = 0;
+            float e = this.elevations[index];
+            if (!Float.isNaN(e))
+            {
+                double w = (1 - s) * (1 - t);
+                sum += w * e;
+                weight += w;
+            }
+            e = this.elevations[index + 1];
+            if (!Float.isNaN(e))
+            {
+                double w = s * (1 - t);
+                sum += w * e;
+                weight += w;
+            }
+            e = this.elevations[index + n + 1];
+            if (!Float.isNaN(e))
+            {
+                double w = (1 - s) * t;
+                sum += w * e;
+                weight += w;
+            }
+            e = this.elevations[index + n + 2];
+            if (!Float.isNaN(e))
+            {
+                double w = s * t;
+                sum += w * e;
+                weight += w;
+            }
+
+            return weight > 0 ? sum / weight : Double.NaN;
+        }
+    }
 
     public void dispose()
     {
@@ -112,6 +238,7 @@ public class CompoundElevationModel extends AbstractElevationModel
 
         this.elevationModels.add(em);
         this.sortElevationModels();
+        this.addChild(em);
     }
 
     /**
@@ -139,6 +266,7 @@ public class CompoundElevationModel extends AbstractElevationModel
         }
 
         this.elevationModels.add(index, em); // the list's add method will throw exception for invalid index
+        this.addChild(em);
     }
 
     public void removeElevationModel(ElevationModel em)
@@ -156,7 +284,8 @@ public class CompoundElevationModel extends AbstractElevationModel
                 ((CompoundElevationModel) child).removeElevationModel(em);
         }
 
-        this.elevationModels.remove(em);
+        if (this.elevationModels.remove(em))
+            this.removeChild(em);
     }
 
     public void removeElevationModel(int index)
@@ -168,7 +297,7 @@ public class CompoundElevationModel extends AbstractElevationModel
             throw new IllegalArgumentException(msg);
         }
 
-        this.elevationModels.remove(index);
+        this.removeChild(this.elevationModels.remove(index));
     }
 
     public void setElevationModel(int index, ElevationModel em)
@@ -187,7 +316,32 @@ public class CompoundElevationModel extends AbstractElevationModel
             throw new IllegalArgumentException(msg);
         }
 
-        this.elevationModels.set(index, em);
+        this.removeChild(this.elevationModels.set(index, em));
+        this.addChild(em);
+    }
+
+    /**
+     * Called when an elevation model is added to this compound model. Forwards the child's property change events to
+     * this model's listeners, and notifies them that this model's elevations have changed.
+     *
+     * @param em the added elevation model.
+     */
+    protected void addChild(ElevationModel em)
+    {
+        em.addPropertyChangeListener(this);
+        this.firePropertyChange(AVKey.ELEVATION_MODEL, null, this);
+    }
+
+    /**
+     * Called when an elevation model is removed from this compound model. Stops forwarding the child's property change
+     * events, and notifies this model's listeners that its elevations have changed.
+     *
+     * @param em the removed elevation model.
+     */
+    protected void removeChild(ElevationModel em)
+    {
+        em.removePropertyChangeListener(this);
+        this.firePropertyChange(AVKey.ELEVATION_MODEL, null, this);
     }
 
     public List<ElevationModel> getElevationModels()
@@ -211,9 +365,58 @@ public class CompoundElevationModel extends AbstractElevationModel
         {
             em.setExpiryTime(expiryTime);
         }
+
+        this.clearComposedTiles();
+    }
+
+    /**
+     * Overridden to note that a child model has new data before forwarding the event to this model's listeners.
+     *
+     * @param propertyChangeEvent the event.
+     */
+    @Override
+    public void propertyChange(PropertyChangeEvent propertyChangeEvent)
+    {
+        if (propertyChangeEvent != null && AVKey.ELEVATION_MODEL.equals(propertyChangeEvent.getPropertyName()))
+        {
+            this.dataGeneration.incrementAndGet();
+            this.cachedMinMax = null;
+        }
+
+        super.propertyChange(propertyChangeEvent);
+    }
+
+    public double getMaxElevation()
+    {
+        return this.getMinAndMaxElevations()[1];
+    }
+
+    public double getMinElevation()
+    {
+        return this.getMinAndMaxElevations()[0];
+    }
+
+    /**
+     * Returns the minimum and maximum elevations of the enabled child models. The values are cached until the child
+     * models change or report new data.
+     *
+     * @return a two-element array holding the minimum and maximum elevations.
+     */
+    protected double[] getMinAndMaxElevations()
+    {
+        this.updateCacheState();
+
+        double[] minMax = this.cachedMinMax;
+        if (minMax == null)
+        {
+            minMax = new double[] {this.computeMinElevation(), this.computeMaxElevation()};
+            this.cachedMinMax = minMax;
+        }
+
+        return minMax;
     }
 
-    public double getMaxElevation() // TODO: probably want to cache the min and max rather than always compute them
+    protected double computeMaxElevation()
     {
         double max = -Double.MAX_VALUE;
 
@@ -230,7 +433,7 @@ public class CompoundElevationModel extends AbstractElevationModel
         return max == -Double.MAX_VALUE ? 0 : max;
     }
 
-    public double getMinElevation()
+    protected double computeMinElevation()
     {
         double min = Double.MAX_VALUE;
 
@@ -434,6 +637,14 @@ public class CompoundElevationModel extends AbstractElevationModel
             throw new IllegalArgumentException(message);
         }
 
+        if (this.isComposedTileCacheEnabled())
+        {
+            double[] buffer = new double[] {Double.NaN};
+            this.getComposedElevations(new double[] {latitude.degrees}, new double[] {longitude.degrees},
+                this.getBestResolution(null), buffer);
+            return Double.isNaN(buffer[0]) ? this.missingDataFlag : buffer[0];
+        }
+
         // Find the best elevation available at the specified (latitude, longitude) coordinates.
         Double value = this.missingDataFlag;
         for (int i = this.elevationModels.size() - 1; i >= 0; i--) // iterate from highest resolution to lowest
@@ -483,6 +694,9 @@ public class CompoundElevationModel extends AbstractElevationModel
      */
     public double getElevations(Sector sector, List<? extends LatLon> latlons, double targetResolution, double[] buffer)
     {
+        if (this.isComposedTileCacheEnabled())
+            return this.getComposedElevations(sector, latlons, targetResolution, buffer);
+
         double[] targetResolutions = new double[this.elevationModels.size()];
         for (int i = 0; i < targetResolutions.length; i++)
         {
@@ -515,6 +729,9 @@ public class CompoundElevationModel extends AbstractElevationModel
     public double getUnmappedElevations(Sector sector, List<? extends LatLon> latlons, double targetResolution,
         double[] buffer)
     {
+        if (this.isComposedTileCacheEnabled())
+            return this.getComposedElevations(sector, latlons, targetResolution, buffer);
+
         double[] targetResolutions = new double[this.elevationModels.size()];
         for (int i = 0; i < targetResolutions.length; i++)
         {
@@ -605,6 +822,95 @@ public class CompoundElevationModel extends AbstractElevationModel
         return resolutionAchieved;
     }
 
+    public double getElevations(Sector sector, double[] latitudes, double[] longitudes, double targetResolution,
+        double[] buffer)
+    {
+        if (this.isComposedTileCacheEnabled())
+        {
+            this.validateLocations(sector, latitudes, longitudes, buffer);
+            return this.getComposedElevations(latitudes, longitudes, targetResolution, buffer);
+        }
+
+        double[] targetResolutions = new double[this.elevationModels.size()];
+        Arrays.fill(targetResolutions, targetResolution);
+
+        return this.doGetElevations(sector, latitudes, longitudes, targetResolutions, buffer, false)[0];
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * NOTE: As with {@link #getUnmappedElevations(gov.nasa.worldwind.geom.Sector, java.util.List, double, double[])},
+     * this method returns only unmapped elevations if the compound model contains more than one elevation model.
+     */
+    public double getUnmappedElevations(Sector sector, double[] latitudes, double[] longitudes,
+        double targetResolution, double[] buffer)
+    {
+        if (this.isComposedTileCacheEnabled())
+        {
+            this.validateLocations(sector, latitudes, longitudes, buffer);
+            return this.getComposedElevations(latitudes, longitudes, targetResolution, buffer);
+        }
+
+        double[] targetResolutions = new double[this.elevationModels.size()];
+        Arrays.fill(targetResolutions, targetResolution);
+
+        return this.doGetElevations(sector, latitudes, longitudes, targetResolutions, buffer, false)[0];
+    }
+
+    @Override
+    public double[] getElevations(Sector sector, double[] latitudes, double[] longitudes, double[] targetResolutions,
+        double[] buffer)
+    {
+        return this.doGetElevations(sector, latitudes, longitudes, targetResolutions, buffer, false);
+    }
+
+    @Override
+    public double[] getUnmappedElevations(Sector sector, double[] latitudes, double[] longitudes,
+        double[] targetResolutions, double[] buffer)
+    {
+        return this.doGetElevations(sector, latitudes, longitudes, targetResolutions, buffer, false);
+    }
+
+    protected double[] doGetElevations(Sector sector, double[] latitudes, double[] longitudes,
+        double[] targetResolution, double[] buffer, boolean mapMissingData)
+    {
+        this.validateLocations(sector, latitudes, longitudes, buffer);
+
+        if (targetResolution == null)
+        {
+            String msg = Logging.getMessage("nullValue.TargetElevationsArrayIsNull");
+            Logging.logger().severe(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        // Fill the buffer from lowest resolution model to highest, as the list method does.
+        double[] resolutionAchieved = new double[this.elevationModels.size()];
+        for (int i = 0; i < this.elevationModels.size(); i++)
+        {
+            ElevationModel em = this.elevationModels.get(i);
+            resolutionAchieved[i] = 0;
+
+            if (!em.isEnabled())
+                continue;
+
+            int c = em.intersects(sector);
+            if (c < 0) // no intersection
+                continue;
+
+            double r;
+            if (mapMissingData || this.elevationModels.size() == 1)
+                r = em.getElevations(sector, latitudes, longitudes, targetResolution[i], buffer);
+            else
+                r = em.getUnmappedElevations(sector, latitudes, longitudes, targetResolution[i], buffer);
+
+            if (r < resolutionAchieved[i] || resolutionAchieved[i] == 0)
+                resolutionAchieved[i] = r;
+        }
+
+        return resolutionAchieved;
+    }
+
     public void composeElevations(Sector sector, List<? extends LatLon> latlons, int tileWidth,
         double[] buffer) throws Exception
     {
@@ -703,6 +1009,290 @@ public class CompoundElevationModel extends AbstractElevationModel
         return false;
     }
 
+    /**
+     * Indicates whether point queries and batch queries of a single target resolution are served from composed tiles.
+     *
+     * @return true if the composed tile cache is enabled, otherwise false.
+     */
+    public boolean isComposedTileCacheEnabled()
+    {
+        return this.composedTileCacheEnabled;
+    }
+
+    /**
+     * Specifies whether point queries and batch queries of a single target resolution are served from composed tiles.
+     * The default is the value of the {@link AVKey#COMPOSED_ELEVATION_TILE_CACHE_ENABLED} configuration property, or
+     * false if that property is not specified.
+     *
+     * @param enabled true to enable the composed tile cache, otherwise false.
+     */
+    public void setComposedTileCacheEnabled(boolean enabled)
+    {
+        this.composedTileCacheEnabled = enabled;
+        this.clearComposedTiles();
+    }
+
+    /**
+     * Returns the number of composed tile lookups that found a valid tile in the cache since the statistics were last
+     * reset.
+     *
+     * @return the number of cache hits.
+     */
+    public long getComposedTileHitCount()
+    {
+        return this.composedTileHits.get();
+    }
+
+    /**
+     * Returns the number of composed tile lookups that composed a tile, either because it was not in the cache or
+     * because its children had new data, since the statistics were last reset.
+     *
+     * @return the number of cache misses.
+     */
+    public long getComposedTileMissCount()
+    {
+        return this.composedTileMisses.get();
+    }
+
+    /**
+     * Returns the fraction of composed tile lookups that found a valid tile in the cache.
+     *
+     * @return the hit rate, in the range [0, 1], or 0 if there have been no lookups.
+     */
+    public double getComposedTileHitRate()
+    {
+        long hits = this.composedTileHits.get();
+        long lookups = hits + this.composedTileMisses.get();
+
+        return lookups > 0 ? (double) hits / lookups : 0;
+    }
+
+    /** Resets the composed tile hit and miss counts to 0. */
+    public void resetComposedTileStatistics()
+    {
+        this.composedTileHits.set(0);
+        this.composedTileMisses.set(0);
+    }
+
+    /** Discards all composed tiles and the cached minimum and maximum elevations. */
+    public void clearComposedTiles()
+    {
+        if (this.composedTileCache != null)
+            this.composedTileCache.clear();
+
+        this.cachedMinMax = null;
+    }
+
+    protected synchronized MemoryCache getComposedTileCache()
+    {
+        // Like BasicElevationModel's extremes lookup cache, this cache is local to this model and is reclaimed with it.
+        if (this.composedTileCache == null)
+        {
+            long size = Configuration.getLongValue(AVKey.COMPOSED_ELEVATION_TILE_CACHE_SIZE, 20000000L);
+            this.composedTileCache = new BasicMemoryCache((long) (0.85 * size), size);
+        }
+
+        return this.composedTileCache;
+    }
+
+    /** Discards the cached values if the child models or their enabled states have changed since they were cached. */
+    protected void updateCacheState()
+    {
+        int state = this.elevationModels.size();
+        for (ElevationModel em : this.elevationModels)
+        {
+            state = 31 * state + System.identityHashCode(em) * 2 + (em.isEnabled() ? 1 : 0);
+        }
+
+        if (state != this.cacheState)
+        {
+            this.cacheState = state;
+            this.clearComposedTiles();
+        }
+    }
+
+    protected double getComposedElevations(Sector sector, List<? extends LatLon> latlons, double targetResolution,
+        double[] buffer)
+    {
+        if (sector == null)
+        {
+            String msg = Logging.getMessage("nullValue.SectorIsNull");
+            Logging.logger().severe(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        if (latlons == null)
+        {
+            String msg = Logging.getMessage("nullValue.LatLonListIsNull");
+            Logging.logger().severe(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        if (buffer == null)
+        {
+            String msg = Logging.getMessage("nullValue.ElevationsBufferIsNull");
+            Logging.logger().severe(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        if (buffer.length < latlons.size())
+        {
+            String msg = Logging.getMessage("ElevationModel.ElevationsBufferTooSmall", latlons.size());
+            Logging.logger().severe(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        double[] latitudes = new double[latlons.size()];
+        double[] longitudes = new double[latlons.size()];
+        double[] elevations = new double[latlons.size()];
+        for (int i = 0; i < latitudes.length; i++)
+        {
+            LatLon ll = latlons.get(i);
+            latitudes[i] = ll != null ? ll.getLatitude().degrees : Double.NaN;
+            longitudes[i] = ll != null ? ll.getLongitude().degrees : Double.NaN;
+            elevations[i] = buffer[i];
+        }
+
+        double resolution = this.getComposedElevations(latitudes, longitudes, targetResolution, elevations);
+        System.arraycopy(elevations, 0, buffer, 0, latitudes.length);
+
+        return resolution;
+    }
+
+    /**
+     * Interpolates elevations from the composed tiles of the level matching a target resolution, composing the tiles
+     * that are not cached or are out of date. Locations with a NaN coordinate, and locations where no child model has
+     * data, leave the buffer unmodified.
+     *
+     * @param latitudes        the locations' latitudes in degrees.
+     * @param longitudes       the locations' longitudes in degrees.
+     * @param targetResolution the desired horizontal resolution in radians.
+     * @param buffer           the array in which to place the elevations.
+     *
+     * @return the lowest resolution achieved by the composed tiles used, in radians.
+     */
+    protected double getComposedElevations(double[] latitudes, double[] longitudes, double targetResolution,
+        double[] buffer)
+    {
+        if (this.elevationModels.isEmpty())
+            return Double.MAX_VALUE;
+
+        this.updateCacheState();
+
+        int level = this.computeComposedTileLevel(targetResolution);
+        double delta = COMPOSED_TILE_LEVEL_ZERO_DELTA / (1L << level);
+        int numRows = (int) Math.round(180 / delta);
+        int numCols = (int) Math.round(360 / delta);
+
+        ComposedTile tile = null;
+        double resolution = 0;
+        for (int i = 0; i < latitudes.length; i++)
+        {
+            double lat = latitudes[i];
+            double lon = longitudes[i];
+            if (Double.isNaN(lat) || Double.isNaN(lon))
+                continue;
+
+            // Consecutive locations are usually in the same tile.
+            if (tile == null || !tile.contains(lat, lon))
+            {
+                int row = WWMath.clamp((int) Math.floor((lat + 90) / delta), 0, numRows - 1);
+                int col = WWMath.clamp((int) Math.floor((lon + 180) / delta), 0, numCols - 1);
+                tile = this.getComposedTile(level, row, col, delta);
+                if (tile.resolution > resolution)
+                    resolution = tile.resolution;
+            }
+
+            double elevation = tile.interpolate(lat, lon);
+            if (!Double.isNaN(elevation))
+                buffer[i] = elevation;
+        }
+
+        return resolution;
+    }
+
+    protected int computeComposedTileLevel(double targetResolution)
+    {
+        double levelZeroResolution = Math.toRadians(COMPOSED_TILE_LEVEL_ZERO_DELTA) / COMPOSED_TILE_CELLS;
+        if (!(targetResolution > 0))
+            return COMPOSED_TILE_MAX_LEVEL;
+
+        // Use the coarsest level whose resolution is at least as fine as the target resolution.
+        double level = Math.ceil(Math.log(levelZeroResolution / targetResolution) / Math.log(2));
+        return (int) WWMath.clamp(level, 0, COMPOSED_TILE_MAX_LEVEL);
+    }
+
+    protected ComposedTile getComposedTile(int level, int row, int col, double delta)
+    {
+        TileKey key = new TileKey(level, row, col, this.composedTileCacheName);
+        ComposedTile tile = (ComposedTile) this.getComposedTileCache().getObject(key);
+
+        // Complete tiles stay valid until the child models change. Other tiles are valid until a child has new data.
+        if (tile != null && (tile.complete || tile.generation == this.dataGeneration.get()))
+        {
+            this.composedTileHits.incrementAndGet();
+            return tile;
+        }
+
+        this.composedTileMisses.incrementAndGet();
+        tile = this.composeTile(row, col, delta);
+        this.getComposedTileCache().add(key, tile);
+
+        return tile;
+    }
+
+    protected ComposedTile composeTile(int row, int col, double delta)
+    {
+        // Read the generation first, so that data arriving during composition makes the tile out of date.
+        long generation = this.dataGeneration.get();
+
+        int n = COMPOSED_TILE_CELLS;
+        double minLat = -90 + row * delta;
+        double minLon = -180 + col * delta;
+        double[] latitudes = new double[(n + 1) * (n + 1)];
+        double[] longitudes = new double[latitudes.length];
+        for (int j = 0, k = 0; j <= n; j++)
+        {
+            for (int i = 0; i <= n; i++, k++)
+            {
+                latitudes[k] = minLat + j * delta / n;
+                longitudes[k] = minLon + i * delta / n;
+            }
+        }
+
+        Sector sector = Sector.fromDegrees(minLat, minLat + delta, minLon, minLon + delta);
+        double tileResolution = Math.toRadians(delta) / n;
+        double[] targetResolutions = new double[this.elevationModels.size()];
+        Arrays.fill(targetResolutions, tileResolution);
+
+        // Children leave the buffer unmodified where they have no data, so samples without data remain NaN.
+        double[] buffer = new double[latitudes.length];
+        Arrays.fill(buffer, Double.NaN);
+        double[] achieved = this.doGetElevations(sector, latitudes, longitudes, targetResolutions, buffer, false);
+
+        boolean complete = true;
+        Set<Double> missingSignals = new HashSet<Double>();
+        for (int i = 0; i < achieved.length; i++)
+        {
+            ElevationModel em = this.elevationModels.get(i);
+            if (!em.isEnabled() || em.intersects(sector) < 0)
+                continue;
+
+            missingSignals.add(em.getMissingDataSignal());
+            if (achieved[i] > Math.max(tileResolution, em.getBestResolution(sector)))
+                complete = false;
+        }
+
+        float[] elevations = new float[buffer.length];
+        for (int i = 0; i < buffer.length; i++)
+        {
+            elevations[i] = missingSignals.contains(buffer[i]) ? Float.NaN : (float) buffer[i];
+        }
+
+        return new ComposedTile(minLat, minLon, delta, elevations, achieved.length > 0 ? achieved[0] : 0, complete,
+            generation);
+    }
+
     /**
      * Returns the elevation for this elevation model's highest level of detail at a specified location if the source
      * file for that level and the specified location exists in the local elevation cache on disk.
@@ -0,0 +1,459 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+
+package gov.nasa.worldwind.terrain;
+
+import gov.nasa.worldwind.geom.*;
+import gov.nasa.worldwind.util.*;
+
+import java.io.*;
+
+/**
+ * A pyramid of the minimum and maximum elevations of each tile of a tiled elevation dataset, at each level of the
+ * dataset's {@link LevelSet}. Each tile's extremes include the extremes of all its descendants, so the extremes of any
+ * sector are bounded by the extremes of the tiles that cover it at any level. {@link #getExtremes(Sector)} uses the
+ * finest level at which at most {@link #MAX_QUERY_TILES} tiles cover the sector, so a query costs one lookup per level
+ * to choose the level plus a constant number of tile lookups, and its bounds are tight to within the size of a tile
+ * comparable to the sector.
+ * <p/>
+ * A pyramid is built by adding the extremes of each tile with {@link #addTileExtremes(int, int, int, double, double)},
+ * usually as the tiles are produced, then calling {@link #computeCoarseLevels()}. Levels are allocated only when
+ * extremes are added to them. Pyramids are written to and read from a compact binary format with {@link
+ * #write(java.io.OutputStream)} and {@link #read(java.io.InputStream)}.
+ *
+ * @version $Id$
+ * @see gov.nasa.worldwind.data.TiledElevationProducer
+ * @see BasicElevationModel#loadExtremesPyramid(String)
+ */
+public class ElevationExtremesPyramid
+{
+    /** The largest number of tiles a sector query examines, unless the sector is larger than the coarsest level. */
+    public static final int MAX_QUERY_TILES = 16;
+
+    protected static final int MAGIC_NUMBER = 0x57574550; // "WWEP"
+    protected static final int VERSION = 1;
+
+    /** The extremes of the tiles of one level, in row-major order. Tiles without data have NaN extremes. */
+    protected static class PyramidLevel
+    {
+        protected final int firstRow;
+        protected final int firstCol;
+        protected final int numRows;
+        protected final int numCols;
+        protected final float[] extremes;
+
+        protected PyramidLevel(int firstRow, int firstCol, int numRows, int numCols)
+        {
+            this.firstRow = firstRow;
+            this.firstCol = firstCol;
+            this.numRows = numRows;
+            this.numCols = numCols;
+            this.extremes = new float[2 * numRows * numCols];
+            java.util.Arrays.fill(this.extremes, Float.NaN);
+        }
+    }
+
+    protected final Sector sector;
+    protected final double originLat;
+    protected final double originLon;
+    /** The latitude and longitude tile deltas of each level, in degrees. */
+    protected final double[] deltaLat;
+    protected final double[] deltaLon;
+    protected final PyramidLevel[] levels;
+
+    /**
+     * Creates an empty pyramid for the levels of a level set.
+     *
+     * @param levelSet the level set of the tiled elevation dataset.
+     *
+     * @throws IllegalArgumentException if the level set is null.
+     */
+    public ElevationExtremesPyramid(LevelSet levelSet)
+    {
+        if (levelSet == null)
+        {
+            String message = Logging.getMessage("nullValue.LevelSetIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        this.sector = levelSet.getSector();
+        this.originLat = levelSet.getTileOrigin().getLatitude().degrees;
+        this.originLon = levelSet.getTileOrigin().getLongitude().degrees;
+
+        int numLevels = levelSet.getNumLevels();
+        this.deltaLat = new double[numLevels];
+        this.deltaLon = new double[numLevels];
+        this.levels = new PyramidLevel[numLevels];
+        for (int i = 0; i < numLevels; i++)
+        {
+            LatLon delta = levelSet.getLevel(i).getTileDelta();
+            this.deltaLat[i] = delta.getLatitude().degrees;
+            this.deltaLon[i] = delta.getLongitude().degrees;
+        }
+    }
+
+    protected ElevationExtremesPyramid(Sector sector, double originLat, double originLon, double[] deltaLat,
+        double[] deltaLon)
+    {
+        this.sector = sector;
+        this.originLat = originLat;
+        this.originLon = originLon;
+        this.deltaLat = deltaLat;
+        this.deltaLon = deltaLon;
+        this.levels = new PyramidLevel[deltaLat.length];
+    }
+
+    public Sector getSector()
+    {
+        return this.sector;
+    }
+
+    public int getNumLevels()
+    {
+        return this.levels.length;
+    }
+
+    /**
+     * Adds the extremes of a tile's elevations to the tile's extremes. Tiles outside the pyramid's sector are ignored.
+     *
+     * @param levelNumber the tile's level number.
+     * @param row         the tile's row.
+     * @param col         the tile's column.
+     * @param min         the tile's minimum elevation.
+     * @param max         the tile's maximum elevation.
+     *
+     * @throws IllegalArgumentException if the level number is not one of this pyramid's levels.
+     */
+    public synchronized void addTileExtremes(int levelNumber, int row, int col, double min, double max)
+    {
+        if (levelNumber < 0 || levelNumber >= this.levels.length)
+        {
+            String message = Logging.getMessage("generic.ArgumentOutOfRange", levelNumber);
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        PyramidLevel level = this.getOrCreateLevel(levelNumber);
+        int r = row - level.firstRow;
+        int c = col - level.firstCol;
+        if (r < 0 || r >= level.numRows || c < 0 || c >= level.numCols)
+            return;
+
+        // Round the extremes outward so that they still bound the elevations as floats.
+        float fMin = (float) min;
+        if (fMin > min)
+            fMin = Math.nextAfter(fMin, Double.NEGATIVE_INFINITY);
+        float fMax = (float) max;
+        if (fMax < max)
+            fMax = Math.nextAfter(fMax, Double.POSITIVE_INFINITY);
+
+        int index = 2 * (r * level.numCols + c);
+        if (Float.isNaN(level.extremes[index]) || fMin < level.extremes[index])
+            level.extremes[index] = fMin;
+        if (Float.isNaN(level.extremes[index + 1]) || fMax > level.extremes[index + 1])
+            level.extremes[index + 1] = fMax;
+    }
+
+    /**
+     * Clears the extremes of the tiles at every level that contain part of a sector, so that new extremes can be added
+     * for them. A tile which only touches the sector's southern or western edge keeps its extremes; adding new extremes
+     * to it then gives extremes that still bound its elevations.
+     *
+     * @param sector the sector whose tiles are cleared.
+     *
+     * @throws IllegalArgumentException if the sector is null.
+     */
+    public synchronized void clearTileExtremes(Sector sector)
+    {
+        if (sector == null)
+        {
+            String message = Logging.getMessage("nullValue.SectorIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        if (!sector.intersects(this.sector))
+            return;
+
+        for (int i = 0; i < this.levels.length; i++)
+        {
+            PyramidLevel level = this.levels[i];
+            if (level == null)
+                continue;
+
+            int firstRow = this.clampRow(level, computeIndex(sector.getMinLatitude().degrees, this.originLat,
+                this.deltaLat[i]));
+            int lastRow = this.clampRow(level, computeIndex(sector.getMaxLatitude().degrees, this.originLat,
+                this.deltaLat[i]));
+            int firstCol = this.clampCol(level, computeIndex(sector.getMinLongitude().degrees, this.originLon,
+                this.deltaLon[i]));
+            int lastCol = this.clampCol(level, computeIndex(sector.getMaxLongitude().degrees, this.originLon,
+                this.deltaLon[i]));
+
+            for (int r = firstRow; r <= lastRow; r++)
+            {
+                int index = 2 * (r * level.numCols + firstCol);
+                java.util.Arrays.fill(level.extremes, index, index + 2 * (lastCol - firstCol + 1), Float.NaN);
+            }
+        }
+    }
+
+    /**
+     * Adds the extremes of each tile to the extremes of the tile containing it at the next coarser level, from the
+     * finest level to level 0. After this every tile's extremes bound the elevations of all its descendants.
+     */
+    public synchronized void computeCoarseLevels()
+    {
+        for (int i = this.levels.length - 1; i > 0; i--)
+        {
+            PyramidLevel level = this.levels[i];
+            if (level == null)
+                continue;
+
+            for (int r = 0; r < level.numRows; r++)
+            {
+                // Find the parent tiles from the tile centers so that the levels' tile deltas need not be related.
+                double lat = this.originLat + (level.firstRow + r + 0.5) * this.deltaLat[i];
+                int parentRow = computeIndex(lat, this.originLat, this.deltaLat[i - 1]);
+
+                for (int c = 0; c < level.numCols; c++)
+                {
+                    int index = 2 * (r * level.numCols + c);
+                    if (Float.isNaN(level.extremes[index]))
+                        continue;
+
+                    double lon = this.originLon + (level.firstCol + c + 0.5) * this.deltaLon[i];
+                    int parentCol = computeIndex(lon, this.originLon, this.deltaLon[i - 1]);
+                    this.addTileExtremes(i - 1, parentRow, parentCol, level.extremes[index],
+                        level.extremes[index + 1]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the extremes of the elevations in a sector.
+     *
+     * @param sector the sector.
+     *
+     * @return a two-element array holding the minimum and maximum elevations, or null if the pyramid has no tiles
+     *         with data in the sector.
+     *
+     * @throws IllegalArgumentException if the sector is null.
+     */
+    public double[] getExtremes(Sector sector)
+    {
+        if (sector == null)
+        {
+            String message = Logging.getMessage("nullValue.SectorIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        if (!sector.intersects(this.sector))
+            return null;
+
+        double minLat = sector.getMinLatitude().degrees;
+        double maxLat = sector.getMaxLatitude().degrees;
+        double minLon = sector.getMinLongitude().degrees;
+        double maxLon = sector.getMaxLongitude().degrees;
+
+        // Choose the finest level at which few enough tiles cover the sector. The number of tiles grows with the level.
+        int levelNumber = -1;
+        for (int i = 0; i < this.levels.length; i++)
+        {
+            PyramidLevel level = this.levels[i];
+            if (level == null)
+                continue;
+
+            long numRows = this.clampRow(level, computeIndex(maxLat, this.originLat, this.deltaLat[i]))
+                - this.clampRow(level, computeIndex(minLat, this.originLat, this.deltaLat[i])) + 1;
+            long numCols = this.clampCol(level, computeIndex(maxLon, this.originLon, this.deltaLon[i]))
+                - this.clampCol(level, computeIndex(minLon, this.originLon, this.deltaLon[i])) + 1;
+            if (levelNumber >= 0 && numRows * numCols > MAX_QUERY_TILES)
+                break;
+
+            levelNumber = i;
+        }
+
+        if (levelNumber < 0)
+            return null;
+
+        PyramidLevel level = this.levels[levelNumber];
+        int firstRow = this.clampRow(level, computeIndex(minLat, this.originLat, this.deltaLat[levelNumber]));
+        int lastRow = this.clampRow(level, computeIndex(maxLat, this.originLat, this.deltaLat[levelNumber]));
+        int firstCol = this.clampCol(level, computeIndex(minLon, this.originLon, this.deltaLon[levelNumber]));
+        int lastCol = this.clampCol(level, computeIndex(maxLon, this.originLon, this.deltaLon[levelNumber]));
+
+        double min = Double.MAX_VALUE;
+        double max = -Double.MAX_VALUE;
+        for (int r = firstRow; r <= lastRow; r++)
+        {
+            for (int c = firstCol; c <= lastCol; c++)
+            {
+                int index = 2 * (r * level.numCols + c);
+                if (Float.isNaN(level.extremes[index]))
+                    continue;
+
+                if (level.extremes[index] < min)
+                    min = level.extremes[index];
+                if (level.extremes[index + 1] > max)
+                    max = level.extremes[index + 1];
+            }
+        }
+
+        return min <= max ? new double[] {min, max} : null;
+    }
+
+    /**
+     * Writes this pyramid to a stream. The stream is not closed.
+     *
+     * @param outputStream the stream to write to.
+     *
+     * @throws IOException              if writing fails.
+     * @throws IllegalArgumentException if the stream is null.
+     */
+    public synchronized void write(OutputStream outputStream) throws IOException
+    {
+        if (outputStream == null)
+        {
+            String message = Logging.getMessage("nullValue.OutputStreamIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(outputStream));
+        out.writeInt(MAGIC_NUMBER);
+        out.writeInt(VERSION);
+        out.writeDouble(this.sector.getMinLatitude().degrees);
+        out.writeDouble(this.sector.getMaxLatitude().degrees);
+        out.writeDouble(this.sector.getMinLongitude().degrees);
+        out.writeDouble(this.sector.getMaxLongitude().degrees);
+        out.writeDouble(this.originLat);
+        out.writeDouble(this.originLon);
+        out.writeInt(this.levels.length);
+
+        for (int i = 0; i < this.levels.length; i++)
+        {
+            PyramidLevel level = this.levels[i];
+            out.writeDouble(this.deltaLat[i]);
+            out.writeDouble(this.deltaLon[i]);
+            out.writeBoolean(level != null);
+            if (level == null)
+                continue;
+
+            out.writeInt(level.firstRow);
+            out.writeInt(level.firstCol);
+            out.writeInt(level.numRows);
+            out.writeInt(level.numCols);
+            for (float value : level.extremes)
+            {
+                out.writeFloat(value);
+            }
+        }
+
+        out.flush();
+    }
+
+    /**
+     * Reads a pyramid written by {@link #write(java.io.OutputStream)}. The stream is not closed.
+     *
+     * @param inputStream the stream to read from.
+     *
+     * @return the pyramid.
+     *
+     * @throws IOException              if reading fails or the stream does not contain a pyramid.
+     * @throws IllegalArgumentException if the stream is null.
+     */
+    public static ElevationExtremesPyramid read(InputStream inputStream) throws IOException
+    {
+        if (inputStream == null)
+        {
+            String message = Logging.getMessage("nullValue.InputStreamIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        DataInputStream in = new DataInputStream(new BufferedInputStream(inputStream));
+        if (in.readInt() != MAGIC_NUMBER || in.readInt() != VERSION)
+            throw new IOException(Logging.getMessage("ElevationExtremesPyramid.InvalidPyramid", inputStream));
+
+        Sector sector = Sector.fromDegrees(in.readDouble(), in.readDouble(), in.readDouble(), in.readDouble());
+        double originLat = in.readDouble();
+        double originLon = in.readDouble();
+        int numLevels = in.readInt();
+        if (numLevels < 0 || numLevels > 64)
+            throw new IOException(Logging.getMessage("ElevationExtremesPyramid.InvalidPyramid", inputStream));
+
+        PyramidLevel[] levels = new PyramidLevel[numLevels];
+        double[] deltaLat = new double[numLevels];
+        double[] deltaLon = new double[numLevels];
+        for (int i = 0; i < numLevels; i++)
+        {
+            deltaLat[i] = in.readDouble();
+            deltaLon[i] = in.readDouble();
+            if (!in.readBoolean())
+                continue;
+
+            int firstRow = in.readInt();
+            int firstCol = in.readInt();
+            int numRows = in.readInt();
+            int numCols = in.readInt();
+            if (numRows < 0 || numCols < 0 || (long) numRows * numCols > Integer.MAX_VALUE / 2)
+                throw new IOException(Logging.getMessage("ElevationExtremesPyramid.InvalidPyramid", inputStream));
+
+            levels[i] = new PyramidLevel(firstRow, firstCol, numRows, numCols);
+            for (int j = 0; j < levels[i].extremes.length; j++)
+            {
+                levels[i].extremes[j] = in.readFloat();
+            }
+        }
+
+        ElevationExtremesPyramid pyramid = new ElevationExtremesPyramid(sector, originLat, originLon, deltaLat,
+            deltaLon);
+        System.arraycopy(levels, 0, pyramid.levels, 0, numLevels);
+
+        return pyramid;
+    }
+
+    protected PyramidLevel getOrCreateLevel(int levelNumber)
+    {
+        PyramidLevel level = this.levels[levelNumber];
+        if (level == null)
+        {
+            // Cover the tiles of the pyramid's sector, as TiledRasterProducer does when it creates the tiles.
+            int firstRow = computeIndex(this.sector.getMinLatitude().degrees, this.originLat,
+                this.deltaLat[levelNumber]);
+            int lastRow = computeIndex(this.sector.getMaxLatitude().degrees, this.originLat,
+                this.deltaLat[levelNumber]);
+            int firstCol = computeIndex(this.sector.getMinLongitude().degrees, this.originLon,
+                this.deltaLon[levelNumber]);
+            int lastCol = computeIndex(this.sector.getMaxLongitude().degrees, this.originLon,
+                this.deltaLon[levelNumber]);
+
+            level = new PyramidLevel(firstRow, firstCol, lastRow - firstRow + 1, lastCol - firstCol + 1);
+            this.levels[levelNumber] = level;
+        }
+
+        return level;
+    }
+
+    protected int clampRow(PyramidLevel level, int row)
+    {
+        return WWMath.clamp(row - level.firstRow, 0, level.numRows - 1);
+    }
+
+    protected int clampCol(PyramidLevel level, int col)
+    {
+        return WWMath.clamp(col - level.firstCol, 0, level.numCols - 1);
+    }
+
+    protected static int computeIndex(double value, double origin, double delta)
+    {
+        return (int) Math.floor((value - origin) / delta);
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+
+package gov.nasa.worldwind.terrain;
+
+import gov.nasa.worldwind.util.Logging;
+
+import java.nio.FloatBuffer;
+
+/**
+ * Computes the geometry used to morph terrain tiles continuously between levels of detail. A tile's vertices form a
+ * grid of <code>(density + 3) x (density + 3)</code> vertices in row-major order: the interior grid of <code>(density
+ * + 1) x (density + 1)</code> vertices surrounded by a ring of skirt vertices duplicating the interior edges. Morphing
+ * blends each vertex between its position at the tile's own elevation and its position on the surface of the tile's
+ * parent, whose grid spacing is twice the tile's. The methods here use no OpenGL and can be used on any thread.
+ *
+ * @version $Id$
+ * @see GeomorphingTessellator
+ */
+public class Geomorph
+{
+    /**
+     * Computes the elevations of a tile's parent at each of the tile's vertices. Vertices at even interior rows and
+     * columns coincide with the parent's vertices and keep their own elevation. The others take the bilinear
+     * interpolation of the neighboring coinciding vertices. Skirt vertices take the parent elevation of the interior
+     * vertex they duplicate. If the density is odd the tile's vertices don't align with its parent's, and the
+     * elevations are copied unchanged.
+     *
+     * @param density          the tile's density, the number of cells along each side of the interior grid.
+     * @param elevations       the tile's elevations, one per vertex.
+     * @param parentElevations an array in which to place the parent elevations. May be the same length as
+     *                         <code>elevations</code> or longer.
+     *
+     * @throws IllegalArgumentException if either array is null or too short for the density, or the density is less
+     *                                  than one.
+     */
+    public static void computeParentElevations(int density, double[] elevations, double[] parentElevations)
+    {
+        if (density < 1)
+        {
+            String msg = Logging.getMessage("generic.ArgumentOutOfRange", "density=" + density);
+            Logging.logger().severe(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        if (elevations == null || parentElevations == null)
+        {
+            String msg = Logging.getMessage("nullValue.ArrayIsNull");
+            Logging.logger().severe(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        int side = density + 3;
+        if (elevations.length < side * side || parentElevations.length < side * side)
+        {
+            String msg = Logging.getMessage("generic.ArrayInvalidLength",
+                Math.min(elevations.length, parentElevations.length));
+            Logging.logger().severe(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        if (density % 2 != 0)
+        {
+            System.arraycopy(elevations, 0, parentElevations, 0, side * side);
+            return;
+        }
+
+        for (int j = 0; j < side; j++)
+        {
+            int a = clampInterior(j, density); // interior row of the vertex, or of the one a skirt vertex duplicates
+            for (int i = 0; i < side; i++)
+            {
+                int b = clampInterior(i, density);
+                int k = (a + 1) * side + (b + 1);
+
+                double elevation;
+                if (a % 2 == 0 && b % 2 == 0)
+                    elevation = elevations[k];
+                else if (b % 2 == 0) // odd row: between the parent vertices below and above
+                    elevation = 0.5 * (elevations[k - side] + elevations[k + side]);
+                else if (a % 2 == 0) // odd column: between the parent vertices left and right
+                    elevation = 0.5 * (elevations[k - 1] + elevations[k + 1]);
+                else // center of a parent cell
+                    elevation = 0.25 * (elevations[k - side - 1] + elevations[k - side + 1]
+                        + elevations[k + side - 1] + elevations[k + side + 1]);
+
+                parentElevations[j * side + i] = elevation;
+            }
+        }
+    }
+
+    protected static int clampInterior(int index, int density)
+    {
+        return index == 0 ? 0 : index > density + 1 ? density : index - 1;
+    }
+
+    /**
+     * Computes the morph factor for a vertex at a specified distance from the eye. The factor is 0 -- the vertex is at
+     * its own elevation -- at distances up to <code>morphStart</code>, 1 -- the vertex is on the parent's surface -- at
+     * distances of <code>morphEnd</code> or more, and varies linearly in between.
+     *
+     * @param distance   the distance from the eye to the vertex.
+     * @param morphStart the distance at which morphing starts.
+     * @param morphEnd   the distance at which morphing ends.
+     *
+     * @return the morph factor, in the range [0, 1].
+     */
+    public static double computeMorphFactor(double distance, double morphStart, double morphEnd)
+    {
+        if (distance <= morphStart)
+            return 0;
+
+        if (distance >= morphEnd)
+            return 1;
+
+        return (distance - morphStart) / (morphEnd - morphStart);
+    }
+
+    /**
+     * Blends a tile's vertices between their own positions and their positions on the parent's surface, according to
+     * each vertex's distance from the eye. Vertex coordinates and the eye point are relative to the same origin,
+     * typically the tile's reference center. Because a point's Cartesian coordinates vary linearly with its elevation,
+     * blending positions is equivalent to blending elevations.
+     *
+     * @param vertices       the tile's vertex coordinates at its own elevations, three per vertex.
+     * @param parentVertices the tile's vertex coordinates at its parent's elevations, three per vertex.
+     * @param eyeX           the x coordinate of the eye point.
+     * @param eyeY           the y coordinate of the eye point.
+     * @param eyeZ           the z coordinate of the eye point.
+     * @param morphStart     the distance at which morphing starts.
+     * @param morphEnd       the distance at which morphing ends.
+     * @param buffer         the buffer in which to place the morphed vertex coordinates. Written from index 0 without
+     *                       changing its position.
+     *
+     * @return true if any of the buffer's coordinates changed, otherwise false.
+     *
+     * @throws IllegalArgumentException if any array or the buffer is null, or if the arrays' lengths differ or exceed
+     *                                  the buffer's limit.
+     */
+    public static boolean morphVertices(float[] vertices, float[] parentVertices, double eyeX, double eyeY,
+        double eyeZ, double morphStart, double morphEnd, FloatBuffer buffer)
+    {
+        if (vertices == null || parentVertices == null)
+        {
+            String msg = Logging.getMessage("nullValue.ArrayIsNull");
+            Logging.logger().severe(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        if (buffer == null)
+        {
+            String msg = Logging.getMessage("nullValue.BufferIsNull");
+            Logging.logger().severe(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        if (parentVertices.length != vertices.length || buffer.limit() < vertices.length)
+        {
+            String msg = Logging.getMessage("generic.ArrayInvalidLength", parentVertices.length);
+            Logging.logger().severe(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        boolean changed = false;
+        for (int i = 0; i < vertices.length; i += 3)
+        {
+            float x = vertices[i];
+            float y = vertices[i + 1];
+            float z = vertices[i + 2];
+
+            float px = parentVertices[i];
+            float py = parentVertices[i + 1];
+            float pz = parentVertices[i + 2];
+
+            if (px != x || py != y || pz != z)
+            {
+                double dx = x - eyeX;
+                double dy = y - eyeY;
+                double dz = z - eyeZ;
+                double t = computeMorphFactor(Math.sqrt(dx * dx + dy * dy + dz * dz), morphStart, morphEnd);
+                x += t * (px - x);
+                y += t * (py - y);
+                z += t * (pz - z);
+            }
+
+            if (buffer.get(i) != x || buffer.get(i + 1) != y || buffer.get(i + 2) != z)
+            {
+                buffer.put(i, x);
+                buffer.put(i + 1, y);
+                buffer.put(i + 2, z);
+                changed = true;
+            }
+        }
+
+        return changed;
+    }
+}
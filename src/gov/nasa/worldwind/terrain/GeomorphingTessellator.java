@@ -0,0 +1,263 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+
+package gov.nasa.worldwind.terrain;
+
+import gov.nasa.worldwind.geom.*;
+import gov.nasa.worldwind.render.DrawContext;
+import gov.nasa.worldwind.util.Logging;
+
+import java.nio.FloatBuffer;
+
+/**
+ * A {@link RectangularTessellator} that hides the popping of terrain as tiles split and merge by morphing each tile's
+ * vertices continuously between its own elevations and its parent's. A vertex is at its own elevation while the eye is
+ * near enough that the tile is about to split, and moves onto the parent's surface as the eye recedes to the distance
+ * at which the tile merges into its parent. Tiles therefore match their parent's shape when they appear and disappear,
+ * allowing a lower tile density than would otherwise be needed to hide popping.
+ * <p/>
+ * Each tile keeps its vertices at both its own and its parent's elevations. Morphed vertices are recomputed on the CPU
+ * when the eye moves, using {@link Geomorph}. Use this tessellator by specifying its class name for the {@link
+ * gov.nasa.worldwind.avlist.AVKey#TESSELLATOR_CLASS_NAME} configuration property.
+ *
+ * @version $Id$
+ */
+public class GeomorphingTessellator extends RectangularTessellator
+{
+    protected static final double DEFAULT_MORPH_REGION = 0.5;
+
+    protected static class MorphRenderInfo extends RenderInfo
+    {
+        protected float[] ownVertices;
+        protected float[] parentVertices;
+        protected Vec4 morphEyePoint;
+
+        protected MorphRenderInfo(DrawContext dc, int density, FloatBuffer vertices, Vec4 refCenter)
+        {
+            super(dc, density, vertices, refCenter);
+        }
+
+        @Override
+        protected long getSizeInBytes()
+        {
+            return super.getSizeInBytes() + (this.ownVertices != null ? 2 * this.ownVertices.length * 4 : 0);
+        }
+    }
+
+    protected static class MorphTileVertices extends TileVertices
+    {
+        protected float[] ownVertices;
+        protected float[] parentVertices;
+
+        public MorphTileVertices(TileVertices vertices)
+        {
+            this.vertices = vertices.vertices;
+            this.referenceCenter = vertices.referenceCenter;
+            this.elevations = vertices.elevations;
+            this.verticalExaggeration = vertices.verticalExaggeration;
+            this.elevationVersion = vertices.elevationVersion;
+        }
+    }
+
+    protected double morphRegion = DEFAULT_MORPH_REGION;
+
+    /**
+     * Returns this tessellator's tile density, the number of cells along each side of a tile.
+     *
+     * @return the tile density.
+     */
+    public int getDensity()
+    {
+        return this.density;
+    }
+
+    /**
+     * Specifies this tessellator's tile density, the number of cells along each side of a tile. The density must be
+     * even for a tile's vertices to align with its parent's; tiles of odd density are not morphed.
+     *
+     * @param density the tile density.
+     *
+     * @throws IllegalArgumentException if the density is less than one.
+     */
+    public void setDensity(int density)
+    {
+        if (density < 1)
+        {
+            String msg = Logging.getMessage("generic.ArgumentOutOfRange", "density=" + density);
+            Logging.logger().severe(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        this.density = density;
+        this.topLevelTilesCache.clear(); // tiles capture the density when created
+    }
+
+    /**
+     * Returns the fraction of a tile's lifetime, measured in eye distance, over which it morphs.
+     *
+     * @return the morph region.
+     *
+     * @see #setMorphRegion(double)
+     */
+    public double getMorphRegion()
+    {
+        return this.morphRegion;
+    }
+
+    /**
+     * Specifies the fraction of a tile's lifetime, measured in eye distance, over which it morphs. A tile exists while
+     * the eye is between the distance at which it splits and the distance at which it merges into its parent, twice
+     * as far. A region of 1 morphs over that whole range; smaller regions morph only over the part nearest the merge
+     * distance, keeping vertices at their own elevations elsewhere. The default is 0.5.
+     *
+     * @param morphRegion the morph region, in the range (0, 1].
+     *
+     * @throws IllegalArgumentException if the region is not in the range (0, 1].
+     */
+    public void setMorphRegion(double morphRegion)
+    {
+        if (!(morphRegion > 0 && morphRegion <= 1))
+        {
+            String msg = Logging.getMessage("generic.ArgumentOutOfRange", "morphRegion=" + morphRegion);
+            Logging.logger().severe(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        this.morphRegion = morphRegion;
+    }
+
+    @Override
+    public SectorGeometryList tessellate(DrawContext dc)
+    {
+        SectorGeometryList sgl = super.tessellate(dc);
+
+        // Tiles built during this call are already morphed for the current eye point; this updates the others.
+        Vec4 eyePoint = dc.getView().getEyePoint();
+        for (SectorGeometry tile : sgl)
+        {
+            this.updateMorph(dc, (RectTile) tile, eyePoint);
+        }
+
+        return sgl;
+    }
+
+    /**
+     * Computes the eye distances over which a tile morphs. Morphing ends at the distance at which the tile merges into
+     * its parent, which is twice the distance at which the tile splits.
+     *
+     * @param dc   the current draw context.
+     * @param tile the tile to compute the morph range for.
+     *
+     * @return the distances at which morphing starts and ends. Both are infinite if the tile is not to be morphed.
+     */
+    protected double[] computeMorphRange(DrawContext dc, RectTile tile)
+    {
+        double distanceScale = this.computeDistanceScale(dc, tile);
+        if (tile.getLevel() == 0 || !(distanceScale > 0))
+            return new double[] {Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY};
+
+        double splitDistance = dc.getGlobe().getRadius() * tile.getCellSize() / distanceScale;
+        double morphEnd = 2 * splitDistance;
+        double morphStart = morphEnd - this.morphRegion * (morphEnd - splitDistance);
+
+        return new double[] {morphStart, morphEnd};
+    }
+
+    @Override
+    protected TileVertices computeVertices(DrawContext dc, RectTile tile, FloatBuffer verts, boolean makeSkirts)
+    {
+        MorphTileVertices result = new MorphTileVertices(super.computeVertices(dc, tile, verts, makeSkirts));
+
+        int numVertices = (tile.density + 3) * (tile.density + 3);
+        result.ownVertices = new float[3 * numVertices];
+        verts.get(result.ownVertices);
+        verts.rewind();
+        result.parentVertices = result.ownVertices.clone();
+
+        double[] parentElevations = new double[numVertices];
+        Geomorph.computeParentElevations(tile.density, result.elevations, parentElevations);
+
+        double[] latitudes = new double[numVertices];
+        double[] longitudes = new double[numVertices];
+        this.computeLocations(tile, latitudes, longitudes);
+
+        // Only interior vertices between the parent's vertices move; the rest, including the skirts, stay as they are.
+        int side = tile.density + 3;
+        Vec4 refCenter = result.referenceCenter;
+        for (int j = 1; j < side - 1; j++)
+        {
+            for (int i = 1; i < side - 1; i++)
+            {
+                int k = j * side + i;
+                if (parentElevations[k] == result.elevations[k])
+                    continue;
+
+                Vec4 p = this.globe.computePointFromPosition(Angle.fromDegrees(latitudes[k]),
+                    Angle.fromDegrees(longitudes[k]), result.verticalExaggeration * parentElevations[k]);
+                result.parentVertices[3 * k] = (float) (p.x - refCenter.x);
+                result.parentVertices[3 * k + 1] = (float) (p.y - refCenter.y);
+                result.parentVertices[3 * k + 2] = (float) (p.z - refCenter.z);
+            }
+        }
+
+        return result;
+    }
+
+    @Override
+    protected boolean installVerts(DrawContext dc, RectTile tile, TileVertices vertices)
+    {
+        MorphTileVertices morphVertices = (MorphTileVertices) vertices;
+
+        // Morph the vertices before they're installed, so that they're loaded into the VBO only once.
+        Vec4 eyePoint = dc.getView().getEyePoint();
+        Vec4 refCenter = morphVertices.referenceCenter;
+        double[] range = this.computeMorphRange(dc, tile);
+        Geomorph.morphVertices(morphVertices.ownVertices, morphVertices.parentVertices, eyePoint.x - refCenter.x,
+            eyePoint.y - refCenter.y, eyePoint.z - refCenter.z, range[0], range[1], morphVertices.vertices);
+
+        boolean created = super.installVerts(dc, tile, vertices);
+
+        MorphRenderInfo ri = (MorphRenderInfo) tile.ri;
+        ri.ownVertices = morphVertices.ownVertices;
+        ri.parentVertices = morphVertices.parentVertices;
+        ri.morphEyePoint = eyePoint;
+
+        return created;
+    }
+
+    /**
+     * Re-morphs a tile's vertices if the eye has moved since they were last morphed, and reloads the tile's VBO if
+     * they change.
+     *
+     * @param dc       the current draw context.
+     * @param tile     the tile to morph.
+     * @param eyePoint the current eye point.
+     */
+    protected void updateMorph(DrawContext dc, RectTile tile, Vec4 eyePoint)
+    {
+        if (!(tile.ri instanceof MorphRenderInfo))
+            return;
+
+        MorphRenderInfo ri = (MorphRenderInfo) tile.ri;
+        if (ri.ownVertices == null || eyePoint.equals(ri.morphEyePoint))
+            return;
+
+        Vec4 refCenter = ri.getReferenceCenter();
+        double[] range = this.computeMorphRange(dc, tile);
+        boolean changed = Geomorph.morphVertices(ri.ownVertices, ri.parentVertices, eyePoint.x - refCenter.x,
+            eyePoint.y - refCenter.y, eyePoint.z - refCenter.z, range[0], range[1], ri.vertices);
+        ri.morphEyePoint = eyePoint;
+
+        if (changed && dc.getGLRuntimeCapabilities().isUseVertexBufferObject())
+            ri.fillVerticesVBO(dc);
+    }
+
+    @Override
+    protected RenderInfo createRenderInfo(DrawContext dc, int density, FloatBuffer vertices, Vec4 refCenter)
+    {
+        return new MorphRenderInfo(dc, density, vertices, refCenter);
+    }
+}
@@ -16,6 +16,7 @@ import gov.nasa.worldwind.util.Logging;
 
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Provides operations on the best available terrain. Operations such as line/terrain intersection and surface point
@@ -78,12 +79,15 @@ public class HighResolutionTerrain extends WWObjectImpl implements Terrain
 
     protected static final int DEFAULT_DENSITY = 3;
     protected static final long DEFAULT_CACHE_CAPACITY = (long) 200e6;
+    /** The number of segments a thread takes at a time from a batch of segments to intersect. */
+    protected static final int BATCH_CHUNK_SIZE = 16;
 
     // User-specified fields.
     protected Globe globe;
     protected Sector sector;
     protected double verticalExaggeration = 1;
     protected Long timeout;
+    protected int intersectionThreadCount = Runtime.getRuntime().availableProcessors();
 
     // Internal fields.
     protected int density = DEFAULT_DENSITY;
@@ -94,6 +98,9 @@ public class HighResolutionTerrain extends WWObjectImpl implements Terrain
     protected int numCols;
     protected MemoryCache geometryCache;
     protected ThreadLocal<Long> startTime = new ThreadLocal<Long>();
+    // Tiles whose geometry is being built, so that threads needing the same tile wait for one build.
+    protected ConcurrentHashMap<Sector, FutureTask<RenderInfo>> pendingTiles =
+        new ConcurrentHashMap<Sector, FutureTask<RenderInfo>>();
 
     /**
      * Constructs a terrain object for a specified globe.
@@ -274,6 +281,30 @@ public class HighResolutionTerrain extends WWObjectImpl implements Terrain
         this.geometryCache.setCapacity(Math.max(size, (long) 1e6));
     }
 
+    /**
+     * Indicates the number of threads used by batch intersections.
+     *
+     * @return the number of threads used by batch intersections.
+     *
+     * @see #intersect(Position[], boolean)
+     */
+    public int getIntersectionThreadCount()
+    {
+        return this.intersectionThreadCount;
+    }
+
+    /**
+     * Specifies the number of threads used by batch intersections. The default is the number of available processors.
+     *
+     * @param threadCount the number of threads. Values less than 1 are clamped to 1.
+     *
+     * @see #intersect(Position[], boolean)
+     */
+    public void setIntersectionThreadCount(int threadCount)
+    {
+        this.intersectionThreadCount = Math.max(threadCount, 1);
+    }
+
     /** {@inheritDoc} */
     public Vec4 getSurfacePoint(Position position)
     {
@@ -483,6 +514,157 @@ public class HighResolutionTerrain extends WWObjectImpl implements Terrain
         service.awaitTermination(100, TimeUnit.DAYS); // wait indefinitely for all threads to complete
     }
 
+    /**
+     * Intersects many geographic two-position lines with the terrain, using several threads. Lines share terrain
+     * geometry: each terrain tile's geometry is built once, by whichever thread first needs it, and used by all lines
+     * crossing the tile while it remains in the cache. Positions' altitudes are relative to the terrain, as for {@link
+     * #intersect(Position, Position)}, and the timeout, if any, applies to each line individually.
+     * <p/>
+     * When only the first intersection of each line is requested, tiles are visited in order along the line and the
+     * search stops at the first tile that can't hold a nearer intersection, which is much faster for long lines such as
+     * those of line-of-sight and viewshed computations.
+     *
+     * @param positions     the lines' positions, with the line segments formed by each pair of positions, e.g. the
+     *                      first line is formed by positions[0] and positions[1], the second by positions[2] and
+     *                      positions[3], etc.
+     * @param firstHitOnly  true to return only the intersection nearest each line's first position, false to return all
+     *                      intersections.
+     *
+     * @return an array with an element for each line, holding the line's intersections sorted by increasing distance
+     * from its first position, or null if the line doesn't intersect the terrain.
+     *
+     * @throws IllegalArgumentException if the positions array is null, has an odd number of elements or contains a
+     *                                  null position.
+     * @throws InterruptedException     if the operation is interrupted.
+     * @throws WWRuntimeException       if intersecting any line fails. The failure is the exception's cause. A {@link
+     *                                  WWTimeoutException} is thrown unwrapped.
+     * @see #setIntersectionThreadCount(int)
+     */
+    public Intersection[][] intersect(final Position[] positions, final boolean firstHitOnly)
+        throws InterruptedException
+    {
+        if (positions == null)
+        {
+            String msg = Logging.getMessage("nullValue.PositionsListIsNull");
+            Logging.logger().severe(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        if (positions.length % 2 != 0)
+        {
+            String msg = Logging.getMessage("generic.ArrayInvalidLength", positions.length);
+            Logging.logger().severe(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        for (Position position : positions)
+        {
+            if (position == null)
+            {
+                String msg = Logging.getMessage("nullValue.PositionIsNull");
+                Logging.logger().severe(msg);
+                throw new IllegalArgumentException(msg);
+            }
+        }
+
+        final int numLines = positions.length / 2;
+        final Intersection[][] results = new Intersection[numLines][];
+        final AtomicInteger nextLine = new AtomicInteger();
+
+        // Threads take lines in small consecutive chunks, so each thread tends to work on nearby lines, and so on
+        // tiles another thread isn't building.
+        Callable<Void> worker = new Callable<Void>()
+        {
+            public Void call() throws Exception
+            {
+                int first;
+                while ((first = nextLine.getAndAdd(BATCH_CHUNK_SIZE)) < numLines)
+                {
+                    for (int i = first; i < Math.min(first + BATCH_CHUNK_SIZE, numLines); i++)
+                    {
+                        if (Thread.currentThread().isInterrupted())
+                            throw new InterruptedException();
+
+                        try
+                        {
+                            startTime.set(System.currentTimeMillis());
+                            results[i] = doIntersect(positions[2 * i], positions[2 * i + 1], firstHitOnly);
+                        }
+                        finally
+                        {
+                            startTime.set(null); // signals that no operation is active
+                        }
+                    }
+                }
+
+                return null;
+            }
+        };
+
+        int numThreads = Math.min(this.getIntersectionThreadCount(),
+            (numLines + BATCH_CHUNK_SIZE - 1) / BATCH_CHUNK_SIZE);
+        if (numThreads <= 1)
+        {
+            try
+            {
+                worker.call();
+            }
+            catch (InterruptedException e)
+            {
+                throw e;
+            }
+            catch (RuntimeException e)
+            {
+                throw e;
+            }
+            catch (Exception e)
+            {
+                throw new WWRuntimeException(e);
+            }
+
+            return results;
+        }
+
+        // Disable extremes caching for the whole batch, as getIntersectingTiles does for each line. Concurrent lines
+        // would otherwise race to disable and restore it.
+        ElevationModel elevationModel = this.getGlobe().getElevationModel();
+        boolean oldCachingMode = elevationModel.isExtremesCachingEnabled();
+        elevationModel.setExtremesCachingEnabled(false);
+
+        ExecutorService service = Executors.newFixedThreadPool(numThreads);
+        try
+        {
+            List<Future<Void>> futures = new ArrayList<Future<Void>>(numThreads);
+            for (int i = 0; i < numThreads; i++)
+            {
+                futures.add(service.submit(worker));
+            }
+
+            for (Future<Void> future : futures)
+            {
+                try
+                {
+                    future.get();
+                }
+                catch (ExecutionException e)
+                {
+                    if (e.getCause() instanceof RuntimeException)
+                        throw (RuntimeException) e.getCause();
+
+                    throw new WWRuntimeException(e.getCause());
+                }
+            }
+        }
+        finally
+        {
+            // Stops the remaining threads if a line failed or this thread was interrupted.
+            service.shutdownNow();
+            elevationModel.setExtremesCachingEnabled(oldCachingMode);
+        }
+
+        return results;
+    }
+
     /**
      * Cause the tiles used by subsequent intersection calculations to be cached so that they are available immediately
      * to those subsequent calculations.
@@ -736,6 +918,23 @@ public class HighResolutionTerrain extends WWObjectImpl implements Terrain
      * @throws InterruptedException if the operation is interrupted.
      */
     protected Intersection[] doIntersect(Position pA, Position pB) throws InterruptedException
+    {
+        return this.doIntersect(pA, pB, false);
+    }
+
+    /**
+     * Computes intersections of a line with the terrain.
+     *
+     * @param pA           the line's first position.
+     * @param pB           the line's second position.
+     * @param firstHitOnly true to compute only the intersection nearest the first position, false to compute all
+     *                     intersections.
+     *
+     * @return an array of intersections, or null if no intersections occur.
+     *
+     * @throws InterruptedException if the operation is interrupted.
+     */
+    protected Intersection[] doIntersect(Position pA, Position pB, boolean firstHitOnly) throws InterruptedException
     {
         Line line = this.makeLineFromPositions(pA, pB);
         if (line == null)
@@ -745,6 +944,9 @@ public class HighResolutionTerrain extends WWObjectImpl implements Terrain
         if (tiles == null)
             return null;
 
+        if (firstHitOnly)
+            return this.intersectNearest(tiles, line);
+
         Intersection[] hits;
         ArrayList<Intersection> list = new ArrayList<Intersection>();
         for (RectTile tile : tiles)
@@ -785,6 +987,64 @@ public class HighResolutionTerrain extends WWObjectImpl implements Terrain
         return hits;
     }
 
+    /**
+     * Computes the intersection of a line with a set of tiles that is nearest the line's origin. Tiles are visited in
+     * order of the nearest distance along the line their extents could hold an intersection, and the search stops when
+     * that distance exceeds the distance to the nearest intersection found so far.
+     *
+     * @param tiles the tiles to intersect.
+     * @param line  the line.
+     *
+     * @return a one-element array holding the nearest intersection, or null if no intersections occur.
+     *
+     * @throws InterruptedException if the operation is interrupted.
+     */
+    protected Intersection[] intersectNearest(List<RectTile> tiles, Line line) throws InterruptedException
+    {
+        final Vec4 origin = line.getOrigin();
+        Vec4 direction = line.getDirection().normalize3();
+
+        int numTiles = tiles.size();
+        final double[] nearestDistances = new double[numTiles];
+        Integer[] order = new Integer[numTiles];
+        for (int i = 0; i < numTiles; i++)
+        {
+            Extent extent = tiles.get(i).extent;
+            nearestDistances[i] = extent.getCenter().subtract3(origin).dot3(direction) - extent.getRadius();
+            order[i] = i;
+        }
+
+        Arrays.sort(order, new Comparator<Integer>()
+        {
+            public int compare(Integer i1, Integer i2)
+            {
+                return Double.compare(nearestDistances[i1], nearestDistances[i2]);
+            }
+        });
+
+        Intersection nearest = null;
+        double nearestDistance = Double.MAX_VALUE;
+        for (Integer i : order)
+        {
+            if (nearestDistances[i] > nearestDistance)
+                break;
+
+            Intersection[] hits = this.intersect(tiles.get(i), line);
+            if (hits == null)
+                continue;
+
+            // The tile's intersections are sorted by distance from the line's origin.
+            double distance = origin.distanceTo3(hits[0].getIntersectionPoint());
+            if (distance < nearestDistance)
+            {
+                nearest = hits[0];
+                nearestDistance = distance;
+            }
+        }
+
+        return nearest != null ? new Intersection[] {nearest} : null;
+    }
+
     protected List<RectTile> getIntersectingTiles(Sector sector)
     {
         int rowA = this.computeRow(this.sector, sector.getMinLatitude());
@@ -863,21 +1123,24 @@ public class HighResolutionTerrain extends WWObjectImpl implements Terrain
         double minLon = this.sector.getMinLongitude().degrees + c0 * this.lonTileSize;
         double maxLon = this.sector.getMinLongitude().degrees + (c1 + 1) * this.lonTileSize;
 
-        Extent extent = Sector.computeBoundingBox(this.globe, this.verticalExaggeration,
-            Sector.fromDegrees(minLat, maxLat, minLon, maxLon));
-
-        if (!extent.intersects(line))
-            return;
-
         int m = c1 - c0 + 1;
         int n = r1 - r0 + 1;
 
         if (m == 1 && n == 1)
         {
-            tiles.add(this.createTile(r0, c0));
+            // Test the tile's own extent and keep it with the tile rather than computing it again.
+            RectTile tile = this.createTile(r0, c0);
+            if (tile != null && tile.extent.intersects(line))
+                tiles.add(tile);
             return;
         }
 
+        Extent extent = Sector.computeBoundingBox(this.globe, this.verticalExaggeration,
+            Sector.fromDegrees(minLat, maxLat, minLon, maxLon));
+
+        if (!extent.intersects(line))
+            return;
+
         // Subdivide the tile and recursively test for intersection with the line. Order is SW, SE, NW, NE. When there
         // is only one column, the SE subdivision is identical to the SW one and need not be tested. When there is
         // only one row, the NW subdivision is identical to the SW one and need not be tested. In either case (one
@@ -907,10 +1170,73 @@ public class HighResolutionTerrain extends WWObjectImpl implements Terrain
         if (tile.ri != null)
             return;
 
-        tile.ri = this.buildVerts(tile);
-        if (tile.ri != null)
+        // If another thread is building the vertices, wait for it rather than building them again.
+        final RectTile buildTile = tile;
+        FutureTask<RenderInfo> task = new FutureTask<RenderInfo>(new Callable<RenderInfo>()
+        {
+            public RenderInfo call() throws Exception
+            {
+                return buildVerts(buildTile);
+            }
+        });
+
+        FutureTask<RenderInfo> pendingTask = this.pendingTiles.putIfAbsent(tile.sector, task);
+        if (pendingTask == null)
         {
-            this.geometryCache.add(tile.sector, tile.ri, tile.ri.getSizeInBytes());
+            try
+            {
+                task.run();
+                tile.ri = this.getBuiltVerts(task);
+                if (tile.ri != null)
+                {
+                    this.geometryCache.add(tile.sector, tile.ri, tile.ri.getSizeInBytes());
+                }
+            }
+            finally
+            {
+                this.pendingTiles.remove(tile.sector, task);
+            }
+        }
+        else
+        {
+            try
+            {
+                tile.ri = this.getBuiltVerts(pendingTask);
+            }
+            catch (InterruptedException e)
+            {
+                // Rethrow if this thread was interrupted. Otherwise the building thread was, so build them here.
+                if (!pendingTask.isDone() || Thread.currentThread().isInterrupted())
+                    throw e;
+
+                this.makeVerts(tile);
+            }
+        }
+    }
+
+    /**
+     * Waits for a task building a tile's vertices to complete, and returns its result.
+     *
+     * @param task the task.
+     *
+     * @return the computed vertex information.
+     *
+     * @throws InterruptedException if the current thread is interrupted, or the task was interrupted.
+     */
+    protected RenderInfo getBuiltVerts(FutureTask<RenderInfo> task) throws InterruptedException
+    {
+        try
+        {
+            return task.get();
+        }
+        catch (ExecutionException e)
+        {
+            if (e.getCause() instanceof InterruptedException)
+                throw (InterruptedException) e.getCause();
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+
+            throw new WWRuntimeException(e.getCause());
         }
     }
 
@@ -941,8 +1267,10 @@ public class HighResolutionTerrain extends WWObjectImpl implements Terrain
             verts = tile.ri.vertices;
         }
 
-        ArrayList<LatLon> latlons = this.computeLocations(tile);
-        double[] elevations = new double[latlons.size()];
+        double[] latitudes = new double[numVertices];
+        double[] longitudes = new double[numVertices];
+        this.computeLocations(tile, latitudes, longitudes);
+        double[] elevations = new double[numVertices];
 
         // In general, the best attainable resolution varies over the elevation model, so determine the best
         // attainable ^for this tile^ and use that as the convergence criteria.
@@ -951,44 +1279,44 @@ public class HighResolutionTerrain extends WWObjectImpl implements Terrain
         {
             localTargetResolution[i] = Math.max(localTargetResolution[i], this.targetResolution);
         }
-        this.getElevations(tile.sector, latlons, localTargetResolution, elevations);
+        this.getElevations(tile.sector, latitudes, longitudes, localTargetResolution, elevations);
 
         LatLon centroid = tile.sector.getCentroid();
         Vec4 refCenter = globe.computePointFromPosition(centroid.getLatitude(), centroid.getLongitude(), 0d);
 
         double minElevation = Double.MAX_VALUE;
         double maxElevation = -Double.MAX_VALUE;
-        LatLon minElevationLocation = centroid;
-        LatLon maxElevationLocation = centroid;
+        int minElevationIndex = -1;
+        int maxElevationIndex = -1;
 
-        int ie = 0;
         int iv = 0;
-        Iterator<LatLon> latLonIter = latlons.iterator();
-        for (int j = 0; j <= density; j++)
+        for (int ie = 0; ie < numVertices; ie++)
         {
-            for (int i = 0; i <= density; i++)
-            {
-                LatLon latlon = latLonIter.next();
-                double elevation = this.verticalExaggeration * elevations[ie++];
+            double elevation = this.verticalExaggeration * elevations[ie];
 
-                if (elevation < minElevation)
-                {
-                    minElevation = elevation;
-                    minElevationLocation = latlon;
-                }
-                if (elevation > maxElevation)
-                {
-                    maxElevation = elevation;
-                    maxElevationLocation = latlon;
-                }
-
-                Vec4 p = this.globe.computePointFromPosition(latlon.getLatitude(), latlon.getLongitude(), elevation);
-                verts[iv++] = (float) (p.x - refCenter.x);
-                verts[iv++] = (float) (p.y - refCenter.y);
-                verts[iv++] = (float) (p.z - refCenter.z);
+            if (elevation < minElevation)
+            {
+                minElevation = elevation;
+                minElevationIndex = ie;
+            }
+            if (elevation > maxElevation)
+            {
+                maxElevation = elevation;
+                maxElevationIndex = ie;
             }
+
+            Vec4 p = this.globe.computePointFromPosition(Angle.fromDegrees(latitudes[ie]),
+                Angle.fromDegrees(longitudes[ie]), elevation);
+            verts[iv++] = (float) (p.x - refCenter.x);
+            verts[iv++] = (float) (p.y - refCenter.y);
+            verts[iv++] = (float) (p.z - refCenter.z);
         }
 
+        LatLon minElevationLocation = minElevationIndex < 0 ? centroid
+            : LatLon.fromDegrees(latitudes[minElevationIndex], longitudes[minElevationIndex]);
+        LatLon maxElevationLocation = maxElevationIndex < 0 ? centroid
+            : LatLon.fromDegrees(latitudes[maxElevationIndex], longitudes[maxElevationIndex]);
+
         return new RenderInfo(density, verts, refCenter, new Position(minElevationLocation, minElevation),
             new Position(maxElevationLocation, maxElevation));
     }
@@ -1054,6 +1382,36 @@ public class HighResolutionTerrain extends WWObjectImpl implements Terrain
         }
     }
 
+    protected void getElevations(Sector sector, double[] latitudes, double[] longitudes, double[] targetResolution,
+        double[] elevations) throws InterruptedException
+    {
+        if (this.useCachedElevationsOnly)
+        {
+            this.getCachedElevations(latitudes, longitudes, elevations);
+            return;
+        }
+
+        double[] actualResolution = new double[targetResolution.length];
+        Arrays.fill(actualResolution, Double.MAX_VALUE);
+        while (!this.resolutionsMeetCriteria(actualResolution, targetResolution))
+        {
+            actualResolution = this.globe.getElevations(sector, latitudes, longitudes, targetResolution, elevations);
+            if (resolutionsMeetCriteria(actualResolution, targetResolution))
+                break;
+
+            // Give the system a chance to retrieve data from the disk cache or the server. Also catches interrupts
+            // and throws interrupt exceptions.
+            Thread.sleep(this.timeout == null ? 5L : Math.min(this.timeout, 5L));
+
+            Long timeout = this.getTimeout();
+            if (this.startTime.get() != null && timeout != null)
+            {
+                if (System.currentTimeMillis() - this.startTime.get() > timeout)
+                    throw new WWTimeoutException("Terrain convergence timed out");
+            }
+        }
+    }
+
     protected boolean resolutionsMeetCriteria(double[] actualResolution, double[] targetResolution)
     {
         for (int i = 0; i < actualResolution.length; i++)
@@ -1080,6 +1438,59 @@ public class HighResolutionTerrain extends WWObjectImpl implements Terrain
         }
     }
 
+    protected void getCachedElevations(double[] latitudes, double[] longitudes, double[] elevations)
+    {
+        ElevationModel em = this.globe.getElevationModel();
+
+        for (int i = 0; i < latitudes.length; i++)
+        {
+            double elevation = em.getUnmappedLocalSourceElevation(Angle.fromDegrees(latitudes[i]),
+                Angle.fromDegrees(longitudes[i]));
+            if (elevation == em.getMissingDataSignal())
+                elevation = em.getMissingDataReplacement();
+
+            elevations[i] = elevation;
+        }
+    }
+
+    /**
+     * Computes the latitudes and longitudes, in degrees, of the tile's cell locations, in the same order as {@link
+     * #computeLocations(RectTile)}.
+     *
+     * @param tile       the tile to compute locations for.
+     * @param latitudes  an array in which to place the latitudes. Must have at least as many elements as the tile has
+     *                   cell locations.
+     * @param longitudes an array in which to place the longitudes. Must have at least as many elements as the tile has
+     *                   cell locations.
+     */
+    protected void computeLocations(RectTile tile, double[] latitudes, double[] longitudes)
+    {
+        int density = tile.density;
+
+        double latMin = tile.sector.getMinLatitude().degrees;
+        double latMax = tile.sector.getMaxLatitude().degrees;
+        double dLat = tile.sector.getDeltaLatDegrees() / density;
+
+        double lonMin = tile.sector.getMinLongitude().degrees;
+        double lonMax = tile.sector.getMaxLongitude().degrees;
+        double dLon = tile.sector.getDeltaLonDegrees() / density;
+
+        int k = 0;
+        for (int j = 0; j <= density; j++)
+        {
+            double lat = j == density ? latMax : latMin + j * dLat;
+
+            for (int i = 0; i <= density; i++)
+            {
+                double lon = i == density ? lonMax : lonMin + i * dLon;
+
+                latitudes[k] = lat;
+                longitudes[k] = Math.max(-180, Math.min(180, lon));
+                k++;
+            }
+        }
+    }
+
     /**
      * Computes the tile's cell locations, determined by the tile's density and sector.
      *
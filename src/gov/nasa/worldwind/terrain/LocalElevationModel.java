@@ -469,6 +469,7 @@ public class LocalElevationModel extends AbstractElevationModel
         LocalTile tile = new LocalTile(sector, tileMissingDataFlag, width, height, buffer, minElevation, maxElevation);
         this.tiles.add(tile);
         this.adjustMinMax(tile);
+        this.firePropertyChange(AVKey.ELEVATION_MODEL, null, this);
     }
 
     public int intersects(Sector sector)
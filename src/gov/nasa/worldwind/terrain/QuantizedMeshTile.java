@@ -0,0 +1,706 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+
+package gov.nasa.worldwind.terrain;
+
+import gov.nasa.worldwind.geom.Vec4;
+import gov.nasa.worldwind.util.Logging;
+
+import java.nio.*;
+import java.util.Arrays;
+
+/**
+ * An irregular triangulated terrain tile in the quantized-mesh format. A tile's vertices are quantized to the range [0,
+ * 32767] within the tile: <code>u</code> increases eastward across the tile's sector, <code>v</code> increases
+ * northward, and the height increases from the tile's minimum height to its maximum height. Triangles are wound
+ * counter-clockwise in (u, v). The vertices on each of the tile's four edges are listed separately so that skirts can
+ * be hung from them.
+ * <p/>
+ * The encoded form is little endian and consists of: a header holding the tile's center, minimum and maximum heights,
+ * bounding sphere and horizon occlusion point; the vertex count followed by the u, v and height arrays, each
+ * delta-encoded and then zig-zag encoded into 16 bits; padding to the index size; the triangle count followed by the
+ * triangle indices, encoded by high-water mark in 16 bits, or 32 bits for tiles of more than 65536 vertices; and the
+ * west, south, east and north edge index lists, each preceded by its length. The header's Cartesian values are in
+ * Earth-centered, Earth-fixed coordinates. Any extensions following the edge lists are ignored.
+ * <p/>
+ * Tiles are immutable once created, and may be shared between threads.
+ *
+ * @version $Id$
+ * @see TINElevationModel
+ * @see TINTessellator
+ */
+public class QuantizedMeshTile
+{
+    /** The largest quantized coordinate. */
+    public static final int MAX_VALUE = 32767;
+
+    protected static final int HEADER_SIZE = 88;
+    /** The number of cells along each side of the grid locating triangles for interpolation. */
+    protected static final int TRIANGLE_GRID_SIZE = 16;
+
+    protected final double minHeight;
+    protected final double maxHeight;
+    protected final int[] u;
+    protected final int[] v;
+    protected final int[] heights;
+    protected final int[] indices;
+    protected final int[] westIndices;
+    protected final int[] southIndices;
+    protected final int[] eastIndices;
+    protected final int[] northIndices;
+    protected Vec4 center = Vec4.ZERO;
+    protected Vec4 boundingSphereCenter = Vec4.ZERO;
+    protected double boundingSphereRadius;
+    protected Vec4 horizonOcclusionPoint = Vec4.ZERO;
+    // The triangles overlapping each cell of a regular grid over the tile, created when first needed.
+    protected int[][] triangleGrid;
+
+    /**
+     * Creates a tile from its quantized vertices, triangles and edge lists. The arrays are used by reference.
+     *
+     * @param minHeight    the height corresponding to a quantized height of 0, in meters.
+     * @param maxHeight    the height corresponding to a quantized height of {@link #MAX_VALUE}, in meters.
+     * @param u            the vertices' quantized eastward coordinates.
+     * @param v            the vertices' quantized northward coordinates.
+     * @param heights      the vertices' quantized heights.
+     * @param indices      the triangles' vertex indices, three per triangle.
+     * @param westIndices  the indices of the vertices on the tile's west edge.
+     * @param southIndices the indices of the vertices on the tile's south edge.
+     * @param eastIndices  the indices of the vertices on the tile's east edge.
+     * @param northIndices the indices of the vertices on the tile's north edge.
+     *
+     * @throws IllegalArgumentException if any array is null, the vertex arrays' lengths differ, the number of indices
+     *                                  is not a multiple of three, or any index is out of range.
+     */
+    public QuantizedMeshTile(double minHeight, double maxHeight, int[] u, int[] v, int[] heights, int[] indices,
+        int[] westIndices, int[] southIndices, int[] eastIndices, int[] northIndices)
+    {
+        if (u == null || v == null || heights == null || indices == null || westIndices == null
+            || southIndices == null || eastIndices == null || northIndices == null)
+        {
+            String msg = Logging.getMessage("nullValue.ArrayIsNull");
+            Logging.logger().severe(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        if (v.length != u.length || heights.length != u.length || indices.length % 3 != 0)
+        {
+            String msg = Logging.getMessage("generic.ArrayInvalidLength", indices.length);
+            Logging.logger().severe(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        for (int[] array : new int[][] {indices, westIndices, southIndices, eastIndices, northIndices})
+        {
+            for (int index : array)
+            {
+                if (index < 0 || index >= u.length)
+                {
+                    String msg = Logging.getMessage("generic.ArgumentOutOfRange", "index=" + index);
+                    Logging.logger().severe(msg);
+                    throw new IllegalArgumentException(msg);
+                }
+            }
+        }
+
+        this.minHeight = minHeight;
+        this.maxHeight = maxHeight;
+        this.u = u;
+        this.v = v;
+        this.heights = heights;
+        this.indices = indices;
+        this.westIndices = westIndices;
+        this.southIndices = southIndices;
+        this.eastIndices = eastIndices;
+        this.northIndices = northIndices;
+    }
+
+    /**
+     * Creates a tile of two triangles per cell of a regular grid, with all vertices at the same height. Useful as a
+     * stand-in until a tile's mesh is available.
+     *
+     * @param cells  the number of cells along each side of the grid.
+     * @param height the vertices' height, in meters.
+     *
+     * @return the new tile.
+     *
+     * @throws IllegalArgumentException if the number of cells is less than one.
+     */
+    public static QuantizedMeshTile createGrid(int cells, double height)
+    {
+        if (cells < 1)
+        {
+            String msg = Logging.getMessage("generic.ArgumentOutOfRange", "cells=" + cells);
+            Logging.logger().severe(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        int side = cells + 1;
+        int[] u = new int[side * side];
+        int[] v = new int[side * side];
+        for (int j = 0; j < side; j++)
+        {
+            for (int i = 0; i < side; i++)
+            {
+                u[j * side + i] = i * MAX_VALUE / cells;
+                v[j * side + i] = j * MAX_VALUE / cells;
+            }
+        }
+
+        int[] indices = new int[6 * cells * cells];
+        int k = 0;
+        for (int j = 0; j < cells; j++)
+        {
+            for (int i = 0; i < cells; i++)
+            {
+                int sw = j * side + i;
+                indices[k++] = sw;
+                indices[k++] = sw + 1;
+                indices[k++] = sw + side + 1;
+                indices[k++] = sw;
+                indices[k++] = sw + side + 1;
+                indices[k++] = sw + side;
+            }
+        }
+
+        int[] west = new int[side];
+        int[] south = new int[side];
+        int[] east = new int[side];
+        int[] north = new int[side];
+        for (int n = 0; n < side; n++)
+        {
+            west[n] = n * side;
+            south[n] = n;
+            east[n] = n * side + cells;
+            north[n] = cells * side + n;
+        }
+
+        return new QuantizedMeshTile(height, height, u, v, new int[u.length], indices, west, south, east, north);
+    }
+
+    public double getMinHeight()
+    {
+        return this.minHeight;
+    }
+
+    public double getMaxHeight()
+    {
+        return this.maxHeight;
+    }
+
+    public int getVertexCount()
+    {
+        return this.u.length;
+    }
+
+    public int getTriangleCount()
+    {
+        return this.indices.length / 3;
+    }
+
+    public int[] getU()
+    {
+        return this.u;
+    }
+
+    public int[] getV()
+    {
+        return this.v;
+    }
+
+    public int[] getHeights()
+    {
+        return this.heights;
+    }
+
+    public int[] getIndices()
+    {
+        return this.indices;
+    }
+
+    public int[] getWestIndices()
+    {
+        return this.westIndices;
+    }
+
+    public int[] getSouthIndices()
+    {
+        return this.southIndices;
+    }
+
+    public int[] getEastIndices()
+    {
+        return this.eastIndices;
+    }
+
+    public int[] getNorthIndices()
+    {
+        return this.northIndices;
+    }
+
+    public Vec4 getCenter()
+    {
+        return this.center;
+    }
+
+    public Vec4 getBoundingSphereCenter()
+    {
+        return this.boundingSphereCenter;
+    }
+
+    public double getBoundingSphereRadius()
+    {
+        return this.boundingSphereRadius;
+    }
+
+    public Vec4 getHorizonOcclusionPoint()
+    {
+        return this.horizonOcclusionPoint;
+    }
+
+    /**
+     * Specifies the header values describing the tile's position on the globe, in Earth-centered, Earth-fixed
+     * coordinates. World Wind doesn't use these values itself; they're carried for other consumers of the tiles.
+     *
+     * @param center                the tile's center.
+     * @param boundingSphereCenter  the center of the tile's bounding sphere.
+     * @param boundingSphereRadius  the radius of the tile's bounding sphere.
+     * @param horizonOcclusionPoint the tile's horizon occlusion point, in ellipsoid-scaled coordinates.
+     *
+     * @throws IllegalArgumentException if any point is null.
+     */
+    public void setBoundingValues(Vec4 center, Vec4 boundingSphereCenter, double boundingSphereRadius,
+        Vec4 horizonOcclusionPoint)
+    {
+        if (center == null || boundingSphereCenter == null || horizonOcclusionPoint == null)
+        {
+            String msg = Logging.getMessage("nullValue.PointIsNull");
+            Logging.logger().severe(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        this.center = center;
+        this.boundingSphereCenter = boundingSphereCenter;
+        this.boundingSphereRadius = boundingSphereRadius;
+        this.horizonOcclusionPoint = horizonOcclusionPoint;
+    }
+
+    /**
+     * Returns a vertex's height in meters.
+     *
+     * @param index the vertex index.
+     *
+     * @return the vertex's height.
+     */
+    public double getHeight(int index)
+    {
+        return this.minHeight + this.heights[index] * (this.maxHeight - this.minHeight) / MAX_VALUE;
+    }
+
+    /**
+     * Interpolates the tile's height at a location within the tile from the triangle containing the location.
+     *
+     * @param s the location's fraction of the tile's width, eastward from its west edge.
+     * @param t the location's fraction of the tile's height, northward from its south edge.
+     *
+     * @return the interpolated height in meters, or NaN if the location is not within any of the tile's triangles.
+     */
+    public double interpolateHeight(double s, double t)
+    {
+        if (!(s >= 0 && s <= 1 && t >= 0 && t <= 1))
+            return Double.NaN;
+
+        double x = s * MAX_VALUE;
+        double y = t * MAX_VALUE;
+        int[] triangles = this.getTriangleGrid()[this.gridCell(x, y)];
+        for (int triangle : triangles)
+        {
+            double h = this.interpolateInTriangle(triangle, x, y);
+            if (!Double.isNaN(h))
+                return h;
+        }
+
+        return Double.NaN;
+    }
+
+    /**
+     * Interpolates the tile's heights at the points of a regular grid spanning the tile. Grid points are in row-major
+     * order starting at the tile's northwest corner, and the grid's first and last rows and columns lie on the tile's
+     * edges, matching the layout of the tiles of {@link BasicElevationModel}.
+     *
+     * @param width   the number of grid columns.
+     * @param height  the number of grid rows.
+     * @param heights an array in which to place the heights, in meters. Points not covered by any triangle are
+     *                assigned the tile's minimum height.
+     *
+     * @throws IllegalArgumentException if the width or height is less than two, or the array is null or too short.
+     */
+    public void rasterize(int width, int height, double[] heights)
+    {
+        if (width < 2 || height < 2)
+        {
+            String msg = Logging.getMessage("generic.ArgumentOutOfRange", width + "x" + height);
+            Logging.logger().severe(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        if (heights == null || heights.length < width * height)
+        {
+            String msg = Logging.getMessage("generic.ArrayInvalidLength", heights != null ? heights.length : 0);
+            Logging.logger().severe(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        Arrays.fill(heights, 0, width * height, Double.NaN);
+
+        double dx = (double) MAX_VALUE / (width - 1);
+        double dy = (double) MAX_VALUE / (height - 1);
+        for (int triangle = 0; triangle < this.getTriangleCount(); triangle++)
+        {
+            int a = this.indices[3 * triangle];
+            int b = this.indices[3 * triangle + 1];
+            int c = this.indices[3 * triangle + 2];
+
+            int minCol = (int) Math.ceil(Math.min(this.u[a], Math.min(this.u[b], this.u[c])) / dx - 1e-9);
+            int maxCol = (int) Math.floor(Math.max(this.u[a], Math.max(this.u[b], this.u[c])) / dx + 1e-9);
+            int minRow = (int) Math.ceil(Math.min(this.v[a], Math.min(this.v[b], this.v[c])) / dy - 1e-9);
+            int maxRow = (int) Math.floor(Math.max(this.v[a], Math.max(this.v[b], this.v[c])) / dy + 1e-9);
+
+            for (int row = Math.max(minRow, 0); row <= Math.min(maxRow, height - 1); row++)
+            {
+                int k = (height - 1 - row) * width; // grid rows run from north to south
+                for (int col = Math.max(minCol, 0); col <= Math.min(maxCol, width - 1); col++)
+                {
+                    if (!Double.isNaN(heights[k + col]))
+                        continue;
+
+                    heights[k + col] = this.interpolateInTriangle(triangle, col * dx, row * dy);
+                }
+            }
+        }
+
+        for (int i = 0; i < width * height; i++)
+        {
+            if (Double.isNaN(heights[i]))
+                heights[i] = this.minHeight;
+        }
+    }
+
+    /**
+     * Interpolates the height at a point from a triangle's vertices, if the point is within the triangle.
+     *
+     * @param triangle the triangle's index.
+     * @param x        the point's quantized eastward coordinate.
+     * @param y        the point's quantized northward coordinate.
+     *
+     * @return the interpolated height in meters, or NaN if the point is outside the triangle.
+     */
+    protected double interpolateInTriangle(int triangle, double x, double y)
+    {
+        int a = this.indices[3 * triangle];
+        int b = this.indices[3 * triangle + 1];
+        int c = this.indices[3 * triangle + 2];
+
+        double area = (double) (this.u[b] - this.u[a]) * (this.v[c] - this.v[a])
+            - (double) (this.v[b] - this.v[a]) * (this.u[c] - this.u[a]);
+        if (area == 0)
+            return Double.NaN;
+
+        double wa = ((this.u[b] - x) * (this.v[c] - y) - (this.v[b] - y) * (this.u[c] - x)) / area;
+        double wb = ((this.u[c] - x) * (this.v[a] - y) - (this.v[c] - y) * (this.u[a] - x)) / area;
+        double wc = 1 - wa - wb;
+
+        // Allow for round-off so that points on shared edges are found in one of the triangles.
+        double epsilon = 1e-9;
+        if (wa < -epsilon || wb < -epsilon || wc < -epsilon)
+            return Double.NaN;
+
+        return wa * this.getHeight(a) + wb * this.getHeight(b) + wc * this.getHeight(c);
+    }
+
+    protected int gridCell(double x, double y)
+    {
+        int col = Math.min((int) (x * TRIANGLE_GRID_SIZE / MAX_VALUE), TRIANGLE_GRID_SIZE - 1);
+        int row = Math.min((int) (y * TRIANGLE_GRID_SIZE / MAX_VALUE), TRIANGLE_GRID_SIZE - 1);
+        return row * TRIANGLE_GRID_SIZE + col;
+    }
+
+    protected synchronized int[][] getTriangleGrid()
+    {
+        if (this.triangleGrid != null)
+            return this.triangleGrid;
+
+        int numCells = TRIANGLE_GRID_SIZE * TRIANGLE_GRID_SIZE;
+        int[] counts = new int[numCells];
+        for (int pass = 0; pass < 2; pass++)
+        {
+            int[][] grid = pass == 1 ? new int[numCells][] : null;
+            for (int cell = 0; grid != null && cell < numCells; cell++)
+            {
+                grid[cell] = new int[counts[cell]];
+                counts[cell] = 0;
+            }
+
+            for (int triangle = 0; triangle < this.getTriangleCount(); triangle++)
+            {
+                int a = this.indices[3 * triangle];
+                int b = this.indices[3 * triangle + 1];
+                int c = this.indices[3 * triangle + 2];
+                int sw = this.gridCell(Math.min(this.u[a], Math.min(this.u[b], this.u[c])),
+                    Math.min(this.v[a], Math.min(this.v[b], this.v[c])));
+                int ne = this.gridCell(Math.max(this.u[a], Math.max(this.u[b], this.u[c])),
+                    Math.max(this.v[a], Math.max(this.v[b], this.v[c])));
+
+                for (int row = sw / TRIANGLE_GRID_SIZE; row <= ne / TRIANGLE_GRID_SIZE; row++)
+                {
+                    for (int col = sw % TRIANGLE_GRID_SIZE; col <= ne % TRIANGLE_GRID_SIZE; col++)
+                    {
+                        int cell = row * TRIANGLE_GRID_SIZE + col;
+                        if (grid != null)
+                            grid[cell][counts[cell]] = triangle;
+                        counts[cell]++;
+                    }
+                }
+            }
+
+            if (grid != null)
+                this.triangleGrid = grid;
+        }
+
+        return this.triangleGrid;
+    }
+
+    /**
+     * Returns the approximate number of bytes used by this tile.
+     *
+     * @return the tile's size in bytes.
+     */
+    public long getSizeInBytes()
+    {
+        return 4L * (3 * this.u.length + this.indices.length + this.westIndices.length + this.southIndices.length
+            + this.eastIndices.length + this.northIndices.length + (this.triangleGrid != null ? this.indices.length : 0))
+            + HEADER_SIZE;
+    }
+
+    //**************************************************************//
+    //********************  Encoding  ******************************//
+    //**************************************************************//
+
+    /**
+     * Encodes this tile in the quantized-mesh format. Vertices are written in the order in which the triangles first
+     * use them, as the high-water mark encoding of the indices requires, so a decoded tile's vertices may be ordered
+     * differently than this tile's.
+     *
+     * @return a buffer containing the encoded tile, positioned at zero.
+     */
+    public ByteBuffer encode()
+    {
+        int numVertices = this.u.length;
+
+        // Order the vertices by first use. Vertices no triangle uses follow the others.
+        int[] order = new int[numVertices];
+        Arrays.fill(order, -1);
+        int next = 0;
+        for (int index : this.indices)
+        {
+            if (order[index] < 0)
+                order[index] = next++;
+        }
+        for (int i = 0; i < numVertices; i++)
+        {
+            if (order[i] < 0)
+                order[i] = next++;
+        }
+
+        int[] orderedU = new int[numVertices];
+        int[] orderedV = new int[numVertices];
+        int[] orderedHeights = new int[numVertices];
+        for (int i = 0; i < numVertices; i++)
+        {
+            orderedU[order[i]] = this.u[i];
+            orderedV[order[i]] = this.v[i];
+            orderedHeights[order[i]] = this.heights[i];
+        }
+
+        int indexSize = numVertices > 65536 ? 4 : 2;
+        int vertexEnd = HEADER_SIZE + 4 + 6 * numVertices;
+        int padding = (indexSize - vertexEnd % indexSize) % indexSize;
+        int numEdgeIndices = this.westIndices.length + this.southIndices.length + this.eastIndices.length
+            + this.northIndices.length;
+        int size = vertexEnd + padding + 4 + indexSize * this.indices.length + 16 + indexSize * numEdgeIndices;
+
+        ByteBuffer buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        putPoint(buffer, this.center);
+        buffer.putFloat((float) this.minHeight);
+        buffer.putFloat((float) this.maxHeight);
+        putPoint(buffer, this.boundingSphereCenter);
+        buffer.putDouble(this.boundingSphereRadius);
+        putPoint(buffer, this.horizonOcclusionPoint);
+
+        buffer.putInt(numVertices);
+        for (int[] values : new int[][] {orderedU, orderedV, orderedHeights})
+        {
+            int previous = 0;
+            for (int value : values)
+            {
+                buffer.putShort((short) zigZagEncode(value - previous));
+                previous = value;
+            }
+        }
+
+        for (int i = 0; i < padding; i++)
+        {
+            buffer.put((byte) 0);
+        }
+
+        buffer.putInt(this.getTriangleCount());
+        int highest = 0;
+        for (int index : this.indices)
+        {
+            int code = highest - order[index];
+            if (code == 0)
+                highest++;
+            putIndex(buffer, code, indexSize);
+        }
+
+        for (int[] edge : new int[][] {this.westIndices, this.southIndices, this.eastIndices, this.northIndices})
+        {
+            buffer.putInt(edge.length);
+            for (int index : edge)
+            {
+                putIndex(buffer, order[index], indexSize);
+            }
+        }
+
+        buffer.rewind();
+        return buffer;
+    }
+
+    /**
+     * Decodes a tile in the quantized-mesh format. The buffer is read from its current position, which is left after
+     * the edge lists.
+     *
+     * @param buffer the encoded tile.
+     *
+     * @return the decoded tile.
+     *
+     * @throws IllegalArgumentException if the buffer is null or does not contain a valid tile.
+     */
+    public static QuantizedMeshTile decode(ByteBuffer buffer)
+    {
+        if (buffer == null)
+        {
+            String msg = Logging.getMessage("nullValue.BufferIsNull");
+            Logging.logger().severe(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        int start = buffer.position();
+        buffer = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+        try
+        {
+            Vec4 center = getPoint(buffer);
+            double minHeight = buffer.getFloat();
+            double maxHeight = buffer.getFloat();
+            Vec4 sphereCenter = getPoint(buffer);
+            double sphereRadius = buffer.getDouble();
+            Vec4 horizonPoint = getPoint(buffer);
+
+            int numVertices = buffer.getInt();
+            if (numVertices < 0 || 6L * numVertices > buffer.remaining())
+                throw new BufferUnderflowException();
+
+            int[][] vertices = new int[3][numVertices];
+            for (int[] values : vertices)
+            {
+                int value = 0;
+                for (int i = 0; i < numVertices; i++)
+                {
+                    value += zigZagDecode(buffer.getShort() & 0xFFFF);
+                    values[i] = value;
+                }
+            }
+
+            int indexSize = numVertices > 65536 ? 4 : 2;
+            buffer.position(buffer.position() + (indexSize - buffer.position() % indexSize) % indexSize);
+
+            int numTriangles = buffer.getInt();
+            if (numTriangles < 0 || 3L * indexSize * numTriangles > buffer.remaining())
+                throw new BufferUnderflowException();
+
+            int[] indices = new int[3 * numTriangles];
+            int highest = 0;
+            for (int i = 0; i < indices.length; i++)
+            {
+                int code = getIndex(buffer, indexSize);
+                indices[i] = highest - code;
+                if (code == 0)
+                    highest++;
+            }
+
+            int[][] edges = new int[4][];
+            for (int e = 0; e < edges.length; e++)
+            {
+                int count = buffer.getInt();
+                if (count < 0 || (long) indexSize * count > buffer.remaining())
+                    throw new BufferUnderflowException();
+
+                edges[e] = new int[count];
+                for (int i = 0; i < count; i++)
+                {
+                    edges[e][i] = getIndex(buffer, indexSize);
+                }
+            }
+
+            QuantizedMeshTile tile = new QuantizedMeshTile(minHeight, maxHeight, vertices[0], vertices[1],
+                vertices[2], indices, edges[0], edges[1], edges[2], edges[3]);
+            tile.setBoundingValues(center, sphereCenter, sphereRadius, horizonPoint);
+
+            return tile;
+        }
+        catch (BufferUnderflowException e)
+        {
+            String msg = Logging.getMessage("QuantizedMeshTile.InvalidTile", start);
+            Logging.logger().severe(msg);
+            throw new IllegalArgumentException(msg, e);
+        }
+    }
+
+    protected static int zigZagEncode(int value)
+    {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    protected static int zigZagDecode(int value)
+    {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    protected static void putPoint(ByteBuffer buffer, Vec4 point)
+    {
+        buffer.putDouble(point.x);
+        buffer.putDouble(point.y);
+        buffer.putDouble(point.z);
+    }
+
+    protected static Vec4 getPoint(ByteBuffer buffer)
+    {
+        return new Vec4(buffer.getDouble(), buffer.getDouble(), buffer.getDouble());
+    }
+
+    protected static void putIndex(ByteBuffer buffer, int index, int indexSize)
+    {
+        if (indexSize == 4)
+            buffer.putInt(index);
+        else
+            buffer.putShort((short) index);
+    }
+
+    protected static int getIndex(ByteBuffer buffer, int indexSize)
+    {
+        return indexSize == 4 ? buffer.getInt() : buffer.getShort() & 0xFFFF;
+    }
+}
@@ -9,6 +9,7 @@ import com.jogamp.common.nio.Buffers;
 import gov.nasa.worldwind.*;
 import gov.nasa.worldwind.avlist.AVKey;
 import gov.nasa.worldwind.cache.*;
+import gov.nasa.worldwind.exception.WWRuntimeException;
 import gov.nasa.worldwind.geom.*;
 import gov.nasa.worldwind.geom.Cylinder;
 import gov.nasa.worldwind.globes.*;
@@ -18,9 +19,12 @@ import gov.nasa.worldwind.util.*;
 
 import javax.media.opengl.*;
 import java.awt.*;
+import java.beans.*;
 import java.nio.*;
 import java.util.*;
 import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * @author tag
@@ -38,6 +42,10 @@ public class RectangularTessellator extends WWObjectImpl implements Tessellator
         protected long time;
         protected Object vboCacheKey = new Object();
         protected boolean isVboBound = false;
+        // The elevation state the vertices were computed from, used when the level of detail is updated incrementally.
+        protected double[] elevations;
+        protected double verticalExaggeration;
+        protected long elevationVersion;
 
         protected RenderInfo(DrawContext dc, int density, FloatBuffer vertices, Vec4 refCenter)
         {
@@ -115,8 +123,9 @@ public class RectangularTessellator extends WWObjectImpl implements Tessellator
         protected long getSizeInBytes()
         {
             // Texture coordinates are shared among all tiles of the same density, so do not count towards size.
-            // 8 references, floats in buffer.
-            return 8 * 4 + (this.vertices.limit()) * Float.SIZE / 8;
+            // 8 references, floats in buffer, doubles in elevations.
+            return 8 * 4 + (this.vertices.limit()) * Float.SIZE / 8
+                + (this.elevations != null ? this.elevations.length * Double.SIZE / 8 : 0);
         }
 
         protected void fillVerticesVBO(DrawContext dc)
@@ -154,6 +163,12 @@ public class RectangularTessellator extends WWObjectImpl implements Tessellator
         protected final double cellSize;
         protected Extent extent; // extent of sector in object coordinates
         protected RenderInfo ri;
+        // Persistent level of detail state, used when the level of detail is updated incrementally.
+        protected RectTile[] children;
+        protected int lodEpoch = -1;
+        protected Vec4 lodEyePoint;
+        protected double lodMargin;
+        protected boolean lodSplit;
 
         protected int minColorCode = 0;
         protected int maxColorCode = 0;
@@ -337,6 +352,13 @@ public class RectangularTessellator extends WWObjectImpl implements Tessellator
             this.globeStateKey = dc.getGlobe().getStateKey(dc);
         }
 
+        public CacheKey(Sector sector, int density, Object globeStateKey)
+        {
+            this.sector = sector;
+            this.density = density;
+            this.globeStateKey = globeStateKey;
+        }
+
         @SuppressWarnings({"EqualsWhichDoesntCheckParameterClass"})
         public boolean equals(Object o)
         {
@@ -366,9 +388,59 @@ public class RectangularTessellator extends WWObjectImpl implements Tessellator
         }
     }
 
+    /**
+     * Computes a tile's vertices off the rendering thread. Only the CPU work -- elevation lookup and vertex
+     * computation -- is done by the builder. Installing the vertices in the tile's {@link RenderInfo} touches OpenGL
+     * and is done afterwards on the rendering thread.
+     */
+    protected static class VertexBuilder implements Callable<Void>
+    {
+        protected final RectangularTessellator tessellator;
+        protected final DrawContext dc;
+        protected final RectTile tile;
+        protected final CacheKey cacheKey;
+        protected final FloatBuffer vertices;
+        protected TileVertices result;
+
+        public VertexBuilder(RectangularTessellator tessellator, DrawContext dc, RectTile tile, CacheKey cacheKey)
+        {
+            this.tessellator = tessellator;
+            this.dc = dc;
+            this.tile = tile;
+            this.cacheKey = cacheKey;
+            this.vertices = tessellator.allocateVertices(tile);
+        }
+
+        public Void call() throws Exception
+        {
+            this.result = this.tessellator.computeVertices(this.dc, this.tile, this.vertices,
+                this.tessellator.isMakeTileSkirts());
+            return null;
+        }
+    }
+
+    /** Holds a tile's computed vertices and the elevation state they were computed from. */
+    protected static class TileVertices
+    {
+        protected FloatBuffer vertices;
+        protected Vec4 referenceCenter;
+        protected double[] elevations;
+        protected double verticalExaggeration;
+        protected long elevationVersion;
+    }
+
     protected static class TopLevelTiles
     {
         protected ArrayList<RectTile> topLevels;
+        // The state of the most recent incremental level of detail update of these tiles' descendants.
+        protected int lodEpoch;
+        protected long lodElevationVersion = -1;
+        protected int lodMaxLevel;
+        protected List<Double> lodDetailHints;
+        protected Matrix lodModelview;
+        protected Matrix lodProjection;
+        protected ArrayList<SectorGeometry> lodTiles;
+        protected Sector lodCoverage;
 
         public TopLevelTiles(ArrayList<RectTile> topLevels)
         {
@@ -407,6 +479,26 @@ public class RectangularTessellator extends WWObjectImpl implements Tessellator
     protected Globe globe;
     protected int density = DEFAULT_DENSITY;
     protected long updateFrequency = 2000; // milliseconds
+    protected boolean parallelBuildEnabled = Configuration.getBooleanValue(AVKey.RECTANGULAR_TESSELLATOR_PARALLEL_BUILD,
+        false);
+    protected ForkJoinPool buildPool;
+    protected boolean incrementalLodEnabled = Configuration.getBooleanValue(
+        AVKey.RECTANGULAR_TESSELLATOR_INCREMENTAL_LOD, false);
+    // Counts changes to the elevations of the observed elevation model.
+    protected AtomicLong elevationVersion = new AtomicLong();
+    protected ElevationModel observedElevationModel;
+    protected PropertyChangeListener elevationListener = new PropertyChangeListener()
+    {
+        public void propertyChange(PropertyChangeEvent event)
+        {
+            if (AVKey.ELEVATION_MODEL.equals(event.getPropertyName()))
+                elevationVersion.incrementAndGet();
+        }
+    };
+    // Frame time instrumentation, in nanoseconds. Elevation and vertex times are summed over all building threads.
+    protected long selectionTime;
+    protected AtomicLong elevationTime = new AtomicLong();
+    protected AtomicLong vertexTime = new AtomicLong();
 
     public SectorGeometryList tessellate(DrawContext dc)
     {
@@ -427,7 +519,7 @@ public class RectangularTessellator extends WWObjectImpl implements Tessellator
         if (!WorldWind.getMemoryCacheSet().containsCache(CACHE_ID))
         {
             long size = Configuration.getLongValue(AVKey.SECTOR_GEOMETRY_CACHE_SIZE, 10000000L);
-            MemoryCache cache = new BasicMemoryCache((long) (0.85 * size), size);
+            MemoryCache cache = BasicMemoryCacheSet.createCache((long) (0.85 * size), size);
             cache.setName(CACHE_NAME);
             WorldWind.getMemoryCacheSet().addCache(CACHE_ID, cache);
         }
@@ -445,19 +537,39 @@ public class RectangularTessellator extends WWObjectImpl implements Tessellator
         this.currentLevel = 0;
         this.currentCoverage = null;
 
+        long selectionStart = System.nanoTime();
         this.currentFrustum = dc.getView().getFrustumInModelCoordinates();
-        for (RectTile tile : topLevels.topLevels)
+        if (this.isIncrementalLodEnabled())
         {
-            this.selectVisibleTiles(dc, tile);
+            this.updateVisibleTiles(dc, topLevels);
+        }
+        else
+        {
+            for (RectTile tile : topLevels.topLevels)
+            {
+                this.selectVisibleTiles(dc, tile);
+            }
         }
 
         this.currentTiles.setSector(this.currentCoverage);
+        this.selectionTime = System.nanoTime() - selectionStart;
+        this.elevationTime.set(0);
+        this.vertexTime.set(0);
 
-        for (SectorGeometry tile : this.currentTiles)
+        if (this.isParallelBuildEnabled())
         {
-            this.makeVerts(dc, (RectTile) tile);
+            this.makeVertsInParallel(dc, this.currentTiles);
+        }
+        else
+        {
+            for (SectorGeometry tile : this.currentTiles)
+            {
+                this.makeVerts(dc, (RectTile) tile);
+            }
         }
 
+        this.setFrameStatistics(dc);
+
         // Make a copy of the SGL because the tessellator may be called multiple times per frame with a different globe.
         // See SceneController2D.
         SectorGeometryList sgl = new SectorGeometryList(this.currentTiles);
@@ -551,6 +663,135 @@ public class RectangularTessellator extends WWObjectImpl implements Tessellator
         this.updateFrequency = updateFrequency;
     }
 
+    /**
+     * Indicates whether the vertices of tiles that are not in the cache are built on multiple threads.
+     *
+     * @return true if vertices are built in parallel, otherwise false.
+     *
+     * @see #setParallelBuildEnabled(boolean)
+     */
+    public boolean isParallelBuildEnabled()
+    {
+        return this.parallelBuildEnabled;
+    }
+
+    /**
+     * Specifies whether the vertices of tiles that are not in the cache are built on multiple threads. When enabled,
+     * the tessellator first selects the visible tiles, then computes the elevations and vertices of those needing new
+     * vertices on the build pool, and finally installs the vertices on the calling thread before returning from {@link
+     * #tessellate(gov.nasa.worldwind.render.DrawContext)}. The globe's elevation model must therefore support
+     * concurrent elevation queries, as the World Wind elevation models do. The initial value is taken from the {@link
+     * AVKey#RECTANGULAR_TESSELLATOR_PARALLEL_BUILD} configuration property.
+     *
+     * @param parallelBuildEnabled true to build vertices in parallel, otherwise false.
+     */
+    public void setParallelBuildEnabled(boolean parallelBuildEnabled)
+    {
+        this.parallelBuildEnabled = parallelBuildEnabled;
+    }
+
+    /**
+     * Indicates whether the level of detail and the tile vertices are maintained incrementally from frame to frame.
+     *
+     * @return true if the level of detail is updated incrementally, otherwise false.
+     *
+     * @see #setIncrementalLodEnabled(boolean)
+     */
+    public boolean isIncrementalLodEnabled()
+    {
+        return this.incrementalLodEnabled;
+    }
+
+    /**
+     * Specifies whether the level of detail and the tile vertices are maintained incrementally from frame to frame.
+     * When enabled, the tiles form a persistent tree that is updated from the previous frame's selection: tiles are
+     * created only when first split, and a tile's split decision is re-evaluated only when the eye has moved far enough
+     * to possibly change it. When nothing affecting the selection has changed, the previous selection is re-used
+     * without traversing the tree. Tile vertices are cached independently of vertical exaggeration and are kept until
+     * the elevation model reports a change to its elevations, rather than being rebuilt periodically. A change in
+     * vertical exaggeration recomputes the vertices from the tile's cached elevations.
+     * <p/>
+     * In this mode the level of detail is determined by {@link #computeDistanceScale(DrawContext, RectTile)} rather
+     * than {@link #needToSplit(DrawContext, RectTile)}. The initial value is taken from the {@link
+     * AVKey#RECTANGULAR_TESSELLATOR_INCREMENTAL_LOD} configuration property.
+     *
+     * @param incrementalLodEnabled true to update the level of detail incrementally, otherwise false.
+     */
+    public void setIncrementalLodEnabled(boolean incrementalLodEnabled)
+    {
+        this.incrementalLodEnabled = incrementalLodEnabled;
+    }
+
+    /**
+     * Returns the pool on which tile vertices are built when parallel building is enabled. If no pool has been
+     * specified, a pool with one thread per available processor is created the first time this method is called.
+     *
+     * @return the pool on which to build tile vertices.
+     */
+    public ForkJoinPool getBuildPool()
+    {
+        if (this.buildPool == null)
+            this.buildPool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+        return this.buildPool;
+    }
+
+    /**
+     * Specifies the pool on which tile vertices are built when parallel building is enabled.
+     *
+     * @param buildPool the pool on which to build tile vertices. May be null, in which case a default pool is created
+     *                  when needed.
+     */
+    public void setBuildPool(ForkJoinPool buildPool)
+    {
+        this.buildPool = buildPool;
+    }
+
+    /**
+     * Returns the time spent selecting the visible tiles during the most recent call to {@link
+     * #tessellate(gov.nasa.worldwind.render.DrawContext)}.
+     *
+     * @return the selection time, in nanoseconds.
+     */
+    public long getSelectionTime()
+    {
+        return this.selectionTime;
+    }
+
+    /**
+     * Returns the time spent retrieving elevations for tile vertices during the most recent call to {@link
+     * #tessellate(gov.nasa.worldwind.render.DrawContext)}. When vertices are built in parallel this is the sum of the
+     * time spent by each thread.
+     *
+     * @return the elevation time, in nanoseconds.
+     */
+    public long getElevationTime()
+    {
+        return this.elevationTime.get();
+    }
+
+    /**
+     * Returns the time spent computing tile vertices from their elevations during the most recent call to {@link
+     * #tessellate(gov.nasa.worldwind.render.DrawContext)}. When vertices are built in parallel this is the sum of the
+     * time spent by each thread.
+     *
+     * @return the vertex time, in nanoseconds.
+     */
+    public long getVertexTime()
+    {
+        return this.vertexTime.get();
+    }
+
+    protected void setFrameStatistics(DrawContext dc)
+    {
+        dc.setPerFrameStatistic(PerformanceStatistic.TERRAIN_SELECTION_TIME, "Terrain Selection Time (us)",
+            this.getSelectionTime() / 1000);
+        dc.setPerFrameStatistic(PerformanceStatistic.TERRAIN_ELEVATION_TIME, "Terrain Elevation Time (us)",
+            this.getElevationTime() / 1000);
+        dc.setPerFrameStatistic(PerformanceStatistic.TERRAIN_VERTEX_TIME, "Terrain Vertex Time (us)",
+            this.getVertexTime() / 1000);
+    }
+
     protected void selectVisibleTiles(DrawContext dc, RectTile tile)
     {
         if (dc.is2DGlobe() && this.skipTile(dc, tile.getSector()))
@@ -590,6 +831,31 @@ public class RectangularTessellator extends WWObjectImpl implements Tessellator
         double cellSizeRadians = tile.getCellSize();
         double cellSizeMeters = dc.getGlobe().getRadius() * cellSizeRadians;
 
+        // Compute the distance between the eye point and the sector in meters, and compute a fraction of that distance
+        // by multiplying the actual distance by the level of detail scale and the field of view scale.
+        double eyeDistanceMeters = tile.getSector().distanceTo(dc, dc.getView().getEyePoint());
+        double scaledEyeDistanceMeters = eyeDistanceMeters * this.computeDistanceScale(dc, tile);
+
+        // Split when the cell size in meters becomes greater than the specified fraction of the eye distance, also in
+        // meters. Another way to say it is, use the current tile if its cell size is less than the specified fraction
+        // of the eye distance.
+        //
+        // NOTE: It's tempting to instead compare a screen pixel size to the cell size, but that calculation is
+        // window-size dependent and results in selecting an excessive number of tiles when the window is large.
+        return cellSizeMeters > scaledEyeDistanceMeters;
+    }
+
+    /**
+     * Computes the scale applied to the distance between the eye and a tile before comparing it to the tile's cell
+     * size. A tile is split when its cell size is greater than the scaled eye distance.
+     *
+     * @param dc   the current draw context.
+     * @param tile the tile to compute the scale for.
+     *
+     * @return the product of the tile's level of detail scale and the view's field of view scale.
+     */
+    protected double computeDistanceScale(DrawContext dc, RectTile tile)
+    {
         // Compute the level of detail scale and the field of view scale. These scales are multiplied by the eye
         // distance to derive a scaled distance that is then compared to the cell size. The level of detail scale is
         // specified as a power of 10. For example, a detail factor of 3 means split when the cell size becomes more
@@ -604,18 +870,167 @@ public class RectangularTessellator extends WWObjectImpl implements Tessellator
         double fieldOfViewScale = dc.getView().getFieldOfView().tanHalfAngle() / Angle.fromDegrees(45).tanHalfAngle();
         fieldOfViewScale = WWMath.clamp(fieldOfViewScale, 0, 1);
 
-        // Compute the distance between the eye point and the sector in meters, and compute a fraction of that distance
-        // by multiplying the actual distance by the level of detail scale and the field of view scale.
-        double eyeDistanceMeters = tile.getSector().distanceTo(dc, dc.getView().getEyePoint());
-        double scaledEyeDistanceMeters = eyeDistanceMeters * detailScale * fieldOfViewScale;
+        return detailScale * fieldOfViewScale;
+    }
 
-        // Split when the cell size in meters becomes greater than the specified fraction of the eye distance, also in
-        // meters. Another way to say it is, use the current tile if its cell size is less than the specified fraction
-        // of the eye distance.
-        //
-        // NOTE: It's tempting to instead compare a screen pixel size to the cell size, but that calculation is
-        // window-size dependent and results in selecting an excessive number of tiles when the window is large.
-        return cellSizeMeters > scaledEyeDistanceMeters;
+    /**
+     * Updates the visible tiles from the previous incremental update of a set of top level tiles and their
+     * descendants. The previous selection is re-used as is when the view, the elevations, the detail hints and the
+     * maximum level are unchanged. Otherwise the persistent tile tree is traversed, re-using existing tiles and re-evaluating split
+     * decisions only where the eye has moved enough to possibly change them.
+     *
+     * @param dc        the current draw context.
+     * @param topLevels the top level tiles to update.
+     */
+    protected void updateVisibleTiles(DrawContext dc, TopLevelTiles topLevels)
+    {
+        this.observeElevationModel(dc.getGlobe().getElevationModel());
+        long version = this.elevationVersion.get();
+        Matrix modelview = dc.getView().getModelviewMatrix();
+        Matrix projection = dc.getView().getProjectionMatrix();
+        List<Double> detailHints = new ArrayList<Double>();
+        this.collectDetailHints(dc.getGlobe().getElevationModel(), detailHints);
+
+        // Changes to the elevations, the detail hints, the maximum level and the field of view invalidate all cached
+        // split decisions. Elevation models don't report detail hint changes, so the hints are compared each frame.
+        if (version != topLevels.lodElevationVersion || this.maxLevel != topLevels.lodMaxLevel
+            || !detailHints.equals(topLevels.lodDetailHints)
+            || topLevels.lodProjection == null || !topLevels.lodProjection.equals(projection))
+        {
+            topLevels.lodEpoch++;
+        }
+        else if (topLevels.lodTiles != null && topLevels.lodModelview != null
+            && topLevels.lodModelview.equals(modelview))
+        {
+            // Nothing affecting the selection has changed, so the previous selection is still current.
+            this.currentTiles.addAll(topLevels.lodTiles);
+            this.currentCoverage = topLevels.lodCoverage;
+            return;
+        }
+
+        Vec4 eyePoint = dc.getView().getEyePoint();
+        for (RectTile tile : topLevels.topLevels)
+        {
+            this.updateVisibleTiles(dc, tile, eyePoint, topLevels.lodEpoch);
+        }
+
+        topLevels.lodElevationVersion = version;
+        topLevels.lodMaxLevel = this.maxLevel;
+        topLevels.lodDetailHints = detailHints;
+        topLevels.lodModelview = modelview;
+        topLevels.lodProjection = projection;
+        topLevels.lodTiles = new ArrayList<SectorGeometry>(this.currentTiles);
+        topLevels.lodCoverage = this.currentCoverage;
+    }
+
+    protected void updateVisibleTiles(DrawContext dc, RectTile tile, Vec4 eyePoint, int epoch)
+    {
+        if (dc.is2DGlobe() && this.skipTile(dc, tile.getSector()))
+            return;
+
+        Extent extent = tile.getExtent();
+        if (extent != null && !extent.intersects(this.currentFrustum))
+        {
+            tile.children = null; // release the descendants of tiles out of view
+            return;
+        }
+
+        if (this.currentLevel < this.maxLevel - 1 && this.shouldSplit(dc, tile, eyePoint, epoch))
+        {
+            if (tile.children == null)
+                tile.children = this.split(dc, tile);
+
+            ++this.currentLevel;
+            for (RectTile child : tile.children)
+            {
+                this.updateVisibleTiles(dc, child, eyePoint, epoch);
+            }
+            --this.currentLevel;
+            return;
+        }
+
+        tile.children = null; // merge the tile's descendants
+        this.currentCoverage = tile.getSector().union(this.currentCoverage);
+        this.currentTiles.add(tile);
+    }
+
+    /**
+     * Determines whether a tile must be split, re-using the tile's previous decision if it can't have changed. The
+     * scaled eye distance changes no faster than the eye point moves, so a decision holds until the eye has moved
+     * further than the difference between the tile's eye distance and its split distance when the decision was made.
+     *
+     * @param dc       the current draw context.
+     * @param tile     the tile to test.
+     * @param eyePoint the eye point in model coordinates.
+     * @param epoch    the current level of detail epoch. Decisions made in previous epochs are re-evaluated.
+     *
+     * @return true if the tile must be split, otherwise false.
+     */
+    protected boolean shouldSplit(DrawContext dc, RectTile tile, Vec4 eyePoint, int epoch)
+    {
+        if (tile.lodEpoch == epoch && eyePoint.distanceTo3(tile.lodEyePoint) < tile.lodMargin)
+            return tile.lodSplit;
+
+        boolean split = false;
+        double margin = Double.MAX_VALUE;
+        if (!this.atBestResolution(dc, tile))
+        {
+            double cellSizeMeters = dc.getGlobe().getRadius() * tile.getCellSize();
+            double distanceScale = this.computeDistanceScale(dc, tile);
+            double eyeDistanceMeters = tile.getSector().distanceTo(dc, eyePoint);
+            split = cellSizeMeters > eyeDistanceMeters * distanceScale;
+            if (distanceScale > 0)
+                margin = Math.abs(eyeDistanceMeters - cellSizeMeters / distanceScale);
+        }
+
+        tile.lodEpoch = epoch;
+        tile.lodEyePoint = eyePoint;
+        tile.lodMargin = margin;
+        tile.lodSplit = split;
+
+        return split;
+    }
+
+    /**
+     * Listens for changes to an elevation model's elevations, and stops listening to the previously observed model.
+     *
+     * @param elevationModel the elevation model to observe. May be null.
+     */
+    protected void observeElevationModel(ElevationModel elevationModel)
+    {
+        if (elevationModel == this.observedElevationModel)
+            return;
+
+        if (this.observedElevationModel != null)
+            this.observedElevationModel.removePropertyChangeListener(this.elevationListener);
+
+        if (elevationModel != null)
+            elevationModel.addPropertyChangeListener(this.elevationListener);
+
+        this.observedElevationModel = elevationModel;
+        this.elevationVersion.incrementAndGet();
+    }
+
+    /**
+     * Collects the detail hints that {@link #computeTileResolutionTarget(DrawContext, RectTile)} may apply to tiles.
+     * A compound elevation model's hint varies by sector, so the hints of its component models are collected instead.
+     *
+     * @param elevationModel the elevation model to collect detail hints from. May be null.
+     * @param hints          the list to add the detail hints to.
+     */
+    protected void collectDetailHints(ElevationModel elevationModel, List<Double> hints)
+    {
+        if (elevationModel instanceof CompoundElevationModel)
+        {
+            for (ElevationModel em : ((CompoundElevationModel) elevationModel).getElevationModels())
+            {
+                this.collectDetailHints(em, hints);
+            }
+        }
+        else if (elevationModel != null)
+        {
+            hints.add(elevationModel.getDetailHint(Sector.FULL_SPHERE));
+        }
     }
 
     protected double computeTileResolutionTarget(DrawContext dc, RectTile tile)
@@ -641,9 +1056,34 @@ public class RectangularTessellator extends WWObjectImpl implements Tessellator
 
     protected RectangularTessellator.CacheKey createCacheKey(DrawContext dc, RectTile tile)
     {
+        // Vertices maintained incrementally are recomputed in place when the vertical exaggeration changes, so their
+        // key excludes it.
+        if (this.isIncrementalLodEnabled())
+            return new CacheKey(tile.sector, tile.density, dc.getGlobe().getGlobeStateKey());
+
         return new CacheKey(dc, tile.sector, tile.density);
     }
 
+    /**
+     * Indicates whether a tile's vertices can be used as is. Incrementally maintained vertices are current while the
+     * vertical exaggeration is unchanged and either the elevations are unchanged or the vertices are younger than the
+     * update frequency. Otherwise vertices are current while they are younger than the update frequency.
+     *
+     * @param dc the current draw context.
+     * @param ri the tile's render info.
+     *
+     * @return true if the vertices are current, otherwise false.
+     */
+    protected boolean isVertsCurrent(DrawContext dc, RenderInfo ri)
+    {
+        boolean recent = ri.time >= System.currentTimeMillis() - this.getUpdateFrequency();
+        if (!this.isIncrementalLodEnabled())
+            return recent;
+
+        return ri.elevations != null && ri.verticalExaggeration == dc.getVerticalExaggeration()
+            && (recent || ri.elevationVersion == this.elevationVersion.get());
+    }
+
     protected void makeVerts(DrawContext dc, RectTile tile)
     {
         // First see if the vertices have been previously computed and are in the cache. Since the elevation model
@@ -651,34 +1091,145 @@ public class RectangularTessellator extends WWObjectImpl implements Tessellator
         MemoryCache cache = WorldWind.getMemoryCache(CACHE_ID);
         CacheKey cacheKey = this.createCacheKey(dc, tile);
         tile.ri = (RenderInfo) cache.getObject(cacheKey);
-        if (tile.ri != null && tile.ri.time >= System.currentTimeMillis() - this.getUpdateFrequency())
+        if (tile.ri != null && this.isVertsCurrent(dc, tile.ri))
             return;
 
         if (this.buildVerts(dc, tile, this.makeTileSkirts))
             cache.add(cacheKey, tile.ri, tile.ri.getSizeInBytes());
     }
 
+    /**
+     * Builds the vertices of the tiles in a list that have no current vertices in the cache. The builds run on the
+     * {@link #getBuildPool() build pool}, and the resulting vertices are installed in their tiles on the calling
+     * thread once all builds complete.
+     *
+     * @param dc    the current draw context.
+     * @param tiles the tiles to build vertices for.
+     */
+    protected void makeVertsInParallel(DrawContext dc, List<SectorGeometry> tiles)
+    {
+        MemoryCache cache = WorldWind.getMemoryCache(CACHE_ID);
+
+        ArrayList<VertexBuilder> builders = new ArrayList<VertexBuilder>();
+        for (SectorGeometry sg : tiles)
+        {
+            RectTile tile = (RectTile) sg;
+            CacheKey cacheKey = this.createCacheKey(dc, tile);
+            tile.ri = (RenderInfo) cache.getObject(cacheKey);
+            if (tile.ri != null && this.isVertsCurrent(dc, tile.ri))
+                continue;
+
+            builders.add(new VertexBuilder(this, dc, tile, cacheKey));
+        }
+
+        if (builders.isEmpty())
+            return;
+
+        // Run all but the first builder on the pool and the first on this thread, which would otherwise sit idle.
+        ArrayList<ForkJoinTask<Void>> tasks = new ArrayList<ForkJoinTask<Void>>(builders.size());
+        for (int i = 1; i < builders.size(); i++)
+        {
+            tasks.add(this.getBuildPool().submit(builders.get(i)));
+        }
+
+        Throwable failure = null;
+        try
+        {
+            builders.get(0).call();
+        }
+        catch (Exception e)
+        {
+            failure = e;
+        }
+
+        // Wait for every builder, even after a failure, so that none is still writing to its tile's vertex buffer
+        // once this method returns.
+        for (ForkJoinTask<Void> task : tasks)
+        {
+            task.quietlyJoin();
+            if (failure == null && task.isCompletedAbnormally())
+                failure = task.getException();
+        }
+
+        if (failure != null)
+            throw new WWRuntimeException(failure);
+
+        // Installing vertices touches OpenGL, so it's done on this thread.
+        for (VertexBuilder builder : builders)
+        {
+            if (this.installVerts(dc, builder.tile, builder.result))
+                cache.add(builder.cacheKey, builder.tile.ri, builder.tile.ri.getSizeInBytes());
+        }
+    }
+
     public boolean buildVerts(DrawContext dc, RectTile tile, boolean makeSkirts)
     {
-        int density = tile.density;
-        int numVertices = (density + 3) * (density + 3);
+        FloatBuffer verts = this.allocateVertices(tile);
 
-        FloatBuffer verts;
+        return this.installVerts(dc, tile, this.computeVertices(dc, tile, verts, makeSkirts));
+    }
 
+    /**
+     * Returns the buffer to hold a tile's vertices. The tile's current vertex buffer is re-used if it has the tile's
+     * density, otherwise a new buffer is created.
+     *
+     * @param tile the tile to return a vertex buffer for.
+     *
+     * @return a buffer large enough to hold the tile's vertices.
+     */
+    protected FloatBuffer allocateVertices(RectTile tile)
+    {
         //Re-use the RenderInfo vertices buffer. If it has not been set or the density has changed, create a new buffer
-        if (tile.ri == null || tile.ri.vertices == null || density != tile.ri.density)
+        if (tile.ri == null || tile.ri.vertices == null || tile.density != tile.ri.density)
         {
-            verts = Buffers.newDirectFloatBuffer(numVertices * 3);
+            int numVertices = (tile.density + 3) * (tile.density + 3);
+            return Buffers.newDirectFloatBuffer(numVertices * 3);
+        }
+
+        FloatBuffer verts = tile.ri.vertices;
+        verts.rewind();
+        return verts;
+    }
+
+    /**
+     * Computes a tile's vertices relative to the center of its sector. This does not use OpenGL and may be called on
+     * any thread. When the level of detail is maintained incrementally and the elevations of the tile's current render
+     * info are unchanged, those elevations are used rather than retrieved again.
+     *
+     * @param dc         the current draw context.
+     * @param tile       the tile to compute vertices for.
+     * @param verts      the buffer in which to place the vertices.
+     * @param makeSkirts true to make the tile's skirts, otherwise false.
+     *
+     * @return the computed vertices.
+     */
+    protected TileVertices computeVertices(DrawContext dc, RectTile tile, FloatBuffer verts, boolean makeSkirts)
+    {
+        int density = tile.density;
+        int numVertices = (density + 3) * (density + 3);
+
+        long elevationStart = System.nanoTime();
+        TileVertices result = new TileVertices();
+        double[] latitudes = new double[numVertices];
+        double[] longitudes = new double[numVertices];
+        this.computeLocations(tile, latitudes, longitudes);
+        RenderInfo ri = tile.ri;
+        if (this.isIncrementalLodEnabled() && ri != null && ri.elevations != null
+            && ri.elevationVersion == this.elevationVersion.get())
+        {
+            result.elevations = ri.elevations;
+            result.elevationVersion = ri.elevationVersion;
         }
         else
         {
-            verts = tile.ri.vertices;
-            verts.rewind();
+            // Capture the version before retrieving elevations so that changes made meanwhile cause a rebuild.
+            result.elevationVersion = this.elevationVersion.get();
+            result.elevations = new double[numVertices];
+            dc.getGlobe().getElevations(tile.sector, latitudes, longitudes, tile.getResolution(), result.elevations);
         }
-
-        ArrayList<LatLon> latlons = this.computeLocations(tile);
-        double[] elevations = new double[latlons.size()];
-        dc.getGlobe().getElevations(tile.sector, latlons, tile.getResolution(), elevations);
+        double[] elevations = result.elevations;
+        long vertexStart = System.nanoTime();
+        this.elevationTime.addAndGet(vertexStart - elevationStart);
 
         double verticalExaggeration = dc.getVerticalExaggeration();
 
@@ -697,38 +1248,82 @@ public class RectangularTessellator extends WWObjectImpl implements Tessellator
         LatLon centroid = tile.sector.getCentroid();
         Vec4 refCenter = globe.computePointFromPosition(centroid.getLatitude(), centroid.getLongitude(), 0d);
 
+        double[] heights = new double[numVertices];
         int ie = 0;
-        int iv = 0;
-        Iterator<LatLon> latLonIter = latlons.iterator();
         for (int j = 0; j <= density + 2; j++)
         {
             for (int i = 0; i <= density + 2; i++)
             {
-                LatLon latlon = latLonIter.next();
-                double elevation = verticalExaggeration * elevations[ie++];
+                double elevation = verticalExaggeration * elevations[ie];
 
                 // Tile edges use min elevation to draw the skirts
                 if (exaggeratedMinElevation != null &&
                     (j == 0 || j >= tile.density + 2 || i == 0 || i >= tile.density + 2))
                     elevation = exaggeratedMinElevation;
 
-                Vec4 p = globe.computePointFromPosition(latlon.getLatitude(), latlon.getLongitude(), elevation);
-                verts.put(iv++, (float) (p.x - refCenter.x));
-                verts.put(iv++, (float) (p.y - refCenter.y));
-                verts.put(iv++, (float) (p.z - refCenter.z));
+                heights[ie++] = elevation;
             }
         }
 
+        // The vertex locations form a grid of constant latitude rows and constant longitude columns, which the globe
+        // converts to points directly into the vertex buffer.
         verts.rewind();
+        globe.computePointsFromPositions(latitudes, longitudes, density + 3, density + 3, heights, refCenter, verts);
+        verts.rewind();
+        this.vertexTime.addAndGet(System.nanoTime() - vertexStart);
+
+        result.vertices = verts;
+        result.referenceCenter = refCenter;
+        result.verticalExaggeration = verticalExaggeration;
+
+        return result;
+    }
 
-        if (tile.ri != null)
+    /**
+     * Installs computed vertices in a tile's {@link RenderInfo}, either updating the tile's current render info or
+     * creating a new one. This may use OpenGL and must be called on the rendering thread.
+     *
+     * @param dc       the current draw context.
+     * @param tile     the tile to install the vertices in.
+     * @param vertices the tile's computed vertices.
+     *
+     * @return true if a new render info was created and must be added to the cache, otherwise false.
+     */
+    protected boolean installVerts(DrawContext dc, RectTile tile, TileVertices vertices)
+    {
+        boolean created = false;
+        if (tile.ri != null && tile.ri.vertices == vertices.vertices)
         {
             tile.ri.update(dc);
-            return false;
+        }
+        else
+        {
+            tile.ri = this.createRenderInfo(dc, tile.density, vertices.vertices, vertices.referenceCenter);
+            created = true;
         }
 
-        tile.ri = new RenderInfo(dc, density, verts, refCenter);
-        return true;
+        // Elevations are kept only when they may be re-used.
+        tile.ri.elevations = this.isIncrementalLodEnabled() ? vertices.elevations : null;
+        tile.ri.verticalExaggeration = vertices.verticalExaggeration;
+        tile.ri.elevationVersion = vertices.elevationVersion;
+
+        return created;
+    }
+
+    /**
+     * Creates the render info holding a tile's vertices. Subclasses may override this method to hold additional
+     * per-tile state.
+     *
+     * @param dc        the current draw context.
+     * @param density   the tile's density.
+     * @param vertices  the tile's vertices.
+     * @param refCenter the reference center of the vertices.
+     *
+     * @return a new render info.
+     */
+    protected RenderInfo createRenderInfo(DrawContext dc, int density, FloatBuffer vertices, Vec4 refCenter)
+    {
+        return new RenderInfo(dc, density, vertices, refCenter);
     }
 
     protected ArrayList<LatLon> computeLocations(RectTile tile)
@@ -772,6 +1367,46 @@ public class RectangularTessellator extends WWObjectImpl implements Tessellator
         return latlons;
     }
 
+    /**
+     * Computes the latitudes and longitudes, in degrees, of a tile's vertices, including the duplicated edge vertices
+     * forming the tile's skirts. The vertices are the same as those of {@link #computeLocations(RectTile)}, in the same
+     * order.
+     *
+     * @param tile       the tile to compute locations for.
+     * @param latitudes  an array in which to place the vertex latitudes. Must have at least as many elements as the
+     *                   tile has vertices.
+     * @param longitudes an array in which to place the vertex longitudes. Must have at least as many elements as the
+     *                   tile has vertices.
+     */
+    protected void computeLocations(RectTile tile, double[] latitudes, double[] longitudes)
+    {
+        int density = tile.density;
+
+        double latMin = tile.sector.getMinLatitude().degrees;
+        double latMax = tile.sector.getMaxLatitude().degrees;
+        double dLat = tile.sector.getDeltaLatDegrees() / density;
+
+        double lonMin = tile.sector.getMinLongitude().degrees;
+        double lonMax = tile.sector.getMaxLongitude().degrees;
+        double dLon = tile.sector.getDeltaLonDegrees() / density;
+
+        int k = 0;
+        for (int j = 0; j <= density + 2; j++)
+        {
+            // The first and last rows and columns repeat the tile's edges to form the skirts.
+            double lat = j == 0 ? latMin : j > density + 1 ? latMax : latMin + (j - 1) * dLat;
+
+            for (int i = 0; i <= density + 2; i++)
+            {
+                double lon = i == 0 ? lonMin : i > density + 1 ? lonMax : lonMin + (i - 1) * dLon;
+
+                latitudes[k] = lat;
+                longitudes[k] = Math.max(-180, Math.min(180, lon));
+                k++;
+            }
+        }
+    }
+
     protected void renderMultiTexture(DrawContext dc, RectTile tile, int numTextureUnits)
     {
         if (dc == null)
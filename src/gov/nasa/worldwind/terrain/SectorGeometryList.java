@@ -81,6 +81,8 @@ public class SectorGeometryList extends ArrayList<SectorGeometry>
         // TODO: add the beginRendering interface to Tessellator in order to eliminate this type test
         if (dc.getGlobe().getTessellator() instanceof RectangularTessellator)
             ((RectangularTessellator) dc.getGlobe().getTessellator()).beginRendering(dc);
+        else if (dc.getGlobe().getTessellator() instanceof TINTessellator)
+            ((TINTessellator) dc.getGlobe().getTessellator()).beginRendering(dc);
     }
 
     /**
@@ -99,6 +101,8 @@ public class SectorGeometryList extends ArrayList<SectorGeometry>
 
         if (dc.getGlobe().getTessellator() instanceof RectangularTessellator)
             ((RectangularTessellator) dc.getGlobe().getTessellator()).endRendering(dc);
+        else if (dc.getGlobe().getTessellator() instanceof TINTessellator)
+            ((TINTessellator) dc.getGlobe().getTessellator()).endRendering(dc);
     }
 
     /**
@@ -0,0 +1,222 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+
+package gov.nasa.worldwind.terrain;
+
+import gov.nasa.worldwind.avlist.*;
+import gov.nasa.worldwind.util.*;
+import org.w3c.dom.*;
+
+import java.io.*;
+import java.net.URL;
+import java.nio.*;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * An elevation model whose tiles are triangulated irregular networks in the quantized-mesh format, rather than regular
+ * grids. Tiles are organized in the same level set as those of {@link BasicElevationModel}, and are found in the file
+ * store or retrieved in the same way; by default their files have the suffix ".terrain", and may be gzip compressed.
+ * <p/>
+ * Each tile's mesh is kept in memory for use by {@link TINTessellator}, which renders the meshes directly. So that
+ * elevation queries behave exactly as they do for a regular grid, each mesh is also sampled onto the level's tile grid
+ * when it's loaded, and queries interpolate those samples.
+ * <p/>
+ * A configuration document describes this model by the <code>modelType</code> attribute "TIN" on its
+ * <code>ElevationModel</code> element. Tiles can be made from an existing BIL tile pyramid by {@link
+ * gov.nasa.worldwind.data.BILToTINConverter}.
+ *
+ * @version $Id$
+ * @see QuantizedMeshTile
+ */
+public class TINElevationModel extends BasicElevationModel
+{
+    /** The configuration document <code>modelType</code> denoting a TIN elevation model. */
+    public static final String MODEL_TYPE = "TIN";
+    /** The default suffix of TIN tile files. */
+    public static final String FORMAT_SUFFIX = ".terrain";
+
+    protected static class TINTile extends ElevationTile
+    {
+        protected QuantizedMeshTile mesh;
+
+        protected TINTile(ElevationTile tile)
+        {
+            super(tile.getSector(), tile.getLevel(), tile.getRow(), tile.getColumn());
+        }
+
+        public QuantizedMeshTile getMesh()
+        {
+            return this.mesh;
+        }
+    }
+
+    public TINElevationModel(AVList params)
+    {
+        super(setTINFallbacks(params));
+    }
+
+    public TINElevationModel(Document dom, AVList params)
+    {
+        this(dom.getDocumentElement(), params);
+    }
+
+    public TINElevationModel(Element domElement, AVList params)
+    {
+        this(getBasicElevationModelConfigParams(domElement, params));
+    }
+
+    protected static AVList setTINFallbacks(AVList params)
+    {
+        if (params != null && params.getValue(AVKey.FORMAT_SUFFIX) == null)
+            params.setValue(AVKey.FORMAT_SUFFIX, FORMAT_SUFFIX);
+
+        return params;
+    }
+
+    /**
+     * Creates a configuration document for a TIN elevation model. The document is that of a {@link
+     * BasicElevationModel} with the <code>modelType</code> attribute "TIN".
+     *
+     * @param params parameters describing the model.
+     *
+     * @return a configuration document for the model.
+     *
+     * @see BasicElevationModel#createBasicElevationModelConfigDocument(gov.nasa.worldwind.avlist.AVList)
+     */
+    public static Document createTINElevationModelConfigDocument(AVList params)
+    {
+        Document doc = createBasicElevationModelConfigDocument(params);
+        doc.getDocumentElement().setAttribute("modelType", MODEL_TYPE);
+
+        return doc;
+    }
+
+    /**
+     * Indicates whether a configuration element describes a TIN elevation model.
+     *
+     * @param domElement the configuration element.
+     *
+     * @return true if the element's <code>modelType</code> attribute is "TIN", otherwise false.
+     */
+    public static boolean isTINElevationModelConfig(Element domElement)
+    {
+        return domElement != null && MODEL_TYPE.equalsIgnoreCase(WWXML.getText(domElement, "@modelType"));
+    }
+
+    /**
+     * Returns the mesh of a tile if it's in memory, and optionally requests it if not.
+     *
+     * @param key     the tile's key.
+     * @param request true to request the tile if it's not in memory.
+     *
+     * @return the tile's mesh, or null if it's not in memory.
+     *
+     * @throws IllegalArgumentException if the key is null.
+     */
+    public QuantizedMeshTile getMesh(TileKey key, boolean request)
+    {
+        if (key == null)
+        {
+            String message = Logging.getMessage("nullValue.TileKeyIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        ElevationTile tile = this.getTileFromMemory(key);
+        if (tile instanceof TINTile && tile.getElevations() != null && !tile.isElevationsExpired())
+            return ((TINTile) tile).getMesh();
+
+        if (request)
+            this.requestTile(key);
+
+        return null;
+    }
+
+    @Override
+    protected ElevationTile createTile(TileKey key)
+    {
+        return new TINTile(super.createTile(key));
+    }
+
+    @Override
+    protected boolean loadElevations(ElevationTile tile, URL url) throws Exception
+    {
+        QuantizedMeshTile mesh = this.readMesh(url);
+        if (mesh == null)
+            return false;
+
+        int width = tile.getWidth();
+        int height = tile.getHeight();
+        double[] heights = new double[width * height];
+        mesh.rasterize(width, height, heights);
+
+        FloatBuffer buffer = FloatBuffer.allocate(heights.length);
+        for (double h : heights)
+        {
+            buffer.put((float) h);
+        }
+        buffer.rewind();
+
+        BufferWrapper elevations = new BufferWrapper.FloatBufferWrapper(buffer);
+        ((TINTile) tile).mesh = mesh;
+        tile.setElevations(elevations, this);
+        this.addTileToCache(tile, elevations);
+
+        return true;
+    }
+
+    @Override
+    protected void addTileToCache(ElevationTile tile, BufferWrapper elevations)
+    {
+        QuantizedMeshTile mesh = tile instanceof TINTile ? ((TINTile) tile).mesh : null;
+        if (tile.getLevelNumber() == 0 || mesh == null)
+            super.addTileToCache(tile, elevations);
+        else
+            this.getMemoryCache().add(tile.getTileKey(), tile, elevations.getSizeInBytes() + mesh.getSizeInBytes());
+    }
+
+    /**
+     * Reads and decodes a TIN tile, decompressing it if it's gzip compressed.
+     *
+     * @param url the tile's location.
+     *
+     * @return the tile's mesh.
+     *
+     * @throws Exception if the tile can't be read or decoded.
+     */
+    protected QuantizedMeshTile readMesh(URL url) throws Exception
+    {
+        try
+        {
+            ByteBuffer buffer;
+            synchronized (this.fileLock)
+            {
+                buffer = WWIO.readURLContentToBuffer(url);
+            }
+
+            if (buffer.remaining() > 2 && (buffer.get(0) & 0xFF) == 0x1F && (buffer.get(1) & 0xFF) == 0x8B)
+            {
+                InputStream stream = new GZIPInputStream(WWIO.getInputStreamFromByteBuffer(buffer));
+                try
+                {
+                    buffer = WWIO.readStreamToBuffer(stream);
+                }
+                finally
+                {
+                    WWIO.closeStream(stream, url.toString());
+                }
+            }
+
+            return QuantizedMeshTile.decode(buffer);
+        }
+        catch (Exception e)
+        {
+            Logging.logger().log(java.util.logging.Level.SEVERE,
+                Logging.getMessage("ElevationModel.ExceptionReadingElevationFile", url.toString()), e);
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,1286 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+
+package gov.nasa.worldwind.terrain;
+
+import com.jogamp.common.nio.Buffers;
+import gov.nasa.worldwind.*;
+import gov.nasa.worldwind.avlist.AVKey;
+import gov.nasa.worldwind.cache.*;
+import gov.nasa.worldwind.geom.*;
+import gov.nasa.worldwind.globes.*;
+import gov.nasa.worldwind.pick.*;
+import gov.nasa.worldwind.render.*;
+import gov.nasa.worldwind.util.*;
+
+import javax.media.opengl.*;
+import java.awt.*;
+import java.nio.*;
+import java.util.*;
+import java.util.List;
+
+/**
+ * A tessellator that renders the triangulated irregular network tiles of a {@link TINElevationModel} directly, rather
+ * than sampling elevations onto regular grids. Tiles are selected from the model's level set by the same distance
+ * criterion {@link RectangularTessellator} uses, treating each tile as though it had that tessellator's default density.
+ * A tile is split only when all four of its children's meshes are in memory; until then the tile is drawn and the
+ * children are requested. Level zero tiles whose meshes are not yet in memory are drawn flat.
+ * <p/>
+ * The tessellator uses the first TIN elevation model it finds in the globe's elevation model, which may be a {@link
+ * CompoundElevationModel}. TIN tiles are drawn only where they lie within that model's coverage. The rest of the globe
+ * is tessellated by a <code>RectangularTessellator</code> from all of the globe's elevations, and so is the whole globe
+ * if it has no TIN elevation model. That tessellator's tiles follow the TIN model's tile grid, so the two tessellations
+ * meet along shared tile edges. Use this tessellator by specifying its class name for the {@link
+ * gov.nasa.worldwind.avlist.AVKey#TESSELLATOR_CLASS_NAME} configuration property.
+ *
+ * @version $Id$
+ */
+public class TINTessellator extends WWObjectImpl implements Tessellator
+{
+    protected static class RenderInfo
+    {
+        protected final Vec4 referenceCenter;
+        protected final double verticalExaggeration;
+        protected final FloatBuffer vertices;
+        protected final FloatBuffer texCoords;
+        protected final IntBuffer indices;
+        protected final double[] latitudes;
+        protected final double[] longitudes;
+        // Indices of the mesh's own triangles precede those of the skirts.
+        protected final int numSurfaceIndices;
+        // Vertices of each triangle, unshared so that each triangle can be drawn in its own pick color.
+        protected FloatBuffer pickVertices;
+        protected ByteBuffer pickColors;
+
+        protected RenderInfo(Vec4 referenceCenter, double verticalExaggeration, FloatBuffer vertices,
+            FloatBuffer texCoords, IntBuffer indices, double[] latitudes, double[] longitudes, int numSurfaceIndices)
+        {
+            this.referenceCenter = referenceCenter;
+            this.verticalExaggeration = verticalExaggeration;
+            this.vertices = vertices;
+            this.texCoords = texCoords;
+            this.indices = indices;
+            this.latitudes = latitudes;
+            this.longitudes = longitudes;
+            this.numSurfaceIndices = numSurfaceIndices;
+        }
+
+        protected long getSizeInBytes()
+        {
+            return 4L * (this.vertices.limit() + this.texCoords.limit() + this.indices.limit())
+                + 16L * this.latitudes.length;
+        }
+    }
+
+    protected static class TINTile implements SectorGeometry
+    {
+        protected final TINTessellator tessellator;
+        protected final TileKey tileKey;
+        protected final Sector sector;
+        protected final QuantizedMeshTile mesh;
+        protected final Extent extent;
+        protected RenderInfo ri;
+        protected int minColorCode = 0;
+        protected int maxColorCode = 0;
+
+        public TINTile(TINTessellator tessellator, TileKey tileKey, Sector sector, QuantizedMeshTile mesh,
+            Extent extent)
+        {
+            this.tessellator = tessellator;
+            this.tileKey = tileKey;
+            this.sector = sector;
+            this.mesh = mesh;
+            this.extent = extent;
+        }
+
+        public TileKey getTileKey()
+        {
+            return this.tileKey;
+        }
+
+        public Sector getSector()
+        {
+            return this.sector;
+        }
+
+        public QuantizedMeshTile getMesh()
+        {
+            return this.mesh;
+        }
+
+        public Extent getExtent()
+        {
+            return this.extent;
+        }
+
+        public void beginRendering(DrawContext dc, int numTextureUnits)
+        {
+            dc.getView().setReferenceCenter(dc, this.ri.referenceCenter);
+        }
+
+        public void endRendering(DrawContext dc)
+        {
+        }
+
+        public void renderMultiTexture(DrawContext dc, int numTextureUnits)
+        {
+            this.tessellator.render(dc, this, numTextureUnits);
+        }
+
+        public void renderMultiTexture(DrawContext dc, int numTextureUnits, boolean beginRenderingCalled)
+        {
+            if (!beginRenderingCalled)
+                this.beginRendering(dc, numTextureUnits);
+
+            this.tessellator.render(dc, this, numTextureUnits);
+        }
+
+        public void render(DrawContext dc)
+        {
+            this.beginRendering(dc, 1);
+            this.tessellator.render(dc, this, 1);
+        }
+
+        public void render(DrawContext dc, boolean beginRenderingCalled)
+        {
+            if (!beginRenderingCalled)
+                this.beginRendering(dc, 1);
+
+            this.tessellator.render(dc, this, 1);
+        }
+
+        public void renderWireframe(DrawContext dc, boolean showTriangles, boolean showTileBoundary)
+        {
+            this.tessellator.renderWireframe(dc, this, showTriangles, showTileBoundary);
+        }
+
+        public void renderBoundingVolume(DrawContext dc)
+        {
+            if (this.extent instanceof Renderable)
+                ((Renderable) this.extent).render(dc);
+        }
+
+        public void renderTileID(DrawContext dc)
+        {
+            this.tessellator.renderTileID(dc, this);
+        }
+
+        public PickedObject[] pick(DrawContext dc, List<? extends Point> pickPoints)
+        {
+            return this.tessellator.pick(dc, this, pickPoints);
+        }
+
+        public void pick(DrawContext dc, Point pickPoint)
+        {
+            PickedObject[] pos = this.tessellator.pick(dc, this, Arrays.asList(pickPoint));
+            if (pos != null && pos[0] != null)
+                dc.addPickedObject(pos[0]);
+        }
+
+        public Vec4 getSurfacePoint(Angle latitude, Angle longitude, double metersOffset)
+        {
+            return this.tessellator.getSurfacePoint(this, latitude, longitude, metersOffset);
+        }
+
+        public Intersection[] intersect(Line line)
+        {
+            return this.tessellator.intersect(this, line);
+        }
+
+        public Intersection[] intersect(double elevation)
+        {
+            return this.tessellator.intersect(this, elevation);
+        }
+
+        public DoubleBuffer makeTextureCoordinates(GeographicTextureCoordinateComputer computer)
+        {
+            return this.tessellator.makeGeographicTexCoords(this, computer);
+        }
+    }
+
+    protected static class CacheKey
+    {
+        protected final TileKey tileKey;
+        protected final QuantizedMeshTile mesh;
+        protected final Object globeStateKey;
+
+        public CacheKey(DrawContext dc, TileKey tileKey, QuantizedMeshTile mesh)
+        {
+            this.tileKey = tileKey;
+            this.mesh = mesh;
+            this.globeStateKey = dc.getGlobe().getStateKey(dc);
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (this == o)
+                return true;
+            if (o == null || getClass() != o.getClass())
+                return false;
+
+            CacheKey that = (CacheKey) o;
+
+            // Meshes are immutable, so a tile's geometry is current while its mesh is the same object.
+            return this.mesh == that.mesh && this.tileKey.equals(that.tileKey)
+                && (this.globeStateKey != null ? this.globeStateKey.equals(that.globeStateKey)
+                : that.globeStateKey == null);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            int result = this.tileKey.hashCode();
+            result = 31 * result + System.identityHashCode(this.mesh);
+            result = 31 * result + (this.globeStateKey != null ? this.globeStateKey.hashCode() : 0);
+            return result;
+        }
+    }
+
+    /**
+     * A rectangular tessellator that leaves out the sectors drawn from TIN tiles. Its top level tiles follow the level
+     * zero grid of the TIN model's level set, coarsened by powers of two, so each of its tiles contains, lies within or
+     * is disjoint from each TIN tile. Tiles containing a TIN tile are split down to that tile's size and tiles within
+     * one are left out, so the remaining tiles share their edges with the TIN tiles.
+     */
+    protected static class ComplementTessellator extends RectangularTessellator
+    {
+        /** The tolerance, in degrees, of comparisons between the sectors of the two tile grids. */
+        protected static final double TOLERANCE = 1e-9;
+
+        protected LevelSet levels;
+        protected List<Sector> excludedSectors = new ArrayList<Sector>();
+        protected Sector excludedCoverage;
+
+        /**
+         * Specifies the tile grid to follow and the sectors to leave out.
+         *
+         * @param levels          the level set whose tile grid to follow, or null to use the default grid.
+         * @param excludedSectors the sectors to leave out. Each must be a tile of the level set.
+         */
+        public void setExcludedSectors(LevelSet levels, List<Sector> excludedSectors)
+        {
+            // The top level tiles are cached by globe, so discard them when the grid changes.
+            if (levels != this.levels)
+                this.topLevelTilesCache.clear();
+
+            this.levels = levels;
+            this.excludedSectors = excludedSectors;
+            this.excludedCoverage = null;
+            for (Sector sector : excludedSectors)
+            {
+                this.excludedCoverage = sector.union(this.excludedCoverage);
+            }
+        }
+
+        /**
+         * {@inheritDoc}
+         * <p/>
+         * The excluded sectors change as TIN tiles load, so incremental updates are used only while there are none.
+         */
+        @Override
+        public boolean isIncrementalLodEnabled()
+        {
+            return this.levels == null && super.isIncrementalLodEnabled();
+        }
+
+        @Override
+        protected ArrayList<RectTile> createTopLevelTiles(DrawContext dc)
+        {
+            if (this.levels == null)
+                return super.createTopLevelTiles(dc);
+
+            this.globe = dc.getGlobe();
+            LatLon origin = this.levels.getTileOrigin();
+            LatLon delta = this.levels.getFirstLevel().getTileDelta();
+            double deltaLat = delta.getLatitude().degrees;
+            double deltaLon = delta.getLongitude().degrees;
+            while (2 * deltaLat <= 180d / DEFAULT_NUM_LAT_SUBDIVISIONS
+                && 2 * deltaLon <= 360d / DEFAULT_NUM_LON_SUBDIVISIONS)
+            {
+                deltaLat *= 2;
+                deltaLon *= 2;
+            }
+
+            int firstRow = (int) Math.floor((-90 - origin.getLatitude().degrees) / deltaLat);
+            int lastRow = (int) Math.ceil((90 - origin.getLatitude().degrees) / deltaLat) - 1;
+            int firstCol = (int) Math.floor((-180 - origin.getLongitude().degrees) / deltaLon);
+            int lastCol = (int) Math.ceil((180 - origin.getLongitude().degrees) / deltaLon) - 1;
+
+            ArrayList<RectTile> tops = new ArrayList<RectTile>();
+            for (int row = firstRow; row <= lastRow; row++)
+            {
+                for (int col = firstCol; col <= lastCol; col++)
+                {
+                    double minLat = origin.getLatitude().degrees + row * deltaLat;
+                    double minLon = origin.getLongitude().degrees + col * deltaLon;
+                    Sector tileSector = Sector.fromDegrees(Math.max(-90, minLat), Math.min(90, minLat + deltaLat),
+                        Math.max(-180, minLon), Math.min(180, minLon + deltaLon));
+                    if (tileSector.getDeltaLatDegrees() <= 0 || tileSector.getDeltaLonDegrees() <= 0)
+                        continue;
+
+                    if (!(dc.is2DGlobe() && this.skipTile(dc, tileSector)))
+                        tops.add(this.createTile(dc, tileSector, 0));
+                }
+            }
+
+            return tops;
+        }
+
+        @Override
+        protected void selectVisibleTiles(DrawContext dc, RectTile tile)
+        {
+            if (this.excludedCoverage == null || !overlaps(this.excludedCoverage, tile.getSector()))
+            {
+                super.selectVisibleTiles(dc, tile);
+                return;
+            }
+
+            boolean split = false;
+            for (Sector sector : this.excludedSectors)
+            {
+                if (contains(sector, tile.getSector()))
+                    return;
+
+                // A tile larger than an excluded sector it overlaps must be split to meet the sector's edges.
+                if (overlaps(sector, tile.getSector())
+                    && tile.getSector().getDeltaLatDegrees() > sector.getDeltaLatDegrees() + TOLERANCE)
+                    split = true;
+            }
+
+            if (!split)
+            {
+                super.selectVisibleTiles(dc, tile);
+                return;
+            }
+
+            Extent extent = tile.getExtent();
+            if (extent != null && !extent.intersects(this.currentFrustum))
+                return;
+
+            ++this.currentLevel;
+            for (RectTile child : this.split(dc, tile))
+            {
+                this.selectVisibleTiles(dc, child);
+            }
+            --this.currentLevel;
+        }
+
+        protected static boolean contains(Sector a, Sector b)
+        {
+            return b.getMinLatitude().degrees >= a.getMinLatitude().degrees - TOLERANCE
+                && b.getMaxLatitude().degrees <= a.getMaxLatitude().degrees + TOLERANCE
+                && b.getMinLongitude().degrees >= a.getMinLongitude().degrees - TOLERANCE
+                && b.getMaxLongitude().degrees <= a.getMaxLongitude().degrees + TOLERANCE;
+        }
+
+        protected static boolean overlaps(Sector a, Sector b)
+        {
+            return b.getMinLatitude().degrees < a.getMaxLatitude().degrees - TOLERANCE
+                && b.getMaxLatitude().degrees > a.getMinLatitude().degrees + TOLERANCE
+                && b.getMinLongitude().degrees < a.getMaxLongitude().degrees - TOLERANCE
+                && b.getMaxLongitude().degrees > a.getMinLongitude().degrees + TOLERANCE;
+        }
+    }
+
+    protected static final double DEFAULT_LOG10_RESOLUTION_TARGET = 1.3;
+    protected static final int DEFAULT_DENSITY = 20;
+    /** The number of cells along each side of the flat stand-in for a level zero tile whose mesh isn't in memory. */
+    protected static final int PLACEHOLDER_CELLS = 16;
+    protected static final String CACHE_NAME = "TIN Terrain";
+    protected static final String CACHE_ID = TINTessellator.class.getName();
+
+    protected static final QuantizedMeshTile PLACEHOLDER = QuantizedMeshTile.createGrid(PLACEHOLDER_CELLS, 0);
+
+    protected SectorGeometryList currentTiles = new SectorGeometryList();
+    protected Frustum currentFrustum;
+    protected Sector currentCoverage;
+    protected boolean makeTileSkirts = true;
+    protected long updateFrequency = 2000; // milliseconds
+    protected Globe globe;
+    protected PickSupport pickSupport = new PickSupport();
+    protected ComplementTessellator fallbackTessellator;
+
+    public SectorGeometryList tessellate(DrawContext dc)
+    {
+        if (dc == null)
+        {
+            String msg = Logging.getMessage("nullValue.DrawContextIsNull");
+            Logging.logger().severe(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        if (dc.getView() == null)
+        {
+            String msg = Logging.getMessage("nullValue.ViewIsNull");
+            Logging.logger().severe(msg);
+            throw new IllegalStateException(msg);
+        }
+
+        ComplementTessellator fallback = (ComplementTessellator) this.getFallbackTessellator();
+        TINElevationModel model = this.findTINElevationModel(dc.getGlobe().getElevationModel());
+        if (model == null)
+        {
+            fallback.setExcludedSectors(null, Collections.<Sector>emptyList());
+            return fallback.tessellate(dc);
+        }
+
+        if (!WorldWind.getMemoryCacheSet().containsCache(CACHE_ID))
+        {
+            long size = Configuration.getLongValue(AVKey.SECTOR_GEOMETRY_CACHE_SIZE, 10000000L);
+            MemoryCache cache = BasicMemoryCacheSet.createCache((long) (0.85 * size), size);
+            cache.setName(CACHE_NAME);
+            WorldWind.getMemoryCacheSet().addCache(CACHE_ID, cache);
+        }
+
+        this.globe = dc.getGlobe();
+        this.currentTiles.clear();
+        this.currentCoverage = null;
+        this.currentFrustum = dc.getView().getFrustumInModelCoordinates();
+
+        for (TileKey key : this.computeTopLevelKeys(model.getLevels()))
+        {
+            this.selectVisibleTiles(dc, model, key);
+        }
+
+        this.currentTiles.setSector(this.currentCoverage);
+
+        ArrayList<Sector> tinSectors = new ArrayList<Sector>(this.currentTiles.size());
+        for (SectorGeometry tile : this.currentTiles)
+        {
+            this.makeRenderInfo(dc, (TINTile) tile);
+            tinSectors.add(tile.getSector());
+        }
+
+        // Tessellate the rest of the globe around the TIN tiles.
+        fallback.setExcludedSectors(model.getLevels(), tinSectors);
+        SectorGeometryList complement = fallback.tessellate(dc);
+
+        SectorGeometryList sgl = new SectorGeometryList(this.currentTiles);
+        sgl.addAll(complement);
+        sgl.setSector(complement.getSector() != null ? complement.getSector().union(this.currentCoverage)
+            : this.currentCoverage);
+        return sgl;
+    }
+
+    public boolean isMakeTileSkirts()
+    {
+        return this.makeTileSkirts;
+    }
+
+    public void setMakeTileSkirts(boolean makeTileSkirts)
+    {
+        this.makeTileSkirts = makeTileSkirts;
+        if (this.fallbackTessellator != null)
+            this.fallbackTessellator.setMakeTileSkirts(makeTileSkirts);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * TIN tiles don't change once loaded, so this tessellator rebuilds a tile's geometry only when the tile's mesh or
+     * the globe's state changes. The update frequency applies to the fallback tessellator.
+     */
+    public long getUpdateFrequency()
+    {
+        return this.updateFrequency;
+    }
+
+    public void setUpdateFrequency(long updateFrequency)
+    {
+        this.updateFrequency = updateFrequency;
+        if (this.fallbackTessellator != null)
+            this.fallbackTessellator.setUpdateFrequency(updateFrequency);
+    }
+
+    /**
+     * Returns the tessellator used for the parts of the globe not drawn from TIN tiles, which is the whole globe when
+     * it has no TIN elevation model.
+     *
+     * @return the fallback tessellator.
+     */
+    public Tessellator getFallbackTessellator()
+    {
+        if (this.fallbackTessellator == null)
+        {
+            this.fallbackTessellator = new ComplementTessellator();
+            this.fallbackTessellator.setMakeTileSkirts(this.makeTileSkirts);
+            this.fallbackTessellator.setUpdateFrequency(this.updateFrequency);
+        }
+
+        return this.fallbackTessellator;
+    }
+
+    /**
+     * Finds the first TIN elevation model in an elevation model, searching the children of compound models depth
+     * first.
+     *
+     * @param elevationModel the elevation model to search. May be null.
+     *
+     * @return the first TIN elevation model found, or null if there is none.
+     */
+    protected TINElevationModel findTINElevationModel(ElevationModel elevationModel)
+    {
+        if (elevationModel instanceof TINElevationModel)
+            return (TINElevationModel) elevationModel;
+
+        if (elevationModel instanceof CompoundElevationModel)
+        {
+            for (ElevationModel child : ((CompoundElevationModel) elevationModel).getElevationModels())
+            {
+                TINElevationModel model = this.findTINElevationModel(child);
+                if (model != null)
+                    return model;
+            }
+        }
+
+        return null;
+    }
+
+    //**************************************************************//
+    //********************  Tile Selection  ************************//
+    //**************************************************************//
+
+    protected List<TileKey> computeTopLevelKeys(LevelSet levels)
+    {
+        Level level = levels.getFirstLevel();
+        Sector sector = levels.getSector();
+        LatLon delta = level.getTileDelta();
+        LatLon origin = levels.getTileOrigin();
+
+        int firstRow = Tile.computeRow(delta.getLatitude(), sector.getMinLatitude(), origin.getLatitude());
+        int lastRow = Tile.computeRow(delta.getLatitude(), sector.getMaxLatitude(), origin.getLatitude());
+        int firstCol = Tile.computeColumn(delta.getLongitude(), sector.getMinLongitude(), origin.getLongitude());
+        int lastCol = Tile.computeColumn(delta.getLongitude(), sector.getMaxLongitude(), origin.getLongitude());
+
+        // A sector ending on a tile boundary doesn't include the tile starting there.
+        if (lastRow > firstRow && Tile.computeRowLatitude(lastRow, delta.getLatitude(), origin.getLatitude()).degrees
+            >= sector.getMaxLatitude().degrees)
+            lastRow--;
+        if (lastCol > firstCol && Tile.computeColumnLongitude(lastCol, delta.getLongitude(),
+            origin.getLongitude()).degrees >= sector.getMaxLongitude().degrees)
+            lastCol--;
+
+        ArrayList<TileKey> keys = new ArrayList<TileKey>((lastRow - firstRow + 1) * (lastCol - firstCol + 1));
+        for (int row = firstRow; row <= lastRow; row++)
+        {
+            for (int col = firstCol; col <= lastCol; col++)
+            {
+                keys.add(new TileKey(level.getLevelNumber(), row, col, level.getCacheName()));
+            }
+        }
+
+        return keys;
+    }
+
+    protected Sector computeTileSector(LevelSet levels, TileKey key)
+    {
+        LatLon delta = levels.getLevel(key.getLevelNumber()).getTileDelta();
+        LatLon origin = levels.getTileOrigin();
+        Angle minLat = Tile.computeRowLatitude(key.getRow(), delta.getLatitude(), origin.getLatitude());
+        Angle minLon = Tile.computeColumnLongitude(key.getColumn(), delta.getLongitude(), origin.getLongitude());
+
+        return new Sector(minLat, minLat.add(delta.getLatitude()), minLon, minLon.add(delta.getLongitude()));
+    }
+
+    protected void selectVisibleTiles(DrawContext dc, TINElevationModel model, TileKey key)
+    {
+        LevelSet levels = model.getLevels();
+        Sector sector = this.computeTileSector(levels, key);
+        if (!sector.intersects(levels.getSector()))
+            return;
+
+        QuantizedMeshTile mesh = model.getMesh(key, true);
+        if (mesh == null && key.getLevelNumber() > levels.getFirstLevel().getLevelNumber())
+            return;
+
+        double ve = dc.getVerticalExaggeration();
+        Extent extent;
+        if (mesh != null)
+        {
+            extent = Sector.computeBoundingBox(dc.getGlobe(), ve, sector, ve * mesh.getMinHeight(),
+                ve * mesh.getMaxHeight());
+        }
+        else
+        {
+            extent = Sector.computeBoundingBox(dc.getGlobe(), ve, sector);
+        }
+
+        if (!extent.intersects(this.currentFrustum))
+            return;
+
+        if (mesh != null && key.getLevelNumber() < levels.getLastLevel().getLevelNumber()
+            && this.needToSplit(dc, sector))
+        {
+            TileKey[] children = this.computeChildKeys(levels, key, sector);
+            if (this.areMeshesInMemory(model, children))
+            {
+                for (TileKey child : children)
+                {
+                    this.selectVisibleTiles(dc, model, child);
+                }
+                return;
+            }
+        }
+
+        // Tiles extending beyond the model's coverage are left to the fallback tessellator, which draws the elevations
+        // of the globe's other models there.
+        if (!ComplementTessellator.contains(levels.getSector(), sector))
+            return;
+
+        this.currentCoverage = sector.union(this.currentCoverage);
+        this.currentTiles.add(new TINTile(this, key, sector, mesh != null ? mesh : PLACEHOLDER, extent));
+    }
+
+    protected TileKey[] computeChildKeys(LevelSet levels, TileKey key, Sector sector)
+    {
+        Level level = levels.getLevel(key.getLevelNumber() + 1);
+        LatLon delta = level.getTileDelta();
+        LatLon origin = levels.getTileOrigin();
+
+        Sector[] subsectors = sector.subdivide();
+        TileKey[] keys = new TileKey[subsectors.length];
+        for (int i = 0; i < subsectors.length; i++)
+        {
+            LatLon centroid = subsectors[i].getCentroid();
+            int row = Tile.computeRow(delta.getLatitude(), centroid.getLatitude(), origin.getLatitude());
+            int col = Tile.computeColumn(delta.getLongitude(), centroid.getLongitude(), origin.getLongitude());
+            keys[i] = new TileKey(level.getLevelNumber(), row, col, level.getCacheName());
+        }
+
+        return keys;
+    }
+
+    /**
+     * Indicates whether the meshes of a set of tiles are all in memory, and requests those that aren't. Tiles outside
+     * the model's coverage count as present. A tile known to be absent prevents the split.
+     *
+     * @param model the elevation model.
+     * @param keys  the tiles' keys.
+     *
+     * @return true if all the tiles' meshes are in memory, otherwise false.
+     */
+    protected boolean areMeshesInMemory(TINElevationModel model, TileKey[] keys)
+    {
+        boolean inMemory = true;
+        for (TileKey key : keys)
+        {
+            if (!this.computeTileSector(model.getLevels(), key).intersects(model.getLevels().getSector()))
+                continue;
+
+            if (model.getLevels().isResourceAbsent(key))
+                return false;
+
+            if (model.getMesh(key, true) == null)
+                inMemory = false;
+        }
+
+        return inMemory;
+    }
+
+    protected boolean needToSplit(DrawContext dc, Sector sector)
+    {
+        // Use the same criterion as RectangularTessellator: split when the cell size of a tile of the default density
+        // exceeds the scaled eye distance.
+        double cellSizeMeters = dc.getGlobe().getRadius() * sector.getDeltaLatRadians() / DEFAULT_DENSITY;
+
+        double s = DEFAULT_LOG10_RESOLUTION_TARGET + dc.getGlobe().getElevationModel().getDetailHint(sector);
+        if (sector.getMinLatitude().degrees >= 75 || sector.getMaxLatitude().degrees <= -75)
+            s *= 0.5;
+        double detailScale = Math.pow(10, -s);
+        double fieldOfViewScale = dc.getView().getFieldOfView().tanHalfAngle() / Angle.fromDegrees(45).tanHalfAngle();
+        fieldOfViewScale = WWMath.clamp(fieldOfViewScale, 0, 1);
+
+        double eyeDistanceMeters = sector.distanceTo(dc, dc.getView().getEyePoint());
+
+        return cellSizeMeters > eyeDistanceMeters * detailScale * fieldOfViewScale;
+    }
+
+    //**************************************************************//
+    //********************  Geometry Construction  *****************//
+    //**************************************************************//
+
+    protected void makeRenderInfo(DrawContext dc, TINTile tile)
+    {
+        MemoryCache cache = WorldWind.getMemoryCache(CACHE_ID);
+        CacheKey cacheKey = new CacheKey(dc, tile.tileKey, tile.mesh);
+        tile.ri = (RenderInfo) cache.getObject(cacheKey);
+        if (tile.ri != null)
+            return;
+
+        tile.ri = this.buildRenderInfo(dc, tile);
+        cache.add(cacheKey, tile.ri, tile.ri.getSizeInBytes());
+    }
+
+    /**
+     * Computes a tile's vertices, texture coordinates and triangle indices. Skirts hang from the vertices on each of
+     * the tile's edges to the globe's minimum elevation, hiding cracks between adjacent tiles.
+     *
+     * @param dc   the current draw context.
+     * @param tile the tile.
+     *
+     * @return the tile's render info.
+     */
+    protected RenderInfo buildRenderInfo(DrawContext dc, TINTile tile)
+    {
+        QuantizedMeshTile mesh = tile.mesh;
+        Globe globe = dc.getGlobe();
+        double ve = dc.getVerticalExaggeration();
+        int[][] edges = {mesh.getWestIndices(), mesh.getSouthIndices(), mesh.getEastIndices(),
+            mesh.getNorthIndices()};
+
+        int numSurfaceVertices = mesh.getVertexCount();
+        int numVertices = numSurfaceVertices;
+        int numIndices = mesh.getIndices().length;
+        if (this.isMakeTileSkirts())
+        {
+            for (int[] edge : edges)
+            {
+                numVertices += edge.length;
+                numIndices += edge.length > 1 ? 6 * (edge.length - 1) : 0;
+            }
+        }
+
+        Sector sector = tile.sector;
+        double minLat = sector.getMinLatitude().degrees;
+        double minLon = sector.getMinLongitude().degrees;
+        double dLat = sector.getDeltaLatDegrees();
+        double dLon = sector.getDeltaLonDegrees();
+
+        LatLon centroid = sector.getCentroid();
+        Vec4 refCenter = globe.computePointFromPosition(centroid.getLatitude(), centroid.getLongitude(),
+            ve * 0.5 * (mesh.getMinHeight() + mesh.getMaxHeight()));
+
+        double[] latitudes = new double[numVertices];
+        double[] longitudes = new double[numVertices];
+        FloatBuffer vertices = Buffers.newDirectFloatBuffer(3 * numVertices);
+        FloatBuffer texCoords = Buffers.newDirectFloatBuffer(2 * numVertices);
+        IntBuffer indices = Buffers.newDirectIntBuffer(numIndices);
+
+        int[] u = mesh.getU();
+        int[] v = mesh.getV();
+        for (int i = 0; i < numSurfaceVertices; i++)
+        {
+            float s = (float) u[i] / QuantizedMeshTile.MAX_VALUE;
+            float t = (float) v[i] / QuantizedMeshTile.MAX_VALUE;
+            latitudes[i] = minLat + t * dLat;
+            longitudes[i] = minLon + s * dLon;
+            this.putVertex(globe, latitudes[i], longitudes[i], ve * mesh.getHeight(i), refCenter, vertices);
+            texCoords.put(s).put(t);
+        }
+
+        indices.put(mesh.getIndices());
+
+        if (this.isMakeTileSkirts())
+        {
+            double skirtElevation = ve * Math.min(globe.getMinElevation(), mesh.getMinHeight());
+            int k = numSurfaceVertices;
+            for (int e = 0; e < edges.length; e++)
+            {
+                // Order the edge's vertices along the edge: west and east edges run north, the others east.
+                int[] edge = this.sortEdge(edges[e], e % 2 == 0 ? v : u);
+                for (int n = 0; n < edge.length; n++)
+                {
+                    int i = edge[n];
+                    latitudes[k + n] = latitudes[i];
+                    longitudes[k + n] = longitudes[i];
+                    this.putVertex(globe, latitudes[i], longitudes[i], skirtElevation, refCenter, vertices);
+                    texCoords.put(texCoords.get(2 * i)).put(texCoords.get(2 * i + 1));
+
+                    if (n > 0)
+                    {
+                        int a = edge[n - 1];
+                        int b = i;
+                        indices.put(a).put(k + n - 1).put(b);
+                        indices.put(b).put(k + n - 1).put(k + n);
+                    }
+                }
+                k += edge.length;
+            }
+        }
+
+        vertices.rewind();
+        texCoords.rewind();
+        indices.rewind();
+
+        return new RenderInfo(refCenter, ve, vertices, texCoords, indices, latitudes, longitudes,
+            mesh.getIndices().length);
+    }
+
+    protected void putVertex(Globe globe, double latitude, double longitude, double elevation, Vec4 refCenter,
+        FloatBuffer vertices)
+    {
+        Vec4 p = globe.computePointFromPosition(Angle.fromDegrees(latitude), Angle.fromDegrees(longitude), elevation);
+        vertices.put((float) (p.x - refCenter.x)).put((float) (p.y - refCenter.y)).put((float) (p.z - refCenter.z));
+    }
+
+    protected int[] sortEdge(int[] edge, final int[] coordinates)
+    {
+        Integer[] sorted = new Integer[edge.length];
+        for (int i = 0; i < edge.length; i++)
+        {
+            sorted[i] = edge[i];
+        }
+
+        Arrays.sort(sorted, new Comparator<Integer>()
+        {
+            public int compare(Integer a, Integer b)
+            {
+                return coordinates[a] - coordinates[b];
+            }
+        });
+
+        int[] result = new int[edge.length];
+        for (int i = 0; i < edge.length; i++)
+        {
+            result[i] = sorted[i];
+        }
+
+        return result;
+    }
+
+    //**************************************************************//
+    //********************  Rendering  *****************************//
+    //**************************************************************//
+
+    public void beginRendering(DrawContext dc)
+    {
+        GL2 gl = dc.getGL().getGL2(); // GL initialization checks for GL2 compatibility.
+
+        gl.glPushClientAttrib(GL2.GL_CLIENT_VERTEX_ARRAY_BIT);
+        gl.glEnableClientState(GL2.GL_VERTEX_ARRAY);
+
+        // Tiles set the reference center rather than pushing it, so push it once here and restore it in endRendering.
+        dc.getView().pushReferenceCenter(dc, Vec4.ZERO);
+    }
+
+    public void endRendering(DrawContext dc)
+    {
+        GL2 gl = dc.getGL().getGL2(); // GL initialization checks for GL2 compatibility.
+
+        dc.getView().popReferenceCenter(dc);
+        gl.glPopClientAttrib();
+    }
+
+    protected void render(DrawContext dc, TINTile tile, int numTextureUnits)
+    {
+        if (dc == null)
+        {
+            String msg = Logging.getMessage("nullValue.DrawContextIsNull");
+            Logging.logger().severe(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        if (numTextureUnits < 1)
+        {
+            String msg = Logging.getMessage("generic.NumTextureUnitsLessThanOne");
+            Logging.logger().severe(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        if (tile.ri == null)
+        {
+            String msg = Logging.getMessage("nullValue.RenderInfoIsNull");
+            Logging.logger().severe(msg);
+            throw new IllegalStateException(msg);
+        }
+
+        GL2 gl = dc.getGL().getGL2(); // GL initialization checks for GL2 compatibility.
+
+        gl.glVertexPointer(3, GL.GL_FLOAT, 0, tile.ri.vertices.rewind());
+
+        Object texCoords = dc.getValue(AVKey.TEXTURE_COORDINATES);
+        for (int i = 0; i < numTextureUnits; i++)
+        {
+            gl.glClientActiveTexture(GL2.GL_TEXTURE0 + i);
+            gl.glEnableClientState(GL2.GL_TEXTURE_COORD_ARRAY);
+            if (texCoords instanceof DoubleBuffer)
+                gl.glTexCoordPointer(2, GL2.GL_DOUBLE, 0, ((DoubleBuffer) texCoords).rewind());
+            else
+                gl.glTexCoordPointer(2, GL.GL_FLOAT, 0, tile.ri.texCoords.rewind());
+        }
+
+        gl.glDrawElements(GL.GL_TRIANGLES, tile.ri.indices.limit(), GL.GL_UNSIGNED_INT, tile.ri.indices.rewind());
+    }
+
+    protected void renderWireframe(DrawContext dc, TINTile tile, boolean showTriangles, boolean showTileBoundary)
+    {
+        if (dc == null)
+        {
+            String msg = Logging.getMessage("nullValue.DrawContextIsNull");
+            Logging.logger().severe(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        if (tile.ri == null)
+        {
+            String msg = Logging.getMessage("nullValue.RenderInfoIsNull");
+            Logging.logger().severe(msg);
+            throw new IllegalStateException(msg);
+        }
+
+        GL2 gl = dc.getGL().getGL2(); // GL initialization checks for GL2 compatibility.
+        OGLStackHandler ogsh = new OGLStackHandler();
+        ogsh.pushAttrib(gl, GL2.GL_DEPTH_BUFFER_BIT | GL2.GL_POLYGON_BIT | GL2.GL_ENABLE_BIT | GL2.GL_CURRENT_BIT);
+        ogsh.pushClientAttrib(gl, GL2.GL_CLIENT_VERTEX_ARRAY_BIT);
+        dc.getView().pushReferenceCenter(dc, tile.ri.referenceCenter);
+        try
+        {
+            gl.glEnable(GL.GL_BLEND);
+            gl.glBlendFunc(GL.GL_SRC_ALPHA, GL.GL_ONE);
+            gl.glDisable(GL.GL_DEPTH_TEST);
+            gl.glEnableClientState(GL2.GL_VERTEX_ARRAY);
+            gl.glVertexPointer(3, GL.GL_FLOAT, 0, tile.ri.vertices.rewind());
+            gl.glPolygonMode(GL.GL_FRONT_AND_BACK, GL2.GL_LINE);
+
+            if (showTriangles)
+            {
+                gl.glColor4d(1d, 1d, 1d, 0.2);
+                gl.glDrawElements(GL.GL_TRIANGLES, tile.ri.numSurfaceIndices, GL.GL_UNSIGNED_INT,
+                    tile.ri.indices.rewind());
+            }
+
+            if (showTileBoundary)
+            {
+                gl.glColor4d(1d, 0, 0, 1d);
+                for (int[] edge : new int[][] {tile.mesh.getWestIndices(), tile.mesh.getSouthIndices(),
+                    tile.mesh.getEastIndices(), tile.mesh.getNorthIndices()})
+                {
+                    int[] sorted = this.sortEdge(edge, edge == tile.mesh.getWestIndices()
+                        || edge == tile.mesh.getEastIndices() ? tile.mesh.getV() : tile.mesh.getU());
+                    gl.glDrawElements(GL.GL_LINE_STRIP, sorted.length, GL.GL_UNSIGNED_INT, IntBuffer.wrap(sorted));
+                }
+            }
+        }
+        finally
+        {
+            dc.getView().popReferenceCenter(dc);
+            ogsh.pop(gl);
+        }
+    }
+
+    protected void renderTileID(DrawContext dc, TINTile tile)
+    {
+        java.awt.Rectangle viewport = dc.getView().getViewport();
+        TextRenderer textRenderer = OGLTextRenderer.getOrCreateTextRenderer(dc.getTextRendererCache(),
+            java.awt.Font.decode("Arial-Plain-15"));
+
+        GL2 gl = dc.getGL().getGL2(); // GL initialization checks for GL2 compatibility.
+        OGLStackHandler ogsh = new OGLStackHandler();
+
+        try
+        {
+            ogsh.pushAttrib(gl, GL2.GL_ENABLE_BIT);
+
+            gl.glDisable(GL.GL_DEPTH_TEST);
+            gl.glDisable(GL.GL_BLEND);
+
+            textRenderer.beginRendering(viewport.width, viewport.height);
+            textRenderer.setColor(Color.RED);
+            String tileLabel = tile.tileKey.getLevelNumber() + ", " + tile.mesh.getTriangleCount();
+
+            LatLon ll = tile.getSector().getCentroid();
+            Vec4 pt = this.getSurfacePoint(tile, ll.getLatitude(), ll.getLongitude(), 0);
+            if (pt != null)
+            {
+                pt = dc.getView().project(pt);
+                textRenderer.draw(tileLabel, (int) pt.x, (int) pt.y);
+            }
+            textRenderer.setColor(Color.WHITE);
+            textRenderer.endRendering();
+        }
+        finally
+        {
+            ogsh.pop(gl);
+        }
+    }
+
+    //**************************************************************//
+    //********************  Picking and Intersection  **************//
+    //**************************************************************//
+
+    protected PickedObject[] pick(DrawContext dc, TINTile tile, List<? extends Point> pickPoints)
+    {
+        if (dc == null)
+        {
+            String msg = Logging.getMessage("nullValue.DrawContextIsNull");
+            Logging.logger().severe(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        if (pickPoints == null)
+        {
+            String msg = Logging.getMessage("nullValue.PointListIsNull");
+            Logging.logger().severe(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        if (pickPoints.size() == 0 || tile.ri == null)
+            return null;
+
+        if (!this.renderTrianglesWithUniqueColors(dc, tile))
+            return null;
+
+        PickedObject[] pos = new PickedObject[pickPoints.size()];
+        for (int i = 0; i < pickPoints.size(); i++)
+        {
+            pos[i] = this.resolvePick(dc, tile, pickPoints.get(i));
+        }
+
+        return pos;
+    }
+
+    /**
+     * Draws each of a tile's triangles, including its skirts, in its own pick color. Triangles are drawn from unshared
+     * vertices so that each can have its own color.
+     * <p/>
+     * Note: This method modifies the GL_VERTEX_ARRAY and GL_COLOR_ARRAY state and does not restore it. Callers should
+     * ensure that GL_CLIENT_VERTEX_ARRAY_BIT has been pushed, and eventually pop it when done using this method.
+     *
+     * @param dc   the current draw context.
+     * @param tile the tile to draw.
+     *
+     * @return true if the triangles were drawn, or false if there were too few pick colors remaining.
+     */
+    protected boolean renderTrianglesWithUniqueColors(DrawContext dc, TINTile tile)
+    {
+        RenderInfo ri = tile.ri;
+        int numTriangles = ri.indices.limit() / 3;
+
+        Color firstColor = dc.getUniquePickColorRange(numTriangles);
+        if (firstColor == null)
+            return false;
+
+        if (ri.pickVertices == null)
+        {
+            ri.pickVertices = Buffers.newDirectFloatBuffer(3 * ri.indices.limit());
+            ri.pickColors = Buffers.newDirectByteBuffer(3 * ri.indices.limit());
+            for (int n = 0; n < ri.indices.limit(); n++)
+            {
+                int i = 3 * ri.indices.get(n);
+                ri.pickVertices.put(ri.vertices.get(i)).put(ri.vertices.get(i + 1)).put(ri.vertices.get(i + 2));
+            }
+        }
+
+        tile.minColorCode = firstColor.getRGB() & 0xFFFFFF;
+        tile.maxColorCode = tile.minColorCode + numTriangles - 1;
+
+        ri.pickColors.clear();
+        for (int t = 0; t < numTriangles; t++)
+        {
+            int code = tile.minColorCode + t;
+            for (int n = 0; n < 3; n++)
+            {
+                ri.pickColors.put((byte) (code >> 16)).put((byte) (code >> 8)).put((byte) code);
+            }
+        }
+
+        GL2 gl = dc.getGL().getGL2(); // GL initialization checks for GL2 compatibility.
+        dc.getView().pushReferenceCenter(dc, ri.referenceCenter);
+        try
+        {
+            gl.glEnableClientState(GL2.GL_VERTEX_ARRAY);
+            gl.glEnableClientState(GL2.GL_COLOR_ARRAY);
+            gl.glVertexPointer(3, GL.GL_FLOAT, 0, ri.pickVertices.rewind());
+            gl.glColorPointer(3, GL.GL_UNSIGNED_BYTE, 0, ri.pickColors.rewind());
+            gl.glDrawArrays(GL.GL_TRIANGLES, 0, ri.indices.limit());
+        }
+        finally
+        {
+            dc.getView().popReferenceCenter(dc);
+        }
+
+        return true;
+    }
+
+    protected PickedObject resolvePick(DrawContext dc, TINTile tile, Point pickPoint)
+    {
+        int colorCode = this.pickSupport.getTopColor(dc, pickPoint) & 0xFFFFFF;
+        if (colorCode < tile.minColorCode || colorCode > tile.maxColorCode)
+            return null;
+
+        int n = 3 * (colorCode - tile.minColorCode);
+        Vec4 v0 = this.getVertex(tile.ri, tile.ri.indices.get(n));
+        Vec4 v1 = this.getVertex(tile.ri, tile.ri.indices.get(n + 1));
+        Vec4 v2 = this.getVertex(tile.ri, tile.ri.indices.get(n + 2));
+
+        // Intersect the pick ray with the plane of the picked triangle.
+        Vec4 normal = v1.subtract3(v0).cross3(v2.subtract3(v0));
+        Line ray = dc.getView().computeRayFromScreenPoint(pickPoint.getX(), pickPoint.getY());
+        double b = normal.dot3(ray.getDirection());
+        if (Math.abs(b) < 0.00001f) // the ray is parallel to the triangle's plane
+            return null;
+
+        double r = -normal.dot3(ray.getOrigin().subtract3(v0)) / b;
+        Vec4 intersect = ray.getOrigin().add3(ray.getDirection().multiply3(r));
+        Position pp = dc.getGlobe().computePositionFromPoint(intersect);
+
+        // Report the elevation from the elevation model, not the tessellated surface.
+        double elev = dc.getGlobe().getElevation(pp.getLatitude(), pp.getLongitude()) * dc.getVerticalExaggeration();
+        Position p = new Position(pp.getLatitude(), pp.getLongitude(), elev);
+
+        return new PickedObject(pickPoint, colorCode, p, pp.getLatitude(), pp.getLongitude(), elev, true);
+    }
+
+    protected Vec4 getVertex(RenderInfo ri, int index)
+    {
+        int i = 3 * index;
+        return new Vec4(ri.vertices.get(i) + ri.referenceCenter.x, ri.vertices.get(i + 1) + ri.referenceCenter.y,
+            ri.vertices.get(i + 2) + ri.referenceCenter.z);
+    }
+
+    /**
+     * Determines where a line intersects a tile's surface, excluding its skirts.
+     *
+     * @param tile the tile.
+     * @param line the line.
+     *
+     * @return the intersections sorted by increasing distance from the line's origin, or null if there are none.
+     */
+    protected Intersection[] intersect(TINTile tile, Line line)
+    {
+        if (line == null)
+        {
+            String msg = Logging.getMessage("nullValue.LineIsNull");
+            Logging.logger().severe(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        if (tile.ri == null)
+            return null;
+
+        // Intersect the line in the tile's local coordinates, relative to its reference center.
+        Vec4 refCenter = tile.ri.referenceCenter;
+        Line localLine = new Line(line.getOrigin().subtract3(refCenter), line.getDirection());
+        IntBuffer indices = tile.ri.indices.duplicate();
+        indices.position(0).limit(tile.ri.numSurfaceIndices);
+
+        List<Intersection> localHits = Triangle.intersectTriangles(localLine, tile.ri.vertices.duplicate(), indices);
+        if (localHits == null || localHits.isEmpty())
+            return null;
+
+        Intersection[] hits = new Intersection[localHits.size()];
+        for (int i = 0; i < hits.length; i++)
+        {
+            hits[i] = new Intersection(localHits.get(i).getIntersectionPoint().add3(refCenter), false);
+        }
+
+        final Vec4 origin = line.getOrigin();
+        Arrays.sort(hits, new Comparator<Intersection>()
+        {
+            public int compare(Intersection i1, Intersection i2)
+            {
+                return Double.compare(origin.distanceTo3(i1.getIntersectionPoint()),
+                    origin.distanceTo3(i2.getIntersectionPoint()));
+            }
+        });
+
+        return hits;
+    }
+
+    /**
+     * Determines where a tile's surface, excluding its skirts, crosses an elevation.
+     *
+     * @param tile      the tile.
+     * @param elevation the elevation.
+     *
+     * @return pairs of intersections, each pair the ends of a segment of the crossing, or null if there are none.
+     */
+    protected Intersection[] intersect(TINTile tile, double elevation)
+    {
+        if (tile.ri == null)
+            return null;
+
+        // The surface can't cross an elevation outside the tile's range of exaggerated heights.
+        double ve = tile.ri.verticalExaggeration;
+        if (elevation < ve * tile.mesh.getMinHeight() || elevation > ve * tile.mesh.getMaxHeight())
+            return null;
+
+        ArrayList<Intersection> list = new ArrayList<Intersection>();
+        for (int n = 0; n < tile.ri.numSurfaceIndices; n += 3)
+        {
+            Vec4 v0 = this.getVertex(tile.ri, tile.ri.indices.get(n));
+            Vec4 v1 = this.getVertex(tile.ri, tile.ri.indices.get(n + 1));
+            Vec4 v2 = this.getVertex(tile.ri, tile.ri.indices.get(n + 2));
+
+            Intersection[] inter = this.globe.intersect(new Triangle(v0, v1, v2), elevation);
+            if (inter != null)
+            {
+                list.add(inter[0]);
+                list.add(inter[1]);
+            }
+        }
+
+        if (list.isEmpty())
+            return null;
+
+        Intersection[] hits = new Intersection[list.size()];
+        list.toArray(hits);
+
+        return hits;
+    }
+
+    /**
+     * Computes the point on a tile's surface at a location, interpolating from the triangle containing the location.
+     *
+     * @param tile         the tile.
+     * @param latitude     the location's latitude.
+     * @param longitude    the location's longitude.
+     * @param metersOffset the distance to offset the point along the globe's surface normal.
+     *
+     * @return the surface point, or null if the location isn't on the tile.
+     */
+    protected Vec4 getSurfacePoint(TINTile tile, Angle latitude, Angle longitude, double metersOffset)
+    {
+        if (latitude == null || longitude == null)
+        {
+            String msg = Logging.getMessage("nullValue.LatLonIsNull");
+            Logging.logger().severe(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        if (!tile.sector.contains(latitude, longitude) || tile.ri == null)
+            return null;
+
+        double s = (longitude.degrees - tile.sector.getMinLongitude().degrees) / tile.sector.getDeltaLonDegrees();
+        double t = (latitude.degrees - tile.sector.getMinLatitude().degrees) / tile.sector.getDeltaLatDegrees();
+        double height = tile.mesh.interpolateHeight(s, t);
+        if (Double.isNaN(height))
+            return null;
+
+        Vec4 result = this.globe.computePointFromPosition(latitude, longitude,
+            height * tile.ri.verticalExaggeration);
+        if (metersOffset != 0)
+            result = RectangularTessellator.applyOffset(this.globe, result, metersOffset);
+
+        return result;
+    }
+
+    protected DoubleBuffer makeGeographicTexCoords(TINTile tile,
+        SectorGeometry.GeographicTextureCoordinateComputer computer)
+    {
+        if (computer == null)
+        {
+            String msg = Logging.getMessage("nullValue.TextureCoordinateComputerIsNull");
+            Logging.logger().severe(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        if (tile.ri == null)
+            return null;
+
+        DoubleBuffer p = Buffers.newDirectDoubleBuffer(2 * tile.ri.latitudes.length);
+        for (int i = 0; i < tile.ri.latitudes.length; i++)
+        {
+            double[] uv = computer.compute(Angle.fromDegrees(tile.ri.latitudes[i]),
+                Angle.fromDegrees(tile.ri.longitudes[i]));
+            p.put(uv[0]).put(uv[1]);
+        }
+
+        p.rewind();
+        return p;
+    }
+}
@@ -0,0 +1,915 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+
+package gov.nasa.worldwind.terrain;
+
+import gov.nasa.worldwind.WWObjectImpl;
+import gov.nasa.worldwind.avlist.*;
+import gov.nasa.worldwind.data.*;
+import gov.nasa.worldwind.exception.WWRuntimeException;
+import gov.nasa.worldwind.geom.*;
+import gov.nasa.worldwind.globes.*;
+import gov.nasa.worldwind.render.SurfaceImage;
+import gov.nasa.worldwind.util.*;
+
+import java.awt.*;
+import java.awt.image.*;
+import java.util.*;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Computes the area visible from an observer over the terrain of an {@link ElevationModel}. The computation runs
+ * entirely on the CPU: the elevation model is resampled to a square grid of cells centered on the observer, and the
+ * grid is swept with one of two algorithms: <ul> <li>{@link #ALGORITHM_R3}, which traces a line of sight from the
+ * observer to every cell. It is exact with respect to the grid but its cost grows with the cube of the grid
+ * size.</li> <li>{@link #ALGORITHM_R2}, which traces lines of sight only to the cells on the grid's perimeter and
+ * determines the visibility of every cell those lines pass through. It is an approximation of R3 whose cost grows
+ * with the square of the grid size.</li> </ul>
+ * <p/>
+ * Elevations are corrected for the curvature of the globe and for atmospheric refraction. The grid is divided into
+ * angular sectors around the observer, which are swept concurrently. The result is a {@link BufferWrapperRaster} of
+ * bytes covering the grid's sector, with the value {@link #VISIBLE} for visible cells, {@link #HIDDEN} for hidden
+ * cells and {@link #OUTSIDE} for cells beyond the viewshed's radius. An application may display the raster while it
+ * is being computed by creating it with {@link #createRaster(gov.nasa.worldwind.geom.LatLon, double)}, passing it to
+ * {@link #compute(gov.nasa.worldwind.geom.Position, double, gov.nasa.worldwind.data.BufferWrapperRaster)} on another
+ * thread, and creating a new image of it with {@link #createImage(gov.nasa.worldwind.data.BufferWrapperRaster,
+ * java.awt.Color, java.awt.Color)} each time the viewshed's {@link AVKey#PROGRESS} property changes.
+ * <p/>
+ * The viewshed area must not cross a pole or the antimeridian.
+ *
+ * @version $Id$
+ */
+public class Viewshed extends WWObjectImpl
+{
+    /** Identifies the approximate algorithm that traces lines of sight to the grid's perimeter. */
+    public static final String ALGORITHM_R2 = "gov.nasa.worldwind.terrain.Viewshed.AlgorithmR2";
+    /** Identifies the exact algorithm that traces a line of sight to every cell. */
+    public static final String ALGORITHM_R3 = "gov.nasa.worldwind.terrain.Viewshed.AlgorithmR3";
+
+    /** The raster value of visible cells. */
+    public static final byte VISIBLE = 1;
+    /** The raster value of hidden cells. */
+    public static final byte HIDDEN = 0;
+    /** The raster value of cells beyond the viewshed's radius. It is also the raster's missing data signal. */
+    public static final byte OUTSIDE = -1;
+
+    /** The default coefficient of atmospheric refraction, appropriate for visible light. */
+    public static final double DEFAULT_REFRACTION_COEFFICIENT = 0.13;
+    /** The default number of angular sectors swept concurrently. */
+    public static final int DEFAULT_SECTOR_COUNT = 64;
+
+    /** The number of grid rows resampled by each resampling task. */
+    protected static final int RESAMPLE_ROW_COUNT = 16;
+    /** The interval in milliseconds between checks for elevation data of the target resolution. */
+    protected static final long DATA_POLL_INTERVAL = 20;
+
+    protected final ElevationModel elevationModel;
+    protected final double globeRadius;
+    protected String algorithm = ALGORITHM_R2;
+    protected Double cellSize;
+    protected double targetHeight;
+    protected double refractionCoefficient = DEFAULT_REFRACTION_COEFFICIENT;
+    protected int sectorCount = DEFAULT_SECTOR_COUNT;
+    protected int threadCount = Runtime.getRuntime().availableProcessors();
+    protected long dataTimeout;
+    protected volatile boolean stopped;
+
+    /** The geometry of the grid of a single computation. */
+    protected static class Grid
+    {
+        /** The observer's location. */
+        protected final LatLon center;
+        /** The number of cells from the center cell to the grid's edges. */
+        protected final int halfSize;
+        /** The number of cells along each side of the grid. */
+        protected final int size;
+        /** The size of a cell in meters. */
+        protected final double cellSize;
+        /** The viewshed's radius in cells. */
+        protected final double radius;
+        protected final double deltaLat;
+        protected final double deltaLon;
+        protected final Sector sector;
+        /** The curvature-corrected elevations of the cell centers, in row-major order from the north-west corner. */
+        protected float[] heights;
+        /** The observer's eye height. */
+        protected double eyeHeight;
+
+        protected Grid(LatLon center, double radius, double cellSize, double globeRadius)
+        {
+            this.center = center;
+            this.cellSize = cellSize;
+            this.radius = radius / cellSize;
+            this.halfSize = (int) Math.ceil(this.radius);
+            this.size = 2 * this.halfSize + 1;
+
+            // Make the cells square on the ground at the observer's latitude.
+            this.deltaLat = Math.toDegrees(cellSize / globeRadius);
+            this.deltaLon = this.deltaLat / Math.cos(center.getLatitude().radians);
+
+            double halfLat = (this.halfSize + 0.5) * this.deltaLat;
+            double halfLon = (this.halfSize + 0.5) * this.deltaLon;
+            double lat = center.getLatitude().degrees;
+            double lon = center.getLongitude().degrees;
+            if (lat - halfLat < -90 || lat + halfLat > 90 || lon - halfLon < -180 || lon + halfLon > 180
+                || Double.isInfinite(this.deltaLon))
+            {
+                String message = Logging.getMessage("Viewshed.AreaOutOfRange", center);
+                Logging.logger().severe(message);
+                throw new IllegalArgumentException(message);
+            }
+
+            this.sector = Sector.fromDegrees(lat - halfLat, lat + halfLat, lon - halfLon, lon + halfLon);
+        }
+
+        protected int index(int dx, int dy)
+        {
+            return (this.halfSize - dy) * this.size + this.halfSize + dx;
+        }
+
+        protected boolean isInside(int dx, int dy)
+        {
+            return dx * dx + dy * dy <= this.radius * this.radius;
+        }
+    }
+
+    /**
+     * Creates a viewshed for a globe's elevation model.
+     *
+     * @param globe the globe.
+     *
+     * @throws IllegalArgumentException if the globe is null.
+     */
+    public Viewshed(Globe globe)
+    {
+        if (globe == null)
+        {
+            String msg = Logging.getMessage("nullValue.GlobeIsNull");
+            Logging.logger().severe(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        this.elevationModel = globe.getElevationModel();
+        this.globeRadius = globe.getRadius();
+    }
+
+    /**
+     * Creates a viewshed for an elevation model.
+     *
+     * @param elevationModel the elevation model.
+     * @param globeRadius    the radius in meters of the globe the elevation model is for.
+     *
+     * @throws IllegalArgumentException if the elevation model is null or the radius is not positive.
+     */
+    public Viewshed(ElevationModel elevationModel, double globeRadius)
+    {
+        if (elevationModel == null)
+        {
+            String msg = Logging.getMessage("nullValue.ElevationModelIsNull");
+            Logging.logger().severe(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        if (globeRadius <= 0)
+        {
+            String msg = Logging.getMessage("generic.ArgumentOutOfRange", globeRadius);
+            Logging.logger().severe(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        this.elevationModel = elevationModel;
+        this.globeRadius = globeRadius;
+    }
+
+    public ElevationModel getElevationModel()
+    {
+        return this.elevationModel;
+    }
+
+    public double getGlobeRadius()
+    {
+        return this.globeRadius;
+    }
+
+    /**
+     * Indicates the sweep algorithm.
+     *
+     * @return the algorithm, either {@link #ALGORITHM_R2} or {@link #ALGORITHM_R3}.
+     */
+    public String getAlgorithm()
+    {
+        return this.algorithm;
+    }
+
+    /**
+     * Specifies the sweep algorithm. The default is {@link #ALGORITHM_R2}.
+     *
+     * @param algorithm the algorithm, either {@link #ALGORITHM_R2} or {@link #ALGORITHM_R3}.
+     *
+     * @throws IllegalArgumentException if the algorithm is not one of the two.
+     */
+    public void setAlgorithm(String algorithm)
+    {
+        if (!ALGORITHM_R2.equals(algorithm) && !ALGORITHM_R3.equals(algorithm))
+        {
+            String msg = Logging.getMessage("Viewshed.UnknownAlgorithm", algorithm);
+            Logging.logger().severe(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        this.algorithm = algorithm;
+    }
+
+    /**
+     * Indicates the size of the grid's cells.
+     *
+     * @return the cell size in meters, or null if the cells match the elevation model's best resolution.
+     */
+    public Double getCellSize()
+    {
+        return this.cellSize;
+    }
+
+    /**
+     * Specifies the size of the grid's cells. Larger cells make the computation faster and less accurate. The default
+     * is null, which makes the cells match the best resolution of the elevation model at the observer.
+     *
+     * @param cellSize the cell size in meters, or null to match the elevation model's best resolution.
+     *
+     * @throws IllegalArgumentException if the cell size is not positive.
+     */
+    public void setCellSize(Double cellSize)
+    {
+        if (cellSize != null && cellSize <= 0)
+        {
+            String msg = Logging.getMessage("generic.ArgumentOutOfRange", cellSize);
+            Logging.logger().severe(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        this.cellSize = cellSize;
+    }
+
+    public double getTargetHeight()
+    {
+        return this.targetHeight;
+    }
+
+    /**
+     * Specifies the height above the terrain of the points whose visibility is computed. The default is 0, which
+     * computes the visibility of the terrain itself.
+     *
+     * @param targetHeight the target height in meters.
+     */
+    public void setTargetHeight(double targetHeight)
+    {
+        this.targetHeight = targetHeight;
+    }
+
+    public double getRefractionCoefficient()
+    {
+        return this.refractionCoefficient;
+    }
+
+    /**
+     * Specifies the coefficient of atmospheric refraction, the ratio of the globe's radius to the radius of curvature
+     * of a line of sight. The default is {@link #DEFAULT_REFRACTION_COEFFICIENT}. A value of 0 corrects elevations for
+     * the curvature of the globe only.
+     *
+     * @param refractionCoefficient the refraction coefficient.
+     */
+    public void setRefractionCoefficient(double refractionCoefficient)
+    {
+        this.refractionCoefficient = refractionCoefficient;
+    }
+
+    public int getSectorCount()
+    {
+        return this.sectorCount;
+    }
+
+    /**
+     * Specifies the number of angular sectors the grid is divided into. Each sector is swept by one task, so there
+     * should be several sectors per thread to balance the threads' loads. The default is {@link
+     * #DEFAULT_SECTOR_COUNT}.
+     *
+     * @param sectorCount the number of sectors. Values less than 1 are clamped to 1.
+     */
+    public void setSectorCount(int sectorCount)
+    {
+        this.sectorCount = Math.max(sectorCount, 1);
+    }
+
+    public int getThreadCount()
+    {
+        return this.threadCount;
+    }
+
+    /**
+     * Specifies the number of threads that resample and sweep the grid. The default is the number of available
+     * processors.
+     *
+     * @param threadCount the number of threads. Values less than 1 are clamped to 1.
+     */
+    public void setThreadCount(int threadCount)
+    {
+        this.threadCount = Math.max(threadCount, 1);
+    }
+
+    public long getDataTimeout()
+    {
+        return this.dataTimeout;
+    }
+
+    /**
+     * Specifies how long to wait for elevation data of the grid's resolution to become available. The default is 0,
+     * which uses the best elevations currently in memory. Elevation models that retrieve their data retrieve it in
+     * the background while the computation waits.
+     *
+     * @param dataTimeout the timeout in milliseconds.
+     */
+    public void setDataTimeout(long dataTimeout)
+    {
+        this.dataTimeout = Math.max(dataTimeout, 0);
+    }
+
+    /** Stops the computation in progress. The computation returns without completing the raster. */
+    public void stop()
+    {
+        this.stopped = true;
+    }
+
+    public boolean isStopped()
+    {
+        return this.stopped;
+    }
+
+    /**
+     * Creates a raster for a viewshed. The raster's cells within the viewshed's radius are initially {@link #HIDDEN}
+     * and the others are {@link #OUTSIDE}.
+     *
+     * @param location the observer's location.
+     * @param radius   the viewshed's radius in meters.
+     *
+     * @return a raster of bytes centered on the observer.
+     *
+     * @throws IllegalArgumentException if the location is null, the radius is negative or the area crosses a pole or
+     *                                  the antimeridian.
+     */
+    public BufferWrapperRaster createRaster(LatLon location, double radius)
+    {
+        Grid grid = this.createGrid(location, radius);
+
+        AVList params = new AVListImpl();
+        params.setValue(AVKey.DATA_TYPE, AVKey.INT8);
+        params.setValue(AVKey.MISSING_DATA_SIGNAL, (double) OUTSIDE);
+        BufferWrapperRaster raster = new ByteBufferRaster(grid.size, grid.size, grid.sector, params);
+
+        BufferWrapper buffer = raster.getBuffer();
+        for (int dy = grid.halfSize; dy >= -grid.halfSize; dy--)
+        {
+            for (int dx = -grid.halfSize; dx <= grid.halfSize; dx++)
+            {
+                buffer.putByte(grid.index(dx, dy), grid.isInside(dx, dy) ? HIDDEN : OUTSIDE);
+            }
+        }
+
+        return raster;
+    }
+
+    /**
+     * Computes a viewshed.
+     *
+     * @param observer the observer's position. Its altitude is the observer's height above the terrain.
+     * @param radius   the viewshed's radius in meters.
+     *
+     * @return a raster of the visibility of the cells around the observer, or null if the computation was stopped.
+     *
+     * @throws IllegalArgumentException if the observer is null, the radius is negative or the area crosses a pole or
+     *                                  the antimeridian.
+     * @throws InterruptedException     if the computation is interrupted.
+     */
+    public BufferWrapperRaster compute(Position observer, double radius) throws InterruptedException
+    {
+        BufferWrapperRaster raster = this.createRaster(observer, radius);
+
+        return this.compute(observer, radius, raster) ? raster : null;
+    }
+
+    /**
+     * Computes a viewshed into a raster created by {@link #createRaster(gov.nasa.worldwind.geom.LatLon, double)}. Each
+     * cell is written as soon as its visibility is known, so the raster may be displayed while it is computed. This
+     * viewshed's {@link AVKey#PROGRESS} property reports the fraction of the computation completed.
+     *
+     * @param observer the observer's position. Its altitude is the observer's height above the terrain.
+     * @param radius   the viewshed's radius in meters.
+     * @param raster   the raster to compute the viewshed into. It must have been created for the same observer
+     *                 location and radius, with this viewshed's current cell size.
+     *
+     * @return true if the computation completed, false if it was stopped.
+     *
+     * @throws IllegalArgumentException if the observer or raster is null, the radius is negative, the area crosses a
+     *                                  pole or the antimeridian, or the raster does not match the viewshed area.
+     * @throws InterruptedException     if the computation is interrupted.
+     */
+    public boolean compute(Position observer, double radius, BufferWrapperRaster raster) throws InterruptedException
+    {
+        if (raster == null)
+        {
+            String msg = Logging.getMessage("nullValue.RasterIsNull");
+            Logging.logger().severe(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        final Grid grid = this.createGrid(observer, radius);
+        if (raster.getWidth() != grid.size || raster.getHeight() != grid.size
+            || !raster.getSector().equals(grid.sector))
+        {
+            String msg = Logging.getMessage("Viewshed.RasterDoesNotMatch", grid.sector);
+            Logging.logger().severe(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        this.stopped = false;
+        final BufferWrapper output = raster.getBuffer();
+        grid.heights = new float[grid.size * grid.size];
+
+        List<Callable<Void>> resampleTasks = new ArrayList<Callable<Void>>();
+        for (int row = 0; row < grid.size; row += RESAMPLE_ROW_COUNT)
+        {
+            final int firstRow = row;
+            final int lastRow = Math.min(row + RESAMPLE_ROW_COUNT, grid.size) - 1;
+            resampleTasks.add(new Callable<Void>()
+            {
+                public Void call() throws InterruptedException
+                {
+                    resample(grid, firstRow, lastRow);
+                    return null;
+                }
+            });
+        }
+
+        // The perimeter has 8 * halfSize cells, so a grid of a single cell has no sectors to sweep.
+        int numSectors = grid.halfSize > 0 ? this.getSectorCount() : 0;
+        List<Callable<Void>> sweepTasks = new ArrayList<Callable<Void>>(numSectors);
+        for (int i = 0; i < numSectors; i++)
+        {
+            final int sector = i;
+            final int count = numSectors;
+            sweepTasks.add(new Callable<Void>()
+            {
+                public Void call()
+                {
+                    if (ALGORITHM_R3.equals(algorithm))
+                        sweepR3(grid, sector, count, output);
+                    else
+                        sweepR2(grid, sector, count, output);
+                    return null;
+                }
+            });
+        }
+
+        int numTasks = resampleTasks.size() + sweepTasks.size();
+        ExecutorService service = Executors.newFixedThreadPool(this.getThreadCount());
+        try
+        {
+            this.firePropertyChange(AVKey.PROGRESS, null, 0d);
+
+            this.runTasks(service, resampleTasks, 0, numTasks);
+            if (this.isStopped())
+                return false;
+
+            grid.eyeHeight = grid.heights[grid.index(0, 0)] + observer.getAltitude();
+            output.putByte(grid.index(0, 0), VISIBLE);
+
+            this.runTasks(service, sweepTasks, resampleTasks.size(), numTasks);
+        }
+        finally
+        {
+            // Stops the remaining tasks if a task failed or this thread was interrupted.
+            service.shutdownNow();
+        }
+
+        return !this.isStopped();
+    }
+
+    /**
+     * Creates a SurfaceImage displaying a viewshed raster.
+     *
+     * @param raster       the viewshed raster.
+     * @param visibleColor the color of visible cells.
+     * @param hiddenColor  the color of hidden cells.
+     *
+     * @return a surface image covering the raster's sector.
+     *
+     * @throws IllegalArgumentException if the raster is null.
+     */
+    public static SurfaceImage createSurfaceImage(BufferWrapperRaster raster, Color visibleColor, Color hiddenColor)
+    {
+        return new SurfaceImage(createImage(raster, visibleColor, hiddenColor), raster.getSector());
+    }
+
+    /**
+     * Creates an image of a viewshed raster. Cells beyond the viewshed's radius are transparent.
+     *
+     * @param raster       the viewshed raster.
+     * @param visibleColor the color of visible cells.
+     * @param hiddenColor  the color of hidden cells.
+     *
+     * @return an image with one pixel per raster cell.
+     *
+     * @throws IllegalArgumentException if the raster is null.
+     */
+    public static BufferedImage createImage(BufferWrapperRaster raster, Color visibleColor, Color hiddenColor)
+    {
+        if (raster == null)
+        {
+            String msg = Logging.getMessage("nullValue.RasterIsNull");
+            Logging.logger().severe(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        int width = raster.getWidth();
+        int height = raster.getHeight();
+        int visible = visibleColor != null ? visibleColor.getRGB() : 0;
+        int hidden = hiddenColor != null ? hiddenColor.getRGB() : 0;
+
+        BufferWrapper buffer = raster.getBuffer();
+        int[] pixels = new int[width * height];
+        for (int i = 0; i < pixels.length; i++)
+        {
+            byte value = buffer.getByte(i);
+            pixels[i] = value == VISIBLE ? visible : value == HIDDEN ? hidden : 0;
+        }
+
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        image.setRGB(0, 0, width, height, pixels, 0, width);
+
+        return image;
+    }
+
+    protected Grid createGrid(LatLon location, double radius)
+    {
+        if (location == null)
+        {
+            String msg = Logging.getMessage("nullValue.LatLonIsNull");
+            Logging.logger().severe(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        if (radius < 0)
+        {
+            String msg = Logging.getMessage("generic.ArgumentOutOfRange", radius);
+            Logging.logger().severe(msg);
+            throw new IllegalArgumentException(msg);
+        }
+
+        Double size = this.getCellSize();
+        if (size == null)
+        {
+            Sector sector = new Sector(location.getLatitude(), location.getLatitude(), location.getLongitude(),
+                location.getLongitude());
+            size = this.getElevationModel().getBestResolution(sector) * this.getGlobeRadius();
+        }
+
+        return new Grid(location, radius, size, this.getGlobeRadius());
+    }
+
+    /**
+     * Runs tasks to completion, reporting progress as each completes.
+     *
+     * @param service   the executor to run the tasks.
+     * @param tasks     the tasks.
+     * @param numBefore the number of tasks of the computation completed before these.
+     * @param numTotal  the total number of tasks of the computation.
+     *
+     * @throws InterruptedException if this thread is interrupted.
+     */
+    protected void runTasks(ExecutorService service, List<Callable<Void>> tasks, int numBefore, int numTotal)
+        throws InterruptedException
+    {
+        CompletionService<Void> completionService = new ExecutorCompletionService<Void>(service);
+        for (Callable<Void> task : tasks)
+        {
+            completionService.submit(task);
+        }
+
+        for (int i = 0; i < tasks.size(); i++)
+        {
+            try
+            {
+                completionService.take().get();
+            }
+            catch (ExecutionException e)
+            {
+                if (e.getCause() instanceof RuntimeException)
+                    throw (RuntimeException) e.getCause();
+                if (e.getCause() instanceof InterruptedException)
+                    throw (InterruptedException) e.getCause();
+
+                throw new WWRuntimeException(e.getCause());
+            }
+
+            this.firePropertyChange(AVKey.PROGRESS, null, (double) (numBefore + i + 1) / numTotal);
+        }
+    }
+
+    /**
+     * Fills rows of the grid with the elevation model's elevations, lowered by the drop of the globe's surface below
+     * the observer's horizontal plane. The drop is reduced by atmospheric refraction.
+     *
+     * @param grid     the grid.
+     * @param firstRow the first row to fill.
+     * @param lastRow  the last row to fill.
+     *
+     * @throws InterruptedException if waiting for elevation data is interrupted.
+     */
+    protected void resample(Grid grid, int firstRow, int lastRow) throws InterruptedException
+    {
+        double lat0 = grid.center.getLatitude().degrees;
+        double lon0 = grid.center.getLongitude().degrees;
+        double targetResolution = grid.cellSize / this.getGlobeRadius();
+        double dropScale = (1 - this.getRefractionCoefficient()) * grid.cellSize * grid.cellSize
+            / (2 * this.getGlobeRadius());
+
+        double[] latitudes = new double[grid.size];
+        double[] longitudes = new double[grid.size];
+        double[] elevations = new double[grid.size];
+        for (int col = 0; col < grid.size; col++)
+        {
+            longitudes[col] = lon0 + (col - grid.halfSize) * grid.deltaLon;
+        }
+
+        long deadline = System.currentTimeMillis() + this.getDataTimeout();
+        for (int row = firstRow; row <= lastRow && !this.isStopped(); row++)
+        {
+            int dy = grid.halfSize - row;
+            Arrays.fill(latitudes, lat0 + dy * grid.deltaLat);
+
+            double resolution = this.getElevationModel().getElevations(grid.sector, latitudes, longitudes,
+                targetResolution, elevations);
+            while (resolution > targetResolution && System.currentTimeMillis() < deadline && !this.isStopped())
+            {
+                Thread.sleep(DATA_POLL_INTERVAL);
+                resolution = this.getElevationModel().getElevations(grid.sector, latitudes, longitudes,
+                    targetResolution, elevations);
+            }
+
+            for (int col = 0; col < grid.size; col++)
+            {
+                int dx = col - grid.halfSize;
+                grid.heights[row * grid.size + col] = (float) (elevations[col] - dropScale * (dx * dx + dy * dy));
+            }
+        }
+    }
+
+    /**
+     * Sweeps one angular sector of the grid with the R2 algorithm. The sector's lines of sight end at the perimeter
+     * cells <code>[sector * P / numSectors, (sector + 1) * P / numSectors)</code>, where P is the number of perimeter
+     * cells. Cells are only ever marked visible, so sectors whose lines of sight pass through the same cells may be
+     * swept concurrently.
+     *
+     * @param grid       the grid.
+     * @param sector     the sector's index.
+     * @param numSectors the number of sectors.
+     * @param output     the raster buffer to mark visible cells in.
+     */
+    protected void sweepR2(Grid grid, int sector, int numSectors, BufferWrapper output)
+    {
+        int n = grid.halfSize;
+        long perimeter = 8L * n;
+        int first = (int) (sector * perimeter / numSectors);
+        int last = (int) ((sector + 1) * perimeter / numSectors);
+
+        int[] point = new int[2];
+        for (int k = first; k < last && !this.isStopped(); k++)
+        {
+            perimeterPoint(n, k, point);
+            int px = point[0];
+            int py = point[1];
+            double length = Math.sqrt(px * px + py * py) / n;
+            boolean xMajor = Math.abs(px) >= Math.abs(py);
+
+            double maxSlope = Double.NEGATIVE_INFINITY;
+            for (int i = 1; i <= n; i++)
+            {
+                double distance = i * length;
+                if (distance > grid.radius + 0.5)
+                    break;
+
+                double height = this.sampleRay(grid, px, py, n, i, xMajor);
+                double slope = (height - grid.eyeHeight) / distance;
+                if ((height + this.targetHeight - grid.eyeHeight) / distance >= maxSlope)
+                {
+                    int dx = xMajor ? Integer.signum(px) * i : (int) Math.round((double) px * i / n);
+                    int dy = xMajor ? (int) Math.round((double) py * i / n) : Integer.signum(py) * i;
+                    if (grid.isInside(dx, dy))
+                        output.putByte(grid.index(dx, dy), VISIBLE);
+                }
+
+                if (slope > maxSlope)
+                    maxSlope = slope;
+            }
+        }
+    }
+
+    /**
+     * Sweeps one angular sector of the grid with the R3 algorithm. The sector holds the cells whose direction from
+     * the observer meets the perimeter in the sector's range of perimeter cells. See {@link #sweepR2(Grid, int, int,
+     * gov.nasa.worldwind.util.BufferWrapper)}.
+     *
+     * @param grid       the grid.
+     * @param sector     the sector's index.
+     * @param numSectors the number of sectors.
+     * @param output     the raster buffer to write the cells' visibility to.
+     */
+    protected void sweepR3(Grid grid, int sector, int numSectors, BufferWrapper output)
+    {
+        int n = grid.halfSize;
+        double perimeter = 8d * n;
+        double first = sector * perimeter / numSectors;
+        double last = (sector + 1) * perimeter / numSectors;
+
+        // Bound the sector's wedge by the observer, the wedge's end points and the grid corners between them.
+        double[] point = new double[2];
+        perimeterPoint(n, first, point);
+        double minX = Math.min(0, point[0]), maxX = Math.max(0, point[0]);
+        double minY = Math.min(0, point[1]), maxY = Math.max(0, point[1]);
+        perimeterPoint(n, last, point);
+        minX = Math.min(minX, point[0]);
+        maxX = Math.max(maxX, point[0]);
+        minY = Math.min(minY, point[1]);
+        maxY = Math.max(maxY, point[1]);
+        for (int corner = 1; corner < 4; corner++)
+        {
+            if (first < corner * 2 * n && last > corner * 2 * n)
+            {
+                perimeterPoint(n, corner * 2d * n, point);
+                minX = Math.min(minX, point[0]);
+                maxX = Math.max(maxX, point[0]);
+                minY = Math.min(minY, point[1]);
+                maxY = Math.max(maxY, point[1]);
+            }
+        }
+
+        for (int dy = (int) Math.ceil(maxY); dy >= (int) Math.floor(minY) && !this.isStopped(); dy--)
+        {
+            for (int dx = (int) Math.floor(minX); dx <= (int) Math.ceil(maxX); dx++)
+            {
+                if ((dx == 0 && dy == 0) || !grid.isInside(dx, dy))
+                    continue;
+
+                int s = (int) (perimeterIndex(n, dx, dy) * numSectors / perimeter);
+                if (Math.min(s, numSectors - 1) != sector)
+                    continue;
+
+                output.putByte(grid.index(dx, dy), this.isVisible(grid, dx, dy) ? VISIBLE : HIDDEN);
+            }
+        }
+    }
+
+    /**
+     * Traces the line of sight from the observer to a cell.
+     *
+     * @param grid the grid.
+     * @param dx   the cell's column offset from the observer.
+     * @param dy   the cell's row offset from the observer, positive to the north.
+     *
+     * @return true if no terrain rises above the line of sight, otherwise false.
+     */
+    protected boolean isVisible(Grid grid, int dx, int dy)
+    {
+        int m = Math.max(Math.abs(dx), Math.abs(dy));
+        boolean xMajor = Math.abs(dx) >= Math.abs(dy);
+        double rise = grid.heights[grid.index(dx, dy)] + this.targetHeight - grid.eyeHeight;
+
+        // The line of sight rises by rise * i / m at the i'th of the m steps.
+        for (int i = 1; i < m; i++)
+        {
+            if ((this.sampleRay(grid, dx, dy, m, i, xMajor) - grid.eyeHeight) * m > rise * i)
+                return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Interpolates the terrain height at a step along a ray from the observer. The step falls on a grid line of the
+     * ray's major axis and is interpolated between the two cells it falls between on the minor axis.
+     *
+     * @param grid   the grid.
+     * @param px     the column offset of the ray's end.
+     * @param py     the row offset of the ray's end, positive to the north.
+     * @param m      the number of steps to the ray's end, the larger of the offsets' magnitudes.
+     * @param i      the step.
+     * @param xMajor true if the column offset is the larger.
+     *
+     * @return the interpolated height.
+     */
+    protected double sampleRay(Grid grid, int px, int py, int m, int i, boolean xMajor)
+    {
+        double minor = (double) (xMajor ? py : px) * i / m;
+        int major = Integer.signum(xMajor ? px : py) * i;
+        int minor0 = (int) Math.floor(minor);
+        double f = minor - minor0;
+
+        int index0 = xMajor ? grid.index(major, minor0) : grid.index(minor0, major);
+        double h0 = grid.heights[index0];
+        if (f == 0)
+            return h0;
+
+        // Moving north is a row up, moving east is a column right.
+        int index1 = xMajor ? index0 - grid.size : index0 + 1;
+        return h0 + f * (grid.heights[index1] - h0);
+    }
+
+    /**
+     * Computes a cell of the grid's perimeter. The perimeter is numbered counterclockwise from the south-east corner,
+     * starting up the east side.
+     *
+     * @param n      the number of cells from the grid's center to its edges.
+     * @param k      the perimeter index, in the range [0, 8n).
+     * @param result receives the cell's column offset and row offset from the center.
+     */
+    protected static void perimeterPoint(int n, int k, int[] result)
+    {
+        if (k < 2 * n)
+        {
+            result[0] = n;
+            result[1] = k - n;
+        }
+        else if (k < 4 * n)
+        {
+            result[0] = 3 * n - k;
+            result[1] = n;
+        }
+        else if (k < 6 * n)
+        {
+            result[0] = -n;
+            result[1] = 5 * n - k;
+        }
+        else
+        {
+            result[0] = k - 7 * n;
+            result[1] = -n;
+        }
+    }
+
+    /**
+     * Computes a point of the grid's perimeter for a fractional perimeter index. See {@link #perimeterPoint(int, int,
+     * int[])}.
+     *
+     * @param n      the number of cells from the grid's center to its edges.
+     * @param k      the perimeter index, in the range [0, 8n].
+     * @param result receives the point's column offset and row offset from the center.
+     */
+    protected static void perimeterPoint(int n, double k, double[] result)
+    {
+        if (k < 2 * n)
+        {
+            result[0] = n;
+            result[1] = k - n;
+        }
+        else if (k < 4 * n)
+        {
+            result[0] = 3 * n - k;
+            result[1] = n;
+        }
+        else if (k < 6 * n)
+        {
+            result[0] = -n;
+            result[1] = 5 * n - k;
+        }
+        else
+        {
+            result[0] = k - 7 * n;
+            result[1] = -n;
+        }
+    }
+
+    /**
+     * Computes the fractional perimeter index at which the direction from the grid's center to a cell meets the
+     * perimeter. This is the inverse of {@link #perimeterPoint(int, double, double[])}, without trigonometry.
+     *
+     * @param n  the number of cells from the grid's center to its edges.
+     * @param dx the cell's column offset from the center.
+     * @param dy the cell's row offset from the center. The offsets must not both be 0.
+     *
+     * @return the perimeter index, in the range [0, 8n).
+     */
+    protected static double perimeterIndex(int n, int dx, int dy)
+    {
+        if (dx > 0 && dx >= Math.abs(dy) && dy < dx) // east side, excluding the north-east corner
+            return n + (double) n * dy / dx;
+        else if (dy > 0 && dy >= Math.abs(dx) && dx > -dy) // north side, excluding the north-west corner
+            return 3 * n - (double) n * dx / dy;
+        else if (dx < 0 && -dx >= Math.abs(dy) && dy > dx) // west side, excluding the south-west corner
+            return 5 * n + (double) n * dy / dx;
+        else // south side, excluding the south-east corner
+            return 7 * n - (double) n * dx / dy;
+    }
+}
@@ -9,7 +9,7 @@ package gov.nasa.worldwind.terrain;
 import gov.nasa.worldwind.avlist.AVKey;
 import gov.nasa.worldwind.geom.*;
 
-import java.util.List;
+import java.util.*;
 
 /**
  * An elevation model that always returns zero elevations.
@@ -58,6 +58,23 @@ public class ZeroElevationModel extends AbstractElevationModel
         return this.getElevations(sector, latlons, targetResolution, buffer);
     }
 
+    public double getElevations(Sector sector, double[] latitudes, double[] longitudes, double targetResolution,
+        double[] buffer)
+    {
+        Arrays.fill(buffer, 0, latitudes.length, 0);
+
+        // Mark the model as used this frame.
+        this.setValue(AVKey.FRAME_TIMESTAMP, System.currentTimeMillis());
+
+        return 0;
+    }
+
+    public double getUnmappedElevations(Sector sector, double[] latitudes, double[] longitudes,
+        double targetResolution, double[] buffer)
+    {
+        return this.getElevations(sector, latitudes, longitudes, targetResolution, buffer);
+    }
+
     public int intersects(Sector sector)
     {
         return 0;
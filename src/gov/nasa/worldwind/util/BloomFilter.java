@@ -0,0 +1,215 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+
+package gov.nasa.worldwind.util;
+
+import java.io.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * A Bloom filter of strings. A Bloom filter answers whether a string may have been added, never answering no for a
+ * string that was added, and answering yes for a string that was not added with a probability that depends on the
+ * filter's size and the number of strings added. Strings cannot be removed.
+ * <p/>
+ * Adding strings and querying the filter are thread-safe and do not lock.
+ *
+ * @version $Id$
+ */
+public class BloomFilter
+{
+    protected final AtomicLongArray words;
+    protected final long numBits;
+    protected final int numHashes;
+    protected final AtomicLong count = new AtomicLong();
+
+    /**
+     * Constructs a filter sized to hold the specified number of strings with the specified false positive
+     * probability.
+     *
+     * @param expectedCount            the number of strings expected to be added.
+     * @param falsePositiveProbability the probability of answering yes for a string that was not added, once the
+     *                                 expected number of strings have been added.
+     *
+     * @throws IllegalArgumentException if the expected count is less than one or the probability is not between 0 and
+     *                                  1.
+     */
+    public BloomFilter(long expectedCount, double falsePositiveProbability)
+    {
+        if (expectedCount < 1)
+        {
+            String message = Logging.getMessage("generic.ArgumentOutOfRange", "expectedCount=" + expectedCount);
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        if (falsePositiveProbability <= 0 || falsePositiveProbability >= 1)
+        {
+            String message = Logging.getMessage("generic.ArgumentOutOfRange",
+                "falsePositiveProbability=" + falsePositiveProbability);
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        double ln2 = Math.log(2);
+        long bits = (long) Math.ceil(-expectedCount * Math.log(falsePositiveProbability) / (ln2 * ln2));
+        int numWords = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(1, (bits + 63) / 64));
+
+        this.words = new AtomicLongArray(numWords);
+        this.numBits = 64L * numWords;
+        this.numHashes = Math.max(1, (int) Math.round((double) this.numBits / expectedCount * ln2));
+    }
+
+    protected BloomFilter(long[] words, int numHashes, long count)
+    {
+        this.words = new AtomicLongArray(words);
+        this.numBits = 64L * words.length;
+        this.numHashes = numHashes;
+        this.count.set(count);
+    }
+
+    /**
+     * Adds a string to the filter.
+     *
+     * @param s the string to add.
+     */
+    public void add(String s)
+    {
+        long hash = hash(s);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+
+        for (int i = 0; i < this.numHashes; i++)
+        {
+            long bit = ((h1 + (long) i * h2) & Long.MAX_VALUE) % this.numBits;
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+
+            long value = this.words.get(word);
+            while ((value & mask) == 0 && !this.words.compareAndSet(word, value, value | mask))
+            {
+                value = this.words.get(word);
+            }
+        }
+
+        this.count.incrementAndGet();
+    }
+
+    /**
+     * Indicates whether a string may have been added to the filter.
+     *
+     * @param s the string to test.
+     *
+     * @return false if the string was definitely not added, true if it may have been added.
+     */
+    public boolean mightContain(String s)
+    {
+        long hash = hash(s);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+
+        for (int i = 0; i < this.numHashes; i++)
+        {
+            long bit = ((h1 + (long) i * h2) & Long.MAX_VALUE) % this.numBits;
+            if ((this.words.get((int) (bit >>> 6)) & (1L << bit)) == 0)
+                return false;
+        }
+
+        return true;
+    }
+
+    /** @return the number of strings added, including strings added more than once. */
+    public long getCount()
+    {
+        return this.count.get();
+    }
+
+    /** @return the number of bits in the filter. */
+    public long getNumBits()
+    {
+        return this.numBits;
+    }
+
+    /** @return a new filter with the same size and contents as this one. */
+    public BloomFilter copy()
+    {
+        return new BloomFilter(this.toArray(), this.numHashes, this.count.get());
+    }
+
+    /**
+     * Writes the filter to a stream.
+     *
+     * @param out the stream to write to.
+     *
+     * @throws IOException if an error occurs writing to the stream.
+     */
+    public void write(DataOutput out) throws IOException
+    {
+        long[] array = this.toArray();
+
+        out.writeInt(this.numHashes);
+        out.writeLong(this.count.get());
+        out.writeInt(array.length);
+        for (long word : array)
+        {
+            out.writeLong(word);
+        }
+    }
+
+    /**
+     * Reads a filter written by {@link #write(java.io.DataOutput)}.
+     *
+     * @param in the stream to read from.
+     *
+     * @return the filter read.
+     *
+     * @throws IOException if an error occurs reading the stream, or the stream does not hold a valid filter.
+     */
+    public static BloomFilter read(DataInput in) throws IOException
+    {
+        int numHashes = in.readInt();
+        long count = in.readLong();
+        int numWords = in.readInt();
+        if (numHashes < 1 || count < 0 || numWords < 1)
+            throw new IOException(Logging.getMessage("BloomFilter.InvalidData"));
+
+        long[] array = new long[numWords];
+        for (int i = 0; i < numWords; i++)
+        {
+            array[i] = in.readLong();
+        }
+
+        return new BloomFilter(array, numHashes, count);
+    }
+
+    protected long[] toArray()
+    {
+        long[] array = new long[this.words.length()];
+        for (int i = 0; i < array.length; i++)
+        {
+            array[i] = this.words.get(i);
+        }
+
+        return array;
+    }
+
+    protected static long hash(String s)
+    {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < s.length(); i++)
+        {
+            h ^= s.charAt(i);
+            h *= 0x100000001b3L;
+        }
+
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+
+        return h;
+    }
+}
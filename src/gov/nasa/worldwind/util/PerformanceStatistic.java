@@ -18,6 +18,9 @@ public class PerformanceStatistic implements Comparable<PerformanceStatistic>
     public static final String FRAME_TIME = "gov.nasa.worldwind.perfstat.FrameTime";
     public static final String IMAGE_TILE_COUNT = "gov.nasa.worldwind.perfstat.ImageTileCount";
     public static final String TERRAIN_TILE_COUNT = "gov.nasa.worldwind.perfstat.TerrainTileCount";
+    public static final String TERRAIN_SELECTION_TIME = "gov.nasa.worldwind.perfstat.TerrainSelectionTime";
+    public static final String TERRAIN_ELEVATION_TIME = "gov.nasa.worldwind.perfstat.TerrainElevationTime";
+    public static final String TERRAIN_VERTEX_TIME = "gov.nasa.worldwind.perfstat.TerrainVertexTime";
     public static final String MEMORY_CACHE = "gov.nasa.worldwind.perfstat.MemoryCache";
     public static final String PICK_TIME = "gov.nasa.worldwind.perfstat.PickTime";
     public static final String JVM_HEAP = "gov.nasa.worldwind.perfstat.JvmHeap";
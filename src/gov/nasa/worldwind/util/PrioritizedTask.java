@@ -0,0 +1,19 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+
+package gov.nasa.worldwind.util;
+
+/**
+ * A task that indicates how soon it should run relative to other tasks. {@link PriorityTaskService} runs tasks with
+ * lower priority values first.
+ *
+ * @version $Id$
+ */
+public interface PrioritizedTask extends Runnable
+{
+    /** @return the task's priority. Lower values run first. */
+    double getPriority();
+}
@@ -0,0 +1,605 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+
+package gov.nasa.worldwind.util;
+
+import gov.nasa.worldwind.*;
+import gov.nasa.worldwind.avlist.AVKey;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * A {@link TaskService} that runs tasks in priority order and keeps the most important tasks when its queue is full.
+ * Tasks are identified by their <code>equals</code> and <code>hashCode</code> methods, as the tile request tasks of
+ * layers and elevation models are identified by their tile, and a task equal to one queued or running is not added.
+ * <p/>
+ * Tasks implementing {@link PrioritizedTask} run in order of their priority, others with the service's default
+ * priority. Tasks that load tiles, such as those of layers and elevation models, share one scale of priority, computed
+ * by {@link #computeTilePriority(int, double)} from the tile's level and distance from the view, so that the tasks of
+ * different layers and models are ordered by the same measure. Tasks age: a task's effective priority is its priority
+ * less the aging rate times the number of seconds it has waited, and tasks run in order of effective priority, so that
+ * low priority tasks are not passed over indefinitely. Since every queued task ages at the same rate, the order of two
+ * tasks does not change while they wait.
+ * <p/>
+ * When the queue is full a new task displaces the queued task of lowest effective priority, or is rejected if its own
+ * effective priority is lower still.
+ * Once the queue fills, {@link #isFull()} returns true until the queue drains to three quarters of its capacity, so
+ * that callers checking it stop adding tasks for a while rather than on every other call.
+ * <p/>
+ * The service keeps {@link TaskStatistics} for each class of task, including histograms of the time tasks wait in the
+ * queue and the time they take to run.
+ *
+ * @version $Id$
+ */
+public class PriorityTaskService extends WWObjectImpl implements TaskService, Thread.UncaughtExceptionHandler
+{
+    /**
+     * The default amount by which a queued task's effective priority decreases each second. On the scale of {@link
+     * #computeTilePriority(int, double)}, a tile load that has waited a second ranks with loads of tiles half its
+     * distance from the view, or one level coarser.
+     */
+    public static final double DEFAULT_AGING_RATE = 1;
+    /**
+     * The default priority of tasks that don't implement {@link PrioritizedTask}: that of a level 10 tile about a
+     * kilometer from the view, so that such tasks neither pass nor wait behind every tile load.
+     */
+    public static final double DEFAULT_PRIORITY = 20;
+
+    protected static final int DEFAULT_QUEUE_SIZE = 10;
+    protected static final String RUNNING_THREAD_NAME_PREFIX = Logging.getMessage(
+        "ThreadedTaskService.RunningThreadNamePrefix");
+    protected static final String IDLE_THREAD_NAME_PREFIX = Logging.getMessage(
+        "ThreadedTaskService.IdleThreadNamePrefix");
+
+    /** A histogram of durations, in buckets of powers of two microseconds. */
+    public static class LatencyHistogram
+    {
+        protected static final int NUM_BUCKETS = 32;
+
+        protected final AtomicLongArray counts = new AtomicLongArray(NUM_BUCKETS);
+        protected final AtomicLong count = new AtomicLong();
+        protected final AtomicLong totalNanos = new AtomicLong();
+
+        public void add(long nanos)
+        {
+            long micros = Math.max(nanos / 1000, 1);
+            int bucket = Math.min(63 - Long.numberOfLeadingZeros(micros), NUM_BUCKETS - 1);
+            this.counts.incrementAndGet(bucket);
+            this.count.incrementAndGet();
+            this.totalNanos.addAndGet(nanos);
+        }
+
+        /** @return the number of durations recorded. */
+        public long getCount()
+        {
+            return this.count.get();
+        }
+
+        /** @return the mean duration, in milliseconds, or zero if none has been recorded. */
+        public double getMean()
+        {
+            long n = this.count.get();
+            return n > 0 ? this.totalNanos.get() / 1e6 / n : 0;
+        }
+
+        /**
+         * Returns the upper bound of the histogram bucket holding a specified percentile of the recorded durations.
+         *
+         * @param percentile the percentile, from 0 to 100.
+         *
+         * @return the duration, in milliseconds, or zero if none has been recorded.
+         */
+        public double getPercentile(double percentile)
+        {
+            long n = this.count.get();
+            if (n == 0)
+                return 0;
+
+            long rank = (long) Math.ceil(n * Math.max(0, Math.min(percentile, 100)) / 100);
+            long sum = 0;
+            for (int i = 0; i < NUM_BUCKETS; i++)
+            {
+                sum += this.counts.get(i);
+                if (sum >= rank)
+                    return (2L << i) / 1e3;
+            }
+
+            return (2L << (NUM_BUCKETS - 1)) / 1e3;
+        }
+
+        /** @return the number of durations recorded in each bucket. Bucket i holds durations under 2^(i+1) us. */
+        public long[] getCounts()
+        {
+            long[] array = new long[NUM_BUCKETS];
+            for (int i = 0; i < NUM_BUCKETS; i++)
+            {
+                array[i] = this.counts.get(i);
+            }
+
+            return array;
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("count %d mean %.2f ms p50 %.2f ms p99 %.2f ms", this.getCount(), this.getMean(),
+                this.getPercentile(50), this.getPercentile(99));
+        }
+    }
+
+    /** Counts and latencies of one class of task. */
+    public static class TaskStatistics
+    {
+        protected final String taskType;
+        protected final AtomicLong addedCount = new AtomicLong();
+        protected final AtomicLong duplicateCount = new AtomicLong();
+        protected final AtomicLong evictedCount = new AtomicLong();
+        protected final AtomicLong rejectedCount = new AtomicLong();
+        protected final LatencyHistogram waitTimes = new LatencyHistogram();
+        protected final LatencyHistogram runTimes = new LatencyHistogram();
+
+        public TaskStatistics(String taskType)
+        {
+            this.taskType = taskType;
+        }
+
+        /** @return the name of the class of task. */
+        public String getTaskType()
+        {
+            return this.taskType;
+        }
+
+        /** @return the number of tasks added to the queue. */
+        public long getAddedCount()
+        {
+            return this.addedCount.get();
+        }
+
+        /** @return the number of tasks not added because an equal task was queued or running. */
+        public long getDuplicateCount()
+        {
+            return this.duplicateCount.get();
+        }
+
+        /** @return the number of queued tasks displaced by tasks of higher effective priority. */
+        public long getEvictedCount()
+        {
+            return this.evictedCount.get();
+        }
+
+        /** @return the number of tasks not added because the queue was full of tasks of higher effective priority. */
+        public long getRejectedCount()
+        {
+            return this.rejectedCount.get();
+        }
+
+        /** @return the times tasks waited in the queue. */
+        public LatencyHistogram getWaitTimes()
+        {
+            return this.waitTimes;
+        }
+
+        /** @return the times tasks took to run. */
+        public LatencyHistogram getRunTimes()
+        {
+            return this.runTimes;
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("%s added %d duplicates %d evicted %d rejected %d wait [%s] run [%s]",
+                this.taskType, this.getAddedCount(), this.getDuplicateCount(), this.getEvictedCount(),
+                this.getRejectedCount(), this.waitTimes, this.runTimes);
+        }
+    }
+
+    /** A queued or running task. */
+    protected static class Task implements Comparable<Task>
+    {
+        protected final Runnable runnable;
+        protected final double priority;
+        /**
+         * The task's effective priority plus the aging rate times the current time. This orders tasks as their
+         * effective priorities do, but does not change while the task waits.
+         */
+        protected final double rank;
+        protected final long sequence;
+        protected final long submitNanos;
+        protected final TaskStatistics statistics;
+
+        public Task(Runnable runnable, double priority, double rank, long sequence, long submitNanos,
+            TaskStatistics statistics)
+        {
+            this.runnable = runnable;
+            this.priority = priority;
+            this.rank = rank;
+            this.sequence = sequence;
+            this.submitNanos = submitNanos;
+            this.statistics = statistics;
+        }
+
+        public int compareTo(Task that)
+        {
+            int c = Double.compare(this.rank, that.rank);
+            if (c != 0)
+                return c;
+
+            return this.sequence < that.sequence ? -1 : this.sequence > that.sequence ? 1 : 0;
+        }
+    }
+
+    protected final int queueSize;
+    protected final ConcurrentHashMap<Runnable, Task> tasks = new ConcurrentHashMap<Runnable, Task>();
+    protected final ConcurrentSkipListSet<Task> queue = new ConcurrentSkipListSet<Task>();
+    protected final Semaphore available = new Semaphore(0);
+    protected final AtomicInteger queuedCount = new AtomicInteger();
+    protected final AtomicInteger activeCount = new AtomicInteger();
+    protected final AtomicLong sequence = new AtomicLong();
+    protected final ConcurrentHashMap<Class, TaskStatistics> statistics = new ConcurrentHashMap<Class, TaskStatistics>();
+    protected final List<Thread> threads = new ArrayList<Thread>();
+    protected final long startNanos = System.nanoTime();
+    protected volatile double agingRate = DEFAULT_AGING_RATE;
+    protected volatile double defaultPriority = DEFAULT_PRIORITY;
+    protected volatile boolean full;
+    protected volatile boolean shutdown;
+
+    /**
+     * Constructs a service with the thread pool and queue sizes specified by the configuration parameters {@link
+     * AVKey#TASK_POOL_SIZE} and {@link AVKey#TASK_QUEUE_SIZE}. The pool size is the number of processors only if the
+     * configuration doesn't specify it, which the default configuration does.
+     */
+    public PriorityTaskService()
+    {
+        this(Configuration.getIntegerValue(AVKey.TASK_POOL_SIZE, Runtime.getRuntime().availableProcessors()),
+            Configuration.getIntegerValue(AVKey.TASK_QUEUE_SIZE, DEFAULT_QUEUE_SIZE));
+    }
+
+    /**
+     * Constructs a service with a specified number of threads and queue size.
+     *
+     * @param poolSize  the number of threads running tasks.
+     * @param queueSize the maximum number of tasks waiting to run.
+     *
+     * @throws IllegalArgumentException if either size is less than one.
+     */
+    public PriorityTaskService(int poolSize, int queueSize)
+    {
+        if (poolSize < 1)
+        {
+            String message = Logging.getMessage("generic.ArgumentOutOfRange", "poolSize=" + poolSize);
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        if (queueSize < 1)
+        {
+            String message = Logging.getMessage("generic.ArgumentOutOfRange", "queueSize=" + queueSize);
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        this.queueSize = queueSize;
+
+        for (int i = 0; i < poolSize; i++)
+        {
+            Thread thread = new Thread(new Runnable()
+            {
+                public void run()
+                {
+                    runTasks();
+                }
+            });
+            thread.setName(IDLE_THREAD_NAME_PREFIX);
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            thread.setUncaughtExceptionHandler(this);
+            thread.start();
+            this.threads.add(thread);
+        }
+    }
+
+    /**
+     * Returns the amount by which a queued task's effective priority decreases each second.
+     *
+     * @return the aging rate.
+     */
+    public double getAgingRate()
+    {
+        return this.agingRate;
+    }
+
+    /**
+     * Specifies the amount by which a queued task's effective priority decreases each second. The rate applies to
+     * tasks added afterwards. A rate of zero orders tasks by priority alone.
+     *
+     * @param agingRate the aging rate.
+     *
+     * @throws IllegalArgumentException if the rate is less than zero.
+     */
+    public void setAgingRate(double agingRate)
+    {
+        if (agingRate < 0)
+        {
+            String message = Logging.getMessage("generic.ArgumentOutOfRange", "agingRate=" + agingRate);
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        this.agingRate = agingRate;
+    }
+
+    /**
+     * Returns the priority of tasks that don't implement {@link PrioritizedTask}.
+     *
+     * @return the default priority.
+     */
+    public double getDefaultPriority()
+    {
+        return this.defaultPriority;
+    }
+
+    /**
+     * Specifies the priority of tasks that don't implement {@link PrioritizedTask}. The priority applies to tasks added
+     * afterwards.
+     *
+     * @param defaultPriority the default priority.
+     */
+    public void setDefaultPriority(double defaultPriority)
+    {
+        this.defaultPriority = defaultPriority;
+    }
+
+    /**
+     * Computes the priority of a task loading a tile, on the scale shared by the tasks of all layers and elevation
+     * models. The priority is the base two logarithm of {@link gov.nasa.worldwind.retrieve.RetrievalScheduler}'s rank,
+     * <code>(1 + distance) * 2^level</code>, and so orders tiles as the scheduler does: coarse tiles, which cover more
+     * of the view, come before fine tiles at the same distance. Lower values run first.
+     *
+     * @param levelNumber the tile's level number.
+     * @param distance    the tile's distance from the view, in meters. Negative distances are treated as zero.
+     *
+     * @return the task's priority.
+     */
+    public static double computeTilePriority(int levelNumber, double distance)
+    {
+        return levelNumber + Math.log(1 + Math.max(distance, 0)) / Math.log(2);
+    }
+
+    public void shutdown(boolean immediately)
+    {
+        this.shutdown = true;
+
+        if (immediately)
+        {
+            this.queue.clear();
+            this.tasks.clear();
+            this.queuedCount.set(0);
+            for (Thread thread : this.threads)
+            {
+                thread.interrupt();
+            }
+        }
+
+        // Wake idle threads so they see the service is shut down.
+        this.available.release(this.threads.size());
+    }
+
+    public void uncaughtException(Thread thread, Throwable throwable)
+    {
+        String message = Logging.getMessage("ThreadedTaskService.UncaughtExceptionDuringTask", thread.getName());
+        Logging.logger().fine(message);
+        Thread.currentThread().getThreadGroup().uncaughtException(thread, throwable);
+    }
+
+    public boolean contains(Runnable runnable)
+    {
+        return runnable != null && this.tasks.containsKey(runnable);
+    }
+
+    /**
+     * Enqueues a task to run, unless an equal task is queued or running, or the queue is full of tasks of higher
+     * effective priority.
+     *
+     * @param runnable the task to add
+     *
+     * @throws IllegalArgumentException if <code>runnable</code> is null
+     */
+    public void addTask(Runnable runnable)
+    {
+        if (runnable == null)
+        {
+            String message = Logging.getMessage("nullValue.RunnableIsNull");
+            Logging.logger().fine(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        if (this.shutdown)
+            return;
+
+        TaskStatistics stats = this.getOrCreateStatistics(runnable.getClass());
+        double priority = runnable instanceof PrioritizedTask ? ((PrioritizedTask) runnable).getPriority()
+            : this.defaultPriority;
+        long now = System.nanoTime();
+        double rank = priority + this.agingRate * (now - this.startNanos) / 1e9;
+        Task task = new Task(runnable, priority, rank, this.sequence.getAndIncrement(), now, stats);
+
+        if (this.tasks.putIfAbsent(runnable, task) != null)
+        {
+            stats.duplicateCount.incrementAndGet();
+            return;
+        }
+
+        if (this.queuedCount.incrementAndGet() > this.queueSize && !this.makeRoom(task))
+        {
+            this.queuedCount.decrementAndGet();
+            this.tasks.remove(runnable, task);
+            stats.rejectedCount.incrementAndGet();
+            Logging.logger().fine(Logging.getMessage("ThreadedTaskService.ResourceRejected", runnable));
+            return;
+        }
+
+        stats.addedCount.incrementAndGet();
+        this.queue.add(task);
+        this.available.release();
+    }
+
+    public boolean isFull()
+    {
+        int count = this.queuedCount.get();
+        if (count >= this.queueSize)
+            this.full = true;
+        else if (count <= this.queueSize * 3 / 4)
+            this.full = false;
+
+        return this.full;
+    }
+
+    public boolean hasActiveTasks()
+    {
+        return this.activeCount.get() > 0;
+    }
+
+    /** @return the number of tasks waiting to run. */
+    public int getQueuedCount()
+    {
+        return Math.max(this.queuedCount.get(), 0);
+    }
+
+    /** @return the number of tasks running. */
+    public int getActiveCount()
+    {
+        return this.activeCount.get();
+    }
+
+    /** @return the statistics of each class of task added to the service. */
+    public List<TaskStatistics> getTaskStatistics()
+    {
+        return new ArrayList<TaskStatistics>(this.statistics.values());
+    }
+
+    /**
+     * Returns the statistics of a class of task.
+     *
+     * @param taskClass the class of task.
+     *
+     * @return the class's statistics, or null if no task of the class has been added.
+     */
+    public TaskStatistics getTaskStatistics(Class taskClass)
+    {
+        return taskClass != null ? this.statistics.get(taskClass) : null;
+    }
+
+    protected TaskStatistics getOrCreateStatistics(Class taskClass)
+    {
+        TaskStatistics stats = this.statistics.get(taskClass);
+        if (stats == null)
+        {
+            TaskStatistics newStats = new TaskStatistics(taskClass.getName());
+            stats = this.statistics.putIfAbsent(taskClass, newStats);
+            if (stats == null)
+                stats = newStats;
+        }
+
+        return stats;
+    }
+
+    /**
+     * Removes the queued task of lowest effective priority if a new task's effective priority is higher.
+     *
+     * @param task the new task.
+     *
+     * @return true if a task was removed, false if no queued task's effective priority is lower than the new one's.
+     */
+    protected boolean makeRoom(Task task)
+    {
+        while (true)
+        {
+            Task lowest;
+            try
+            {
+                lowest = this.queue.last();
+            }
+            catch (NoSuchElementException e)
+            {
+                return false;
+            }
+
+            if (lowest.rank <= task.rank)
+                return false;
+
+            // Another thread may have taken the task since it was found, in which case try the next lowest.
+            if (this.queue.remove(lowest))
+            {
+                this.queuedCount.decrementAndGet();
+                this.tasks.remove(lowest.runnable, lowest);
+                lowest.statistics.evictedCount.incrementAndGet();
+                Logging.logger().finer(Logging.getMessage("PriorityTaskService.EvictingTask", lowest.runnable));
+                return true;
+            }
+        }
+    }
+
+    protected void runTasks()
+    {
+        while (!this.shutdown || !this.queue.isEmpty())
+        {
+            try
+            {
+                this.available.acquire();
+            }
+            catch (InterruptedException e)
+            {
+                if (this.shutdown)
+                    return;
+                continue;
+            }
+
+            // Tasks displaced from the queue leave their permits behind, so the queue may be empty.
+            Task task = this.queue.pollFirst();
+            if (task != null)
+            {
+                this.queuedCount.decrementAndGet();
+                this.runTask(task);
+            }
+        }
+    }
+
+    protected void runTask(Task task)
+    {
+        Thread thread = Thread.currentThread();
+        long start = System.nanoTime();
+        task.statistics.waitTimes.add(start - task.submitNanos);
+
+        this.activeCount.incrementAndGet();
+        if (RUNNING_THREAD_NAME_PREFIX != null)
+            thread.setName(RUNNING_THREAD_NAME_PREFIX + task.runnable);
+        try
+        {
+            task.runnable.run();
+        }
+        catch (Throwable t)
+        {
+            Logging.logger().log(java.util.logging.Level.FINE,
+                Logging.getMessage("ThreadedTaskService.UncaughtExceptionDuringTask", thread.getName()), t);
+        }
+        finally
+        {
+            this.tasks.remove(task.runnable, task);
+            this.activeCount.decrementAndGet();
+            task.statistics.runTimes.add(System.nanoTime() - start);
+
+            if (IDLE_THREAD_NAME_PREFIX != null)
+                thread.setName(IDLE_THREAD_NAME_PREFIX);
+
+            // Don't let a task's interruption carry over to the next task, unless the service is shutting down.
+            if (!this.shutdown)
+                Thread.interrupted();
+        }
+    }
+}
@@ -0,0 +1,614 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+
+package gov.nasa.worldwind.util;
+
+import gov.nasa.worldwind.*;
+import gov.nasa.worldwind.animation.*;
+import gov.nasa.worldwind.avlist.AVKey;
+import gov.nasa.worldwind.geom.*;
+import gov.nasa.worldwind.globes.ElevationModel;
+import gov.nasa.worldwind.layers.Layer;
+import gov.nasa.worldwind.render.DrawContext;
+import gov.nasa.worldwind.terrain.CompoundElevationModel;
+import gov.nasa.worldwind.view.ViewElevationAnimator;
+import gov.nasa.worldwind.view.orbit.*;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Loads the tiles the view is about to need before it needs them. While the view moves, the prefetcher predicts where
+ * it will be: at the destination of the animators moving an {@link OrbitView}, such as those of a fly-to or those
+ * smoothing user input, and where the view's recent velocity carries it over the lookahead time. For each predicted
+ * view it determines the tiles of the enabled {@link Prefetchable} layers and elevation models covering the predicted
+ * footprint, at the level matching the predicted altitude, and asks them to load the tiles that aren't in memory. The
+ * loads rank behind those of tiles in view.
+ * <p/>
+ * The bytes of tile data requested per second are limited by a byte budget, which tiles requested again while still
+ * predicted are charged against as well. A prefetched tile counts as a hit when a layer or elevation model draws it
+ * within {@link #EXPIRY_TIME} of its request, and as a miss otherwise. Layers that did not draw in the current frame
+ * are not prefetched for, since their requests are sent only when they draw.
+ * <p/>
+ * The scene controller runs the prefetcher after each frame when the configuration parameter {@link
+ * AVKey#TILE_PREFETCH_ENABLED} is true.
+ *
+ * @version $Id$
+ */
+public class TilePrefetcher
+{
+    /** A layer or elevation model whose tiles can be prefetched. */
+    public interface Prefetchable
+    {
+        /** @return the levels of the tiles. */
+        LevelSet getLevels();
+
+        /**
+         * Requests that a tile be loaded into memory, retrieving it if necessary, unless it is already in memory or
+         * known to be absent.
+         *
+         * @param dc       the current draw context.
+         * @param tileKey  the tile's key.
+         * @param priority the priority of the load, as a distance from the view in meters. Lower values load first.
+         *
+         * @return the approximate size of the tile's data, in bytes, or zero if no load was requested.
+         */
+        long prefetchTile(DrawContext dc, TileKey tileKey, double priority);
+
+        /**
+         * Adds the keys of the tiles drawn in the current frame to a collection. Elevation models, which are not
+         * drawn, add the keys of the tiles whose elevations were used since they were last asked.
+         *
+         * @param dc   the current draw context.
+         * @param keys the collection to add the keys to.
+         */
+        void getDrawnTileKeys(DrawContext dc, Collection<TileKey> keys);
+    }
+
+    /** The default number of bytes of tile data requested per second. */
+    public static final long DEFAULT_BYTE_BUDGET = 8000000;
+    /** The default time, in milliseconds, over which the view's velocity is extrapolated. */
+    public static final long DEFAULT_LOOKAHEAD = 1500;
+    /**
+     * The priority added to the distance of prefetched tiles from the predicted view, in meters. Tiles in view are
+     * prioritized by their distance from the view, so this ranks prefetched tiles behind them.
+     */
+    public static final double PREFETCH_PRIORITY = 1e9;
+    /** The time, in milliseconds, within which a prefetched tile must come into view to count as a hit. */
+    public static final long EXPIRY_TIME = 10000;
+
+    protected static final long PREFETCH_INTERVAL = 100;
+    protected static final long REISSUE_INTERVAL = 1000;
+    protected static final long VELOCITY_WINDOW = 500;
+    protected static final int MAX_TILES_PER_LEVEL = 64;
+    protected static final double FOOTPRINT_SCALE = 1.5;
+
+    /** A view's location and altitude, and the time they were observed or predicted. */
+    protected static class ViewState
+    {
+        protected final LatLon location;
+        protected final double altitude;
+        protected final long time;
+
+        public ViewState(LatLon location, double altitude, long time)
+        {
+            this.location = location;
+            this.altitude = Math.max(altitude, 1);
+            this.time = time;
+        }
+    }
+
+    /** A tile requested by the prefetcher. */
+    protected static class Prefetch
+    {
+        protected final long issueTime;
+        protected long lastIssueTime;
+
+        public Prefetch(long issueTime)
+        {
+            this.issueTime = issueTime;
+            this.lastIssueTime = issueTime;
+        }
+    }
+
+    protected long byteBudget;
+    protected long lookahead = DEFAULT_LOOKAHEAD;
+    protected double availableBytes;
+    protected long lastPrefetchTime;
+    protected final ArrayDeque<ViewState> samples = new ArrayDeque<ViewState>();
+    protected final Map<TileKey, Prefetch> prefetches = new HashMap<TileKey, Prefetch>();
+    protected final AtomicLong issuedCount = new AtomicLong();
+    protected final AtomicLong issuedBytes = new AtomicLong();
+    protected final AtomicLong hitCount = new AtomicLong();
+    protected final AtomicLong missCount = new AtomicLong();
+
+    /**
+     * Constructs a prefetcher with the byte budget specified by the configuration parameter {@link
+     * AVKey#TILE_PREFETCH_BYTE_BUDGET}.
+     */
+    public TilePrefetcher()
+    {
+        this(Configuration.getLongValue(AVKey.TILE_PREFETCH_BYTE_BUDGET, DEFAULT_BYTE_BUDGET));
+    }
+
+    /**
+     * Constructs a prefetcher with a specified byte budget.
+     *
+     * @param byteBudget the number of bytes of tile data requested per second.
+     *
+     * @throws IllegalArgumentException if the budget is less than zero.
+     */
+    public TilePrefetcher(long byteBudget)
+    {
+        this.setByteBudget(byteBudget);
+        this.availableBytes = byteBudget;
+    }
+
+    public long getByteBudget()
+    {
+        return this.byteBudget;
+    }
+
+    /**
+     * Specifies the number of bytes of tile data requested per second.
+     *
+     * @param byteBudget the byte budget.
+     *
+     * @throws IllegalArgumentException if the budget is less than zero.
+     */
+    public void setByteBudget(long byteBudget)
+    {
+        if (byteBudget < 0)
+        {
+            String message = Logging.getMessage("generic.ArgumentOutOfRange", "byteBudget=" + byteBudget);
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        this.byteBudget = byteBudget;
+    }
+
+    public long getLookahead()
+    {
+        return this.lookahead;
+    }
+
+    /**
+     * Specifies the time over which the view's velocity is extrapolated.
+     *
+     * @param lookahead the lookahead time, in milliseconds.
+     *
+     * @throws IllegalArgumentException if the time is less than zero.
+     */
+    public void setLookahead(long lookahead)
+    {
+        if (lookahead < 0)
+        {
+            String message = Logging.getMessage("generic.ArgumentOutOfRange", "lookahead=" + lookahead);
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        this.lookahead = lookahead;
+    }
+
+    /** @return the number of tile requests, including requests of tiles already requested. */
+    public long getIssuedCount()
+    {
+        return this.issuedCount.get();
+    }
+
+    /** @return the approximate number of bytes of tile data requested. */
+    public long getIssuedBytes()
+    {
+        return this.issuedBytes.get();
+    }
+
+    /** @return the number of requested tiles that came into view. */
+    public long getHitCount()
+    {
+        return this.hitCount.get();
+    }
+
+    /** @return the number of requested tiles that did not come into view before they expired. */
+    public long getMissCount()
+    {
+        return this.missCount.get();
+    }
+
+    /** @return the fraction of resolved prefetches that were hits, or zero if none has been resolved. */
+    public double getHitRate()
+    {
+        long hits = this.hitCount.get();
+        long total = hits + this.missCount.get();
+        return total > 0 ? (double) hits / total : 0;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("issued %d (%d bytes) hits %d misses %d hit rate %.2f", this.getIssuedCount(),
+            this.getIssuedBytes(), this.getHitCount(), this.getMissCount(), this.getHitRate());
+    }
+
+    /**
+     * Predicts the view's motion from its animators and recent velocity, and requests the tiles it will need. Called
+     * once per frame, after the frame is drawn.
+     *
+     * @param dc the current draw context.
+     *
+     * @throws IllegalArgumentException if the draw context is null.
+     */
+    public void prefetch(DrawContext dc)
+    {
+        if (dc == null)
+        {
+            String message = Logging.getMessage("nullValue.DrawContextIsNull");
+            Logging.logger().severe(message);
+            throw new IllegalArgumentException(message);
+        }
+
+        View view = dc.getView();
+        if (view == null || dc.getGlobe() == null || view.getEyePosition() == null || view.getViewport() == null)
+            return;
+
+        long now = System.currentTimeMillis();
+        if (now - this.lastPrefetchTime < PREFETCH_INTERVAL)
+            return;
+
+        long elapsed = this.lastPrefetchTime > 0 ? now - this.lastPrefetchTime : 0;
+        this.lastPrefetchTime = now;
+        this.availableBytes = Math.min(this.byteBudget, this.availableBytes + this.byteBudget * elapsed / 1000d);
+
+        Position eye = view.getEyePosition();
+        ViewState current = new ViewState(eye, eye.getElevation(), now);
+        this.addSample(current);
+
+        List<Prefetchable> targets = this.getTargets(dc);
+        double radius = dc.getGlobe().getRadius();
+        double fov = view.getFieldOfView().radians;
+        int viewportWidth = Math.max(view.getViewport().width, 1);
+
+        this.resolvePrefetches(dc, current, targets);
+
+        List<ViewState> states = new ArrayList<ViewState>();
+        ViewState target = this.predictAnimationTarget(view, current);
+        if (target != null)
+            states.add(target);
+        ViewState extrapolated = this.extrapolate(current, radius, fov);
+        if (extrapolated != null)
+            states.add(extrapolated);
+
+        for (ViewState state : states)
+        {
+            if (!this.prefetch(dc, state, targets, radius, fov, viewportWidth))
+                break;
+        }
+    }
+
+    protected List<Prefetchable> getTargets(DrawContext dc)
+    {
+        List<Prefetchable> targets = new ArrayList<Prefetchable>();
+
+        if (dc.getLayers() != null)
+        {
+            for (Layer layer : dc.getLayers())
+            {
+                if (layer instanceof Prefetchable && layer.isEnabled() && this.isLayerDrawn(dc, layer))
+                    targets.add((Prefetchable) layer);
+            }
+        }
+
+        this.addElevationTargets(dc.getGlobe().getElevationModel(), targets);
+
+        return targets;
+    }
+
+    /**
+     * Indicates whether a layer drew in the current frame, as indicated by its {@link AVKey#FRAME_TIMESTAMP}.
+     *
+     * @param dc    the current draw context.
+     * @param layer the layer.
+     *
+     * @return true if the layer drew in the current frame, otherwise false.
+     */
+    protected boolean isLayerDrawn(DrawContext dc, Layer layer)
+    {
+        Object timeStamp = layer.getValue(AVKey.FRAME_TIMESTAMP);
+        return timeStamp instanceof Long && (Long) timeStamp == dc.getFrameTimeStamp();
+    }
+
+    protected void addElevationTargets(ElevationModel model, List<Prefetchable> targets)
+    {
+        if (model == null || !model.isEnabled())
+            return;
+
+        if (model instanceof CompoundElevationModel)
+        {
+            for (ElevationModel child : ((CompoundElevationModel) model).getElevationModels())
+            {
+                this.addElevationTargets(child, targets);
+            }
+        }
+        else if (model instanceof Prefetchable)
+        {
+            targets.add((Prefetchable) model);
+        }
+    }
+
+    protected void addSample(ViewState state)
+    {
+        this.samples.addLast(state);
+        while (state.time - this.samples.getFirst().time > VELOCITY_WINDOW)
+        {
+            this.samples.removeFirst();
+        }
+    }
+
+    /**
+     * Returns the view state the animators of an orbit view are moving it to: the end of any center position animator
+     * and of any zoom animator.
+     *
+     * @param view    the view.
+     * @param current the view's current state.
+     *
+     * @return the target state, or null if the view is not being animated.
+     */
+    protected ViewState predictAnimationTarget(View view, ViewState current)
+    {
+        if (!(view.getViewInputHandler() instanceof OrbitViewInputHandler))
+            return null;
+
+        LatLon[] center = new LatLon[1];
+        double[] zoom = new double[] {-1};
+        for (Animator animator : ((OrbitViewInputHandler) view.getViewInputHandler()).getActiveAnimators())
+        {
+            this.findAnimationTarget(animator, center, zoom);
+        }
+
+        if (center[0] == null && zoom[0] < 0)
+            return null;
+
+        return new ViewState(center[0] != null ? center[0] : current.location,
+            zoom[0] >= 0 ? zoom[0] : current.altitude, current.time);
+    }
+
+    protected void findAnimationTarget(Animator animator, LatLon[] center, double[] zoom)
+    {
+        if (animator instanceof CompoundAnimator)
+        {
+            for (Animator child : ((CompoundAnimator) animator).getAnimators())
+            {
+                if (child != null)
+                    this.findAnimationTarget(child, center, zoom);
+            }
+        }
+        else if (animator instanceof PositionAnimator && ((PositionAnimator) animator).getEnd() != null)
+        {
+            center[0] = ((PositionAnimator) animator).getEnd();
+        }
+        else if (animator instanceof ViewElevationAnimator || animator instanceof OrbitViewMoveToZoomAnimator)
+        {
+            zoom[0] = ((DoubleAnimator) animator).getEnd();
+        }
+    }
+
+    /**
+     * Extrapolates the view's recent velocity over the lookahead time.
+     *
+     * @param current the view's current state.
+     * @param radius  the globe's radius, in meters.
+     * @param fov     the view's field of view, in radians.
+     *
+     * @return the extrapolated state, or null if the view is not moving far enough to leave its footprint.
+     */
+    protected ViewState extrapolate(ViewState current, double radius, double fov)
+    {
+        ViewState first = this.samples.isEmpty() ? null : this.samples.getFirst();
+        if (first == null || current.time - first.time < PREFETCH_INTERVAL / 2)
+            return null;
+
+        double scale = (double) this.lookahead / (current.time - first.time);
+        double dLat = current.location.getLatitude().degrees - first.location.getLatitude().degrees;
+        double dLon = Angle.normalizedDegreesLongitude(
+            current.location.getLongitude().degrees - first.location.getLongitude().degrees);
+        double dAlt = current.altitude - first.altitude;
+
+        double lat = Math.max(-90, Math.min(90, current.location.getLatitude().degrees + dLat * scale));
+        double lon = Angle.normalizedDegreesLongitude(current.location.getLongitude().degrees + dLon * scale);
+        double altitude = Math.max(current.altitude + dAlt * scale, current.altitude / 4);
+        ViewState state = new ViewState(LatLon.fromDegrees(lat, lon), altitude, current.time);
+
+        // Prefetch only when the motion carries the view a tenth of its footprint or changes its altitude by a tenth.
+        double halfWidth = current.altitude * Math.tan(fov / 2) / radius;
+        boolean moved = LatLon.greatCircleDistance(current.location, state.location).radians > 0.1 * halfWidth;
+        boolean zoomed = Math.abs(altitude - current.altitude) > 0.1 * current.altitude;
+
+        return moved || zoomed ? state : null;
+    }
+
+    /**
+     * Requests the tiles of the targets covering a predicted view's footprint, nearest first, until the byte budget is
+     * spent.
+     *
+     * @return false if the byte budget is spent, otherwise true.
+     */
+    protected boolean prefetch(DrawContext dc, ViewState state, List<Prefetchable> targets, double radius,
+        double fov, int viewportWidth)
+    {
+        Sector footprint = computeFootprint(state, radius, fov);
+
+        for (Prefetchable target : targets)
+        {
+            LevelSet levels = target.getLevels();
+            Level level = selectLevel(levels, state.altitude, radius, fov, viewportWidth);
+            if (level == null)
+                continue;
+
+            for (TileKey key : computeTileKeys(levels, level, footprint, state.location))
+            {
+                Prefetch prefetch = this.prefetches.get(key);
+                if (prefetch != null && state.time - prefetch.lastIssueTime < REISSUE_INTERVAL)
+                    continue;
+
+                if (this.availableBytes <= 0)
+                    return false;
+
+                LatLon centroid = levels.computeSectorForKey(key).getCentroid();
+                double distance = LatLon.greatCircleDistance(state.location, centroid).radians * radius;
+                long bytes = target.prefetchTile(dc, key, PREFETCH_PRIORITY + distance);
+                if (bytes <= 0)
+                    continue;
+
+                if (prefetch == null)
+                {
+                    prefetch = new Prefetch(state.time);
+                    this.prefetches.put(key, prefetch);
+                }
+                prefetch.lastIssueTime = state.time;
+                this.issuedCount.incrementAndGet();
+                this.issuedBytes.addAndGet(bytes);
+                this.availableBytes -= bytes;
+            }
+        }
+
+        return true;
+    }
+
+    /** Counts prefetched tiles drawn in the current frame as hits and expired ones as misses. */
+    protected void resolvePrefetches(DrawContext dc, ViewState current, List<Prefetchable> targets)
+    {
+        Set<TileKey> drawn = new HashSet<TileKey>();
+        for (Prefetchable target : targets)
+        {
+            // Elevation models report the tiles used since they were last asked, so ask them even with nothing to
+            // resolve.
+            target.getDrawnTileKeys(dc, drawn);
+        }
+
+        if (this.prefetches.isEmpty())
+            return;
+
+        for (TileKey key : drawn)
+        {
+            if (this.prefetches.remove(key) != null)
+                this.hitCount.incrementAndGet();
+        }
+
+        Iterator<Prefetch> iterator = this.prefetches.values().iterator();
+        while (iterator.hasNext())
+        {
+            if (current.time - iterator.next().issueTime > EXPIRY_TIME)
+            {
+                iterator.remove();
+                this.missCount.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Computes the region of the globe seen by a view looking straight down, enlarged to allow for view pitch.
+     *
+     * @param state  the view's location and altitude.
+     * @param radius the globe's radius, in meters.
+     * @param fov    the view's field of view, in radians.
+     *
+     * @return the footprint.
+     */
+    protected static Sector computeFootprint(ViewState state, double radius, double fov)
+    {
+        double halfWidth = Math.min(state.altitude * Math.tan(fov / 2) * FOOTPRINT_SCALE / radius, Math.PI / 2);
+        double lat = state.location.getLatitude().radians;
+        double lon = state.location.getLongitude().radians;
+
+        double minLat = Math.max(lat - halfWidth, -Math.PI / 2);
+        double maxLat = Math.min(lat + halfWidth, Math.PI / 2);
+        double halfLon = halfWidth / Math.max(Math.cos(lat), 0.1);
+        double minLon = halfLon >= Math.PI ? -Math.PI : Math.max(lon - halfLon, -Math.PI);
+        double maxLon = halfLon >= Math.PI ? Math.PI : Math.min(lon + halfLon, Math.PI);
+
+        return Sector.fromRadians(minLat, maxLat, minLon, maxLon);
+    }
+
+    /**
+     * Selects the coarsest level whose texels are no larger than a view's pixels at the view's altitude.
+     *
+     * @return the level, or null if the level set has no level with data.
+     */
+    protected static Level selectLevel(LevelSet levels, double altitude, double radius, double fov,
+        int viewportWidth)
+    {
+        double pixelSize = 2 * altitude * Math.tan(fov / 2) / viewportWidth / radius;
+
+        Level selected = null;
+        for (int i = 0; i < levels.getNumLevels(); i++)
+        {
+            Level level = levels.getLevel(i);
+            if (level.isEmpty())
+                continue;
+
+            selected = level;
+            if (level.getTexelSize() <= pixelSize)
+                break;
+        }
+
+        return selected;
+    }
+
+    /**
+     * Computes the keys of a level's tiles intersecting a sector, nearest a location first. No more than {@link
+     * #MAX_TILES_PER_LEVEL} tiles nearest the location are returned.
+     */
+    protected static List<TileKey> computeTileKeys(LevelSet levels, Level level, Sector sector, LatLon location)
+    {
+        List<TileKey> keys = new ArrayList<TileKey>();
+        if (!levels.getSector().intersects(sector))
+            return keys;
+
+        Sector s = levels.getSector().intersection(sector);
+        LatLon delta = level.getTileDelta();
+        LatLon origin = levels.getTileOrigin();
+        int nwRow = Tile.computeRow(delta.getLatitude(), s.getMaxLatitude(), origin.getLatitude());
+        int nwCol = Tile.computeColumn(delta.getLongitude(), s.getMinLongitude(), origin.getLongitude());
+        int seRow = Tile.computeRow(delta.getLatitude(), s.getMinLatitude(), origin.getLatitude());
+        int seCol = Tile.computeColumn(delta.getLongitude(), s.getMaxLongitude(), origin.getLongitude());
+
+        // Keep to a window around the location when the sector holds too many tiles.
+        Angle lat = Angle.fromDegrees(Math.max(s.getMinLatitude().degrees,
+            Math.min(s.getMaxLatitude().degrees, location.getLatitude().degrees)));
+        Angle lon = Angle.fromDegrees(Math.max(s.getMinLongitude().degrees,
+            Math.min(s.getMaxLongitude().degrees, location.getLongitude().degrees)));
+        final int centerRow = Tile.computeRow(delta.getLatitude(), lat, origin.getLatitude());
+        final int centerCol = Tile.computeColumn(delta.getLongitude(), lon, origin.getLongitude());
+        int halfWindow = ((int) Math.sqrt(MAX_TILES_PER_LEVEL) - 1) / 2;
+        int minRow = Math.max(seRow, centerRow - halfWindow);
+        int maxRow = Math.min(nwRow, centerRow + halfWindow);
+        int minCol = Math.max(nwCol, centerCol - halfWindow);
+        int maxCol = Math.min(seCol, centerCol + halfWindow);
+
+        for (int row = minRow; row <= maxRow; row++)
+        {
+            for (int col = minCol; col <= maxCol; col++)
+            {
+                TileKey key = new TileKey(level.getLevelNumber(), row, col, level.getCacheName());
+                if (!levels.isResourceAbsent(key))
+                    keys.add(key);
+            }
+        }
+
+        Collections.sort(keys, new Comparator<TileKey>()
+        {
+            public int compare(TileKey a, TileKey b)
+            {
+                int da = Math.abs(a.getRow() - centerRow) + Math.abs(a.getColumn() - centerCol);
+                int db = Math.abs(b.getRow() - centerRow) + Math.abs(b.getColumn() - centerCol);
+                return da < db ? -1 : da > db ? 1 : 0;
+            }
+        });
+
+        return keys;
+    }
+}
@@ -9,6 +9,7 @@ package gov.nasa.worldwind.util;
 import com.jogamp.common.nio.Buffers;
 import gov.nasa.worldwind.Configuration;
 import gov.nasa.worldwind.avlist.AVKey;
+import gov.nasa.worldwind.cache.SegmentFileStore;
 import gov.nasa.worldwind.exception.WWRuntimeException;
 
 import java.io.*;
@@ -1217,6 +1218,14 @@ public class WWIO
             if (uri.isOpaque())
                 return false; // TODO: Determine how to check the date of non-Files
 
+            if (SegmentFileStore.STORE_URL_PROTOCOL.equalsIgnoreCase(uri.getScheme()))
+            {
+                // Entries of a segment store report their modification time through their connection, which reads
+                // the local segment index. Other non-file URLs are not asked, since that may mean a network request.
+                long lastModified = url.openConnection().getLastModified();
+                return lastModified > 0 && lastModified < expiryTime;
+            }
+
             File file = new File(uri);
 
             return file.exists() && file.lastModified() < expiryTime;
@@ -1226,6 +1235,11 @@ public class WWIO
             Logging.logger().log(Level.SEVERE, "WWIO.ExceptionValidatingFileExpiration", url);
             return false;
         }
+        catch (IOException e)
+        {
+            Logging.logger().log(Level.SEVERE, "WWIO.ExceptionValidatingFileExpiration", url);
+            return false;
+        }
     }
 
     public static Proxy configureProxy()
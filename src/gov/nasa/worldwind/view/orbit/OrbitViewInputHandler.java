@@ -1244,6 +1244,28 @@ public class OrbitViewInputHandler extends BasicViewInputHandler
         return (this.uiAnimControl.hasActiveAnimation() || this.gotoAnimControl.hasActiveAnimation());
     }
 
+    /**
+     * Returns the animators moving the view, both those started by the application and those smoothing user input.
+     *
+     * @return the active animators.
+     */
+    public java.util.List<Animator> getActiveAnimators()
+    {
+        java.util.List<Animator> animators = new java.util.ArrayList<Animator>();
+        for (Animator animator : this.gotoAnimControl.values())
+        {
+            if (animator.hasNext())
+                animators.add(animator);
+        }
+        for (Animator animator : this.uiAnimControl.values())
+        {
+            if (animator.hasNext())
+                animators.add(animator);
+        }
+
+        return animators;
+    }
+
     public void addAnimator(Animator animator)
     {
         long date = new Date().getTime();
@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+
+package gov.nasa.worldwindx.performance;
+
+import gov.nasa.worldwind.formats.dds.*;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.nio.*;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Compares the block by block DXT compressors with the parallel compressor's range fit and cluster fit modes. Each
+ * configuration compresses the image and its mip maps to DDS, as the tiled image producer and the retrieval post
+ * processors do, and reports the time per image and the peak signal to noise ratio of level 0. The parallel compressor
+ * is timed on one thread and on every available processor.
+ * <p/>
+ * Usage: <code>DXTCompressionBenchmark [image file] [passes]</code>
+ *
+ * @version $Id$
+ */
+public class DXTCompressionBenchmark
+{
+    protected static final String DEFAULT_IMAGE_PATH = "src/images/BMNG_world.topo.bathy.200405.3.2048x1024.jpg";
+
+    public static void main(String[] args) throws Exception
+    {
+        String path = args.length > 0 ? args[0] : DEFAULT_IMAGE_PATH;
+        int passes = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+        BufferedImage image = ImageIO.read(new File(path));
+        System.out.printf("%s, %d x %d%n", path, image.getWidth(), image.getHeight());
+
+        int processors = Runtime.getRuntime().availableProcessors();
+        run("Euclidean distance", image, DXTCompressionAttributes.COLOR_BLOCK_COMPRESSION_EUCLIDEAN_DISTANCE, 1,
+            passes);
+        run("Range fit", image, DXTCompressionAttributes.COLOR_BLOCK_COMPRESSION_RANGE_FIT, 1, passes);
+        run("Range fit", image, DXTCompressionAttributes.COLOR_BLOCK_COMPRESSION_RANGE_FIT, processors, passes);
+        run("Cluster fit", image, DXTCompressionAttributes.COLOR_BLOCK_COMPRESSION_CLUSTER_FIT, 1, passes);
+        run("Cluster fit", image, DXTCompressionAttributes.COLOR_BLOCK_COMPRESSION_CLUSTER_FIT, processors, passes);
+    }
+
+    protected static void run(String name, BufferedImage image, String compressionType, int threadCount, int passes)
+    {
+        final ForkJoinPool pool = new ForkJoinPool(threadCount);
+        DDSCompressor compressor = new DDSCompressor()
+        {
+            @Override
+            protected DXTCompressor createDXTCompressor(int dxtFormat, DXTCompressionAttributes attributes)
+            {
+                DXTCompressor dxtCompressor = super.createDXTCompressor(dxtFormat, attributes);
+                if (dxtCompressor instanceof ParallelDXTCompressor)
+                    ((ParallelDXTCompressor) dxtCompressor).setPool(pool);
+
+                return dxtCompressor;
+            }
+        };
+
+        DXTCompressionAttributes attributes = DDSCompressor.getDefaultCompressionAttributes();
+        attributes.setColorBlockCompressionType(compressionType);
+
+        // Warm up before measuring.
+        ByteBuffer buffer = null;
+        for (int pass = 0; pass < 3; pass++)
+        {
+            buffer = compressor.compressImageDXT1(image, attributes);
+        }
+
+        long start = System.nanoTime();
+        for (int pass = 0; pass < passes; pass++)
+        {
+            buffer = compressor.compressImageDXT1(image, attributes);
+        }
+        long nanos = System.nanoTime() - start;
+        pool.shutdown();
+
+        System.out.printf("%-20s %2d thread(s) %9.2f ms/image  PSNR %6.2f dB%n", name, threadCount,
+            nanos / 1e6 / passes, computePSNR(image, buffer));
+    }
+
+    /**
+     * Computes the peak signal to noise ratio of the RGB components of a DXT1 compressed DDS file's level 0.
+     *
+     * @param image  the uncompressed image.
+     * @param buffer the DDS file.
+     *
+     * @return the peak signal to noise ratio in decibels.
+     */
+    protected static double computePSNR(BufferedImage image, ByteBuffer buffer)
+    {
+        ByteBuffer blocks = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        blocks.position(DDSConstants.DDS_DATA_OFFSET);
+
+        int[] palette = new int[12];
+        double sum = 0;
+        for (int by = 0; by < image.getHeight(); by += 4)
+        {
+            for (int bx = 0; bx < image.getWidth(); bx += 4)
+            {
+                int color0 = blocks.getShort() & 0xFFFF;
+                int color1 = blocks.getShort() & 0xFFFF;
+                int indices = blocks.getInt();
+                expand565(color0, palette, 0);
+                expand565(color1, palette, 3);
+                for (int c = 0; c < 3; c++)
+                {
+                    palette[6 + c] = (2 * palette[c] + palette[3 + c]) / 3;
+                    palette[9 + c] = (palette[c] + 2 * palette[3 + c]) / 3;
+                }
+
+                for (int i = 0; i < 16; i++)
+                {
+                    int index = (indices >>> (2 * i)) & 3;
+                    int pixel = image.getRGB(bx + i % 4, by + i / 4);
+                    for (int c = 0; c < 3; c++)
+                    {
+                        double d = ((pixel >> (16 - 8 * c)) & 0xFF) - palette[3 * index + c];
+                        sum += d * d;
+                    }
+                }
+            }
+        }
+
+        double mse = sum / (3.0 * image.getWidth() * image.getHeight());
+        return 10 * Math.log10(255 * 255 / mse);
+    }
+
+    protected static void expand565(int color16, int[] rgb, int offset)
+    {
+        int r = (color16 & 0xf800) >> 11;
+        int g = (color16 & 0x07e0) >> 5;
+        int b = (color16 & 0x001f);
+
+        rgb[offset] = (r << 3) | (r >> 2);
+        rgb[offset + 1] = (g << 2) | (g >> 4);
+        rgb[offset + 2] = (b << 3) | (b >> 2);
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+
+package gov.nasa.worldwindx.performance;
+
+import gov.nasa.worldwind.avlist.*;
+import gov.nasa.worldwind.geom.*;
+import gov.nasa.worldwind.terrain.BasicElevationModel;
+import gov.nasa.worldwind.util.*;
+
+import java.lang.management.*;
+import java.nio.FloatBuffer;
+import java.util.*;
+
+/**
+ * Compares the elevation model's list and array methods for computing elevations of many locations. Both compute the
+ * elevations of a regular grid of locations, as a tessellator does, from tiles held in memory. The list method is
+ * timed including the creation of the locations, since that's the cost its callers pay. Reports the time per pass and,
+ * where the JVM supports it, the bytes allocated per location.
+ * <p/>
+ * Usage: <code>ElevationBatchBenchmark [samples] [passes]</code>
+ *
+ * @version $Id$
+ */
+public class ElevationBatchBenchmark
+{
+    protected static final Sector COVERAGE = Sector.fromDegrees(0, 10, 0, 10);
+    protected static final int TILE_SIZE = 150;
+
+    /** An elevation model whose tiles are computed in memory rather than read from the file store. */
+    protected static class InMemoryElevationModel extends BasicElevationModel
+    {
+        public InMemoryElevationModel(AVList params)
+        {
+            super(params);
+        }
+
+        public void loadTiles()
+        {
+            Level level = this.getLevels().getFirstLevel();
+            LatLon delta = level.getTileDelta();
+            LatLon origin = this.getLevels().getTileOrigin();
+            int minRow = Tile.computeRow(delta.getLatitude(), COVERAGE.getMinLatitude(), origin.getLatitude());
+            int maxRow = Tile.computeRow(delta.getLatitude(), COVERAGE.getMaxLatitude(), origin.getLatitude());
+            int minCol = Tile.computeColumn(delta.getLongitude(), COVERAGE.getMinLongitude(), origin.getLongitude());
+            int maxCol = Tile.computeColumn(delta.getLongitude(), COVERAGE.getMaxLongitude(), origin.getLongitude());
+
+            for (int row = minRow; row <= maxRow; row++)
+            {
+                for (int col = minCol; col <= maxCol; col++)
+                {
+                    ElevationTile tile = this.createTile(new TileKey(0, row, col, level.getCacheName()));
+                    FloatBuffer buffer = FloatBuffer.allocate(TILE_SIZE * TILE_SIZE);
+                    for (int i = 0; i < buffer.capacity(); i++)
+                    {
+                        buffer.put(i, (float) (1000 * Math.sin(i * 0.01)));
+                    }
+
+                    BufferWrapper elevations = new BufferWrapper.FloatBufferWrapper(buffer);
+                    tile.setElevations(elevations, this);
+                    this.addTileToCache(tile, elevations);
+                }
+            }
+        }
+    }
+
+    public static void main(String[] args)
+    {
+        int numSamples = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        int passes = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+
+        AVList params = new AVListImpl();
+        params.setValue(AVKey.SECTOR, COVERAGE);
+        params.setValue(AVKey.LEVEL_ZERO_TILE_DELTA, LatLon.fromDegrees(2, 2));
+        params.setValue(AVKey.NUM_LEVELS, 1);
+        params.setValue(AVKey.TILE_WIDTH, TILE_SIZE);
+        params.setValue(AVKey.TILE_HEIGHT, TILE_SIZE);
+        params.setValue(AVKey.DATA_CACHE_NAME, "Benchmark/ElevationBatchBenchmark");
+        params.setValue(AVKey.DATASET_NAME, "ElevationBatchBenchmark");
+        params.setValue(AVKey.FORMAT_SUFFIX, ".bil");
+        params.setValue(AVKey.NETWORK_RETRIEVAL_ENABLED, false);
+        InMemoryElevationModel model = new InMemoryElevationModel(params);
+        model.loadTiles();
+
+        int side = (int) Math.sqrt(numSamples);
+        final double[] latitudes = new double[side * side];
+        final double[] longitudes = new double[side * side];
+        for (int j = 0, k = 0; j < side; j++)
+        {
+            for (int i = 0; i < side; i++, k++)
+            {
+                latitudes[k] = COVERAGE.getMinLatitude().degrees + j * COVERAGE.getDeltaLatDegrees() / (side - 1);
+                longitudes[k] = COVERAGE.getMinLongitude().degrees + i * COVERAGE.getDeltaLonDegrees() / (side - 1);
+            }
+        }
+
+        double resolution = model.getBestResolution(COVERAGE);
+        double[] listElevations = new double[latitudes.length];
+        double[] arrayElevations = new double[latitudes.length];
+
+        // Warm up both paths before measuring.
+        for (int pass = 0; pass < 5; pass++)
+        {
+            model.getElevations(COVERAGE, createLocations(latitudes, longitudes), resolution, listElevations);
+            model.getElevations(COVERAGE, latitudes, longitudes, resolution, arrayElevations);
+        }
+
+        long bytes = allocatedBytes();
+        long start = System.nanoTime();
+        for (int pass = 0; pass < passes; pass++)
+        {
+            model.getElevations(COVERAGE, createLocations(latitudes, longitudes), resolution, listElevations);
+        }
+        report("List<LatLon>", System.nanoTime() - start, allocatedBytes() - bytes, passes, latitudes.length);
+
+        bytes = allocatedBytes();
+        start = System.nanoTime();
+        for (int pass = 0; pass < passes; pass++)
+        {
+            model.getElevations(COVERAGE, latitudes, longitudes, resolution, arrayElevations);
+        }
+        report("double[] lat/lon", System.nanoTime() - start, allocatedBytes() - bytes, passes, latitudes.length);
+
+        double maxDifference = 0;
+        for (int i = 0; i < latitudes.length; i++)
+        {
+            maxDifference = Math.max(maxDifference, Math.abs(listElevations[i] - arrayElevations[i]));
+        }
+        System.out.printf("max difference %g m%n", maxDifference);
+    }
+
+    protected static List<LatLon> createLocations(double[] latitudes, double[] longitudes)
+    {
+        List<LatLon> locations = new ArrayList<LatLon>(latitudes.length);
+        for (int i = 0; i < latitudes.length; i++)
+        {
+            locations.add(LatLon.fromDegrees(latitudes[i], longitudes[i]));
+        }
+
+        return locations;
+    }
+
+    /** @return the bytes allocated by the current thread, or -1 if the JVM doesn't report it. */
+    protected static long allocatedBytes()
+    {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean)
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+
+        return -1;
+    }
+
+    protected static void report(String name, long nanos, long bytes, int passes, int numSamples)
+    {
+        System.out.printf("%-18s %8.2f ms/pass  %6.1f ns/sample  %8.1f bytes/sample%n", name, nanos / 1e6 / passes,
+            (double) nanos / passes / numSamples, bytes < 0 ? Double.NaN : (double) bytes / passes / numSamples);
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+
+package gov.nasa.worldwindx.performance;
+
+import gov.nasa.worldwind.geom.*;
+import gov.nasa.worldwind.globes.*;
+import gov.nasa.worldwind.terrain.*;
+
+import java.util.*;
+
+/**
+ * Compares ways of intersecting many lines with {@link HighResolutionTerrain}: one line at a time, the batch method
+ * returning all intersections, and the batch method returning only the first intersection. The lines fan out from an
+ * observer as in a viewshed computation. Terrain elevations are computed on demand so that the benchmark measures
+ * intersection rather than data retrieval. Each method uses a new terrain instance, so each pays for building the
+ * terrain geometry.
+ * <p/>
+ * Usage: <code>HighResolutionTerrainBenchmark [lines] [threads]</code>
+ *
+ * @version $Id$
+ */
+public class HighResolutionTerrainBenchmark
+{
+    protected static final Sector SECTOR = Sector.fromDegrees(35, 36, -120, -119);
+    protected static final double TARGET_RESOLUTION = 30;
+    protected static final Angle RANGE = Angle.fromDegrees(0.2);
+
+    /** An elevation model of rolling hills computed on demand. */
+    protected static class HillsElevationModel extends ZeroElevationModel
+    {
+        public double getMaxElevation()
+        {
+            return 2000;
+        }
+
+        public double getMinElevation()
+        {
+            return 0;
+        }
+
+        public double[] getExtremeElevations(Angle latitude, Angle longitude)
+        {
+            return new double[] {0, 2000};
+        }
+
+        public double[] getExtremeElevations(Sector sector)
+        {
+            return new double[] {0, 2000};
+        }
+
+        public double getUnmappedElevation(Angle latitude, Angle longitude)
+        {
+            return elevation(latitude.degrees, longitude.degrees);
+        }
+
+        public double getElevations(Sector sector, List<? extends LatLon> latlons, double targetResolution,
+            double[] buffer)
+        {
+            for (int i = 0; i < latlons.size(); i++)
+            {
+                buffer[i] = elevation(latlons.get(i).getLatitude().degrees, latlons.get(i).getLongitude().degrees);
+            }
+
+            return 0;
+        }
+
+        public double getElevations(Sector sector, double[] latitudes, double[] longitudes, double targetResolution,
+            double[] buffer)
+        {
+            for (int i = 0; i < latitudes.length; i++)
+            {
+                buffer[i] = elevation(latitudes[i], longitudes[i]);
+            }
+
+            return 0;
+        }
+
+        protected static double elevation(double latitude, double longitude)
+        {
+            return 1000 + 600 * Math.sin(latitude * 90) * Math.cos(longitude * 70)
+                + 300 * Math.sin(latitude * 410 + longitude * 370);
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException
+    {
+        int numLines = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        int numThreads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+
+        Globe globe = new EllipsoidalGlobe(Earth.WGS84_EQUATORIAL_RADIUS, Earth.WGS84_POLAR_RADIUS, Earth.WGS84_ES,
+            new HillsElevationModel());
+
+        Position[] positions = new Position[2 * numLines];
+        LatLon center = SECTOR.getCentroid();
+        for (int i = 0; i < numLines; i++)
+        {
+            // Vary both the direction and the length of the lines, as for the points of a viewshed.
+            Angle azimuth = Angle.fromDegrees(360d * i / numLines * 37 % 360);
+            Angle distance = RANGE.multiply(0.1 + 0.9 * ((i * 0.618034) % 1));
+            positions[2 * i] = new Position(center, 10);
+            positions[2 * i + 1] = new Position(LatLon.greatCircleEndPosition(center, azimuth, distance), 0);
+        }
+
+        System.out.printf("%d lines, %d threads%n", numLines, numThreads);
+
+        HighResolutionTerrain terrain = createTerrain(globe, numThreads);
+        long start = System.nanoTime();
+        int singleHits = 0;
+        for (int i = 0; i < numLines; i++)
+        {
+            if (terrain.intersect(positions[2 * i], positions[2 * i + 1]) != null)
+                singleHits++;
+        }
+        report("single", System.nanoTime() - start, numLines, singleHits);
+
+        terrain = createTerrain(globe, numThreads);
+        start = System.nanoTime();
+        Intersection[][] all = terrain.intersect(positions, false);
+        report("batch all hits", System.nanoTime() - start, numLines, countHits(all));
+
+        terrain = createTerrain(globe, numThreads);
+        start = System.nanoTime();
+        Intersection[][] first = terrain.intersect(positions, true);
+        report("batch first hit", System.nanoTime() - start, numLines, countHits(first));
+
+        // Repeat the first-hit batch on the warm cache, as a viewshed recomputed for a moved observer would.
+        start = System.nanoTime();
+        terrain.intersect(positions, true);
+        report("batch first, warm", System.nanoTime() - start, numLines, countHits(first));
+
+        double maxDifference = 0;
+        for (int i = 0; i < numLines; i++)
+        {
+            if (all[i] != null && first[i] != null)
+            {
+                maxDifference = Math.max(maxDifference,
+                    all[i][0].getIntersectionPoint().distanceTo3(first[i][0].getIntersectionPoint()));
+            }
+        }
+        System.out.printf("max first-hit difference %g m%n", maxDifference);
+    }
+
+    protected static HighResolutionTerrain createTerrain(Globe globe, int numThreads)
+    {
+        HighResolutionTerrain terrain = new HighResolutionTerrain(globe, SECTOR, TARGET_RESOLUTION, null);
+        terrain.setIntersectionThreadCount(numThreads);
+
+        return terrain;
+    }
+
+    protected static int countHits(Intersection[][] results)
+    {
+        int count = 0;
+        for (Intersection[] result : results)
+        {
+            if (result != null)
+                count++;
+        }
+
+        return count;
+    }
+
+    protected static void report(String name, long nanos, int numLines, int numHits)
+    {
+        System.out.printf("%-18s %9.1f ms  %8.1f us/line  %d lines hit%n", name, nanos / 1e6,
+            nanos / 1e3 / numLines, numHits);
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+
+package gov.nasa.worldwindx.performance;
+
+import gov.nasa.worldwind.cache.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compares the throughput of {@link BasicMemoryCache} and {@link ConcurrentMemoryCache} under a mixed read/write load
+ * resembling the texture and elevation tile caches: several threads look up keys drawn from a skewed distribution and
+ * add the entry on a miss, so the cache is continually evicting. Reports operations per second, hit rate and the
+ * longest single operation observed, which is dominated by eviction pauses.
+ * <p/>
+ * Usage: <code>MemoryCacheBenchmark [threads] [seconds] [readPercent]</code>
+ *
+ * @version $Id$
+ */
+public class MemoryCacheBenchmark
+{
+    protected static final int NUM_KEYS = 200000;
+    protected static final long ENTRY_SIZE = 1000;
+    protected static final long CAPACITY = 50000 * ENTRY_SIZE;
+
+    protected static class Result
+    {
+        long operations;
+        long hits;
+        long lookups;
+        long maxNanos;
+    }
+
+    public static void main(String[] args) throws Exception
+    {
+        int numThreads = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int readPercent = args.length > 2 ? Integer.parseInt(args[2]) : 90;
+
+        // Warm up both implementations before measuring.
+        run(new BasicMemoryCache((long) (0.85 * CAPACITY), CAPACITY), numThreads, 2, readPercent);
+        run(new ConcurrentMemoryCache((long) (0.85 * CAPACITY), CAPACITY), numThreads, 2, readPercent);
+
+        report("BasicMemoryCache", run(new BasicMemoryCache((long) (0.85 * CAPACITY), CAPACITY),
+            numThreads, seconds, readPercent), seconds);
+        report("ConcurrentMemoryCache", run(new ConcurrentMemoryCache((long) (0.85 * CAPACITY), CAPACITY),
+            numThreads, seconds, readPercent), seconds);
+    }
+
+    protected static Result run(final MemoryCache cache, int numThreads, int seconds, final int readPercent)
+        throws Exception
+    {
+        final long endTime = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        final AtomicLong operations = new AtomicLong();
+        final AtomicLong hits = new AtomicLong();
+        final AtomicLong lookups = new AtomicLong();
+        final AtomicLong maxNanos = new AtomicLong();
+
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+
+        for (int t = 0; t < numThreads; t++)
+        {
+            final long seed = t;
+            futures.add(executor.submit(new Runnable()
+            {
+                public void run()
+                {
+                    Random random = new Random(seed);
+                    long ops = 0, localHits = 0, localLookups = 0, localMax = 0;
+
+                    while (System.nanoTime() < endTime)
+                    {
+                        Integer key = nextKey(random);
+                        long start = System.nanoTime();
+
+                        if (random.nextInt(100) < readPercent)
+                        {
+                            localLookups++;
+                            if (cache.getObject(key) != null)
+                                localHits++;
+                            else
+                                cache.add(key, key, ENTRY_SIZE);
+                        }
+                        else
+                        {
+                            cache.add(key, key, ENTRY_SIZE);
+                        }
+
+                        localMax = Math.max(localMax, System.nanoTime() - start);
+                        ops++;
+                    }
+
+                    operations.addAndGet(ops);
+                    hits.addAndGet(localHits);
+                    lookups.addAndGet(localLookups);
+
+                    long m;
+                    while ((m = maxNanos.get()) < localMax && !maxNanos.compareAndSet(m, localMax))
+                    {
+                        // retry
+                    }
+                }
+            }));
+        }
+
+        for (Future<?> future : futures)
+        {
+            future.get();
+        }
+        executor.shutdown();
+
+        Result result = new Result();
+        result.operations = operations.get();
+        result.hits = hits.get();
+        result.lookups = lookups.get();
+        result.maxNanos = maxNanos.get();
+        return result;
+    }
+
+    /** Draws a key whose distribution approximates the skew of tile access: a small hot set and a long tail. */
+    protected static Integer nextKey(Random random)
+    {
+        double u = random.nextDouble();
+        return (int) (NUM_KEYS * u * u * u);
+    }
+
+    protected static void report(String name, Result result, int seconds)
+    {
+        System.out.printf("%-22s %12.0f ops/s  hit rate %5.1f%%  max op %8.3f ms%n", name,
+            (double) result.operations / seconds, 100d * result.hits / Math.max(result.lookups, 1),
+            result.maxNanos / 1e6);
+    }
+}
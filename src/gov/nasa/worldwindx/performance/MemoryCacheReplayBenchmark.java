@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+
+package gov.nasa.worldwindx.performance;
+
+import gov.nasa.worldwind.cache.*;
+import gov.nasa.worldwind.util.TileKey;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Replays a tile access trace against memory caches with and without the {@link TinyLFUMemoryCache} admission filter,
+ * and reports each cache's hit rate. Every access looks the tile up and adds it on a miss, as the tiled image layers
+ * and elevation models do.
+ * <p/>
+ * A trace file has one access per line, formatted as <code>level row column [cacheName]</code>; blank lines and lines
+ * starting with <code>#</code> are ignored. Traces should be recorded once per tile per frame visit, not once per
+ * frame, since the admission filter counts repeated lookups within its count interval only once. A session's trace is
+ * recorded in this form by setting the {@link gov.nasa.worldwind.avlist.AVKey#MEMORY_CACHE_TRACE_FILE} configuration
+ * value; see {@link TraceRecordingMemoryCache}. Without a trace file, a synthetic trace is generated in which the view
+ * repeatedly revisits a set of low-level tiles while panning across a large area at a deep level.
+ * <p/>
+ * Usage: <code>MemoryCacheReplayBenchmark [traceFile] [capacityInTiles]</code>
+ *
+ * @version $Id$
+ */
+public class MemoryCacheReplayBenchmark
+{
+    protected static final long TILE_SIZE = 512 * 512 * 4;
+    protected static final int DEFAULT_CAPACITY_IN_TILES = 1000;
+
+    public static void main(String[] args) throws IOException
+    {
+        List<TileKey> trace = args.length > 0 ? readTrace(new File(args[0])) : makeSyntheticTrace(new Random(1));
+        int capacityInTiles = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_CAPACITY_IN_TILES;
+        long capacity = capacityInTiles * TILE_SIZE;
+        long loWater = (long) (0.85 * capacity);
+
+        System.out.printf("%d accesses, %d distinct tiles, capacity %d tiles%n", trace.size(),
+            new HashSet<TileKey>(trace).size(), capacityInTiles);
+
+        report("BasicMemoryCache", new BasicMemoryCache(loWater, capacity), trace);
+        report("ConcurrentMemoryCache", new ConcurrentMemoryCache(loWater, capacity), trace);
+        report("TinyLFU/BasicMemoryCache", makeFiltered(new BasicMemoryCache(loWater, capacity), capacityInTiles),
+            trace);
+        report("TinyLFU/ConcurrentMemoryCache",
+            makeFiltered(new ConcurrentMemoryCache(loWater, capacity), capacityInTiles), trace);
+    }
+
+    protected static MemoryCache makeFiltered(MemoryCache cache, int capacityInTiles)
+    {
+        TinyLFUMemoryCache filtered = new TinyLFUMemoryCache(cache, TinyLFUMemoryCache.DEFAULT_WINDOW_FRACTION,
+            capacityInTiles);
+        filtered.setCountInterval(0); // the trace already holds one access per visit
+        return filtered;
+    }
+
+    protected static void report(String name, MemoryCache cache, List<TileKey> trace)
+    {
+        long hits = 0;
+        long start = System.nanoTime();
+
+        for (TileKey key : trace)
+        {
+            if (cache.getObject(key) != null)
+                hits++;
+            else
+                cache.add(key, key, TILE_SIZE);
+        }
+
+        double millis = (System.nanoTime() - start) / 1e6;
+        System.out.printf("%-30s hit rate %5.1f%%  (%.0f ms)%n", name, 100d * hits / trace.size(), millis);
+    }
+
+    protected static List<TileKey> readTrace(File file) throws IOException
+    {
+        List<TileKey> trace = new ArrayList<TileKey>();
+        BufferedReader reader = new BufferedReader(new FileReader(file));
+
+        try
+        {
+            String line;
+            while ((line = reader.readLine()) != null)
+            {
+                line = line.trim();
+                if (line.length() == 0 || line.startsWith("#"))
+                    continue;
+
+                String[] tokens = line.split("[\\s,]+");
+                String cacheName = tokens.length > 3 ? tokens[3] : "trace";
+                trace.add(new TileKey(Integer.parseInt(tokens[0]), Integer.parseInt(tokens[1]),
+                    Integer.parseInt(tokens[2]), cacheName));
+            }
+        }
+        finally
+        {
+            reader.close();
+        }
+
+        return trace;
+    }
+
+    /**
+     * Generates a trace in which each view step revisits a random part of a hot set of level 0 through 5 tiles around
+     * a home area, and visits tiles at level 10 along a pan path that never returns to the same tile.
+     *
+     * @param random the random number generator.
+     *
+     * @return the trace.
+     */
+    protected static List<TileKey> makeSyntheticTrace(Random random)
+    {
+        List<TileKey> hot = new ArrayList<TileKey>();
+        for (int level = 0; level <= 5; level++)
+        {
+            int n = Math.min(1 << level, 12);
+            for (int row = 0; row < n; row++)
+            {
+                for (int col = 0; col < n; col++)
+                {
+                    hot.add(new TileKey(level, row, col, "synthetic"));
+                }
+            }
+        }
+
+        List<TileKey> trace = new ArrayList<TileKey>();
+        int panColumn = 0;
+
+        for (int step = 0; step < 2000; step++)
+        {
+            for (int i = 0; i < 40; i++)
+            {
+                trace.add(hot.get(random.nextInt(hot.size())));
+            }
+
+            for (int row = 0; row < 8; row++)
+            {
+                for (int col = 0; col < 5; col++)
+                {
+                    trace.add(new TileKey(10, row, panColumn + col, "synthetic"));
+                }
+            }
+
+            panColumn += 5;
+        }
+
+        return trace;
+    }
+}
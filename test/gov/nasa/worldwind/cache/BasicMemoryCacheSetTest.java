@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+
+package gov.nasa.worldwind.cache;
+
+import gov.nasa.worldwind.Configuration;
+import gov.nasa.worldwind.avlist.AVKey;
+import org.junit.*;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import static org.junit.Assert.*;
+
+@RunWith(JUnit4.class)
+public class BasicMemoryCacheSetTest
+{
+    private String className;
+    private String admissionFilter;
+
+    @Before
+    public void setUp()
+    {
+        this.className = Configuration.getStringValue(AVKey.MEMORY_CACHE_CLASS_NAME);
+        this.admissionFilter = Configuration.getStringValue(AVKey.MEMORY_CACHE_ADMISSION_FILTER);
+    }
+
+    @After
+    public void tearDown()
+    {
+        restore(AVKey.MEMORY_CACHE_CLASS_NAME, this.className);
+        restore(AVKey.MEMORY_CACHE_ADMISSION_FILTER, this.admissionFilter);
+    }
+
+    /** Tests that created caches are of the configured class, and wrapped when the admission filter is enabled. */
+    @Test
+    public void testCreateCache()
+    {
+        Configuration.setValue(AVKey.MEMORY_CACHE_CLASS_NAME, ConcurrentMemoryCache.class.getName());
+        Configuration.setValue(AVKey.MEMORY_CACHE_ADMISSION_FILTER, false);
+        MemoryCache cache = BasicMemoryCacheSet.createCache(850, 1000);
+        assertTrue(cache instanceof ConcurrentMemoryCache);
+        assertEquals(1000, cache.getCapacity());
+
+        Configuration.setValue(AVKey.MEMORY_CACHE_ADMISSION_FILTER, true);
+        assertTrue(BasicMemoryCacheSet.createCache(850, 1000) instanceof TinyLFUMemoryCache);
+
+        // A class that can't be created falls back to the basic cache.
+        Configuration.setValue(AVKey.MEMORY_CACHE_CLASS_NAME, "no.such.MemoryCache");
+        Configuration.setValue(AVKey.MEMORY_CACHE_ADMISSION_FILTER, false);
+        assertTrue(BasicMemoryCacheSet.createCache(850, 1000) instanceof BasicMemoryCache);
+    }
+
+    private static void restore(String key, String value)
+    {
+        if (value != null)
+            Configuration.setValue(key, value);
+        else
+            Configuration.removeKey(key);
+    }
+}
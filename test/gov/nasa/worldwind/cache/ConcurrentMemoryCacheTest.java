@@ -0,0 +1,172 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+
+package gov.nasa.worldwind.cache;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+@RunWith(JUnit4.class)
+public class ConcurrentMemoryCacheTest
+{
+    /** Tests that entries can be added, found and removed, and that capacity is accounted for. */
+    @Test
+    public void testAddGetRemove()
+    {
+        ConcurrentMemoryCache cache = new ConcurrentMemoryCache(800, 1000);
+
+        assertTrue(cache.add("a", "A", 100));
+        assertTrue(cache.add("b", "B", 200));
+        assertEquals("A", cache.getObject("a"));
+        assertTrue(cache.contains("b"));
+        assertEquals(2, cache.getNumObjects());
+        assertEquals(300, cache.getUsedCapacity());
+
+        cache.remove("a");
+        assertNull(cache.getObject("a"));
+        assertEquals(1, cache.getNumObjects());
+        assertEquals(200, cache.getUsedCapacity());
+
+        // Replacing an entry releases the old entry's size.
+        cache.add("b", "B2", 50);
+        assertEquals("B2", cache.getObject("b"));
+        assertEquals(50, cache.getUsedCapacity());
+
+        cache.clear();
+        assertEquals(0, cache.getNumObjects());
+        assertEquals(0, cache.getUsedCapacity());
+    }
+
+    /** Tests that invalid additions are rejected. */
+    @Test
+    public void testRejectedAdditions()
+    {
+        ConcurrentMemoryCache cache = new ConcurrentMemoryCache(800, 1000);
+
+        assertFalse(cache.add(null, "A", 10));
+        assertFalse(cache.add("a", null, 10));
+        assertFalse(cache.add("a", "A", 0));
+        assertFalse(cache.add("a", "A", 1001));
+        assertEquals(0, cache.getNumObjects());
+    }
+
+    /** Tests that exceeding the capacity evicts down to the low water level and notifies listeners. */
+    @Test
+    public void testEvictionToLowWater()
+    {
+        ConcurrentMemoryCache cache = new ConcurrentMemoryCache(500, 1000, 4);
+        final List<Object> removed = new ArrayList<Object>();
+        cache.addCacheListener(new MemoryCache.CacheListener()
+        {
+            public void entryRemoved(Object key, Object clientObject)
+            {
+                removed.add(key);
+            }
+
+            public void removalException(Throwable exception, Object key, Object clientObject)
+            {
+            }
+        });
+
+        for (int i = 0; i < 11; i++)
+        {
+            cache.add(i, i, 100);
+        }
+
+        // Space is made down to the low water level before the triggering entry is added.
+        assertTrue(cache.getUsedCapacity() <= 500 + 100);
+        assertEquals(cache.getUsedCapacity(), 100L * cache.getNumObjects());
+        assertEquals(11 - cache.getNumObjects(), removed.size());
+        assertTrue(cache.contains(10));
+    }
+
+    /** Tests that recently referenced entries survive eviction of unreferenced ones in the same segment. */
+    @Test
+    public void testReferencedEntriesSurvive()
+    {
+        ConcurrentMemoryCache cache = new ConcurrentMemoryCache(300, 400, 1);
+
+        for (int i = 0; i < 4; i++)
+        {
+            cache.add(i, i, 100);
+        }
+
+        // Age every entry once by forcing a sweep, then reference the hot entry.
+        cache.add(4, 4, 100);
+        cache.getObject(3);
+        cache.add(5, 5, 100);
+        cache.getObject(3);
+        cache.add(6, 6, 100);
+
+        assertTrue(cache.contains(3));
+        assertTrue(cache.contains(6));
+        assertTrue(cache.getUsedCapacity() <= 400);
+    }
+
+    /** Tests that concurrent additions, lookups and removals leave the capacity accounting consistent. */
+    @Test
+    public void testConcurrentAccess() throws Exception
+    {
+        final ConcurrentMemoryCache cache = new ConcurrentMemoryCache(40000, 50000);
+        final AtomicLong listenerSize = new AtomicLong();
+        cache.addCacheListener(new MemoryCache.CacheListener()
+        {
+            public void entryRemoved(Object key, Object clientObject)
+            {
+                listenerSize.addAndGet(-((Integer) clientObject));
+            }
+
+            public void removalException(Throwable exception, Object key, Object clientObject)
+            {
+            }
+        });
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<Long>> futures = new ArrayList<Future<Long>>();
+        for (int t = 0; t < 8; t++)
+        {
+            final int seed = t;
+            futures.add(executor.submit(new Callable<Long>()
+            {
+                public Long call()
+                {
+                    Random random = new Random(seed);
+                    long added = 0;
+                    for (int i = 0; i < 50000; i++)
+                    {
+                        int key = random.nextInt(2000);
+                        int size = 1 + random.nextInt(100);
+                        int op = random.nextInt(10);
+                        if (op < 6)
+                            cache.getObject(key);
+                        else if (op < 9 && cache.add(key, size, size))
+                            added += size;
+                        else
+                            cache.remove(key);
+                    }
+                    return added;
+                }
+            }));
+        }
+
+        long totalAdded = 0;
+        for (Future<Long> future : futures)
+        {
+            totalAdded += future.get();
+        }
+        executor.shutdown();
+
+        assertEquals(totalAdded + listenerSize.get(), cache.getUsedCapacity());
+        assertTrue(cache.getUsedCapacity() <= cache.getCapacity());
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+
+package gov.nasa.worldwind.cache;
+
+import gov.nasa.worldwind.util.*;
+import org.junit.*;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.*;
+
+import static org.junit.Assert.*;
+
+@RunWith(JUnit4.class)
+public class FileStoreIndexTest
+{
+    private File dir;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        this.dir = File.createTempFile("FileStoreIndexTest", "");
+        assertTrue(this.dir.delete());
+        assertTrue(this.dir.mkdirs());
+    }
+
+    @After
+    public void tearDown() throws IOException
+    {
+        WWIO.deleteDirectory(this.dir);
+        //noinspection ResultOfMethodCallIgnored
+        this.dir.delete();
+    }
+
+    /** Tests that a Bloom filter never rejects an added string, and keeps its contents when written and read. */
+    @Test
+    public void testBloomFilter() throws IOException
+    {
+        BloomFilter filter = new BloomFilter(10000, 0.01);
+        for (int i = 0; i < 10000; i++)
+        {
+            filter.add("earth/layer/" + i + ".dds");
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        filter.write(new DataOutputStream(bytes));
+        BloomFilter copy = BloomFilter.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+        int falsePositives = 0;
+        for (int i = 0; i < 10000; i++)
+        {
+            assertTrue(copy.mightContain("earth/layer/" + i + ".dds"));
+            if (copy.mightContain("earth/layer/" + i + ".png"))
+                falsePositives++;
+        }
+
+        assertEquals(10000, copy.getCount());
+        assertTrue("False positives " + falsePositives, falsePositives < 200);
+    }
+
+    /** Tests that a saved index finds files added to new and changed directories when refreshed in a new session. */
+    @Test
+    public void testIncrementalRefresh() throws IOException
+    {
+        File location = new File(this.dir, "location");
+        File indexFile = new File(this.dir, "index.idx");
+        File layerDir = new File(location, "Earth/Layer/0");
+        assertTrue(layerDir.mkdirs());
+        assertTrue(new File(layerDir, "0_0.dds").createNewFile());
+
+        FileStoreIndex index = new FileStoreIndex(location, indexFile);
+        assertTrue(index.mightContain(FileStoreIndex.makeIndexName("Earth/Layer/0/0_1.dds"))); // not yet built
+        index.refresh();
+        assertTrue(index.mightContain(FileStoreIndex.makeIndexName("/Earth/Layer/0/0_0.dds")));
+        assertFalse(index.mightContain(FileStoreIndex.makeIndexName("Earth/Layer/0/0_1.dds")));
+        assertEquals(1, index.getHitCount());
+        assertTrue(indexFile.exists());
+
+        assertTrue(new File(layerDir, "0_1.dds").createNewFile());
+        assertTrue(layerDir.setLastModified(layerDir.lastModified() - 60000));
+        File newDir = new File(location, "Earth/Layer/1");
+        assertTrue(newDir.mkdirs());
+        assertTrue(new File(newDir, "1_1.dds").createNewFile());
+
+        index = new FileStoreIndex(location, indexFile);
+        index.refresh();
+        assertTrue(index.mightContain(FileStoreIndex.makeIndexName("Earth\\Layer\\0\\0_1.dds")));
+        assertTrue(index.mightContain(FileStoreIndex.makeIndexName("Earth/Layer/1/1_1.dds")));
+        assertFalse(index.mightContain(FileStoreIndex.makeIndexName("Earth/Layer/1/1_2.dds")));
+    }
+
+    /** Tests that a file store with indexing enabled finds new files and answers misses from the index. */
+    @Test
+    public void testFileStoreLookups() throws Exception
+    {
+        BasicDataFileStore fileStore = new BasicDataFileStore(this.dir);
+        assertTrue(new File(this.dir, "Earth/Layer/0").mkdirs());
+        assertTrue(new File(this.dir, "Earth/Layer/0/0_0.dds").createNewFile());
+        fileStore.setIndexEnabled(true);
+
+        for (int i = 0; i < 100 && fileStore.getIndexHitCount() == 0; i++)
+        {
+            assertNull(fileStore.findFile("Earth/Layer/0/0_1.dds", false));
+            Thread.sleep(50);
+        }
+        assertTrue(fileStore.getIndexHitCount() > 0);
+
+        assertNotNull(fileStore.findFile("Earth/Layer/0/0_0.dds", false));
+        assertTrue(fileStore.newFile("Earth/Layer/0/0_1.dds").createNewFile());
+        assertNotNull(fileStore.findFile("Earth/Layer/0/0_1.dds", false));
+        assertTrue(fileStore.containsFile("Earth/Layer/0/0_1.dds"));
+        assertFalse(fileStore.containsFile("Earth/Layer/0/0_2.dds"));
+    }
+}
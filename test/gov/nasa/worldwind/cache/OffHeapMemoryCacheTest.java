@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+
+package gov.nasa.worldwind.cache;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+@RunWith(JUnit4.class)
+public class OffHeapMemoryCacheTest
+{
+    protected static class Payload implements OffHeapCacheable
+    {
+        protected ByteBuffer data;
+
+        public Payload(int size, byte value)
+        {
+            this.data = ByteBuffer.allocate(size);
+            for (int i = 0; i < size; i++)
+            {
+                this.data.put(i, value);
+            }
+        }
+
+        public long getSizeInBytes()
+        {
+            return this.data.capacity();
+        }
+
+        public int getPayloadSize()
+        {
+            return this.data.capacity();
+        }
+
+        public boolean relocatePayload(ByteBuffer buffer)
+        {
+            buffer.put(this.data);
+            buffer.rewind();
+            this.data = buffer;
+            return true;
+        }
+    }
+
+    /** Tests that requests are rounded up to their size class and that released blocks are reused. */
+    @Test
+    public void testArenaAllocation()
+    {
+        ByteBufferArena arena = new ByteBufferArena(1 << 16, 1024, 1 << 14, 1 << 14);
+        arena.setReclaimDelay(0);
+
+        ByteBufferArena.Block block = arena.allocate(1500);
+        assertNotNull(block);
+        assertEquals(2048, block.getCapacity());
+        assertEquals(1500, block.getBuffer().remaining());
+        assertTrue(block.getBuffer().isDirect());
+        assertEquals(1 << 14, arena.getReservedBytes());
+        assertEquals(2048, arena.getAllocatedBytes());
+        assertEquals(1500, arena.getRequestedBytes());
+
+        assertNull(arena.allocate((1 << 14) + 1));
+
+        arena.release(block, null);
+        assertEquals(0, arena.getAllocatedBytes());
+        assertEquals(2048, arena.getQuarantinedBytes());
+
+        assertSame(block, arena.allocate(2000));
+        assertEquals(0, arena.getQuarantinedBytes());
+    }
+
+    /** Tests that the arena does not reserve more than its budget, and releases empty slabs for other sizes. */
+    @Test
+    public void testArenaBudget()
+    {
+        ByteBufferArena arena = new ByteBufferArena(1 << 14, 1024, 1 << 14, 1 << 13);
+        arena.setReclaimDelay(0);
+
+        ByteBufferArena.Block a = arena.allocate(1 << 13);
+        ByteBufferArena.Block b = arena.allocate(1 << 13);
+        assertNotNull(a);
+        assertNotNull(b);
+        assertNull(arena.allocate(1024));
+        assertEquals(1, arena.getNumFailedAllocations());
+
+        arena.release(a, null);
+        assertNotNull(arena.allocate(1024));
+        assertTrue(arena.getReservedBytes() <= arena.getBudget());
+    }
+
+    /** Tests that a payload is moved off the heap, remains readable, and that eviction is counted. */
+    @Test
+    public void testOffHeapEntries()
+    {
+        OffHeapMemoryCache cache = new OffHeapMemoryCache(1 << 14, 1 << 15);
+
+        Payload p = new Payload(3000, (byte) 7);
+        assertTrue(cache.add("a", p));
+        assertTrue(p.data.isDirect());
+        assertEquals(7, p.data.get(2999));
+        assertEquals(4096, cache.getUsedCapacity());
+        assertSame(p, cache.getObject("a"));
+        assertNull(cache.getObject("b"));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+
+        // Objects that are not OffHeapCacheable are kept on the heap.
+        assertTrue(cache.add("s", "string", 100));
+        assertEquals(4096 + 100, cache.getUsedCapacity());
+
+        for (int i = 0; i < 10; i++)
+        {
+            assertTrue(cache.add(i, new Payload(4000, (byte) i)));
+        }
+
+        assertTrue(cache.getUsedCapacity() <= cache.getCapacity());
+        assertTrue(cache.getEvictionCount() > 0);
+        assertEquals(9, ((Payload) cache.getObject(9)).data.get(0));
+        assertFalse(cache.getPerformanceStatistics().isEmpty());
+    }
+}
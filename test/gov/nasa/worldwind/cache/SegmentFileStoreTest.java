@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+
+package gov.nasa.worldwind.cache;
+
+import gov.nasa.worldwind.util.WWIO;
+import org.junit.*;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.*;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+@RunWith(JUnit4.class)
+public class SegmentFileStoreTest
+{
+    private File dir;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        this.dir = File.createTempFile("SegmentFileStoreTest", "");
+        assertTrue(this.dir.delete());
+        assertTrue(this.dir.mkdirs());
+    }
+
+    @After
+    public void tearDown() throws IOException
+    {
+        WWIO.deleteDirectory(this.dir);
+        //noinspection ResultOfMethodCallIgnored
+        this.dir.delete();
+    }
+
+    /** Tests that entries survive reopening the store, including after the index has grown and been replaced. */
+    @Test
+    public void testPutGetReopen() throws IOException
+    {
+        SegmentStore store = new SegmentStore(this.dir, 1 << 16);
+        for (int i = 0; i < 5000; i++)
+        {
+            assertTrue(store.put("tiles/" + i + ".bil", makeData(i), 1000 + i));
+        }
+
+        assertTrue(store.put("tiles/7.bil", makeData(-7), 5000)); // replace
+        assertTrue(store.remove("tiles/8.bil"));
+        assertEquals(4999, store.getNumEntries());
+        assertTrue(store.getNumSegments() > 1);
+        store.close();
+
+        store = new SegmentStore(this.dir, 1 << 16);
+        assertEquals(4999, store.getNumEntries());
+        assertEquals(makeData(3), store.get("tiles/3.bil"));
+        assertEquals(makeData(-7), store.get("tiles/7.bil"));
+        assertNull(store.get("tiles/8.bil"));
+        assertEquals(1003, store.getTimestamp("tiles/3.bil"));
+        assertEquals(1111, store.listNames("tiles/4").size()); // 4, 40-49, 400-499 and 4000-4999
+        store.close();
+    }
+
+    /** Tests that the index is rebuilt from the segments when it is missing. */
+    @Test
+    public void testRebuildIndex() throws IOException
+    {
+        SegmentStore store = new SegmentStore(this.dir, 1 << 16);
+        for (int i = 0; i < 100; i++)
+        {
+            store.put("a/" + i, makeData(i), i);
+        }
+        store.put("a/5", makeData(55), 200);
+        store.close();
+
+        for (File file : this.dir.listFiles())
+        {
+            if (file.getName().startsWith("index"))
+                assertTrue(file.delete());
+        }
+
+        store = new SegmentStore(this.dir, 1 << 16);
+        assertEquals(100, store.getNumEntries());
+        assertEquals(makeData(55), store.get("a/5"));
+        assertEquals(makeData(99), store.get("a/99"));
+        store.close();
+    }
+
+    /** Tests that compaction deletes mostly dead segments and keeps their live entries. */
+    @Test
+    public void testCompactAndExpire() throws IOException
+    {
+        SegmentStore store = new SegmentStore(this.dir, 1 << 16);
+        for (int i = 0; i < 2000; i++)
+        {
+            store.put("b/" + i, makeData(i), i);
+        }
+
+        int numSegments = store.getNumSegments();
+        assertEquals(1500, store.removeOlderThan(1500));
+        assertTrue(store.compact(0.5) > 0);
+        assertTrue(store.getNumSegments() < numSegments);
+        assertEquals(500, store.getNumEntries());
+        assertTrue(store.getUsedBytes() - store.getLiveBytes() < (1 << 16)); // at most the boundary segment
+
+        for (int i = 1500; i < 2000; i++)
+        {
+            assertEquals(makeData(i), store.get("b/" + i));
+        }
+        store.close();
+    }
+
+    /** Tests that a committed tile is found, read, expired and removed through the file store. */
+    @Test
+    public void testCommitAndFindFile() throws IOException
+    {
+        SegmentFileStore fileStore = new SegmentFileStore(this.dir);
+        String name = "Earth/Layer/3/12/12_40.dds";
+
+        File file = fileStore.newFile(name);
+        WWIO.saveBuffer(makeData(42), file);
+        assertTrue(fileStore.findFile(name, false).getProtocol().equals("file"));
+
+        assertTrue(fileStore.commitFile(name));
+        assertFalse(file.exists());
+        assertTrue(fileStore.containsFile(name));
+
+        URL url = fileStore.findFile(name, false);
+        assertEquals(SegmentFileStore.STORE_URL_PROTOCOL, url.getProtocol());
+        assertEquals(makeData(42), WWIO.readURLContentToBuffer(url));
+        assertFalse(WWIO.isFileOutOfDate(url, System.currentTimeMillis() - 60000));
+        assertTrue(WWIO.isFileOutOfDate(url, System.currentTimeMillis() + 1000));
+
+        String[] names = fileStore.listAllFileNames("Earth", new FileStoreFilter()
+        {
+            public boolean accept(FileStore fileStore, String fileName)
+            {
+                return true;
+            }
+        });
+        assertEquals(Arrays.asList(name), Arrays.asList(names));
+
+        fileStore.removeFile(url);
+        assertNull(fileStore.findFile(name, false));
+        fileStore.dispose();
+    }
+
+    private static ByteBuffer makeData(int seed)
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(100 + Math.abs(seed % 50));
+        Random random = new Random(seed);
+        while (buffer.hasRemaining())
+        {
+            buffer.put((byte) random.nextInt());
+        }
+        buffer.flip();
+        return buffer;
+    }
+}
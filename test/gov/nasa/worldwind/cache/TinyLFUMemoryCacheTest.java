@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+
+package gov.nasa.worldwind.cache;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import static org.junit.Assert.*;
+
+@RunWith(JUnit4.class)
+public class TinyLFUMemoryCacheTest
+{
+    /** Tests that entries pass through the window into the main cache and can be found and removed. */
+    @Test
+    public void testAddGetRemove()
+    {
+        TinyLFUMemoryCache cache = new TinyLFUMemoryCache(new BasicMemoryCache(800, 1000), 0.1, 64);
+
+        assertTrue(cache.add("a", "A", 10));
+        assertTrue(cache.add("b", "B", 10));
+        assertEquals("A", cache.getObject("a"));
+        assertTrue(cache.contains("b"));
+        assertEquals(2, cache.getNumObjects());
+
+        cache.remove("a");
+        assertNull(cache.getObject("a"));
+        assertFalse(cache.contains("a"));
+        assertEquals(1, cache.getNumObjects());
+
+        cache.clear();
+        assertEquals(0, cache.getNumObjects());
+        assertEquals(0, cache.getUsedCapacity());
+    }
+
+    /** Tests that a scan of keys seen once does not displace keys that are looked up repeatedly. */
+    @Test
+    public void testScanResistance()
+    {
+        TinyLFUMemoryCache cache = new TinyLFUMemoryCache(new BasicMemoryCache(1000, 1000), 0.1, 256);
+        cache.setCountInterval(0);
+
+        for (int round = 0; round < 5; round++)
+        {
+            for (int i = 0; i < 50; i++)
+            {
+                String key = "hot" + i;
+                if (cache.getObject(key) == null)
+                    cache.add(key, key, 10);
+            }
+        }
+
+        for (int i = 0; i < 1000; i++)
+        {
+            String key = "scan" + i;
+            if (cache.getObject(key) == null)
+                cache.add(key, key, 10);
+        }
+
+        int resident = 0;
+        for (int i = 0; i < 50; i++)
+        {
+            if (cache.contains("hot" + i))
+                resident++;
+        }
+
+        assertEquals(50, resident);
+        assertTrue(cache.getUsedCapacity() <= cache.getCapacity());
+        assertTrue(cache.getRejectedCount() > 0);
+    }
+
+    /**
+     * Tests that a candidate larger than a single victim is admitted only after beating every victim needed to make
+     * room for it, and that a rejected candidate evicts nothing.
+     */
+    @Test
+    public void testCandidateLargerThanVictim()
+    {
+        TinyLFUMemoryCache cache = new TinyLFUMemoryCache(new BasicMemoryCache(500, 1000), 0, 256);
+        cache.setCountInterval(0);
+        cache.random.setSeed(1);
+
+        // Thirteen frequently used entries of 60 units, and forty unused entries of 5 units.
+        for (int i = 0; i < 13; i++)
+        {
+            assertTrue(cache.add("hot" + i, "hot", 60));
+        }
+        for (int i = 0; i < 40; i++)
+        {
+            assertTrue(cache.add("cold" + i, "cold", 5));
+        }
+        for (int round = 0; round < 5; round++)
+        {
+            for (int i = 0; i < 13; i++)
+            {
+                assertNotNull(cache.getObject("hot" + i));
+            }
+        }
+        assertEquals(980, cache.getUsedCapacity());
+
+        // A candidate used more than the small entries displaces as many of them as it needs.
+        cache.getObject("warm");
+        cache.getObject("warm");
+        assertTrue(cache.add("warm", "warm", 60));
+        assertTrue(cache.contains("warm"));
+        assertEquals(1000, cache.getUsedCapacity());
+        assertEquals(13 + 1 + 32, cache.getNumObjects());
+
+        // A candidate that would also need a frequently used entry's room is rejected without evicting anything.
+        for (int i = 0; i < 3; i++)
+        {
+            cache.getObject("large");
+        }
+        assertFalse(cache.add("large", "large", 300));
+        assertFalse(cache.contains("large"));
+        assertEquals(13 + 1 + 32, cache.getNumObjects());
+        for (int i = 0; i < 13; i++)
+        {
+            assertTrue(cache.contains("hot" + i));
+        }
+    }
+}
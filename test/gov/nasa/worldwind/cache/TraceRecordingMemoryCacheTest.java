@@ -0,0 +1,56 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+
+package gov.nasa.worldwind.cache;
+
+import gov.nasa.worldwind.util.TileKey;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.StringWriter;
+
+import static org.junit.Assert.*;
+
+@RunWith(JUnit4.class)
+public class TraceRecordingMemoryCacheTest
+{
+    /**
+     * Tests that tile lookups are recorded once per interval in the replay benchmark's trace format, and that other
+     * lookups are passed to the wrapped cache without being recorded.
+     */
+    @Test
+    public void testRecordLookups() throws Exception
+    {
+        StringWriter writer = new StringWriter();
+        TraceRecordingMemoryCache cache = new TraceRecordingMemoryCache(new BasicMemoryCache(80, 100), writer);
+        cache.setRecordInterval(60000);
+
+        TileKey key = new TileKey(3, 5, 7, "Earth/Blue Marble");
+        assertNull(cache.getObject(key));
+        assertTrue(cache.add(key, "tile", 10));
+        assertEquals("tile", cache.getObject(key));
+        assertNull(cache.getObject("not a tile"));
+        assertNull(cache.getObject(new TileKey(4, 10, 14, "Earth/Blue Marble")));
+
+        String[] lines = writer.toString().trim().split("\\r?\\n");
+        assertEquals(2, lines.length);
+        assertArrayEquals(new String[] {"3", "5", "7", "Earth/Blue_Marble"}, lines[0].split("[\\s,]+"));
+        assertArrayEquals(new String[] {"4", "10", "14", "Earth/Blue_Marble"}, lines[1].split("[\\s,]+"));
+
+        // With no interval every lookup is recorded.
+        cache.setRecordInterval(0);
+        cache.getObject(key);
+        cache.getObject(key);
+        assertEquals(4, writer.toString().trim().split("\\r?\\n").length);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNullWriter()
+    {
+        new TraceRecordingMemoryCache(new BasicMemoryCache(80, 100), null);
+    }
+}
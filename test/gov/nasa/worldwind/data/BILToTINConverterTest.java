@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+
+package gov.nasa.worldwind.data;
+
+import gov.nasa.worldwind.geom.*;
+import gov.nasa.worldwind.globes.Earth;
+import gov.nasa.worldwind.terrain.QuantizedMeshTile;
+import gov.nasa.worldwind.util.BufferWrapper;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.nio.ShortBuffer;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+@RunWith(JUnit4.class)
+public class BILToTINConverterTest
+{
+    private static final int WIDTH = 33;
+    private static final int HEIGHT = 25;
+    private static final double MAX_ERROR = 2;
+
+    /**
+     * Tests that a tile's edge index lists hold exactly the vertices on each edge, with the grid's first row on the
+     * north edge.
+     */
+    @Test
+    public void testEdgeIndices()
+    {
+        QuantizedMeshTile mesh = BILToTINConverter.createMesh(createHeights(), WIDTH, HEIGHT, MAX_ERROR,
+            Integer.MAX_VALUE);
+
+        assertEquals("West", edgeVertices(mesh.getU(), 0), sorted(mesh.getWestIndices()));
+        assertEquals("East", edgeVertices(mesh.getU(), QuantizedMeshTile.MAX_VALUE), sorted(mesh.getEastIndices()));
+        assertEquals("South", edgeVertices(mesh.getV(), 0), sorted(mesh.getSouthIndices()));
+        assertEquals("North", edgeVertices(mesh.getV(), QuantizedMeshTile.MAX_VALUE), sorted(mesh.getNorthIndices()));
+
+        // The grid's northwest corner is its first sample.
+        double[] heights = createHeights();
+        int northwest = -1;
+        for (int i : mesh.getNorthIndices())
+        {
+            if (mesh.getU()[i] == 0)
+                northwest = i;
+        }
+        assertTrue("Northwest corner", northwest >= 0);
+        assertEquals("Northwest height", heights[0], mesh.getHeight(northwest),
+            (mesh.getMaxHeight() - mesh.getMinHeight()) / QuantizedMeshTile.MAX_VALUE);
+    }
+
+    /** Tests that every triangle of a tile is counterclockwise in (u, v). */
+    @Test
+    public void testWinding()
+    {
+        QuantizedMeshTile mesh = BILToTINConverter.createMesh(createHeights(), WIDTH, HEIGHT, MAX_ERROR,
+            Integer.MAX_VALUE);
+
+        int[] u = mesh.getU();
+        int[] v = mesh.getV();
+        int[] indices = mesh.getIndices();
+        for (int t = 0; t < indices.length; t += 3)
+        {
+            int a = indices[t], b = indices[t + 1], c = indices[t + 2];
+            long cross = (long) (u[b] - u[a]) * (v[c] - v[a]) - (long) (v[b] - v[a]) * (u[c] - u[a]);
+            assertTrue("Triangle " + t / 3, cross > 0);
+        }
+    }
+
+    /** Tests that a tile has no more than the requested number of vertices. */
+    @Test
+    public void testMaxVertices()
+    {
+        QuantizedMeshTile mesh = BILToTINConverter.createMesh(createHeights(), WIDTH, HEIGHT, 0, 50);
+        assertEquals("Vertices", 50, mesh.getVertexCount());
+    }
+
+    /** Tests that missing samples are replaced by the lowest valid height, or by zero if no height is valid. */
+    @Test
+    public void testReadHeightsMissingData()
+    {
+        short[] samples = new short[] {-9999, 12, 7, -9999, 30};
+        BufferWrapper buffer = new BufferWrapper.ShortBufferWrapper(ShortBuffer.wrap(samples));
+        double[] heights = BILToTINConverter.readHeights(buffer, samples.length, -9999d);
+        assertTrue(Arrays.equals(new double[] {7, 12, 7, 7, 30}, heights));
+
+        buffer = new BufferWrapper.ShortBufferWrapper(ShortBuffer.wrap(new short[] {-9999, -9999}));
+        heights = BILToTINConverter.readHeights(buffer, 2, -9999d);
+        assertTrue(Arrays.equals(new double[] {0, 0}, heights));
+    }
+
+    /** Tests that a tile's bounding sphere contains each of its vertices. */
+    @Test
+    public void testBoundingValues()
+    {
+        QuantizedMeshTile mesh = BILToTINConverter.createMesh(createHeights(), WIDTH, HEIGHT, MAX_ERROR,
+            Integer.MAX_VALUE);
+        Sector sector = Sector.fromDegrees(40, 41, -105, -104);
+        Earth globe = new Earth();
+        BILToTINConverter.computeBoundingValues(mesh, sector, globe);
+
+        Vec4 center = mesh.getBoundingSphereCenter();
+        double radius = mesh.getBoundingSphereRadius();
+        assertNotNull("Center", mesh.getCenter());
+        assertNotNull("Horizon occlusion point", mesh.getHorizonOcclusionPoint());
+        for (int i = 0; i < mesh.getVertexCount(); i++)
+        {
+            double lat = sector.getMinLatitude().degrees
+                + sector.getDeltaLatDegrees() * mesh.getV()[i] / QuantizedMeshTile.MAX_VALUE;
+            double lon = sector.getMinLongitude().degrees
+                + sector.getDeltaLonDegrees() * mesh.getU()[i] / QuantizedMeshTile.MAX_VALUE;
+            Vec4 point = BILToTINConverter.toECEF(globe.computePointFromPosition(Angle.fromDegrees(lat),
+                Angle.fromDegrees(lon), mesh.getHeight(i)));
+            assertTrue("Vertex " + i, point.distanceTo3(center) <= radius + 1e-6);
+        }
+    }
+
+    private static List<Integer> edgeVertices(int[] coords, int value)
+    {
+        List<Integer> vertices = new ArrayList<Integer>();
+        for (int i = 0; i < coords.length; i++)
+        {
+            if (coords[i] == value)
+                vertices.add(i);
+        }
+
+        return vertices;
+    }
+
+    private static List<Integer> sorted(int[] indices)
+    {
+        List<Integer> list = new ArrayList<Integer>();
+        for (int i : indices)
+        {
+            list.add(i);
+        }
+        Collections.sort(list);
+
+        return list;
+    }
+
+    private static double[] createHeights()
+    {
+        double[] heights = new double[WIDTH * HEIGHT];
+        for (int y = 0; y < HEIGHT; y++)
+        {
+            for (int x = 0; x < WIDTH; x++)
+            {
+                heights[y * WIDTH + x] = 1500 + 200 * Math.sin(x / 5d) * Math.cos(y / 4d) + 3 * y;
+            }
+        }
+
+        return heights;
+    }
+}
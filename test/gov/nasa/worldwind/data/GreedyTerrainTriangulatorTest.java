@@ -0,0 +1,180 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+
+package gov.nasa.worldwind.data;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+@RunWith(JUnit4.class)
+public class GreedyTerrainTriangulatorTest
+{
+    private static final int WIDTH = 33;
+    private static final int HEIGHT = 25;
+
+    /** Tests that a plane is triangulated by the grid's corners alone. */
+    @Test
+    public void testPlane()
+    {
+        double[] heights = new double[WIDTH * HEIGHT];
+        for (int y = 0; y < HEIGHT; y++)
+        {
+            for (int x = 0; x < WIDTH; x++)
+            {
+                heights[y * WIDTH + x] = 100 + 2 * x - 3 * y;
+            }
+        }
+
+        GreedyTerrainTriangulator triangulator = new GreedyTerrainTriangulator(heights, WIDTH, HEIGHT);
+        // Interpolating a plane can differ from it by rounding error.
+        triangulator.run(1e-9, Integer.MAX_VALUE);
+
+        assertEquals("Error", 0, triangulator.getMaxError(), 1e-9);
+        assertEquals("Vertices", 4, triangulator.getVertexCount());
+        assertEquals("Triangles", 2, triangulator.getTriangles().length / 3);
+        assertCovers(triangulator);
+    }
+
+    /**
+     * Tests that every grid point is within the requested error of the triangulation, and that the triangles cover the
+     * grid without overlapping.
+     */
+    @Test
+    public void testErrorBound()
+    {
+        double[] heights = createHeights();
+        double[] maxErrors = new double[] {10, 1, 0};
+        for (double maxError : maxErrors)
+        {
+            GreedyTerrainTriangulator triangulator = new GreedyTerrainTriangulator(heights, WIDTH, HEIGHT);
+            triangulator.run(maxError, Integer.MAX_VALUE);
+
+            assertTrue("Reported error " + maxError, triangulator.getMaxError() <= maxError);
+            assertCovers(triangulator);
+
+            double[] interpolated = interpolate(triangulator);
+            for (int i = 0; i < heights.length; i++)
+            {
+                assertEquals("Height " + i + " at error " + maxError, heights[i], interpolated[i], maxError + 1e-9);
+            }
+        }
+    }
+
+    /** Tests that the triangulation stops at the requested number of vertices, and always includes the corners. */
+    @Test
+    public void testVertexLimit()
+    {
+        GreedyTerrainTriangulator triangulator = new GreedyTerrainTriangulator(createHeights(), WIDTH, HEIGHT);
+        triangulator.run(0, 20);
+
+        assertEquals("Vertices", 20, triangulator.getVertexCount());
+        assertTrue("Error", triangulator.getMaxError() > 0);
+        assertCovers(triangulator);
+
+        int[] vertices = triangulator.getVertices();
+        int[][] corners = new int[][] {{0, 0}, {WIDTH - 1, 0}, {0, HEIGHT - 1}, {WIDTH - 1, HEIGHT - 1}};
+        for (int[] corner : corners)
+        {
+            boolean found = false;
+            for (int i = 0; i < vertices.length; i += 2)
+            {
+                found |= vertices[i] == corner[0] && vertices[i + 1] == corner[1];
+            }
+            assertTrue("Corner " + corner[0] + ", " + corner[1], found);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTooFewHeights()
+    {
+        new GreedyTerrainTriangulator(new double[WIDTH * HEIGHT - 1], WIDTH, HEIGHT);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTooNarrow()
+    {
+        new GreedyTerrainTriangulator(new double[HEIGHT], 1, HEIGHT);
+    }
+
+    // Asserts that the triangles are non-degenerate and their areas sum to the grid's, which with every grid point
+    // within some triangle means they tile the grid.
+    private static void assertCovers(GreedyTerrainTriangulator triangulator)
+    {
+        int[] vertices = triangulator.getVertices();
+        int[] triangles = triangulator.getTriangles();
+
+        long twiceArea = 0;
+        for (int t = 0; t < triangles.length; t += 3)
+        {
+            long cross = cross(vertices, triangles[t], triangles[t + 1], triangles[t + 2]);
+            assertTrue("Degenerate triangle " + t / 3, cross != 0);
+            twiceArea += Math.abs(cross);
+        }
+
+        assertEquals("Area", 2L * (WIDTH - 1) * (HEIGHT - 1), twiceArea);
+    }
+
+    // Interpolates the triangulation's height at each grid point.
+    private static double[] interpolate(GreedyTerrainTriangulator triangulator)
+    {
+        double[] heights = triangulator.heights;
+        int[] vertices = triangulator.getVertices();
+        int[] triangles = triangulator.getTriangles();
+
+        double[] interpolated = new double[WIDTH * HEIGHT];
+        Arrays.fill(interpolated, Double.NaN);
+        for (int t = 0; t < triangles.length; t += 3)
+        {
+            int a = triangles[t], b = triangles[t + 1], c = triangles[t + 2];
+            int ax = vertices[2 * a], ay = vertices[2 * a + 1];
+            int bx = vertices[2 * b], by = vertices[2 * b + 1];
+            int cx = vertices[2 * c], cy = vertices[2 * c + 1];
+            double area = cross(vertices, a, b, c);
+
+            for (int y = Math.min(ay, Math.min(by, cy)); y <= Math.max(ay, Math.max(by, cy)); y++)
+            {
+                for (int x = Math.min(ax, Math.min(bx, cx)); x <= Math.max(ax, Math.max(bx, cx)); x++)
+                {
+                    double wa = ((long) (bx - x) * (cy - y) - (long) (by - y) * (cx - x)) / area;
+                    double wb = ((long) (cx - x) * (ay - y) - (long) (cy - y) * (ax - x)) / area;
+                    double wc = 1 - wa - wb;
+                    if (wa < 0 || wb < 0 || wc < -1e-12)
+                        continue;
+
+                    interpolated[y * WIDTH + x] = wa * heights[ay * WIDTH + ax] + wb * heights[by * WIDTH + bx]
+                        + wc * heights[cy * WIDTH + cx];
+                }
+            }
+        }
+
+        return interpolated;
+    }
+
+    private static long cross(int[] vertices, int a, int b, int c)
+    {
+        return (long) (vertices[2 * b] - vertices[2 * a]) * (vertices[2 * c + 1] - vertices[2 * a + 1])
+            - (long) (vertices[2 * b + 1] - vertices[2 * a + 1]) * (vertices[2 * c] - vertices[2 * a]);
+    }
+
+    private static double[] createHeights()
+    {
+        double[] heights = new double[WIDTH * HEIGHT];
+        for (int y = 0; y < HEIGHT; y++)
+        {
+            for (int x = 0; x < WIDTH; x++)
+            {
+                heights[y * WIDTH + x] = 200 * Math.sin(x / 5d) * Math.cos(y / 4d) + 0.5 * x * y;
+            }
+        }
+
+        return heights;
+    }
+}
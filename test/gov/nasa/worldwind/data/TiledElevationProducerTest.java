@@ -0,0 +1,227 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+
+package gov.nasa.worldwind.data;
+
+import gov.nasa.worldwind.avlist.*;
+import gov.nasa.worldwind.geom.Sector;
+import gov.nasa.worldwind.util.WWIO;
+import org.junit.*;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+@RunWith(JUnit4.class)
+public class TiledElevationProducerTest
+{
+    private File storeLocation;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        this.storeLocation = File.createTempFile("TiledElevationProducerTest", "");
+        assertTrue("Cannot create store location", this.storeLocation.delete() && this.storeLocation.mkdirs());
+    }
+
+    @After
+    public void tearDown() throws IOException
+    {
+        WWIO.deleteDirectory(this.storeLocation);
+    }
+
+    /** Tests that producing on several threads installs the same tiles as producing on the calling thread. */
+    @Test
+    public void testParallelProduction() throws Exception
+    {
+        TiledRasterProducer sequential = this.produce("sequential", 1);
+        TiledRasterProducer parallel = this.produce("parallel", 4);
+
+        Map<String, byte[]> expected = readFiles(new File(this.storeLocation, "sequential"));
+        Map<String, byte[]> actual = readFiles(new File(this.storeLocation, "parallel"));
+        assertTrue("No tiles", expected.size() > 1);
+        assertEquals("Files", expected.keySet(), actual.keySet());
+        for (Map.Entry<String, byte[]> entry : expected.entrySet())
+        {
+            // The configuration files differ in their cache names.
+            if (entry.getKey().endsWith(".xml"))
+                continue;
+
+            assertArrayEquals(entry.getKey(), entry.getValue(), actual.get(entry.getKey()));
+        }
+
+        List<TiledRasterProducer.LevelStatistics> expectedStatistics = sequential.getLevelStatistics();
+        List<TiledRasterProducer.LevelStatistics> actualStatistics = parallel.getLevelStatistics();
+        assertEquals("Level count", expectedStatistics.size(), actualStatistics.size());
+        for (int i = 0; i < expectedStatistics.size(); i++)
+        {
+            assertEquals("Tile count " + i, expectedStatistics.get(i).getTileCount(),
+                actualStatistics.get(i).getTileCount());
+            assertEquals("Byte count " + i, expectedStatistics.get(i).getByteCount(),
+                actualStatistics.get(i).getByteCount());
+            assertTrue("Tiles per second " + i, actualStatistics.get(i).getTilesPerSecond() > 0);
+        }
+    }
+
+    /**
+     * Tests that incremental production after a source changes installs the same tiles as producing all tiles from
+     * the changed sources, and that a dry run reports the affected tiles without installing them.
+     */
+    @Test
+    public void testIncrementalProduction() throws Exception
+    {
+        File sourceDirectory = new File(this.storeLocation, "sources");
+        File north = writeSource(sourceDirectory, "north.bil", Sector.fromDegrees(10.5, 11, 20, 21), 0);
+        File south = writeSource(sourceDirectory, "south.bil", Sector.fromDegrees(10, 10.5, 20, 21), 0);
+        List<File> sources = Arrays.asList(north, south);
+
+        TiledRasterProducer initial = this.produceFromFiles("incremental", sources, true, false);
+        assertNull("Initial footprints", initial.getChangedFootprints());
+        long tileCount = initial.getAffectedTileCount();
+
+        // Change the southern source, and make sure its modification time changes.
+        long lastModified = south.lastModified();
+        writeSource(sourceDirectory, "south.bil", Sector.fromDegrees(10, 10.5, 20, 21), 100);
+        assertTrue("Cannot set modification time", south.setLastModified(lastModified + 10000));
+
+        Map<String, byte[]> before = readFiles(new File(this.storeLocation, "incremental"));
+        TiledRasterProducer dryRun = this.produceFromFiles("incremental", sources, true, true);
+        assertEquals("Dry run footprints", 1, dryRun.getChangedFootprints().size());
+        assertTrue("Dry run tile count", dryRun.getAffectedTileCount() > 0
+            && dryRun.getAffectedTileCount() < tileCount);
+        Map<String, byte[]> afterDryRun = readFiles(new File(this.storeLocation, "incremental"));
+        assertEquals("Dry run files", before.keySet(), afterDryRun.keySet());
+        for (Map.Entry<String, byte[]> entry : before.entrySet())
+        {
+            assertArrayEquals("Dry run " + entry.getKey(), entry.getValue(), afterDryRun.get(entry.getKey()));
+        }
+
+        TiledRasterProducer incremental = this.produceFromFiles("incremental", sources, true, false);
+        assertEquals("Affected tile count", dryRun.getAffectedTileCount(), incremental.getAffectedTileCount());
+        this.produceFromFiles("full", sources, false, false);
+
+        Map<String, byte[]> expected = readFiles(new File(this.storeLocation, "full"));
+        Map<String, byte[]> actual = readFiles(new File(this.storeLocation, "incremental"));
+        assertEquals("Files", expected.keySet(), actual.keySet());
+        for (Map.Entry<String, byte[]> entry : expected.entrySet())
+        {
+            if (entry.getKey().endsWith(".xml"))
+                continue;
+
+            assertArrayEquals(entry.getKey(), entry.getValue(), actual.get(entry.getKey()));
+        }
+
+        // Without further changes, no tiles are affected.
+        TiledRasterProducer unchanged = this.produceFromFiles("incremental", sources, true, true);
+        assertEquals("Unchanged tile count", 0, unchanged.getAffectedTileCount());
+    }
+
+    private TiledRasterProducer produceFromFiles(String name, List<File> sources, boolean incremental,
+        boolean dryRun) throws Exception
+    {
+        AVList storeParams = new AVListImpl();
+        storeParams.setValue(AVKey.FILE_STORE_LOCATION, this.storeLocation.getPath());
+        storeParams.setValue(AVKey.DATA_CACHE_NAME, name);
+        storeParams.setValue(AVKey.DATASET_NAME, "Elevations");
+        storeParams.setValue(AVKey.TILE_WIDTH, 64);
+        storeParams.setValue(AVKey.TILE_HEIGHT, 64);
+        storeParams.setValue(AVKey.TILED_RASTER_PRODUCER_INCREMENTAL, incremental);
+        storeParams.setValue(AVKey.TILED_RASTER_PRODUCER_DRY_RUN, dryRun);
+
+        TiledElevationProducer producer = new TiledElevationProducer();
+        producer.setStoreParameters(storeParams);
+        producer.offerAllDataSources(sources);
+        producer.startProduction();
+
+        return producer;
+    }
+
+    private static File writeSource(File directory, String name, Sector sector, double offset) throws IOException
+    {
+        AVList params = new AVListImpl();
+        params.setValue(AVKey.DATA_TYPE, AVKey.FLOAT32);
+        params.setValue(AVKey.MISSING_DATA_SIGNAL, -9999d);
+        params.setValue(AVKey.PIXEL_FORMAT, AVKey.ELEVATION);
+
+        int width = 512;
+        int height = 256;
+        ByteBufferRaster raster = new ByteBufferRaster(width, height, sector, params);
+        for (int y = 0; y < height; y++)
+        {
+            for (int x = 0; x < width; x++)
+            {
+                double lat = sector.getMaxLatitude().degrees - y * sector.getDeltaLatDegrees() / (height - 1);
+                double lon = sector.getMinLongitude().degrees + x * sector.getDeltaLonDegrees() / (width - 1);
+                raster.setDoubleAtPosition(y, x, offset + 1000 * Math.sin(lon * 20) * Math.cos(lat * 15));
+            }
+        }
+
+        File file = new File(directory, name);
+        assertTrue("Cannot create source directory", directory.exists() || directory.mkdirs());
+        new BILRasterWriter().write(raster, "bil", file);
+
+        return file;
+    }
+
+    private TiledRasterProducer produce(String name, int threadCount) throws Exception
+    {
+        AVList params = new AVListImpl();
+        params.setValue(AVKey.DATA_TYPE, AVKey.FLOAT32);
+        params.setValue(AVKey.MISSING_DATA_SIGNAL, -9999d);
+        params.setValue(AVKey.PIXEL_FORMAT, AVKey.ELEVATION);
+
+        int size = 2048;
+        ByteBufferRaster source = new ByteBufferRaster(size, size, Sector.fromDegrees(10, 11, 20, 21), params);
+        for (int y = 0; y < size; y++)
+        {
+            for (int x = 0; x < size; x++)
+            {
+                source.setDoubleAtPosition(y, x, 1000 * Math.sin(x * 0.03) * Math.cos(y * 0.02));
+            }
+        }
+
+        AVList storeParams = new AVListImpl();
+        storeParams.setValue(AVKey.FILE_STORE_LOCATION, this.storeLocation.getPath());
+        storeParams.setValue(AVKey.DATA_CACHE_NAME, name);
+        storeParams.setValue(AVKey.DATASET_NAME, "Elevations");
+        storeParams.setValue(AVKey.TILED_RASTER_PRODUCER_THREAD_COUNT, threadCount);
+
+        TiledElevationProducer producer = new TiledElevationProducer();
+        producer.setStoreParameters(storeParams);
+        producer.offerDataSource(source, null);
+        producer.startProduction();
+
+        return producer;
+    }
+
+    private static Map<String, byte[]> readFiles(File directory) throws IOException
+    {
+        Map<String, byte[]> files = new TreeMap<String, byte[]>();
+        readFiles(directory, "", files);
+
+        return files;
+    }
+
+    private static void readFiles(File directory, String path, Map<String, byte[]> files) throws IOException
+    {
+        File[] children = directory.listFiles();
+        if (children == null)
+            return;
+
+        for (File child : children)
+        {
+            String childPath = path + "/" + child.getName();
+            if (child.isDirectory())
+                readFiles(child, childPath, files);
+            else
+                files.put(childPath, Files.readAllBytes(child.toPath()));
+        }
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+
+package gov.nasa.worldwind.data;
+
+import gov.nasa.worldwind.avlist.*;
+import gov.nasa.worldwind.geom.Sector;
+import gov.nasa.worldwind.util.WWIO;
+import org.junit.*;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.*;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+@RunWith(JUnit4.class)
+public class WindowedDataRasterReaderTest
+{
+    private static final String GEOTIFF_INT16_PATH = "testData/elev16_wgs84_512x512.tif";
+    private static final String GEOTIFF_FLOAT32_PATH = "testData/sba_elev32_wgs84_512x512.tif";
+
+    private File tempDirectory;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        this.tempDirectory = File.createTempFile("WindowedDataRasterReaderTest", "");
+        assertTrue("Cannot create directory", this.tempDirectory.delete() && this.tempDirectory.mkdirs());
+    }
+
+    @After
+    public void tearDown() throws IOException
+    {
+        WWIO.deleteDirectory(this.tempDirectory);
+    }
+
+    @Test
+    public void testGeotiffInt16Windows() throws Exception
+    {
+        this.assertWindowsMatch(new File(GEOTIFF_INT16_PATH), new GeotiffRasterReader());
+    }
+
+    @Test
+    public void testGeotiffFloat32Windows() throws Exception
+    {
+        this.assertWindowsMatch(new File(GEOTIFF_FLOAT32_PATH), new GeotiffRasterReader());
+    }
+
+    @Test
+    public void testBILWindows() throws Exception
+    {
+        // Write a GeoTIFF's elevations as a BIL file with world files.
+        DataRaster[] rasters = new GeotiffRasterReader().read(new File(GEOTIFF_FLOAT32_PATH), null);
+        File file = new File(this.tempDirectory, "elevations.bil");
+        new BILRasterWriter().write(rasters[0], "bil", file);
+
+        this.assertWindowsMatch(file, new BILRasterReader());
+    }
+
+    @Test
+    public void testWindowOutsideSource() throws Exception
+    {
+        WindowedDataRasterReader reader = new GeotiffRasterReader();
+        assertNull(reader.readWindow(new File(GEOTIFF_INT16_PATH), Sector.fromDegrees(-10, -9, -10, -9), null));
+    }
+
+    /**
+     * Tests that a cached raster drawing and creating sub-rasters from windows of its source gives the same results as
+     * drawing from the whole source.
+     */
+    private void assertWindowsMatch(File file, WindowedDataRasterReader reader) throws Exception
+    {
+        assertTrue("Cannot read windows of " + file, reader.canReadWindow(file, null));
+
+        CachedDataRaster windowed = new CachedDataRaster(file, null, reader, null);
+        CachedDataRaster whole = new CachedDataRaster(file, null, reader, null);
+        whole.setWindowedReadEnabled(false);
+
+        Sector sector = windowed.getSector();
+        Random random = new Random(5);
+        for (int i = 0; i < 20; i++)
+        {
+            double lat = sector.getMinLatitude().degrees + random.nextDouble() * sector.getDeltaLatDegrees();
+            double lon = sector.getMinLongitude().degrees + random.nextDouble() * sector.getDeltaLonDegrees();
+            double size = 0.3 * random.nextDouble() * sector.getDeltaLatDegrees();
+            Sector canvasSector = Sector.fromDegrees(lat, lat + size, lon, lon + size);
+
+            DataRaster expected = createCanvas(canvasSector);
+            whole.drawOnTo(expected);
+            DataRaster actual = createCanvas(canvasSector);
+            windowed.drawOnTo(actual);
+            assertRastersEqual("Canvas " + canvasSector, expected, actual, 1e-3);
+
+            DataRaster expectedSubRaster = whole.getSubRaster(32, 32, canvasSector, null);
+            DataRaster actualSubRaster = windowed.getSubRaster(32, 32, canvasSector, null);
+            // Sub-rasters have the source's data type, so integer elevations may round differently.
+            assertRastersEqual("Sub-raster " + canvasSector, expectedSubRaster, actualSubRaster, 1);
+        }
+    }
+
+    private static DataRaster createCanvas(Sector sector)
+    {
+        AVList params = new AVListImpl();
+        params.setValue(AVKey.DATA_TYPE, AVKey.FLOAT32);
+        params.setValue(AVKey.MISSING_DATA_SIGNAL, -9999d);
+        params.setValue(AVKey.PIXEL_FORMAT, AVKey.ELEVATION);
+
+        ByteBufferRaster canvas = new ByteBufferRaster(48, 48, sector, params);
+        canvas.fill(-9999d);
+
+        return canvas;
+    }
+
+    private static void assertRastersEqual(String message, DataRaster expected, DataRaster actual, double delta)
+    {
+        assertEquals(message + " width", expected.getWidth(), actual.getWidth());
+        assertEquals(message + " height", expected.getHeight(), actual.getHeight());
+
+        BufferWrapperRaster expectedRaster = (BufferWrapperRaster) expected;
+        BufferWrapperRaster actualRaster = (BufferWrapperRaster) actual;
+        for (int y = 0; y < expected.getHeight(); y++)
+        {
+            for (int x = 0; x < expected.getWidth(); x++)
+            {
+                assertEquals(message + " (" + x + ", " + y + ")", expectedRaster.getDoubleAtPosition(y, x),
+                    actualRaster.getDoubleAtPosition(y, x), delta);
+            }
+        }
+    }
+}
@@ -0,0 +1,276 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+
+package gov.nasa.worldwind.formats.dds;
+
+import gov.nasa.worldwind.Configuration;
+import gov.nasa.worldwind.avlist.AVKey;
+import org.junit.*;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.nio.*;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+@RunWith(JUnit4.class)
+public class ParallelDXTCompressorTest
+{
+    private static final String IMAGE_PATH = "testData/sba_rgb_nogeo_512x512.jpg";
+
+    private BufferedImage image;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        this.image = ImageIO.read(new File(IMAGE_PATH));
+    }
+
+    /** Tests the quality of each mode against the block by block compressor, which it must be no worse than. */
+    @Test
+    public void testDXT1PSNR()
+    {
+        double euclidean = computePSNR(this.image, this.compressDXT1(
+            DXTCompressionAttributes.COLOR_BLOCK_COMPRESSION_EUCLIDEAN_DISTANCE), false);
+        double rangeFit = computePSNR(this.image, this.compressDXT1(
+            DXTCompressionAttributes.COLOR_BLOCK_COMPRESSION_RANGE_FIT), false);
+        double clusterFit = computePSNR(this.image, this.compressDXT1(
+            DXTCompressionAttributes.COLOR_BLOCK_COMPRESSION_CLUSTER_FIT), false);
+
+        assertTrue("Range fit " + rangeFit + " dB, euclidean distance " + euclidean + " dB", rangeFit >= euclidean);
+        assertTrue("Cluster fit " + clusterFit + " dB, range fit " + rangeFit + " dB", clusterFit > rangeFit);
+        assertTrue("Range fit " + rangeFit + " dB", rangeFit > 30);
+        assertTrue("Cluster fit " + clusterFit + " dB", clusterFit > 31);
+    }
+
+    /** Tests the quality of DXT3 color and alpha for an image whose alpha varies across the image. */
+    @Test
+    public void testDXT3PSNR()
+    {
+        BufferedImage translucent = new BufferedImage(this.image.getWidth(), this.image.getHeight(),
+            BufferedImage.TYPE_INT_ARGB);
+        for (int y = 0; y < translucent.getHeight(); y++)
+        {
+            for (int x = 0; x < translucent.getWidth(); x++)
+            {
+                int alpha = (x + y) * 255 / (translucent.getWidth() + translucent.getHeight() - 2);
+                translucent.setRGB(x, y, (alpha << 24) | (this.image.getRGB(x, y) & 0xFFFFFF));
+            }
+        }
+
+        DXTCompressionAttributes attributes = DDSCompressor.getDefaultCompressionAttributes();
+        attributes.setBuildMipmaps(false);
+        attributes.setPremultiplyAlpha(false);
+        attributes.setColorBlockCompressionType(DXTCompressionAttributes.COLOR_BLOCK_COMPRESSION_RANGE_FIT);
+        ByteBuffer buffer = new DDSCompressor().compressImageDXT3(translucent, attributes);
+
+        double color = computePSNR(translucent, buffer, true);
+        assertTrue("Color " + color + " dB", color > 30);
+
+        // Each alpha is the nearest 4 bit value, so differs from the 8 bit alpha by at most 8.
+        ByteBuffer blocks = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        blocks.position(DDSConstants.DDS_DATA_OFFSET);
+        for (int by = 0; by < translucent.getHeight(); by += 4)
+        {
+            for (int bx = 0; bx < translucent.getWidth(); bx += 4)
+            {
+                long alphas = blocks.getLong();
+                blocks.getLong();
+                for (int i = 0; i < 16; i++)
+                {
+                    int expected = translucent.getRGB(bx + i % 4, by + i / 4) >>> 24;
+                    int actual = (int) ((alphas >>> (4 * i)) & 0xF) * 17;
+                    assertEquals("Alpha", expected, actual, 8);
+                }
+            }
+        }
+    }
+
+    /**
+     * Tests that the default attributes use the block by block compressor unless the configuration selects the parallel
+     * compressor.
+     */
+    @Test
+    public void testDefaultCompressionType()
+    {
+        DDSCompressor compressor = new DDSCompressor();
+        DXTCompressionAttributes attributes = DDSCompressor.getDefaultCompressionAttributes();
+        assertEquals(DXTCompressionAttributes.COLOR_BLOCK_COMPRESSION_EUCLIDEAN_DISTANCE,
+            attributes.getColorBlockCompressionType());
+        assertTrue(compressor.getDXTCompressor(this.image, attributes) instanceof DXT1Compressor);
+
+        String configured = Configuration.getStringValue(AVKey.DXT_COLOR_BLOCK_COMPRESSION_TYPE);
+        try
+        {
+            Configuration.setValue(AVKey.DXT_COLOR_BLOCK_COMPRESSION_TYPE,
+                DXTCompressionAttributes.COLOR_BLOCK_COMPRESSION_RANGE_FIT);
+            attributes = DDSCompressor.getDefaultCompressionAttributes();
+            assertTrue(compressor.getDXTCompressor(this.image, attributes) instanceof ParallelDXTCompressor);
+        }
+        finally
+        {
+            if (configured != null)
+                Configuration.setValue(AVKey.DXT_COLOR_BLOCK_COMPRESSION_TYPE, configured);
+            else
+                Configuration.removeKey(AVKey.DXT_COLOR_BLOCK_COMPRESSION_TYPE);
+        }
+    }
+
+    /** Tests that compressing on one thread and on several threads gives the same file, including the mip maps. */
+    @Test
+    public void testParallelCompressionMatchesSequential()
+    {
+        DXTCompressionAttributes attributes = DDSCompressor.getDefaultCompressionAttributes();
+        attributes.setColorBlockCompressionType(DXTCompressionAttributes.COLOR_BLOCK_COMPRESSION_CLUSTER_FIT);
+
+        ByteBuffer sequential = compressWithPool(this.image, attributes, new ForkJoinPool(1));
+        ByteBuffer parallel = compressWithPool(this.image, attributes, new ForkJoinPool(4));
+
+        // A 512x512 image has 10 levels, and levels smaller than 4x4 are one block.
+        assertEquals("Mip map count", 10, sequential.duplicate().order(ByteOrder.LITTLE_ENDIAN).getInt(28));
+        int expectedSize = DDSConstants.DDS_DATA_OFFSET;
+        for (int size = 512; size >= 1; size /= 2)
+        {
+            expectedSize += Math.max(size / 4, 1) * Math.max(size / 4, 1) * 8;
+        }
+        assertEquals("File size", expectedSize, sequential.remaining());
+        assertEquals("Files", sequential, parallel);
+    }
+
+    /** Tests that each pixel of a block is given transparent black when DXT1 alpha is enabled. */
+    @Test
+    public void testDXT1Alpha()
+    {
+        BufferedImage cutout = new BufferedImage(64, 64, BufferedImage.TYPE_INT_ARGB);
+        for (int y = 0; y < cutout.getHeight(); y++)
+        {
+            for (int x = 0; x < cutout.getWidth(); x++)
+            {
+                cutout.setRGB(x, y, x < 30 ? 0 : this.image.getRGB(x, y));
+            }
+        }
+
+        DXTCompressionAttributes attributes = DDSCompressor.getDefaultCompressionAttributes();
+        attributes.setBuildMipmaps(false);
+        attributes.setEnableDXT1Alpha(true);
+        attributes.setColorBlockCompressionType(DXTCompressionAttributes.COLOR_BLOCK_COMPRESSION_RANGE_FIT);
+        ByteBuffer blocks = new DDSCompressor().compressImageDXT1(cutout, attributes).order(ByteOrder.LITTLE_ENDIAN);
+        blocks.position(DDSConstants.DDS_DATA_OFFSET);
+
+        for (int by = 0; by < cutout.getHeight(); by += 4)
+        {
+            for (int bx = 0; bx < cutout.getWidth(); bx += 4)
+            {
+                int color0 = blocks.getShort() & 0xFFFF;
+                int color1 = blocks.getShort() & 0xFFFF;
+                int indices = blocks.getInt();
+                for (int i = 0; i < 16; i++)
+                {
+                    boolean transparent = bx + i % 4 < 30;
+                    boolean threeColor = color0 <= color1;
+                    int index = (indices >>> (2 * i)) & 3;
+                    assertEquals("Pixel " + (bx + i % 4) + ", " + (by + i / 4), transparent,
+                        threeColor && index == 3);
+                }
+            }
+        }
+    }
+
+    private ByteBuffer compressDXT1(String compressionType)
+    {
+        DXTCompressionAttributes attributes = DDSCompressor.getDefaultCompressionAttributes();
+        attributes.setBuildMipmaps(false);
+        attributes.setColorBlockCompressionType(compressionType);
+
+        return new DDSCompressor().compressImageDXT1(this.image, attributes);
+    }
+
+    private static ByteBuffer compressWithPool(BufferedImage image, DXTCompressionAttributes attributes,
+        final ForkJoinPool pool)
+    {
+        DDSCompressor compressor = new DDSCompressor()
+        {
+            @Override
+            protected DXTCompressor createDXTCompressor(int dxtFormat, DXTCompressionAttributes attributes)
+            {
+                ParallelDXTCompressor dxtCompressor = (ParallelDXTCompressor) super.createDXTCompressor(dxtFormat,
+                    attributes);
+                dxtCompressor.setPool(pool);
+                return dxtCompressor;
+            }
+        };
+
+        try
+        {
+            return compressor.compressImageDXT1(image, attributes);
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Computes the peak signal to noise ratio of the RGB components of a DDS file's level 0, decoding each block with
+     * the four color palette.
+     */
+    private static double computePSNR(BufferedImage image, ByteBuffer buffer, boolean dxt3)
+    {
+        ByteBuffer blocks = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        blocks.position(DDSConstants.DDS_DATA_OFFSET);
+
+        int[] palette = new int[12];
+        double sum = 0;
+        for (int by = 0; by < image.getHeight(); by += 4)
+        {
+            for (int bx = 0; bx < image.getWidth(); bx += 4)
+            {
+                if (dxt3)
+                    blocks.getLong();
+
+                int color0 = blocks.getShort() & 0xFFFF;
+                int color1 = blocks.getShort() & 0xFFFF;
+                int indices = blocks.getInt();
+                expand565(color0, palette, 0);
+                expand565(color1, palette, 3);
+                for (int c = 0; c < 3; c++)
+                {
+                    palette[6 + c] = (2 * palette[c] + palette[3 + c]) / 3;
+                    palette[9 + c] = (palette[c] + 2 * palette[3 + c]) / 3;
+                }
+
+                for (int i = 0; i < 16; i++)
+                {
+                    int index = (indices >>> (2 * i)) & 3;
+                    int pixel = image.getRGB(bx + i % 4, by + i / 4);
+                    for (int c = 0; c < 3; c++)
+                    {
+                        double d = ((pixel >> (16 - 8 * c)) & 0xFF) - palette[3 * index + c];
+                        sum += d * d;
+                    }
+                }
+            }
+        }
+
+        double mse = sum / (3.0 * image.getWidth() * image.getHeight());
+        return 10 * Math.log10(255 * 255 / mse);
+    }
+
+    private static void expand565(int color16, int[] rgb, int offset)
+    {
+        int r = (color16 & 0xf800) >> 11;
+        int g = (color16 & 0x07e0) >> 5;
+        int b = (color16 & 0x001f);
+
+        rgb[offset] = (r << 3) | (r >> 2);
+        rgb[offset + 1] = (g << 2) | (g >> 4);
+        rgb[offset + 2] = (b << 3) | (b >> 2);
+    }
+}
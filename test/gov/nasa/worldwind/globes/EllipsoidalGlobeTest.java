@@ -10,6 +10,8 @@ import org.junit.*;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
 
+import java.nio.FloatBuffer;
+
 import static org.junit.Assert.assertEquals;
 
 @RunWith(JUnit4.class)
@@ -318,4 +320,39 @@ public class EllipsoidalGlobeTest
             assertEquals(msg, 0, w.z, THRESHOLD);
         }
     }
+
+    /** Tests that a grid of points written to a buffer matches the points computed one position at a time. */
+    @Test
+    public void testPointGridToBuffer()
+    {
+        int numLat = 5;
+        int numLon = 7;
+        double[] latitudes = new double[numLat * numLon];
+        double[] longitudes = new double[numLat * numLon];
+        double[] elevations = new double[numLat * numLon];
+        for (int j = 0, k = 0; j < numLat; j++)
+        {
+            for (int i = 0; i < numLon; i++, k++)
+            {
+                latitudes[k] = -20.5 + j * 10.25;
+                longitudes[k] = 170 + i * 1.5;
+                elevations[k] = j * 100 - i * 50;
+            }
+        }
+
+        Vec4 referencePoint = this.globe.computePointFromPosition(Angle.fromDegrees(0), Angle.fromDegrees(175), 0);
+        FloatBuffer buffer = FloatBuffer.allocate(3 * numLat * numLon);
+        this.globe.computePointsFromPositions(latitudes, longitudes, numLat, numLon, elevations, referencePoint,
+            buffer);
+        assertEquals("Position", buffer.capacity(), buffer.position());
+
+        for (int k = 0; k < numLat * numLon; k++)
+        {
+            Vec4 p = this.globe.computePointFromPosition(Angle.fromDegrees(latitudes[k]),
+                Angle.fromDegrees(longitudes[k]), elevations[k]);
+            assertEquals("X " + k, (float) (p.x - referencePoint.x), buffer.get(3 * k), 0);
+            assertEquals("Y " + k, (float) (p.y - referencePoint.y), buffer.get(3 * k + 1), 0);
+            assertEquals("Z " + k, (float) (p.z - referencePoint.z), buffer.get(3 * k + 2), 0);
+        }
+    }
 }
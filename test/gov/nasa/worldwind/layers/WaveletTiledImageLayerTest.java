@@ -0,0 +1,280 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+
+package gov.nasa.worldwind.layers;
+
+import com.sun.net.httpserver.*;
+import gov.nasa.worldwind.avlist.*;
+import gov.nasa.worldwind.cache.BasicDataFileStore;
+import gov.nasa.worldwind.formats.wvt.WaveletCodec;
+import gov.nasa.worldwind.geom.*;
+import gov.nasa.worldwind.util.*;
+import org.junit.*;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.awt.image.BufferedImage;
+import java.io.*;
+import java.net.*;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+@RunWith(JUnit4.class)
+public class WaveletTiledImageLayerTest
+{
+    private static final int TILE_SIZE = 64;
+
+    private File storeLocation;
+    private HttpServer server;
+    private final Map<String, ByteBuffer> encodings = new HashMap<String, ByteBuffer>();
+    private final List<String> ranges = Collections.synchronizedList(new ArrayList<String>());
+
+    @Before
+    public void setUp() throws IOException
+    {
+        this.storeLocation = File.createTempFile("WaveletTiledImageLayerTest", "");
+        assertTrue("Cannot create store location", this.storeLocation.delete() && this.storeLocation.mkdirs());
+
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        this.server.createContext("/", new HttpHandler()
+        {
+            public void handle(HttpExchange exchange) throws IOException
+            {
+                handleRequest(exchange);
+            }
+        });
+        this.server.start();
+    }
+
+    @After
+    public void tearDown() throws IOException
+    {
+        this.server.stop(0);
+        WWIO.deleteDirectory(this.storeLocation);
+    }
+
+    /** Tests that each prefix of a progressive encoding reconstructs the same image as a partial load. */
+    @Test
+    public void testProgressivePrefix() throws Exception
+    {
+        WaveletCodec codec = WaveletCodec.encode(createImage(TILE_SIZE, 7));
+        ByteBuffer progressive = WaveletCodec.saveProgressive(codec);
+        ByteBuffer sequential = WaveletCodec.save(codec);
+        assertEquals("Length", sequential.remaining(), progressive.remaining());
+
+        for (int resolution = 1; resolution <= TILE_SIZE; resolution *= 2)
+        {
+            ByteBuffer prefix = progressive.duplicate();
+            prefix.limit(WaveletCodec.getProgressiveLength(resolution, 3));
+            assertEquals("Prefix resolution", resolution, WaveletCodec.getProgressiveResolution(prefix));
+
+            BufferedImage expected = WaveletCodec.loadPartial(sequential.duplicate(), resolution).reconstruct(
+                resolution);
+            BufferedImage actual = WaveletCodec.loadProgressive(prefix, resolution).reconstruct(resolution);
+            assertImagesEqual("Resolution " + resolution, expected, actual, 0, 0);
+        }
+
+        ByteBuffer truncated = progressive.duplicate();
+        truncated.limit(WaveletCodec.getProgressiveLength(TILE_SIZE, 3) - 1);
+        assertEquals("Truncated resolution", TILE_SIZE / 2, WaveletCodec.getProgressiveResolution(truncated));
+    }
+
+    /** Tests which levels are stored, and which stored tiles cover a tile of an intermediate level. */
+    @Test
+    public void testStoredLevels()
+    {
+        WaveletTiledImageLayer layer = this.createLayer(5, 2);
+        assertTrue(layer.isStoredLevel(4));
+        assertFalse(layer.isStoredLevel(3));
+        assertTrue(layer.isStoredLevel(0));
+        assertEquals(4, layer.getStoredLevelNumber(3));
+        assertEquals(2, layer.getStoredLevelNumber(2));
+
+        TextureTile tile = createTile(layer, 3, 20, 40);
+        assertEquals(TILE_SIZE / 2, layer.getStoredTileResolution(tile));
+
+        List<TextureTile> storedTiles = layer.getStoredTiles(tile);
+        assertEquals(4, storedTiles.size());
+        assertEquals(4, storedTiles.get(0).getLevelNumber());
+        assertEquals(40, storedTiles.get(0).getRow());
+        assertEquals(80, storedTiles.get(0).getColumn());
+        assertEquals(41, storedTiles.get(3).getRow());
+        assertEquals(81, storedTiles.get(3).getColumn());
+        assertTrue(tile.getSector().contains(storedTiles.get(3).getSector().getCentroid()));
+    }
+
+    /**
+     * Tests that a tile of an intermediate level is assembled from byte range prefixes of the stored tiles, and that a
+     * tile of the stored level then retrieves only the rest of its encoding.
+     */
+    @Test
+    public void testRangeRetrieval() throws Exception
+    {
+        WaveletTiledImageLayer layer = this.createLayer(3, 2);
+        TextureTile tile = createTile(layer, 1, 5, 10);
+        List<TextureTile> storedTiles = layer.getStoredTiles(tile);
+        for (int i = 0; i < storedTiles.size(); i++)
+        {
+            TextureTile storedTile = storedTiles.get(i);
+            String key = storedTile.getLevelNumber() + "/" + storedTile.getColumn() + "/" + storedTile.getRow();
+            this.encodings.put(key, WaveletCodec.saveProgressive(WaveletCodec.encode(createImage(TILE_SIZE, i))));
+        }
+
+        // The first request retrieves the prefix of each stored tile needed at half resolution.
+        int prefixLength = WaveletCodec.getProgressiveLength(TILE_SIZE / 2, 3);
+        assertFalse(layer.loadStoredTiles(tile, true));
+        List<ByteBuffer> stored = this.awaitStoredTiles(layer, storedTiles, prefixLength);
+        assertEquals(Collections.nCopies(4, "bytes=0-" + (prefixLength - 1)), new ArrayList<String>(this.ranges));
+
+        BufferedImage image = layer.composeImage(tile, stored, TILE_SIZE / 2);
+        for (int i = 0; i < storedTiles.size(); i++)
+        {
+            BufferedImage expected = WaveletCodec.loadProgressive(this.getEncoding(storedTiles.get(i)),
+                TILE_SIZE / 2).reconstruct(TILE_SIZE / 2);
+            // The first stored tiles are the southern ones, which are drawn in the bottom half of the image.
+            assertImagesEqual("Stored tile " + i, expected, image, (i % 2) * TILE_SIZE / 2,
+                (1 - i / 2) * TILE_SIZE / 2);
+        }
+
+        // The stored tile retrieves the remainder of its encoding, after which it matches the server's tile.
+        this.ranges.clear();
+        TextureTile storedTile = createTile(layer, 2, storedTiles.get(0).getRow(), storedTiles.get(0).getColumn());
+        ByteBuffer expected = this.getEncoding(storedTile);
+        assertFalse(layer.loadStoredTiles(storedTile, true));
+        ByteBuffer actual = this.awaitStoredTiles(layer, Arrays.asList(storedTile), expected.remaining()).get(0);
+        assertEquals(Arrays.asList("bytes=" + prefixLength + "-" + (expected.remaining() - 1)), this.ranges);
+        assertEquals("Stored tile", expected, actual);
+    }
+
+    private WaveletTiledImageLayer createLayer(int numLevels, int levelInterval)
+    {
+        AVList params = new AVListImpl();
+        params.setValue(AVKey.DATA_CACHE_NAME, "WaveletTiledImageLayerTest");
+        params.setValue(AVKey.DATASET_NAME, "Wavelets");
+        params.setValue(AVKey.SERVICE, "http://127.0.0.1:" + this.server.getAddress().getPort() + "/tiles");
+        params.setValue(AVKey.FORMAT_SUFFIX, WaveletCodec.WVT_EXT);
+        params.setValue(AVKey.SECTOR, Sector.fromDegrees(0, 36, 0, 36));
+        params.setValue(AVKey.LEVEL_ZERO_TILE_DELTA, LatLon.fromDegrees(36, 36));
+        params.setValue(AVKey.NUM_LEVELS, numLevels);
+        params.setValue(AVKey.TILE_WIDTH, TILE_SIZE);
+        params.setValue(AVKey.TILE_HEIGHT, TILE_SIZE);
+        params.setValue(AVKey.WAVELET_LEVEL_INTERVAL, levelInterval);
+
+        WaveletTiledImageLayer layer = new WaveletTiledImageLayer(params);
+        layer.setDataFileStore(new BasicDataFileStore(this.storeLocation));
+
+        return layer;
+    }
+
+    private static TextureTile createTile(TiledImageLayer layer, int levelNumber, int row, int column)
+    {
+        Level level = layer.getLevels().getLevel(levelNumber);
+        TileKey key = new TileKey(levelNumber, row, column, level.getCacheName());
+
+        return new TextureTile(layer.getLevels().computeSectorForKey(key), level, row, column);
+    }
+
+    private ByteBuffer getEncoding(TextureTile tile)
+    {
+        return this.encodings.get(tile.getLevelNumber() + "/" + tile.getColumn() + "/" + tile.getRow()).duplicate();
+    }
+
+    private List<ByteBuffer> awaitStoredTiles(WaveletTiledImageLayer layer, List<TextureTile> storedTiles, int length)
+        throws InterruptedException
+    {
+        List<ByteBuffer> stored = new ArrayList<ByteBuffer>();
+        for (TextureTile storedTile : storedTiles)
+        {
+            ByteBuffer buffer = null;
+            for (int i = 0; i < 200 && (buffer == null || buffer.remaining() < length); i++)
+            {
+                Thread.sleep(50);
+                buffer = layer.readStoredTile(storedTile);
+            }
+
+            assertNotNull("Stored tile " + storedTile, buffer);
+            assertEquals("Stored tile length " + storedTile, length, buffer.remaining());
+            stored.add(buffer);
+        }
+
+        return stored;
+    }
+
+    private void handleRequest(HttpExchange exchange) throws IOException
+    {
+        Map<String, String> query = new HashMap<String, String>();
+        for (String pair : exchange.getRequestURI().getQuery().split("&"))
+        {
+            String[] parts = pair.split("=");
+            query.put(parts[0], parts[1]);
+        }
+
+        ByteBuffer encoding = this.encodings.get(query.get("L") + "/" + query.get("X") + "/" + query.get("Y"));
+        if (encoding == null)
+        {
+            exchange.sendResponseHeaders(404, -1);
+            exchange.close();
+            return;
+        }
+
+        byte[] bytes = new byte[encoding.remaining()];
+        encoding.duplicate().get(bytes);
+
+        int first = 0;
+        int last = bytes.length - 1;
+        int status = 200;
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        if (range != null)
+        {
+            this.ranges.add(range);
+            String[] parts = range.substring("bytes=".length()).split("-", -1);
+            first = Integer.parseInt(parts[0]);
+            if (parts[1].length() > 0)
+                last = Math.min(last, Integer.parseInt(parts[1]));
+            exchange.getResponseHeaders().set("Content-Range", "bytes " + first + "-" + last + "/" + bytes.length);
+            status = 206;
+        }
+
+        exchange.getResponseHeaders().set("Content-Type", "application/octet-stream");
+        exchange.sendResponseHeaders(status, last - first + 1);
+        OutputStream out = exchange.getResponseBody();
+        out.write(bytes, first, last - first + 1);
+        out.close();
+    }
+
+    private static BufferedImage createImage(int size, int seed)
+    {
+        BufferedImage image = new BufferedImage(size, size, BufferedImage.TYPE_3BYTE_BGR);
+        for (int y = 0; y < size; y++)
+        {
+            for (int x = 0; x < size; x++)
+            {
+                int r = (x * 255 / size + seed * 40) & 0xFF;
+                int g = (y * 255 / size + seed * 70) & 0xFF;
+                int b = ((x ^ y) * 4 + seed * 90) & 0xFF;
+                image.setRGB(x, y, (r << 16) | (g << 8) | b);
+            }
+        }
+
+        return image;
+    }
+
+    private static void assertImagesEqual(String message, BufferedImage expected, BufferedImage actual, int x0,
+        int y0)
+    {
+        for (int y = 0; y < expected.getHeight(); y++)
+        {
+            for (int x = 0; x < expected.getWidth(); x++)
+            {
+                assertEquals(message + " pixel " + x + ", " + y, expected.getRGB(x, y) & 0xFFFFFF,
+                    actual.getRGB(x0 + x, y0 + y) & 0xFFFFFF);
+            }
+        }
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+
+package gov.nasa.worldwind.retrieve;
+
+import com.sun.net.httpserver.*;
+import org.junit.*;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.*;
+import java.net.*;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+@RunWith(JUnit4.class)
+public class AsyncRetrievalServiceTest
+{
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+    private AsyncRetrievalService service;
+    private final Set<Integer> clientPorts = Collections.synchronizedSet(new HashSet<Integer>());
+
+    @Before
+    public void setUp() throws IOException
+    {
+        this.serverExecutor = Executors.newCachedThreadPool();
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        this.server.setExecutor(this.serverExecutor);
+        this.server.createContext("/", new HttpHandler()
+        {
+            public void handle(HttpExchange exchange) throws IOException
+            {
+                handleRequest(exchange);
+            }
+        });
+        this.server.start();
+        this.service = new AsyncRetrievalService();
+    }
+
+    @After
+    public void tearDown()
+    {
+        this.service.shutdown(true);
+        this.server.stop(0);
+        this.serverExecutor.shutdownNow();
+    }
+
+    /** Tests that many requests complete over a few reused connections, with fixed-length and chunked responses. */
+    @Test
+    public void testManyRequests() throws Exception
+    {
+        final AtomicInteger postProcessed = new AtomicInteger();
+        RetrievalPostProcessor postProcessor = new RetrievalPostProcessor()
+        {
+            public ByteBuffer run(Retriever retriever)
+            {
+                postProcessed.incrementAndGet();
+                return retriever.getBuffer();
+            }
+        };
+
+        List<RetrievalFuture> futures = new ArrayList<RetrievalFuture>();
+        int maxInFlight = 0;
+        for (int i = 0; i < 300; i++)
+        {
+            futures.add(this.service.runRetriever(new HTTPRetriever(this.makeURL("/tile" + i), postProcessor)));
+            maxInFlight = Math.max(maxInFlight, this.service.getNumRetrieversPending());
+        }
+
+        for (int i = 0; i < futures.size(); i++)
+        {
+            HTTPRetriever retriever = (HTTPRetriever) futures.get(i).get(20, TimeUnit.SECONDS);
+            assertEquals(Retriever.RETRIEVER_STATE_SUCCESSFUL, retriever.getState());
+            assertEquals(200, retriever.getResponseCode());
+            assertEquals("image/png", retriever.getContentType());
+            assertEquals(makeContent(i), retriever.getBuffer());
+        }
+
+        assertEquals(300, postProcessed.get());
+        assertTrue(maxInFlight > this.service.getRetrieverPoolSize());
+        assertTrue(this.clientPorts.size() <= HTTPConnectionPool.DEFAULT_MAX_CONNECTIONS_PER_HOST);
+        assertTrue(this.service.getMeanTimeToFirstByte() > 0);
+
+        // A task's future returns before the task finishes its bookkeeping.
+        for (int i = 0; i < 100 && this.service.getInFlightCount() > 0; i++)
+        {
+            Thread.sleep(10);
+        }
+        assertEquals(0, this.service.getInFlightCount());
+    }
+
+    /** Tests that error responses, refused connections and duplicate requests are handled as by the basic service. */
+    @Test
+    public void testErrorsAndDuplicates() throws Exception
+    {
+        RetrievalFuture missing = this.service.runRetriever(new HTTPRetriever(this.makeURL("/missing"), null));
+        assertNull(this.service.runRetriever(new HTTPRetriever(this.makeURL("/missing"), null)));
+
+        HTTPRetriever retriever = (HTTPRetriever) missing.get(20, TimeUnit.SECONDS);
+        assertEquals(404, retriever.getResponseCode());
+        assertNull(retriever.getBuffer());
+
+        ServerSocket socket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+        int port = socket.getLocalPort();
+        socket.close();
+
+        URL refusedURL = new URL("http", "127.0.0.1", port, "/tile");
+        RetrievalFuture refused = this.service.runRetriever(new HTTPRetriever(refusedURL, null));
+        try
+        {
+            refused.get(20, TimeUnit.SECONDS);
+            fail("Expected a connection exception");
+        }
+        catch (ExecutionException e)
+        {
+            assertTrue(e.getCause() instanceof ConnectException);
+        }
+        assertEquals(Retriever.RETRIEVER_STATE_ERROR, refused.getRetriever().getState());
+    }
+
+    private URL makeURL(String path) throws MalformedURLException
+    {
+        return new URL("http", "127.0.0.1", this.server.getAddress().getPort(), path);
+    }
+
+    private static ByteBuffer makeContent(int tile)
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(1000 + 37 * tile);
+        for (int i = 0; buffer.hasRemaining(); i++)
+        {
+            buffer.put((byte) (i * 31 + tile));
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private void handleRequest(HttpExchange exchange) throws IOException
+    {
+        this.clientPorts.add(exchange.getRemoteAddress().getPort());
+        String path = exchange.getRequestURI().getPath();
+
+        if (path.equals("/missing"))
+        {
+            byte[] body = "Not found".getBytes("UTF-8");
+            exchange.sendResponseHeaders(404, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+            return;
+        }
+
+        int tile = Integer.parseInt(path.substring("/tile".length()));
+        ByteBuffer content = makeContent(tile);
+        byte[] body = new byte[content.remaining()];
+        content.get(body);
+
+        try
+        {
+            Thread.sleep(5);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+
+        exchange.getResponseHeaders().set("Content-Type", "image/png");
+        exchange.sendResponseHeaders(200, tile % 2 == 0 ? body.length : 0); // zero length sends chunks
+        OutputStream out = exchange.getResponseBody();
+        out.write(body);
+        out.close();
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+
+package gov.nasa.worldwind.retrieve;
+
+import com.sun.net.httpserver.*;
+import org.junit.*;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.*;
+import java.net.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+@RunWith(JUnit4.class)
+public class HTTPConnectionPoolTest
+{
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+    private final Set<Integer> clientPorts = Collections.synchronizedSet(new HashSet<Integer>());
+    private final AtomicInteger requestCount = new AtomicInteger();
+    private final AtomicInteger activeCount = new AtomicInteger();
+    private final AtomicInteger maxActiveCount = new AtomicInteger();
+    private volatile CountDownLatch responseGate;
+    private volatile long responseDelay;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        this.serverExecutor = Executors.newCachedThreadPool();
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        this.server.setExecutor(this.serverExecutor);
+        this.server.createContext("/", new HttpHandler()
+        {
+            public void handle(HttpExchange exchange) throws IOException
+            {
+                handleRequest(exchange);
+            }
+        });
+        this.server.start();
+    }
+
+    @After
+    public void tearDown()
+    {
+        this.server.stop(0);
+        this.serverExecutor.shutdownNow();
+    }
+
+    /** Tests that sequential requests, including error responses, reuse one connection. */
+    @Test
+    public void testKeepAlive() throws Exception
+    {
+        HTTPConnectionPool pool = new HTTPConnectionPool(2);
+        for (int i = 0; i < 20; i++)
+        {
+            HTTPRetriever retriever = this.createRetriever(pool, i % 5 == 0 ? "/missing" : "/tile" + i);
+            retriever.call();
+            assertEquals(i % 5 == 0 ? 404 : 200, retriever.getResponseCode());
+        }
+
+        assertEquals(20, this.requestCount.get());
+        assertEquals(1, this.clientPorts.size());
+
+        HTTPConnectionPool.HostStatistics stats = pool.getHostStatistics(this.makeURL("/"));
+        assertEquals(20, stats.getRequestCount());
+        assertEquals(4, stats.getFailureCount());
+        assertEquals(16 * 1000, stats.getBytesRead());
+    }
+
+    /** Tests that concurrent requests for the same URL share one response. */
+    @Test
+    public void testCoalescing() throws Exception
+    {
+        final HTTPConnectionPool pool = new HTTPConnectionPool(4);
+        this.responseGate = new CountDownLatch(1);
+
+        List<Future<Retriever>> futures = new ArrayList<Future<Retriever>>();
+        ExecutorService executor = Executors.newFixedThreadPool(5);
+        for (int i = 0; i < 5; i++)
+        {
+            futures.add(executor.submit(this.createRetriever(pool, "/shared")));
+        }
+
+        HTTPConnectionPool.HostStatistics stats = null;
+        for (int i = 0; i < 200 && (stats == null || stats.getCoalescedCount() < 4); i++)
+        {
+            Thread.sleep(10);
+            stats = pool.getHostStatistics(this.makeURL("/"));
+        }
+        this.responseGate.countDown();
+
+        for (Future<Retriever> future : futures)
+        {
+            HTTPRetriever retriever = (HTTPRetriever) future.get();
+            assertEquals(200, retriever.getResponseCode());
+            assertEquals(1000, retriever.getBuffer().remaining());
+            assertEquals("application/octet-stream", retriever.getContentType());
+        }
+        executor.shutdown();
+
+        assertEquals(1, this.requestCount.get());
+        assertEquals(4, pool.getHostStatistics(this.makeURL("/")).getCoalescedCount());
+    }
+
+    /** Tests that no more than the maximum number of requests to a host are in progress at once. */
+    @Test
+    public void testPerHostLimit() throws Exception
+    {
+        HTTPConnectionPool pool = new HTTPConnectionPool(2);
+        this.responseDelay = 50;
+
+        List<Future<Retriever>> futures = new ArrayList<Future<Retriever>>();
+        ExecutorService executor = Executors.newFixedThreadPool(6);
+        for (int i = 0; i < 12; i++)
+        {
+            futures.add(executor.submit(this.createRetriever(pool, "/tile" + i)));
+        }
+
+        for (Future<Retriever> future : futures)
+        {
+            assertEquals(200, ((HTTPRetriever) future.get()).getResponseCode());
+        }
+        executor.shutdown();
+
+        assertEquals(12, this.requestCount.get());
+        assertEquals(2, this.maxActiveCount.get());
+        assertTrue(this.clientPorts.size() <= 2);
+    }
+
+    private HTTPRetriever createRetriever(HTTPConnectionPool pool, String path) throws MalformedURLException
+    {
+        HTTPRetriever retriever = new HTTPRetriever(this.makeURL(path), null);
+        retriever.setConnectionPool(pool);
+        return retriever;
+    }
+
+    private URL makeURL(String path) throws MalformedURLException
+    {
+        return new URL("http", "127.0.0.1", this.server.getAddress().getPort(), path);
+    }
+
+    private void handleRequest(HttpExchange exchange) throws IOException
+    {
+        this.requestCount.incrementAndGet();
+        this.clientPorts.add(exchange.getRemoteAddress().getPort());
+        int active = this.activeCount.incrementAndGet();
+        while (this.maxActiveCount.get() < active)
+        {
+            this.maxActiveCount.compareAndSet(this.maxActiveCount.get(), active);
+        }
+
+        try
+        {
+            if (this.responseGate != null)
+                this.responseGate.await(10, TimeUnit.SECONDS);
+            if (this.responseDelay > 0)
+                Thread.sleep(this.responseDelay);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+
+        boolean missing = exchange.getRequestURI().getPath().equals("/missing");
+        byte[] body = new byte[missing ? 100 : 1000];
+        exchange.getResponseHeaders().set("Content-Type", "application/octet-stream");
+        this.activeCount.decrementAndGet();
+        exchange.sendResponseHeaders(missing ? 404 : 200, body.length);
+        OutputStream out = exchange.getResponseBody();
+        out.write(body);
+        out.close();
+    }
+}
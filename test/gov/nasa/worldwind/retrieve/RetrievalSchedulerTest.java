@@ -0,0 +1,212 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+
+package gov.nasa.worldwind.retrieve;
+
+import com.sun.net.httpserver.*;
+import gov.nasa.worldwind.geom.*;
+import gov.nasa.worldwind.globes.*;
+import gov.nasa.worldwind.terrain.ZeroElevationModel;
+import gov.nasa.worldwind.util.TileKey;
+import org.junit.*;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.*;
+import java.net.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.junit.Assert.*;
+
+@RunWith(JUnit4.class)
+public class RetrievalSchedulerTest
+{
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+    private BasicRetrievalService service;
+    private RetrievalScheduler scheduler;
+    private final List<String> requestedPaths = Collections.synchronizedList(new ArrayList<String>());
+    private volatile CountDownLatch responseGate;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        this.serverExecutor = Executors.newCachedThreadPool();
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        this.server.setExecutor(this.serverExecutor);
+        this.server.createContext("/", new HttpHandler()
+        {
+            public void handle(HttpExchange exchange) throws IOException
+            {
+                handleRequest(exchange);
+            }
+        });
+        this.server.start();
+
+        this.service = new BasicRetrievalService();
+        this.scheduler = new RetrievalScheduler(this.service, 2);
+        this.scheduler.setStaleTime(200);
+    }
+
+    @After
+    public void tearDown()
+    {
+        this.responseGate.countDown();
+        this.service.shutdown(true);
+        this.server.stop(0);
+        this.serverExecutor.shutdownNow();
+    }
+
+    /** Tests that pending retrievals are re-ranked, merged and cancelled as the requested tiles change. */
+    @Test
+    public void testReranking() throws Exception
+    {
+        this.responseGate = new CountDownLatch(1);
+        for (int i = 0; i < 10; i++)
+        {
+            assertTrue(this.scheduler.request(makeKey(i), i, this.createRetriever(i)));
+        }
+        assertFalse(this.scheduler.request(makeKey(3), 3, this.createRetriever(3)));
+        assertEquals(1, this.scheduler.getMergedCount());
+        assertEquals(2, this.scheduler.getSubmittedCount());
+        assertEquals(8, this.scheduler.getPendingCount());
+
+        // The view moves so that the last tiles are the nearest and the middle ones are no longer needed.
+        long end = System.currentTimeMillis() + 300;
+        while (System.currentTimeMillis() < end)
+        {
+            for (int i : new int[] {0, 1, 8, 9})
+            {
+                assertTrue(this.scheduler.touch(makeKey(i), i < 8 ? 5 : 0));
+            }
+            Thread.sleep(10);
+        }
+        assertEquals(6, this.scheduler.getCancelledCount());
+        assertFalse(this.scheduler.contains(makeKey(5)));
+
+        this.responseGate.countDown();
+        this.waitForCompletion(4);
+
+        assertEquals(4, this.requestedPaths.size());
+        assertEquals(new HashSet<String>(Arrays.asList("/tile0", "/tile1")),
+            new HashSet<String>(this.requestedPaths.subList(0, 2)));
+        assertEquals(new HashSet<String>(Arrays.asList("/tile8", "/tile9")),
+            new HashSet<String>(this.requestedPaths.subList(2, 4)));
+        assertEquals(0, this.scheduler.getWastedCount());
+    }
+
+    /** Tests that a retrieval completing after its tile is no longer requested is counted as wasted. */
+    @Test
+    public void testWastedRetrieval() throws Exception
+    {
+        this.responseGate = new CountDownLatch(1);
+        assertTrue(this.scheduler.request(makeKey(0), 0, this.createRetriever(0)));
+        for (int i = 0; i < 100 && this.requestedPaths.isEmpty(); i++)
+        {
+            Thread.sleep(10);
+        }
+
+        // Other tiles are requested while the retrieval is in progress.
+        long end = System.currentTimeMillis() + 300;
+        while (System.currentTimeMillis() < end)
+        {
+            assertFalse(this.scheduler.touch(makeKey(1), 0));
+            Thread.sleep(10);
+        }
+        assertTrue(this.scheduler.contains(makeKey(0)));
+
+        this.responseGate.countDown();
+        this.waitForCompletion(1);
+
+        assertEquals(1, this.scheduler.getWastedCount());
+        assertEquals(1000, this.scheduler.getWastedBytes());
+        assertEquals(0, this.scheduler.getCancelledCount());
+    }
+
+    /**
+     * Tests that elevation retrievals, ranked by their distance from the scheduler's view, interleave with imagery
+     * retrievals at the same level by distance rather than all coming first.
+     */
+    @Test
+    public void testMixedImageryAndElevations() throws Exception
+    {
+        Globe globe = new EllipsoidalGlobe(Earth.WGS84_EQUATORIAL_RADIUS, Earth.WGS84_POLAR_RADIUS, Earth.WGS84_ES,
+            new ZeroElevationModel());
+        Vec4 eyePoint = globe.computePointFromPosition(Angle.ZERO, Angle.ZERO, 10000);
+        this.scheduler = new RetrievalScheduler(this.service, 1);
+        this.scheduler.setView(globe, eyePoint);
+
+        // The first retrieval occupies the service while the others are requested.
+        this.responseGate = new CountDownLatch(1);
+        assertTrue(this.scheduler.request(makeKey(0), 0, this.createRetriever(0)));
+
+        Sector[] sectors = new Sector[] {Sector.fromDegrees(0, 1, 0, 1), Sector.fromDegrees(2, 3, 2, 3),
+            Sector.fromDegrees(10, 11, 10, 11), Sector.fromDegrees(20, 21, 20, 21)};
+        for (int i : new int[] {1, 2})
+        {
+            // Imagery tiles, whose layers measure their distance from the eye point.
+            LatLon centroid = sectors[i].getCentroid();
+            double distance = globe.computePointFromPosition(centroid, 0).distanceTo3(eyePoint);
+            assertTrue(this.scheduler.request(new TileKey(10, 0, i + 1, "Earth/Imagery"), distance,
+                this.createRetriever(i + 1)));
+        }
+        for (int i : new int[] {3, 0})
+        {
+            // Elevation tiles, measured by the scheduler.
+            assertTrue(this.scheduler.request(new TileKey(10, 0, i + 1, "Earth/Elevations"),
+                this.scheduler.computeDistance(sectors[i]), this.createRetriever(i + 1)));
+        }
+
+        this.responseGate.countDown();
+        this.waitForCompletion(5);
+
+        assertEquals(Arrays.asList("/tile0", "/tile1", "/tile2", "/tile3", "/tile4"), this.requestedPaths);
+    }
+
+    private void waitForCompletion(int count) throws InterruptedException
+    {
+        for (int i = 0; i < 500 && this.scheduler.getCompletedCount() < count; i++)
+        {
+            Thread.sleep(10);
+        }
+        assertEquals(count, this.scheduler.getCompletedCount());
+        assertEquals(0, this.scheduler.getSubmittedCount());
+        assertEquals(0, this.scheduler.getPendingCount());
+    }
+
+    private static TileKey makeKey(int column)
+    {
+        return new TileKey(0, 0, column, "Earth/Test");
+    }
+
+    private HTTPRetriever createRetriever(int tile) throws MalformedURLException
+    {
+        return new HTTPRetriever(new URL("http", "127.0.0.1", this.server.getAddress().getPort(), "/tile" + tile),
+            null);
+    }
+
+    private void handleRequest(HttpExchange exchange) throws IOException
+    {
+        this.requestedPaths.add(exchange.getRequestURI().getPath());
+
+        try
+        {
+            this.responseGate.await(10, TimeUnit.SECONDS);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+
+        byte[] body = new byte[1000];
+        exchange.getResponseHeaders().set("Content-Type", "application/octet-stream");
+        exchange.sendResponseHeaders(200, body.length);
+        OutputStream out = exchange.getResponseBody();
+        out.write(body);
+        out.close();
+    }
+}
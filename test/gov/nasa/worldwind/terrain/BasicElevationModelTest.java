@@ -0,0 +1,230 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+
+package gov.nasa.worldwind.terrain;
+
+import gov.nasa.worldwind.avlist.*;
+import gov.nasa.worldwind.cache.OffHeapMemoryCache;
+import gov.nasa.worldwind.geom.*;
+import gov.nasa.worldwind.util.*;
+import org.junit.*;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.File;
+import java.nio.*;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+@RunWith(JUnit4.class)
+public class BasicElevationModelTest
+{
+    private static final Sector COVERAGE = Sector.fromDegrees(0, 10, 0, 10);
+    private static final int TILE_SIZE = 16;
+    private static final double MISSING_DATA_SIGNAL = -9999;
+    private static final double RESOLUTION = Angle.fromDegrees(0.1).radians;
+
+    private BasicElevationModel model;
+    private double[] latitudes;
+    private double[] longitudes;
+    private List<LatLon> locations;
+
+    @Before
+    public void setUp()
+    {
+        AVList params = new AVListImpl();
+        params.setValue(AVKey.SECTOR, COVERAGE);
+        params.setValue(AVKey.LEVEL_ZERO_TILE_DELTA, LatLon.fromDegrees(5, 5));
+        params.setValue(AVKey.NUM_LEVELS, 1);
+        params.setValue(AVKey.TILE_WIDTH, TILE_SIZE);
+        params.setValue(AVKey.TILE_HEIGHT, TILE_SIZE);
+        params.setValue(AVKey.DATA_CACHE_NAME, "Test/BasicElevationModelTest");
+        params.setValue(AVKey.DATASET_NAME, "BasicElevationModelTest");
+        params.setValue(AVKey.FORMAT_SUFFIX, ".bil");
+        params.setValue(AVKey.NETWORK_RETRIEVAL_ENABLED, false);
+        params.setValue(AVKey.MISSING_DATA_SIGNAL, MISSING_DATA_SIGNAL);
+        this.model = new BasicElevationModel(params);
+        this.loadTiles();
+
+        // Random locations in and around the model's coverage, and locations next to the missing elevation.
+        Random random = new Random(1);
+        int count = 2000;
+        this.latitudes = new double[count + 2];
+        this.longitudes = new double[count + 2];
+        for (int i = 0; i < count; i++)
+        {
+            this.latitudes[i] = -1 + 12 * random.nextDouble();
+            this.longitudes[i] = -1 + 12 * random.nextDouble();
+        }
+        this.latitudes[count] = 9.99;
+        this.longitudes[count] = 0.01;
+        this.latitudes[count + 1] = 9.9;
+        this.longitudes[count + 1] = 0.3;
+
+        this.locations = new ArrayList<LatLon>();
+        for (int i = 0; i < this.latitudes.length; i++)
+        {
+            this.locations.add(LatLon.fromDegrees(this.latitudes[i], this.longitudes[i]));
+        }
+    }
+
+    /** Tests that the array methods produce the same elevations as the list methods. */
+    @Test
+    public void testArraysMatchList()
+    {
+        for (double replacement : new double[] {0, MISSING_DATA_SIGNAL})
+        {
+            this.model.setMissingDataReplacement(replacement);
+
+            double[] expected = this.newBuffer();
+            double[] actual = this.newBuffer();
+            double expectedResolution = this.model.getElevations(COVERAGE, this.locations, RESOLUTION, expected);
+            double actualResolution = this.model.getElevations(COVERAGE, this.latitudes, this.longitudes,
+                RESOLUTION, actual);
+            assertEquals(expectedResolution, actualResolution, 0);
+            assertValuesEqual(expected, actual, 1e-9);
+
+            expected = this.newBuffer();
+            actual = this.newBuffer();
+            this.model.getUnmappedElevations(COVERAGE, this.locations, RESOLUTION, expected);
+            this.model.getUnmappedElevations(COVERAGE, this.latitudes, this.longitudes, RESOLUTION, actual);
+            assertValuesEqual(expected, actual, 1e-9);
+        }
+
+        double[] elevations = this.newBuffer();
+        this.model.setMissingDataReplacement(0);
+        this.model.getElevations(COVERAGE, this.latitudes, this.longitudes, RESOLUTION, elevations);
+        double cellSize = 5d / (TILE_SIZE - 1);
+        for (int i = 0; i < this.latitudes.length; i++)
+        {
+            if (!COVERAGE.containsDegrees(this.latitudes[i], this.longitudes[i]))
+                assertEquals(-1, elevations[i], 0);
+            else if (this.latitudes[i] > 10 - cellSize && this.longitudes[i] < cellSize)
+                assertEquals(0, elevations[i], 0); // in the cell with the missing elevation
+            else
+                assertEquals(100 * this.latitudes[i] + this.longitudes[i], elevations[i], 1e-2);
+        }
+    }
+
+    /** Tests that a compound model produces the same elevations from its array and list methods. */
+    @Test
+    public void testCompoundModel()
+    {
+        CompoundElevationModel compound = new CompoundElevationModel();
+        compound.addElevationModel(new ZeroElevationModel());
+        compound.addElevationModel(this.model);
+
+        double[] expected = this.newBuffer();
+        double[] actual = this.newBuffer();
+        double[] expectedResolutions = compound.getElevations(COVERAGE, this.locations, new double[] {1, RESOLUTION},
+            expected);
+        double[] actualResolutions = compound.getElevations(COVERAGE, this.latitudes, this.longitudes,
+            new double[] {1, RESOLUTION}, actual);
+
+        assertValuesEqual(expectedResolutions, actualResolutions, 0);
+        assertValuesEqual(expected, actual, 1e-9);
+    }
+
+    /** Tests that local BIL tiles are memory mapped when mapping is enabled, and read into memory otherwise. */
+    @Test
+    public void testMemoryMappedElevations() throws Exception
+    {
+        File file = File.createTempFile("BasicElevationModelTest", ".bil");
+        file.deleteOnExit();
+        ByteBuffer bytes = ByteBuffer.allocate(2 * TILE_SIZE * TILE_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < TILE_SIZE * TILE_SIZE; i++)
+        {
+            bytes.putShort((short) i);
+        }
+        WWIO.saveBuffer(bytes, file);
+
+        this.model.setMemoryMappingEnabled(true);
+        BufferWrapper mapped = this.model.makeBilElevations(file.toURI().toURL());
+        assertTrue(this.model.isMemoryMapped(mapped));
+        assertEquals(TILE_SIZE * TILE_SIZE, mapped.length());
+        assertEquals(123, mapped.getDouble(123), 0);
+
+        this.model.setMemoryMappingEnabled(false);
+        BufferWrapper read = this.model.makeBilElevations(file.toURI().toURL());
+        assertFalse(this.model.isMemoryMapped(read));
+        assertEquals(TILE_SIZE * TILE_SIZE, read.length());
+        assertEquals(123, read.getDouble(123), 0);
+    }
+
+    /** Tests that an off-heap cache keeps mapped elevations in place and sizes them as mapped tiles. */
+    @Test
+    public void testMappedElevationsStayMapped() throws Exception
+    {
+        File file = File.createTempFile("BasicElevationModelTest", ".bil");
+        file.deleteOnExit();
+        WWIO.saveBuffer(ByteBuffer.allocate(2 * TILE_SIZE * TILE_SIZE), file);
+
+        this.model.setMemoryMappingEnabled(true);
+        BufferWrapper mapped = this.model.makeBilElevations(file.toURI().toURL());
+        Level level = this.model.getLevels().getFirstLevel();
+        BasicElevationModel.ElevationTile tile = new BasicElevationModel.ElevationTile(COVERAGE, level, 0, 0);
+        tile.setElevations(mapped, this.model);
+        assertEquals(0, tile.getPayloadSize());
+        assertFalse(tile.relocatePayload(ByteBuffer.allocateDirect(2 * TILE_SIZE * TILE_SIZE)));
+
+        OffHeapMemoryCache cache = new OffHeapMemoryCache(1 << 20, 1 << 21);
+        assertTrue(cache.add("mapped", tile, BasicElevationModel.MAPPED_TILE_SIZE));
+        assertSame(mapped, tile.getElevations());
+        assertEquals(BasicElevationModel.MAPPED_TILE_SIZE, cache.getUsedCapacity());
+        assertEquals(0, cache.getArena().getAllocatedBytes());
+    }
+
+    private static void assertValuesEqual(double[] expected, double[] actual, double delta)
+    {
+        assertEquals(expected.length, actual.length);
+        for (int i = 0; i < expected.length; i++)
+        {
+            assertEquals("index " + i, expected[i], actual[i], delta);
+        }
+    }
+
+    private double[] newBuffer()
+    {
+        double[] buffer = new double[this.latitudes.length];
+        Arrays.fill(buffer, -1);
+        return buffer;
+    }
+
+    /** Loads tiles whose elevations are a linear function of location, and marks one elevation as missing. */
+    private void loadTiles()
+    {
+        Level level = this.model.getLevels().getFirstLevel();
+        for (int row = 18; row <= 19; row++)
+        {
+            for (int col = 36; col <= 37; col++)
+            {
+                BasicElevationModel.ElevationTile tile = this.model.createTile(
+                    new TileKey(0, row, col, level.getCacheName()));
+                Sector sector = tile.getSector();
+
+                FloatBuffer buffer = FloatBuffer.allocate(TILE_SIZE * TILE_SIZE);
+                for (int j = 0; j < TILE_SIZE; j++)
+                {
+                    double lat = sector.getMaxLatitude().degrees - j * sector.getDeltaLatDegrees() / (TILE_SIZE - 1);
+                    for (int i = 0; i < TILE_SIZE; i++)
+                    {
+                        double lon = sector.getMinLongitude().degrees
+                            + i * sector.getDeltaLonDegrees() / (TILE_SIZE - 1);
+                        buffer.put((float) (100 * lat + lon));
+                    }
+                }
+
+                if (sector.getMaxLatitude().degrees == 10 && sector.getMinLongitude().degrees == 0)
+                    buffer.put(0, (float) MISSING_DATA_SIGNAL);
+
+                BufferWrapper elevations = new BufferWrapper.FloatBufferWrapper(buffer);
+                tile.setElevations(elevations, this.model);
+                this.model.addTileToCache(tile, elevations);
+            }
+        }
+    }
+}
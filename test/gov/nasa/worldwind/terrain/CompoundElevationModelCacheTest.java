@@ -0,0 +1,213 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+
+package gov.nasa.worldwind.terrain;
+
+import gov.nasa.worldwind.avlist.AVKey;
+import gov.nasa.worldwind.geom.*;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+@RunWith(JUnit4.class)
+public class CompoundElevationModelCacheTest
+{
+    private static final Sector SECTOR = Sector.fromDegrees(35, 36, -120, -119);
+
+    /**
+     * An elevation model of smooth hills computed on demand within a sector. Until {@link #loadData()} is called it
+     * has only a constant approximation of the hills, and reports a coarse achieved resolution.
+     */
+    private static class HillsElevationModel extends ZeroElevationModel
+    {
+        private final Sector sector;
+        private boolean loaded;
+
+        public HillsElevationModel(Sector sector, boolean loaded)
+        {
+            this.sector = sector;
+            this.loaded = loaded;
+        }
+
+        public void loadData()
+        {
+            this.loaded = true;
+            this.firePropertyChange(AVKey.ELEVATION_MODEL, null, this);
+        }
+
+        public double getMaxElevation()
+        {
+            return 2000;
+        }
+
+        public double getMinElevation()
+        {
+            return 0;
+        }
+
+        public double getBestResolution(Sector sector)
+        {
+            return 1e-6;
+        }
+
+        public int intersects(Sector sector)
+        {
+            return this.sector.intersects(sector) ? (this.sector.contains(sector) ? 0 : 1) : -1;
+        }
+
+        public boolean contains(Angle latitude, Angle longitude)
+        {
+            return this.sector.contains(latitude, longitude);
+        }
+
+        public double[] getExtremeElevations(Angle latitude, Angle longitude)
+        {
+            return new double[] {0, 2000};
+        }
+
+        public double[] getExtremeElevations(Sector sector)
+        {
+            return new double[] {0, 2000};
+        }
+
+        public double getUnmappedElevation(Angle latitude, Angle longitude)
+        {
+            return this.elevation(latitude.degrees, longitude.degrees);
+        }
+
+        public double getElevations(Sector sector, List<? extends LatLon> latlons, double targetResolution,
+            double[] buffer)
+        {
+            for (int i = 0; i < latlons.size(); i++)
+            {
+                buffer[i] = this.elevation(latlons.get(i).getLatitude().degrees,
+                    latlons.get(i).getLongitude().degrees);
+            }
+
+            return this.loaded ? 0 : 1;
+        }
+
+        public double getElevations(Sector sector, double[] latitudes, double[] longitudes, double targetResolution,
+            double[] buffer)
+        {
+            for (int i = 0; i < latitudes.length; i++)
+            {
+                if (this.sector.containsDegrees(latitudes[i], longitudes[i]))
+                    buffer[i] = this.elevation(latitudes[i], longitudes[i]);
+            }
+
+            return this.loaded ? 0 : 1;
+        }
+
+        private double elevation(double latitude, double longitude)
+        {
+            if (!this.loaded)
+                return 1000;
+
+            return 1000 + 600 * Math.sin(latitude * 9) * Math.cos(longitude * 7);
+        }
+    }
+
+    /** Tests that cached elevations approximate the child model's, and that repeated queries hit the cache. */
+    @Test
+    public void testCachedElevations()
+    {
+        HillsElevationModel hills = new HillsElevationModel(SECTOR, true);
+        CompoundElevationModel model = new CompoundElevationModel();
+        model.addElevationModel(hills);
+        model.setComposedTileCacheEnabled(true);
+
+        int numLocations = 1000;
+        double[] latitudes = new double[numLocations];
+        double[] longitudes = new double[numLocations];
+        Random random = new Random(3);
+        for (int i = 0; i < numLocations; i++)
+        {
+            latitudes[i] = 35 + random.nextDouble();
+            longitudes[i] = -120 + random.nextDouble();
+        }
+
+        double[] expected = new double[numLocations];
+        hills.getElevations(SECTOR, latitudes, longitudes, 1e-5, expected);
+
+        double[] actual = new double[numLocations];
+        model.getElevations(SECTOR, latitudes, longitudes, 1e-5, actual);
+        for (int i = 0; i < numLocations; i++)
+        {
+            assertEquals("Elevation " + i, expected[i], actual[i], 1);
+        }
+
+        model.resetComposedTileStatistics();
+        double[] repeated = new double[numLocations];
+        model.getElevations(SECTOR, latitudes, longitudes, 1e-5, repeated);
+        assertEquals("Miss count", 0, model.getComposedTileMissCount());
+        assertEquals("Hit rate", 1, model.getComposedTileHitRate(), 0);
+        for (int i = 0; i < numLocations; i++)
+        {
+            assertEquals("Repeated elevation " + i, actual[i], repeated[i], 0);
+        }
+
+        // Locations outside every child model leave the buffer unmodified.
+        double[] outside = new double[] {-5};
+        model.getElevations(SECTOR, new double[] {10}, new double[] {10}, 1e-5, outside);
+        assertEquals("Outside", -5, outside[0], 0);
+    }
+
+    /** Tests that tiles composed before a child had its data are composed again when the child reports new data. */
+    @Test
+    public void testNewData()
+    {
+        HillsElevationModel hills = new HillsElevationModel(SECTOR, false);
+        CompoundElevationModel model = new CompoundElevationModel();
+        model.addElevationModel(hills);
+        model.setComposedTileCacheEnabled(true);
+
+        Angle latitude = Angle.fromDegrees(35.3);
+        Angle longitude = Angle.fromDegrees(-119.6);
+        double[] buffer = new double[1];
+        List<LatLon> location = Arrays.asList(new LatLon(latitude, longitude));
+        model.getElevations(SECTOR, location, 1e-5, buffer);
+        assertEquals("Before load", 1000, buffer[0], 0);
+
+        // Without new data the incomplete tile remains valid.
+        model.getElevations(SECTOR, location, 1e-5, buffer);
+        assertEquals("Hit count", 1, model.getComposedTileHitCount());
+
+        hills.loadData();
+        model.getElevations(SECTOR, location, 1e-5, buffer);
+        assertEquals("After load", hills.getUnmappedElevation(latitude, longitude), buffer[0], 1);
+        assertEquals("Miss count", 2, model.getComposedTileMissCount());
+    }
+
+    /** Tests that adding a child model discards the composed tiles and the cached extreme elevations. */
+    @Test
+    public void testAddModel()
+    {
+        CompoundElevationModel model = new CompoundElevationModel();
+        model.addElevationModel(new HillsElevationModel(SECTOR, true));
+        model.setComposedTileCacheEnabled(true);
+        assertEquals("Max elevation", 2000, model.getMaxElevation(), 0);
+
+        double[] buffer = new double[1];
+        model.getElevations(SECTOR, new double[] {37}, new double[] {-119.5}, 1e-5, buffer);
+        assertEquals("Before add", 0, buffer[0], 0);
+
+        model.addElevationModel(new HillsElevationModel(Sector.fromDegrees(36, 38, -120, -119), true)
+        {
+            public double getMaxElevation()
+            {
+                return 3000;
+            }
+        });
+        model.getElevations(SECTOR, new double[] {37}, new double[] {-119.5}, 1e-5, buffer);
+        assertEquals("After add", 1000 + 600 * Math.sin(37 * 9) * Math.cos(-119.5 * 7), buffer[0], 1);
+        assertEquals("Max elevation after add", 3000, model.getMaxElevation(), 0);
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+
+package gov.nasa.worldwind.terrain;
+
+import gov.nasa.worldwind.avlist.*;
+import gov.nasa.worldwind.geom.*;
+import gov.nasa.worldwind.util.*;
+import org.junit.*;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.*;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+@RunWith(JUnit4.class)
+public class ElevationExtremesPyramidTest
+{
+    private static final Sector SECTOR = Sector.fromDegrees(10, 11, 20, 21);
+    private static final int NUM_LEVELS = 4;
+
+    private LevelSet levelSet;
+    private ElevationExtremesPyramid pyramid;
+    /** The extremes of each tile of the finest level, indexed by row and column within the sector. */
+    private double[][][] tileExtremes;
+
+    @Before
+    public void setUp()
+    {
+        AVList params = new AVListImpl();
+        params.setValue(AVKey.SECTOR, SECTOR);
+        params.setValue(AVKey.LEVEL_ZERO_TILE_DELTA, LatLon.fromDegrees(0.5, 0.5));
+        params.setValue(AVKey.NUM_LEVELS, NUM_LEVELS);
+        params.setValue(AVKey.TILE_WIDTH, 16);
+        params.setValue(AVKey.TILE_HEIGHT, 16);
+        params.setValue(AVKey.DATA_CACHE_NAME, "ElevationExtremesPyramidTest");
+        params.setValue(AVKey.DATASET_NAME, "ElevationExtremesPyramidTest");
+        params.setValue(AVKey.FORMAT_SUFFIX, ".bil");
+        this.levelSet = new LevelSet(params);
+
+        // Add extremes at the finest level only, as a producer that generates only the finest tiles would.
+        Level level = this.levelSet.getLastLevel();
+        double delta = level.getTileDelta().getLatitude().degrees;
+        int numTiles = (int) Math.round(1 / delta);
+        int firstRow = (int) Math.round(100 / delta); // (10 - -90) / delta
+        int firstCol = (int) Math.round(200 / delta); // (20 - -180) / delta
+
+        this.pyramid = new ElevationExtremesPyramid(this.levelSet);
+        this.tileExtremes = new double[numTiles][numTiles][];
+        Random random = new Random(7);
+        for (int r = 0; r < numTiles; r++)
+        {
+            for (int c = 0; c < numTiles; c++)
+            {
+                double min = 1000 * Math.sin(r * 0.7) * Math.cos(c * 0.4) + 100 * random.nextDouble();
+                double max = min + 500 * random.nextDouble();
+                this.tileExtremes[r][c] = new double[] {min, max};
+                this.pyramid.addTileExtremes(level.getLevelNumber(), firstRow + r, firstCol + c, min, max);
+            }
+        }
+
+        this.pyramid.computeCoarseLevels();
+    }
+
+    /** Tests that the extremes of any sector bound the extremes of the finest tiles it intersects. */
+    @Test
+    public void testSectorExtremesBound()
+    {
+        Random random = new Random(11);
+        for (int i = 0; i < 500; i++)
+        {
+            double lat0 = 10 + random.nextDouble();
+            double lat1 = Math.min(11, lat0 + random.nextDouble() * random.nextDouble());
+            double lon0 = 20 + random.nextDouble();
+            double lon1 = Math.min(21, lon0 + random.nextDouble() * random.nextDouble());
+            Sector sector = Sector.fromDegrees(lat0, lat1, lon0, lon1);
+
+            double[] expected = this.bruteForceExtremes(sector);
+            double[] actual = this.pyramid.getExtremes(sector);
+            assertNotNull("No extremes for " + sector, actual);
+            assertTrue("Minimum for " + sector, actual[0] <= expected[0]);
+            assertTrue("Maximum for " + sector, actual[1] >= expected[1]);
+        }
+    }
+
+    /** Tests that a sector within one finest-level tile has that tile's extremes. */
+    @Test
+    public void testTightExtremes()
+    {
+        Sector sector = Sector.fromDegrees(10.51, 10.52, 20.33, 20.34);
+        double[] expected = this.bruteForceExtremes(sector);
+        double[] actual = this.pyramid.getExtremes(sector);
+
+        assertEquals("Minimum", expected[0], actual[0], 1e-3);
+        assertEquals("Maximum", expected[1], actual[1], 1e-3);
+
+        // A location is a sector of zero size.
+        actual = this.pyramid.getExtremes(new Sector(sector.getMinLatitude(), sector.getMinLatitude(),
+            sector.getMinLongitude(), sector.getMinLongitude()));
+        assertEquals("Location minimum", expected[0], actual[0], 1e-3);
+
+        assertNull("Extremes outside the pyramid", this.pyramid.getExtremes(Sector.fromDegrees(40, 41, 20, 21)));
+    }
+
+    /** Tests that a pyramid read from its written form gives the same extremes. */
+    @Test
+    public void testWriteRead() throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        this.pyramid.write(out);
+        ElevationExtremesPyramid copy = ElevationExtremesPyramid.read(new ByteArrayInputStream(out.toByteArray()));
+
+        assertEquals("Sector", this.pyramid.getSector(), copy.getSector());
+        assertEquals("Level count", NUM_LEVELS, copy.getNumLevels());
+
+        Random random = new Random(13);
+        for (int i = 0; i < 100; i++)
+        {
+            double lat = 10 + 0.9 * random.nextDouble();
+            double lon = 20 + 0.9 * random.nextDouble();
+            double size = 0.1 * random.nextDouble();
+            Sector sector = Sector.fromDegrees(lat, lat + size, lon, lon + size);
+            assertArrayEquals(sector.toString(), toObjects(this.pyramid.getExtremes(sector)),
+                toObjects(copy.getExtremes(sector)));
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testReadInvalid() throws IOException
+    {
+        ElevationExtremesPyramid.read(new ByteArrayInputStream(new byte[] {1, 2, 3, 4, 5, 6, 7, 8}));
+    }
+
+    private double[] bruteForceExtremes(Sector sector)
+    {
+        double delta = this.levelSet.getLastLevel().getTileDelta().getLatitude().degrees;
+        double min = Double.MAX_VALUE;
+        double max = -Double.MAX_VALUE;
+        for (int r = 0; r < this.tileExtremes.length; r++)
+        {
+            for (int c = 0; c < this.tileExtremes[r].length; c++)
+            {
+                Sector tile = Sector.fromDegrees(10 + r * delta, 10 + (r + 1) * delta, 20 + c * delta,
+                    20 + (c + 1) * delta);
+                if (!tile.intersects(sector))
+                    continue;
+
+                min = Math.min(min, this.tileExtremes[r][c][0]);
+                max = Math.max(max, this.tileExtremes[r][c][1]);
+            }
+        }
+
+        return new double[] {min, max};
+    }
+
+    private static Double[] toObjects(double[] array)
+    {
+        Double[] objects = new Double[array.length];
+        for (int i = 0; i < array.length; i++)
+        {
+            objects[i] = array[i];
+        }
+
+        return objects;
+    }
+}
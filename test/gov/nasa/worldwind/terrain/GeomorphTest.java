@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+
+package gov.nasa.worldwind.terrain;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.nio.FloatBuffer;
+
+import static org.junit.Assert.*;
+
+@RunWith(JUnit4.class)
+public class GeomorphTest
+{
+    private static final int DENSITY = 4;
+    private static final int SIDE = DENSITY + 3;
+
+    /** Tests that a tile's parent elevations interpolate the elevations at the parent's vertices. */
+    @Test
+    public void testParentElevations()
+    {
+        double[] elevations = new double[SIDE * SIDE];
+        for (int j = 0; j < SIDE; j++)
+        {
+            for (int i = 0; i < SIDE; i++)
+            {
+                elevations[j * SIDE + i] = interiorElevation(interior(j), interior(i));
+            }
+        }
+
+        double[] parentElevations = new double[SIDE * SIDE];
+        Geomorph.computeParentElevations(DENSITY, elevations, parentElevations);
+
+        for (int j = 0; j < SIDE; j++)
+        {
+            for (int i = 0; i < SIDE; i++)
+            {
+                int a = interior(j);
+                int b = interior(i);
+                double expected;
+                if (a % 2 == 0 && b % 2 == 0)
+                    expected = interiorElevation(a, b);
+                else if (b % 2 == 0)
+                    expected = 0.5 * (interiorElevation(a - 1, b) + interiorElevation(a + 1, b));
+                else if (a % 2 == 0)
+                    expected = 0.5 * (interiorElevation(a, b - 1) + interiorElevation(a, b + 1));
+                else
+                    expected = 0.25 * (interiorElevation(a - 1, b - 1) + interiorElevation(a - 1, b + 1)
+                        + interiorElevation(a + 1, b - 1) + interiorElevation(a + 1, b + 1));
+
+                assertEquals("vertex " + j + "," + i, expected, parentElevations[j * SIDE + i], 1e-12);
+            }
+        }
+
+        // A linear surface is its own parent.
+        for (int j = 0; j < SIDE; j++)
+        {
+            for (int i = 0; i < SIDE; i++)
+            {
+                elevations[j * SIDE + i] = 10 * interior(j) - 3 * interior(i);
+            }
+        }
+        Geomorph.computeParentElevations(DENSITY, elevations, parentElevations);
+        for (int k = 0; k < elevations.length; k++)
+        {
+            assertEquals(elevations[k], parentElevations[k], 1e-12);
+        }
+
+        // Tiles of odd density don't align with their parent, and keep their elevations.
+        int side = 3 + 3;
+        double[] odd = new double[side * side];
+        for (int k = 0; k < odd.length; k++)
+        {
+            odd[k] = k * k;
+        }
+        double[] oddParent = new double[odd.length];
+        Geomorph.computeParentElevations(3, odd, oddParent);
+        for (int k = 0; k < odd.length; k++)
+        {
+            assertEquals(odd[k], oddParent[k], 0);
+        }
+    }
+
+    /** Tests that vertices move from their own positions to their parent positions as the eye recedes. */
+    @Test
+    public void testMorphVertices()
+    {
+        assertEquals(0, Geomorph.computeMorphFactor(50, 100, 200), 0);
+        assertEquals(0, Geomorph.computeMorphFactor(100, 100, 200), 0);
+        assertEquals(0.25, Geomorph.computeMorphFactor(125, 100, 200), 1e-12);
+        assertEquals(1, Geomorph.computeMorphFactor(200, 100, 200), 0);
+        assertEquals(1, Geomorph.computeMorphFactor(300, 100, 200), 0);
+
+        float[] vertices = {0, 0, 0, 10, 0, 0};
+        float[] parentVertices = {0, 0, 0, 10, 0, 4};
+        FloatBuffer buffer = FloatBuffer.wrap(vertices.clone());
+
+        // Near the eye the vertices keep their own positions.
+        assertFalse(Geomorph.morphVertices(vertices, parentVertices, 10, 0, 50, 100, 200, buffer));
+        assertEquals(0, buffer.get(5), 0);
+
+        // Part way through the morph region, the second vertex is between its own and its parent's position.
+        assertTrue(Geomorph.morphVertices(vertices, parentVertices, 10, 0, -150, 100, 200, buffer));
+        assertEquals(10, buffer.get(3), 0);
+        assertEquals(2, buffer.get(5), 1e-5);
+        assertEquals(0, buffer.position());
+
+        // Beyond the morph region the vertices are on the parent's surface, and morphing again changes nothing.
+        assertTrue(Geomorph.morphVertices(vertices, parentVertices, 10, 0, -1000, 100, 200, buffer));
+        assertEquals(4, buffer.get(5), 0);
+        assertFalse(Geomorph.morphVertices(vertices, parentVertices, 10, 0, -2000, 100, 200, buffer));
+    }
+
+    private static int interior(int index)
+    {
+        return index == 0 ? 0 : index > DENSITY + 1 ? DENSITY : index - 1;
+    }
+
+    private static double interiorElevation(int row, int column)
+    {
+        return row * row + 7 * column * column * column + row * column;
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+
+package gov.nasa.worldwind.terrain;
+
+import gov.nasa.worldwind.geom.*;
+import gov.nasa.worldwind.globes.*;
+import org.junit.*;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+@RunWith(JUnit4.class)
+public class HighResolutionTerrainBatchTest
+{
+    private static final Sector SECTOR = Sector.fromDegrees(10, 10.1, 20, 20.1);
+
+    /** An elevation model of rolling hills computed on demand. */
+    private static class HillsElevationModel extends ZeroElevationModel
+    {
+        public double getMaxElevation()
+        {
+            return 1800;
+        }
+
+        public double getMinElevation()
+        {
+            return 200;
+        }
+
+        public double[] getExtremeElevations(Angle latitude, Angle longitude)
+        {
+            return new double[] {200, 1800};
+        }
+
+        public double[] getExtremeElevations(Sector sector)
+        {
+            return new double[] {200, 1800};
+        }
+
+        public double getUnmappedElevation(Angle latitude, Angle longitude)
+        {
+            return elevation(latitude.degrees, longitude.degrees);
+        }
+
+        public double getElevations(Sector sector, List<? extends LatLon> latlons, double targetResolution,
+            double[] buffer)
+        {
+            for (int i = 0; i < latlons.size(); i++)
+            {
+                buffer[i] = elevation(latlons.get(i).getLatitude().degrees, latlons.get(i).getLongitude().degrees);
+            }
+
+            return 0;
+        }
+
+        public double getElevations(Sector sector, double[] latitudes, double[] longitudes, double targetResolution,
+            double[] buffer)
+        {
+            for (int i = 0; i < latitudes.length; i++)
+            {
+                buffer[i] = elevation(latitudes[i], longitudes[i]);
+            }
+
+            return 0;
+        }
+
+        private static double elevation(double latitude, double longitude)
+        {
+            return 1000 + 800 * Math.sin(latitude * 200) * Math.cos(longitude * 150);
+        }
+    }
+
+    private Globe globe;
+    private Position[] positions;
+
+    @Before
+    public void setUp()
+    {
+        this.globe = new EllipsoidalGlobe(Earth.WGS84_EQUATORIAL_RADIUS, Earth.WGS84_POLAR_RADIUS, Earth.WGS84_ES,
+            new HillsElevationModel());
+
+        // Rays fanning out from an observer 20 meters above the terrain to the terrain 5 km away, as in a viewshed.
+        int numLines = 100;
+        this.positions = new Position[2 * numLines];
+        LatLon center = SECTOR.getCentroid();
+        for (int i = 0; i < numLines; i++)
+        {
+            Angle azimuth = Angle.fromDegrees(360d * i / numLines);
+            LatLon target = LatLon.greatCircleEndPosition(center, azimuth, Angle.fromDegrees(0.045));
+            this.positions[2 * i] = new Position(center, 20);
+            this.positions[2 * i + 1] = new Position(target, 0);
+        }
+    }
+
+    /** Tests that batch intersections match intersections of the lines one at a time. */
+    @Test
+    public void testBatchMatchesSingle() throws InterruptedException
+    {
+        HighResolutionTerrain terrain = new HighResolutionTerrain(this.globe, SECTOR, 30d, null);
+        terrain.setIntersectionThreadCount(4);
+        Intersection[][] batch = terrain.intersect(this.positions, false);
+
+        HighResolutionTerrain reference = new HighResolutionTerrain(this.globe, SECTOR, 30d, null);
+        assertEquals("Result count", this.positions.length / 2, batch.length);
+        for (int i = 0; i < batch.length; i++)
+        {
+            Intersection[] single = reference.intersect(this.positions[2 * i], this.positions[2 * i + 1]);
+            assertNotNull("No intersections for line " + i, single);
+            assertNotNull("No batch intersections for line " + i, batch[i]);
+            assertEquals("Intersection count for line " + i, single.length, batch[i].length);
+            for (int j = 0; j < single.length; j++)
+            {
+                assertEquals("Intersection " + j + " of line " + i, 0,
+                    single[j].getIntersectionPoint().distanceTo3(batch[i][j].getIntersectionPoint()), 1e-6);
+            }
+        }
+    }
+
+    /** Tests that first-hit batch intersections are the nearest of all the intersections. */
+    @Test
+    public void testFirstHit() throws InterruptedException
+    {
+        HighResolutionTerrain terrain = new HighResolutionTerrain(this.globe, SECTOR, 30d, null);
+        Intersection[][] all = terrain.intersect(this.positions, false);
+        Intersection[][] first = terrain.intersect(this.positions, true);
+
+        int numOccluded = 0;
+        for (int i = 0; i < all.length; i++)
+        {
+            assertNotNull("No intersection for line " + i, first[i]);
+            assertEquals("Intersection count for line " + i, 1, first[i].length);
+            assertEquals("Nearest intersection of line " + i, 0,
+                all[i][0].getIntersectionPoint().distanceTo3(first[i][0].getIntersectionPoint()), 1e-6);
+
+            if (all[i].length > 1)
+                numOccluded++;
+        }
+
+        // The hills must occlude some lines for the test to be meaningful.
+        assertTrue("No occluded lines", numOccluded > 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testOddPositionCount() throws InterruptedException
+    {
+        HighResolutionTerrain terrain = new HighResolutionTerrain(this.globe, SECTOR, 30d, null);
+        terrain.intersect(Arrays.copyOf(this.positions, 3), true);
+    }
+}
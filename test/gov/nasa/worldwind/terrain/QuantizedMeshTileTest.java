@@ -0,0 +1,182 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+
+package gov.nasa.worldwind.terrain;
+
+import gov.nasa.worldwind.data.BILToTINConverter;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+@RunWith(JUnit4.class)
+public class QuantizedMeshTileTest
+{
+    private static final int WIDTH = 65;
+    private static final int HEIGHT = 49;
+    private static final double MAX_ERROR = 2;
+
+    /** Tests that a tile's triangulation is within the requested error of the heights it was made from. */
+    @Test
+    public void testTriangulationError()
+    {
+        double[] heights = createHeights();
+        QuantizedMeshTile mesh = BILToTINConverter.createMesh(heights, WIDTH, HEIGHT, MAX_ERROR, Integer.MAX_VALUE);
+
+        assertTrue("Too many vertices", mesh.getVertexCount() < WIDTH * HEIGHT / 2);
+
+        double[] rasterized = new double[WIDTH * HEIGHT];
+        mesh.rasterize(WIDTH, HEIGHT, rasterized);
+
+        // Allow for the quantization of the vertices' heights.
+        double tolerance = MAX_ERROR + (mesh.getMaxHeight() - mesh.getMinHeight()) / QuantizedMeshTile.MAX_VALUE;
+        for (int i = 0; i < heights.length; i++)
+        {
+            assertEquals("Height " + i, heights[i], rasterized[i], tolerance);
+        }
+    }
+
+    /** Tests that interpolated heights match the rasterized heights at grid points. */
+    @Test
+    public void testInterpolateHeight()
+    {
+        QuantizedMeshTile mesh = BILToTINConverter.createMesh(createHeights(), WIDTH, HEIGHT, MAX_ERROR, 1000);
+
+        double[] rasterized = new double[WIDTH * HEIGHT];
+        mesh.rasterize(WIDTH, HEIGHT, rasterized);
+
+        for (int row = 0; row < HEIGHT; row += 6)
+        {
+            for (int col = 0; col < WIDTH; col += 8)
+            {
+                double s = (double) col / (WIDTH - 1);
+                double t = (double) (HEIGHT - 1 - row) / (HEIGHT - 1);
+                assertEquals("Height at " + col + ", " + row, rasterized[row * WIDTH + col],
+                    mesh.interpolateHeight(s, t), 1e-6);
+            }
+        }
+
+        assertTrue("Height outside tile", Double.isNaN(mesh.interpolateHeight(1.5, 0.5)));
+    }
+
+    /** Tests that the edge lists hold exactly the vertices on each edge. */
+    @Test
+    public void testEdgeIndices()
+    {
+        QuantizedMeshTile mesh = BILToTINConverter.createMesh(createHeights(), WIDTH, HEIGHT, MAX_ERROR, 1000);
+
+        assertEdge(mesh, mesh.getWestIndices(), mesh.getU(), 0);
+        assertEdge(mesh, mesh.getEastIndices(), mesh.getU(), QuantizedMeshTile.MAX_VALUE);
+        assertEdge(mesh, mesh.getSouthIndices(), mesh.getV(), 0);
+        assertEdge(mesh, mesh.getNorthIndices(), mesh.getV(), QuantizedMeshTile.MAX_VALUE);
+    }
+
+    /** Tests that a tile decoded from its encoding has the same geometry. */
+    @Test
+    public void testEncodeDecode()
+    {
+        QuantizedMeshTile mesh = BILToTINConverter.createMesh(createHeights(), WIDTH, HEIGHT, MAX_ERROR, 1000);
+
+        ByteBuffer buffer = mesh.encode();
+        QuantizedMeshTile decoded = QuantizedMeshTile.decode(buffer);
+
+        assertEquals("Min height", mesh.getMinHeight(), decoded.getMinHeight(), 1e-3);
+        assertEquals("Max height", mesh.getMaxHeight(), decoded.getMaxHeight(), 1e-3);
+        assertEquals("Vertex count", mesh.getVertexCount(), decoded.getVertexCount());
+        assertEquals("Triangle count", mesh.getTriangleCount(), decoded.getTriangleCount());
+
+        // Encoding may reorder the vertices, so compare the triangles by their vertices' values.
+        assertEquals("Triangles", triangleSet(mesh), triangleSet(decoded));
+        assertEquals("West edge", edgeSet(mesh, mesh.getWestIndices()), edgeSet(decoded, decoded.getWestIndices()));
+        assertEquals("North edge", edgeSet(mesh, mesh.getNorthIndices()),
+            edgeSet(decoded, decoded.getNorthIndices()));
+    }
+
+    /** Tests that decoding a truncated tile fails. */
+    @Test(expected = IllegalArgumentException.class)
+    public void testDecodeTruncated()
+    {
+        ByteBuffer buffer = QuantizedMeshTile.createGrid(4, 100).encode();
+        buffer.limit(buffer.limit() - 10);
+
+        QuantizedMeshTile.decode(buffer);
+    }
+
+    private static double[] createHeights()
+    {
+        double[] heights = new double[WIDTH * HEIGHT];
+        for (int row = 0; row < HEIGHT; row++)
+        {
+            for (int col = 0; col < WIDTH; col++)
+            {
+                double x = (double) col / (WIDTH - 1);
+                double y = (double) row / (HEIGHT - 1);
+                heights[row * WIDTH + col] = 500 * Math.sin(3 * x) * Math.cos(4 * y) + 200 * x * y + 1000;
+            }
+        }
+
+        return heights;
+    }
+
+    private static void assertEdge(QuantizedMeshTile mesh, int[] edge, int[] coordinates, int value)
+    {
+        Set<Integer> expected = new HashSet<Integer>();
+        for (int i = 0; i < mesh.getVertexCount(); i++)
+        {
+            if (coordinates[i] == value)
+                expected.add(i);
+        }
+
+        Set<Integer> actual = new HashSet<Integer>();
+        for (int i : edge)
+        {
+            actual.add(i);
+        }
+
+        assertEquals("Edge " + value, expected, actual);
+    }
+
+    private static String vertexString(QuantizedMeshTile mesh, int i)
+    {
+        return mesh.getU()[i] + "," + mesh.getV()[i] + "," + mesh.getHeights()[i];
+    }
+
+    private static Set<String> triangleSet(QuantizedMeshTile mesh)
+    {
+        Set<String> set = new HashSet<String>();
+        int[] indices = mesh.getIndices();
+        for (int n = 0; n < indices.length; n += 3)
+        {
+            // Rotate each triangle to start at its smallest index string, preserving its winding.
+            String[] v = {vertexString(mesh, indices[n]), vertexString(mesh, indices[n + 1]),
+                vertexString(mesh, indices[n + 2])};
+            int first = 0;
+            for (int k = 1; k < 3; k++)
+            {
+                if (v[k].compareTo(v[first]) < 0)
+                    first = k;
+            }
+            set.add(v[first] + ";" + v[(first + 1) % 3] + ";" + v[(first + 2) % 3]);
+        }
+
+        return set;
+    }
+
+    private static Set<String> edgeSet(QuantizedMeshTile mesh, int[] edge)
+    {
+        Set<String> set = new HashSet<String>();
+        for (int i : edge)
+        {
+            set.add(vertexString(mesh, i));
+        }
+
+        return set;
+    }
+}
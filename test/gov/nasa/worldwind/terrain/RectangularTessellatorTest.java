@@ -0,0 +1,256 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+
+package gov.nasa.worldwind.terrain;
+
+import gov.nasa.worldwind.*;
+import gov.nasa.worldwind.cache.BasicMemoryCache;
+import gov.nasa.worldwind.exception.WWRuntimeException;
+import gov.nasa.worldwind.geom.*;
+import gov.nasa.worldwind.globes.*;
+import gov.nasa.worldwind.render.*;
+import gov.nasa.worldwind.view.BasicView;
+import org.junit.*;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.awt.*;
+import java.nio.FloatBuffer;
+import java.util.*;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+@RunWith(JUnit4.class)
+public class RectangularTessellatorTest
+{
+    private DrawContext dc;
+    private ForkJoinPool pool;
+    private WavyElevationModel elevationModel;
+    private TestView view;
+
+    @Before
+    public void setUp()
+    {
+        Globe globe = new Earth();
+        this.elevationModel = new WavyElevationModel();
+        globe.setElevationModel(this.elevationModel);
+        this.view = new TestView();
+
+        this.dc = new DrawContextImpl();
+        this.dc.setModel(new BasicModel(globe, null));
+        this.dc.setGLRuntimeCapabilities(new GLRuntimeCapabilities());
+        this.dc.setVerticalExaggeration(1);
+        this.dc.setView(this.view);
+        this.pool = new ForkJoinPool(4);
+
+        if (!WorldWind.getMemoryCacheSet().containsCache(RectangularTessellator.CACHE_ID))
+        {
+            WorldWind.getMemoryCacheSet().addCache(RectangularTessellator.CACHE_ID,
+                new BasicMemoryCache(8500000, 10000000));
+        }
+        WorldWind.getMemoryCache(RectangularTessellator.CACHE_ID).clear();
+    }
+
+    @After
+    public void tearDown()
+    {
+        this.pool.shutdown();
+        WorldWind.getMemoryCache(RectangularTessellator.CACHE_ID).clear();
+    }
+
+    /** Tests that building a set of tiles in parallel produces the same vertices as building them one at a time. */
+    @Test
+    public void testParallelBuildMatchesSerial()
+    {
+        RectangularTessellator tessellator = new RectangularTessellator();
+        tessellator.setBuildPool(this.pool);
+
+        List<SectorGeometry> serialTiles = this.createTiles(tessellator);
+        for (SectorGeometry tile : serialTiles)
+        {
+            tessellator.buildVerts(this.dc, (RectangularTessellator.RectTile) tile, tessellator.isMakeTileSkirts());
+        }
+
+        List<SectorGeometry> parallelTiles = this.createTiles(tessellator);
+        tessellator.makeVertsInParallel(this.dc, parallelTiles);
+
+        for (int i = 0; i < serialTiles.size(); i++)
+        {
+            RectangularTessellator.RenderInfo expected = ((RectangularTessellator.RectTile) serialTiles.get(i)).ri;
+            RectangularTessellator.RenderInfo actual = ((RectangularTessellator.RectTile) parallelTiles.get(i)).ri;
+            assertNotNull("Tile " + i, actual);
+            assertEquals("Reference center " + i, expected.referenceCenter, actual.referenceCenter);
+            assertTrue("Vertices " + i, Arrays.equals(toArray(expected.vertices), toArray(actual.vertices)));
+        }
+    }
+
+    /**
+     * Tests that the incremental level of detail update selects the same tiles as a full traversal along a camera
+     * path, including frames where the view doesn't move and a frame where only the detail hint changes.
+     */
+    @Test
+    public void testIncrementalSelectionMatchesFullTraversal()
+    {
+        RectangularTessellator incremental = new RectangularTessellator();
+        incremental.setIncrementalLodEnabled(true);
+        incremental.setParallelBuildEnabled(false);
+        RectangularTessellator full = new RectangularTessellator();
+        full.setIncrementalLodEnabled(false);
+        full.setParallelBuildEnabled(false);
+
+        double[][] path = new double[][] {
+            {30, -100, 1e7}, {30, -100, 3e6}, {30, -100, 1e6}, {30.5, -100, 2e5}, {30.5, -100, 2e5},
+            {30.6, -99.8, 5e4}, {30.6, -99.7, 2e4}, {30.6, -99.7, 2e4}, {31, -99, 1e5}, {30, -100, 1e7}};
+        for (int i = 0; i < path.length; i++)
+        {
+            this.view.look(this.dc.getGlobe(), path[i][0], path[i][1], path[i][2]);
+            assertEquals("Frame " + i, selectedTiles(full.tessellate(this.dc)),
+                selectedTiles(incremental.tessellate(this.dc)));
+        }
+
+        // Changing the detail hint changes the selection even though the view is unchanged.
+        List<String> before = selectedTiles(incremental.tessellate(this.dc));
+        this.elevationModel.detailHint = 1;
+        List<String> after = selectedTiles(incremental.tessellate(this.dc));
+        assertFalse("Detail hint ignored", before.equals(after));
+        assertEquals("Detail hint", selectedTiles(full.tessellate(this.dc)), after);
+    }
+
+    /** Tests that a failed build on the calling thread waits for the builds running on the pool before it fails. */
+    @Test
+    public void testFailedBuildJoinsOtherBuilders()
+    {
+        final AtomicInteger completed = new AtomicInteger();
+        final List<SectorGeometry> tiles = new ArrayList<SectorGeometry>();
+        RectangularTessellator tessellator = new RectangularTessellator()
+        {
+            @Override
+            protected TileVertices computeVertices(DrawContext dc, RectTile tile, FloatBuffer verts,
+                boolean makeSkirts)
+            {
+                if (tile == tiles.get(0))
+                    throw new IllegalStateException();
+
+                try
+                {
+                    Thread.sleep(200);
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+
+                completed.incrementAndGet();
+                return super.computeVertices(dc, tile, verts, makeSkirts);
+            }
+        };
+        tessellator.setBuildPool(this.pool);
+        tiles.addAll(this.createTiles(tessellator));
+
+        try
+        {
+            tessellator.makeVertsInParallel(this.dc, tiles);
+            fail("Expected the build to fail");
+        }
+        catch (WWRuntimeException e)
+        {
+            assertTrue("Cause", e.getCause() instanceof IllegalStateException);
+        }
+
+        assertEquals("Completed builders", tiles.size() - 1, completed.get());
+    }
+
+    private List<SectorGeometry> createTiles(RectangularTessellator tessellator)
+    {
+        // The tessellator captures the globe when it tessellates, which these tests bypass.
+        tessellator.globe = this.dc.getGlobe();
+
+        List<SectorGeometry> tiles = new ArrayList<SectorGeometry>();
+        for (int row = 0; row < 3; row++)
+        {
+            for (int col = 0; col < 4; col++)
+            {
+                Sector sector = Sector.fromDegrees(10 + 5 * row, 15 + 5 * row, -20 + 5 * col, -15 + 5 * col);
+                tiles.add(tessellator.createTile(this.dc, sector, 2));
+            }
+        }
+
+        return tiles;
+    }
+
+    private static List<String> selectedTiles(SectorGeometryList tiles)
+    {
+        List<String> selected = new ArrayList<String>();
+        for (SectorGeometry tile : tiles)
+        {
+            selected.add(((RectangularTessellator.RectTile) tile).getLevel() + " " + tile.getSector());
+        }
+
+        return selected;
+    }
+
+    private static float[] toArray(FloatBuffer buffer)
+    {
+        float[] array = new float[buffer.limit()];
+        for (int i = 0; i < array.length; i++)
+        {
+            array[i] = buffer.get(i);
+        }
+
+        return array;
+    }
+
+    /** A view looking straight down from a position, whose matrices are computed without OpenGL. */
+    private static class TestView extends BasicView
+    {
+        public void look(Globe globe, double latitude, double longitude, double altitude)
+        {
+            Vec4 eyePoint = globe.computePointFromPosition(Position.fromDegrees(latitude, longitude, altitude));
+            Vec4 centerPoint = globe.computePointFromPosition(Position.fromDegrees(latitude, longitude, 0));
+
+            this.viewport = new Rectangle(800, 600);
+            this.modelview = Matrix.fromViewLookAt(eyePoint, centerPoint, Vec4.UNIT_Y);
+            this.modelviewInv = this.modelview.getInverse();
+            this.projection = Matrix.fromPerspective(this.fieldOfView, 800, 600, 1, 2e7);
+            this.frustum = Frustum.fromPerspective(this.fieldOfView, 800, 600, 1, 2e7);
+            this.lastFrustumInModelCoords = null;
+            this.lastEyePoint = null;
+        }
+    }
+
+    /** An elevation model whose elevations vary smoothly with location, so that every vertex differs. */
+    private static class WavyElevationModel extends ZeroElevationModel
+    {
+        protected double detailHint;
+
+        @Override
+        public double getElevations(Sector sector, double[] latitudes, double[] longitudes, double targetResolution,
+            double[] buffer)
+        {
+            for (int i = 0; i < latitudes.length; i++)
+            {
+                buffer[i] = 1000 * Math.sin(latitudes[i]) * Math.cos(longitudes[i]);
+            }
+
+            return targetResolution;
+        }
+
+        @Override
+        public double getDetailHint(Sector sector)
+        {
+            return this.detailHint;
+        }
+
+        @Override
+        public double getMinElevation()
+        {
+            return -1000;
+        }
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+
+package gov.nasa.worldwind.terrain;
+
+import gov.nasa.worldwind.BasicModel;
+import gov.nasa.worldwind.avlist.*;
+import gov.nasa.worldwind.geom.*;
+import gov.nasa.worldwind.globes.*;
+import gov.nasa.worldwind.render.*;
+import gov.nasa.worldwind.util.TileKey;
+import gov.nasa.worldwind.view.BasicView;
+import org.junit.*;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.awt.*;
+import java.util.*;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+@RunWith(JUnit4.class)
+public class TINTessellatorTest
+{
+    /** The TIN model's coverage, four of its level zero tiles. */
+    private static final Sector COVERAGE = Sector.fromDegrees(10, 50, -120, -80);
+
+    private DrawContext dc;
+    private TestView view;
+
+    @Before
+    public void setUp()
+    {
+        Globe globe = new Earth();
+        globe.setElevationModel(new RegionalTINElevationModel());
+        this.view = new TestView();
+
+        this.dc = new DrawContextImpl();
+        this.dc.setModel(new BasicModel(globe, null));
+        this.dc.setGLRuntimeCapabilities(new GLRuntimeCapabilities());
+        this.dc.setVerticalExaggeration(1);
+        this.dc.setView(this.view);
+    }
+
+    /**
+     * Tests that a TIN model covering only a region still leaves the whole visible globe tessellated, with TIN tiles
+     * inside the region and no tiles overlapping.
+     */
+    @Test
+    public void testRegionalModelCoversVisibleGlobe()
+    {
+        TINTessellator tessellator = new TINTessellator();
+        double[][] eyePositions = new double[][] {{30, -100, 2e7}, {50, -80, 2e6}, {30, -120, 5e5}};
+        for (double[] eye : eyePositions)
+        {
+            this.view.look(this.dc.getGlobe(), eye[0], eye[1], eye[2]);
+            SectorGeometryList tiles = tessellator.tessellate(this.dc);
+            String message = "Eye " + Arrays.toString(eye);
+
+            int numTINTiles = 0;
+            for (SectorGeometry tile : tiles)
+            {
+                if (tile instanceof TINTessellator.TINTile)
+                {
+                    assertTrue(message + " TIN tile outside coverage", COVERAGE.contains(tile.getSector()));
+                    numTINTiles++;
+                }
+            }
+            assertTrue(message + " no TIN tiles", numTINTiles > 0);
+            assertTrue(message + " no other tiles", numTINTiles < tiles.size());
+
+            this.assertNoOverlaps(message, tiles);
+            this.assertVisibleGlobeCovered(message, tiles);
+        }
+    }
+
+    private void assertNoOverlaps(String message, List<SectorGeometry> tiles)
+    {
+        for (int i = 0; i < tiles.size(); i++)
+        {
+            for (int j = i + 1; j < tiles.size(); j++)
+            {
+                Sector a = tiles.get(i).getSector();
+                Sector b = tiles.get(j).getSector();
+                assertFalse(message + " " + a + " overlaps " + b, TINTessellator.ComplementTessellator.overlaps(a, b));
+            }
+        }
+    }
+
+    private void assertVisibleGlobeCovered(String message, List<SectorGeometry> tiles)
+    {
+        Globe globe = this.dc.getGlobe();
+        Frustum frustum = this.view.getFrustumInModelCoordinates();
+        Vec4 eyePoint = this.view.getEyePoint();
+
+        int numVisible = 0;
+        for (double lat = -89.5; lat < 90; lat += 1)
+        {
+            for (double lon = -179.5; lon < 180; lon += 1)
+            {
+                Vec4 point = globe.computePointFromPosition(Angle.fromDegrees(lat), Angle.fromDegrees(lon), 0);
+                Vec4 normal = globe.computeSurfaceNormalAtPoint(point);
+                if (!frustum.contains(point) || normal.dot3(eyePoint.subtract3(point)) <= 0)
+                    continue;
+
+                numVisible++;
+                boolean covered = false;
+                for (SectorGeometry tile : tiles)
+                {
+                    if (tile.getSector().contains(Angle.fromDegrees(lat), Angle.fromDegrees(lon)))
+                    {
+                        covered = true;
+                        break;
+                    }
+                }
+                assertTrue(message + " no geometry at " + lat + ", " + lon, covered);
+            }
+        }
+
+        assertTrue(message + " nothing visible", numVisible > 0);
+    }
+
+    /** A view looking straight down from a position, whose matrices are computed without OpenGL. */
+    private static class TestView extends BasicView
+    {
+        public void look(Globe globe, double latitude, double longitude, double altitude)
+        {
+            Vec4 eyePoint = globe.computePointFromPosition(Position.fromDegrees(latitude, longitude, altitude));
+            Vec4 centerPoint = globe.computePointFromPosition(Position.fromDegrees(latitude, longitude, 0));
+
+            this.viewport = new Rectangle(800, 600);
+            this.modelview = Matrix.fromViewLookAt(eyePoint, centerPoint, Vec4.UNIT_Y);
+            this.modelviewInv = this.modelview.getInverse();
+            this.projection = Matrix.fromPerspective(this.fieldOfView, 800, 600, 1, 3e7);
+            this.frustum = Frustum.fromPerspective(this.fieldOfView, 800, 600, 1, 3e7);
+            this.lastFrustumInModelCoords = null;
+            this.lastEyePoint = null;
+        }
+    }
+
+    /** A TIN model covering a region, whose tiles are all in memory and flat. */
+    private static class RegionalTINElevationModel extends TINElevationModel
+    {
+        protected final QuantizedMeshTile mesh = QuantizedMeshTile.createGrid(4, 0);
+
+        public RegionalTINElevationModel()
+        {
+            super(createParams());
+        }
+
+        protected static AVList createParams()
+        {
+            AVList params = new AVListImpl();
+            params.setValue(AVKey.SECTOR, COVERAGE);
+            params.setValue(AVKey.TILE_ORIGIN, LatLon.fromDegrees(-90, -180));
+            params.setValue(AVKey.LEVEL_ZERO_TILE_DELTA, LatLon.fromDegrees(20, 20));
+            params.setValue(AVKey.NUM_LEVELS, 6);
+            params.setValue(AVKey.TILE_WIDTH, 16);
+            params.setValue(AVKey.TILE_HEIGHT, 16);
+            params.setValue(AVKey.DATA_CACHE_NAME, "Test/TINTessellatorTest");
+            params.setValue(AVKey.DATASET_NAME, "TINTessellatorTest");
+            params.setValue(AVKey.NETWORK_RETRIEVAL_ENABLED, false);
+
+            return params;
+        }
+
+        @Override
+        public QuantizedMeshTile getMesh(TileKey key, boolean request)
+        {
+            return this.mesh;
+        }
+
+        @Override
+        public double getElevations(Sector sector, double[] latitudes, double[] longitudes, double targetResolution,
+            double[] buffer)
+        {
+            Arrays.fill(buffer, 0, latitudes.length, 0);
+            return targetResolution;
+        }
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+
+package gov.nasa.worldwind.terrain;
+
+import gov.nasa.worldwind.avlist.AVKey;
+import gov.nasa.worldwind.data.BufferWrapperRaster;
+import gov.nasa.worldwind.geom.*;
+import gov.nasa.worldwind.globes.Earth;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.beans.*;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+@RunWith(JUnit4.class)
+public class ViewshedTest
+{
+    private static final LatLon OBSERVER = LatLon.fromDegrees(30, 40);
+
+    /** An elevation model with a 300 meter wall running east-west 2025 to 2525 meters north of the observer. */
+    private static class WallElevationModel extends ZeroElevationModel
+    {
+        public double getMaxElevation()
+        {
+            return 300;
+        }
+
+        public double[] getExtremeElevations(Angle latitude, Angle longitude)
+        {
+            return new double[] {0, 300};
+        }
+
+        public double[] getExtremeElevations(Sector sector)
+        {
+            return new double[] {0, 300};
+        }
+
+        public double getUnmappedElevation(Angle latitude, Angle longitude)
+        {
+            return elevation(latitude.degrees);
+        }
+
+        public double getElevations(Sector sector, List<? extends LatLon> latlons, double targetResolution,
+            double[] buffer)
+        {
+            for (int i = 0; i < latlons.size(); i++)
+            {
+                buffer[i] = elevation(latlons.get(i).getLatitude().degrees);
+            }
+
+            return 0;
+        }
+
+        public double getElevations(Sector sector, double[] latitudes, double[] longitudes, double targetResolution,
+            double[] buffer)
+        {
+            for (int i = 0; i < latitudes.length; i++)
+            {
+                buffer[i] = elevation(latitudes[i]);
+            }
+
+            return 0;
+        }
+
+        private static double elevation(double latitude)
+        {
+            double distance = Math.toRadians(latitude - OBSERVER.getLatitude().degrees)
+                * Earth.WGS84_EQUATORIAL_RADIUS;
+            return distance >= 2025 && distance <= 2525 ? 300 : 0;
+        }
+    }
+
+    /** Tests that both algorithms find the horizon of a smooth globe, including the effect of refraction. */
+    @Test
+    public void testHorizon() throws InterruptedException
+    {
+        double eyeHeight = 100;
+        double horizon = Math.sqrt(2 * Earth.WGS84_EQUATORIAL_RADIUS / (1 - Viewshed.DEFAULT_REFRACTION_COEFFICIENT)
+            * eyeHeight);
+
+        for (String algorithm : new String[] {Viewshed.ALGORITHM_R2, Viewshed.ALGORITHM_R3})
+        {
+            Viewshed viewshed = new Viewshed(new ZeroElevationModel(), Earth.WGS84_EQUATORIAL_RADIUS);
+            viewshed.setAlgorithm(algorithm);
+            viewshed.setCellSize(500d);
+            BufferWrapperRaster raster = viewshed.compute(new Position(OBSERVER, eyeHeight), 60000);
+
+            int n = raster.getWidth() / 2;
+            for (int row = 0; row < raster.getHeight(); row++)
+            {
+                for (int col = 0; col < raster.getWidth(); col++)
+                {
+                    double distance = 500 * Math.hypot(row - n, col - n);
+                    double value = raster.getDoubleAtPosition(row, col);
+                    if (distance > 60000)
+                        assertEquals(algorithm + " outside at " + row + ", " + col, Viewshed.OUTSIDE, value, 0);
+                    else if (distance < horizon - 1000)
+                        assertEquals(algorithm + " visible at " + row + ", " + col, Viewshed.VISIBLE, value, 0);
+                    else if (distance > horizon + 1000)
+                        assertEquals(algorithm + " hidden at " + row + ", " + col, Viewshed.HIDDEN, value, 0);
+                }
+            }
+        }
+    }
+
+    /** Tests that a wall hides the terrain behind it, and that R2 approximates R3. */
+    @Test
+    public void testWall() throws InterruptedException
+    {
+        Viewshed viewshed = new Viewshed(new WallElevationModel(), Earth.WGS84_EQUATORIAL_RADIUS);
+        viewshed.setAlgorithm(Viewshed.ALGORITHM_R3);
+        viewshed.setCellSize(50d);
+        viewshed.setThreadCount(4);
+
+        final double[] progress = new double[1];
+        viewshed.addPropertyChangeListener(AVKey.PROGRESS, new PropertyChangeListener()
+        {
+            public void propertyChange(PropertyChangeEvent event)
+            {
+                progress[0] = (Double) event.getNewValue();
+            }
+        });
+
+        Position observer = new Position(OBSERVER, 10);
+        BufferWrapperRaster r3 = viewshed.compute(observer, 5000);
+        assertEquals("Progress", 1, progress[0], 0);
+
+        // Column n runs north from the observer at row n. The wall spans rows n - 41 to n - 50, and only its
+        // nearest edge is visible.
+        int n = r3.getWidth() / 2;
+        assertEquals("Before wall", Viewshed.VISIBLE, r3.getDoubleAtPosition(n - 30, n), 0);
+        assertEquals("Wall", Viewshed.VISIBLE, r3.getDoubleAtPosition(n - 41, n), 0);
+        assertEquals("Wall top", Viewshed.HIDDEN, r3.getDoubleAtPosition(n - 45, n), 0);
+        assertEquals("Behind wall", Viewshed.HIDDEN, r3.getDoubleAtPosition(n - 70, n), 0);
+        assertEquals("South", Viewshed.VISIBLE, r3.getDoubleAtPosition(n + 70, n), 0);
+
+        viewshed.setAlgorithm(Viewshed.ALGORITHM_R2);
+        viewshed.setThreadCount(1);
+        BufferWrapperRaster r2 = viewshed.compute(observer, 5000);
+
+        int numCells = r3.getWidth() * r3.getHeight();
+        int numDifferent = 0;
+        for (int i = 0; i < numCells; i++)
+        {
+            if (r2.getBuffer().getByte(i) != r3.getBuffer().getByte(i))
+                numDifferent++;
+        }
+        assertTrue("R2 differs from R3 at " + numDifferent + " cells", numDifferent < numCells / 100);
+    }
+
+    /** Tests that a viewshed crossing the antimeridian is rejected. */
+    @Test(expected = IllegalArgumentException.class)
+    public void testAntimeridian()
+    {
+        Viewshed viewshed = new Viewshed(new ZeroElevationModel(), Earth.WGS84_EQUATORIAL_RADIUS);
+        viewshed.setCellSize(100d);
+        viewshed.createRaster(LatLon.fromDegrees(0, 179.99), 5000);
+    }
+}
@@ -0,0 +1,234 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+
+package gov.nasa.worldwind.util;
+
+import org.junit.*;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.junit.Assert.*;
+
+@RunWith(JUnit4.class)
+public class PriorityTaskServiceTest
+{
+    private PriorityTaskService service;
+    private final List<Integer> runOrder = Collections.synchronizedList(new ArrayList<Integer>());
+    private final CountDownLatch gate = new CountDownLatch(1);
+
+    @After
+    public void tearDown()
+    {
+        this.gate.countDown();
+        if (this.service != null)
+            this.service.shutdown(true);
+    }
+
+    /** Tests that queued tasks run in priority order and that tasks equal to queued ones are not added. */
+    @Test
+    public void testPriorityOrder() throws Exception
+    {
+        this.service = new PriorityTaskService(1, 10);
+        this.startBlockingTask();
+
+        for (int priority : new int[] {5, 3, 9, 1})
+        {
+            this.service.addTask(new Task(priority));
+        }
+        this.service.addTask(new Task(3));
+        assertTrue(this.service.contains(new Task(9)));
+        assertEquals(4, this.service.getQueuedCount());
+
+        this.gate.countDown();
+        this.waitForTasks(4);
+
+        assertEquals(Arrays.asList(1, 3, 5, 9), this.runOrder);
+        PriorityTaskService.TaskStatistics stats = this.service.getTaskStatistics(Task.class);
+        assertEquals(4, stats.getAddedCount());
+        assertEquals(1, stats.getDuplicateCount());
+        assertEquals(4, stats.getWaitTimes().getCount());
+        assertEquals(4, stats.getRunTimes().getCount());
+        assertTrue(stats.getWaitTimes().getPercentile(50) > 0);
+        assertFalse(this.service.contains(new Task(9)));
+    }
+
+    /** Tests that a full queue keeps the tasks of highest priority and reports itself full until it drains. */
+    @Test
+    public void testFullQueue() throws Exception
+    {
+        this.service = new PriorityTaskService(1, 4);
+        this.startBlockingTask();
+
+        for (int priority = 1; priority <= 4; priority++)
+        {
+            this.service.addTask(new Task(priority));
+        }
+        assertTrue(this.service.isFull());
+
+        this.service.addTask(new Task(0)); // displaces the task of priority 4
+        this.service.addTask(new Task(10)); // rejected
+        assertEquals(4, this.service.getQueuedCount());
+
+        PriorityTaskService.TaskStatistics stats = this.service.getTaskStatistics(Task.class);
+        assertEquals(1, stats.getEvictedCount());
+        assertEquals(1, stats.getRejectedCount());
+
+        this.gate.countDown();
+        this.waitForTasks(4);
+
+        assertEquals(Arrays.asList(0, 1, 2, 3), this.runOrder);
+        assertFalse(this.service.isFull());
+    }
+
+    /** Tests that a high priority task added to a full queue displaces an older task of low priority. */
+    @Test
+    public void testHighPriorityDisplacesOlderTask() throws Exception
+    {
+        this.service = new PriorityTaskService(1, 4);
+        this.startBlockingTask();
+
+        for (int priority = 1; priority <= 4; priority++)
+        {
+            this.service.addTask(new Task(priority));
+        }
+        Thread.sleep(600);
+
+        this.service.addTask(new Task(0)); // displaces the older task of priority 4
+        this.service.addTask(new Task(10)); // rejected
+        assertTrue(this.service.contains(new Task(0)));
+        assertFalse(this.service.contains(new Task(4)));
+
+        this.gate.countDown();
+        this.waitForTasks(4);
+
+        assertEquals(Arrays.asList(0, 1, 2, 3), this.runOrder);
+    }
+
+    /** Tests that a task of low priority runs before newer tasks of higher priority once it has waited long enough. */
+    @Test
+    public void testAging() throws Exception
+    {
+        this.service = new PriorityTaskService(1, 10);
+        this.service.setAgingRate(10);
+        this.startBlockingTask();
+
+        this.service.addTask(new Task(5));
+        Thread.sleep(300); // the task's effective priority is now at most 2
+        this.service.addTask(new Task(3));
+        this.service.addTask(new Task(1));
+
+        this.gate.countDown();
+        this.waitForTasks(3);
+
+        assertEquals(Arrays.asList(1, 5, 3), this.runOrder);
+    }
+
+    /** Tests that tasks that don't specify a priority run with the default priority rather than ahead of all others. */
+    @Test
+    public void testDefaultPriority() throws Exception
+    {
+        this.service = new PriorityTaskService(1, 10);
+        this.startBlockingTask();
+
+        this.service.addTask(new Task(30));
+        this.service.addTask(new Runnable()
+        {
+            public void run()
+            {
+                runOrder.add(-1);
+            }
+        });
+        this.service.addTask(new Task(5));
+
+        this.gate.countDown();
+        this.waitForTasks(3);
+
+        assertEquals(Arrays.asList(5, -1, 30), this.runOrder);
+    }
+
+    /** Tests that tile priorities order tiles by distance and level, as the retrieval scheduler's rank does. */
+    @Test
+    public void testTilePriority()
+    {
+        // A tile twice as far away, or one level finer, has a priority one greater.
+        double priority = PriorityTaskService.computeTilePriority(10, 1023);
+        assertEquals(priority + 1, PriorityTaskService.computeTilePriority(10, 2047), 1e-9);
+        assertEquals(priority + 1, PriorityTaskService.computeTilePriority(11, 1023), 1e-9);
+        assertEquals(PriorityTaskService.DEFAULT_PRIORITY, priority, 1e-9);
+
+        // Coarse tiles far away come before fine tiles nearby.
+        assertTrue(PriorityTaskService.computeTilePriority(2, 1e6) < PriorityTaskService.computeTilePriority(14, 1e3));
+        assertEquals(3, PriorityTaskService.computeTilePriority(3, -10), 0);
+    }
+
+    private void startBlockingTask() throws InterruptedException
+    {
+        this.service.addTask(new Runnable()
+        {
+            public void run()
+            {
+                try
+                {
+                    gate.await(10, TimeUnit.SECONDS);
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+
+        for (int i = 0; i < 100 && !this.service.hasActiveTasks(); i++)
+        {
+            Thread.sleep(10);
+        }
+        assertTrue(this.service.hasActiveTasks());
+    }
+
+    private void waitForTasks(int count) throws InterruptedException
+    {
+        for (int i = 0; i < 500 && (this.runOrder.size() < count || this.service.hasActiveTasks()); i++)
+        {
+            Thread.sleep(10);
+        }
+        assertEquals(count, this.runOrder.size());
+    }
+
+    private class Task implements PrioritizedTask
+    {
+        private final int priority;
+
+        public Task(int priority)
+        {
+            this.priority = priority;
+        }
+
+        public double getPriority()
+        {
+            return this.priority;
+        }
+
+        public void run()
+        {
+            runOrder.add(this.priority);
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            return o instanceof Task && ((Task) o).priority == this.priority;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return this.priority;
+        }
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) 2012 United States Government as represented by the Administrator of the
+ * National Aeronautics and Space Administration.
+ * All Rights Reserved.
+ */
+
+package gov.nasa.worldwind.util;
+
+import gov.nasa.worldwind.avlist.*;
+import gov.nasa.worldwind.geom.*;
+import gov.nasa.worldwind.layers.*;
+import gov.nasa.worldwind.render.*;
+import org.junit.*;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+@RunWith(JUnit4.class)
+public class TilePrefetcherTest
+{
+    private static final double RADIUS = 6378137;
+    private static final double FOV = Angle.fromDegrees(45).radians;
+    private static final int VIEWPORT_WIDTH = 1000;
+    private static final long TILE_BYTES = 1000000;
+
+    /** Tests that the view's velocity is extrapolated over the lookahead time, and not when the view is still. */
+    @Test
+    public void testExtrapolation()
+    {
+        TilePrefetcher prefetcher = new TilePrefetcher(TilePrefetcher.DEFAULT_BYTE_BUDGET);
+        long time = System.currentTimeMillis();
+
+        TilePrefetcher.ViewState still = new TilePrefetcher.ViewState(LatLon.ZERO, 1e6, time);
+        prefetcher.addSample(still);
+        assertNull(prefetcher.extrapolate(new TilePrefetcher.ViewState(LatLon.ZERO, 1e6, time + 200), RADIUS, FOV));
+
+        TilePrefetcher.ViewState current = new TilePrefetcher.ViewState(LatLon.fromDegrees(0, 1), 1e6, time + 200);
+        prefetcher.addSample(current);
+        TilePrefetcher.ViewState predicted = prefetcher.extrapolate(current, RADIUS, FOV);
+
+        assertNotNull(predicted);
+        assertEquals(0, predicted.location.getLatitude().degrees, 1e-9);
+        assertEquals(1 + prefetcher.getLookahead() / 200d, predicted.location.getLongitude().degrees, 1e-9);
+        assertEquals(1e6, predicted.altitude, 1e-6);
+    }
+
+    /** Tests that requests stop when the byte budget is spent and that only requested tiles drawn count as hits. */
+    @Test
+    public void testBudgetAndHits()
+    {
+        TilePrefetcher prefetcher = new TilePrefetcher(3 * TILE_BYTES);
+        Target target = new Target();
+        List<TilePrefetcher.Prefetchable> targets = Arrays.<TilePrefetcher.Prefetchable>asList(target);
+        TilePrefetcher.ViewState state = new TilePrefetcher.ViewState(LatLon.fromDegrees(10, 10), 1e6,
+            System.currentTimeMillis());
+
+        Level level = TilePrefetcher.selectLevel(target.getLevels(), state.altitude, RADIUS, FOV, VIEWPORT_WIDTH);
+        assertEquals(4, level.getLevelNumber());
+
+        assertFalse(prefetcher.prefetch(null, state, targets, RADIUS, FOV, VIEWPORT_WIDTH));
+        assertEquals(3, target.requested.size());
+        assertEquals(3, prefetcher.getIssuedCount());
+        assertEquals(3 * TILE_BYTES, prefetcher.getIssuedBytes());
+        for (TileKey key : target.requested)
+        {
+            assertEquals(4, key.getLevelNumber());
+        }
+
+        // Tiles in the footprint but not drawn are not hits.
+        target.drawn.add(target.requested.get(0));
+        target.drawn.add(target.requested.get(1));
+        prefetcher.resolvePrefetches(null, state, targets);
+        assertEquals(2, prefetcher.getHitCount());
+        assertEquals(0, prefetcher.getMissCount());
+
+        TilePrefetcher.ViewState expired = new TilePrefetcher.ViewState(state.location, state.altitude,
+            state.time + TilePrefetcher.EXPIRY_TIME + 1);
+        prefetcher.resolvePrefetches(null, expired, targets);
+        assertEquals(2, prefetcher.getHitCount());
+        assertEquals(1, prefetcher.getMissCount());
+        assertEquals(2 / 3d, prefetcher.getHitRate(), 1e-9);
+    }
+
+    /** Tests that tiles requested again while still predicted are charged against the byte budget. */
+    @Test
+    public void testReissueCharged()
+    {
+        TilePrefetcher prefetcher = new TilePrefetcher(3 * TILE_BYTES);
+        Target target = new Target();
+        List<TilePrefetcher.Prefetchable> targets = Arrays.<TilePrefetcher.Prefetchable>asList(target);
+        long time = System.currentTimeMillis();
+        TilePrefetcher.ViewState state = new TilePrefetcher.ViewState(LatLon.fromDegrees(10, 10), 1e6, time);
+
+        assertFalse(prefetcher.prefetch(null, state, targets, RADIUS, FOV, VIEWPORT_WIDTH));
+        assertEquals(3, target.requested.size());
+
+        // Re-issued after the reissue interval, the same tiles spend the budget, which is refilled by a second's worth.
+        prefetcher.availableBytes = 2 * TILE_BYTES;
+        TilePrefetcher.ViewState later = new TilePrefetcher.ViewState(state.location, state.altitude, time + 1000);
+        assertFalse(prefetcher.prefetch(null, later, targets, RADIUS, FOV, VIEWPORT_WIDTH));
+        assertEquals(5, target.requested.size());
+        assertEquals(target.requested.subList(0, 2), target.requested.subList(3, 5));
+        assertEquals(5, prefetcher.getIssuedCount());
+        assertEquals(5 * TILE_BYTES, prefetcher.getIssuedBytes());
+    }
+
+    /** Tests that layers are prefetched for only when they drew in the current frame. */
+    @Test
+    public void testUndrawnLayerSkipped()
+    {
+        TilePrefetcher prefetcher = new TilePrefetcher(TilePrefetcher.DEFAULT_BYTE_BUDGET);
+        DrawContext dc = new DrawContextImpl();
+        dc.setFrameTimeStamp(100);
+        Layer layer = new RenderableLayer();
+
+        assertFalse(prefetcher.isLayerDrawn(dc, layer));
+        layer.setValue(AVKey.FRAME_TIMESTAMP, 99L);
+        assertFalse(prefetcher.isLayerDrawn(dc, layer));
+        layer.setValue(AVKey.FRAME_TIMESTAMP, 100L);
+        assertTrue(prefetcher.isLayerDrawn(dc, layer));
+    }
+
+    private static class Target implements TilePrefetcher.Prefetchable
+    {
+        private final LevelSet levels;
+        private final List<TileKey> requested = new ArrayList<TileKey>();
+        private final List<TileKey> drawn = new ArrayList<TileKey>();
+
+        public Target()
+        {
+            AVList params = new AVListImpl();
+            params.setValue(AVKey.SECTOR, Sector.FULL_SPHERE);
+            params.setValue(AVKey.LEVEL_ZERO_TILE_DELTA, LatLon.fromDegrees(36, 36));
+            params.setValue(AVKey.NUM_LEVELS, 10);
+            params.setValue(AVKey.TILE_WIDTH, 512);
+            params.setValue(AVKey.TILE_HEIGHT, 512);
+            params.setValue(AVKey.DATA_CACHE_NAME, "Test/TilePrefetcher");
+            params.setValue(AVKey.DATASET_NAME, "TilePrefetcher");
+            params.setValue(AVKey.FORMAT_SUFFIX, ".png");
+            this.levels = new LevelSet(params);
+        }
+
+        public LevelSet getLevels()
+        {
+            return this.levels;
+        }
+
+        public long prefetchTile(DrawContext dc, TileKey tileKey, double priority)
+        {
+            assertTrue(priority >= TilePrefetcher.PREFETCH_PRIORITY);
+            this.requested.add(tileKey);
+            return TILE_BYTES;
+        }
+
+        public void getDrawnTileKeys(DrawContext dc, Collection<TileKey> keys)
+        {
+            keys.addAll(this.drawn);
+        }
+    }
+}